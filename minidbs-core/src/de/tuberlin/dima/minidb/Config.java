@@ -39,6 +39,10 @@ public final class Config
 	
 	private static final String NUM_CONCURRENT_QUERIES_KEY = "NUM_CONCURRENT_QUERIES";
 	
+	private static final String DEGREE_OF_PARALLELISM_KEY = "DEGREE_OF_PARALLELISM";
+	
+	private static final String SPILL_PREFIX_COMPRESSION_KEY = "SPILL_PREFIX_COMPRESSION";
+	
 	private static final String BLOCK_READ_COST = "BLOCK_READ_TRANSFER_NSECS";
 	
 	private static final String BLOCK_WRITE_COST = "BLOCK_WRITE_TRANSFER_NSECS";
@@ -210,6 +214,37 @@ public final class Config
 		return Integer.parseInt(val);
 	}
 	
+	/**
+	 * Gets the number of threads among which the operators of a single query may be split.
+	 * A value of one executes every query in a single thread.
+	 * 
+	 * @return The degree of intra-query parallelism.
+	 */
+	public int getDegreeOfParallelism()
+	{
+		String val = this.props.getProperty(DEGREE_OF_PARALLELISM_KEY);
+		int dop = Integer.parseInt(val);
+		if (dop < 1) {
+			throw new NumberFormatException("The degree of parallelism must be at least one.");
+		}
+		return dop;
+	}
+	
+	/**
+	 * Checks whether the tuples spilled by the query heap store only the bytes in which their
+	 * encoding differs from the previous tuple in the block.
+	 * 
+	 * @return True, if the spilled tuples are prefix compressed, false otherwise.
+	 */
+	public boolean isSpillPrefixCompression()
+	{
+		String val = this.props.getProperty(SPILL_PREFIX_COMPRESSION_KEY);
+		if (!val.equalsIgnoreCase("true") && !val.equalsIgnoreCase("false")) {
+			throw new IllegalArgumentException("The spill prefix compression must be 'true' or 'false'.");
+		}
+		return Boolean.parseBoolean(val);
+	}
+	
 	/**
 	 * Gets the cost (in nanoseconds) that it takes to transfer a block
 	 * of data from secondary storage to main memory.
@@ -295,6 +330,14 @@ public final class Config
 		p.setProperty(NUM_CONCURRENT_QUERIES_KEY,
 				String.valueOf(Constants.MAX_CONCURRENT_QUERIES));
 		
+		// set the intra-query parallelism default
+		p.setProperty(DEGREE_OF_PARALLELISM_KEY,
+				String.valueOf(Constants.DEFAULT_DEGREE_OF_PARALLELISM));
+		
+		// set the spill compression default
+		p.setProperty(SPILL_PREFIX_COMPRESSION_KEY,
+				String.valueOf(Constants.DEFAULT_SPILL_PREFIX_COMPRESSION));
+		
 		// set the I/O cost values
 		p.setProperty(BLOCK_READ_COST, String.valueOf(Constants.DEFAULT_BLOCK_TRANSFER_TIME_READ));
 		p.setProperty(BLOCK_WRITE_COST, String.valueOf(Constants.DEFAULT_BLOCK_TRANSFER_TIME_WRITE));
@@ -349,6 +392,20 @@ public final class Config
 			return NUM_CONCURRENT_QUERIES_KEY;
 		}
 		
+		try {
+			getDegreeOfParallelism();
+		}
+		catch (Throwable t) {
+			return DEGREE_OF_PARALLELISM_KEY;
+		}
+		
+		try {
+			isSpillPrefixCompression();
+		}
+		catch (Throwable t) {
+			return SPILL_PREFIX_COMPRESSION_KEY;
+		}
+		
 		try {
 			getBlockReadCost();
 		}
@@ -38,6 +38,18 @@ public abstract class Constants
 	 */
 	public static final String QUERY_HEAP_TEMP_FILE_PREFIX = "qheap.";
 	
+	/**
+	 * The suffix appended to a table's file name to name the file holding the dictionaries
+	 * of the table's dictionary encoded columns.
+	 */
+	public static final String TABLE_DICTIONARY_FILE_SUFFIX = ".dict";
+	
+	/**
+	 * The suffix appended to a table's file name to name the file holding the per page
+	 * minimum and maximum values of the table's columns.
+	 */
+	public static final String TABLE_ZONE_MAP_FILE_SUFFIX = ".zmap";
+	
 	
 	/*
 	 * ********************************************************************************************
@@ -59,6 +71,13 @@ public abstract class Constants
 	 * The maximal length of a column name in characters.
 	 */
 	public static final int MAX_COLUMN_NAME_LENGTH = 256;
+	
+	/**
+	 * The maximal number of distinct values in the dictionary of a dictionary encoded
+	 * column. The limit keeps the masks of qualifying codes, which are computed once per
+	 * predicate on the column, and the arrays of a grouping by code small.
+	 */
+	public static final int MAX_DICTIONARY_ENTRIES = 256;
 
 	
 	/*
@@ -101,6 +120,11 @@ public abstract class Constants
 	 */
 	static final int MAX_CONCURRENT_QUERIES = 10;
 	
+	/**
+	 * The default number of threads among which the operators of a single query are split.
+	 */
+	static final int DEFAULT_DEGREE_OF_PARALLELISM = 1;
+	
 	/**
 	 * The default time (microseconds) that is needed to transfer a block of the
 	 * default block size from secondary storage to main memory.
@@ -162,6 +186,98 @@ public abstract class Constants
 	 */
 	public static final int DEFAULT_PREFETCHING_LENGTH = 32;
 	
+	/**
+	 * The number of consecutive pages that a worker of a parallel table scan takes at once.
+	 */
+	public static final int PARALLEL_SCAN_MORSEL_PAGES = 16;
+	
+	/**
+	 * The number of tuple batches that the queue between parallel workers and the consuming
+	 * operator holds before the workers block.
+	 */
+	public static final int EXCHANGE_QUEUE_CAPACITY = 64;
+	
+	/**
+	 * The number of tuples that a producer of an exchange operator collects for a consumer
+	 * before it passes them on as one batch.
+	 */
+	public static final int EXCHANGE_BATCH_TUPLES = 256;
+	
+	/**
+	 * The smallest number of tuples that an operator should process per thread, such that
+	 * running it in parallel pays off against the cost of the threads and the exchanges.
+	 */
+	public static final int MIN_TUPLES_PER_PARALLEL_INSTANCE = 20000;
+	
+	/**
+	 * The default fraction of the entries of a B-Tree page that is filled when an index is
+	 * bulk loaded. The remaining space takes later inserts without immediate splits.
+	 */
+	public static final float DEFAULT_INDEX_FILL_FACTOR = 0.9f;
+	
+	/**
+	 * The number of pages that a bulk loader formats before writing them as one batch.
+	 */
+	public static final int BULK_LOAD_BATCH_PAGES = 64;
+	
+	/**
+	 * The maximal number of batches that a bulk loader has in flight to the disk at the same time.
+	 */
+	public static final int BULK_LOAD_MAX_PENDING_BATCHES = 4;
+	
+	/**
+	 * The fraction of a B-Tree leaf's capacity below which a delete merges the leaf with a
+	 * sibling or takes entries from it. Leaves above that fill stay as they are, so that
+	 * alternating inserts and deletes do not cause repeated splits and merges.
+	 */
+	public static final float INDEX_LEAF_MERGE_THRESHOLD = 0.25f;
+	
+	/**
+	 * The average fill of the buckets of a hash index, as a fraction of a page's capacity,
+	 * above which an insert splits the next bucket. Keeping the buckets below one page means
+	 * that most lookups read a single page.
+	 */
+	public static final float HASH_INDEX_MAX_LOAD_FACTOR = 0.75f;
+	
+	/**
+	 * The number of outer tuples whose keys an index nested loop join collects before it probes
+	 * the index on its inner side with all of them in one sorted pass over the leaves.
+	 */
+	public static final int INDEX_PROBE_BATCH_SIZE = 256;
+	
+	/**
+	 * The number of partitions into which a hash join splits its inputs. Must be a power of two.
+	 * Only the partitions that do not fit into the memory of the join are written to temp space.
+	 */
+	public static final int HASH_JOIN_PARTITIONS = 32;
+	
+	/**
+	 * The memory in bytes that the cost model assumes the query heap grants to a single operator
+	 * that builds a hash table.
+	 */
+	public static final long ESTIMATED_OPERATOR_MEMORY_BYTES = 4 * 1024 * 1024;
+	
+	/**
+	 * The number of partitions into which a hash group by splits the tuples of the groups that do
+	 * not fit into its memory. Must be a power of two.
+	 */
+	public static final int HASH_AGGREGATION_PARTITIONS = 32;
+	
+	/**
+	 * A flag that indicates whether a sort that does not fit into its memory forms its runs
+	 * through replacement selection, rather than by sorting the full memory. Replacement
+	 * selection forms runs of about twice the memory on random input, and a single run on
+	 * sorted input, so fewer runs are merged.
+	 */
+	public static final boolean SORT_REPLACEMENT_SELECTION = true;
+	
+	/**
+	 * The default for whether the tuples spilled by the query heap store only the bytes
+	 * in which their encoding differs from the previous tuple in the block. This compresses
+	 * sorted runs well, where neighboring tuples often share their leading columns.
+	 */
+	static final boolean DEFAULT_SPILL_PREFIX_COMPRESSION = true;
+	
 	/**
 	 * A flag that indicates whether to perform debug checks.
 	 */
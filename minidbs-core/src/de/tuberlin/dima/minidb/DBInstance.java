@@ -15,6 +15,7 @@ import de.tuberlin.dima.minidb.catalogue.CatalogueFormatException;
 import de.tuberlin.dima.minidb.catalogue.IndexDescriptor;
 import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
 import de.tuberlin.dima.minidb.core.InternalOperationFailure;
+import de.tuberlin.dima.minidb.io.index.HashIndexResourceManager;
 import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
 import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
 import de.tuberlin.dima.minidb.io.manager.ResourceManager;
@@ -547,12 +548,21 @@ public class DBInstance
 
 			// open the index
 			File indexFile = new File(config.getDataDirectory(), id.getFileName());
-			IndexResourceManager manager = null;
+			ResourceManager manager = null;
 			try {
-				manager = IndexResourceManager.openIndex(indexFile, table.getSchema());
 				int resourceId = catalogue.reserveNextId();
-				buffer.registerResource(resourceId, manager);
-				id.setResourceProperties(manager, table, resourceId);
+				if (HashIndexResourceManager.isHashIndex(indexFile)) {
+					HashIndexResourceManager hashManager = HashIndexResourceManager.openIndex(indexFile, table.getSchema());
+					manager = hashManager;
+					buffer.registerResource(resourceId, hashManager);
+					id.setResourceProperties(hashManager, table, resourceId);
+				}
+				else {
+					IndexResourceManager treeManager = IndexResourceManager.openIndex(indexFile, table.getSchema());
+					manager = treeManager;
+					buffer.registerResource(resourceId, treeManager);
+					id.setResourceProperties(treeManager, table, resourceId);
+				}
 			}
 			catch (Exception e) {
 				// close the resource, if it has been opened.
@@ -584,7 +594,7 @@ public class DBInstance
 		while (indexIter.hasNext()) {
 			IndexDescriptor id = indexIter.next();
 			try {
-				ResourceManager manager = id.getResourceManager();
+				ResourceManager manager = id.isHashIndex() ? id.getHashResourceManager() : id.getResourceManager();
 				if (manager != null) {
 					manager.closeResource();
 				}
@@ -651,4 +661,4 @@ public class DBInstance
 			}
 		}
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
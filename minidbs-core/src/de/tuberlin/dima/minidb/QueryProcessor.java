@@ -5,21 +5,30 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
 import de.tuberlin.dima.minidb.catalogue.Catalogue;
+import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
 import de.tuberlin.dima.minidb.core.DataTuple;
 import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.optimizer.DeletePlanOperator;
 import de.tuberlin.dima.minidb.optimizer.Optimizer;
 import de.tuberlin.dima.minidb.optimizer.OptimizerException;
 import de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator;
+import de.tuberlin.dima.minidb.parser.Column;
 import de.tuberlin.dima.minidb.parser.DeleteQuery;
+import de.tuberlin.dima.minidb.parser.FromClause;
 import de.tuberlin.dima.minidb.parser.InsertQuery;
+import de.tuberlin.dima.minidb.parser.LimitClause;
+import de.tuberlin.dima.minidb.parser.OutputColumn;
 import de.tuberlin.dima.minidb.parser.ParseException;
 import de.tuberlin.dima.minidb.parser.ParsedQuery;
 import de.tuberlin.dima.minidb.parser.SQLParser;
+import de.tuberlin.dima.minidb.parser.SelectClause;
 import de.tuberlin.dima.minidb.parser.SelectQuery;
+import de.tuberlin.dima.minidb.parser.TableReference;
 import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
 import de.tuberlin.dima.minidb.qexec.QueryExecutionException;
 import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
 import de.tuberlin.dima.minidb.semantics.AnalyzedSelectQuery;
+import de.tuberlin.dima.minidb.semantics.ProducedColumn;
 import de.tuberlin.dima.minidb.semantics.QuerySemanticsInvalidException;
 import de.tuberlin.dima.minidb.semantics.SelectQueryAnalyzer;
 
@@ -132,8 +141,10 @@ public class QueryProcessor
     	long rro = this.config.getBlockRandomReadOverhead();
     	long rwo = this.config.getBlockRandomWriteOverhead();
     	final Optimizer opt = new Optimizer(this.catalogue, rc, wc, rro, rwo);
+    	opt.setDegreeOfParallelism(this.config.getDegreeOfParallelism());
     	
     	OptimizerPlanOperator bestPlan = null;
+    	long rowLimit = -1;
     	
 	    // we need to distinguish the between the types of query we have
 		if (parsedQuery instanceof SelectQuery)
@@ -143,6 +154,13 @@ public class QueryProcessor
 	    		// analyze the query and rewrite it logically
 	    		AnalyzedSelectQuery analyzedQuery = analyzer.analyzeQuery((SelectQuery) parsedQuery, this.catalogue);
 	    		
+	    		// the row limit is not part of the semantic analysis, so it is carried over here
+	    		LimitClause limit = ((SelectQuery) parsedQuery).getLimitClause();
+	    		if (limit != null) {
+	    			rowLimit = limit.getRowLimit();
+	    			analyzedQuery.setRowLimit(rowLimit);
+	    		}
+	    		
 	    		 // open the result set with the schema information
 	        	resultHandler.openResultSet(analyzedQuery.getOutputColumns());
 	        				    
@@ -161,14 +179,33 @@ public class QueryProcessor
 		}
 		else if (parsedQuery instanceof InsertQuery)
 		{
-			throw new UnsupportedOperationException("Query Processor can currently only handle SELECT queries.");
+			throw new UnsupportedOperationException("Query Processor can currently only handle SELECT and DELETE queries.");
 		}
 		else if (parsedQuery instanceof DeleteQuery)
 		{
-			throw new UnsupportedOperationException("Query Processor can currently only handle SELECT queries.");
+			SelectQueryAnalyzer analyzer = AbstractExtensionFactory.getExtensionFactory().createSelectQueryAnalyzer();
+			try {
+				// the table and the WHERE clause are analyzed as those of a query selecting from the table
+				SelectQuery selectQuery = createSelectForDelete((DeleteQuery) parsedQuery);
+				AnalyzedSelectQuery analyzedQuery = analyzer.analyzeQuery(selectQuery, this.catalogue);
+				
+				// the plan deletes the qualifying tuples together with their index entries
+				DeletePlanOperator deletePlan = opt.createDeleteQueryPlan(analyzedQuery);
+				resultHandler.openResultSet(new ProducedColumn[] { deletePlan.getCountColumn() });
+				bestPlan = deletePlan;
+			}
+			catch (QuerySemanticsInvalidException qsiex) {
+				resultHandler.handleException(qsiex);
+				return;
+			}
+			catch (OptimizerException oex) {
+				resultHandler.handleException(oex);
+				return;
+			}
+			parsedQuery = null;
 		}
 		else {
-			throw new UnsupportedOperationException("Query Processor can currently only handle SELECT queries.");
+			throw new UnsupportedOperationException("Query Processor can currently only handle SELECT and DELETE queries.");
 		}	    
 	    
 	    
@@ -191,8 +228,12 @@ public class QueryProcessor
 	    try {
 	    	executablePlan.open(null);
 	    	DataTuple tuple = null;
-	    	while ((tuple = executablePlan.next()) != null) {
+	    	long numRows = 0;
+	    	
+	    	// stop pulling tuples once the limit is reached
+	    	while ((rowLimit < 0 || numRows < rowLimit) && (tuple = executablePlan.next()) != null) {
 	    		resultHandler.addResultTuple(tuple);
+	    		numRows++;
 	    	}
 	    	resultHandler.closeResultSet();
 	    }
@@ -209,4 +250,36 @@ public class QueryProcessor
 			}
 	    }
 	}
+	
+	/**
+	 * Creates a query that selects the first column of the table of the given delete query,
+	 * with the same WHERE clause, so that the semantic analysis of select queries resolves the
+	 * table and the predicate of the delete.
+	 * 
+	 * @param delete The delete query.
+	 * @return The select query over the same table with the same predicate.
+	 * @throws QuerySemanticsInvalidException Thrown, if the table does not exist.
+	 */
+	private SelectQuery createSelectForDelete(DeleteQuery delete) throws QuerySemanticsInvalidException
+	{
+		TableReference table = delete.getTable();
+		TableDescriptor descr = this.catalogue.getTable(table.getTableName());
+		if (descr == null) {
+			throw new QuerySemanticsInvalidException("Table " + table.getTableName() + " does not exist.");
+		}
+		
+		String firstColumn = descr.getSchema().getColumn(0).getColumnName();
+		SelectClause select = new SelectClause();
+		select.addOutputColumn(new OutputColumn(new Column(firstColumn, table.getAliasName()), firstColumn));
+		FromClause from = new FromClause();
+		from.addTable(table);
+		
+		SelectQuery query = new SelectQuery();
+		query.setSelectClause(select);
+		query.setFromClause(from);
+		if (delete.getWhere() != null) {
+			query.setWhereClause(delete.getWhere());
+		}
+		return query;
+	}
 }
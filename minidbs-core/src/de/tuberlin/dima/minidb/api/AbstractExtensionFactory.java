@@ -13,8 +13,11 @@ import de.tuberlin.dima.minidb.io.cache.PageCache;
 import de.tuberlin.dima.minidb.io.cache.PageFormatException;
 import de.tuberlin.dima.minidb.io.cache.PageSize;
 import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.HashIndex;
+import de.tuberlin.dima.minidb.io.index.HashIndexResourceManager;
 import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
 import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.ColumnDictionary;
 import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
 import de.tuberlin.dima.minidb.optimizer.cardinality.CardinalityEstimator;
 import de.tuberlin.dima.minidb.optimizer.cost.CostEstimator;
@@ -23,12 +26,16 @@ import de.tuberlin.dima.minidb.optimizer.joins.JoinOrderOptimizer;
 import de.tuberlin.dima.minidb.parser.OutputColumn;
 import de.tuberlin.dima.minidb.parser.SQLParser;
 import de.tuberlin.dima.minidb.qexec.DeleteOperator;
+import de.tuberlin.dima.minidb.qexec.ExchangeOperator;
 import de.tuberlin.dima.minidb.qexec.FetchOperator;
 import de.tuberlin.dima.minidb.qexec.FilterCorrelatedOperator;
 import de.tuberlin.dima.minidb.qexec.FilterOperator;
 import de.tuberlin.dima.minidb.qexec.GroupByOperator;
+import de.tuberlin.dima.minidb.qexec.HashJoinOperator;
 import de.tuberlin.dima.minidb.qexec.IndexCorrelatedLookupOperator;
 import de.tuberlin.dima.minidb.qexec.IndexLookupOperator;
+import de.tuberlin.dima.minidb.qexec.IndexOnlyScanOperator;
+import de.tuberlin.dima.minidb.qexec.IndexProbeBatch;
 import de.tuberlin.dima.minidb.qexec.IndexScanOperator;
 import de.tuberlin.dima.minidb.qexec.InsertOperator;
 import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
@@ -46,6 +53,10 @@ import de.tuberlin.dima.minidb.semantics.SelectQueryAnalyzer;
 /**
  * A simple abstract factory-like extension point that supplies the actual implementation 
  * of classes being initialized with the class name of the concrete factory.
+ * <p>
+ * Methods that were added to the factory after its first version throw an
+ * <code>UnsupportedOperationException</code> unless a factory overrides them, such that
+ * factories compiled against the first version keep working.
  *  
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
@@ -186,6 +197,40 @@ public abstract class AbstractExtensionFactory
 	 */
 	abstract public BTreeIndex createBTreeIndex(IndexSchema schema, BufferPoolManager bufferPool, int resourceId);
 	
+	/**
+	 * Creates a B-Tree index that may be used by several threads at the same time, protecting
+	 * its pages with latches. In addition to the plain B-Tree index, the index supports
+	 * composite keys, included columns and batched lookups, which the query plans of composite,
+	 * covering and index maintaining operators rely on.
+	 * 
+	 * @param schema The schema of the index.
+	 * @param bufferPool The buffer pool manager that is used to request pages.
+	 * @param resourceId The id of the index, which allows to identify the resource.
+	 * @return A concurrent B-Tree index for the schema using the given buffer pool manager.
+	 */
+	public BTreeIndex createConcurrentBTreeIndex(IndexSchema schema, BufferPoolManager bufferPool, int resourceId)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
+	/**
+	 * Creates a hash index that allows to evaluate equality lookups. The index that is evaluated
+	 * is given by the resource-Id. All requests for pages go against the given buffer pool manager.
+	 *
+	 * @param resourceManager The resource manager of the index, which tracks its buckets.
+	 * @param bufferPool The buffer pool manager that is used to request pages.
+	 * @param resourceId The id of the index, which allows to identify the resource.
+	 * @return A hash index on the resource using the given buffer pool manager.
+	 */
+	public HashIndex createHashIndex(
+			HashIndexResourceManager resourceManager,
+			BufferPoolManager bufferPool,
+			int resourceId
+			)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
 	/**
 	 * Creates a new physical query plan operator performing a table scan.
 	 * 
@@ -226,6 +271,82 @@ public abstract class AbstractExtensionFactory
 			LowLevelPredicate[] predicate,
 			int prefetchWindowLength
 			);
+	
+	/**
+	 * Creates a new physical query plan operator performing a table scan that produces the
+	 * RIDs of the qualifying tuples, for late materialization. The scan reads the tuples 
+	 * together with their RIDs and produces, beside the RID, only the columns that are needed
+	 * above the scan before the remaining columns are fetched by a deferred FETCH.
+	 * 
+	 * The array of producedColumnIndexes is interpreted as for the regular table scan, with
+	 * the exception that an entry of {@link de.tuberlin.dima.minidb.semantics.Column#RID_COLUMN_INDEX}
+	 * denotes the position where the RID of the tuple is produced.
+	 * If the array contains {-1, 4} then the produced tuple contains two columns, the RID
+	 * and the table's original column 4. If the array contains no RID entry, the scan produces
+	 * the same tuples as the regular table scan.
+	 * 
+	 * Unlike the regular table scan, this scan consults the table's zone map and does not
+	 * fetch pages on which no tuple can pass the predicates. The plans therefore use it for
+	 * all serial scans with predicates.
+	 * 
+	 * @param bufferPool The buffer pool used to get the pages that are scanned.
+	 * @param tableManager The table manager used to get the page numbers of the pages
+	 *                     relevant to the scan.
+	 * @param resourceId The resource id of the table resource.
+	 * @param producedColumnIndexes The indexes of the columns that occur in the produced
+	 *                              tuple in the order as they are produced.
+	 * @param predicate An array of predicates each tuple must pass. The predicates are conjunctively
+	 *              connected, so if any of the predicates evaluates to false, the tuple is discarded.
+	 * @param prefetchWindowLength The number of pages to prefetch in advance to the page
+	 *                             that the operator currently works on.
+	 * @return A new physical plan operator representing a TableScan that produces RIDs.
+	 */
+	public TableScanOperator createRIDTableScanOperator(
+			BufferPoolManager bufferPool,
+			TableResourceManager tableManager,
+			int resourceId,
+			int[] producedColumnIndexes,
+			LowLevelPredicate[] predicate,
+			int prefetchWindowLength
+			)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
+	/**
+	 * Creates a new physical query plan operator performing a parallel table scan. The page range
+	 * of the table is split into morsels of consecutive pages, which worker threads take from a
+	 * shared counter. Each worker evaluates the predicates on its pages and hands the qualifying
+	 * tuples through a bounded queue to the operator, which returns them from <code>next()</code>.
+	 *
+	 * The produced columns and predicates are interpreted as for the regular table scan. The
+	 * tuples are not produced in table order, so the operator must only be used where no order
+	 * is required from the scan.
+	 *
+	 * @param bufferPool The buffer pool used to get the pages that are scanned.
+	 * @param tableManager The table manager used to get the page numbers of the pages
+	 *                     relevant to the scan.
+	 * @param resourceId The resource id of the table resource.
+	 * @param producedColumnIndexes The indexes of the columns that occur in the produced
+	 *                              tuple in the order as they are produced.
+	 * @param predicate An array of predicates each tuple must pass. The predicates are conjunctively
+	 *              connected, so if any of the predicates evaluates to false, the tuple is discarded.
+	 * @param prefetchWindowLength The number of pages each worker prefetches in advance.
+	 * @param degreeOfParallelism The number of worker threads.
+	 * @return A new physical plan operator representing a parallel TableScan.
+	 */
+	public TableScanOperator createParallelTableScanOperator(
+			BufferPoolManager bufferPool,
+			TableResourceManager tableManager,
+			int resourceId,
+			int[] producedColumnIndexes,
+			LowLevelPredicate[] predicate,
+			int prefetchWindowLength,
+			int degreeOfParallelism
+			)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
 
 	/**
 	 * Creates a new physical query plan operator performing an index scan.
@@ -300,6 +421,60 @@ public abstract class AbstractExtensionFactory
 			int resourceId,
 			PhysicalPlanOperator child
 			);
+	
+	/**
+	 * Creates a new physical query plan operator performing a delete that also removes the
+	 * entries of the deleted tuples from the indexes of the table.
+	 *
+	 * The delete operator reads the indexed columns of each tuple before it deletes the tuple,
+	 * and then deletes the (key / RID) pairs from the given indexes.
+	 *
+	 * @param bufferPool The buffer pool used to get the pages that are scanned.
+	 * @param resourceId The resource id of the table resource.
+	 * @param indexes The indexes of the table that need to be updated with the deleted values.
+	 * @param columnNumbers The column numbers that the different indexes refer to.
+	 * @param child The child operator generating the tuples to be deleted.
+	 * @return A new physical plan operator representing a DeleteOperator.
+	 */
+	public DeleteOperator createDeleteOperator(
+			BufferPoolManager bufferPool,
+			int resourceId,
+			BTreeIndex[] indexes,
+			int[] columnNumbers,
+			PhysicalPlanOperator child
+			)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	/**
+	 * Creates a new physical query plan operator performing a delete that removes the entries
+	 * of the deleted tuples from B-Tree indexes over one or several columns and from hash indexes.
+	 *
+	 * The keys of B-Tree indexes over several columns are composite keys of the indexed columns,
+	 * in the order given for the index.
+	 *
+	 * @param bufferPool The buffer pool used to get the pages that are scanned.
+	 * @param resourceId The resource id of the table resource.
+	 * @param indexes The B-Tree indexes of the table that need to be updated with the deleted values.
+	 * @param keyColumns For each B-Tree index, the column numbers of its key.
+	 * @param hashIndexes The hash indexes of the table that need to be updated with the deleted values.
+	 * @param hashColumns The column numbers that the different hash indexes refer to.
+	 * @param child The child operator generating the tuples to be deleted.
+	 * @return A new physical plan operator representing a DeleteOperator.
+	 */
+	public DeleteOperator createDeleteOperator(
+			BufferPoolManager bufferPool,
+			int resourceId,
+			BTreeIndex[] indexes,
+			int[][] keyColumns,
+			HashIndex[] hashIndexes,
+			int[] hashColumns,
+			PhysicalPlanOperator child
+			)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
 
 	/**
 	 * Creates a new Nested-Loop-Join operator, drawing tuples from the outer side in the outer
@@ -374,6 +549,113 @@ public abstract class AbstractExtensionFactory
 	abstract public IndexLookupOperator getIndexScanOperatorForBetweenPredicate(BTreeIndex index,
 	                                                                  DataField lowerBound, boolean lowerIncluded,
                                                                       DataField upperBound, boolean upperIncluded);
+	
+	/**
+	 * Creates an index-only scan operator that produces table columns from the entries of a covering
+	 * index in the given key range, without accessing the table. For an equality lookup, both bounds
+	 * are the same key and are included.
+	 *
+	 * @param index The index object used to access the index.
+	 * @param startKey The lower bound of the key range.
+	 * @param startKeyIncluded Flag indicating whether the lower bound itself is included in the range.
+	 * @param stopKey The upper bound of the key range.
+	 * @param stopKeyIncluded Flag indicating whether the upper bound itself is included in the range.
+	 * @param producedColumnIndexes The produced table columns, each indexed or included, where
+	 *                              <code>Column.RID_COLUMN_INDEX</code> marks the RID.
+	 * @return An implementation of the IndexOnlyScanOperator.
+	 */
+	public IndexOnlyScanOperator createIndexOnlyScanOperator(
+			BTreeIndex index,
+			DataField startKey,
+			boolean startKeyIncluded,
+			DataField stopKey,
+			boolean stopKeyIncluded,
+			int[] producedColumnIndexes
+			)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
+	/**
+	 * Creates an index lookup operator that returns the RIDs for the key given as the equality
+	 * literal from a hash index. The operator reads only the pages of the key's bucket.
+	 *
+	 * @param index The hash index used to look up the key.
+	 * @param equalityLiteral The key that the index returns the RIDs for.
+	 * @return An implementation of the IndexLookupOperator.
+	 */
+	public IndexLookupOperator createHashIndexLookupOperator(
+			HashIndex index,
+			DataField equalityLiteral
+			)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
+	/**
+	 * Creates a hash index lookup operator that works in a correlated fashion. For each time it is
+	 * opened, it returns the RIDs for the key equal to the correlated tuple's column at the specified
+	 * position.
+	 *
+	 * @param index The hash index used to look up the keys.
+	 * @param correlatedColumnIndex The index of the column in the correlated tuple that we evaluate against.
+	 * @return An implementation of the IndexCorrelatedLookupOperator.
+	 */
+	public IndexCorrelatedLookupOperator createHashIndexCorrelatedLookupOperator(
+			HashIndex index,
+			int correlatedColumnIndex
+			)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
+	/**
+	 * Creates an index lookup operator that works in a correlated fashion and resolves the keys of a
+	 * whole batch of correlated tuples at once. When it is opened for a tuple whose batch it has not
+	 * seen yet, it looks up all keys of the batch in one sorted pass over the index.
+	 *
+	 * @param index The index object used to access the index.
+	 * @param correlatedColumnIndex The index of the column in the correlated tuple that we evaluate against.
+	 * @param batch The batch through which the join publishes the keys of its outer tuples.
+	 * @return An implementation of the IndexCorrelatedLookupOperator.
+	 */
+	public IndexCorrelatedLookupOperator createBatchedIndexCorrelatedLookupOperator(
+			BTreeIndex index,
+			int correlatedColumnIndex,
+			IndexProbeBatch batch
+			)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
+	/**
+	 * Creates a nested-loop-join operator whose inner side is a batched correlated index lookup.
+	 * The join reads batches of outer tuples ahead and publishes their keys to the lookup, before it
+	 * joins them one after the other as described for the regular nested-loop-join.
+	 *
+	 * @param outerChild The outer child for the nested-loop-join.
+	 * @param innerChild The inner child for the nested-loop-join, containing the batched lookup.
+	 * @param joinPredicate The join predicate to be evaluated on the tuples.
+	 * @param columnMapOuterTuple The map describing how the columns from the outer tuple are copied
+	 *                            to the output tuple.
+	 * @param columnMapInnerTuple The map describing how the columns from the inner tuple are copied
+	 *                            to the output tuple.
+	 * @param batch The batch that the lookup on the inner side takes its keys from.
+	 * @param outerKeyColumn The column of the outer tuples holding the key of the lookup.
+	 * @return An implementation of the NestedLoopJoinOperator.
+	 */
+	public NestedLoopJoinOperator createBatchedNestedLoopJoinOperator(
+			PhysicalPlanOperator outerChild,
+			PhysicalPlanOperator innerChild,
+			JoinPredicate joinPredicate,
+			int[] columnMapOuterTuple,
+			int[] columnMapInnerTuple,
+			IndexProbeBatch batch,
+			int outerKeyColumn
+			)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
 
 	/**
 	 * Creates an index lookup operator that works in a correlated fashion. For each time it is opened, 
@@ -406,6 +688,60 @@ public abstract class AbstractExtensionFactory
 	abstract public FetchOperator createFetchOperator(PhysicalPlanOperator child,
 			BufferPoolManager bufferPool, int tableResourceId, int[] outputColumnMap);
 	
+	/**
+	 * Creates a new deferred FETCH operator that completes tuples produced by a late 
+	 * materialized plan. The child tuples carry the RID of a tuple in the table at a given
+	 * position. The operator fetches that tuple and produces a tuple that consists of fields
+	 * from the child tuple and fields from the fetched tuple.
+	 * 
+	 * Position <tt>i</tt> in the child column map holds the position of the field in the child
+	 * tuple that goes to position <tt>i</tt> of the output tuple, position <tt>i</tt> in the
+	 * fetched column map holds the original table column that goes to position <tt>i</tt>.
+	 * For each output position, exactly one of the two maps holds a value other than 
+	 * <tt>-1</tt>.
+	 * 
+	 * @param child The child operator of this fetch operator.
+	 * @param bufferPool The buffer pool used to take the pages from.
+	 * @param tableResourceId The resource id of the table that the tuples are fetched from.
+	 * @param ridColumnIndex The position of the RID in the child tuple.
+	 * @param childColumnMap The map describing which output columns are taken from the child tuple.
+	 * @param fetchedColumnMap The map describing which output columns are taken from the fetched tuple.
+	 * @return An implementation of the FetchOperator.
+	 */
+	public FetchOperator createDeferredFetchOperator(PhysicalPlanOperator child,
+			BufferPoolManager bufferPool, int tableResourceId, int ridColumnIndex,
+			int[] childColumnMap, int[] fetchedColumnMap)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
+	/**
+	 * Creates a new FETCH operator that first collects all RIDs from its child and sorts them,
+	 * such that each page of the table is read only once and the pages are read in ascending
+	 * order. The child tuples contain only the RID. The produced tuples are in RID order.
+	 *
+	 * The output column map is interpreted as in
+	 * {@link #createFetchOperator(PhysicalPlanOperator, BufferPoolManager, int, int[])}.
+	 *
+	 * @param child The child operator of this fetch operator.
+	 * @param bufferPool The buffer pool used to take the pages from.
+	 * @param tableResourceId The resource id of the table that the tuples are fetched from.
+	 * @param outputColumnMap The map describing how the column of the tuple produced by the
+	 *                        FETCH operator are produced from the tuple fetched from the table.
+	 * @param prefetchWindowLength The number of distinct pages to prefetch in advance.
+	 * @return An implementation of the FetchOperator.
+	 */
+	public FetchOperator createRIDSortedFetchOperator(
+			PhysicalPlanOperator child,
+			BufferPoolManager bufferPool,
+			int tableResourceId,
+			int[] outputColumnMap,
+			int prefetchWindowLength
+			)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
 	/**
 	 * Creates a new filter operator that evaluates a local predicate on the incoming tuples.
 	 * The filter does not work correlated, it applies no predicate against a correlated
@@ -458,6 +794,80 @@ public abstract class AbstractExtensionFactory
 			QueryHeap queryHeap, DataType[] columnTypes, int estimatedCardinality,
 			int[] sortColumns, boolean[] columnsAscending);
 	
+	/**
+	 * Creates a new sort operator that performs an external merge-sort after normalized keys.
+	 * The sort encodes an order-preserving prefix of the sort columns of each tuple into a
+	 * primitive key, sorts and merges the runs after these keys, and compares the fields only
+	 * for tuples with equal keys.
+	 * 
+	 * The parameters are interpreted as for the regular sort operator.
+	 * 
+	 * @param child The child of the operator, producing the tuples to be sorted.
+	 * @param queryHeap The heap which manages the memory and manages reading and writing of the
+	 *                  temporary lists.
+	 * @param columnTypes An array of the types of the tuple's fields.
+	 * @param estimatedCardinality The estimated number of tuples to sort.
+	 * @param sortColumns The indices of the columns after which to sort.
+	 * @param columnsAscending An array indicating the sort direction of each sort column.
+	 * @return An implementation of the SortOperator.
+	 */
+	public SortOperator createNormalizedKeySortOperator(PhysicalPlanOperator child,
+			QueryHeap queryHeap, DataType[] columnTypes, int estimatedCardinality,
+			int[] sortColumns, boolean[] columnsAscending)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
+	/**
+	 * Creates a new sort operator that performs an external merge-sort with several threads.
+	 * Each run is sorted by splitting the key range into partitions that the threads sort
+	 * concurrently, and the final merge of many runs is split into groups of runs that the
+	 * threads merge concurrently. The sort must not use more memory than granted by the query
+	 * heap for a sort with a single thread.
+	 * 
+	 * The parameters are interpreted as for the regular sort operator.
+	 * 
+	 * @param child The child of the operator, producing the tuples to be sorted.
+	 * @param queryHeap The heap which manages the memory and manages reading and writing of the
+	 *                  temporary lists.
+	 * @param columnTypes An array of the types of the tuple's fields.
+	 * @param estimatedCardinality The estimated number of tuples to sort.
+	 * @param sortColumns The indices of the columns after which to sort.
+	 * @param columnsAscending An array indicating the sort direction of each sort column.
+	 * @param degreeOfParallelism The number of threads that sort and merge.
+	 * @return An implementation of the SortOperator.
+	 */
+	public SortOperator createParallelSortOperator(PhysicalPlanOperator child,
+			QueryHeap queryHeap, DataType[] columnTypes, int estimatedCardinality,
+			int[] sortColumns, boolean[] columnsAscending, int degreeOfParallelism)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
+	/**
+	 * Creates a new top-N sort operator that produces only the first tuples of the sorted input.
+	 * The operator keeps the best <tt>rowLimit</tt> tuples seen so far in a bounded heap, so it
+	 * never writes to temp space, and it produces them in the requested order.
+	 *
+	 * @param child The child of the operator, producing the tuples to be sorted.
+	 * @param sortColumns The indices of the columns after which to sort. The primary sort column
+	 *                    is <tt>sortColumns[0]</tt>, the secondary sort column is
+	 *                    <tt>sortColumns[1]</tt>, and so on...
+	 * @param columnsAscending An array indicating the sort direction of a column, true for
+	 *                         ascending, false for descending order.
+	 * @param rowLimit The number of tuples to produce at most.
+	 * @return An implementation of the SortOperator.
+	 */
+	public SortOperator createTopNSortOperator(
+			PhysicalPlanOperator child,
+			int[] sortColumns,
+			boolean[] columnsAscending,
+			int rowLimit
+			)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
 	/**
 	 * Creates a group by operator that groups and aggregates a sorted stream of tuples.
 	 * 
@@ -509,6 +919,80 @@ public abstract class AbstractExtensionFactory
 			OutputColumn.AggregationType[] aggregateFunctions,
 			DataType[] aggColumnTypes,
 			int[] groupColumnOutputPositions, int[] aggregateColumnOutputPosition);
+	
+	/**
+	 * Creates a group by operator that groups and aggregates an unsorted stream of tuples in a hash
+	 * table. It has the same contract as the operator created by
+	 * {@link #createGroupByOperator(PhysicalPlanOperator, int[], int[], OutputColumn.AggregationType[], DataType[], int[], int[])},
+	 * except that the child need not produce its tuples in any order and that the groups are produced
+	 * in no particular order. If there are more groups than fit into the memory that the query heap
+	 * grants, the tuples of the groups that do not fit are partitioned and written to temp space, to
+	 * be aggregated after the groups in memory are produced.
+	 *
+	 * @param child The child of the operator, delivering the tuples to be grouped and aggregated.
+	 * @param queryHeap The heap which grants the memory for the hash table and manages the temp
+	 *                  space for the written partitions.
+	 * @param inputColumnTypes The types of the fields of the input tuples.
+	 * @param estimatedGroups The estimated number of groups, used to determine the amount of
+	 *                        memory to request.
+	 * @param groupColumnIndices The indices of the grouping columns in the input tuple.
+	 * @param aggColumnIndices The indices of the aggregate columns in the input tuple.
+	 * @param aggregateFunctions The functions that are used for aggregation.
+	 * @param aggColumnTypes The types of the aggregated functions.
+	 * @param groupColumnOutputPositions The map describing in which position in the produced tuple
+	 *                                   the grouping columns will be put.
+	 * @param aggregateColumnOutputPosition The map describing in which position in the produced
+	 *                                      tuple the aggregate columns will be put.
+	 * @return An implementation of the GroupByOperator.
+	 */
+	public GroupByOperator createHashGroupByOperator(
+			PhysicalPlanOperator child,
+			QueryHeap queryHeap,
+			DataType[] inputColumnTypes,
+			int estimatedGroups,
+			int[] groupColumnIndices,
+			int[] aggColumnIndices,
+			OutputColumn.AggregationType[] aggregateFunctions,
+			DataType[] aggColumnTypes,
+			int[] groupColumnOutputPositions,
+			int[] aggregateColumnOutputPosition
+			)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	/**
+	 * Creates a group by operator for a grouping on a single dictionary encoded column. It has
+	 * the same contract as the operator created by
+	 * {@link #createHashGroupByOperator(PhysicalPlanOperator, QueryHeap, DataType[], int, int[], int[], OutputColumn.AggregationType[], DataType[], int[], int[])},
+	 * but aggregates into arrays indexed by the dictionary code of the grouping value, instead
+	 * of a hash table. The groups are produced in code order.
+	 *
+	 * @param child The child of the operator, delivering the tuples to be grouped and aggregated.
+	 * @param dictionary The dictionary of the grouping column.
+	 * @param groupColumnIndex The index of the grouping column in the input tuple.
+	 * @param aggColumnIndices The indices of the aggregate columns in the input tuple.
+	 * @param aggregateFunctions The functions that are used for aggregation.
+	 * @param aggColumnTypes The types of the aggregated functions.
+	 * @param groupColumnOutputPositions The map describing in which position in the produced tuple
+	 *                                   the grouping column will be put.
+	 * @param aggregateColumnOutputPosition The map describing in which position in the produced
+	 *                                      tuple the aggregate columns will be put.
+	 * @return An implementation of the GroupByOperator.
+	 */
+	public GroupByOperator createCodeIndexedGroupByOperator(
+			PhysicalPlanOperator child,
+			ColumnDictionary dictionary,
+			int groupColumnIndex,
+			int[] aggColumnIndices,
+			OutputColumn.AggregationType[] aggregateFunctions,
+			DataType[] aggColumnTypes,
+			int[] groupColumnOutputPositions,
+			int[] aggregateColumnOutputPosition
+			)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
 
 	/**
 	 * Creates a merge join operator that joins two sorted streams of tuples.
@@ -551,6 +1035,97 @@ public abstract class AbstractExtensionFactory
 			PhysicalPlanOperator rightChild, int[] leftJoinColumns, 
 			int[] rightJoinColumns, int[] columnMapLeftTuple, int[] columnMapRightTuple);
 	
+	/**
+	 * Creates a new hybrid hash join operator that performs an inner equi-join. The operator builds
+	 * a hash table on the tuples of its build side and probes it with the tuples of its probe side.
+	 * If the build side exceeds the memory that the query heap grants, the operator partitions both
+	 * sides and writes the partitions that do not fit to temp space, to join them pairwise later.
+	 * The tuples are produced in no particular order.
+	 *
+	 * @param buildChild The child producing the tuples that the hash table is built on.
+	 * @param probeChild The child producing the tuples that probe the hash table.
+	 * @param queryHeap The heap which grants the memory for the hash table and manages the temp
+	 *                  space for the spilled partitions.
+	 * @param buildColumnTypes The types of the fields of the build side's tuples.
+	 * @param probeColumnTypes The types of the fields of the probe side's tuples.
+	 * @param buildJoinColumns The indices of the join columns in the build side's tuples.
+	 * @param probeJoinColumns The indices of the join columns in the probe side's tuples.
+	 * @param buildOutColumnMap The map describing which column of the build side's tuple goes
+	 *                          to which position in the output tuple, -1 for a column taken from
+	 *                          the probe side.
+	 * @param probeOutColumnMap The map describing which column of the probe side's tuple goes
+	 *                          to which position in the output tuple.
+	 * @param estimatedBuildCardinality The estimated number of tuples on the build side, used to
+	 *                                  determine the amount of memory to request.
+	 * @return An implementation of the HashJoinOperator.
+	 */
+	public HashJoinOperator createHashJoinOperator(
+			PhysicalPlanOperator buildChild,
+			PhysicalPlanOperator probeChild,
+			QueryHeap queryHeap,
+			DataType[] buildColumnTypes,
+			DataType[] probeColumnTypes,
+			int[] buildJoinColumns,
+			int[] probeJoinColumns,
+			int[] buildOutColumnMap,
+			int[] probeOutColumnMap,
+			int estimatedBuildCardinality
+			)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
+	/**
+	 * Creates a new exchange operator that gathers the tuples of several producer subplans. Each
+	 * producer is opened, drained and closed by its own thread, and the tuples are passed in
+	 * batches through a bounded queue to the returned operator, which returns them in no
+	 * particular order.
+	 *
+	 * @param producers The subplans producing the tuples.
+	 * @return The exchange operator returning the tuples of all producers.
+	 */
+	public ExchangeOperator createGatherExchangeOperator(PhysicalPlanOperator[] producers)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
+	/**
+	 * Creates a new exchange that partitions the tuples of several producer subplans by the hash
+	 * value of some of their columns. Each producer runs in its own thread. The returned operators
+	 * are the consumers, one per partition, and all tuples that agree in the hash columns are
+	 * returned by the same consumer. The consumers must run in different threads.
+	 *
+	 * @param producers The subplans producing the tuples.
+	 * @param hashColumns The columns whose values decide the partition of a tuple.
+	 * @param numConsumers The number of partitions.
+	 * @return The exchange operators of the consumers.
+	 */
+	public ExchangeOperator[] createHashRepartitionExchangeOperators(
+			PhysicalPlanOperator[] producers,
+			int[] hashColumns,
+			int numConsumers
+			)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
+	/**
+	 * Creates a new exchange that sends every tuple of several producer subplans to each of a
+	 * number of consumers. Each producer runs in its own thread. The consumers share the tuples,
+	 * which must therefore not be modified, and must run in different threads.
+	 *
+	 * @param producers The subplans producing the tuples.
+	 * @param numConsumers The number of consumers.
+	 * @return The exchange operators of the consumers.
+	 */
+	public ExchangeOperator[] createBroadcastExchangeOperators(
+			PhysicalPlanOperator[] producers,
+			int numConsumers
+			)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
 	/**
 	 * Creates an optimizer for the order of joins.
 	 * 
@@ -14,22 +14,31 @@ import de.tuberlin.dima.minidb.io.cache.PageCache;
 import de.tuberlin.dima.minidb.io.cache.PageFormatException;
 import de.tuberlin.dima.minidb.io.cache.PageSize;
 import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.HashIndex;
+import de.tuberlin.dima.minidb.io.index.HashIndexResourceManager;
 import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
 import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.ColumnDictionary;
 import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
 import de.tuberlin.dima.minidb.optimizer.cardinality.CardinalityEstimator;
 import de.tuberlin.dima.minidb.optimizer.cost.CostEstimator;
 import de.tuberlin.dima.minidb.optimizer.generator.PhysicalPlanGenerator;
 import de.tuberlin.dima.minidb.optimizer.joins.JoinOrderOptimizer;
+import de.tuberlin.dima.minidb.parser.LimitClauseParser;
+import de.tuberlin.dima.minidb.parser.OutputColumn;
 import de.tuberlin.dima.minidb.parser.OutputColumn.AggregationType;
 import de.tuberlin.dima.minidb.parser.SQLParser;
 import de.tuberlin.dima.minidb.qexec.DeleteOperator;
+import de.tuberlin.dima.minidb.qexec.ExchangeOperator;
 import de.tuberlin.dima.minidb.qexec.FetchOperator;
 import de.tuberlin.dima.minidb.qexec.FilterCorrelatedOperator;
 import de.tuberlin.dima.minidb.qexec.FilterOperator;
 import de.tuberlin.dima.minidb.qexec.GroupByOperator;
+import de.tuberlin.dima.minidb.qexec.HashJoinOperator;
 import de.tuberlin.dima.minidb.qexec.IndexCorrelatedLookupOperator;
 import de.tuberlin.dima.minidb.qexec.IndexLookupOperator;
+import de.tuberlin.dima.minidb.qexec.IndexOnlyScanOperator;
+import de.tuberlin.dima.minidb.qexec.IndexProbeBatch;
 import de.tuberlin.dima.minidb.qexec.IndexScanOperator;
 import de.tuberlin.dima.minidb.qexec.InsertOperator;
 import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
@@ -84,9 +93,18 @@ public final class LayeredExtensionFactory extends AbstractExtensionFactory {
 
 	@Override
 	public SQLParser getParser(String sqlStatement) {
+		// the LIMIT clause is split off and parsed separately from the rest of the statement
+		LimitClauseParser limitParser = LimitClauseParser.splitLimitClause(sqlStatement);
+		String statement = limitParser == null ? sqlStatement : limitParser.getStatementWithoutLimit();
+		
 		for (AbstractExtensionFactory factory: this.factories) {
 			try {
-				return factory.getParser(sqlStatement);
+				SQLParser parser = factory.getParser(statement);
+				if (limitParser == null || parser == null) {
+					return parser;
+				}
+				limitParser.setStatementParser(parser);
+				return limitParser;
 			} catch (UnsupportedOperationException e) {
 				// ignore exception
 			}
@@ -166,6 +184,30 @@ public final class LayeredExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public BTreeIndex createConcurrentBTreeIndex(IndexSchema schema, BufferPoolManager bufferPool, int resourceId) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createConcurrentBTreeIndex(schema, bufferPool, resourceId);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public HashIndex createHashIndex(HashIndexResourceManager resourceManager, BufferPoolManager bufferPool, int resourceId) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createHashIndex(resourceManager, bufferPool, resourceId);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	@Override
 	public TableScanOperator createTableScanOperator(BufferPoolManager bufferPool, TableResourceManager tableManager, int resourceId,
 			int[] producedColumnIndexes, LowLevelPredicate[] predicate, int prefetchWindowLength) {
@@ -179,6 +221,31 @@ public final class LayeredExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public TableScanOperator createRIDTableScanOperator(BufferPoolManager bufferPool, TableResourceManager tableManager, int resourceId,
+			int[] producedColumnIndexes, LowLevelPredicate[] predicate, int prefetchWindowLength) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createRIDTableScanOperator(bufferPool, tableManager, resourceId, producedColumnIndexes, predicate, prefetchWindowLength);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public TableScanOperator createParallelTableScanOperator(BufferPoolManager bufferPool, TableResourceManager tableManager, int resourceId, int[] producedColumnIndexes, LowLevelPredicate[] predicate, int prefetchWindowLength, int degreeOfParallelism) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createParallelTableScanOperator(bufferPool, tableManager, resourceId, producedColumnIndexes, predicate, prefetchWindowLength, degreeOfParallelism);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	@Override
 	public IndexScanOperator createIndexScanOperator(BTreeIndex index, DataField startKey, DataField stopKey, boolean startKeyIncluded, boolean stopKeyIncluded) {
 		for (AbstractExtensionFactory factory: this.factories) {
@@ -216,6 +283,31 @@ public final class LayeredExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public DeleteOperator createDeleteOperator(BufferPoolManager bufferPool, int resourceId, BTreeIndex[] indexes, int[] columnNumbers, PhysicalPlanOperator child) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createDeleteOperator(bufferPool, resourceId, indexes, columnNumbers, child);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public DeleteOperator createDeleteOperator(BufferPoolManager bufferPool, int resourceId, BTreeIndex[] indexes, int[][] keyColumns,
+			HashIndex[] hashIndexes, int[] hashColumns, PhysicalPlanOperator child) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createDeleteOperator(bufferPool, resourceId, indexes, keyColumns, hashIndexes, hashColumns, child);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	@Override
 	public NestedLoopJoinOperator createNestedLoopJoinOperator(PhysicalPlanOperator outerChild, PhysicalPlanOperator innerChild, JoinPredicate joinPredicate,
 			int[] columnMapOuterTuple, int[] columnMapInnerTuple) {
@@ -254,6 +346,66 @@ public final class LayeredExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public IndexOnlyScanOperator createIndexOnlyScanOperator(BTreeIndex index, DataField startKey, boolean startKeyIncluded, DataField stopKey, boolean stopKeyIncluded, int[] producedColumnIndexes) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createIndexOnlyScanOperator(index, startKey, startKeyIncluded, stopKey, stopKeyIncluded, producedColumnIndexes);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public IndexLookupOperator createHashIndexLookupOperator(HashIndex index, DataField equalityLiteral) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createHashIndexLookupOperator(index, equalityLiteral);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public IndexCorrelatedLookupOperator createHashIndexCorrelatedLookupOperator(HashIndex index, int correlatedColumnIndex) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createHashIndexCorrelatedLookupOperator(index, correlatedColumnIndex);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public IndexCorrelatedLookupOperator createBatchedIndexCorrelatedLookupOperator(BTreeIndex index, int correlatedColumnIndex, IndexProbeBatch batch) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createBatchedIndexCorrelatedLookupOperator(index, correlatedColumnIndex, batch);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public NestedLoopJoinOperator createBatchedNestedLoopJoinOperator(PhysicalPlanOperator outerChild, PhysicalPlanOperator innerChild, JoinPredicate joinPredicate, int[] columnMapOuterTuple, int[] columnMapInnerTuple, IndexProbeBatch batch, int outerKeyColumn) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createBatchedNestedLoopJoinOperator(outerChild, innerChild, joinPredicate, columnMapOuterTuple, columnMapInnerTuple, batch, outerKeyColumn);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	@Override
 	public IndexCorrelatedLookupOperator getIndexCorrelatedScanOperator(BTreeIndex index, int correlatedColumnIndex) {
 		for (AbstractExtensionFactory factory: this.factories) {
@@ -278,6 +430,31 @@ public final class LayeredExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public FetchOperator createDeferredFetchOperator(PhysicalPlanOperator child, BufferPoolManager bufferPool, int tableResourceId, int ridColumnIndex,
+			int[] childColumnMap, int[] fetchedColumnMap) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createDeferredFetchOperator(child, bufferPool, tableResourceId, ridColumnIndex, childColumnMap, fetchedColumnMap);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public FetchOperator createRIDSortedFetchOperator(PhysicalPlanOperator child, BufferPoolManager bufferPool, int tableResourceId, int[] outputColumnMap, int prefetchWindowLength) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createRIDSortedFetchOperator(child, bufferPool, tableResourceId, outputColumnMap, prefetchWindowLength);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	@Override
 	public FilterOperator createFilterOperator(PhysicalPlanOperator child, LocalPredicate predicate) {
 		for (AbstractExtensionFactory factory: this.factories) {
@@ -315,6 +492,44 @@ public final class LayeredExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public SortOperator createNormalizedKeySortOperator(PhysicalPlanOperator child, QueryHeap queryHeap, DataType[] columnTypes,
+			int estimatedCardinality, int[] sortColumns, boolean[] columnsAscending) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createNormalizedKeySortOperator(child, queryHeap, columnTypes, estimatedCardinality, sortColumns, columnsAscending);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public SortOperator createParallelSortOperator(PhysicalPlanOperator child, QueryHeap queryHeap, DataType[] columnTypes, int estimatedCardinality,
+			int[] sortColumns, boolean[] columnsAscending, int degreeOfParallelism) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createParallelSortOperator(child, queryHeap, columnTypes, estimatedCardinality, sortColumns, columnsAscending, degreeOfParallelism);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public SortOperator createTopNSortOperator(PhysicalPlanOperator child, int[] sortColumns, boolean[] columnsAscending, int rowLimit) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createTopNSortOperator(child, sortColumns, columnsAscending, rowLimit);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	@Override
 	public GroupByOperator createGroupByOperator(PhysicalPlanOperator child, int[] groupColumnIndices, int[] aggColumnIndices,
 			AggregationType[] aggregateFunctions, DataType[] aggColumnTypes, int[] groupColumnOutputPositions, int[] aggregateColumnOutputPosition) {
@@ -329,6 +544,30 @@ public final class LayeredExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public GroupByOperator createHashGroupByOperator(PhysicalPlanOperator child, QueryHeap queryHeap, DataType[] inputColumnTypes, int estimatedGroups, int[] groupColumnIndices, int[] aggColumnIndices, OutputColumn.AggregationType[] aggregateFunctions, DataType[] aggColumnTypes, int[] groupColumnOutputPositions, int[] aggregateColumnOutputPosition) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createHashGroupByOperator(child, queryHeap, inputColumnTypes, estimatedGroups, groupColumnIndices, aggColumnIndices, aggregateFunctions, aggColumnTypes, groupColumnOutputPositions, aggregateColumnOutputPosition);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public GroupByOperator createCodeIndexedGroupByOperator(PhysicalPlanOperator child, ColumnDictionary dictionary, int groupColumnIndex, int[] aggColumnIndices, OutputColumn.AggregationType[] aggregateFunctions, DataType[] aggColumnTypes, int[] groupColumnOutputPositions, int[] aggregateColumnOutputPosition) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createCodeIndexedGroupByOperator(child, dictionary, groupColumnIndex, aggColumnIndices, aggregateFunctions, aggColumnTypes, groupColumnOutputPositions, aggregateColumnOutputPosition);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	@Override
 	public MergeJoinOperator createMergeJoinOperator(PhysicalPlanOperator leftChild, PhysicalPlanOperator rightChild, int[] leftJoinColumns,
 			int[] rightJoinColumns, int[] columnMapLeftTuple, int[] columnMapRightTuple) {
@@ -342,6 +581,54 @@ public final class LayeredExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public HashJoinOperator createHashJoinOperator(PhysicalPlanOperator buildChild, PhysicalPlanOperator probeChild, QueryHeap queryHeap, DataType[] buildColumnTypes, DataType[] probeColumnTypes, int[] buildJoinColumns, int[] probeJoinColumns, int[] buildOutColumnMap, int[] probeOutColumnMap, int estimatedBuildCardinality) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createHashJoinOperator(buildChild, probeChild, queryHeap, buildColumnTypes, probeColumnTypes, buildJoinColumns, probeJoinColumns, buildOutColumnMap, probeOutColumnMap, estimatedBuildCardinality);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public ExchangeOperator createGatherExchangeOperator(PhysicalPlanOperator[] producers) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createGatherExchangeOperator(producers);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public ExchangeOperator[] createHashRepartitionExchangeOperators(PhysicalPlanOperator[] producers, int[] hashColumns, int numConsumers) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createHashRepartitionExchangeOperators(producers, hashColumns, numConsumers);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public ExchangeOperator[] createBroadcastExchangeOperators(PhysicalPlanOperator[] producers, int numConsumers) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createBroadcastExchangeOperators(producers, numConsumers);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	@Override
 	public JoinOrderOptimizer createJoinOrderOptimizer(CardinalityEstimator estimator) {
 		for (AbstractExtensionFactory factory: this.factories) {
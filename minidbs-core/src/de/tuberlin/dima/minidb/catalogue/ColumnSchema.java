@@ -31,6 +31,11 @@ public class ColumnSchema
 	 * A flag indicating that the column has unique entries.
 	 */
 	private boolean unique;
+	
+	/**
+	 * A flag indicating that the values of the column are replaced by codes from a dictionary.
+	 */
+	private boolean dictionaryEncoded;
 
 	
 	
@@ -80,6 +85,29 @@ public class ColumnSchema
 		this.unique = unique;
 	}
 	
+	/**
+	 * Create a new instance of the column schema.
+	 * 
+	 * @param name The name of the column.
+	 * @param type The data type for the fields in this column.
+	 * @param nullable Whether the column is allowed to accept NULL values.
+	 * @param unique Whether the column has unique values.
+	 * @param dictionaryEncoded Whether the column values are stored as dictionary codes.
+	 *                          Only valid for fix length types.
+	 */
+	protected ColumnSchema(String name, DataType type, boolean nullable, boolean unique, boolean dictionaryEncoded)
+	{
+		if (dictionaryEncoded && !type.isFixLength()) {
+			throw new IllegalArgumentException("Dictionary encoding is supported only for fix length types.");
+		}
+		
+		this.columnName = name;
+		this.dataType = type;
+		this.nullable = nullable;
+		this.unique = unique;
+		this.dictionaryEncoded = dictionaryEncoded;
+	}
+	
 	
 	
 	/**
@@ -122,6 +150,16 @@ public class ColumnSchema
 		return this.unique;
 	}
 	
+	/**
+	 * Checks, if the column values are stored as codes from a dictionary.
+	 * 
+	 * @return true, if the column is dictionary encoded.
+	 */
+	public boolean isDictionaryEncoded()
+	{
+		return this.dictionaryEncoded;
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
@@ -138,6 +176,9 @@ public class ColumnSchema
 		if (!this.nullable) {
 			bld.append(" NOT NULL");
 		}
+		if (this.dictionaryEncoded) {
+			bld.append(" DICTIONARY");
+		}
 		
 		return bld.toString();
 	}
@@ -183,4 +224,19 @@ public class ColumnSchema
 	{
 		return new ColumnSchema(name, type, nullable, unique);
 	}
+
+	/**
+	 * Create a new instance of the column schema.
+	 * 
+	 * @param name The name of the column.
+	 * @param type The data type for the fields in this column.
+	 * @param nullable Whether the column is allowed to accept NULL values.
+	 * @param unique Whether the column has unique values.
+	 * @param dictionaryEncoded Whether the column values are stored as dictionary codes.
+	 */
+	public static ColumnSchema createColumnSchema(
+			String name, DataType type, boolean nullable, boolean unique, boolean dictionaryEncoded)
+	{
+		return new ColumnSchema(name, type, nullable, unique, dictionaryEncoded);
+	}
 }
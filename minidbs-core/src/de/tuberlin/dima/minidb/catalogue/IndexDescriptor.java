@@ -1,6 +1,7 @@
 package de.tuberlin.dima.minidb.catalogue;
 
 
+import de.tuberlin.dima.minidb.io.index.HashIndexResourceManager;
 import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
 
 
@@ -8,6 +9,10 @@ import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
  * This objects describes indexes and is usually obtained from the catalogue. It describes
  * the file containing the index data, but it also gives access to the index's resource
  * manager, statistics and internally used IDs.
+ * <p>
+ * An index is either a B-Tree index, accessed through an {@link IndexResourceManager}, or a
+ * hash index, accessed through a {@link HashIndexResourceManager}. Exactly one of the two
+ * resource managers is set, once the index file has been opened.
  * 
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
@@ -43,6 +48,11 @@ public class IndexDescriptor
 	 */
 	private transient IndexResourceManager resourceManager;
 	
+	/**
+	 * The resource manager that allows access to the index, if it is a hash index.
+	 */
+	private transient HashIndexResourceManager hashResourceManager;
+	
 	/**
 	 * The id that is internally used to identify the index.
 	 */
@@ -133,15 +143,35 @@ public class IndexDescriptor
 	}
 	
 	/**
-	 * Gets the resource manager for this index.
+	 * Gets the resource manager for this index, if it is a B-Tree index.
 	 * 
-	 * @return This index's resource manager.
+	 * @return This index's resource manager, or null, if it is a hash index.
 	 */
 	public IndexResourceManager getResourceManager()
 	{
 		return this.resourceManager;
 	}
 	
+	/**
+	 * Gets the resource manager for this index, if it is a hash index.
+	 * 
+	 * @return This index's resource manager, or null, if it is a B-Tree index.
+	 */
+	public HashIndexResourceManager getHashResourceManager()
+	{
+		return this.hashResourceManager;
+	}
+	
+	/**
+	 * Checks whether this index is a hash index, which answers only equality lookups.
+	 * 
+	 * @return True, if this is a hash index, false if it is a B-Tree index.
+	 */
+	public boolean isHashIndex()
+	{
+		return this.hashResourceManager != null;
+	}
+	
 	/**
 	 * Gets the index schema.
 	 * 
@@ -149,6 +179,9 @@ public class IndexDescriptor
 	 */
 	public IndexSchema getSchema()
 	{
+		if (this.hashResourceManager != null) {
+			return this.hashResourceManager.getSchema();
+		}
 		return this.resourceManager == null ? null : this.resourceManager.getSchema();
 	}
 	
@@ -172,7 +205,7 @@ public class IndexDescriptor
 		}
 		
 		// assign fields
-		if (this.resourceManager == null) {
+		if (this.resourceManager == null && this.hashResourceManager == null) {
 			// not been set before, set now
 			this.resourceManager = resourceManager;
 			this.indexedTable = indexedTable;
@@ -189,6 +222,43 @@ public class IndexDescriptor
 		}
 	}
 	
+	/**
+	 * Sets the resource properties of a hash index that are only available after the files
+	 * have been opened.
+	 * 
+	 * @param resourceManager The hash index's resource manager.
+	 * @param indexedTable The descriptor of the indexed table.
+	 * @param resourceId The internal resource id.
+	 */
+	public void setResourceProperties(HashIndexResourceManager resourceManager, 
+			                          TableDescriptor indexedTable, int resourceId)
+	{
+		// parameter check
+		if (resourceManager == null) {
+			throw new NullPointerException("ResourceManager must not be null.");
+		}
+		if (indexedTable == null) {
+			throw new NullPointerException("IndexedTable must not be null");
+		}
+		
+		// assign fields
+		if (this.resourceManager == null && this.hashResourceManager == null) {
+			// not been set before, set now
+			this.hashResourceManager = resourceManager;
+			this.indexedTable = indexedTable;
+			this.internalResourceId = resourceId;
+		}
+		else if (resourceManager != this.hashResourceManager ||
+				this.indexedTable != indexedTable ||
+				this.internalResourceId != resourceId)
+		{
+			// has been set previously, must not be assigned to a new value
+			throw new IllegalStateException(
+					"Resource peroperties have previously been assigned to different" +
+					" values and must not be reassigned");
+		}
+	}
+	
 	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
@@ -2,7 +2,10 @@ package de.tuberlin.dima.minidb.catalogue;
 
 
 import java.io.IOException;
+import java.util.Arrays;
 
+import de.tuberlin.dima.minidb.core.BasicType;
+import de.tuberlin.dima.minidb.core.DataType;
 import de.tuberlin.dima.minidb.core.RID;
 import de.tuberlin.dima.minidb.io.cache.PageSize;
 import de.tuberlin.dima.minidb.io.index.BTreeIndexPage;
@@ -12,6 +15,14 @@ import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
 /**
  * A simple description of the schema of an index. In contrast to a table schema, it
  * is not completely static, but allows the the root node and first leaf node to change.
+ * <p>
+ * An index is either over a single column, or a composite index over several columns. The
+ * keys of a composite index are {@link de.tuberlin.dima.minidb.core.CompositeField}s, which
+ * are ordered lexicographically by the columns in the order given to the schema.
+ * <p>
+ * An index may additionally include payload columns in its leaf entries. The included columns
+ * are not part of the key, but are stored next to the RID of each entry, so that queries
+ * reading only indexed and included columns are answered from the index alone.
  * 
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
@@ -28,9 +39,14 @@ public class IndexSchema
 	private PageSize pageSize;
 	
 	/**
-	 * The column indexed by this index.
+	 * The columns indexed by this index, in the order of the key fields.
 	 */
-	private int indexedColumn;
+	private int[] indexedColumns;
+	
+	/**
+	 * The columns included as payload in the leaf entries.
+	 */
+	private int[] includedColumns;
 
 	/**
 	 * Gets the fan-out (degree) of the B-Tree, i.e. the number of keys in internal nodes.
@@ -47,6 +63,21 @@ public class IndexSchema
 	 */
 	private boolean unique;
 	
+	/**
+	 * Flag indicating that the index pages store the keys in the compact format.
+	 */
+	private boolean compactKeys;
+	
+	/**
+	 * The number of bytes that a key occupies on the index pages.
+	 */
+	private int keyWidth;
+	
+	/**
+	 * The number of bytes that the included columns occupy in a leaf entry.
+	 */
+	private int includedWidth;
+	
 	/**
 	 * The page number of the root page.
 	 */
@@ -125,12 +156,149 @@ public class IndexSchema
 	 */
 	public IndexSchema(TableSchema indexedTable, int column, PageSize pageSize, boolean unique,
 			           int rootNode, int firstLeafNode)
+	{
+		this(indexedTable, column, pageSize, unique, false, rootNode, firstLeafNode);
+	}
+	
+	/**
+	 * Creates a new index schema for an index over the table described by the
+	 * given schema indexing the given columns. The nodes of the index are pages
+	 * of the given size.
+	 * 
+	 * In the compact key format, CHAR keys are stored with one byte per character
+	 * instead of two, which doubles the number of keys per page. The order of the
+	 * bytes is the order of the keys. Characters above <code>0xfd</code> take three
+	 * bytes, which the trailing spaces of the key must make room for. For other data
+	 * types, the flag has no effect.
+	 * 
+	 * Root node and first leaf node are set as given.
+	 * 
+	 * @param indexedTable The schema of the table that is indexed.
+	 * @param column The number (starting at 0) of the column that is indexed.
+	 * @param pageSize The size of the pages that hold the index data.
+	 * @param unique Whether the entries in this index should be unique.
+	 * @param compactKeys Whether the keys are stored in the compact format.
+	 * @param rootNode The page number of the root node.
+	 * @param firstLeafNode The page number of the first (left most) leaf node.
+	 */
+	public IndexSchema(TableSchema indexedTable, int column, PageSize pageSize, boolean unique,
+			           boolean compactKeys, int rootNode, int firstLeafNode)
+	{
+		this(indexedTable, new int[] { column }, pageSize, unique, compactKeys, rootNode, firstLeafNode);
+	}
+	
+	/**
+	 * Creates a new schema for a composite index over the given columns of the table described
+	 * by the given schema. The nodes of the index are pages of the given size.
+	 * 
+	 * Root node and first leaf node are set to 1 (behind the minimal header).
+	 * 
+	 * @param indexedTable The schema of the table that is indexed.
+	 * @param columns The numbers (starting at 0) of the indexed columns, in the order of the
+	 *                key fields.
+	 * @param pageSize The size of the pages that hold the index data.
+	 * @param unique Whether the entries in this index should be unique.
+	 */
+	public IndexSchema(TableSchema indexedTable, int[] columns, PageSize pageSize, boolean unique)
+	{
+		this(indexedTable, columns, pageSize, unique, false, 1, 1);
+	}
+	
+	/**
+	 * Creates a new index schema for an index over the given columns of the table described by
+	 * the given schema. If more than one column is given, the index is a composite index. The
+	 * compact key format applies only to indexes over a single CHAR column.
+	 * 
+	 * Root node and first leaf node are set as given.
+	 * 
+	 * @param indexedTable The schema of the table that is indexed.
+	 * @param columns The numbers (starting at 0) of the indexed columns, in the order of the
+	 *                key fields.
+	 * @param pageSize The size of the pages that hold the index data.
+	 * @param unique Whether the entries in this index should be unique.
+	 * @param compactKeys Whether the keys are stored in the compact format.
+	 * @param rootNode The page number of the root node.
+	 * @param firstLeafNode The page number of the first (left most) leaf node.
+	 */
+	public IndexSchema(TableSchema indexedTable, int[] columns, PageSize pageSize, boolean unique,
+			           boolean compactKeys, int rootNode, int firstLeafNode)
+	{
+		this(indexedTable, columns, new int[0], pageSize, unique, compactKeys, rootNode, firstLeafNode);
+	}
+	
+	/**
+	 * Creates a new schema for a covering index over the given columns of the table described
+	 * by the given schema, which carries the included columns as payload in its leaf entries.
+	 * The nodes of the index are pages of the given size.
+	 * 
+	 * Root node and first leaf node are set to 1 (behind the minimal header).
+	 * 
+	 * @param indexedTable The schema of the table that is indexed.
+	 * @param columns The numbers (starting at 0) of the indexed columns, in the order of the
+	 *                key fields.
+	 * @param includedColumns The numbers of the columns included in the leaf entries.
+	 * @param pageSize The size of the pages that hold the index data.
+	 * @param unique Whether the entries in this index should be unique.
+	 */
+	public IndexSchema(TableSchema indexedTable, int[] columns, int[] includedColumns,
+			           PageSize pageSize, boolean unique)
+	{
+		this(indexedTable, columns, includedColumns, pageSize, unique, false, 1, 1);
+	}
+	
+	/**
+	 * Creates a new index schema for an index over the given columns of the table described by
+	 * the given schema, which carries the included columns as payload in its leaf entries. The
+	 * included columns must not be indexed columns.
+	 * 
+	 * Root node and first leaf node are set as given.
+	 * 
+	 * @param indexedTable The schema of the table that is indexed.
+	 * @param columns The numbers (starting at 0) of the indexed columns, in the order of the
+	 *                key fields.
+	 * @param includedColumns The numbers of the columns included in the leaf entries.
+	 * @param pageSize The size of the pages that hold the index data.
+	 * @param unique Whether the entries in this index should be unique.
+	 * @param compactKeys Whether the keys are stored in the compact format.
+	 * @param rootNode The page number of the root node.
+	 * @param firstLeafNode The page number of the first (left most) leaf node.
+	 */
+	public IndexSchema(TableSchema indexedTable, int[] columns, int[] includedColumns, PageSize pageSize,
+			           boolean unique, boolean compactKeys, int rootNode, int firstLeafNode)
 	{
 		if (indexedTable == null) {
 			throw new NullPointerException("The indexed table must not be null");
 		}
-		if (column < 0 || column >= indexedTable.getNumberOfColumns()) {
-			throw new IllegalArgumentException("Column out of range for the table.");
+		if (columns == null || columns.length == 0) {
+			throw new IllegalArgumentException("An index needs at least one column.");
+		}
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i] < 0 || columns[i] >= indexedTable.getNumberOfColumns()) {
+				throw new IllegalArgumentException("Column out of range for the table.");
+			}
+			for (int k = 0; k < i; k++) {
+				if (columns[k] == columns[i]) {
+					throw new IllegalArgumentException("Column " + columns[i] + " is indexed twice.");
+				}
+			}
+		}
+		if (includedColumns == null) {
+			throw new NullPointerException("The included columns must not be null");
+		}
+		for (int i = 0; i < includedColumns.length; i++) {
+			if (includedColumns[i] < 0 || includedColumns[i] >= indexedTable.getNumberOfColumns()) {
+				throw new IllegalArgumentException("Included column out of range for the table.");
+			}
+			for (int column : columns) {
+				if (column == includedColumns[i]) {
+					throw new IllegalArgumentException("Column " + column + " is both indexed and included.");
+				}
+			}
+			for (int k = 0; k < i; k++) {
+				if (includedColumns[k] == includedColumns[i]) {
+					throw new IllegalArgumentException("Column " + includedColumns[i] + " is included twice.");
+				}
+			}
 		}
 		if (pageSize == null) {
 			throw new NullPointerException("Page size must not be null");
@@ -141,24 +309,33 @@ public class IndexSchema
 		
 		// compute the fan-out
 		// the length of one entry is key + pageNumber
+		// composite keys are the concatenation of the keys of the individual columns
 		int len = 0; // for the page number as the reference
-		try {
-			ColumnSchema cs = indexedTable.getColumn(column);
-			if (!cs.getDataType().isFixLength()) {
+		for (int column : columns) {
+			DataType type = indexedTable.getColumn(column).getDataType();
+			if (!type.isFixLength()) {
 				throw new IllegalArgumentException("Column " + column + " is not a fix length data type.");
 			}
-			len = cs.getDataType().getNumberOfBytes();
+			
+			compactKeys = compactKeys && columns.length == 1 && type.getBasicType() == BasicType.CHAR;
+			len += compactKeys ? type.getLength() : type.getNumberOfBytes();
 		}
-		catch (IndexOutOfBoundsException ioobex) {
-			throw new IllegalArgumentException("Indexed table does not contain column "
-					+ column);
+		
+		// the included columns are stored behind the RID of each leaf entry
+		int includedLen = 0;
+		for (int column : includedColumns) {
+			DataType type = indexedTable.getColumn(column).getDataType();
+			if (!type.isFixLength()) {
+				throw new IllegalArgumentException("Column " + column + " is not a fix length data type.");
+			}
+			includedLen += type.getNumberOfBytes();
 		}
 		
 		// the tree fan-out is the number of keys per page
 		// subtract from the page the header and the one extra pointer
 		this.fanOut = (pageSize.getNumberOfBytes() - BTreeIndexPage.INDEX_PAGE_HEADER_SIZE - 4) / (len + 4);
 		this.maximalLeafEntries = (pageSize.getNumberOfBytes() - BTreeIndexPage.INDEX_PAGE_HEADER_SIZE) /
-		                          (len + RID.getRIDSize()); 
+		                          (len + RID.getRIDSize() + includedLen); 
 		
 		if (this.fanOut < 4 || this.maximalLeafEntries < 4) {
 			throw new IllegalArgumentException("The columns and their schema do not permit a valid B-Tree index.");
@@ -167,8 +344,12 @@ public class IndexSchema
 		// copy the parameters
 		this.indexedTable = indexedTable;
 		this.pageSize = pageSize;
-		this.indexedColumn = column;
+		this.indexedColumns = columns.clone();
+		this.includedColumns = includedColumns.clone();
 		this.unique = unique;
+		this.compactKeys = compactKeys;
+		this.keyWidth = len;
+		this.includedWidth = includedLen;
 		this.rootPageNumber = rootNode;
 		this.firstLeafNumber = firstLeafNode;
 	}
@@ -184,13 +365,87 @@ public class IndexSchema
 	}
 	
 	/**
-	 * Gets the number that the indexed column is in the table.
+	 * Gets the number that the indexed column is in the table. For composite indexes, this
+	 * is the first indexed column.
 	 * 
 	 * @return The column's index.
 	 */
 	public int getColumnNumber()
 	{
-		return this.indexedColumn;
+		return this.indexedColumns[0];
+	}
+	
+	/**
+	 * Gets the numbers of all indexed columns, in the order of the key fields.
+	 * 
+	 * @return The indexes of the columns.
+	 */
+	public int[] getColumnNumbers()
+	{
+		return this.indexedColumns.clone();
+	}
+	
+	/**
+	 * Gets the number of columns in the index key.
+	 * 
+	 * @return The number of indexed columns.
+	 */
+	public int getNumberOfKeyColumns()
+	{
+		return this.indexedColumns.length;
+	}
+	
+	/**
+	 * Checks whether this index is a composite index over several columns, whose keys
+	 * are composite keys.
+	 * 
+	 * @return true, if the index has more than one column, false if not.
+	 */
+	public boolean isComposite()
+	{
+		return this.indexedColumns.length > 1;
+	}
+	
+	/**
+	 * Gets the numbers of the columns included as payload in the leaf entries.
+	 * 
+	 * @return The indexes of the included columns, an empty array, if there are none.
+	 */
+	public int[] getIncludedColumnNumbers()
+	{
+		return this.includedColumns.clone();
+	}
+	
+	/**
+	 * Checks whether the leaf entries of this index carry included columns.
+	 * 
+	 * @return true, if the index has included columns, false if not.
+	 */
+	public boolean hasIncludedColumns()
+	{
+		return this.includedColumns.length > 0;
+	}
+	
+	/**
+	 * Checks whether the given column of the table can be read from the index alone,
+	 * i.e. whether it is indexed or included.
+	 * 
+	 * @param column The number of the column in the table.
+	 * @return true, if the column is indexed or included, false if not.
+	 */
+	public boolean coversColumn(int column)
+	{
+		for (int c : this.indexedColumns) {
+			if (c == column) {
+				return true;
+			}
+		}
+		for (int c : this.includedColumns) {
+			if (c == column) {
+				return true;
+			}
+		}
+		return false;
 	}
 	
 	/**
@@ -210,7 +465,18 @@ public class IndexSchema
 	 */
 	public ColumnSchema getIndexedColumnSchema()
 	{
-		return this.indexedTable.getColumn(this.indexedColumn);
+		return this.indexedTable.getColumn(this.indexedColumns[0]);
+	}
+	
+	/**
+	 * Gets the schema of the column at the given position in the index key.
+	 * 
+	 * @param position The position of the column in the key.
+	 * @return The schema of the column.
+	 */
+	public ColumnSchema getIndexedColumnSchema(int position)
+	{
+		return this.indexedTable.getColumn(this.indexedColumns[position]);
 	}
 	
 	/**
@@ -223,6 +489,36 @@ public class IndexSchema
 		return this.unique;
 	}
 
+	/**
+	 * Checks whether the index pages store the keys in the compact format.
+	 * 
+	 * @return true, if the keys are stored in the compact format, false if not.
+	 */
+	public boolean hasCompactKeys()
+	{
+		return this.compactKeys;
+	}
+	
+	/**
+	 * Gets the number of bytes that a key occupies on the index pages.
+	 * 
+	 * @return The number of bytes per key.
+	 */
+	public int getKeyWidth()
+	{
+		return this.keyWidth;
+	}
+
+	/**
+	 * Gets the number of bytes that the included columns occupy in a leaf entry.
+	 * 
+	 * @return The number of bytes of the included columns, 0, if there are none.
+	 */
+	public int getIncludedWidth()
+	{
+		return this.includedWidth;
+	}
+
 	/**
 	 * Gets the order of the tree, i.e. the maximal number of keys in inner nodes.
 	 * 
@@ -327,13 +623,27 @@ public class IndexSchema
 	public String toString()
 	{
 		StringBuilder builder = new StringBuilder();
-		builder.append("column ").append(this.indexedColumn).append(" (");
-		builder.append(getIndexedColumnSchema());
+		if (isComposite()) {
+			builder.append("columns ").append(Arrays.toString(this.indexedColumns)).append(" (");
+			for (int i = 0; i < this.indexedColumns.length; i++) {
+				builder.append(i == 0 ? "" : ", ").append(getIndexedColumnSchema(i));
+			}
+		}
+		else {
+			builder.append("column ").append(this.indexedColumns[0]).append(" (");
+			builder.append(getIndexedColumnSchema());
+		}
+		if (this.includedColumns.length > 0) {
+			builder.append(" INCLUDE ").append(Arrays.toString(this.includedColumns));
+		}
 		builder.append(" PAGE_SIZE ").append(getPageSize());
 		
 		if (this.unique) {
 			builder.append(" UNIQUE");
 		}
+		if (this.compactKeys) {
+			builder.append(" COMPACT");
+		}
 		builder.append(" (Fan-out: ").append(this.fanOut);
 		builder.append(", Leaf Entries: ").append(this.maximalLeafEntries).append(')');
 		
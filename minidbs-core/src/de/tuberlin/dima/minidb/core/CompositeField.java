@@ -0,0 +1,219 @@
+package de.tuberlin.dima.minidb.core;
+
+
+import java.util.Arrays;
+
+
+/**
+ * The key of a composite index, i.e. an index over several columns. The key holds one field
+ * per indexed column, in the order of the columns in the index. Composite keys are ordered
+ * lexicographically: the first fields decide, and the following fields only break ties.
+ * <p>
+ * A composite key may hold fewer fields than the index has columns. Such a key is a prefix of
+ * all keys that start with its fields and is ordered before all of them. Lookups use prefixes
+ * to find all keys with equal leading fields.
+ * <p>
+ * Composite keys exist only as index keys and never appear in tuples. They are encoded and
+ * decoded by the index pages, which know the widths of the individual fields.
+ */
+public final class CompositeField extends DataField
+{
+	/**
+	 * The fields of the key, one per indexed column.
+	 */
+	private final DataField[] fields;
+
+
+	/**
+	 * Creates a new composite key from the given fields.
+	 *
+	 * @param fields The fields of the key, in the order of the indexed columns.
+	 */
+	public CompositeField(DataField... fields)
+	{
+		if (fields == null || fields.length == 0) {
+			throw new IllegalArgumentException("A composite key needs at least one field.");
+		}
+		this.fields = fields;
+	}
+
+	/**
+	 * Gets the number of fields in this key.
+	 *
+	 * @return The number of fields.
+	 */
+	public int getNumberOfFields()
+	{
+		return this.fields.length;
+	}
+
+	/**
+	 * Gets the field at the given position.
+	 *
+	 * @param position The position of the field.
+	 * @return The field at the given position.
+	 */
+	public DataField getField(int position)
+	{
+		return this.fields[position];
+	}
+
+	/**
+	 * Creates a key from the first fields of this key.
+	 *
+	 * @param numFields The number of leading fields.
+	 * @return The key of the leading fields.
+	 */
+	public CompositeField getPrefix(int numFields)
+	{
+		return new CompositeField(Arrays.copyOf(this.fields, numFields));
+	}
+
+	/**
+	 * Gets the basic type of the first field, which decides the order of the keys.
+	 *
+	 * @return The basic type of the first field.
+	 */
+	@Override
+	public BasicType getBasicType()
+	{
+		return this.fields[0].getBasicType();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.core.DataField#isNULL()
+	 */
+	@Override
+	public boolean isNULL()
+	{
+		for (DataField field : this.fields) {
+			if (!field.isNULL()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.core.DataField#getNumberOfBytes()
+	 */
+	@Override
+	public int getNumberOfBytes()
+	{
+		int bytes = 0;
+		for (DataField field : this.fields) {
+			bytes += field.getNumberOfBytes();
+		}
+		return bytes;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.core.DataField#getFromString(java.lang.String, int)
+	 */
+	@Override
+	public DataField getFromString(String charEncoded, int length) throws DataFormatException
+	{
+		throw new UnsupportedOperationException("Composite keys cannot be parsed from strings.");
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.core.DataField#encodeAsString()
+	 */
+	@Override
+	public String encodeAsString()
+	{
+		StringBuilder bld = new StringBuilder();
+		bld.append('(');
+		for (int i = 0; i < this.fields.length; i++) {
+			if (i > 0) {
+				bld.append(", ");
+			}
+			bld.append(this.fields[i].encodeAsString());
+		}
+		return bld.append(')').toString();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.core.DataField#getFromBinary(byte[], int, int)
+	 */
+	@Override
+	DataField getFromBinary(byte[] binaryEncoded, int offs, int len)
+	{
+		throw new UnsupportedOperationException("Composite keys are decoded by the index pages.");
+	}
+
+	/**
+	 * Serializes the fields one after the other. Since array types are encoded with their actual
+	 * length, the index pages encode the fields individually into slots of fixed width.
+	 *
+	 * @see de.tuberlin.dima.minidb.core.DataField#encodeBinary(byte[], int)
+	 */
+	@Override
+	public int encodeBinary(byte[] buffer, int offset)
+	{
+		int pos = offset;
+		for (DataField field : this.fields) {
+			pos += field.encodeBinary(buffer, pos);
+		}
+		return pos - offset;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Comparable#compareTo(java.lang.Object)
+	 */
+	@Override
+	public int compareTo(DataField o)
+	{
+		// no type checking for performance reasons
+		DataField[] other = ((CompositeField) o).fields;
+		int num = Math.min(this.fields.length, other.length);
+		for (int i = 0; i < num; i++) {
+			int cmp = this.fields[i].compareTo(other[i]);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		// a prefix is smaller than the keys that it is a prefix of
+		return this.fields.length - other.length;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object o)
+	{
+		return o instanceof CompositeField && Arrays.equals(this.fields, ((CompositeField) o).fields);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode()
+	{
+		return Arrays.hashCode(this.fields);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.core.DataField#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return "[COMPOSITE: " + encodeAsString() + ']';
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.core.DataField#clone()
+	 */
+	@Override
+	public CompositeField clone()
+	{
+		DataField[] copy = new DataField[this.fields.length];
+		for (int i = 0; i < copy.length; i++) {
+			copy[i] = this.fields[i].clone();
+		}
+		return new CompositeField(copy);
+	}
+}
@@ -0,0 +1,718 @@
+package de.tuberlin.dima.minidb.io.index;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.core.CompositeField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DuplicateException;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.PageTupleAccessException;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TupleRIDIterator;
+import de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryExecutionOutOfHeapSpaceException;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeapException;
+import de.tuberlin.dima.minidb.util.Pair;
+
+
+/**
+ * Builds a B-Tree index bottom-up from a set of (key / RID) pairs, as an alternative to
+ * inserting the pairs one by one through the index. The pairs are sorted using the external
+ * sort of the {@link QueryHeap}. The sorted pairs are then appended to leaf pages, which are
+ * filled up to the fill factor and linked in order. The levels of inner nodes are built on
+ * top of the leaves in the same way, until a single root remains. All pages are written in
+ * sequential multi-page batches, and the root and first leaf are set in the index schema once
+ * the tree is complete.
+ * <p>
+ * The first leaf takes the place of the empty root leaf that the index had before the load, so
+ * that no page of the index file is left unused. It is filled only after the whole tree was
+ * built successfully, and through the buffer pool, if the index is registered at one, so that
+ * a cached copy of the old root never becomes stale.
+ * <p>
+ * The index must be empty when the load starts, and must not be accessed through the buffer
+ * pool before the load is finished. NULL keys are not indexed.
+ * <p>
+ * For composite indexes, the fields of the keys are sorted as individual fields, so that the
+ * sorted runs are written with the types of the indexed columns. The values of included columns
+ * travel behind the RID through the sort and are appended to the leaves with their entries.
+ */
+public class BTreeBulkLoader
+{
+	/**
+	 * The comparator ordering the (key / RID) tuples by key and then by RID.
+	 */
+	private final EntryComparator entryComparator;
+
+	/**
+	 * The resource manager of the index.
+	 */
+	private final IndexResourceManager index;
+
+	/**
+	 * The schema of the index.
+	 */
+	private final IndexSchema schema;
+
+	/**
+	 * The buffer pool at which the index is registered. May be null.
+	 */
+	private final BufferPoolManager bufferPool;
+
+	/**
+	 * The id of the index at the buffer pool.
+	 */
+	private final int resourceId;
+
+	/**
+	 * The heap providing the memory and temp space for sorting.
+	 */
+	private final QueryHeap heap;
+
+	/**
+	 * The id of the reserved portion of the sort heap.
+	 */
+	private final int heapId;
+
+	/**
+	 * The number of key fields in the sorted tuples.
+	 */
+	private final int numKeyFields;
+
+	/**
+	 * The types of the included columns.
+	 */
+	private final DataType[] includedTypes;
+
+	/**
+	 * The number of entries per leaf page.
+	 */
+	private final int entriesPerLeaf;
+
+	/**
+	 * The number of pointers per inner node page.
+	 */
+	private final int pointersPerNode;
+
+	/**
+	 * The array in which the pairs are sorted.
+	 */
+	private DataTuple[] sortArray;
+
+	/**
+	 * The number of pairs in the sort array.
+	 */
+	private int numInArray;
+
+	/**
+	 * Flag indicating whether sorted runs have been written to temp space.
+	 */
+	private boolean spilled;
+
+
+	/**
+	 * Creates a new bulk loader for the given, empty index.
+	 *
+	 * @param index The resource manager of the index to build.
+	 * @param bufferPool The buffer pool at which the index is registered, through which the
+	 *                   old root page is replaced. May be null.
+	 * @param resourceId The id of the index at the buffer pool.
+	 * @param heap The query heap used to sort the pairs.
+	 * @param estimatedEntries The estimated number of pairs, used to reserve sort memory.
+	 * @param fillFactor The fraction of each page that is filled, between 0 (exclusive) and 1.
+	 * @throws QueryExecutionOutOfHeapSpaceException Thrown, if no sort memory is available.
+	 * @throws QueryHeapException Thrown, if the sort heap could not be reserved.
+	 */
+	public BTreeBulkLoader(IndexResourceManager index, BufferPoolManager bufferPool, int resourceId,
+			QueryHeap heap, int estimatedEntries, float fillFactor)
+	throws QueryExecutionOutOfHeapSpaceException, QueryHeapException
+	{
+		if (fillFactor <= 0.0f || fillFactor > 1.0f) {
+			throw new IllegalArgumentException("The fill factor must be in (0, 1].");
+		}
+
+		this.index = index;
+		this.schema = index.getSchema();
+		this.bufferPool = bufferPool;
+		this.resourceId = resourceId;
+		this.heap = heap;
+
+		this.entriesPerLeaf = Math.max(1, (int) (this.schema.getMaximalLeafEntries() * fillFactor));
+		// every node needs at least two pointers, and at least three guarantee that an
+		// even distribution of the children never leaves a node with a single one
+		this.pointersPerNode = Math.min(this.schema.getFanOut() + 1,
+				Math.max(3, (int) ((this.schema.getFanOut() + 1) * fillFactor)));
+
+		// the sorted tuples hold the key fields, followed by the RID and the included fields
+		this.numKeyFields = this.schema.getNumberOfKeyColumns();
+		this.entryComparator = new EntryComparator(this.numKeyFields);
+		int[] included = this.schema.getIncludedColumnNumbers();
+		this.includedTypes = new DataType[included.length];
+		DataType[] types = new DataType[this.numKeyFields + 1 + included.length];
+		for (int i = 0; i < this.numKeyFields; i++) {
+			types[i] = this.schema.getIndexedColumnSchema(i).getDataType();
+		}
+		types[this.numKeyFields] = DataType.ridType();
+		for (int i = 0; i < included.length; i++) {
+			this.includedTypes[i] = this.schema.getIndexTableSchema().getColumn(included[i]).getDataType();
+			types[this.numKeyFields + 1 + i] = this.includedTypes[i];
+		}
+		this.heapId = heap.reserveSortHeap(types, estimatedEntries);
+		this.sortArray = heap.getSortArray(this.heapId);
+	}
+
+	/**
+	 * Creates a new bulk loader that fills the pages to {@link Constants#DEFAULT_INDEX_FILL_FACTOR}.
+	 *
+	 * @param index The resource manager of the index to build.
+	 * @param bufferPool The buffer pool at which the index is registered, or null.
+	 * @param resourceId The id of the index at the buffer pool.
+	 * @param heap The query heap used to sort the pairs.
+	 * @param estimatedEntries The estimated number of pairs, used to reserve sort memory.
+	 * @throws QueryExecutionOutOfHeapSpaceException Thrown, if no sort memory is available.
+	 * @throws QueryHeapException Thrown, if the sort heap could not be reserved.
+	 */
+	public BTreeBulkLoader(IndexResourceManager index, BufferPoolManager bufferPool, int resourceId,
+			QueryHeap heap, int estimatedEntries)
+	throws QueryExecutionOutOfHeapSpaceException, QueryHeapException
+	{
+		this(index, bufferPool, resourceId, heap, estimatedEntries, Constants.DEFAULT_INDEX_FILL_FACTOR);
+	}
+
+	// ------------------------------------------------------------------------
+	//                              Input
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Adds a (key / RID) pair to the index.
+	 *
+	 * @param key The key.
+	 * @param rid The RID of the tuple with that key.
+	 * @throws QueryHeapException Thrown, if the sort heap is not available any more.
+	 * @throws IOException Thrown, if a sorted run could not be written to temp space.
+	 */
+	public void add(DataField key, RID rid) throws QueryHeapException, IOException
+	{
+		add(key, rid, null);
+	}
+
+	/**
+	 * Adds an entry of (key / RID) with the values of the included columns to the index.
+	 *
+	 * @param key The key.
+	 * @param rid The RID of the tuple with that key.
+	 * @param included The values of the included columns, or null, to store NULL values.
+	 * @throws QueryHeapException Thrown, if the sort heap is not available any more.
+	 * @throws IOException Thrown, if a sorted run could not be written to temp space.
+	 */
+	public void add(DataField key, RID rid, DataField[] included) throws QueryHeapException, IOException
+	{
+		if (key.isNULL()) {
+			return;
+		}
+		if (included != null && included.length != this.includedTypes.length) {
+			throw new IllegalArgumentException("Expected " + this.includedTypes.length + " included fields.");
+		}
+		if (this.numInArray == this.sortArray.length) {
+			spillSortedRun();
+		}
+		DataField[] fields = new DataField[this.numKeyFields + 1 + this.includedTypes.length];
+		if (this.numKeyFields == 1) {
+			fields[0] = key;
+		}
+		else {
+			CompositeField composite = (CompositeField) key;
+			for (int i = 0; i < this.numKeyFields; i++) {
+				fields[i] = composite.getField(i);
+			}
+		}
+		fields[this.numKeyFields] = rid;
+		for (int i = 0; i < this.includedTypes.length; i++) {
+			fields[this.numKeyFields + 1 + i] = included == null ? this.includedTypes[i].getNullValue() : included[i];
+		}
+		this.sortArray[this.numInArray++] = new DataTuple(fields);
+	}
+
+	/**
+	 * Adds the pairs for all tuples of a table. The key is taken from the indexed columns, and
+	 * the values of the included columns are taken along.
+	 * The pages are taken from the buffer pool, so that tuples that were not yet written
+	 * to the table file are included.
+	 *
+	 * @param tablePool The buffer pool at which the table is registered.
+	 * @param tableResourceId The id of the table at the buffer pool.
+	 * @param firstPage The first data page of the table.
+	 * @param lastPage The last data page of the table.
+	 * @throws QueryHeapException Thrown, if the sort heap is not available any more.
+	 * @throws IOException Thrown, if a page could not be read, or a sorted run could not be written.
+	 */
+	public void addTable(BufferPoolManager tablePool, int tableResourceId, int firstPage, int lastPage)
+	throws QueryHeapException, IOException
+	{
+		int[] columns = this.schema.getColumnNumbers();
+		int[] includedColumns = this.schema.getIncludedColumnNumbers();
+
+		for (int pageNo = firstPage; pageNo <= lastPage; pageNo++) {
+			TablePage page;
+			try {
+				if ((pageNo - firstPage) % Constants.DEFAULT_PREFETCHING_LENGTH == 0) {
+					tablePool.prefetchPages(tableResourceId, pageNo,
+							Math.min(pageNo + Constants.DEFAULT_PREFETCHING_LENGTH - 1, lastPage));
+				}
+				page = (TablePage) tablePool.getPageAndPin(tableResourceId, pageNo);
+			}
+			catch (BufferPoolException bpex) {
+				throw new IOException("Table page " + pageNo + " could not be obtained.", bpex);
+			}
+
+			try {
+				TupleRIDIterator iter = page.getIteratorWithRID();
+				while (iter.hasNext()) {
+					Pair<DataTuple, RID> next = iter.next();
+					DataTuple tuple = next.getFirst();
+					DataField[] included = new DataField[includedColumns.length];
+					for (int i = 0; i < included.length; i++) {
+						included[i] = tuple.getField(includedColumns[i]);
+					}
+					add(getKey(tuple, columns), next.getSecond(), included);
+				}
+			}
+			catch (PageTupleAccessException ptaex) {
+				throw new IOException("Tuples of table page " + pageNo + " could not be read.", ptaex);
+			}
+			finally {
+				tablePool.unpinPage(tableResourceId, pageNo);
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                              Build
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Builds the index from all pairs that were added and releases the sort heap.
+	 *
+	 * @throws QueryHeapException Thrown, if the sorted runs could not be read back.
+	 * @throws IOException Thrown, if the index pages could not be written.
+	 * @throws PageFormatException Thrown, if an index page could not be initialized.
+	 * @throws IllegalStateException Thrown, if the index is not empty.
+	 * @throws DuplicateException Thrown, if the index is unique, but a key occurs twice. The
+	 *                            index is left empty in that case.
+	 */
+	public void build() throws QueryHeapException, IOException, PageFormatException, DuplicateException
+	{
+		try {
+			checkIndexEmpty();
+
+			EntrySource source;
+			if (this.spilled) {
+				if (this.numInArray > 0) {
+					spillSortedRun();
+				}
+				this.sortArray = null;
+				this.heap.releaseSortArray(this.heapId);
+				source = new MergingSource(this.heap.getExternalSortedLists(this.heapId), this.entryComparator);
+			}
+			else {
+				Arrays.sort(this.sortArray, 0, this.numInArray, this.entryComparator);
+				source = new ArraySource(this.sortArray, this.numInArray);
+			}
+
+			// the first leaf is built privately on the page number of the old root
+			int firstLeaf = this.schema.getRootPageNumber();
+			BTreeLeafPage firstLeafPage = (BTreeLeafPage) IndexPageFactory.initIndexPage(this.schema,
+					new byte[this.schema.getPageSize().getNumberOfBytes()], firstLeaf, true);
+
+			PageRunWriter writer = new PageRunWriter();
+			List<ChildEntry> level = buildLeaves(source, firstLeafPage, writer);
+
+			while (level.size() > 1) {
+				level = buildInnerLevel(level, writer);
+			}
+			writer.finish();
+
+			replaceOldRoot(firstLeafPage);
+
+			this.schema.setFirstLeafNumber(firstLeaf);
+			this.schema.setRootPageNumber(level.get(0).pageNumber);
+		}
+		finally {
+			this.sortArray = null;
+			this.heap.releaseSortHeap(this.heapId);
+		}
+	}
+
+	/**
+	 * Fills the leaf pages with the sorted pairs.
+	 *
+	 * @param source The sorted pairs.
+	 * @param firstLeaf The page to fill first.
+	 * @param writer The writer for the remaining pages.
+	 * @return The leaves, with their highest key.
+	 * @throws DuplicateException Thrown, if the index is unique, but a key occurs twice.
+	 */
+	private List<ChildEntry> buildLeaves(EntrySource source, BTreeLeafPage firstLeaf, PageRunWriter writer)
+	throws QueryHeapException, IOException, PageFormatException
+	{
+		List<ChildEntry> leaves = new ArrayList<ChildEntry>();
+		BTreeLeafPage current = firstLeaf;
+		boolean unique = this.schema.isUnique();
+		DataField previousKey = null;
+
+		DataTuple entry;
+		while ((entry = source.next()) != null) {
+			DataField key = getSortedKey(entry);
+
+			// the pairs are sorted, so duplicates are adjacent
+			if (unique && previousKey != null && previousKey.compareTo(key) == 0) {
+				throw new DuplicateException("Key " + key + " occurs more than once in a unique index.");
+			}
+			previousKey = key;
+
+			if (current.getNumberOfEntries() >= this.entriesPerLeaf) {
+				BTreeLeafPage next = (BTreeLeafPage) writer.newPage(BTreeIndexPageType.LEAF_PAGE);
+				DataField lastKey = current.getLastKey();
+				current.setNextLeafPageNumber(next.getPageNumber());
+				current.setLastKeyContinuingOnNextPage(lastKey.compareTo(key) == 0);
+				leaves.add(new ChildEntry(current.getPageNumber(), lastKey));
+				current = next;
+			}
+			current.appendKeyRIDPair(key, (RID) entry.getField(this.numKeyFields), getSortedIncluded(entry));
+		}
+
+		current.setNextLeafPageNumber(-1);
+		leaves.add(new ChildEntry(current.getPageNumber(), current.getLastKey()));
+		return leaves;
+	}
+
+	/**
+	 * Builds one level of inner nodes above the given level. The children are distributed
+	 * evenly, so that every node has at least two of them.
+	 *
+	 * @param children The pages of the level below, in key order, with their highest key.
+	 * @param writer The writer for the pages.
+	 * @return The nodes of the new level, with the highest key of their subtree.
+	 */
+	private List<ChildEntry> buildInnerLevel(List<ChildEntry> children, PageRunWriter writer)
+	throws IOException, PageFormatException
+	{
+		int numNodes = (children.size() + this.pointersPerNode - 1) / this.pointersPerNode;
+		List<ChildEntry> nodes = new ArrayList<ChildEntry>(numNodes);
+
+		int pos = 0;
+		for (int n = 0; n < numNodes; n++) {
+			// spread the remainder over the first nodes
+			int num = children.size() / numNodes + (n < children.size() % numNodes ? 1 : 0);
+
+			BTreeInnerNodePage node = (BTreeInnerNodePage) writer.newPage(BTreeIndexPageType.INNER_NODE_PAGE);
+			node.initRootState(children.get(pos).highestKey, children.get(pos).pageNumber, children.get(pos + 1).pageNumber);
+			for (int i = 2; i < num; i++) {
+				ChildEntry child = children.get(pos + i);
+				node.insertKeyPageNumberPairAtPosition(children.get(pos + i - 1).highestKey,
+						child.pageNumber, node.getNumberOfKeys());
+			}
+
+			pos += num;
+			nodes.add(new ChildEntry(node.getPageNumber(), children.get(pos - 1).highestKey));
+		}
+		return nodes;
+	}
+
+	/**
+	 * Writes the first leaf over the old, empty root. If the index is registered at a buffer
+	 * pool, the entries are moved into the cached root page, which the buffer pool writes back.
+	 *
+	 * @param firstLeaf The privately built first leaf, carrying the number of the old root.
+	 * @throws IOException Thrown, if the old root could not be obtained or written.
+	 * @throws PageFormatException Thrown, if the old root is corrupt.
+	 */
+	private void replaceOldRoot(BTreeLeafPage firstLeaf) throws IOException, PageFormatException
+	{
+		int pageNumber = firstLeaf.getPageNumber();
+		if (this.bufferPool == null) {
+			this.index.writePageToResource(firstLeaf.getBuffer(), firstLeaf);
+			return;
+		}
+
+		BTreeLeafPage root;
+		try {
+			root = (BTreeLeafPage) this.bufferPool.getPageAndPin(this.resourceId, pageNumber);
+		}
+		catch (BufferPoolException bpex) {
+			throw new IOException("Root page of the index could not be obtained.", bpex);
+		}
+
+		try {
+			if (!root.appendEntriesFromOtherPage(firstLeaf, firstLeaf.getNumberOfEntries())) {
+				throw new PageFormatException("Entries of the first leaf do not fit into the old root page.");
+			}
+			root.setNextLeafPageNumber(firstLeaf.getNextLeafPageNumber());
+			root.setLastKeyContinuingOnNextPage(firstLeaf.isLastKeyContinuingOnNextPage());
+		}
+		finally {
+			this.bufferPool.unpinPage(this.resourceId, pageNumber);
+		}
+	}
+
+	/**
+	 * Checks that the index contains no entries.
+	 *
+	 * @throws IOException Thrown, if the root page could not be read.
+	 */
+	private void checkIndexEmpty() throws IOException
+	{
+		byte[] buffer = new byte[this.schema.getPageSize().getNumberOfBytes()];
+		BTreeIndexPage root = this.index.readPageFromResource(buffer, this.schema.getRootPageNumber());
+		if (!(root instanceof BTreeLeafPage) || ((BTreeLeafPage) root).getNumberOfEntries() > 0) {
+			throw new IllegalStateException("Bulk loading requires an empty index.");
+		}
+	}
+
+	/**
+	 * Sorts the pairs in the sort array and writes them as a run to temp space.
+	 */
+	private void spillSortedRun() throws QueryHeapException, IOException
+	{
+		Arrays.sort(this.sortArray, 0, this.numInArray, this.entryComparator);
+		this.heap.writeTupleSequencetoTemp(this.heapId, this.sortArray, this.numInArray);
+		Arrays.fill(this.sortArray, 0, this.numInArray, null);
+		this.numInArray = 0;
+		this.spilled = true;
+	}
+
+	/**
+	 * Gets the key from the indexed columns of a table tuple. For composite indexes, the
+	 * fields are combined to a composite key.
+	 */
+	private DataField getKey(DataTuple tuple, int[] columns)
+	{
+		if (columns.length == 1) {
+			return tuple.getField(columns[0]);
+		}
+		DataField[] fields = new DataField[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			fields[i] = tuple.getField(columns[i]);
+		}
+		return new CompositeField(fields);
+	}
+
+	/**
+	 * Gets the key from the leading fields of a sorted tuple.
+	 */
+	private DataField getSortedKey(DataTuple entry)
+	{
+		if (this.numKeyFields == 1) {
+			return entry.getField(0);
+		}
+		DataField[] fields = new DataField[this.numKeyFields];
+		for (int i = 0; i < this.numKeyFields; i++) {
+			fields[i] = entry.getField(i);
+		}
+		return new CompositeField(fields);
+	}
+
+	/**
+	 * Gets the included fields behind the RID of a sorted tuple, or null, if there are none.
+	 */
+	private DataField[] getSortedIncluded(DataTuple entry)
+	{
+		if (this.includedTypes.length == 0) {
+			return null;
+		}
+		DataField[] fields = new DataField[this.includedTypes.length];
+		for (int i = 0; i < fields.length; i++) {
+			fields[i] = entry.getField(this.numKeyFields + 1 + i);
+		}
+		return fields;
+	}
+
+	// ------------------------------------------------------------------------
+	//                           Helper Classes
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The comparator ordering the sorted tuples by their key fields and then by RID.
+	 */
+	private static final class EntryComparator implements Comparator<DataTuple>
+	{
+		private final int numKeyFields;
+
+		EntryComparator(int numKeyFields)
+		{
+			this.numKeyFields = numKeyFields;
+		}
+
+		@Override
+		public int compare(DataTuple o1, DataTuple o2)
+		{
+			// the RID follows the key fields and decides between equal keys
+			for (int i = 0; i <= this.numKeyFields; i++) {
+				int cmp = o1.getField(i).compareTo(o2.getField(i));
+				if (cmp != 0) {
+					return cmp;
+				}
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * A page of the tree under construction, together with the highest key in its subtree.
+	 */
+	private static final class ChildEntry
+	{
+		final int pageNumber;
+
+		final DataField highestKey;
+
+		ChildEntry(int pageNumber, DataField highestKey)
+		{
+			this.pageNumber = pageNumber;
+			this.highestKey = highestKey;
+		}
+	}
+
+	/**
+	 * A source of sorted (key / RID) tuples.
+	 */
+	private static interface EntrySource
+	{
+		DataTuple next() throws QueryHeapException, IOException;
+	}
+
+	/**
+	 * A source over an internally sorted array.
+	 */
+	private static final class ArraySource implements EntrySource
+	{
+		private final DataTuple[] entries;
+
+		private final int num;
+
+		private int pos;
+
+		ArraySource(DataTuple[] entries, int num)
+		{
+			this.entries = entries;
+			this.num = num;
+		}
+
+		@Override
+		public DataTuple next()
+		{
+			return this.pos < this.num ? this.entries[this.pos++] : null;
+		}
+	}
+
+	/**
+	 * A source merging the sorted runs from temp space.
+	 */
+	private static final class MergingSource implements EntrySource
+	{
+		private final PriorityQueue<Pair<DataTuple, ExternalTupleSequenceIterator>> heads;
+
+		MergingSource(ExternalTupleSequenceIterator[] runs, final Comparator<DataTuple> comparator)
+		throws QueryHeapException, IOException
+		{
+			this.heads = new PriorityQueue<Pair<DataTuple, ExternalTupleSequenceIterator>>(Math.max(1, runs.length),
+				new Comparator<Pair<DataTuple, ExternalTupleSequenceIterator>>() {
+					@Override
+					public int compare(Pair<DataTuple, ExternalTupleSequenceIterator> o1,
+							Pair<DataTuple, ExternalTupleSequenceIterator> o2)
+					{
+						return comparator.compare(o1.getFirst(), o2.getFirst());
+					}
+				});
+
+			for (ExternalTupleSequenceIterator run : runs) {
+				if (run.hasNext()) {
+					this.heads.add(new Pair<DataTuple, ExternalTupleSequenceIterator>(run.next(), run));
+				}
+			}
+		}
+
+		@Override
+		public DataTuple next() throws QueryHeapException, IOException
+		{
+			Pair<DataTuple, ExternalTupleSequenceIterator> head = this.heads.poll();
+			if (head == null) {
+				return null;
+			}
+			ExternalTupleSequenceIterator run = head.getSecond();
+			if (run.hasNext()) {
+				this.heads.add(new Pair<DataTuple, ExternalTupleSequenceIterator>(run.next(), run));
+			}
+			return head.getFirst();
+		}
+	}
+
+	/**
+	 * Creates the pages of the tree with consecutive numbers and writes them in batches.
+	 * The most recently created page is always held back, since it may still be modified.
+	 */
+	private final class PageRunWriter
+	{
+		private final byte[][] buffers;
+
+		private final BTreeIndexPage[] pages;
+
+		private int num;
+
+		PageRunWriter()
+		{
+			int batch = Math.max(2, Constants.BULK_LOAD_BATCH_PAGES);
+			this.buffers = new byte[batch][BTreeBulkLoader.this.schema.getPageSize().getNumberOfBytes()];
+			this.pages = new BTreeIndexPage[batch];
+		}
+
+		BTreeIndexPage newPage(BTreeIndexPageType type) throws IOException, PageFormatException
+		{
+			if (this.num == this.buffers.length) {
+				// write all complete pages and keep the last one as the first of the new batch
+				write(this.num - 1);
+
+				byte[] last = this.buffers[this.num - 1];
+				this.buffers[this.num - 1] = this.buffers[0];
+				this.buffers[0] = last;
+				this.pages[0] = this.pages[this.num - 1];
+				for (int i = 1; i < this.num; i++) {
+					this.pages[i] = null;
+					Arrays.fill(this.buffers[i], (byte) 0);
+				}
+				this.num = 1;
+			}
+
+			BTreeIndexPage page = (BTreeIndexPage) BTreeBulkLoader.this.index.reserveNewPage(this.buffers[this.num], type);
+			this.pages[this.num++] = page;
+			return page;
+		}
+
+		void finish() throws IOException
+		{
+			if (this.num > 0) {
+				write(this.num);
+				this.num = 0;
+			}
+		}
+
+		private void write(int count) throws IOException
+		{
+			BTreeBulkLoader.this.index.writePagesToResource(Arrays.copyOf(this.buffers, count),
+					Arrays.copyOf(this.pages, count));
+		}
+	}
+}
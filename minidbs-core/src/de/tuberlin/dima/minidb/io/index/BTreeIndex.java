@@ -2,9 +2,11 @@ package de.tuberlin.dima.minidb.io.index;
 
 
 import java.io.IOException;
+import java.util.List;
 
 import de.tuberlin.dima.minidb.catalogue.IndexSchema;
 import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
 import de.tuberlin.dima.minidb.core.DuplicateException;
 import de.tuberlin.dima.minidb.core.RID;
 import de.tuberlin.dima.minidb.io.cache.PageFormatException;
@@ -18,6 +20,18 @@ import de.tuberlin.dima.minidb.io.cache.PageFormatException;
  * the page number of the root page or the first leaf page can be obtained) and 
  * an instance of BufferPoolManager that is used to request pages that are needed during the
  * traversal.
+ * <p>
+ * The keys of composite indexes are {@link de.tuberlin.dima.minidb.core.CompositeField}s with a
+ * field for each indexed column. The bounds of lookups on such indexes may be prefixes, i.e.
+ * composite keys with fewer fields, or a plain field for the first column. A lookup for a prefix
+ * returns all entries whose keys start with it, and a bound that is a prefix refers to the
+ * first (for inclusive start keys and exclusive stop keys) or last (otherwise) key with that
+ * prefix. That way, equality on the leading columns can be combined with a range on the next
+ * column.
+ * <p>
+ * Indexes with included columns store the values of those columns next to the RID of each
+ * entry. Queries that need only indexed and included columns read the complete entries through
+ * {@link #lookupEntries(DataField, DataField, boolean, boolean)} and never touch the table.
  * 
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
@@ -56,6 +70,27 @@ public interface BTreeIndex
 	public IndexResultIterator<RID> lookupRids(DataField key)
 	throws PageFormatException, IndexFormatCorruptException, IOException;
 	
+	/**
+	 * Gets the RIDs for a batch of keys at once. The keys must be sorted in ascending order.
+	 * Instead of descending from the root once per key, the batch is resolved in a single pass
+	 * from left to right over the leaves: A key that lies on the current leaf or on the next one
+	 * is found without touching the inner nodes, and only a key further to the right causes a new
+	 * descent. For sorted keys that are close together, the lookups hence read the leaves
+	 * nearly sequentially.
+	 * <p>
+	 * In contrast to {@link #lookupRids(DataField)}, this method collects all RIDs eagerly.
+	 * 
+	 * @param sortedKeys The keys to get the RIDs for, in ascending order.
+	 * @return For each key, the list of its RIDs, which is empty if the key is not contained.
+	 * @throws PageFormatException Thrown if during processing a page's layout was found to be
+	 *                             found to be corrupted.
+	 * @throws IndexFormatCorruptException Throws, if the evaluation failed because condition
+	 *                                     of the BTree were found to be invalid.
+	 * @throws IOException Thrown, if a page could not be loaded.
+	 */
+	public List<List<RID>> lookupRids(DataField[] sortedKeys)
+	throws PageFormatException, IndexFormatCorruptException, IOException;
+	
 	
 	/**
 	 * Gets all RIDs in a given key-range. The rage is defined by the start key <code>l</code> (lower bound) 
@@ -102,6 +137,28 @@ public interface BTreeIndex
 	public IndexResultIterator<DataField> lookupKeys(DataField startKey, DataField stopKey, boolean startKeyIncluded, boolean stopKeyIncluded)
 	throws PageFormatException, IndexFormatCorruptException, IOException; 
 	
+	/**
+	 * Gets the complete entries that are contained in the given key-range. Each entry is returned
+	 * as a tuple with the fields of the key first (one per indexed column, also for composite
+	 * indexes), followed by the included columns in the order of the schema, followed by the RID.
+	 * The range is defined as in {@link #lookupKeys(DataField, DataField, boolean, boolean)}.
+	 * <p>
+	 * This method should obey the same on-demand-loading semantics as the {@link #lookupRids(DataField)} method.
+	 * 
+	 * @param startKey The lower boundary of the requested interval.
+	 * @param stopKey The upper boundary of the requested interval.
+	 * @param startKeyIncluded A flag indicating whether the lower boundary is inclusive. True indicates an inclusive boundary. 
+	 * @param stopKeyIncluded A flag indicating whether the upper boundary is inclusive. True indicates an inclusive boundary.
+	 * @return An Iterator over of all entries for the given key range.
+	 * @throws PageFormatException Thrown if during processing a page's layout was found to be
+	 *                             found to be corrupted.
+	 * @throws IndexFormatCorruptException Throws, if the evaluation failed because condition
+	 *                                     of the BTree were found to be invalid.
+	 * @throws IOException Thrown, if a page could not be loaded.
+	 */
+	public IndexResultIterator<DataTuple> lookupEntries(DataField startKey, DataField stopKey, boolean startKeyIncluded, boolean stopKeyIncluded)
+	throws PageFormatException, IndexFormatCorruptException, IOException; 
+	
 	
 	/**
 	 * Inserts a pair of (key/RID) into the index. For unique indexes, this method must throw
@@ -122,4 +179,42 @@ public interface BTreeIndex
 	public void insertEntry(DataField key, RID rid)
 	throws PageFormatException, IndexFormatCorruptException, DuplicateException, IOException;
 	
+	/**
+	 * Inserts an entry of (key/RID) together with the values of the included columns into the
+	 * index. The entries inserted through {@link #insertEntry(DataField, RID)} carry NULL values
+	 * for the included columns.
+	 * 
+	 * @param key The key of the entry to be inserted.
+	 * @param rid The RID of the entry to be inserted.
+	 * @param includedFields The values of the included columns, in the order of the schema.
+	 * @throws PageFormatException Thrown if during processing a page's layout was found to be
+	 *                             found to be corrupted.
+	 * @throws IndexFormatCorruptException Throws, if the evaluation failed because condition
+	 *                                     of the BTree were found to be invalid.
+	 * @throws DuplicateException Thrown, if the key is already contained and the index is defined to be unique.
+	 * @throws IOException Thrown, if a page could not be read or written.
+	 */
+	public void insertEntry(DataField key, RID rid, DataField[] includedFields)
+	throws PageFormatException, IndexFormatCorruptException, DuplicateException, IOException;
+	
+	
+	/**
+	 * Deletes a pair of (key/RID) from the index. If the pair is not contained, the index
+	 * remains unchanged.
+	 * <p>
+	 * Leaves that become underfull are not necessarily merged right away. The index may
+	 * rebalance them lazily, so a leaf may hold fewer entries than half its capacity.
+	 * 
+	 * @param key The key of the pair to be deleted.
+	 * @param rid The RID of the pair to be deleted.
+	 * @return True, if the pair was deleted, false if it was not contained.
+	 * @throws PageFormatException Thrown if during processing a page's layout was found to be
+	 *                             found to be corrupted.
+	 * @throws IndexFormatCorruptException Throws, if the evaluation failed because condition
+	 *                                     of the BTree were found to be invalid.
+	 * @throws IOException Thrown, if a page could not be read or written.
+	 */
+	public boolean deleteEntry(DataField key, RID rid)
+	throws PageFormatException, IndexFormatCorruptException, IOException;
+	
 }
@@ -90,6 +90,21 @@ public class BTreeInnerNodePage implements BTreeIndexPage
 	 * The data type of the key.
 	 */
 	private final DataType keyType;
+
+	/**
+	 * The comparator for search keys and encoded keys.
+	 */
+	private final EncodedKeyComparator keyComparator;
+
+	/**
+	 * Flag indicating that the keys are stored in the compact format.
+	 */
+	private final boolean compactKeys;
+
+	/**
+	 * The format of the keys of a composite index, or null, if the index has a single column.
+	 */
+	private final CompositeKeyFormat compositeKeys;
 	
 	/**
 	 * The maximal number of keys in the node.
@@ -144,9 +159,14 @@ public class BTreeInnerNodePage implements BTreeIndexPage
 	{
 		this.buffer = buffer;
 		this.keyType = schema.getIndexedColumnSchema().getDataType();
+		this.compactKeys = schema.hasCompactKeys();
+		this.compositeKeys = CompositeKeyFormat.getFormat(schema);
+		this.keyComparator = this.compactKeys ? CompactKeyFormat.COMPARATOR :
+			this.compositeKeys != null ? this.compositeKeys :
+			EncodedKeyComparator.getComparator(this.keyType);
 		this.maxKeys = schema.getFanOut();
 
-		this.keyWidth = this.keyType.getNumberOfBytes();
+		this.keyWidth = schema.getKeyWidth();
 
 		this.pointerSequenceOffset = HEADER_SIZE + (this.maxKeys * this.keyWidth);
 
@@ -243,7 +263,7 @@ public class BTreeInnerNodePage implements BTreeIndexPage
 			throw new PageExpiredException();
 		}
 		
-		return this.numKeys == 0 ? null : this.keyType.getFromBinary(this.buffer, HEADER_SIZE, this.keyWidth);
+		return this.numKeys == 0 ? null : decodeKey(HEADER_SIZE);
 	}
 
 	/**
@@ -257,7 +277,7 @@ public class BTreeInnerNodePage implements BTreeIndexPage
 			throw new PageExpiredException();
 		}
 		
-		return this.numKeys == 0 ? null : this.keyType.getFromBinary(this.buffer, (this.numKeys - 1) * this.keyWidth + HEADER_SIZE, this.keyWidth);
+		return this.numKeys == 0 ? null : decodeKey((this.numKeys - 1) * this.keyWidth + HEADER_SIZE);
 	}
 
 	/**
@@ -303,7 +323,7 @@ public class BTreeInnerNodePage implements BTreeIndexPage
 		if (position < 0 || position >= this.numKeys) {
 			throw new IndexOutOfBoundsException("Key position " + position + " is out of range [0, " + this.numKeys + ").");
 		}
-		newKeyValue.encodeBinary(this.buffer, position * this.keyWidth + HEADER_SIZE);
+		encodeKey(newKeyValue, position * this.keyWidth + HEADER_SIZE);
 		this.modified = true;
 	}
 	
@@ -429,7 +449,7 @@ public class BTreeInnerNodePage implements BTreeIndexPage
 		}
 		
 		// store the key
-		key.encodeBinary(this.buffer, HEADER_SIZE);
+		encodeKey(key, HEADER_SIZE);
 		IntField.encodeIntAsBinary(firstPointer, this.buffer, this.pointerSequenceOffset);
 		IntField.encodeIntAsBinary(secondPointer, this.buffer, this.pointerSequenceOffset + PAGE_NUMBER_WIDTH);
 
@@ -575,7 +595,7 @@ public class BTreeInnerNodePage implements BTreeIndexPage
 		}
 
 		// insert the key and the page number
-		key.encodeBinary(this.buffer, keyPosition * this.keyWidth + HEADER_SIZE);
+		encodeKey(key, keyPosition * this.keyWidth + HEADER_SIZE);
 		IntField.encodeIntAsBinary(pageNumber, this.buffer, (keyPosition + 1) * PAGE_NUMBER_WIDTH + this.pointerSequenceOffset);
 
 		this.numKeys++;
@@ -679,7 +699,7 @@ public class BTreeInnerNodePage implements BTreeIndexPage
 	 */
 	private final DataField uncheckedGetKey(int position)
 	{
-		return this.keyType.getFromBinary(this.buffer, position * this.keyWidth + HEADER_SIZE, this.keyWidth);
+		return decodeKey(position * this.keyWidth + HEADER_SIZE);
 	}
 	
 
@@ -694,6 +714,44 @@ public class BTreeInnerNodePage implements BTreeIndexPage
 		return IntField.getIntFromBinary(this.buffer, (position * PAGE_NUMBER_WIDTH) + this.pointerSequenceOffset);
 	}
 	
+	/**
+	 * Decodes the key at the given offset.
+	 * 
+	 * @param offset The offset of the key in the buffer.
+	 * @return The key.
+	 */
+	private DataField decodeKey(int offset)
+	{
+		if (this.compactKeys) {
+			return CompactKeyFormat.decode(this.buffer, offset, this.keyWidth);
+		}
+		else if (this.compositeKeys != null) {
+			return this.compositeKeys.decode(this.buffer, offset);
+		}
+		else {
+			return this.keyType.getFromBinary(this.buffer, offset, this.keyWidth);
+		}
+	}
+	
+	/**
+	 * Encodes the key at the given offset.
+	 * 
+	 * @param key The key to encode.
+	 * @param offset The offset of the key in the buffer.
+	 */
+	private void encodeKey(DataField key, int offset)
+	{
+		if (this.compactKeys) {
+			CompactKeyFormat.encode(key, this.buffer, offset, this.keyWidth);
+		}
+		else if (this.compositeKeys != null) {
+			this.compositeKeys.encode(key, this.buffer, offset);
+		}
+		else {
+			key.encodeBinary(this.buffer, offset);
+		}
+	}
+	
 	/**
 	 * Finds the position of a key, or gives the insertion position.
 	 * The algorithm is that of <code>Arrays.binarySearch()</code>.
@@ -711,8 +769,7 @@ public class BTreeInnerNodePage implements BTreeIndexPage
 			// get middle element and compare to the search key
 		    int mid = (low + high) >>> 1;
 	        int midOffset = (mid * this.keyWidth) + HEADER_SIZE;
-		    DataField midVal = this.keyType.getFromBinary(this.buffer, midOffset, this.keyWidth);
-		    int cmp = midVal.compareTo(key);
+		    int cmp = this.keyComparator.compare(this.buffer, midOffset, this.keyWidth, key);
 
 		    // adjust next interval or return found
 		    if (cmp < 0) {
@@ -754,9 +811,10 @@ public class BTreeInnerNodePage implements BTreeIndexPage
 			else {
 				// key found in a non-unique index.
 				// track back to the first occurrence.
-				DataField keyAtPos = getKey(pos);
-				while (pos > 0 && getKey(pos - 1).equals(keyAtPos)) {
+				int keyOffset = (pos - 1) * this.keyWidth + HEADER_SIZE;
+				while (pos > 0 && this.keyComparator.equal(this.buffer, keyOffset, this.keyWidth, key)) {
 					pos--;
+					keyOffset -= this.keyWidth;
 				}
 				return pos;
 			}			
@@ -31,6 +31,9 @@ import de.tuberlin.dima.minidb.io.cache.PageFormatException;
  *       bit represents the flag to indicate that the value last key is also found on the next page.</li> 
  * </ul> 
  * 
+ * The header is followed by the sequence of keys and the sequence of values. A value is the RID
+ * of the entry, followed by the encoded included columns, if the index has any.
+ * 
  * Many of the defined methods may throw an {@link IndexFormatCorruptException} when determining that
  * index conditions (such as the sorted order) are violated. The methods should however not explicitly
  * check everything, but only throw the exception when stumbling upon a condition that is obviously
@@ -98,6 +101,21 @@ public class BTreeLeafPage implements BTreeIndexPage
 	 * The data type of the key.
 	 */
 	private final DataType keyType;
+
+	/**
+	 * The comparator for search keys and encoded keys.
+	 */
+	private final EncodedKeyComparator keyComparator;
+
+	/**
+	 * Flag indicating that the keys are stored in the compact format.
+	 */
+	private final boolean compactKeys;
+
+	/**
+	 * The format of the keys of a composite index, or null, if the index has a single column.
+	 */
+	private final CompositeKeyFormat compositeKeys;
 	
 	/**
 	 * The maximal number of entries in the node.
@@ -114,6 +132,16 @@ public class BTreeLeafPage implements BTreeIndexPage
 	 */
 	private final int RIDSequenceOffset;
 	
+	/**
+	 * The width of the value of an entry in bytes, i.e. the RID and the included columns.
+	 */
+	private final int valueWidth;
+	
+	/**
+	 * The types of the included columns.
+	 */
+	private final DataType[] includedTypes;
+	
 	/**
 	 * The current number of entries.
 	 */
@@ -149,9 +177,21 @@ public class BTreeLeafPage implements BTreeIndexPage
 	{
 		this.buffer = buffer;
 		this.keyType = schema.getIndexedColumnSchema().getDataType();
+		this.compactKeys = schema.hasCompactKeys();
+		this.compositeKeys = CompositeKeyFormat.getFormat(schema);
+		this.keyComparator = this.compactKeys ? CompactKeyFormat.COMPARATOR :
+			this.compositeKeys != null ? this.compositeKeys :
+			EncodedKeyComparator.getComparator(this.keyType);
 		this.maxEntries = schema.getMaximalLeafEntries();
-		this.keyWidth = this.keyType.getNumberOfBytes();
+		this.keyWidth = schema.getKeyWidth();
 		this.RIDSequenceOffset = HEADER_SIZE + (this.maxEntries * this.keyWidth);
+		this.valueWidth = RID.getRIDSize() + schema.getIncludedWidth();
+		
+		int[] included = schema.getIncludedColumnNumbers();
+		this.includedTypes = new DataType[included.length];
+		for (int i = 0; i < included.length; i++) {
+			this.includedTypes[i] = schema.getIndexTableSchema().getColumn(included[i]).getDataType();
+		}
 		this.numEntries = IntField.getIntFromBinary(buffer, HEADER_NUM_ENTRIES_OFFSET);
 		this.unique = schema.isUnique();
 		this.modified = false;
@@ -317,7 +357,7 @@ public class BTreeLeafPage implements BTreeIndexPage
 			throw new PageExpiredException();
 		}
 		
-		return this.numEntries == 0 ? null : this.keyType.getFromBinary(this.buffer, HEADER_SIZE, this.keyWidth);
+		return this.numEntries == 0 ? null : decodeKey(HEADER_SIZE);
 	}
 
 	/**
@@ -332,7 +372,7 @@ public class BTreeLeafPage implements BTreeIndexPage
 		}
 		
 		int offset = (this.numEntries - 1) * this.keyWidth + HEADER_SIZE;
-		return this.numEntries == 0 ? null : this.keyType.getFromBinary(this.buffer, offset, this.keyWidth);
+		return this.numEntries == 0 ? null : decodeKey(offset);
 	}
 
 	/**
@@ -354,7 +394,7 @@ public class BTreeLeafPage implements BTreeIndexPage
 		}
 
 		position = position * this.keyWidth + HEADER_SIZE;
-		return this.keyType.getFromBinary(this.buffer, position, this.keyWidth);
+		return decodeKey(position);
 	}
 
 	/**
@@ -379,7 +419,7 @@ public class BTreeLeafPage implements BTreeIndexPage
 		// if the key is contained, move to the leftmost occurrence of the key
 		if (pos >= 0) {
 			int keyOffset = (pos - 1) * this.keyWidth + HEADER_SIZE;
-			while (pos > 0 && this.keyType.getFromBinary(this.buffer, keyOffset, this.keyWidth).equals(key)) {
+			while (pos > 0 && this.keyComparator.equal(this.buffer, keyOffset, this.keyWidth, key)) {
 				pos--;
 				keyOffset -= this.keyWidth;
 			}
@@ -408,10 +448,38 @@ public class BTreeLeafPage implements BTreeIndexPage
 			throw new IndexOutOfBoundsException("position is not within valid range.");
 		}
 
-		position = position * RID.getRIDSize() + this.RIDSequenceOffset;
+		position = position * this.valueWidth + this.RIDSequenceOffset;
 		return RID.getRidFromBinary(this.buffer, position);
 	}
 
+	/**
+	 * Gets the included columns of the entry at the given position.
+	 * 
+	 * @param position The position of the entry.
+	 * @return The fields of the included columns, an empty array, if the index has none.
+	 * @throws IndexOutOfBoundsException If the position is out of the range between zero and
+	 *                                   the number of entries.
+	 */
+	public DataField[] getIncludedFields(int position)
+	{
+		if (Constants.DEBUG_CHECK && this.expired) {
+			throw new PageExpiredException();
+		}
+		
+		if (position < 0 || position >= this.numEntries) {
+			throw new IndexOutOfBoundsException("position is not within valid range.");
+		}
+
+		int offset = position * this.valueWidth + this.RIDSequenceOffset + RID.getRIDSize();
+		DataField[] fields = new DataField[this.includedTypes.length];
+		for (int i = 0; i < fields.length; i++) {
+			int width = this.includedTypes[i].getNumberOfBytes();
+			fields[i] = this.includedTypes[i].getFromBinary(this.buffer, offset, width);
+			offset += width;
+		}
+		return fields;
+	}
+
 	/**
 	 * Gets an RID for the given key. For unique indexes, this method returns 
 	 * the only RID for that key, for none-unique indexes, this method returns any
@@ -432,7 +500,7 @@ public class BTreeLeafPage implements BTreeIndexPage
 		
 		int pos = binSearchForKey(key);
 		if (pos >= 0) {
-			pos = pos * RID.getRIDSize() + this.RIDSequenceOffset;
+			pos = pos * this.valueWidth + this.RIDSequenceOffset;
 			return RID.getRidFromBinary(this.buffer, pos);
 		} else {
 			return null;
@@ -459,15 +527,13 @@ public class BTreeLeafPage implements BTreeIndexPage
 		
 		int pos = binSearchForKey(key);
 		if (pos >= 0) {
-			final int ridSize = RID.getRIDSize();
 			int keyOffset = pos * this.keyWidth + HEADER_SIZE;
-			int ridOffset = pos * ridSize + this.RIDSequenceOffset;
+			int ridOffset = pos * this.valueWidth + this.RIDSequenceOffset;
 
 			// move backwards to where the key changes
 			// we can add the RIDs in any order because the RID order for the same key is undefined.
-			for (int k = keyOffset, r = ridOffset; k >= HEADER_SIZE; k -= this.keyWidth, r -= ridSize) {
-				DataField currKey = this.keyType.getFromBinary(this.buffer, k, this.keyWidth);
-				if (currKey.equals(key)) {
+			for (int k = keyOffset, r = ridOffset; k >= HEADER_SIZE; k -= this.keyWidth, r -= this.valueWidth) {
+				if (this.keyComparator.equal(this.buffer, k, this.keyWidth, key)) {
 					// add the RID
 					target.add(RID.getRidFromBinary(this.buffer, r));
 				} else {
@@ -479,11 +545,10 @@ public class BTreeLeafPage implements BTreeIndexPage
 			// covered by the previous loop
 			pos++;
 			keyOffset += this.keyWidth;
-			ridOffset += ridSize;
+			ridOffset += this.valueWidth;
 
 			while (pos < this.numEntries) {
-				DataField currKey = this.keyType.getFromBinary(this.buffer, keyOffset, this.keyWidth);
-				if (currKey.equals(key)) {
+				if (this.keyComparator.equal(this.buffer, keyOffset, this.keyWidth, key)) {
 					target.add(RID.getRidFromBinary(this.buffer, ridOffset));
 				} else {
 					pos--;
@@ -493,7 +558,7 @@ public class BTreeLeafPage implements BTreeIndexPage
 				// increment
 				pos++;
 				keyOffset += this.keyWidth;
-				ridOffset += ridSize;
+				ridOffset += this.valueWidth;
 			}
 
 			// check if this was the last (highest) key on the page.
@@ -520,7 +585,7 @@ public class BTreeLeafPage implements BTreeIndexPage
 		
 		for (int position = startPosition; position < this.numEntries; position++) {
 			int offset = position * this.keyWidth + HEADER_SIZE;
-			target.add(this.keyType.getFromBinary(this.buffer, offset, this.keyWidth));
+			target.add(decodeKey(offset));
 		}
 	}
 	
@@ -543,6 +608,25 @@ public class BTreeLeafPage implements BTreeIndexPage
 	 * @throws DuplicateException Thrown, if the key is already contained, but the index is unique.
 	 */
 	public boolean insertKeyRIDPair(DataField key, RID rid) throws PageFormatException
+	{
+		return insertKeyRIDPair(key, rid, null);
+	}
+
+	/**
+	 * Inserts an entry (key / RID and included columns) into the sorted sequence of this
+	 * index page.
+	 * 
+	 * @param key The key of the entry.
+	 * @param rid The RID of the entry.
+	 * @param included The fields of the included columns, or null, to store NULL values.
+	 * @return True, if the entry could be successfully inserted, false if there
+	 *         was no space left.
+	 *          
+	 * @throws PageFormatException Thrown, if the page was identified to be corrupted or
+	 *                             inconsistent in any way that prevents consistent processing.
+	 * @throws DuplicateException Thrown, if the key is already contained, but the index is unique.
+	 */
+	public boolean insertKeyRIDPair(DataField key, RID rid, DataField[] included) throws PageFormatException
 	{
 		if (Constants.DEBUG_CHECK && this.expired) {
 			throw new PageExpiredException();
@@ -552,6 +636,15 @@ public class BTreeLeafPage implements BTreeIndexPage
 			return false;
 		}
 		else {
+			// reject the key before any entries are shifted
+			checkIncluded(included);
+			if (this.compactKeys) {
+				CompactKeyFormat.checkKey(key, this.keyWidth);
+			}
+			else if (this.compositeKeys != null) {
+				this.compositeKeys.checkKey(key);
+			}
+			
 			int pos = binSearchForKey(key);
 			if (pos < 0) {
 				// key not yet contained. make pos the insertion point.
@@ -562,18 +655,18 @@ public class BTreeLeafPage implements BTreeIndexPage
 			}
 
 			// pos is now the position where the key goes
-			final int ridWidth = RID.getRIDSize();
 			int keyOffset = pos * this.keyWidth + HEADER_SIZE;
-			int ridOffset = pos * ridWidth + this.RIDSequenceOffset;
+			int ridOffset = pos * this.valueWidth + this.RIDSequenceOffset;
 
 			// shift all keys one to the right, on a byte level
 			System.arraycopy(this.buffer, keyOffset, this.buffer, keyOffset + this.keyWidth, (this.numEntries - pos) * this.keyWidth);
 			// shift all RIDs one to the right, on a byte level
-			System.arraycopy(this.buffer, ridOffset, this.buffer, ridOffset + ridWidth, (this.numEntries - pos) * ridWidth);
+			System.arraycopy(this.buffer, ridOffset, this.buffer, ridOffset + this.valueWidth, (this.numEntries - pos) * this.valueWidth);
 
 			// store the key / rid pair
-			key.encodeBinary(this.buffer, keyOffset);
+			encodeKey(key, keyOffset);
 			rid.encodeBinary(this.buffer, ridOffset);
+			encodeIncluded(included, ridOffset + RID.getRIDSize());
 
 			// mark modified and store the number of entries
 			this.modified = true;
@@ -583,6 +676,70 @@ public class BTreeLeafPage implements BTreeIndexPage
 		}
 	}
 
+	/**
+	 * Appends a pair (key / RID) to the end of the sorted sequence of this index page. The key
+	 * must not be smaller than the last key on the page. This is the way to fill pages with
+	 * presorted entries, for example when bulk loading an index, since it neither searches
+	 * nor shifts entries.
+	 * 
+	 * @param key The key of the pair.
+	 * @param rid The RID of the pair.
+	 * @return True, if the pair could be successfully appended, false if there
+	 *         was no space left.
+	 * 
+	 * @throws IndexFormatCorruptException Thrown, if the key is smaller than the last key on the page.
+	 * @throws DuplicateException Thrown, if the key equals the last key, but the index is unique.
+	 */
+	public boolean appendKeyRIDPair(DataField key, RID rid)
+	{
+		return appendKeyRIDPair(key, rid, null);
+	}
+
+	/**
+	 * Appends an entry (key / RID and included columns) to the end of the sorted sequence of
+	 * this index page, like {@link #appendKeyRIDPair(DataField, RID)}.
+	 * 
+	 * @param key The key of the entry.
+	 * @param rid The RID of the entry.
+	 * @param included The fields of the included columns, or null, to store NULL values.
+	 * @return True, if the entry could be successfully appended, false if there
+	 *         was no space left.
+	 * 
+	 * @throws IndexFormatCorruptException Thrown, if the key is smaller than the last key on the page.
+	 * @throws DuplicateException Thrown, if the key equals the last key, but the index is unique.
+	 */
+	public boolean appendKeyRIDPair(DataField key, RID rid, DataField[] included)
+	{
+		if (Constants.DEBUG_CHECK && this.expired) {
+			throw new PageExpiredException();
+		}
+		
+		if (this.numEntries == this.maxEntries) {
+			return false;
+		}
+		
+		if (this.numEntries > 0) {
+			int cmp = this.keyComparator.compare(this.buffer, (this.numEntries - 1) * this.keyWidth + HEADER_SIZE, this.keyWidth, key);
+			if (cmp > 0) {
+				throw new IndexFormatCorruptException("Key " + key + " is appended out of order.");
+			}
+			else if (cmp == 0 && this.unique) {
+				throw new DuplicateException("Key " + key + " is already contained.");
+			}
+		}
+		
+		checkIncluded(included);
+		encodeKey(key, this.numEntries * this.keyWidth + HEADER_SIZE);
+		rid.encodeBinary(this.buffer, this.numEntries * this.valueWidth + this.RIDSequenceOffset);
+		encodeIncluded(included, this.numEntries * this.valueWidth + this.RIDSequenceOffset + RID.getRIDSize());
+		
+		// mark modified and store the number of entries
+		this.modified = true;
+		this.numEntries++;
+		IntField.encodeIntAsBinary(this.numEntries, this.buffer, HEADER_NUM_ENTRIES_OFFSET);
+		return true;
+	}
+
 	/**
 	 * Deletes a pair of (key / RID) from this leaf page. If the pair is not contained,
 	 * the method returns false, if it has been deleted, it returns true. 
@@ -607,9 +764,8 @@ public class BTreeLeafPage implements BTreeIndexPage
 		}
 		else {
 			// key contained, find the rid
-			final int ridSize = RID.getRIDSize();
 			int keyOffset = pos * this.keyWidth + HEADER_SIZE;
-			int ridOffset = pos * ridSize + this.RIDSequenceOffset;
+			int ridOffset = pos * this.valueWidth + this.RIDSequenceOffset;
 			RID rdd = RID.getRidFromBinary(this.buffer, ridOffset);
 
 			if (rdd.equals(rid)) {
@@ -623,9 +779,8 @@ public class BTreeLeafPage implements BTreeIndexPage
 			// not unique, go left and right until the key/RID pair is found
 
 			// move backwards to where the key changes
-			for (int p = pos - 1, k = keyOffset - this.keyWidth, r = ridOffset - ridSize; p >= 0; p--, k -= this.keyWidth, r -= ridSize) {
-				DataField currKey = this.keyType.getFromBinary(this.buffer, k, this.keyWidth);
-				if (currKey.equals(key)) {
+			for (int p = pos - 1, k = keyOffset - this.keyWidth, r = ridOffset - this.valueWidth; p >= 0; p--, k -= this.keyWidth, r -= this.valueWidth) {
+				if (this.keyComparator.equal(this.buffer, k, this.keyWidth, key)) {
 					// same key, check rid
 					RID thisRid = RID.getRidFromBinary(this.buffer, r);
 					if (thisRid.equals(rid)) {
@@ -641,9 +796,8 @@ public class BTreeLeafPage implements BTreeIndexPage
 				}
 			}
 			// move backwards to where the key changes
-			for (; pos < this.numEntries; pos++, keyOffset += this.keyWidth, ridOffset += ridSize) {
-				DataField currKey = this.keyType.getFromBinary(this.buffer, keyOffset, this.keyWidth);
-				if (currKey.equals(key)) {
+			for (; pos < this.numEntries; pos++, keyOffset += this.keyWidth, ridOffset += this.valueWidth) {
+				if (this.keyComparator.equal(this.buffer, keyOffset, this.keyWidth, key)) {
 					// same key, check rid
 					RID thisRid = RID.getRidFromBinary(this.buffer, ridOffset);
 					if (thisRid.equals(rid)) {
@@ -718,11 +872,10 @@ public class BTreeLeafPage implements BTreeIndexPage
 		}
 		
 		// copy from other to us
-		final int ridWidth = RID.getRIDSize();
 		int keyOffset = this.numEntries * this.keyWidth + HEADER_SIZE;
-		int ridOffset = this.numEntries * ridWidth + this.RIDSequenceOffset;
+		int ridOffset = this.numEntries * this.valueWidth + this.RIDSequenceOffset;
 		System.arraycopy(other.buffer, HEADER_SIZE, this.buffer, keyOffset, num * this.keyWidth);
-		System.arraycopy(other.buffer, other.RIDSequenceOffset, this.buffer, ridOffset, num * ridWidth);
+		System.arraycopy(other.buffer, other.RIDSequenceOffset, this.buffer, ridOffset, num * this.valueWidth);
 
 		// update our header
 		this.numEntries += num;
@@ -733,8 +886,8 @@ public class BTreeLeafPage implements BTreeIndexPage
 			// move the remaining entries in the other page to the front
 			System.arraycopy(other.buffer, num * this.keyWidth + HEADER_SIZE,
 			                 other.buffer, HEADER_SIZE, (other.numEntries - num) * this.keyWidth);
-			System.arraycopy(other.buffer, num * ridWidth + other.RIDSequenceOffset,
-			                 other.buffer, other.RIDSequenceOffset, (other.numEntries - num) * ridWidth);
+			System.arraycopy(other.buffer, num * this.valueWidth + other.RIDSequenceOffset,
+			                 other.buffer, other.RIDSequenceOffset, (other.numEntries - num) * this.valueWidth);
 			// at least one key will be kept on the other. the other's isKeyContinuing flag is still
 			// valid. set ours, if necessary
 		}
@@ -797,15 +950,14 @@ public class BTreeLeafPage implements BTreeIndexPage
 			throw new IndexFormatCorruptException("Keys to prepend are larger this node's first keys");
 		}
 		
-		final int ridWidth = RID.getRIDSize();
 		// make space on our side. move all entries to the side
 		System.arraycopy(this.buffer, HEADER_SIZE, this.buffer, num * this.keyWidth + HEADER_SIZE, this.numEntries * this.keyWidth);
-		System.arraycopy(this.buffer, this.RIDSequenceOffset, this.buffer, num * ridWidth + this.RIDSequenceOffset, this.numEntries * ridWidth);
+		System.arraycopy(this.buffer, this.RIDSequenceOffset, this.buffer, num * this.valueWidth + this.RIDSequenceOffset, this.numEntries * this.valueWidth);
 		
 		// copy from other to us
 		int startPos = other.numEntries - num;
 		System.arraycopy(other.buffer, startPos * this.keyWidth + HEADER_SIZE, this.buffer, HEADER_SIZE, num * this.keyWidth);
-		System.arraycopy(other.buffer, startPos * ridWidth + this.RIDSequenceOffset, this.buffer, this.RIDSequenceOffset, num * ridWidth);
+		System.arraycopy(other.buffer, startPos * this.valueWidth + this.RIDSequenceOffset, this.buffer, this.RIDSequenceOffset, num * this.valueWidth);
 
 		// update our header
 		this.numEntries += num;
@@ -841,8 +993,7 @@ public class BTreeLeafPage implements BTreeIndexPage
 			// get middle element and compare to the search key
 			int mid = (low + high) >>> 1;
 			int midOffset = (mid * this.keyWidth) + HEADER_SIZE;
-			DataField midVal = this.keyType.getFromBinary(this.buffer, midOffset, this.keyWidth);
-			int cmp = midVal.compareTo(key);
+			int cmp = this.keyComparator.compare(this.buffer, midOffset, this.keyWidth, key);
 
 			// adjust next interval or return found
 			if (cmp < 0) {
@@ -858,6 +1009,85 @@ public class BTreeLeafPage implements BTreeIndexPage
 		return -(low + 1);  // key not found.
 	}
 	
+	/**
+	 * Decodes the key at the given offset.
+	 * 
+	 * @param offset The offset of the key in the buffer.
+	 * @return The key.
+	 */
+	private DataField decodeKey(int offset)
+	{
+		if (this.compactKeys) {
+			return CompactKeyFormat.decode(this.buffer, offset, this.keyWidth);
+		}
+		else if (this.compositeKeys != null) {
+			return this.compositeKeys.decode(this.buffer, offset);
+		}
+		else {
+			return this.keyType.getFromBinary(this.buffer, offset, this.keyWidth);
+		}
+	}
+	
+	/**
+	 * Encodes the key at the given offset.
+	 * 
+	 * @param key The key to encode.
+	 * @param offset The offset of the key in the buffer.
+	 */
+	private void encodeKey(DataField key, int offset)
+	{
+		if (this.compactKeys) {
+			CompactKeyFormat.encode(key, this.buffer, offset, this.keyWidth);
+		}
+		else if (this.compositeKeys != null) {
+			this.compositeKeys.encode(key, this.buffer, offset);
+		}
+		else {
+			key.encodeBinary(this.buffer, offset);
+		}
+	}
+	
+	/**
+	 * Checks whether the given included fields match the included columns.
+	 * 
+	 * @param included The included fields, or null, to store NULL values.
+	 * @throws IllegalArgumentException Thrown, if the fields do not match the included columns.
+	 */
+	private void checkIncluded(DataField[] included)
+	{
+		if (included == null) {
+			return;
+		}
+		if (included.length != this.includedTypes.length) {
+			throw new IllegalArgumentException("Expected " + this.includedTypes.length + " included fields, got " + included.length + '.');
+		}
+		for (int i = 0; i < included.length; i++) {
+			if (included[i].getBasicType() != this.includedTypes[i].getBasicType()) {
+				throw new IllegalArgumentException("Included field " + i + " does not match the column type.");
+			}
+		}
+	}
+	
+	/**
+	 * Encodes the included columns of an entry at the given offset. Unused bytes of array
+	 * types are zeroed.
+	 * 
+	 * @param included The included fields, or null, to store NULL values.
+	 * @param offset The offset of the included columns in the buffer.
+	 */
+	private void encodeIncluded(DataField[] included, int offset)
+	{
+		for (int i = 0; i < this.includedTypes.length; i++) {
+			int width = this.includedTypes[i].getNumberOfBytes();
+			DataField field = included == null ? this.includedTypes[i].getNullValue() : included[i];
+			int len = field.encodeBinary(this.buffer, offset);
+			for (int k = len; k < width; k++) {
+				this.buffer[offset + k] = 0;
+			}
+			offset += width;
+		}
+	}
+	
 	/**
 	 * Deletes the entry (key/rid) at the given position.
 	 * 
@@ -867,10 +1097,10 @@ public class BTreeLeafPage implements BTreeIndexPage
 	{
 		// move all keys from the right
 		int keyOff = pos * this.keyWidth + HEADER_SIZE;
-		int ridOff = pos * RID.getRIDSize() + this.RIDSequenceOffset;
+		int ridOff = pos * this.valueWidth + this.RIDSequenceOffset;
 		
 		System.arraycopy(this.buffer, keyOff + this.keyWidth, this.buffer, keyOff, (this.numEntries - pos - 1) * this.keyWidth);
-		System.arraycopy(this.buffer, ridOff + RID.getRIDSize(), this.buffer, ridOff, (this.numEntries - pos - 1) * RID.getRIDSize());
+		System.arraycopy(this.buffer, ridOff + this.valueWidth, this.buffer, ridOff, (this.numEntries - pos - 1) * this.valueWidth);
 		
 		// mark modified and adjust entry count
 		this.modified = true;
@@ -0,0 +1,213 @@
+package de.tuberlin.dima.minidb.io.index;
+
+
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+
+
+/**
+ * The compact format for CHAR keys on index pages, used by indexes whose schema has compact
+ * keys enabled. A key slot has one byte per character of the column, half the bytes of the
+ * regular encoding, so the pages hold twice the number of keys.
+ * <p>
+ * A key is the CHAR value padded with spaces to the column width, as the values are read from
+ * the table. The trailing spaces are not stored, except for the first character. Characters up
+ * to <code>0xfd</code> are stored in a single byte as their value plus one, all others in three
+ * bytes, an escape byte <code>0xff</code> followed by the character's two bytes. The bytes behind
+ * the stored characters are zero and stand for the trailing spaces. Keys of characters up to
+ * <code>0xfd</code> always fit into the slot. A key with larger characters fits as long as the
+ * escapes do not take more bytes than its trailing spaces free.
+ * <p>
+ * NULL is represented by a leading zero byte, which is distinguishable from all other keys,
+ * because every stored character has a non-zero first byte.
+ */
+final class CompactKeyFormat
+{
+	/**
+	 * The largest character that is stored in a single byte.
+	 */
+	private static final int MAX_SINGLE_BYTE_CHAR = 0xfd;
+
+	/**
+	 * The byte that starts a character stored in three bytes.
+	 */
+	private static final int ESCAPE = 0xff;
+
+	/**
+	 * The comparator for keys in the compact format. It compares the padded key in the slot
+	 * with the key as <code>CharField.compareTo</code> does, without decoding it first.
+	 */
+	static final EncodedKeyComparator COMPARATOR = new EncodedKeyComparator()
+	{
+		@Override
+		int compare(byte[] buffer, int offset, int width, DataField key)
+		{
+			String other = ((CharField) key).getValue();
+			if (buffer[offset] == 0) {
+				return other == null ? 0 : -1;
+			}
+			else if (other == null) {
+				return 1;
+			}
+
+			int num = Math.min(width, other.length());
+			int pos = offset, end = offset + width;
+			for (int i = 0; i < num; i++) {
+				int c;
+				if (pos == end || buffer[pos] == 0) {
+					c = ' ';
+				}
+				else if ((buffer[pos] & 0xff) == ESCAPE) {
+					c = ((buffer[pos + 1] & 0xff) << 8) | (buffer[pos + 2] & 0xff);
+					pos += 3;
+				}
+				else {
+					c = (buffer[pos++] & 0xff) - 1;
+				}
+
+				int o = other.charAt(i);
+				if (c != o) {
+					return c - o;
+				}
+			}
+			return width - other.length();
+		}
+	};
+
+	/**
+	 * Checks whether a key can be stored in the compact format.
+	 *
+	 * @param key The key to check.
+	 * @param width The number of bytes of a key, which is the width of the column.
+	 * @throws IllegalArgumentException Thrown, if the key's characters above <code>0xfd</code>
+	 *                                  take more bytes than the slot has.
+	 */
+	static void checkKey(DataField key, int width)
+	{
+		String value = getPaddedValue(key);
+		if (value != null && getEncodedLength(value, getStoredLength(value, width)) > width) {
+			throw new IllegalArgumentException("Key " + key + " has too many characters above 0x" +
+					Integer.toHexString(MAX_SINGLE_BYTE_CHAR) + " to be stored in the compact key format.");
+		}
+	}
+
+	/**
+	 * Encodes a key in the compact format.
+	 *
+	 * @param key The key to encode.
+	 * @param buffer The buffer to encode the key into.
+	 * @param offset The offset of the key in the buffer.
+	 * @param width The number of bytes of a key, which is the width of the column.
+	 * @throws IllegalArgumentException Thrown, if the key's characters above <code>0xfd</code>
+	 *                                  take more bytes than the slot has.
+	 */
+	static void encode(DataField key, byte[] buffer, int offset, int width)
+	{
+		// check first, so that a failed encoding leaves the buffer unchanged
+		checkKey(key, width);
+
+		String value = getPaddedValue(key);
+		int len = value == null ? 0 : getStoredLength(value, width);
+		int pos = offset, end = offset + width;
+		for (int i = 0; i < len; i++) {
+			char c = value.charAt(i);
+			if (c <= MAX_SINGLE_BYTE_CHAR) {
+				buffer[pos++] = (byte) (c + 1);
+			}
+			else {
+				buffer[pos++] = (byte) ESCAPE;
+				buffer[pos++] = (byte) (c >> 8);
+				buffer[pos++] = (byte) c;
+			}
+		}
+		while (pos < end) {
+			buffer[pos++] = 0;
+		}
+	}
+
+	/**
+	 * Decodes a key from the compact format.
+	 *
+	 * @param buffer The buffer holding the key.
+	 * @param offset The offset of the key in the buffer.
+	 * @param width The number of bytes of a key, which is the width of the column.
+	 * @return The decoded key, padded with spaces to the width of the column.
+	 */
+	static DataField decode(byte[] buffer, int offset, int width)
+	{
+		if (buffer[offset] == 0) {
+			return new CharField(null);
+		}
+
+		char[] chars = new char[width];
+		int pos = offset, end = offset + width;
+		for (int i = 0; i < width; i++) {
+			if (pos == end || buffer[pos] == 0) {
+				chars[i] = ' ';
+			}
+			else if ((buffer[pos] & 0xff) == ESCAPE) {
+				chars[i] = (char) (((buffer[pos + 1] & 0xff) << 8) | (buffer[pos + 2] & 0xff));
+				pos += 3;
+			}
+			else {
+				chars[i] = (char) ((buffer[pos++] & 0xff) - 1);
+			}
+		}
+		return new CharField(new String(chars));
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the value of a key, where the empty value is replaced by a space, which it equals
+	 * once padded to the column width.
+	 *
+	 * @param key The key.
+	 * @return The value, or null, for the NULL key.
+	 */
+	private static String getPaddedValue(DataField key)
+	{
+		String value = ((CharField) key).getValue();
+		return value == null || value.length() > 0 ? value : " ";
+	}
+
+	/**
+	 * Gets the number of characters of a value that are stored, which are those up to the
+	 * column width without the trailing spaces, but at least the first.
+	 *
+	 * @param value The value, not empty.
+	 * @param width The width of the column.
+	 * @return The number of stored characters.
+	 */
+	private static int getStoredLength(String value, int width)
+	{
+		int len = Math.min(value.length(), width);
+		while (len > 1 && value.charAt(len - 1) == ' ') {
+			len--;
+		}
+		return len;
+	}
+
+	/**
+	 * Gets the number of bytes that the first characters of a value take in the compact format.
+	 *
+	 * @param value The value.
+	 * @param len The number of characters to encode.
+	 * @return The number of bytes.
+	 */
+	private static int getEncodedLength(String value, int len)
+	{
+		int bytes = 0;
+		for (int i = 0; i < len; i++) {
+			bytes += value.charAt(i) <= MAX_SINGLE_BYTE_CHAR ? 1 : 3;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Utility class, not to be instantiated.
+	 */
+	private CompactKeyFormat()
+	{
+	}
+}
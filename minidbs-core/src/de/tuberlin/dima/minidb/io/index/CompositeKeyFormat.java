@@ -0,0 +1,138 @@
+package de.tuberlin.dima.minidb.io.index;
+
+
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.core.CompositeField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+
+
+/**
+ * The format of composite keys on index pages. A composite key is stored as the sequence of the
+ * encodings of its fields, where each field occupies a slot of the width of its column type.
+ * Unused bytes of a slot are zero, so that equal keys have equal encodings.
+ * <p>
+ * The format also compares search keys against the encoded keys, field by field, with the
+ * comparator of the field's type. Search keys may be prefixes, which are ordered before all
+ * keys that start with them.
+ */
+final class CompositeKeyFormat extends EncodedKeyComparator
+{
+	/**
+	 * The types of the fields.
+	 */
+	private final DataType[] types;
+
+	/**
+	 * The widths of the slots of the fields.
+	 */
+	private final int[] widths;
+
+	/**
+	 * The comparators for the fields.
+	 */
+	private final EncodedKeyComparator[] comparators;
+
+
+	/**
+	 * Creates the format for the keys of the given composite index.
+	 *
+	 * @param schema The schema of the composite index.
+	 */
+	private CompositeKeyFormat(IndexSchema schema)
+	{
+		int num = schema.getNumberOfKeyColumns();
+		this.types = new DataType[num];
+		this.widths = new int[num];
+		this.comparators = new EncodedKeyComparator[num];
+
+		for (int i = 0; i < num; i++) {
+			this.types[i] = schema.getIndexedColumnSchema(i).getDataType();
+			this.widths[i] = this.types[i].getNumberOfBytes();
+			this.comparators[i] = EncodedKeyComparator.getComparator(this.types[i]);
+		}
+	}
+
+	/**
+	 * Gets the format for the keys of the given index.
+	 *
+	 * @param schema The schema of the index.
+	 * @return The format, or null, if the index is not a composite index.
+	 */
+	static CompositeKeyFormat getFormat(IndexSchema schema)
+	{
+		return schema.isComposite() ? new CompositeKeyFormat(schema) : null;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.index.EncodedKeyComparator#compare(byte[], int, int, de.tuberlin.dima.minidb.core.DataField)
+	 */
+	@Override
+	int compare(byte[] buffer, int offset, int width, DataField key)
+	{
+		CompositeField other = (CompositeField) key;
+		int num = Math.min(this.types.length, other.getNumberOfFields());
+		for (int i = 0; i < num; i++) {
+			int cmp = this.comparators[i].compare(buffer, offset, this.widths[i], other.getField(i));
+			if (cmp != 0) {
+				return cmp;
+			}
+			offset += this.widths[i];
+		}
+		return this.types.length - other.getNumberOfFields();
+	}
+
+	/**
+	 * Checks whether a key can be stored, i.e. whether it is a composite key with a field
+	 * for each indexed column. Prefixes can be searched for, but not stored.
+	 *
+	 * @param key The key to check.
+	 * @throws IllegalArgumentException Thrown, if the key is no complete composite key.
+	 */
+	void checkKey(DataField key)
+	{
+		if (!(key instanceof CompositeField) || ((CompositeField) key).getNumberOfFields() != this.types.length) {
+			throw new IllegalArgumentException("Key " + key + " does not have a field for each indexed column.");
+		}
+	}
+
+	/**
+	 * Encodes a complete composite key.
+	 *
+	 * @param key The key to encode.
+	 * @param buffer The buffer to encode the key into.
+	 * @param offset The offset of the key in the buffer.
+	 * @throws IllegalArgumentException Thrown, if the key is no complete composite key.
+	 */
+	void encode(DataField key, byte[] buffer, int offset)
+	{
+		// check first, so that a failed encoding leaves the buffer unchanged
+		checkKey(key);
+
+		CompositeField composite = (CompositeField) key;
+		for (int i = 0; i < this.types.length; i++) {
+			int len = composite.getField(i).encodeBinary(buffer, offset);
+			for (int k = len; k < this.widths[i]; k++) {
+				buffer[offset + k] = 0;
+			}
+			offset += this.widths[i];
+		}
+	}
+
+	/**
+	 * Decodes a composite key.
+	 *
+	 * @param buffer The buffer holding the key.
+	 * @param offset The offset of the key in the buffer.
+	 * @return The decoded key.
+	 */
+	DataField decode(byte[] buffer, int offset)
+	{
+		DataField[] fields = new DataField[this.types.length];
+		for (int i = 0; i < fields.length; i++) {
+			fields[i] = this.types[i].getFromBinary(buffer, offset, this.widths[i]);
+			offset += this.widths[i];
+		}
+		return new CompositeField(fields);
+	}
+}
@@ -0,0 +1,219 @@
+package de.tuberlin.dima.minidb.io.index;
+
+
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DateField;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.IntField;
+
+
+/**
+ * Compares a search key against a key in its fixed-width binary encoding on an index page,
+ * without deserializing the encoded key into a new data field. The comparison yields the
+ * same result as <code>keyType.getFromBinary(buffer, offset, width).compareTo(key)</code>.
+ * <p>
+ * There are specialized comparators for the types INT, BIG_INT, DOUBLE, DATE and CHAR. All
+ * other types are handled by a comparator that deserializes the encoded key.
+ */
+abstract class EncodedKeyComparator
+{
+	/**
+	 * Compares the encoded key to the given key.
+	 *
+	 * @param buffer The buffer holding the encoded key.
+	 * @param offset The offset of the encoded key in the buffer.
+	 * @param width The number of bytes of the encoded key.
+	 * @param key The key to compare to. Must be of the comparator's type.
+	 * @return A negative number, zero, or a positive number, if the encoded key is smaller,
+	 *         equal, or larger than the given key.
+	 */
+	abstract int compare(byte[] buffer, int offset, int width, DataField key);
+
+	/**
+	 * Checks whether the encoded key is equal to the given key.
+	 *
+	 * @param buffer The buffer holding the encoded key.
+	 * @param offset The offset of the encoded key in the buffer.
+	 * @param width The number of bytes of the encoded key.
+	 * @param key The key to compare to. Must be of the comparator's type.
+	 * @return True, if the keys are equal, false otherwise.
+	 */
+	final boolean equal(byte[] buffer, int offset, int width, DataField key)
+	{
+		return compare(buffer, offset, width, key) == 0;
+	}
+
+	/**
+	 * Gets the comparator for keys of the given type.
+	 *
+	 * @param keyType The type of the keys.
+	 * @return The comparator for the type.
+	 */
+	static EncodedKeyComparator getComparator(DataType keyType)
+	{
+		switch (keyType.getBasicType()) {
+		case INT:
+			return INT_COMPARATOR;
+		case BIG_INT:
+			return BIG_INT_COMPARATOR;
+		case DOUBLE:
+			return DOUBLE_COMPARATOR;
+		case DATE:
+			return DATE_COMPARATOR;
+		case CHAR:
+			return CHAR_COMPARATOR;
+		default:
+			return new GenericComparator(keyType);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                       Specialized Comparators
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The comparator for INT keys. NULL is the smallest int value and needs no special treatment.
+	 */
+	private static final EncodedKeyComparator INT_COMPARATOR = new EncodedKeyComparator()
+	{
+		@Override
+		int compare(byte[] buffer, int offset, int width, DataField key)
+		{
+			int val = IntField.getIntFromBinary(buffer, offset);
+			int other = ((IntField) key).getValue();
+			return val < other ? -1 : (val == other ? 0 : 1);
+		}
+	};
+
+	/**
+	 * The comparator for BIG_INT keys. NULL is the smallest long value and needs no special treatment.
+	 */
+	private static final EncodedKeyComparator BIG_INT_COMPARATOR = new EncodedKeyComparator()
+	{
+		@Override
+		int compare(byte[] buffer, int offset, int width, DataField key)
+		{
+			long val = getLongFromBinary(buffer, offset);
+			long other = ((BigIntField) key).getValue();
+			return val < other ? -1 : (val == other ? 0 : 1);
+		}
+	};
+
+	/**
+	 * The comparator for DOUBLE keys. NULL is encoded as NaN and sorts before all other values.
+	 */
+	private static final EncodedKeyComparator DOUBLE_COMPARATOR = new EncodedKeyComparator()
+	{
+		@Override
+		int compare(byte[] buffer, int offset, int width, DataField key)
+		{
+			double val = Double.longBitsToDouble(getLongFromBinary(buffer, offset));
+			double other = ((DoubleField) key).getValue();
+			if (Double.isNaN(val)) {
+				return Double.isNaN(other) ? 0 : -1;
+			}
+			else if (Double.isNaN(other)) {
+				return 1;
+			}
+			else {
+				return val < other ? -1 : (val == other ? 0 : 1);
+			}
+		}
+	};
+
+	/**
+	 * The comparator for DATE keys. NULL is encoded as all bits set and sorts before all other values.
+	 */
+	private static final EncodedKeyComparator DATE_COMPARATOR = new EncodedKeyComparator()
+	{
+		@Override
+		int compare(byte[] buffer, int offset, int width, DataField key)
+		{
+			int val = IntField.getIntFromBinary(buffer, offset);
+			DateField date = (DateField) key;
+			if (val == DATE_NULL) {
+				return date.isNULL() ? 0 : -1;
+			}
+			else if (date.isNULL()) {
+				return 1;
+			}
+			else {
+				int other = (date.getYear() << 16) | (date.getMonth() << 8) | date.getDay();
+				return val < other ? -1 : (val == other ? 0 : 1);
+			}
+		}
+	};
+
+	/**
+	 * The comparator for CHAR keys. The characters are compared one by one, as in
+	 * {@link String#compareTo(String)}. NULL is encoded by two leading zero bytes and
+	 * sorts before all other values.
+	 */
+	private static final EncodedKeyComparator CHAR_COMPARATOR = new EncodedKeyComparator()
+	{
+		@Override
+		int compare(byte[] buffer, int offset, int width, DataField key)
+		{
+			String other = ((CharField) key).getValue();
+			if (buffer[offset] == 0 && buffer[offset + 1] == 0) {
+				return other == null ? 0 : -1;
+			}
+			else if (other == null) {
+				return 1;
+			}
+
+			int len = width >> 1;
+			int num = Math.min(len, other.length());
+			for (int i = 0; i < num; i++, offset += 2) {
+				char c = (char) ((buffer[offset] & 0x00ff) | ((buffer[offset + 1] << 8) & 0xff00));
+				char o = other.charAt(i);
+				if (c != o) {
+					return c - o;
+				}
+			}
+			return len - other.length();
+		}
+	};
+
+	/**
+	 * The comparator for all other types, which deserializes the encoded key.
+	 */
+	private static final class GenericComparator extends EncodedKeyComparator
+	{
+		private final DataType keyType;
+
+		GenericComparator(DataType keyType)
+		{
+			this.keyType = keyType;
+		}
+
+		@Override
+		int compare(byte[] buffer, int offset, int width, DataField key)
+		{
+			return this.keyType.getFromBinary(buffer, offset, width).compareTo(key);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The encoding of the NULL date.
+	 */
+	private static final int DATE_NULL = 0xffffffff;
+
+	/**
+	 * Extracts a long from the 8 bytes after the given offset, using little endian encoding.
+	 *
+	 * @param buffer The buffer to extract the number from.
+	 * @param offset The offset where the encoded number starts.
+	 * @return The extracted number.
+	 */
+	private static long getLongFromBinary(byte[] buffer, int offset)
+	{
+		return (IntField.getIntFromBinary(buffer, offset) & 0xffffffffL) |
+		       (((long) IntField.getIntFromBinary(buffer, offset + 4)) << 32);
+	}
+}
@@ -0,0 +1,87 @@
+package de.tuberlin.dima.minidb.io.index;
+
+
+import java.io.IOException;
+
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DuplicateException;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+
+
+/**
+ * Interface defining the logic to search and insert data in a hash index.
+ * <p>
+ * The pages of the index are {@link HashIndexPage}s, which are organized in buckets as described
+ * in {@link HashIndexResourceManager}. The index is constructed with the resource manager of the
+ * index (which tracks the buckets) and an instance of BufferPoolManager that is used to request
+ * the pages of the buckets.
+ * <p>
+ * Unlike a B-Tree, a hash index answers only equality lookups, but a lookup reads only the pages
+ * of one bucket, which is usually a single page, no matter how many entries the index holds. The
+ * keys are not ordered, neither within a bucket nor across buckets.
+ */
+public interface HashIndex
+{
+	/**
+	 * Gets the schema of the index represented by this instance.
+	 * 
+	 * @return The schema of the index.
+	 */
+	public IndexSchema getIndexSchema();
+	
+	
+	/**
+	 * Gets all RIDs for the given key. If the key is not found, then the returned iterator will
+	 * not return any element (the first call to hasNext() is false).
+	 * <p>
+	 * The RIDs are collected from the pages of the key's bucket when this method is called, so that
+	 * no page stays pinned while the iterator is consumed.
+	 * 
+	 * @param key The key to get the RIDs for.
+	 * @return An Iterator over of all RIDs for key.
+	 * @throws PageFormatException Thrown if during processing a page's layout was found to be
+	 *                             found to be corrupted.
+	 * @throws IndexFormatCorruptException Throws, if the evaluation failed because the chain of
+	 *                                     a bucket was found to be invalid.
+	 * @throws IOException Thrown, if a page could not be loaded.
+	 */
+	public IndexResultIterator<RID> lookupRids(DataField key)
+	throws PageFormatException, IndexFormatCorruptException, IOException;
+	
+	
+	/**
+	 * Inserts a pair of (key, RID) into the index. If the load of the index grows beyond
+	 * {@link de.tuberlin.dima.minidb.Constants#HASH_INDEX_MAX_LOAD_FACTOR}, the next bucket
+	 * is split.
+	 * 
+	 * @param key The key that is inserted.
+	 * @param rid The RID that is inserted.
+	 * @throws PageFormatException Thrown if during processing a page's layout was found to be
+	 *                             found to be corrupted.
+	 * @throws IndexFormatCorruptException Throws, if the evaluation failed because the chain of
+	 *                                     a bucket was found to be invalid.
+	 * @throws DuplicateException Thrown, if the key is already contained and the index is defined to be unique.
+	 * @throws IOException Thrown, if a page could not be read or written.
+	 */
+	public void insertEntry(DataField key, RID rid)
+	throws PageFormatException, IndexFormatCorruptException, DuplicateException, IOException;
+	
+	
+	/**
+	 * Removes the pair of (key, RID) from the index. Overflow pages that become empty are
+	 * released for reuse. Buckets are never merged.
+	 * 
+	 * @param key The key of the entry to remove.
+	 * @param rid The RID of the entry to remove.
+	 * @return True, if the entry was found and removed, false otherwise.
+	 * @throws PageFormatException Thrown if during processing a page's layout was found to be
+	 *                             found to be corrupted.
+	 * @throws IndexFormatCorruptException Throws, if the evaluation failed because the chain of
+	 *                                     a bucket was found to be invalid.
+	 * @throws IOException Thrown, if a page could not be read or written.
+	 */
+	public boolean deleteEntry(DataField key, RID rid)
+	throws PageFormatException, IndexFormatCorruptException, IOException;
+}
@@ -0,0 +1,429 @@
+package de.tuberlin.dima.minidb.io.index;
+
+
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageExpiredException;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+
+
+/**
+ * A page of a hash index. Each bucket of the index has a primary page, which may be followed
+ * by a chain of overflow pages. Both kinds of pages have the same layout:
+ * <ul>
+ *   <li>Bytes 0 - 3 are an INT (little endian) holding the magic number for hash index pages.</li>
+ *   <li>Bytes 4 - 7 are an INT (little endian) holding the page number.</li>
+ *   <li>Bytes 8 - 11 are an INT (little endian) holding the number of entries on the page.</li>
+ *   <li>Bytes 12 - 15 are an INT (little endian) holding the page number of the next overflow
+ *       page of the bucket. If no page follows, this field holds -1.</li>
+ * </ul>
+ * The header is followed by the entries, each consisting of the key, padded with zeros to the
+ * width of the key type, and the RID. The entries are not sorted.
+ * <p>
+ * Keys are handled in their padded binary encoding, see {@link #encodeKey(DataField, IndexSchema)}.
+ * Two keys are equal if their encodings are equal, and the hash of a key is computed over its
+ * encoding, so that stored entries are neither decoded for comparisons nor for rehashing.
+ */
+public class HashIndexPage implements CacheableData
+{
+	/**
+	 * The magic number identifying hash index pages.
+	 */
+	public static final int HASH_PAGE_MAGIC_NUMBER = 0x4A5B1DE7;
+
+	/**
+	 * Size of the page header.
+	 */
+	private static final int HEADER_SIZE = 16;
+
+	/**
+	 * The offset of the field holding the page number.
+	 */
+	private static final int HEADER_PAGE_NUMBER_OFFSET = 4;
+
+	/**
+	 * The offset of the field holding the entries counter.
+	 */
+	private static final int HEADER_NUM_ENTRIES_OFFSET = 8;
+
+	/**
+	 * The offset of the field holding the page number of the next overflow page.
+	 */
+	private static final int HEADER_NEXT_PAGE_OFFSET = 12;
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The buffer containing the binary page data.
+	 */
+	private final byte[] buffer;
+
+	/**
+	 * The width of a key in bytes.
+	 */
+	private final int keyWidth;
+
+	/**
+	 * The width of an entry in bytes.
+	 */
+	private final int entryWidth;
+
+	/**
+	 * The maximal number of entries on the page.
+	 */
+	private final int maxEntries;
+
+	/**
+	 * The current number of entries.
+	 */
+	private int numEntries;
+
+	/**
+	 * A flag describing if the contents of the page has been modified since its creation.
+	 */
+	private boolean modified;
+
+	/**
+	 * Flag marking this cacheable data object as expired.
+	 */
+	private boolean expired;
+
+
+	/**
+	 * Creates a new hash index page wrapping the binary data in the given buffer.
+	 *
+	 * @param schema The schema of the index that the page belongs to.
+	 * @param buffer The buffer with the binary page data.
+	 * @throws PageFormatException Thrown, if the buffer does not contain a hash index page.
+	 */
+	public HashIndexPage(IndexSchema schema, byte[] buffer) throws PageFormatException
+	{
+		if (buffer.length != schema.getPageSize().getNumberOfBytes()) {
+			throw new PageFormatException("The buffer size does not match the page size of the index.");
+		}
+		if (IntField.getIntFromBinary(buffer, 0) != HASH_PAGE_MAGIC_NUMBER) {
+			throw new PageFormatException("The page is no hash index page.");
+		}
+
+		this.buffer = buffer;
+		this.keyWidth = getKeyWidth(schema);
+		this.entryWidth = this.keyWidth + RID.getRIDSize();
+		this.maxEntries = getMaximalEntries(schema);
+		this.numEntries = IntField.getIntFromBinary(buffer, HEADER_NUM_ENTRIES_OFFSET);
+		this.modified = false;
+		this.expired = false;
+	}
+
+	/**
+	 * Initializes an empty hash index page in the given buffer.
+	 *
+	 * @param schema The schema of the index that the page belongs to.
+	 * @param buffer The buffer to initialize the page in.
+	 * @param pageNumber The number of the page.
+	 * @return The new page.
+	 * @throws PageFormatException Thrown, if the buffer does not match the page size.
+	 */
+	public static HashIndexPage initHashIndexPage(IndexSchema schema, byte[] buffer, int pageNumber)
+	throws PageFormatException
+	{
+		IntField.encodeIntAsBinary(HASH_PAGE_MAGIC_NUMBER, buffer, 0);
+		IntField.encodeIntAsBinary(pageNumber, buffer, HEADER_PAGE_NUMBER_OFFSET);
+		IntField.encodeIntAsBinary(0, buffer, HEADER_NUM_ENTRIES_OFFSET);
+		IntField.encodeIntAsBinary(-1, buffer, HEADER_NEXT_PAGE_OFFSET);
+		return new HashIndexPage(schema, buffer);
+	}
+
+	/**
+	 * Gets the width of a stored key for the given index.
+	 *
+	 * @param schema The schema of the index.
+	 * @return The width of a key in bytes.
+	 */
+	public static int getKeyWidth(IndexSchema schema)
+	{
+		return schema.getIndexedColumnSchema().getDataType().getNumberOfBytes();
+	}
+
+	/**
+	 * Gets the number of entries that fit on a page of the given index.
+	 *
+	 * @param schema The schema of the index.
+	 * @return The maximal number of entries on a page.
+	 */
+	public static int getMaximalEntries(IndexSchema schema)
+	{
+		return (schema.getPageSize().getNumberOfBytes() - HEADER_SIZE) / (getKeyWidth(schema) + RID.getRIDSize());
+	}
+
+	// ------------------------------------------------------------------------
+	//                       generic cacheable data behavior
+	// ------------------------------------------------------------------------
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.cache.CacheableData#getPageNumber()
+	 */
+	@Override
+	public int getPageNumber() throws PageExpiredException
+	{
+		if (this.expired) {
+			throw new PageExpiredException();
+		}
+
+		return IntField.getIntFromBinary(this.buffer, HEADER_PAGE_NUMBER_OFFSET);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.cache.CacheableData#getBuffer()
+	 */
+	@Override
+	public byte[] getBuffer()
+	{
+		return this.buffer;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.cache.CacheableData#hasBeenModified()
+	 */
+	@Override
+	public boolean hasBeenModified()
+	{
+		return this.modified;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.cache.CacheableData#isExpired()
+	 */
+	@Override
+	public boolean isExpired()
+	{
+		return this.expired;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.cache.CacheableData#markExpired()
+	 */
+	@Override
+	public void markExpired()
+	{
+		this.expired = true;
+	}
+
+	// ------------------------------------------------------------------------
+	//                              entries
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the number of entries on this page.
+	 *
+	 * @return The number of entries.
+	 */
+	public int getNumberOfEntries()
+	{
+		return this.numEntries;
+	}
+
+	/**
+	 * Checks whether the page has no space for another entry.
+	 *
+	 * @return True, if the page is full.
+	 */
+	public boolean isFull()
+	{
+		return this.numEntries >= this.maxEntries;
+	}
+
+	/**
+	 * Gets the number of the next overflow page of the bucket.
+	 *
+	 * @return The number of the next page, or -1, if this is the last page of the bucket.
+	 */
+	public int getNextPageNumber()
+	{
+		return IntField.getIntFromBinary(this.buffer, HEADER_NEXT_PAGE_OFFSET);
+	}
+
+	/**
+	 * Sets the number of the next overflow page of the bucket.
+	 *
+	 * @param pageNumber The number of the next page, or -1, if this is the last page.
+	 */
+	public void setNextPageNumber(int pageNumber)
+	{
+		IntField.encodeIntAsBinary(pageNumber, this.buffer, HEADER_NEXT_PAGE_OFFSET);
+		this.modified = true;
+	}
+
+	/**
+	 * Checks whether the entry at the given position has the given key.
+	 *
+	 * @param position The position of the entry.
+	 * @param encodedKey The encoded key.
+	 * @return True, if the entry's key equals the given key.
+	 */
+	public boolean hasKey(int position, byte[] encodedKey)
+	{
+		int offset = entryOffset(position);
+		for (int i = 0; i < this.keyWidth; i++) {
+			if (this.buffer[offset + i] != encodedKey[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the RID of the entry at the given position.
+	 *
+	 * @param position The position of the entry.
+	 * @return The RID of the entry.
+	 */
+	public RID getRID(int position)
+	{
+		return RID.getRidFromBinary(this.buffer, entryOffset(position) + this.keyWidth);
+	}
+
+	/**
+	 * Gets the hash of the key of the entry at the given position.
+	 *
+	 * @param position The position of the entry.
+	 * @return The hash of the entry's key.
+	 */
+	public int getHash(int position)
+	{
+		return hash(this.buffer, entryOffset(position), this.keyWidth);
+	}
+
+	/**
+	 * Adds an entry to the page.
+	 *
+	 * @param encodedKey The encoded key of the entry.
+	 * @param rid The RID of the entry.
+	 * @throws IllegalStateException Thrown, if the page is full.
+	 */
+	public void addEntry(byte[] encodedKey, RID rid)
+	{
+		checkSpace();
+		int offset = entryOffset(this.numEntries);
+		System.arraycopy(encodedKey, 0, this.buffer, offset, this.keyWidth);
+		rid.encodeBinary(this.buffer, offset + this.keyWidth);
+		setNumberOfEntries(this.numEntries + 1);
+	}
+
+	/**
+	 * Copies the entry at the given position of another page of the same index to this page.
+	 *
+	 * @param source The page holding the entry.
+	 * @param position The position of the entry on the source page.
+	 * @throws IllegalStateException Thrown, if this page is full.
+	 */
+	public void copyEntry(HashIndexPage source, int position)
+	{
+		checkSpace();
+		System.arraycopy(source.buffer, source.entryOffset(position), this.buffer,
+				entryOffset(this.numEntries), this.entryWidth);
+		setNumberOfEntries(this.numEntries + 1);
+	}
+
+	/**
+	 * Removes the entry at the given position. The last entry takes its place.
+	 *
+	 * @param position The position of the entry.
+	 */
+	public void removeEntry(int position)
+	{
+		if (position < 0 || position >= this.numEntries) {
+			throw new IndexOutOfBoundsException("Position " + position + " is out of range [0, " + this.numEntries + ").");
+		}
+		int last = this.numEntries - 1;
+		if (position != last) {
+			System.arraycopy(this.buffer, entryOffset(last), this.buffer, entryOffset(position), this.entryWidth);
+		}
+		setNumberOfEntries(last);
+	}
+
+	/**
+	 * Removes all entries from the page and unlinks it from the following overflow pages.
+	 */
+	public void clear()
+	{
+		setNumberOfEntries(0);
+		setNextPageNumber(-1);
+	}
+
+	// ------------------------------------------------------------------------
+	//                              hashing
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Encodes a key the way it is stored in the entries of the given index: the binary
+	 * encoding of the key, padded with zeros to the width of the key type.
+	 *
+	 * @param key The key.
+	 * @param schema The schema of the index.
+	 * @return The encoded key.
+	 */
+	public static byte[] encodeKey(DataField key, IndexSchema schema)
+	{
+		byte[] encoded = new byte[getKeyWidth(schema)];
+		key.encodeBinary(encoded, 0);
+		return encoded;
+	}
+
+	/**
+	 * Computes the hash of an encoded key, consistent with the hashes of the stored entries.
+	 *
+	 * @param encodedKey The encoded key.
+	 * @return The hash of the key.
+	 */
+	public static int hash(byte[] encodedKey)
+	{
+		return hash(encodedKey, 0, encodedKey.length);
+	}
+
+	/**
+	 * Computes the hash over a sequence of bytes: FNV-1a, followed by a final mix, so that
+	 * the lower bits, which select the bucket, depend on all bytes of the key.
+	 *
+	 * @param buffer The buffer with the bytes.
+	 * @param offset The offset of the first byte.
+	 * @param len The number of bytes.
+	 * @return The hash.
+	 */
+	private static int hash(byte[] buffer, int offset, int len)
+	{
+		int h = 0x811C9DC5;
+		for (int i = offset; i < offset + len; i++) {
+			h = (h ^ (buffer[i] & 0xff)) * 0x01000193;
+		}
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	// ------------------------------------------------------------------------
+
+	private int entryOffset(int position)
+	{
+		return HEADER_SIZE + position * this.entryWidth;
+	}
+
+	private void checkSpace()
+	{
+		if (this.numEntries >= this.maxEntries) {
+			throw new IllegalStateException("The hash index page is full.");
+		}
+	}
+
+	private void setNumberOfEntries(int num)
+	{
+		this.numEntries = num;
+		IntField.encodeIntAsBinary(num, this.buffer, HEADER_NUM_ENTRIES_OFFSET);
+		this.modified = true;
+	}
+}
@@ -0,0 +1,908 @@
+package de.tuberlin.dima.minidb.io.index;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.InternalOperationFailure;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.cache.UnsupportedPageSizeException;
+import de.tuberlin.dima.minidb.io.manager.ResourceManager;
+
+/**
+ * This class implements the access to a file that contains a linear hash index on a single
+ * column. Like the {@link IndexResourceManager}, it exclusively locks the file and reads and
+ * writes the binary pages of the index, which are {@link HashIndexPage}s.
+ * <p>
+ * The index consists of buckets, each with a primary page and a chain of overflow pages. The
+ * number of buckets grows one at a time: splitting the next bucket in line redistributes its
+ * entries between itself and one new bucket. The primary pages are not found through a
+ * directory, but computed from the bucket number. Buckets are grouped into split points, where
+ * split point 0 holds bucket 0 and split point <i>s &gt; 0</i> holds the buckets
+ * <i>2^(s-1)</i> to <i>2^s - 1</i>. When the first bucket of a split point is created, the
+ * primary pages of all its buckets are reserved as one contiguous range at the end of the
+ * file. Overflow pages are appended behind the range of the current split point. Hence, the
+ * primary page of a bucket <i>b</i> is
+ * <pre>1 + b + spares[splitPoint(b)]</pre>
+ * where <i>spares[s]</i> is the number of overflow pages allocated before split point
+ * <i>s</i> was reserved. A lookup computes the page of its bucket and usually reads just
+ * that page, regardless of the size of the index.
+ * <p>
+ * The header on the first page holds the following information:
+ * <ul>
+ * <li>Bytes 0 - 3 = INT (little endian): Magic number</li>
+ * <li>Bytes 4 - 7 = INT (little endian): Version. Currently only version 0 is supported.</li>
+ * <li>Bytes 8 - 11 = INT (little endian): Page size in bytes.</li>
+ * <li>Bytes 12 - 15 = INT (little endian): Column number of the indexed column.</li>
+ * <li>Bytes 16 - 19 = INT (little endian): Attribute flags.</li>
+ * <li>Bytes 20 - 23 = INT (little endian): Number of the highest bucket.</li>
+ * <li>Bytes 24 - 27 = INT (little endian): Mask for the buckets before the current round of splits.</li>
+ * <li>Bytes 28 - 31 = INT (little endian): Mask for the buckets of the current round of splits.</li>
+ * <li>Bytes 32 - 35 = INT (little endian): Number of allocated overflow pages.</li>
+ * <li>Bytes 36 - 39 = INT (little endian): First page of the list of free overflow pages, or -1.</li>
+ * <li>Bytes 40 - 47 = BIG_INT (little endian): Number of entries.</li>
+ * <li>Bytes 48 - 179 = 33 INTs (little endian): The spares of the split points.</li>
+ * </ul>
+ * The number of entries only steers when buckets are split. It is written together with the
+ * structural information, not after every insert.
+ */
+public class HashIndexResourceManager extends ResourceManager {
+	/**
+	 * The page of the primary page of bucket 0.
+	 */
+	private static final int FIRST_DATA_PAGE = 1;
+
+	/**
+	 * The magic number that identifies a file as a hash index file.
+	 */
+	private static final int HASH_INDEX_HEADER_MAGIC_NUMBER = 0xBADCAFE5;
+
+	/**
+	 * The mask to access the 'unique' bit in the attributes.
+	 */
+	private static final int HASH_INDEX_HEADER_ATTRIBUTE_UNIQUE_MASK = 0x1;
+
+	/**
+	 * The number of split points, one more than the bits of a bucket number.
+	 */
+	private static final int NUM_SPLIT_POINTS = 33;
+
+	/**
+	 * The size of the header in bytes.
+	 */
+	private static final int HEADER_SIZE = 48 + NUM_SPLIT_POINTS * 4;
+
+	/**
+	 * The I/O channel through which the index file is accessed.
+	 */
+	private final FileChannel ioChannel;
+
+	/**
+	 * The lock we hold on the index file.
+	 */
+	private final FileLock theLock;
+
+	/**
+	 * The schema of the index in the file.
+	 */
+	private final IndexSchema schema;
+
+	/**
+	 * The size of a page in bytes.
+	 */
+	private final int pageSize;
+
+	/**
+	 * The lock that protects the structure of the index against concurrent modification.
+	 */
+	private final ReentrantReadWriteLock structureLock;
+
+	/**
+	 * The number of the last page in the index.
+	 */
+	private volatile int lastPageNumber;
+
+	/**
+	 * The number of the highest bucket.
+	 */
+	private int maxBucket;
+
+	/**
+	 * The mask for the buckets before the current round of splits.
+	 */
+	private int lowMask;
+
+	/**
+	 * The mask for the buckets of the current round of splits.
+	 */
+	private int highMask;
+
+	/**
+	 * The number of allocated overflow pages.
+	 */
+	private int overflowPages;
+
+	/**
+	 * The first page of the list of free overflow pages, or -1.
+	 */
+	private int freePageHead;
+
+	/**
+	 * The number of entries in the index.
+	 */
+	private long numEntries;
+
+	/**
+	 * The number of overflow pages allocated before each split point was reserved.
+	 */
+	private final int[] spares;
+
+	// ------------------------------------------------------------------------
+	//                        Constructor & Life-Cycle
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Creates a new hash index manager that works on an existing index, or newly creates
+	 * an index with the given schema.
+	 *
+	 * @param fileHandle
+	 *        The handle to the index's file.
+	 * @param indexedTable
+	 *        The schema of the table that is indexed, if an existing index is opened.
+	 * @param schema
+	 *        The schema of the new index, if an index is created.
+	 * @throws IOException
+	 *         If the index file could not be accessed due to an I/O error.
+	 * @throws PageFormatException
+	 *         If the index file did not contain a valid header.
+	 */
+	private HashIndexResourceManager(RandomAccessFile fileHandle, TableSchema indexedTable, IndexSchema schema)
+	throws IOException, PageFormatException {
+		// Open the channel. If anything fails, make sure we close it again
+		try {
+			this.ioChannel = fileHandle.getChannel();
+			try {
+				this.theLock = this.ioChannel.tryLock();
+			} catch (OverlappingFileLockException oflex) {
+				throw new IOException("Index file locked by other consumer.");
+			}
+
+			if (this.theLock == null) {
+				throw new IOException("Could acquire index file handle for exclusive usage. File locked otherwise.");
+			}
+		} catch (Throwable t) {
+			// something failed.
+			makeBestEffortToClose();
+
+			// propagate the exception
+			if (t instanceof IOException) {
+				throw (IOException) t;
+			} else {
+				throw new IOException("An error occured while opening the index: " + t.getMessage());
+			}
+		}
+
+		this.structureLock = new ReentrantReadWriteLock();
+		this.spares = new int[NUM_SPLIT_POINTS];
+
+		try {
+			if (schema == null) {
+				this.schema = readIndexHeader(indexedTable);
+				this.pageSize = this.schema.getPageSize().getNumberOfBytes();
+				this.lastPageNumber = (int) (this.ioChannel.size() / this.pageSize) - 1;
+			}
+			else {
+				this.schema = schema;
+				this.pageSize = schema.getPageSize().getNumberOfBytes();
+				truncate();
+			}
+		} catch (IOException ioex) {
+			makeBestEffortToClose();
+			throw ioex;
+		} catch (PageFormatException pfex) {
+			makeBestEffortToClose();
+			throw pfex;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.ResourceManager#closeResource()
+	 */
+	@Override
+	public synchronized void closeResource() throws IOException {
+		try {
+			// the entry count is not written with every insert
+			writeIndexHeader();
+			this.theLock.release();
+			this.ioChannel.close();
+		} catch (Throwable t) {
+			// something failed.
+			makeBestEffortToClose();
+
+			// propagate the exception
+			if (t instanceof IOException) {
+				throw (IOException) t;
+			} else {
+				throw new IOException("An error occured while closing the index: " + t.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Tries to release all resources from this index, but does not
+	 * complain if anything fails.
+	 */
+	private void makeBestEffortToClose() {
+		// close the channel
+		if (this.ioChannel != null) {
+			try {
+				this.ioChannel.close();
+			} catch (Throwable ignored) {
+				// ignore everything, just try to close
+			}
+		}
+
+		// try to release the lock
+		if (this.theLock != null) {
+			try {
+				this.theLock.release();
+			} catch (Throwable ignored) {
+				// ignore everything, just try to close
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                                Accessors
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the schema of the index represented by this index manager.
+	 *
+	 * @return The index schema.
+	 */
+	public IndexSchema getSchema() {
+		return this.schema;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.ResourceManager#getPageSize()
+	 */
+	@Override
+	public PageSize getPageSize() {
+		return this.schema.getPageSize();
+	}
+
+	/**
+	 * Gets the lock that protects the structure of the index. Lookups hold the read lock
+	 * while they read a bucket, modifications hold the write lock. All index instances
+	 * working on this resource share the lock.
+	 *
+	 * @return The lock of the index structure.
+	 */
+	public ReentrantReadWriteLock getStructureLock() {
+		return this.structureLock;
+	}
+
+	/**
+	 * Gets the number of buckets of the index.
+	 *
+	 * @return The number of buckets.
+	 */
+	public synchronized int getNumberOfBuckets() {
+		return this.maxBucket + 1;
+	}
+
+	/**
+	 * Gets the number of entries in the index.
+	 *
+	 * @return The number of entries.
+	 */
+	public synchronized long getNumberOfEntries() {
+		return this.numEntries;
+	}
+
+	/**
+	 * Adjusts the number of entries in the index. The number is persisted with the next
+	 * structural change or when the resource is closed.
+	 *
+	 * @param delta
+	 *        The number of added entries, negative for removed entries.
+	 */
+	public synchronized void addToNumberOfEntries(long delta) {
+		this.numEntries += delta;
+	}
+
+	/**
+	 * Gets the number of the primary page of the bucket for the given hash.
+	 *
+	 * @param hash
+	 *        The hash of the key.
+	 * @return The number of the primary page of the key's bucket.
+	 */
+	public synchronized int getBucketPageNumber(int hash) {
+		return getPageOfBucket(getBucket(hash));
+	}
+
+	/**
+	 * Checks whether the given hash belongs to the bucket that was created by the latest split.
+	 *
+	 * @param hash
+	 *        The hash of a key.
+	 * @return True, if the key belongs to the highest bucket.
+	 */
+	public synchronized boolean isInHighestBucket(int hash) {
+		return getBucket(hash) == this.maxBucket;
+	}
+
+	/**
+	 * Gets the first page of the list of free overflow pages. Each free page links to the next
+	 * free page through its next page number.
+	 *
+	 * @return The first free page, or -1, if there is no free page.
+	 */
+	public synchronized int getFreePageHead() {
+		return this.freePageHead;
+	}
+
+	/**
+	 * Sets the first page of the list of free overflow pages. The header is updated directly.
+	 *
+	 * @param pageNumber
+	 *        The first free page, or -1, if there is no free page.
+	 * @throws IOException
+	 *         Thrown, if the header could not be written.
+	 */
+	public synchronized void updateFreePageHead(int pageNumber) throws IOException {
+		this.freePageHead = pageNumber;
+		writeIndexHeader();
+	}
+
+	/**
+	 * Adds a bucket to the index. The next bucket in line is split: the new bucket takes those
+	 * of its entries whose hash maps to the new bucket now. If the new bucket is the first of a
+	 * split point, the primary pages of all buckets of the split point are reserved. The header
+	 * is updated directly.
+	 * <p>
+	 * The caller has to move the entries, holding the write lock of the structure.
+	 *
+	 * @return The numbers of the primary pages of the split bucket and of the new bucket.
+	 * @throws IOException
+	 *         Thrown, if the pages could not be reserved or the header could not be written.
+	 */
+	public synchronized int[] addBucket() throws IOException {
+		int newBucket = this.maxBucket + 1;
+		if (newBucket < 0) {
+			throw new IOException("The hash index cannot hold more buckets.");
+		}
+		if (newBucket > this.highMask) {
+			// a new round of splits begins
+			this.lowMask = this.highMask;
+			this.highMask = newBucket | this.lowMask;
+		}
+		int oldBucket = newBucket & this.lowMask;
+
+		int splitPoint = getSplitPoint(newBucket);
+		if (newBucket == getFirstBucket(splitPoint)) {
+			// reserve the primary pages of the split point behind all pages so far. Those pages
+			// are initialized when they are read for the first time
+			this.spares[splitPoint] = this.overflowPages;
+			this.lastPageNumber += getNumberOfBuckets(splitPoint);
+			ByteBuffer end = ByteBuffer.allocate(1);
+			writeBuffer(this.ioChannel, end, ((long) this.lastPageNumber + 1) * this.pageSize - 1);
+		}
+
+		this.maxBucket = newBucket;
+		writeIndexHeader();
+		return new int[] { getPageOfBucket(oldBucket), getPageOfBucket(newBucket) };
+	}
+
+	// ------------------------------------------------------------------------
+	//                          I/O Methods
+	// ------------------------------------------------------------------------
+
+	/*
+	 * (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.ResourceManager#truncate()
+	 */
+	@Override
+	public synchronized void truncate() throws IOException {
+		// write a new empty page for bucket 0
+		try {
+			byte[] temporaryBuffer = new byte[this.pageSize];
+			HashIndexPage.initHashIndexPage(this.schema, temporaryBuffer, FIRST_DATA_PAGE);
+			writeBuffer(this.ioChannel, ByteBuffer.wrap(temporaryBuffer), ((long) this.pageSize) * FIRST_DATA_PAGE);
+		} catch (PageFormatException e) {
+			throw new InternalOperationFailure("Reset/initialization of index: Mismatch in  between page and buffer size.", true, e);
+		}
+
+		// set the I/O channel to the right size.
+		this.lastPageNumber = FIRST_DATA_PAGE;
+		this.ioChannel.truncate((this.lastPageNumber + 1) * this.pageSize);
+
+		// one bucket that takes all hashes
+		this.maxBucket = 0;
+		this.lowMask = 0;
+		this.highMask = 1;
+		this.overflowPages = 0;
+		this.freePageHead = -1;
+		this.numEntries = 0;
+		for (int i = 0; i < NUM_SPLIT_POINTS; i++) {
+			this.spares[i] = 0;
+		}
+		writeIndexHeader();
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Initializes a new overflow page in the given buffer. The page is appended to the file.
+	 *
+	 * @see de.tuberlin.dima.minidb.io.ResourceManager#reserveNewPage(byte[])
+	 */
+	@Override
+	public synchronized CacheableData reserveNewPage(byte[] buffer) throws IOException, PageFormatException {
+		if (buffer.length != this.pageSize) {
+			throw new IllegalArgumentException("The buffer to initialize the page to is too small.");
+		}
+
+		HashIndexPage page = HashIndexPage.initHashIndexPage(this.schema, buffer, this.lastPageNumber + 1);
+		this.lastPageNumber++;
+		this.overflowPages++;
+		writeIndexHeader();
+		return page;
+	}
+
+	/**
+	 * Initializes a new overflow page in the given buffer. All pages of a hash index are of
+	 * the same type, so the type is ignored.
+	 *
+	 * @see de.tuberlin.dima.minidb.io.ResourceManager#reserveNewPage(byte[], java.lang.Enum)
+	 */
+	@Override
+	public CacheableData reserveNewPage(byte[] buffer, Enum<?> type) throws IOException, PageFormatException {
+		return reserveNewPage(buffer);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.ResourceManager#readPageFromResource(byte[], int)
+	 */
+	@Override
+	public HashIndexPage readPageFromResource(byte[] buffer, int pageNumber) throws IOException {
+		// check that the page number is within range
+		if (pageNumber < FIRST_DATA_PAGE || pageNumber > this.lastPageNumber) {
+			throw new IOException("Page number " + pageNumber + " is not in valid range: [" + FIRST_DATA_PAGE + "," + this.lastPageNumber + "].");
+		}
+
+		// check that we have enough space
+		if (buffer.length != this.pageSize) {
+			throw new IOException("Buffer is not big enough to hold a page.");
+		}
+
+		// seek and read the buffer
+		ByteBuffer b = ByteBuffer.wrap(buffer, 0, this.pageSize);
+		long position = ((long) this.pageSize) * ((long) pageNumber);
+		try {
+			readIntoBuffer(this.ioChannel, b, position, this.pageSize);
+		} catch (IOException ioex) {
+			throw new IOException("Page " + pageNumber + " could not be read from index file.", ioex);
+		}
+
+		return createPage(buffer, pageNumber);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.ResourceManager#readPagesFromResource(byte[][], int)
+	 */
+	@Override
+	public HashIndexPage[] readPagesFromResource(byte[][] buffers, int firstPageNumber) throws IOException {
+		if (Constants.DEBUG_CHECK) {
+			// check that at least one buffer is provided
+			if (buffers.length <= 0) {
+				throw new IllegalArgumentException("At least one buffer should be provided.");
+			}
+			// check that the page number is within range
+			if (firstPageNumber < FIRST_DATA_PAGE || firstPageNumber + buffers.length - 1 > this.lastPageNumber) {
+				throw new IOException("Page number " + firstPageNumber + " is not in valid range: [" + FIRST_DATA_PAGE + "," + this.lastPageNumber + "].");
+			}
+		}
+
+		HashIndexPage[] pages = new HashIndexPage[buffers.length];
+		for (int i = 0; i < buffers.length; i++) {
+			pages[i] = readPageFromResource(buffers[i], firstPageNumber + i);
+		}
+		return pages;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.ResourceManager#writePageToResource(byte[], de.tuberlin.dima.minidb.io.cache.CacheableData)
+	 */
+	@Override
+	public void writePageToResource(byte[] buffer, CacheableData wrapper) throws IOException {
+		int pageNumber = wrapper.getPageNumber();
+
+		// check that the page number is within range
+		if (pageNumber < FIRST_DATA_PAGE) {
+			throw new IOException("Page number " + pageNumber + " is not valid. First data page is " + FIRST_DATA_PAGE + ".");
+		}
+
+		// check that we have enough space
+		if (buffer.length != this.pageSize) {
+			throw new IOException("Buffer does not hold a full page (" + this.pageSize + " bytes).");
+		}
+
+		// now write the page. If the position is beyond the file size,
+		// the channel will automatically increase the file length
+		try {
+			writeBuffer(this.ioChannel, ByteBuffer.wrap(buffer, 0, this.pageSize), ((long) this.pageSize) * pageNumber);
+		} catch (IOException ioex) {
+			throw new IOException("Page (" + pageNumber + ") could not be written to the index file.", ioex);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.ResourceManager#writePagesToResource(byte[][], de.tuberlin.dima.minidb.io.cache.CacheableData[])
+	 */
+	@Override
+	public void writePagesToResource(byte[][] buffers, CacheableData[] wrappers) throws IOException {
+		if (Constants.DEBUG_CHECK) {
+			// check that buffers and wrappers array lengths match
+			if (buffers.length != wrappers.length) {
+				throw new IllegalArgumentException("Unequal number of buffers and wrappers provided.");
+			}
+		}
+
+		for (int i = 0; i < buffers.length; i++) {
+			writePageToResource(buffers[i], wrappers[i]);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                         Factory Methods
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Opens the hash index contained in the given file.
+	 *
+	 * @param indexFile
+	 *        The file containing the index to be opened.
+	 * @param indexedTable
+	 *        The schema of the table that is indexed by this index.
+	 * @return The HashIndexResourceManager to operate on the index file.
+	 * @throws IOException
+	 *         Thrown, if an I/O error occurred.
+	 * @throws PageFormatException
+	 *         Thrown, if the header of the index contained invalid data.
+	 */
+	public static HashIndexResourceManager openIndex(File indexFile, TableSchema indexedTable) throws IOException, PageFormatException {
+		if (indexFile == null) {
+			throw new NullPointerException("Index file must not be null.");
+		}
+		if (indexedTable == null) {
+			throw new NullPointerException("Indexed table schema must not be null.");
+		}
+
+		try {
+			// check if the file exists
+			if (!indexFile.exists()) {
+				throw new IOException("Index file '" + indexFile.getCanonicalPath() + "' does not exist.");
+			}
+
+			RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+			return new HashIndexResourceManager(raf, indexedTable, null);
+		} catch (SecurityException sex) {
+			throw new IOException("The user running the system has insufficient privileges for file manipulation.");
+		}
+	}
+
+	/**
+	 * Creates a new, empty hash index with the given schema in the given file. Hash indexes
+	 * support neither composite keys nor included columns.
+	 *
+	 * @param indexFile
+	 *        The file to store the new index in.
+	 * @param schema
+	 *        The schema of the index to create.
+	 * @return The HashIndexResourceManager to operate on the index file.
+	 * @throws IOException
+	 *         If an I/O problem occurred.
+	 * @throws IllegalArgumentException
+	 *         If the schema describes a composite index or one with included columns.
+	 */
+	public static HashIndexResourceManager createIndex(File indexFile, IndexSchema schema) throws IOException {
+		if (indexFile == null) {
+			throw new NullPointerException("Index file must not be null.");
+		}
+		if (schema == null) {
+			throw new NullPointerException("Index schema must not be null.");
+		}
+		if (schema.isComposite() || schema.hasIncludedColumns()) {
+			throw new IllegalArgumentException("Hash indexes support only a single column and no included columns.");
+		}
+
+		try {
+			// check if the file exists
+			if (!indexFile.exists()) {
+				// create the file to represent the index
+				indexFile.createNewFile();
+			}
+
+			RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+			return new HashIndexResourceManager(raf, null, schema);
+		} catch (PageFormatException pfex) {
+			throw new InternalOperationFailure("Initialization of hash index failed.", true, pfex);
+		} catch (SecurityException sex) {
+			throw new IOException("The user running the system has insufficient privileges for file manipulation.");
+		}
+	}
+
+	/**
+	 * Deletes the hash index represented by the given file. The index is deleted
+	 * by deleting the file physically.
+	 *
+	 * @param indexFile
+	 *        The file for the index to be deleted.
+	 * @throws IOException
+	 *         If an I/O problem occurred.
+	 */
+	public static void deleteIndex(File indexFile) throws IOException {
+		IndexResourceManager.deleteIndex(indexFile);
+	}
+
+	/**
+	 * Checks whether the given file contains a hash index, rather than a B-Tree index.
+	 *
+	 * @param indexFile
+	 *        The index file.
+	 * @return True, if the file starts with the header of a hash index.
+	 * @throws IOException
+	 *         If the file could not be read.
+	 */
+	public static boolean isHashIndex(File indexFile) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+		try {
+			return raf.length() >= 4 && Integer.reverseBytes(raf.readInt()) == HASH_INDEX_HEADER_MAGIC_NUMBER;
+		} finally {
+			raf.close();
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                        Miscellaneous
+	// ------------------------------------------------------------------------
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object o) {
+		// there never is another instance that is equal but not identical,
+		// because we exclusively lock the files.
+		return this == o;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(this);
+	}
+
+	// ------------------------------------------------------------------------
+	//                         Utility Functions
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the bucket for the given hash.
+	 */
+	private int getBucket(int hash) {
+		int bucket = hash & this.highMask;
+		return bucket > this.maxBucket ? bucket & this.lowMask : bucket;
+	}
+
+	/**
+	 * Gets the number of the primary page of the given bucket.
+	 */
+	private int getPageOfBucket(int bucket) {
+		return FIRST_DATA_PAGE + bucket + this.spares[getSplitPoint(bucket)];
+	}
+
+	/**
+	 * Gets the split point of the given bucket.
+	 */
+	private static int getSplitPoint(int bucket) {
+		return 32 - Integer.numberOfLeadingZeros(bucket);
+	}
+
+	/**
+	 * Gets the first bucket of the given split point.
+	 */
+	private static int getFirstBucket(int splitPoint) {
+		return splitPoint == 0 ? 0 : 1 << (splitPoint - 1);
+	}
+
+	/**
+	 * Gets the number of buckets of the given split point.
+	 */
+	private static int getNumberOfBuckets(int splitPoint) {
+		return splitPoint == 0 ? 1 : 1 << (splitPoint - 1);
+	}
+
+	/**
+	 * Wraps the data of a page that was read. Primary pages of buckets are reserved without
+	 * being written, so a page without any data is initialized as an empty bucket page.
+	 */
+	private HashIndexPage createPage(byte[] buffer, int pageNumber) throws IOException {
+		try {
+			if (IntField.getIntFromBinary(buffer, 0) == 0) {
+				return HashIndexPage.initHashIndexPage(this.schema, buffer, pageNumber);
+			}
+			return new HashIndexPage(this.schema, buffer);
+		} catch (PageFormatException pfex) {
+			throw new IOException("Page could not be fetched because it is corrupted.", pfex);
+		}
+	}
+
+	/**
+	 * Reads the schema and the state of the index from the header.
+	 *
+	 * @param tableSchema
+	 *        The schema of the table that is indexed.
+	 * @return The index schema read from the header.
+	 * @throws IOException
+	 *         Thrown if an error occurred during reading from the channel.
+	 * @throws PageFormatException
+	 *         Thrown if the header did not describe a valid hash index.
+	 */
+	private IndexSchema readIndexHeader(TableSchema tableSchema) throws IOException, PageFormatException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		readIntoBuffer(this.ioChannel, buffer, 0, HEADER_SIZE);
+		buffer.flip();
+
+		// check the magic number
+		if (buffer.getInt() != HASH_INDEX_HEADER_MAGIC_NUMBER) {
+			throw new PageFormatException("Hash index header invalid. Wrong magic number was found.");
+		}
+		// check the version number
+		if (buffer.getInt() != 0) {
+			throw new PageFormatException("Unknown hash index format version.");
+		}
+
+		int pageSize = buffer.getInt();
+		int columnNumber = buffer.getInt();
+		int flags = buffer.getInt();
+		this.maxBucket = buffer.getInt();
+		this.lowMask = buffer.getInt();
+		this.highMask = buffer.getInt();
+		this.overflowPages = buffer.getInt();
+		this.freePageHead = buffer.getInt();
+		this.numEntries = buffer.getLong();
+		for (int i = 0; i < NUM_SPLIT_POINTS; i++) {
+			this.spares[i] = buffer.getInt();
+		}
+
+		// sanity checks
+		if (columnNumber < 0 || columnNumber >= tableSchema.getNumberOfColumns()) {
+			throw new PageFormatException("Hash index header specified an invalid column to be indexed.");
+		}
+		if (this.maxBucket < 0 || this.highMask != (this.maxBucket | this.lowMask) && this.maxBucket != 0) {
+			throw new PageFormatException("Hash index header specified inconsistent buckets.");
+		}
+
+		try {
+			PageSize ps = PageSize.getPageSize(pageSize);
+			return new IndexSchema(tableSchema, columnNumber, ps,
+					(flags & HASH_INDEX_HEADER_ATTRIBUTE_UNIQUE_MASK) != 0, 1, 1);
+		} catch (UnsupportedPageSizeException uspsex) {
+			throw new PageFormatException("The hash index header stated an unsupported page size.");
+		}
+	}
+
+	/**
+	 * Writes the schema and the state of the index to the header.
+	 *
+	 * @throws IOException
+	 *         Thrown, if an error occurred during writing to the channel.
+	 */
+	private void writeIndexHeader() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		buffer.putInt(HASH_INDEX_HEADER_MAGIC_NUMBER);
+		buffer.putInt(0);
+		buffer.putInt(this.pageSize);
+		buffer.putInt(this.schema.getColumnNumber());
+		buffer.putInt(this.schema.isUnique() ? HASH_INDEX_HEADER_ATTRIBUTE_UNIQUE_MASK : 0);
+		buffer.putInt(this.maxBucket);
+		buffer.putInt(this.lowMask);
+		buffer.putInt(this.highMask);
+		buffer.putInt(this.overflowPages);
+		buffer.putInt(this.freePageHead);
+		buffer.putLong(this.numEntries);
+		for (int i = 0; i < NUM_SPLIT_POINTS; i++) {
+			buffer.putInt(this.spares[i]);
+		}
+
+		buffer.flip();
+		writeBuffer(this.ioChannel, buffer, 0);
+	}
+
+	/**
+	 * Reads the given number of bytes from the given position of the file channel into the
+	 * given buffer. This method blocks until all bytes are read.
+	 *
+	 * @param channel
+	 *        The file channel to read from.
+	 * @param buffer
+	 *        The buffer into which to read the bytes.
+	 * @param position
+	 *        The position in the file channel from where to read the data.
+	 * @param num
+	 *        The number of bytes to read.
+	 * @throws IOException
+	 *         Thrown, when any I/O error occurred during reading.
+	 */
+	private static final void readIntoBuffer(FileChannel channel, ByteBuffer buffer, long position, int num) throws IOException {
+		// make space first
+		buffer.clear();
+		buffer.limit(num);
+
+		int read = 0;
+
+		// read as long as we need to
+		while (read < num) {
+			int count = channel.read(buffer, position);
+			if (count == -1) {
+				throw new EOFException();
+			}
+			read += count;
+			position += count;
+		}
+	}
+
+	/**
+	 * Writes the remaining bytes of the given buffer to the given position of the file channel.
+	 * This method blocks until all bytes are written.
+	 *
+	 * @param channel
+	 *        The file channel to write to.
+	 * @param buffer
+	 *        The buffer containing the data to be written.
+	 * @param position
+	 *        The position in the file channel to write the data to.
+	 * @throws IOException
+	 *         Thrown, when any I/O error occurred during the writing.
+	 */
+	private static final void writeBuffer(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		// write as long as we need to
+		long bytes = buffer.remaining();
+		while (bytes > 0) {
+			int written = channel.write(buffer, position);
+			bytes -= written;
+			position += written;
+		}
+	}
+}
@@ -39,6 +39,10 @@ import de.tuberlin.dima.minidb.io.manager.ResourceManager;
  * <li>Bytes 20 - 23 = INT (little endian): Page number of the first leaf page.</li>
  * <li>Bytes 24 - 27 = INT (little endian): Attribute flags.</li>
  * </ul>
+ * For composite indexes, the column number is the first indexed column, and the header continues
+ * with the number of indexed columns as an INT, followed by the column numbers of all indexed
+ * columns in key order. For indexes with included columns, the header then continues with the
+ * number of included columns as an INT, followed by the column numbers of the included columns.
  * 
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
@@ -58,6 +62,21 @@ public class IndexResourceManager extends ResourceManager {
 	 */
 	private static final int INDEX_HEADER_ATTRIBUTE_UNIQUE_MASK = 0x1;
 
+	/**
+	 * The mask to access the 'compact keys' bit in the attributes.
+	 */
+	private static final int INDEX_HEADER_ATTRIBUTE_COMPACT_KEYS_MASK = 0x2;
+
+	/**
+	 * The mask to access the 'composite' bit in the attributes.
+	 */
+	private static final int INDEX_HEADER_ATTRIBUTE_COMPOSITE_MASK = 0x4;
+
+	/**
+	 * The mask to access the 'included columns' bit in the attributes.
+	 */
+	private static final int INDEX_HEADER_ATTRIBUTE_INCLUDED_MASK = 0x8;
+
 	/**
 	 * The I/O channel through which the index file is accessed.
 	 */
@@ -86,7 +105,7 @@ public class IndexResourceManager extends ResourceManager {
 	/**
 	 * The number of the last page in the index.
 	 */
-	private int lastPageNumber;
+	private volatile int lastPageNumber;
 
 	// ------------------------------------------------------------------------
 	//                        Constructor & Life-Cycle
@@ -361,7 +380,7 @@ public class IndexResourceManager extends ResourceManager {
 	 * @see de.tuberlin.dima.minidb.io.ResourceManager#reserveNewPage(byte[], java.lang.Enum)
 	 */
 	@Override
-	public CacheableData reserveNewPage(byte[] buffer, Enum<?> type) throws IOException, PageFormatException {
+	public synchronized CacheableData reserveNewPage(byte[] buffer, Enum<?> type) throws IOException, PageFormatException {
 		// sanity checks
 		if (buffer.length != this.pageSize) {
 			throw new IllegalArgumentException("The buffer to initialize the page to is too small.");
@@ -734,11 +753,56 @@ public class IndexResourceManager extends ResourceManager {
 		int firstLeafNode = buffer.getInt();
 		int flags = buffer.getInt();
 		boolean unique = (flags & INDEX_HEADER_ATTRIBUTE_UNIQUE_MASK) != 0;
+		boolean compactKeys = (flags & INDEX_HEADER_ATTRIBUTE_COMPACT_KEYS_MASK) != 0;
 		int highestPage = (int) (channel.size() / pageSize) - 1;
 
+		// composite indexes list all their columns behind the fixed part of the header
+		int[] columns = new int[] { columnNumber };
+		if ((flags & INDEX_HEADER_ATTRIBUTE_COMPOSITE_MASK) != 0) {
+			readIntoBuffer(channel, buffer, 4);
+			int numColumns = buffer.getInt();
+			if (numColumns < 2 || numColumns > tableSchema.getNumberOfColumns()) {
+				throw new PageFormatException("Index header specified an invalid number of indexed columns.");
+			}
+
+			ByteBuffer columnBuffer = ByteBuffer.allocate(numColumns * 4);
+			columnBuffer.order(ByteOrder.LITTLE_ENDIAN);
+			readIntoBuffer(channel, columnBuffer, numColumns * 4);
+			columns = new int[numColumns];
+			for (int i = 0; i < numColumns; i++) {
+				columns[i] = columnBuffer.getInt();
+			}
+		}
+
+		// the included columns follow the indexed columns
+		int[] included = new int[0];
+		if ((flags & INDEX_HEADER_ATTRIBUTE_INCLUDED_MASK) != 0) {
+			readIntoBuffer(channel, buffer, 4);
+			int numIncluded = buffer.getInt();
+			if (numIncluded < 1 || numIncluded > tableSchema.getNumberOfColumns()) {
+				throw new PageFormatException("Index header specified an invalid number of included columns.");
+			}
+
+			ByteBuffer columnBuffer = ByteBuffer.allocate(numIncluded * 4);
+			columnBuffer.order(ByteOrder.LITTLE_ENDIAN);
+			readIntoBuffer(channel, columnBuffer, numIncluded * 4);
+			included = new int[numIncluded];
+			for (int i = 0; i < numIncluded; i++) {
+				included[i] = columnBuffer.getInt();
+				if (included[i] < 0 || included[i] >= tableSchema.getNumberOfColumns()) {
+					throw new PageFormatException("Index header specified an invalid column to be included.");
+				}
+			}
+		}
+
 		// sanity checks
-		if (columnNumber < 0 || columnNumber >= tableSchema.getNumberOfColumns()) {
-			throw new PageFormatException("Index header specified an invalid column to be indexed.");
+		for (int column : columns) {
+			if (column < 0 || column >= tableSchema.getNumberOfColumns()) {
+				throw new PageFormatException("Index header specified an invalid column to be indexed.");
+			}
+		}
+		if (columns[0] != columnNumber) {
+			throw new PageFormatException("Index header specified inconsistent indexed columns.");
 		}
 		if (firstLeafNode < FIRST_DATA_PAGE || firstLeafNode > highestPage) {
 			throw new PageFormatException("Index header specified a first leaf page number that is out of range.");
@@ -750,9 +814,11 @@ public class IndexResourceManager extends ResourceManager {
 		try {
 			// instantiate
 			PageSize ps = PageSize.getPageSize(pageSize);
-			return new IndexSchema(tableSchema, columnNumber, ps, unique, rootNode, firstLeafNode);
+			return new IndexSchema(tableSchema, columns, included, ps, unique, compactKeys, rootNode, firstLeafNode);
 		} catch (UnsupportedPageSizeException uspsex) {
 			throw new PageFormatException("The index header stated an unsupported page size.");
+		} catch (IllegalArgumentException iaex) {
+			throw new PageFormatException("The index header described an invalid index: " + iaex.getMessage());
 		}
 	}
 
@@ -788,8 +854,29 @@ public class IndexResourceManager extends ResourceManager {
 		// write the attribute flags
 		int flags = 0;
 		flags |= schema.isUnique() ? INDEX_HEADER_ATTRIBUTE_UNIQUE_MASK : 0;
+		flags |= schema.hasCompactKeys() ? INDEX_HEADER_ATTRIBUTE_COMPACT_KEYS_MASK : 0;
+		flags |= schema.isComposite() ? INDEX_HEADER_ATTRIBUTE_COMPOSITE_MASK : 0;
+		flags |= schema.hasIncludedColumns() ? INDEX_HEADER_ATTRIBUTE_INCLUDED_MASK : 0;
 		buffer.putInt(flags);
 
+		// write the columns of a composite index
+		if (schema.isComposite()) {
+			int[] columns = schema.getColumnNumbers();
+			buffer.putInt(columns.length);
+			for (int column : columns) {
+				buffer.putInt(column);
+			}
+		}
+
+		// write the included columns
+		if (schema.hasIncludedColumns()) {
+			int[] included = schema.getIncludedColumnNumbers();
+			buffer.putInt(included.length);
+			for (int column : included) {
+				buffer.putInt(column);
+			}
+		}
+
 		// write the buffer
 		buffer.flip();
 		writeBuffer(channel, buffer);
@@ -0,0 +1,386 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
+
+
+/**
+ * A dictionary for a column with few distinct values. The dictionary assigns each distinct
+ * value a small integer code, starting at zero and growing densely. Table pages store the
+ * code (a SMALL_INT) instead of the full value, which for CHAR columns like status or
+ * country codes saves most of the space.
+ * <p>
+ * Because the codes are dense, predicates can be evaluated once per dictionary entry rather
+ * than once per tuple: the result is a boolean mask indexed by code. Likewise, a grouping
+ * on a dictionary column aggregates into arrays indexed by code instead of a hash table,
+ * see {@link de.tuberlin.dima.minidb.qexec.CodeIndexedAggregator}.
+ * <p>
+ * The dictionary holds at most {@link Constants#MAX_DICTIONARY_ENTRIES} entries. Once it is
+ * full, no further codes are handed out and tuples with new values cannot be inserted.
+ */
+public class ColumnDictionary
+{
+	/**
+	 * The code returned for values that are not contained in the dictionary.
+	 */
+	public static final int NO_CODE = -1;
+
+	/**
+	 * The data type of the values in the dictionary.
+	 */
+	private final DataType type;
+
+	/**
+	 * The values, indexed by their code.
+	 */
+	private final List<DataField> values;
+
+	/**
+	 * The codes, looked up by the value.
+	 */
+	private final Map<DataField, Integer> codes;
+
+	/**
+	 * The masks computed for the predicates that are in use. An entry goes away once its
+	 * predicate is no longer referenced.
+	 */
+	private final Map<LowLevelPredicate, CodeMask> masks;
+
+	/**
+	 * Flag indicating whether entries were added since the last time the dictionary was
+	 * persisted.
+	 */
+	private boolean modified;
+
+
+	/**
+	 * Creates a new and empty dictionary for values of the given type.
+	 *
+	 * @param type The data type of the dictionary values. Must be a fix length type.
+	 */
+	public ColumnDictionary(DataType type)
+	{
+		if (!type.isFixLength()) {
+			throw new IllegalArgumentException("Dictionary encoding is supported only for fix length types.");
+		}
+
+		this.type = type;
+		this.values = new ArrayList<DataField>();
+		this.codes = new HashMap<DataField, Integer>();
+		this.masks = new WeakHashMap<LowLevelPredicate, CodeMask>();
+	}
+
+	// ------------------------------------------------------------------------
+	//                               Accessors
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the data type of the values in this dictionary.
+	 *
+	 * @return The value data type.
+	 */
+	public DataType getDataType()
+	{
+		return this.type;
+	}
+
+	/**
+	 * Gets the number of entries in the dictionary. All codes are in the range
+	 * <code>[0, size())</code>.
+	 *
+	 * @return The number of entries.
+	 */
+	public synchronized int size()
+	{
+		return this.values.size();
+	}
+
+	/**
+	 * Checks whether the dictionary can hand out no further codes.
+	 *
+	 * @return True, if the dictionary is full, false otherwise.
+	 */
+	public synchronized boolean isFull()
+	{
+		return this.values.size() >= Constants.MAX_DICTIONARY_ENTRIES;
+	}
+
+	/**
+	 * Checks whether entries were added since the dictionary was last persisted.
+	 *
+	 * @return True, if the dictionary was modified, false otherwise.
+	 */
+	public synchronized boolean isModified()
+	{
+		return this.modified;
+	}
+
+	/**
+	 * Gets the code for the given value.
+	 *
+	 * @param value The value to look up.
+	 * @return The code of the value, or {@link #NO_CODE}, if the value is not in the dictionary.
+	 */
+	public synchronized int getCode(DataField value)
+	{
+		Integer code = this.codes.get(canonicalize(value));
+		return code == null ? NO_CODE : code.intValue();
+	}
+
+	/**
+	 * Gets the code for the given value, adding the value to the dictionary if it is not yet
+	 * contained.
+	 *
+	 * @param value The value to encode.
+	 * @return The code of the value, or {@link #NO_CODE}, if the value is not in the dictionary
+	 *         and the dictionary is full.
+	 */
+	public synchronized int getOrAddCode(DataField value)
+	{
+		value = canonicalize(value);
+		Integer code = this.codes.get(value);
+		if (code != null) {
+			return code.intValue();
+		}
+
+		if (this.values.size() >= Constants.MAX_DICTIONARY_ENTRIES) {
+			return NO_CODE;
+		}
+
+		int newCode = this.values.size();
+		this.values.add(value);
+		this.codes.put(value, Integer.valueOf(newCode));
+		this.modified = true;
+		return newCode;
+	}
+
+	/**
+	 * Gets the value for the given code.
+	 *
+	 * @param code The code to decode.
+	 * @return The value represented by the code.
+	 * @throws IndexOutOfBoundsException Thrown, if the code is not a valid code of this dictionary.
+	 */
+	public synchronized DataField getValue(int code)
+	{
+		return this.values.get(code);
+	}
+
+	/**
+	 * Brings the value into the form in which it is read back from its binary representation,
+	 * such as CHAR values padded to the length of the type. This makes the value equal to the
+	 * entries read from a persisted dictionary, and makes the decoded values the same as those
+	 * of a column that is not encoded.
+	 *
+	 * @param value The value to bring into canonical form.
+	 * @return The value in canonical form.
+	 */
+	private DataField canonicalize(DataField value)
+	{
+		byte[] buffer = new byte[this.type.getNumberOfBytes()];
+		value.encodeBinary(buffer, 0);
+		return this.type.getFromBinary(buffer, 0);
+	}
+
+	// ------------------------------------------------------------------------
+	//                        Evaluation on Codes
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Evaluates the given predicate once against each dictionary entry. The result is a mask
+	 * indexed by code that tells for each code whether tuples with that code pass the predicate.
+	 * <p>
+	 * The mask is kept for as long as the predicate is in use, so that a scan evaluates its
+	 * predicate against each entry only once, rather than once per page or tuple. When entries
+	 * were added since, only they are evaluated. The returned mask must not be modified.
+	 *
+	 * @param pred The predicate to evaluate.
+	 * @return The mask of the codes that are in the dictionary.
+	 */
+	public synchronized CodeMask getMatchingCodes(LowLevelPredicate pred)
+	{
+		int size = this.values.size();
+		CodeMask cached = this.masks.get(pred);
+		if (cached != null && cached.matches.length == size) {
+			return cached;
+		}
+
+		int first = cached == null ? 0 : cached.matches.length;
+		boolean[] matches = cached == null ? new boolean[size] : Arrays.copyOf(cached.matches, size);
+		for (int i = first; i < size; i++) {
+			matches[i] = pred.evaluateWithNull(this.values.get(i));
+		}
+
+		CodeMask mask = new CodeMask(matches);
+		this.masks.put(pred, mask);
+		return mask;
+	}
+
+	/**
+	 * The codes of a dictionary whose values pass a predicate.
+	 */
+	public static final class CodeMask
+	{
+		/**
+		 * Flags indicating for each code whether its value passes the predicate.
+		 */
+		private final boolean[] matches;
+
+		/**
+		 * The number of passing codes.
+		 */
+		private final int numMatches;
+
+		/**
+		 * The largest passing code, or {@link ColumnDictionary#NO_CODE}, if none passes.
+		 */
+		private final int lastMatch;
+
+
+		private CodeMask(boolean[] matches)
+		{
+			int num = 0, last = NO_CODE;
+			for (int i = 0; i < matches.length; i++) {
+				if (matches[i]) {
+					num++;
+					last = i;
+				}
+			}
+			this.matches = matches;
+			this.numMatches = num;
+			this.lastMatch = last;
+		}
+
+		/**
+		 * Gets the number of codes covered by the mask, which is the size of the dictionary
+		 * at the time the mask was computed.
+		 *
+		 * @return The number of codes covered by the mask.
+		 */
+		public int size()
+		{
+			return this.matches.length;
+		}
+
+		/**
+		 * Checks whether the value of the given code, which must be covered by the mask,
+		 * passes the predicate.
+		 *
+		 * @param code The code to check.
+		 * @return True, if the code's value passes the predicate, false otherwise.
+		 */
+		public boolean matches(int code)
+		{
+			return this.matches[code];
+		}
+
+		/**
+		 * Gets the number of codes whose values pass the predicate.
+		 *
+		 * @return The number of passing codes.
+		 */
+		public int getNumMatches()
+		{
+			return this.numMatches;
+		}
+
+		/**
+		 * Gets the largest code whose value passes the predicate. If only one code passes,
+		 * this is that code.
+		 *
+		 * @return The largest passing code, or {@link ColumnDictionary#NO_CODE}, if none passes.
+		 */
+		public int getLastMatch()
+		{
+			return this.lastMatch;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                            Serialization
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the number of bytes needed to serialize this dictionary.
+	 *
+	 * @return The number of bytes for the binary representation.
+	 */
+	public synchronized int getNumberOfBytes()
+	{
+		return 4 + this.values.size() * this.type.getNumberOfBytes();
+	}
+
+	/**
+	 * Writes the binary representation of this dictionary into the given buffer and
+	 * marks the dictionary as not modified. The representation is the number of entries,
+	 * followed by the fix length encoded values in code order.
+	 *
+	 * @param buffer The buffer to write to.
+	 * @param offset The offset in the buffer where to start writing.
+	 * @return The number of bytes written.
+	 */
+	public synchronized int encodeBinary(byte[] buffer, int offset)
+	{
+		int num = this.values.size();
+		buffer[offset    ] = (byte) num;
+		buffer[offset + 1] = (byte) (num >>> 8);
+		buffer[offset + 2] = (byte) (num >>> 16);
+		buffer[offset + 3] = (byte) (num >>> 24);
+
+		int width = this.type.getNumberOfBytes();
+		int pos = offset + 4;
+		for (int i = 0; i < num; i++) {
+			this.values.get(i).encodeBinary(buffer, pos);
+			pos += width;
+		}
+
+		this.modified = false;
+		return pos - offset;
+	}
+
+	/**
+	 * Reads a dictionary from its binary representation, as written by
+	 * {@link #encodeBinary(byte[], int)}.
+	 *
+	 * @param type The data type of the dictionary values.
+	 * @param buffer The buffer holding the binary representation.
+	 * @param offset The offset where the representation starts.
+	 * @return The dictionary.
+	 * @throws PageFormatException Thrown, if the binary data does not describe a valid dictionary.
+	 */
+	public static ColumnDictionary decodeBinary(DataType type, byte[] buffer, int offset)
+	throws PageFormatException
+	{
+		int num = (buffer[offset] & 0xff) | ((buffer[offset + 1] & 0xff) << 8) |
+		          ((buffer[offset + 2] & 0xff) << 16) | ((buffer[offset + 3] & 0xff) << 24);
+		int width = type.getNumberOfBytes();
+
+		if (num < 0 || num > Constants.MAX_DICTIONARY_ENTRIES || offset + 4 + num * width > buffer.length) {
+			throw new PageFormatException("Invalid number of dictionary entries: " + num);
+		}
+
+		ColumnDictionary dict = new ColumnDictionary(type);
+		int pos = offset + 4;
+		for (int i = 0; i < num; i++) {
+			DataField value = type.getFromBinary(buffer, pos);
+			if (dict.getOrAddCode(value) != i) {
+				throw new PageFormatException("Duplicate dictionary entry: " + value);
+			}
+			pos += width;
+		}
+
+		dict.modified = false;
+		return dict;
+	}
+}
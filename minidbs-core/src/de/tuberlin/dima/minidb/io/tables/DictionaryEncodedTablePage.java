@@ -0,0 +1,484 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.core.SmallIntField;
+import de.tuberlin.dima.minidb.io.cache.PageExpiredException;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.parser.Predicate.Operator;
+import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
+import de.tuberlin.dima.minidb.util.Pair;
+
+
+/**
+ * A table page that stores the values of dictionary encoded columns as codes. The wrapped page
+ * is laid out for the storage schema of the table, in which every dictionary encoded column is
+ * a SMALL_INT column holding the code. This page translates between the codes and the values,
+ * such that all callers see tuples in the logical schema of the table.
+ * <p>
+ * Predicates on encoded columns are evaluated on the codes: each predicate is evaluated once
+ * against the dictionary, which yields the set of qualifying codes. If no code qualifies, no
+ * tuple of the page is read. If exactly one code qualifies, the predicate is replaced by an
+ * equality predicate on the code and evaluated by the wrapped page. Otherwise, the code of each
+ * tuple is looked up in the mask of qualifying codes.
+ */
+final class DictionaryEncodedTablePage implements TablePage
+{
+	/**
+	 * The page holding the encoded data.
+	 */
+	private final TablePage page;
+
+	/**
+	 * The dictionaries, indexed by column. Entries for columns that are not encoded are null.
+	 */
+	private final ColumnDictionary[] dictionaries;
+
+	/**
+	 * The bitmap of the encoded columns.
+	 */
+	private final long encodedColumns;
+
+
+	/**
+	 * Creates a new wrapper around the given page.
+	 *
+	 * @param page The page holding the encoded data, laid out for the storage schema.
+	 * @param dictionaries The dictionaries of the table's columns, null for all columns that
+	 *                     are not encoded.
+	 */
+	DictionaryEncodedTablePage(TablePage page, ColumnDictionary[] dictionaries)
+	{
+		this.page = page;
+		this.dictionaries = dictionaries;
+
+		long encoded = 0;
+		for (int i = 0; i < dictionaries.length; i++) {
+			if (dictionaries[i] != null) {
+				encoded |= 0x1L << i;
+			}
+		}
+		this.encodedColumns = encoded;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Inserts the tuple, replacing the values of encoded columns by their codes. Values that
+	 * are not yet in the dictionary of their column are added to it.
+	 *
+	 * @throws PageFormatException Thrown, if the dictionary of a column is full and does not
+	 *                             contain the tuple's value.
+	 *
+	 * @see de.tuberlin.dima.minidb.io.tables.TablePage#insertTuple(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	public boolean insertTuple(DataTuple tuple) throws PageFormatException, PageExpiredException
+	{
+		DataTuple encoded = new DataTuple(tuple.getNumberOfFields());
+		for (int i = 0; i < tuple.getNumberOfFields(); i++) {
+			DataField value = tuple.getField(i);
+			ColumnDictionary dict = this.dictionaries[i];
+
+			if (dict == null) {
+				encoded.assignDataField(value, i);
+			}
+			else if (value.isNULL()) {
+				encoded.assignDataField(DataType.smallIntType().getNullValue(), i);
+			}
+			else {
+				int code = dict.getOrAddCode(value);
+				if (code == ColumnDictionary.NO_CODE) {
+					throw new PageFormatException("The dictionary of column " + i + " is full and does not contain the value " + value + ".");
+				}
+				encoded.assignDataField(new SmallIntField((short) code), i);
+			}
+		}
+		return this.page.insertTuple(encoded);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.tables.TablePage#deleteTuple(int)
+	 */
+	@Override
+	public void deleteTuple(int position) throws PageTupleAccessException, PageExpiredException
+	{
+		this.page.deleteTuple(position);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.tables.TablePage#getNumRecordsOnPage()
+	 */
+	@Override
+	public int getNumRecordsOnPage() throws PageExpiredException
+	{
+		return this.page.getNumRecordsOnPage();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.tables.TablePage#getDataTuple(int, long, int)
+	 */
+	@Override
+	public DataTuple getDataTuple(int position, long columnBitmap, int numCols)
+	throws PageTupleAccessException, PageExpiredException
+	{
+		DataTuple tuple = this.page.getDataTuple(position, columnBitmap, numCols);
+		return tuple == null ? null : decode(tuple, columnBitmap);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.tables.TablePage#getDataTuple(de.tuberlin.dima.minidb.qexec.LowLevelPredicate[], int, long, int)
+	 */
+	@Override
+	public DataTuple getDataTuple(LowLevelPredicate[] preds, int position, long columnBitmap, int numCols)
+	throws PageTupleAccessException, PageExpiredException
+	{
+		CodeFilter filter = new CodeFilter(preds, columnBitmap);
+		if (filter.matchesNothing) {
+			return null;
+		}
+
+		DataTuple tuple = filter.pagePredicates.length == 0 ?
+				this.page.getDataTuple(position, filter.fetchBitmap, filter.fetchColumns) :
+				this.page.getDataTuple(filter.pagePredicates, position, filter.fetchBitmap, filter.fetchColumns);
+		return tuple == null ? null : filter.qualifyAndDecode(tuple);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.tables.TablePage#getIterator(int, long)
+	 */
+	@Override
+	public TupleIterator getIterator(int numCols, long columnBitmap)
+	throws PageTupleAccessException, PageExpiredException
+	{
+		return new DecodingIterator(this.page.getIterator(numCols, columnBitmap), null, columnBitmap);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.tables.TablePage#getIterator(de.tuberlin.dima.minidb.qexec.LowLevelPredicate[], int, long)
+	 */
+	@Override
+	public TupleIterator getIterator(LowLevelPredicate[] preds, int numCols, long columnBitmap)
+	throws PageTupleAccessException, PageExpiredException
+	{
+		CodeFilter filter = new CodeFilter(preds, columnBitmap);
+		if (filter.matchesNothing) {
+			return new DecodingIterator(null, null, columnBitmap);
+		}
+
+		TupleIterator iter = filter.pagePredicates.length == 0 ?
+				this.page.getIterator(filter.fetchColumns, filter.fetchBitmap) :
+				this.page.getIterator(filter.pagePredicates, filter.fetchColumns, filter.fetchBitmap);
+		return new DecodingIterator(iter, filter, columnBitmap);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.tables.TablePage#getIteratorWithRID()
+	 */
+	@Override
+	public TupleRIDIterator getIteratorWithRID() throws PageTupleAccessException, PageExpiredException
+	{
+		final TupleRIDIterator iter = this.page.getIteratorWithRID();
+		return new TupleRIDIterator() {
+
+			@Override
+			public boolean hasNext() throws PageTupleAccessException
+			{
+				return iter.hasNext();
+			}
+
+			@Override
+			public Pair<DataTuple, RID> next() throws PageTupleAccessException
+			{
+				Pair<DataTuple, RID> next = iter.next();
+				next.setFirst(decode(next.getFirst(), -1L));
+				return next;
+			}
+		};
+	}
+
+	// ------------------------------------------------------------------------
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.cache.CacheableData#getPageNumber()
+	 */
+	@Override
+	public int getPageNumber() throws PageExpiredException
+	{
+		return this.page.getPageNumber();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.cache.CacheableData#hasBeenModified()
+	 */
+	@Override
+	public boolean hasBeenModified() throws PageExpiredException
+	{
+		return this.page.hasBeenModified();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.cache.CacheableData#markExpired()
+	 */
+	@Override
+	public void markExpired()
+	{
+		this.page.markExpired();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.cache.CacheableData#isExpired()
+	 */
+	@Override
+	public boolean isExpired()
+	{
+		return this.page.isExpired();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.cache.CacheableData#getBuffer()
+	 */
+	@Override
+	public byte[] getBuffer()
+	{
+		return this.page.getBuffer();
+	}
+
+	// ------------------------------------------------------------------------
+	//                           Code Translation
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Replaces the codes in the given tuple by the values they stand for.
+	 *
+	 * @param tuple The tuple as read from the wrapped page.
+	 * @param columnBitmap The bitmap of the columns contained in the tuple.
+	 * @return The given tuple, with values in place of the codes.
+	 */
+	private DataTuple decode(DataTuple tuple, long columnBitmap)
+	{
+		long encoded = columnBitmap & this.encodedColumns;
+		int pos = 0;
+		for (int col = 0; encoded != 0 && pos < tuple.getNumberOfFields(); col++) {
+			long bit = 0x1L << col;
+			if ((columnBitmap & bit) == 0) {
+				continue;
+			}
+			if ((encoded & bit) != 0) {
+				tuple.assignDataField(decodeField(col, tuple.getField(pos)), pos);
+				encoded &= ~bit;
+			}
+			pos++;
+		}
+		return tuple;
+	}
+
+	/**
+	 * Gets the value for the code of the given column.
+	 *
+	 * @param col The column of the code.
+	 * @param code The code, as stored in the wrapped page.
+	 * @return The value for the code.
+	 */
+	private DataField decodeField(int col, DataField code)
+	{
+		ColumnDictionary dict = this.dictionaries[col];
+		return code.isNULL() ? dict.getDataType().getNullValue() : dict.getValue(((SmallIntField) code).getValue());
+	}
+
+	/**
+	 * The predicates of a single access, translated into predicates on the codes.
+	 */
+	private final class CodeFilter
+	{
+		/**
+		 * Flag indicating that no tuple can qualify, because a predicate on an encoded
+		 * column is not matched by any code.
+		 */
+		final boolean matchesNothing;
+
+		/**
+		 * The predicates evaluated by the wrapped page.
+		 */
+		final LowLevelPredicate[] pagePredicates;
+
+		/**
+		 * The columns fetched from the wrapped page: the requested columns plus the columns
+		 * of the predicates that are evaluated on the code masks.
+		 */
+		final long fetchBitmap;
+
+		/**
+		 * The number of columns fetched from the wrapped page.
+		 */
+		final int fetchColumns;
+
+		/**
+		 * The columns requested by the caller.
+		 */
+		private final long columnBitmap;
+
+		/**
+		 * The predicates that are evaluated on the code masks.
+		 */
+		private final List<LowLevelPredicate> maskPredicates;
+
+		/**
+		 * The masks of qualifying codes, one per mask predicate.
+		 */
+		private final List<ColumnDictionary.CodeMask> masks;
+
+
+		CodeFilter(LowLevelPredicate[] preds, long columnBitmap)
+		{
+			List<LowLevelPredicate> pagePreds = new ArrayList<LowLevelPredicate>();
+			this.maskPredicates = new ArrayList<LowLevelPredicate>();
+			this.masks = new ArrayList<ColumnDictionary.CodeMask>();
+			this.columnBitmap = columnBitmap;
+
+			boolean nothing = false;
+			long fetch = columnBitmap;
+
+			for (int i = 0; preds != null && i < preds.length; i++) {
+				LowLevelPredicate pred = preds[i];
+				int col = pred.getColumnIndex();
+				ColumnDictionary dict = DictionaryEncodedTablePage.this.dictionaries[col];
+
+				if (dict == null) {
+					pagePreds.add(pred);
+					continue;
+				}
+
+				ColumnDictionary.CodeMask mask = dict.getMatchingCodes(pred);
+				int matches = mask.getNumMatches();
+
+				if (matches == 0) {
+					nothing = true;
+				}
+				else if (matches == 1) {
+					pagePreds.add(new LowLevelPredicate(Operator.EQUAL, new SmallIntField((short) mask.getLastMatch()), col));
+				}
+				else {
+					this.maskPredicates.add(pred);
+					this.masks.add(mask);
+					fetch |= 0x1L << col;
+				}
+			}
+
+			this.matchesNothing = nothing;
+			this.pagePredicates = pagePreds.toArray(new LowLevelPredicate[pagePreds.size()]);
+			this.fetchBitmap = fetch;
+			this.fetchColumns = Long.bitCount(fetch);
+		}
+
+		/**
+		 * Evaluates the mask predicates on a tuple read from the wrapped page, and decodes
+		 * the requested columns of qualifying tuples.
+		 *
+		 * @param tuple The tuple with the fetched columns, as read from the wrapped page.
+		 * @return The decoded tuple with the requested columns, or null, if the tuple does
+		 *         not qualify.
+		 */
+		DataTuple qualifyAndDecode(DataTuple tuple)
+		{
+			for (int i = 0; i < this.maskPredicates.size(); i++) {
+				LowLevelPredicate pred = this.maskPredicates.get(i);
+				int col = pred.getColumnIndex();
+				DataField code = tuple.getField(Long.bitCount(this.fetchBitmap & ((0x1L << col) - 1)));
+				if (code.isNULL()) {
+					return null;
+				}
+
+				int c = ((SmallIntField) code).getValue();
+				ColumnDictionary.CodeMask mask = this.masks.get(i);
+
+				// codes added to the dictionary after the mask was computed are checked directly
+				if (c < mask.size() ? !mask.matches(c) : !pred.evaluateWithNull(decodeField(col, code))) {
+					return null;
+				}
+			}
+
+			if (this.fetchBitmap == this.columnBitmap) {
+				return decode(tuple, this.columnBitmap);
+			}
+
+			// drop the columns that were fetched only for the predicates
+			DataTuple result = new DataTuple(Long.bitCount(this.columnBitmap));
+			long remaining = this.fetchBitmap;
+			for (int pos = 0, resultPos = 0; remaining != 0; remaining &= remaining - 1, pos++) {
+				if ((this.columnBitmap & Long.lowestOneBit(remaining)) != 0) {
+					result.assignDataField(tuple.getField(pos), resultPos++);
+				}
+			}
+			return decode(result, this.columnBitmap);
+		}
+	}
+
+	/**
+	 * An iterator that filters the tuples of the wrapped page by the mask predicates and
+	 * decodes them.
+	 */
+	private final class DecodingIterator implements TupleIterator
+	{
+		/**
+		 * The iterator over the wrapped page, or null, if no tuple qualifies.
+		 */
+		private final TupleIterator iter;
+
+		/**
+		 * The filter with the mask predicates, or null, if there are no predicates.
+		 */
+		private final CodeFilter filter;
+
+		/**
+		 * The requested columns.
+		 */
+		private final long columnBitmap;
+
+		/**
+		 * The next qualifying tuple, if it was already determined.
+		 */
+		private DataTuple next;
+
+
+		DecodingIterator(TupleIterator iter, CodeFilter filter, long columnBitmap)
+		{
+			this.iter = iter;
+			this.filter = filter;
+			this.columnBitmap = columnBitmap;
+		}
+
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.io.tables.TupleIterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext() throws PageTupleAccessException
+		{
+			while (this.next == null && this.iter != null && this.iter.hasNext()) {
+				DataTuple tuple = this.iter.next();
+				this.next = this.filter == null ? decode(tuple, this.columnBitmap) : this.filter.qualifyAndDecode(tuple);
+			}
+			return this.next != null;
+		}
+
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.io.tables.TupleIterator#next()
+		 */
+		@Override
+		public DataTuple next() throws PageTupleAccessException
+		{
+			if (!hasNext()) {
+				throw new PageTupleAccessException(-1, "No more tuples on the page.");
+			}
+			DataTuple tuple = this.next;
+			this.next = null;
+			return tuple;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.io.cache.PageExpiredException;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
+
+
+/**
+ * A table page that keeps the zone map of its table correct while tuples are inserted into it.
+ * Every inserted tuple widens the summary of the page, so that a page which was summarized when
+ * it was last written is never skipped for tuples that were added to it in the buffer pool.
+ * All other methods are passed to the wrapped page.
+ * <p>
+ * The table resource manager wraps all pages it hands out to the buffer pool.
+ */
+final class SummarizedTablePage implements TablePage
+{
+	/**
+	 * The page holding the data.
+	 */
+	private final TablePage page;
+
+	/**
+	 * The zone map that summarizes the page.
+	 */
+	private final TableZoneMap zoneMap;
+
+
+	/**
+	 * Creates a new wrapper around the given page.
+	 *
+	 * @param page The page holding the data.
+	 * @param zoneMap The zone map that summarizes the page.
+	 */
+	SummarizedTablePage(TablePage page, TableZoneMap zoneMap)
+	{
+		this.page = page;
+		this.zoneMap = zoneMap;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.tables.TablePage#insertTuple(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	public boolean insertTuple(DataTuple tuple) throws PageFormatException, PageExpiredException
+	{
+		if (this.page.insertTuple(tuple)) {
+			this.zoneMap.includeTuple(this.page.getPageNumber(), tuple);
+			return true;
+		}
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.tables.TablePage#deleteTuple(int)
+	 */
+	@Override
+	public void deleteTuple(int position) throws PageTupleAccessException, PageExpiredException
+	{
+		// a deleted tuple only makes the summary less tight
+		this.page.deleteTuple(position);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.tables.TablePage#getNumRecordsOnPage()
+	 */
+	@Override
+	public int getNumRecordsOnPage() throws PageExpiredException
+	{
+		return this.page.getNumRecordsOnPage();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.tables.TablePage#getDataTuple(int, long, int)
+	 */
+	@Override
+	public DataTuple getDataTuple(int position, long columnBitmap, int numCols)
+	throws PageTupleAccessException, PageExpiredException
+	{
+		return this.page.getDataTuple(position, columnBitmap, numCols);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.tables.TablePage#getDataTuple(de.tuberlin.dima.minidb.qexec.LowLevelPredicate[], int, long, int)
+	 */
+	@Override
+	public DataTuple getDataTuple(LowLevelPredicate[] preds, int position, long columnBitmap, int numCols)
+	throws PageTupleAccessException, PageExpiredException
+	{
+		return this.page.getDataTuple(preds, position, columnBitmap, numCols);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.tables.TablePage#getIterator(int, long)
+	 */
+	@Override
+	public TupleIterator getIterator(int numCols, long columnBitmap)
+	throws PageTupleAccessException, PageExpiredException
+	{
+		return this.page.getIterator(numCols, columnBitmap);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.tables.TablePage#getIterator(de.tuberlin.dima.minidb.qexec.LowLevelPredicate[], int, long)
+	 */
+	@Override
+	public TupleIterator getIterator(LowLevelPredicate[] preds, int numCols, long columnBitmap)
+	throws PageTupleAccessException, PageExpiredException
+	{
+		return this.page.getIterator(preds, numCols, columnBitmap);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.tables.TablePage#getIteratorWithRID()
+	 */
+	@Override
+	public TupleRIDIterator getIteratorWithRID() throws PageTupleAccessException, PageExpiredException
+	{
+		return this.page.getIteratorWithRID();
+	}
+
+	// ------------------------------------------------------------------------
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.cache.CacheableData#getPageNumber()
+	 */
+	@Override
+	public int getPageNumber() throws PageExpiredException
+	{
+		return this.page.getPageNumber();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.cache.CacheableData#hasBeenModified()
+	 */
+	@Override
+	public boolean hasBeenModified() throws PageExpiredException
+	{
+		return this.page.hasBeenModified();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.cache.CacheableData#markExpired()
+	 */
+	@Override
+	public void markExpired()
+	{
+		this.page.markExpired();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.cache.CacheableData#isExpired()
+	 */
+	@Override
+	public boolean isExpired()
+	{
+		return this.page.isExpired();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.cache.CacheableData#getBuffer()
+	 */
+	@Override
+	public byte[] getBuffer()
+	{
+		return this.page.getBuffer();
+	}
+}
@@ -0,0 +1,435 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.catalogue.TableStatistics;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+
+
+/**
+ * Appends tuples to a table without going through the buffer pool. The loader fills pages in
+ * private buffers and hands every batch of full pages to a dedicated I/O thread, which writes
+ * them sequentially, while the caller already fills the next batch. The number of batches in
+ * flight is bounded, so that a slow disk throttles the producer rather than the memory filling up.
+ * <p>
+ * The table statistics are updated whenever a batch is written. The loaded pages become visible
+ * to scans when their batch is on disk. They are reserved directly at the table and never pass
+ * through the buffer pool, so no cached copy of them can exist.
+ * <p>
+ * Loaders are created through
+ * {@link TableResourceManager#createBulkLoader(TableStatistics, int)}.
+ * A loader is not thread-safe; it is meant to be fed by a single thread. If a batch cannot be
+ * written, closing the loader cancels the batches that are still pending and releases the pages
+ * that were not written, so they never become visible.
+ */
+public class TableBulkLoader
+{
+	/**
+	 * The table that is loaded.
+	 */
+	private final TableResourceManager table;
+
+	/**
+	 * The statistics to update. May be null.
+	 */
+	private final TableStatistics statistics;
+
+	/**
+	 * The number of pages per batch.
+	 */
+	private final int batchSize;
+
+	/**
+	 * The thread that writes the batches.
+	 */
+	private final ExecutorService ioExecutor;
+
+	/**
+	 * The batches that are handed to the I/O thread, oldest first.
+	 */
+	private final LinkedList<Batch> pendingBatches;
+
+	/**
+	 * Written batches, whose buffers can be reused.
+	 */
+	private final LinkedList<Batch> freeBatches;
+
+	/**
+	 * The batch that is currently filled.
+	 */
+	private Batch currentBatch;
+
+	/**
+	 * The page that tuples are currently inserted into.
+	 */
+	private TablePage currentPage;
+
+	/**
+	 * The table cardinality before the load.
+	 */
+	private final long baseCardinality;
+
+	/**
+	 * The number of table pages before the load.
+	 */
+	private final int basePages;
+
+	/**
+	 * The number of tuples in batches that have been written.
+	 */
+	private long tuplesWritten;
+
+	/**
+	 * The number of pages in batches that have been written.
+	 */
+	private int pagesWritten;
+
+	/**
+	 * Flag indicating that the loader is closed.
+	 */
+	private boolean closed;
+
+
+	/**
+	 * Creates a new bulk loader for the given table.
+	 *
+	 * @param table The table to append to.
+	 * @param statistics The statistics to update, or null.
+	 * @param batchSize The number of pages written in one batch.
+	 */
+	TableBulkLoader(TableResourceManager table, TableStatistics statistics, int batchSize)
+	{
+		this.table = table;
+		this.statistics = statistics;
+		this.batchSize = batchSize;
+
+		this.pendingBatches = new LinkedList<Batch>();
+		this.freeBatches = new LinkedList<Batch>();
+
+		this.ioExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "Bulk Load I/O Thread");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		// for a table that had no pages, the statistics hold only default values
+		int existingPages = table.getLastDataPageNumber() - table.getFirstDataPageNumber() + 1;
+		if (existingPages <= 0 || statistics == null) {
+			this.baseCardinality = 0;
+			this.basePages = 0;
+		}
+		else {
+			this.baseCardinality = statistics.getCardinality();
+			this.basePages = existingPages;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                               Loading
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Appends a tuple to the table. The tuple becomes visible once its batch is written.
+	 *
+	 * @param tuple The tuple to append.
+	 * @throws IOException Thrown, if writing a previous batch failed.
+	 * @throws PageFormatException Thrown, if the tuple could not be inserted into a page,
+	 *                             for example because it is larger than an empty page.
+	 */
+	public void append(DataTuple tuple) throws IOException, PageFormatException
+	{
+		if (this.closed) {
+			throw new IllegalStateException("The bulk loader is closed.");
+		}
+
+		if (this.currentPage == null || !this.currentPage.insertTuple(tuple)) {
+			nextPage();
+			if (!this.currentPage.insertTuple(tuple)) {
+				throw new PageFormatException("Tuple does not fit into an empty page.");
+			}
+		}
+		this.currentBatch.tuples++;
+	}
+
+	/**
+	 * Writes the remaining pages and waits until all batches are on disk. Closing an already
+	 * closed loader has no effect.
+	 *
+	 * @throws IOException Thrown, if a batch could not be written.
+	 */
+	public void close() throws IOException
+	{
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+
+		IOException failure = null;
+		try {
+			if (this.currentBatch != null && this.currentBatch.num > 0) {
+				submit(this.currentBatch);
+			}
+			this.currentBatch = null;
+			this.currentPage = null;
+
+			while (!this.pendingBatches.isEmpty()) {
+				awaitOldest();
+			}
+		}
+		catch (IOException ioex) {
+			failure = ioex;
+			throw ioex;
+		}
+		finally {
+			try {
+				shutDown();
+			}
+			catch (IOException ioex) {
+				if (failure == null) {
+					throw ioex;
+				}
+				failure.addSuppressed(ioex);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of tuples that have been appended and written so far.
+	 *
+	 * @return The number of written tuples.
+	 */
+	public long getNumberOfTuplesWritten()
+	{
+		return this.tuplesWritten;
+	}
+
+	/**
+	 * Gets the number of pages that have been written so far.
+	 *
+	 * @return The number of written pages.
+	 */
+	public int getNumberOfPagesWritten()
+	{
+		return this.pagesWritten;
+	}
+
+	/**
+	 * Stops the I/O thread and ends the load. Batches that are still pending after a failed
+	 * batch are cancelled, and the pages that were not written are released at the table.
+	 *
+	 * @throws IOException Thrown, if the unwritten pages could not be released.
+	 */
+	private void shutDown() throws IOException
+	{
+		try {
+			for (Batch batch : this.pendingBatches) {
+				batch.write.cancel(false);
+			}
+			this.pendingBatches.clear();
+
+			// a batch that is being written must not be interrupted, since an interrupt
+			// during a write closes the table file
+			this.ioExecutor.shutdown();
+			boolean interrupted = false;
+			while (!this.ioExecutor.isTerminated()) {
+				try {
+					this.ioExecutor.awaitTermination(1, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException iex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+
+			this.table.releaseLoadPages();
+		}
+		finally {
+			this.freeBatches.clear();
+			this.table.bulkLoadFinished();
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                            Batch Handling
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Starts a new page, submitting the current batch, if it is full.
+	 *
+	 * @throws IOException Thrown, if writing a previous batch failed.
+	 * @throws PageFormatException Thrown, if the new page could not be initialized.
+	 */
+	private void nextPage() throws IOException, PageFormatException
+	{
+		if (this.currentBatch != null && this.currentBatch.num == this.batchSize) {
+			submit(this.currentBatch);
+			this.currentBatch = null;
+		}
+		if (this.currentBatch == null) {
+			this.currentBatch = takeFreeBatch();
+		}
+
+		Batch batch = this.currentBatch;
+		TablePage page = this.table.reserveLoadPage(batch.buffers[batch.num]);
+
+		// a batch must be a consecutive run of pages. if pages were reserved through the
+		// buffer pool in the meantime, the new page starts a new batch
+		if (batch.num > 0 && page.getPageNumber() != batch.pages[batch.num - 1].getPageNumber() + 1) {
+			Batch next = takeFreeBatch();
+			byte[] buffer = batch.buffers[batch.num];
+			batch.buffers[batch.num] = next.buffers[0];
+			next.buffers[0] = buffer;
+
+			submit(batch);
+			this.currentBatch = batch = next;
+		}
+
+		batch.pages[batch.num++] = page;
+		this.currentPage = page;
+	}
+
+	/**
+	 * Hands a batch to the I/O thread.
+	 *
+	 * @param batch The batch to write.
+	 */
+	private void submit(final Batch batch)
+	{
+		batch.write = this.ioExecutor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException
+			{
+				TableBulkLoader.this.table.appendPages(batch.buffers, batch.pages, batch.num);
+				return null;
+			}
+		});
+		this.pendingBatches.addLast(batch);
+	}
+
+	/**
+	 * Gets an empty batch, reusing the buffers of written batches. If the maximal number of
+	 * batches is in flight, this method waits until the oldest one is written.
+	 *
+	 * @return An empty batch.
+	 * @throws IOException Thrown, if writing a previous batch failed.
+	 */
+	private Batch takeFreeBatch() throws IOException
+	{
+		// collect the batches that are already written
+		while (!this.pendingBatches.isEmpty() && this.pendingBatches.getFirst().write.isDone()) {
+			awaitOldest();
+		}
+
+		if (this.freeBatches.isEmpty()) {
+			if (this.pendingBatches.size() < Constants.BULK_LOAD_MAX_PENDING_BATCHES) {
+				return new Batch(this.batchSize, this.table.getPageSize().getNumberOfBytes());
+			}
+			awaitOldest();
+		}
+		return this.freeBatches.removeFirst();
+	}
+
+	/**
+	 * Waits until the oldest pending batch is written, updates the statistics and recycles
+	 * the batch.
+	 *
+	 * @throws IOException Thrown, if the batch could not be written.
+	 */
+	private void awaitOldest() throws IOException
+	{
+		Batch batch = this.pendingBatches.removeFirst();
+		try {
+			batch.write.get();
+		}
+		catch (ExecutionException eex) {
+			Throwable cause = eex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("Bulk load batch could not be written.", cause);
+		}
+		catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a bulk load batch to be written.", iex);
+		}
+
+		this.tuplesWritten += batch.tuples;
+		this.pagesWritten += batch.num;
+		if (this.statistics != null) {
+			this.statistics.setCardinality(this.baseCardinality + this.tuplesWritten);
+			this.statistics.setNumberOfPages(this.basePages + this.pagesWritten);
+		}
+
+		batch.reset();
+		this.freeBatches.addLast(batch);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * A run of consecutive pages that is written in one go, together with its buffers.
+	 */
+	private static final class Batch
+	{
+		/**
+		 * The page buffers, reused across loads of the batch.
+		 */
+		final byte[][] buffers;
+
+		/**
+		 * The pages in the buffers.
+		 */
+		final TablePage[] pages;
+
+		/**
+		 * The number of pages in the batch.
+		 */
+		int num;
+
+		/**
+		 * The number of tuples in the batch.
+		 */
+		long tuples;
+
+		/**
+		 * The result of the write, once the batch is submitted.
+		 */
+		Future<Void> write;
+
+		Batch(int numPages, int pageSize)
+		{
+			this.buffers = new byte[numPages][pageSize];
+			this.pages = new TablePage[numPages];
+		}
+
+		void reset()
+		{
+			// pages are initialized on cleared buffers, as with freshly allocated ones
+			for (int i = 0; i < this.num; i++) {
+				this.pages[i] = null;
+				Arrays.fill(this.buffers[i], (byte) 0);
+			}
+			this.num = 0;
+			this.tuples = 0;
+			this.write = null;
+		}
+	}
+}
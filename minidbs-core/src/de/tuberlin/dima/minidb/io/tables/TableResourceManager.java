@@ -4,15 +4,19 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
+import java.util.Arrays;
+import java.util.TreeSet;
 
 import de.tuberlin.dima.minidb.Constants;
 import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
 import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableStatistics;
 import de.tuberlin.dima.minidb.catalogue.TableSchema;
 import de.tuberlin.dima.minidb.core.BasicType;
 import de.tuberlin.dima.minidb.core.DataType;
@@ -45,6 +49,11 @@ public class TableResourceManager extends ResourceManager {
 	 */
 	private static final int TABLE_HEADER_COLUMN_ATTRIBUTE_UNIQUE_MASK = 0x2;
 
+	/**
+	 * The mask to access the 'dictionary encoded' bit in the column attributes.
+	 */
+	private static final int TABLE_HEADER_COLUMN_ATTRIBUTE_DICTIONARY_MASK = 0x4;
+
 	/**
 	 * The factory used to create new pages.
 	 */
@@ -65,6 +74,12 @@ public class TableResourceManager extends ResourceManager {
 	 */
 	private final TableSchema schema;
 
+	/**
+	 * The schema that the pages are laid out for. Dictionary encoded columns are stored as
+	 * SMALL_INT codes. Identical to the table schema, if no column is dictionary encoded.
+	 */
+	private final TableSchema storageSchema;
+
 	/**
 	 * The size of a page in bytes.
 	 */
@@ -78,7 +93,47 @@ public class TableResourceManager extends ResourceManager {
 	/**
 	 * The last page that contains actual data (rather than metadata, like schema)
 	 */
-	private int lastDataPageNumber;
+	private volatile int lastDataPageNumber;
+
+	/**
+	 * The last page number that was handed out, either to the buffer pool or to a bulk loader.
+	 * It is ahead of the last data page number while a bulk loader has pages that are not yet
+	 * written.
+	 */
+	private int lastReservedPageNumber;
+
+	/**
+	 * The numbers of the pages that a bulk loader reserved, but has not yet written.
+	 */
+	private final TreeSet<Integer> unwrittenLoadPages;
+
+	/**
+	 * The dictionaries for the dictionary encoded columns, indexed by column. Entries for columns
+	 * that are not dictionary encoded are null.
+	 */
+	private final ColumnDictionary[] dictionaries;
+
+	/**
+	 * The file that persists the dictionaries. Null, if the table has no dictionary encoded columns.
+	 */
+	private File dictionaryFile;
+
+	/**
+	 * The summaries of the minimal and maximal column values on each page.
+	 */
+	private TableZoneMap zoneMap;
+
+	/**
+	 * The file that persists the zone map.
+	 */
+	private File zoneMapFile;
+
+	/**
+	 * The bulk loader that is currently appending to the table, or null, if no load is active.
+	 * A loader that is dropped without being closed is released by the garbage collector, which
+	 * ends its load.
+	 */
+	private WeakReference<TableBulkLoader> activeBulkLoader;
 
 	// ------------------------------------------------------------------------
 	//                        Constructor & Life-Cycle
@@ -130,6 +185,12 @@ public class TableResourceManager extends ResourceManager {
 		// find page numbers
 		this.firstDataPageNumber = (int) (this.ioChannel.position() / this.schema.getPageSize().getNumberOfBytes()) + 1;
 		this.lastDataPageNumber = (int) ((this.ioChannel.size() - 1) / this.schema.getPageSize().getNumberOfBytes());
+		this.lastReservedPageNumber = this.lastDataPageNumber;
+		this.unwrittenLoadPages = new TreeSet<Integer>();
+
+		this.dictionaries = createDictionaries(this.schema);
+		this.storageSchema = createStorageSchema(this.schema);
+		this.zoneMap = new TableZoneMap(this.schema, this.firstDataPageNumber);
 	}
 
 	/**
@@ -181,6 +242,12 @@ public class TableResourceManager extends ResourceManager {
 		// consumed by the header.
 		this.firstDataPageNumber = (int) (this.ioChannel.position() / schema.getPageSize().getNumberOfBytes()) + 1;
 		this.lastDataPageNumber = this.firstDataPageNumber - 1;
+		this.lastReservedPageNumber = this.lastDataPageNumber;
+		this.unwrittenLoadPages = new TreeSet<Integer>();
+
+		this.dictionaries = createDictionaries(schema);
+		this.storageSchema = createStorageSchema(schema);
+		this.zoneMap = new TableZoneMap(schema, this.firstDataPageNumber);
 	}
 
 	/*
@@ -190,6 +257,8 @@ public class TableResourceManager extends ResourceManager {
 	@Override
 	public synchronized void closeResource() throws IOException {
 		try {
+			writeDictionaries();
+			writeZoneMap();
 			this.theLock.release();
 			this.ioChannel.close();
 		} catch (Throwable t) {
@@ -274,6 +343,197 @@ public class TableResourceManager extends ResourceManager {
 		return this.lastDataPageNumber;
 	}
 
+	/**
+	 * Gets the dictionary of the column with the given index. Pages store the codes from that
+	 * dictionary instead of the values, and translate them back when tuples are read.
+	 * 
+	 * @param columnIndex
+	 *        The index of the column.
+	 * @return The column's dictionary, or null, if the column is not dictionary encoded.
+	 */
+	public ColumnDictionary getColumnDictionary(int columnIndex) {
+		return this.dictionaries[columnIndex];
+	}
+
+	/**
+	 * Gets the zone map of the table, which summarizes the minimal and maximal value of
+	 * each column on each page. Table scans use it to skip pages that cannot contain
+	 * any tuple qualifying for their predicates.
+	 * 
+	 * @return The table's zone map.
+	 */
+	public TableZoneMap getZoneMap() {
+		return this.zoneMap;
+	}
+
+	// ------------------------------------------------------------------------
+	//                              Bulk Loading
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Creates a bulk loader that appends tuples to this table. The loader formats full pages
+	 * in private buffers and writes them in sequential batches, bypassing the buffer pool. It is
+	 * the fast path for loading large amounts of data, compared to inserting tuple by tuple
+	 * through cached pages.
+	 * <p>
+	 * Only one bulk loader may be active on a table at a time. The loader must be closed
+	 * to complete the load. The pages that the loader appends become visible to scans only
+	 * once they are written. They are never handed to the buffer pool, so the table may stay
+	 * registered at a buffer pool during the load, without the cache getting stale.
+	 * A loader that is dropped without being closed ends its load once it is garbage collected,
+	 * and the pages that it did not write are released.
+	 * 
+	 * @param statistics
+	 *        The statistics of the table, which are updated with the appended tuples and
+	 *        pages. May be null.
+	 * @param batchSize
+	 *        The number of pages written in one batch.
+	 * @return The bulk loader.
+	 * @throws IllegalStateException
+	 *         Thrown, if another bulk load on this table is still active.
+	 * @throws IOException
+	 *         Thrown, if the pages of a dropped loader could not be released.
+	 */
+	public synchronized TableBulkLoader createBulkLoader(TableStatistics statistics, int batchSize) throws IOException {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("The batch size must be positive.");
+		}
+		if (this.activeBulkLoader != null) {
+			if (this.activeBulkLoader.get() != null) {
+				throw new IllegalStateException("A bulk load on this table is already active.");
+			}
+			// the active loader was dropped without being closed, so its pages are never written
+			this.activeBulkLoader = null;
+			releaseLoadPages();
+		}
+		TableBulkLoader loader = new TableBulkLoader(this, statistics, batchSize);
+		this.activeBulkLoader = new WeakReference<TableBulkLoader>(loader);
+		return loader;
+	}
+
+	/**
+	 * Creates a bulk loader with the default batch size of {@link Constants#BULK_LOAD_BATCH_PAGES}.
+	 * See {@link #createBulkLoader(TableStatistics, int)} for details.
+	 * 
+	 * @param statistics
+	 *        The statistics of the table to update, or null.
+	 * @return The bulk loader.
+	 * @throws IOException
+	 *         Thrown, if the pages of a dropped loader could not be released.
+	 */
+	public TableBulkLoader createBulkLoader(TableStatistics statistics) throws IOException {
+		return createBulkLoader(statistics, Constants.BULK_LOAD_BATCH_PAGES);
+	}
+
+	/**
+	 * Marks the active bulk load as finished, so that a new one may be started.
+	 */
+	synchronized void bulkLoadFinished() {
+		this.activeBulkLoader = null;
+	}
+
+	/**
+	 * Releases the pages that a bulk loader reserved, but did not write, because a batch failed
+	 * or the loader was dropped. Otherwise, the first of them would keep the last data page
+	 * number below it for good. Unwritten pages at the end of the table are handed back, so that
+	 * they are reserved again. Unwritten pages before pages that were reserved after them are
+	 * written as empty pages, such that the table has no holes.
+	 * 
+	 * @throws IOException
+	 *         Thrown, if an empty page could not be written. The page is kept as unwritten.
+	 */
+	synchronized void releaseLoadPages() throws IOException {
+		while (!this.unwrittenLoadPages.isEmpty() && this.unwrittenLoadPages.last() == this.lastReservedPageNumber) {
+			this.unwrittenLoadPages.remove(this.lastReservedPageNumber);
+			this.lastReservedPageNumber--;
+		}
+
+		try {
+			byte[] buffer = new byte[this.pageSize];
+			while (!this.unwrittenLoadPages.isEmpty()) {
+				int pageNumber = this.unwrittenLoadPages.first();
+				Arrays.fill(buffer, (byte) 0);
+				try {
+					pageFactory.initTablePage(this.storageSchema, buffer, pageNumber);
+				} catch (PageFormatException pfex) {
+					throw new IOException("Empty page " + pageNumber + " could not be initialized.", pfex);
+				}
+				try {
+					writeBuffer(this.ioChannel, ByteBuffer.wrap(buffer, 0, this.pageSize), this.pageSize * (long) pageNumber);
+				} catch (IOException ioex) {
+					throw new IOException("Empty page " + pageNumber + " could not be written to the table file.", ioex);
+				}
+				this.unwrittenLoadPages.remove(pageNumber);
+			}
+		} finally {
+			publishPages();
+		}
+	}
+
+	/**
+	 * Reserves a new page for a bulk loader. Unlike pages reserved through
+	 * {@link #reserveNewPage(byte[])}, the page does not count as part of the table until
+	 * it is written through {@link #appendPages(byte[][], TablePage[], int)}.
+	 * 
+	 * @param buffer
+	 *        The buffer to initialize the page in.
+	 * @return The new page.
+	 * @throws PageFormatException
+	 *         Thrown, if the page could not be initialized.
+	 */
+	synchronized TablePage reserveLoadPage(byte[] buffer) throws PageFormatException {
+		TablePage newPage = initNewPage(buffer);
+		this.unwrittenLoadPages.add(newPage.getPageNumber());
+		return newPage;
+	}
+
+	/**
+	 * Appends a batch of pages that were formatted by a bulk loader and makes them part of
+	 * the table. The pages must have consecutive page numbers. The batch is written with a
+	 * single gathered write.
+	 * 
+	 * @param buffers
+	 *        The buffers holding the pages.
+	 * @param pages
+	 *        The pages, whose numbers determine the position in the file.
+	 * @param num
+	 *        The number of pages to write from the arrays.
+	 * @throws IOException
+	 *         Thrown, if the pages could not be written.
+	 */
+	void appendPages(byte[][] buffers, TablePage[] pages, int num) throws IOException {
+		int firstPageNumber = pages[0].getPageNumber();
+
+		ByteBuffer[] b = new ByteBuffer[num];
+		for (int i = 0; i < num; i++) {
+			if (Constants.DEBUG_CHECK && pages[i].getPageNumber() != firstPageNumber + i) {
+				throw new IOException("Page number " + pages[i].getPageNumber() + " of page at position " + i + " is not sequential.");
+			}
+			b[i] = ByteBuffer.wrap(buffers[i], 0, this.pageSize);
+		}
+
+		// the pages may hold codes that were added to a dictionary since it was last written
+		writeDictionaries();
+
+		try {
+			writeBuffers(this.ioChannel, b, this.pageSize * (long) firstPageNumber);
+		} catch (IOException ioex) {
+			throw new IOException("Page sequence [" + firstPageNumber + ", " + (firstPageNumber + num - 1) + "] could not be written to the table file.", ioex);
+		}
+
+		for (int i = 0; i < num; i++) {
+			updateZoneMap(pages[i]);
+		}
+
+		// the pages are on disk, so scans may see them now
+		synchronized (this) {
+			for (int i = 0; i < num; i++) {
+				this.unwrittenLoadPages.remove(firstPageNumber + i);
+			}
+			publishPages();
+		}
+	}
+
 	// ------------------------------------------------------------------------
 	//                          I/O Methods
 	// ------------------------------------------------------------------------
@@ -286,6 +546,9 @@ public class TableResourceManager extends ResourceManager {
 	public synchronized void truncate() throws IOException {
 		this.ioChannel.truncate(this.firstDataPageNumber * this.schema.getPageSize().getNumberOfBytes());
 		this.lastDataPageNumber = this.firstDataPageNumber - 1;
+		this.lastReservedPageNumber = this.lastDataPageNumber;
+		this.unwrittenLoadPages.clear();
+		this.zoneMap.truncate();
 	}
 
 	/*
@@ -294,29 +557,56 @@ public class TableResourceManager extends ResourceManager {
 	 */
 	@Override
 	public final synchronized TablePage reserveNewPage(byte[] buffer) throws PageFormatException {
+		TablePage newPage = initNewPage(buffer);
+		publishPages();
+		return newPage;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.ResourceManager#reserveNewPage(byte[], java.lang.Enum)
+	 */
+	@Override
+	public final synchronized TablePage reserveNewPage(byte[] buffer, Enum<?> type) throws PageFormatException {
+		return reserveNewPage(buffer);
+	}
+
+	/**
+	 * Initializes a new page in the given buffer with the next free page number.
+	 * 
+	 * @param buffer
+	 *        The buffer to initialize the page in.
+	 * @return The new page.
+	 * @throws PageFormatException
+	 *         Thrown, if the page could not be initialized.
+	 */
+	private TablePage initNewPage(byte[] buffer) throws PageFormatException {
 		// we can ignore the parameters object, because there is nothing to configure here
 		if (buffer.length < this.schema.getPageSize().getNumberOfBytes()) {
 			throw new IllegalArgumentException("The buffer to initialize the page to is too small.");
 		}
 
 		// determine the next empty page number
-		int nextEmptyPageNumber = this.lastDataPageNumber >= this.firstDataPageNumber ? this.lastDataPageNumber + 1 : this.firstDataPageNumber;
+		int nextEmptyPageNumber = this.lastReservedPageNumber >= this.firstDataPageNumber ? this.lastReservedPageNumber + 1 : this.firstDataPageNumber;
+
+		TablePage newPage = wrapPage(pageFactory.initTablePage(this.storageSchema, buffer, nextEmptyPageNumber));
 
-		TablePage newPage = pageFactory.initTablePage(this.schema, buffer, nextEmptyPageNumber);
+		// the new page is not summarized until it is written
+		this.zoneMap.invalidatePage(nextEmptyPageNumber);
 
 		// increment the counter
-		this.lastDataPageNumber = nextEmptyPageNumber;
+		this.lastReservedPageNumber = nextEmptyPageNumber;
 
 		return newPage;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * @see de.tuberlin.dima.minidb.io.ResourceManager#reserveNewPage(byte[], java.lang.Enum)
+	/**
+	 * Advances the last data page number over all reserved pages, up to the first page
+	 * that a bulk loader has not yet written.
 	 */
-	@Override
-	public final synchronized TablePage reserveNewPage(byte[] buffer, Enum<?> type) throws PageFormatException {
-		return reserveNewPage(buffer);
+	private void publishPages() {
+		this.lastDataPageNumber = this.unwrittenLoadPages.isEmpty() ?
+				this.lastReservedPageNumber : this.unwrittenLoadPages.first() - 1;
 	}
 
 	/*
@@ -342,6 +632,9 @@ public class TableResourceManager extends ResourceManager {
 
 		ByteBuffer b = ByteBuffer.wrap(buffer, 0, this.pageSize);
 
+		// the page may hold codes that were added to a dictionary since it was last written
+		writeDictionaries();
+
 		// seek and write the buffer. If the position is beyond the file size,
 		// the channel will automatically increase the file length
 		try {
@@ -350,6 +643,8 @@ public class TableResourceManager extends ResourceManager {
 		} catch (IOException ioex) {
 			throw new IOException("Page " + pageNumber + " could not be written to the table file.", ioex);
 		}
+
+		updateZoneMap(wrapper);
 	}
 
 	/*
@@ -398,20 +693,20 @@ public class TableResourceManager extends ResourceManager {
 			b[i] = ByteBuffer.wrap(buffers[i], 0, this.pageSize);
 		}
 
+		// the pages may hold codes that were added to a dictionary since it was last written
+		writeDictionaries();
+
 		// seek and write the buffer. If the position is beyond the file size,
 		// the channel will automatically increase the file length
 		try {
-			this.ioChannel.position(this.pageSize * (long) pageNumber);
-			long totalSize = buffers.length * this.pageSize;
-			long bytesRemaining = buffers.length * this.pageSize;
-			int currFirstBuffer = 0;
-			do {
-				bytesRemaining -= this.ioChannel.write(b, currFirstBuffer, buffers.length - currFirstBuffer);
-				currFirstBuffer = (int) ((totalSize - bytesRemaining) / this.pageSize);
-			} while (bytesRemaining > 0);
+			writeBuffers(this.ioChannel, b, this.pageSize * (long) pageNumber);
 		} catch (IOException ioex) {
 			throw new IOException("Page sequence [" + pageNumber + ", " + (pageNumber + buffers.length - 1) + "] could not be written to the table file.", ioex);
 		}
+
+		for (int i = 0; i < wrappers.length; i++) {
+			updateZoneMap(wrappers[i]);
+		}
 	}
 
 	/*
@@ -444,7 +739,7 @@ public class TableResourceManager extends ResourceManager {
 
 		// create a table page for the loaded data
 		try {
-			return pageFactory.createTablePage(this.schema, buffer);
+			return wrapPage(pageFactory.createTablePage(this.storageSchema, buffer));
 		} catch (PageFormatException pfex) {
 			throw new IOException("Page could not be fetched because it is corrupted.", pfex);
 		}
@@ -481,15 +776,18 @@ public class TableResourceManager extends ResourceManager {
 			b[i] = ByteBuffer.wrap(buffers[i], 0, this.pageSize);
 		}
 
+		// seek and read under the channel's lock, since a bulk loader may write concurrently
 		try {
-			this.ioChannel.position(this.pageSize * (long) firstPageNumber);
-			long totalSize = buffers.length * this.pageSize;
-			long bytesRemaining = buffers.length * this.pageSize;
-			int currFirstBuffer = 0;
-			do {
-				bytesRemaining -= this.ioChannel.read(b, currFirstBuffer, buffers.length - currFirstBuffer);
-				currFirstBuffer = (int) ((totalSize - bytesRemaining) / this.pageSize);
-			} while (bytesRemaining > 0);
+			synchronized (this.ioChannel) {
+				this.ioChannel.position(this.pageSize * (long) firstPageNumber);
+				long totalSize = buffers.length * this.pageSize;
+				long bytesRemaining = buffers.length * this.pageSize;
+				int currFirstBuffer = 0;
+				do {
+					bytesRemaining -= this.ioChannel.read(b, currFirstBuffer, buffers.length - currFirstBuffer);
+					currFirstBuffer = (int) ((totalSize - bytesRemaining) / this.pageSize);
+				} while (bytesRemaining > 0);
+			}
 		} catch (IOException ioex) {
 			throw new IOException("Page sequence [" + firstPageNumber + ", " + (firstPageNumber + buffers.length - 1) + "] could not be read from table file.",
 				ioex);
@@ -499,7 +797,7 @@ public class TableResourceManager extends ResourceManager {
 		TablePage[] pages = new TablePage[buffers.length];
 		for (int i = 0; i < buffers.length; i++) {
 			try {
-				pages[i] = pageFactory.createTablePage(this.schema, buffers[i]);
+				pages[i] = wrapPage(pageFactory.createTablePage(this.storageSchema, buffers[i]));
 
 			} catch (PageFormatException pfex) {
 				throw new IOException("Page could not be fetched because it is corrupted.", pfex);
@@ -561,7 +859,10 @@ public class TableResourceManager extends ResourceManager {
 			}
 
 			RandomAccessFile raf = new RandomAccessFile(tableFile, "rwd");
-			return new TableResourceManager(raf);
+			TableResourceManager manager = new TableResourceManager(raf);
+			manager.readDictionaries(tableFile);
+			manager.readZoneMap(tableFile);
+			return manager;
 		} catch (SecurityException sex) {
 			throw new IOException("The user running the system has insufficient privileges for file manipulation.");
 		}
@@ -594,7 +895,10 @@ public class TableResourceManager extends ResourceManager {
 
 			// create the random access file and the table manager
 			RandomAccessFile raf = new RandomAccessFile(tableFile, "rwd");
-			return new TableResourceManager(raf, schema);
+			TableResourceManager manager = new TableResourceManager(raf, schema);
+			manager.dictionaryFile = getDictionaryFile(tableFile, schema);
+			manager.zoneMapFile = new File(tableFile.getPath() + Constants.TABLE_ZONE_MAP_FILE_SUFFIX);
+			return manager;
 		} catch (SecurityException sex) {
 			throw new IOException("The user running the system has insufficient privileges for file manipulation.");
 		}
@@ -616,13 +920,315 @@ public class TableResourceManager extends ResourceManager {
 				throw new IOException("Table file '" + tableFile.getCanonicalPath() + "' does not exist exist.");
 			}
 
-			// delete the file
+			// delete the file and its sidecar files, if any
 			tableFile.delete();
+
+			File dictFile = new File(tableFile.getPath() + Constants.TABLE_DICTIONARY_FILE_SUFFIX);
+			if (dictFile.exists()) {
+				dictFile.delete();
+			}
+			File zoneMapFile = new File(tableFile.getPath() + Constants.TABLE_ZONE_MAP_FILE_SUFFIX);
+			if (zoneMapFile.exists()) {
+				zoneMapFile.delete();
+			}
 		} catch (SecurityException sex) {
 			throw new IOException("The user running the system has insufficient privileges for file manipulation.");
 		}
 	}
 
+	// ------------------------------------------------------------------------
+	//                            Dictionaries
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Creates empty dictionaries for all dictionary encoded columns of the given schema.
+	 * 
+	 * @param schema
+	 *        The schema of the table.
+	 * @return An array with a dictionary for each dictionary encoded column, and null for all others.
+	 */
+	private static ColumnDictionary[] createDictionaries(TableSchema schema) {
+		ColumnDictionary[] dicts = new ColumnDictionary[schema.getNumberOfColumns()];
+		for (int i = 0; i < dicts.length; i++) {
+			ColumnSchema cs = schema.getColumn(i);
+			if (cs.isDictionaryEncoded()) {
+				dicts[i] = new ColumnDictionary(cs.getDataType());
+			}
+		}
+		return dicts;
+	}
+
+	/**
+	 * Creates the schema that the pages of a table are laid out for, in which every dictionary
+	 * encoded column is a SMALL_INT column holding the codes.
+	 * 
+	 * @param schema
+	 *        The schema of the table.
+	 * @return The storage schema, or the given schema, if no column is dictionary encoded.
+	 */
+	private static TableSchema createStorageSchema(TableSchema schema) {
+		boolean encoded = false;
+		for (int i = 0; i < schema.getNumberOfColumns(); i++) {
+			encoded |= schema.getColumn(i).isDictionaryEncoded();
+		}
+		if (!encoded) {
+			return schema;
+		}
+
+		TableSchema storage = new TableSchema(schema.getPageSize());
+		for (int i = 0; i < schema.getNumberOfColumns(); i++) {
+			ColumnSchema cs = schema.getColumn(i);
+			storage.addColumn(ColumnSchema.createColumnSchema(cs.getColumnName(),
+				cs.isDictionaryEncoded() ? DataType.smallIntType() : cs.getDataType(), cs.isNullable(), cs.isUnique()));
+		}
+		return storage;
+	}
+
+	/**
+	 * Wraps a page that is laid out for the storage schema, such that it translates dictionary
+	 * codes to values and keeps the zone map up to date on inserts.
+	 * 
+	 * @param page
+	 *        The page as created by the page factory.
+	 * @return The page handed out to the buffer pool.
+	 */
+	private TablePage wrapPage(TablePage page) {
+		if (this.storageSchema != this.schema) {
+			page = new DictionaryEncodedTablePage(page, this.dictionaries);
+		}
+		return new SummarizedTablePage(page, this.zoneMap);
+	}
+
+	/**
+	 * Gets the file that holds the dictionaries of a table, or null, if the table has no
+	 * dictionary encoded columns.
+	 * 
+	 * @param tableFile
+	 *        The file of the table.
+	 * @param schema
+	 *        The schema of the table.
+	 * @return The dictionary file, or null.
+	 */
+	private static File getDictionaryFile(File tableFile, TableSchema schema) {
+		for (int i = 0; i < schema.getNumberOfColumns(); i++) {
+			if (schema.getColumn(i).isDictionaryEncoded()) {
+				return new File(tableFile.getPath() + Constants.TABLE_DICTIONARY_FILE_SUFFIX);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the dictionaries of the dictionary encoded columns from the dictionary file that
+	 * belongs to the given table file. The dictionaries are stored one after the other, in
+	 * the order of the columns.
+	 * 
+	 * @param tableFile
+	 *        The file of the table.
+	 * @throws IOException
+	 *         Thrown, if the dictionary file could not be read or is corrupt.
+	 */
+	private void readDictionaries(File tableFile) throws IOException {
+		this.dictionaryFile = getDictionaryFile(tableFile, this.schema);
+		if (this.dictionaryFile == null || !this.dictionaryFile.exists()) {
+			return;
+		}
+
+		byte[] data = readSidecarFile(this.dictionaryFile);
+
+		int offset = 0;
+		for (int i = 0; i < this.dictionaries.length; i++) {
+			if (this.dictionaries[i] != null) {
+				if (offset + 4 > data.length) {
+					throw new IOException("Dictionary file is truncated.");
+				}
+				try {
+					this.dictionaries[i] = ColumnDictionary.decodeBinary(this.schema.getColumn(i).getDataType(), data, offset);
+				} catch (PageFormatException pfex) {
+					throw new IOException("Dictionary of column " + i + " is corrupt.", pfex);
+				}
+				offset += this.dictionaries[i].getNumberOfBytes();
+			}
+		}
+	}
+
+	/**
+	 * Writes the dictionaries of the dictionary encoded columns to the dictionary file, if
+	 * any of them was modified. This happens before any page is written, such that the
+	 * file never holds codes that the dictionary file cannot decode.
+	 * 
+	 * @throws IOException
+	 *         Thrown, if the dictionary file could not be written.
+	 */
+	private void writeDictionaries() throws IOException {
+		if (this.dictionaryFile == null) {
+			return;
+		}
+
+		synchronized (this.dictionaries) {
+			boolean modified = false;
+			for (int i = 0; i < this.dictionaries.length; i++) {
+				if (this.dictionaries[i] != null) {
+					modified |= this.dictionaries[i].isModified();
+				}
+			}
+			if (!modified) {
+				return;
+			}
+
+			// encode each dictionary under its own lock, as codes may be added concurrently
+			byte[][] encoded = new byte[this.dictionaries.length][];
+			int numBytes = 0;
+			for (int i = 0; i < this.dictionaries.length; i++) {
+				ColumnDictionary dictionary = this.dictionaries[i];
+				if (dictionary != null) {
+					synchronized (dictionary) {
+						encoded[i] = new byte[dictionary.getNumberOfBytes()];
+						dictionary.encodeBinary(encoded[i], 0);
+					}
+					numBytes += encoded[i].length;
+				}
+			}
+
+			byte[] data = new byte[numBytes];
+			int offset = 0;
+			for (int i = 0; i < encoded.length; i++) {
+				if (encoded[i] != null) {
+					System.arraycopy(encoded[i], 0, data, offset, encoded[i].length);
+					offset += encoded[i].length;
+				}
+			}
+
+			writeSidecarFile(this.dictionaryFile, data);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                              Zone Map
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Recomputes the zone map summary for a page that is written to the resource. The
+	 * summary is computed from the page's tuples, so it reflects exactly what is on disk.
+	 * 
+	 * @param wrapper
+	 *        The page that is written.
+	 * @throws IOException
+	 *         Thrown, if the tuples of the page could not be accessed.
+	 */
+	private void updateZoneMap(CacheableData wrapper) throws IOException {
+		if (!(wrapper instanceof TablePage)) {
+			this.zoneMap.invalidatePage(wrapper.getPageNumber());
+			return;
+		}
+
+		try {
+			this.zoneMap.updatePage((TablePage) wrapper);
+		} catch (PageTupleAccessException ptaex) {
+			this.zoneMap.invalidatePage(wrapper.getPageNumber());
+			throw new IOException("Page " + wrapper.getPageNumber() + " could not be summarized.", ptaex);
+		}
+	}
+
+	/**
+	 * Reads the zone map from the file that belongs to the given table file. If no such file
+	 * exists, the zone map stays empty, which causes no page to be skipped.
+	 * <p>
+	 * The file is deleted once it is read, and written anew when the table is closed. Pages
+	 * that are written while the table is open are summarized only in memory, so a table that
+	 * is not closed properly is left without a zone map, rather than with one that does not
+	 * match its pages. The file also records the number of the last data page, and a zone map
+	 * for a different number of pages is discarded.
+	 * 
+	 * @param tableFile
+	 *        The file of the table.
+	 * @throws IOException
+	 *         Thrown, if the zone map file could not be read or is corrupt.
+	 */
+	private void readZoneMap(File tableFile) throws IOException {
+		this.zoneMapFile = new File(tableFile.getPath() + Constants.TABLE_ZONE_MAP_FILE_SUFFIX);
+		if (!this.zoneMapFile.exists()) {
+			return;
+		}
+
+		byte[] data = readSidecarFile(this.zoneMapFile);
+		if (data.length < 8) {
+			throw new IOException("Zone map file is truncated.");
+		}
+		int lastPageNumber = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).getInt(0);
+		if (lastPageNumber == this.lastDataPageNumber) {
+			try {
+				this.zoneMap = TableZoneMap.decodeBinary(this.schema, this.firstDataPageNumber, data, 4);
+			} catch (PageFormatException pfex) {
+				throw new IOException("Zone map is corrupt.", pfex);
+			}
+		}
+
+		if (!this.zoneMapFile.delete()) {
+			throw new IOException("Zone map file '" + this.zoneMapFile.getPath() + "' could not be removed.");
+		}
+	}
+
+	/**
+	 * Writes the zone map to its file, together with the number of the last data page.
+	 * 
+	 * @throws IOException
+	 *         Thrown, if the zone map file could not be written.
+	 */
+	private void writeZoneMap() throws IOException {
+		if (this.zoneMapFile == null) {
+			return;
+		}
+
+		byte[] data;
+		synchronized (this.zoneMap) {
+			data = new byte[4 + this.zoneMap.getNumberOfBytes()];
+			this.zoneMap.encodeBinary(data, 4);
+		}
+		ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).putInt(0, this.lastDataPageNumber);
+		writeSidecarFile(this.zoneMapFile, data);
+	}
+
+	/**
+	 * Reads the complete contents of a sidecar file that holds auxiliary table data.
+	 * 
+	 * @param file
+	 *        The file to read.
+	 * @return The contents of the file.
+	 * @throws IOException
+	 *         Thrown, if the file could not be read.
+	 */
+	private static byte[] readSidecarFile(File file) throws IOException {
+		byte[] data = new byte[(int) file.length()];
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(data);
+		} finally {
+			raf.close();
+		}
+		return data;
+	}
+
+	/**
+	 * Replaces the contents of a sidecar file that holds auxiliary table data.
+	 * 
+	 * @param file
+	 *        The file to write.
+	 * @param data
+	 *        The new contents of the file.
+	 * @throws IOException
+	 *         Thrown, if the file could not be written.
+	 */
+	private static void writeSidecarFile(File file, byte[] data) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rwd");
+		try {
+			raf.setLength(0);
+			raf.write(data);
+		} finally {
+			raf.close();
+		}
+	}
+
 	// ------------------------------------------------------------------------
 	//                         Utility Functions
 	// ------------------------------------------------------------------------
@@ -696,6 +1302,7 @@ public class TableResourceManager extends ResourceManager {
 			int attributes = buffer.getInt();
 			boolean nullable = (attributes & TABLE_HEADER_COLUMN_ATTRIBUTE_NULLABLE_MASK) != 0;
 			boolean unique = (attributes & TABLE_HEADER_COLUMN_ATTRIBUTE_UNIQUE_MASK) != 0;
+			boolean dictionary = (attributes & TABLE_HEADER_COLUMN_ATTRIBUTE_DICTIONARY_MASK) != 0;
 
 			// get the name
 			int nameLength = buffer.getInt();
@@ -708,7 +1315,11 @@ public class TableResourceManager extends ResourceManager {
 				bld.append(buffer.getChar());
 			}
 
-			schema.addColumn(ColumnSchema.createColumnSchema(bld.toString(), type, nullable, unique));
+			if (dictionary && !type.isFixLength()) {
+				throw new PageFormatException("Column " + i + " is dictionary encoded, but not of fix length.");
+			}
+
+			schema.addColumn(ColumnSchema.createColumnSchema(bld.toString(), type, nullable, unique, dictionary));
 		}
 
 		// done
@@ -761,6 +1372,9 @@ public class TableResourceManager extends ResourceManager {
 			if (cs.isUnique()) {
 				attribs |= TABLE_HEADER_COLUMN_ATTRIBUTE_UNIQUE_MASK;
 			}
+			if (cs.isDictionaryEncoded()) {
+				attribs |= TABLE_HEADER_COLUMN_ATTRIBUTE_DICTIONARY_MASK;
+			}
 			buffer.putInt(attribs);
 
 			// get the name and check it
@@ -905,4 +1519,32 @@ public class TableResourceManager extends ResourceManager {
 		}
 	}
 
+	/**
+	 * Writes the given buffers with a single gathered write into the given channel, starting
+	 * at the given position. Seeking and writing happen under the channel's lock, so that
+	 * concurrent gathered writes and reads do not move the position under each other.
+	 * This method blocks until all bytes are written.
+	 * 
+	 * @param channel
+	 *        The file channel to write to.
+	 * @param buffers
+	 *        The buffers containing the data to be written.
+	 * @param position
+	 *        The position in the file channel to write the data to.
+	 * @throws IOException
+	 *         Thrown, when any I/O error occurred during the writing.
+	 */
+	private static void writeBuffers(FileChannel channel, ByteBuffer[] buffers, long position) throws IOException {
+		synchronized (channel) {
+			channel.position(position);
+			int first = 0;
+			while (first < buffers.length) {
+				channel.write(buffers, first, buffers.length - first);
+				while (first < buffers.length && !buffers[first].hasRemaining()) {
+					first++;
+				}
+			}
+		}
+	}
+
 }
@@ -0,0 +1,413 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.PageExpiredException;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
+
+
+/**
+ * A summary of the minimal and maximal value of each column on each data page of a table
+ * (a zone map). A table scan checks its predicates against the summaries and skips all pages,
+ * or runs of pages, where no tuple can possibly qualify, without fetching them through the
+ * buffer pool.
+ * <p>
+ * Summaries are kept only for columns of fix length types. A page without a valid summary
+ * is never skipped. The summary of a page is recomputed whenever the page is written to the
+ * resource, and invalidated when a new page is reserved. Deleting tuples from a page never
+ * makes its summary wrong, it merely makes it less tight until the page is written again.
+ * Tuples added to a page in the buffer pool widen its summary right away, through
+ * {@link #includeTuple(int, DataTuple)}, because the table resource manager hands out all
+ * pages wrapped in a {@link SummarizedTablePage}.
+ * <p>
+ * Minimum and maximum only consider non-NULL values. A page whose values in a column are all
+ * NULL has no range for that column, and is skipped by any predicate on that column, because
+ * predicates never evaluate to true on NULL values.
+ */
+public class TableZoneMap
+{
+	/**
+	 * The schema of the summarized table.
+	 */
+	private final TableSchema schema;
+
+	/**
+	 * The number of the first data page of the table.
+	 */
+	private final int firstPageNumber;
+
+	/**
+	 * The summaries, indexed by the page number relative to the first data page. Null entries
+	 * mark pages without a valid summary.
+	 */
+	private final List<PageSummary> summaries;
+
+	/**
+	 * The number of bytes that the binary representation of a single page summary occupies.
+	 */
+	private final int summaryBytes;
+
+	/**
+	 * Flag indicating whether the zone map was changed since it was last persisted.
+	 */
+	private boolean modified;
+
+
+	/**
+	 * Creates a new zone map for a table without any valid page summaries.
+	 *
+	 * @param schema The schema of the table.
+	 * @param firstPageNumber The number of the first data page of the table.
+	 */
+	public TableZoneMap(TableSchema schema, int firstPageNumber)
+	{
+		this.schema = schema;
+		this.firstPageNumber = firstPageNumber;
+		this.summaries = new ArrayList<PageSummary>();
+
+		int bytes = 1;
+		for (int i = 0; i < schema.getNumberOfColumns(); i++) {
+			DataType type = schema.getColumn(i).getDataType();
+			if (type.isFixLength()) {
+				bytes += 1 + 2 * type.getNumberOfBytes();
+			}
+		}
+		this.summaryBytes = bytes;
+	}
+
+	// ------------------------------------------------------------------------
+	//                              Maintenance
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Recomputes the summary of the given page from the tuples it contains.
+	 *
+	 * @param page The page to summarize.
+	 * @throws PageTupleAccessException Thrown, if the tuples of the page could not be accessed.
+	 * @throws PageExpiredException Thrown, if the page is expired.
+	 */
+	public void updatePage(TablePage page) throws PageTupleAccessException, PageExpiredException
+	{
+		int numCols = this.schema.getNumberOfColumns();
+		long bitmap = numCols >= 64 ? -1L : (0x1L << numCols) - 1;
+
+		PageSummary summary = new PageSummary(numCols);
+		TupleIterator iter = page.getIterator(numCols, bitmap);
+		while (iter.hasNext()) {
+			summary.include(iter.next());
+		}
+
+		synchronized (this) {
+			setSummary(page.getPageNumber(), summary);
+		}
+	}
+
+	/**
+	 * Widens the summary of the given page such that it covers the given tuple. Has no
+	 * effect, if the page has no valid summary.
+	 *
+	 * @param pageNumber The number of the page that the tuple was added to.
+	 * @param tuple The added tuple.
+	 */
+	public synchronized void includeTuple(int pageNumber, DataTuple tuple)
+	{
+		int index = pageNumber - this.firstPageNumber;
+		if (index >= 0 && index < this.summaries.size() && this.summaries.get(index) != null) {
+			this.summaries.get(index).include(tuple);
+			this.modified = true;
+		}
+	}
+
+	/**
+	 * Marks the summary of the given page as invalid, so that the page is never skipped.
+	 *
+	 * @param pageNumber The number of the page.
+	 */
+	public synchronized void invalidatePage(int pageNumber)
+	{
+		setSummary(pageNumber, null);
+	}
+
+	/**
+	 * Removes all page summaries.
+	 */
+	public synchronized void truncate()
+	{
+		this.summaries.clear();
+		this.modified = true;
+	}
+
+	/**
+	 * Checks whether the zone map was changed since it was last persisted.
+	 *
+	 * @return True, if the zone map was modified, false otherwise.
+	 */
+	public synchronized boolean isModified()
+	{
+		return this.modified;
+	}
+
+	// ------------------------------------------------------------------------
+	//                               Skipping
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Checks whether the given page may contain tuples that pass all of the given predicates.
+	 *
+	 * @param pageNumber The number of the page.
+	 * @param preds The conjunctively connected predicates. May be null.
+	 * @return False, if no tuple on the page can pass the predicates, true otherwise.
+	 */
+	public synchronized boolean mayContainMatches(int pageNumber, LowLevelPredicate[] preds)
+	{
+		if (preds == null || preds.length == 0) {
+			return true;
+		}
+
+		int index = pageNumber - this.firstPageNumber;
+		if (index < 0 || index >= this.summaries.size()) {
+			return true;
+		}
+		PageSummary summary = this.summaries.get(index);
+		if (summary == null) {
+			return true;
+		}
+
+		for (int i = 0; i < preds.length; i++) {
+			int col = preds[i].getColumnIndex();
+			if (!this.schema.getColumn(col).getDataType().isFixLength()) {
+				continue;
+			}
+			if (summary.min[col] == null || !preds[i].mayMatchRange(summary.min[col], summary.max[col])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the next page, starting at the given page, that may contain tuples passing all
+	 * of the given predicates. All pages in between can be skipped by a scan.
+	 *
+	 * @param pageNumber The number of the page where to start searching.
+	 * @param lastPageNumber The number of the last page to consider.
+	 * @param preds The conjunctively connected predicates. May be null.
+	 * @return The number of the next candidate page, or <code>lastPageNumber + 1</code>, if
+	 *         none of the remaining pages can contain matches.
+	 */
+	public synchronized int getNextCandidatePage(int pageNumber, int lastPageNumber, LowLevelPredicate[] preds)
+	{
+		while (pageNumber <= lastPageNumber && !mayContainMatches(pageNumber, preds)) {
+			pageNumber++;
+		}
+		return pageNumber;
+	}
+
+	// ------------------------------------------------------------------------
+	//                            Serialization
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the number of bytes needed to serialize this zone map.
+	 *
+	 * @return The number of bytes for the binary representation.
+	 */
+	public synchronized int getNumberOfBytes()
+	{
+		return 4 + this.summaries.size() * this.summaryBytes;
+	}
+
+	/**
+	 * Writes the binary representation of this zone map into the given buffer and marks it
+	 * as not modified. The representation is the number of pages, followed by a fix length
+	 * record for each page. The record consists of a validity byte and, for each column of
+	 * fix length type, a byte telling whether a range is present, followed by minimum and
+	 * maximum.
+	 *
+	 * @param buffer The buffer to write to.
+	 * @param offset The offset in the buffer where to start writing.
+	 * @return The number of bytes written.
+	 */
+	public synchronized int encodeBinary(byte[] buffer, int offset)
+	{
+		int num = this.summaries.size();
+		buffer[offset    ] = (byte) num;
+		buffer[offset + 1] = (byte) (num >>> 8);
+		buffer[offset + 2] = (byte) (num >>> 16);
+		buffer[offset + 3] = (byte) (num >>> 24);
+
+		int pos = offset + 4;
+		for (int p = 0; p < num; p++) {
+			PageSummary summary = this.summaries.get(p);
+			int recordEnd = pos + this.summaryBytes;
+
+			if (summary == null) {
+				while (pos < recordEnd) {
+					buffer[pos++] = 0;
+				}
+				continue;
+			}
+
+			buffer[pos++] = 1;
+			for (int c = 0; c < this.schema.getNumberOfColumns(); c++) {
+				DataType type = this.schema.getColumn(c).getDataType();
+				if (!type.isFixLength()) {
+					continue;
+				}
+
+				int width = type.getNumberOfBytes();
+				if (summary.min[c] == null) {
+					buffer[pos] = 0;
+					for (int i = 1; i <= 2 * width; i++) {
+						buffer[pos + i] = 0;
+					}
+				}
+				else {
+					buffer[pos] = 1;
+					summary.min[c].encodeBinary(buffer, pos + 1);
+					summary.max[c].encodeBinary(buffer, pos + 1 + width);
+				}
+				pos += 1 + 2 * width;
+			}
+		}
+
+		this.modified = false;
+		return pos - offset;
+	}
+
+	/**
+	 * Reads a zone map from its binary representation, as written by
+	 * {@link #encodeBinary(byte[], int)}.
+	 *
+	 * @param schema The schema of the summarized table.
+	 * @param firstPageNumber The number of the first data page of the table.
+	 * @param buffer The buffer holding the binary representation.
+	 * @param offset The offset where the representation starts.
+	 * @return The zone map.
+	 * @throws PageFormatException Thrown, if the binary data does not describe a valid zone map.
+	 */
+	public static TableZoneMap decodeBinary(TableSchema schema, int firstPageNumber, byte[] buffer, int offset)
+	throws PageFormatException
+	{
+		TableZoneMap map = new TableZoneMap(schema, firstPageNumber);
+
+		int num = (buffer[offset] & 0xff) | ((buffer[offset + 1] & 0xff) << 8) |
+		          ((buffer[offset + 2] & 0xff) << 16) | ((buffer[offset + 3] & 0xff) << 24);
+		if (num < 0 || offset + 4 + ((long) num) * map.summaryBytes > buffer.length) {
+			throw new PageFormatException("Invalid number of page summaries: " + num);
+		}
+
+		int numCols = schema.getNumberOfColumns();
+		int pos = offset + 4;
+		for (int p = 0; p < num; p++) {
+			if (buffer[pos] == 0) {
+				map.summaries.add(null);
+				pos += map.summaryBytes;
+				continue;
+			}
+			pos++;
+
+			PageSummary summary = new PageSummary(numCols);
+			for (int c = 0; c < numCols; c++) {
+				DataType type = schema.getColumn(c).getDataType();
+				if (!type.isFixLength()) {
+					continue;
+				}
+
+				int width = type.getNumberOfBytes();
+				if (buffer[pos] != 0) {
+					summary.min[c] = type.getFromBinary(buffer, pos + 1);
+					summary.max[c] = type.getFromBinary(buffer, pos + 1 + width);
+				}
+				pos += 1 + 2 * width;
+			}
+			map.summaries.add(summary);
+		}
+
+		return map;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Sets the summary for the given page, growing the list of summaries as needed.
+	 *
+	 * @param pageNumber The number of the page.
+	 * @param summary The summary, or null, to mark the page as not summarized.
+	 */
+	private void setSummary(int pageNumber, PageSummary summary)
+	{
+		int index = pageNumber - this.firstPageNumber;
+		if (index < 0) {
+			return;
+		}
+
+		while (this.summaries.size() <= index) {
+			this.summaries.add(null);
+		}
+		this.summaries.set(index, summary);
+		this.modified = true;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The minimal and maximal non-NULL values of all columns on a single page.
+	 */
+	private static final class PageSummary
+	{
+		/**
+		 * The minimal values per column. Null, if the column has no non-NULL value on the page.
+		 */
+		private final DataField[] min;
+
+		/**
+		 * The maximal values per column. Null, if the column has no non-NULL value on the page.
+		 */
+		private final DataField[] max;
+
+		/**
+		 * Creates an empty summary for the given number of columns.
+		 *
+		 * @param numCols The number of columns.
+		 */
+		private PageSummary(int numCols)
+		{
+			this.min = new DataField[numCols];
+			this.max = new DataField[numCols];
+		}
+
+		/**
+		 * Widens the ranges such that they cover the values of the given tuple.
+		 *
+		 * @param tuple The tuple to cover.
+		 */
+		private void include(DataTuple tuple)
+		{
+			for (int c = 0; c < this.min.length; c++) {
+				DataField value = tuple.getField(c);
+				if (value == null || value.isNULL()) {
+					continue;
+				}
+
+				if (this.min[c] == null) {
+					this.min[c] = value;
+					this.max[c] = value;
+				}
+				else if (value.compareTo(this.min[c]) < 0) {
+					this.min[c] = value;
+				}
+				else if (value.compareTo(this.max[c]) > 0) {
+					this.max[c] = value;
+				}
+			}
+		}
+	}
+}
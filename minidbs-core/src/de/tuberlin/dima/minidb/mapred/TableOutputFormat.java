@@ -1,8 +1,6 @@
 package de.tuberlin.dima.minidb.mapred;
 
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Writable;
@@ -13,12 +11,10 @@ import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 
 import de.tuberlin.dima.minidb.DBInstance;
+import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
 import de.tuberlin.dima.minidb.core.DataTuple;
-import de.tuberlin.dima.minidb.io.cache.CacheableData;
-import de.tuberlin.dima.minidb.io.cache.PageExpiredException;
 import de.tuberlin.dima.minidb.io.cache.PageFormatException;
-import de.tuberlin.dima.minidb.io.tables.TablePage;
-import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TableBulkLoader;
 
 /**
  * OutputFormat that can write DataTuples to the MiniDBS table files. 
@@ -109,109 +105,27 @@ public class TableOutputFormat extends OutputFormat<Writable, DataTuple> {
 		
 		// Try to open the resource manager for the provided table.
 		final String table_name = context.getConfiguration().get(OUTPUT_TABLE_NAME);
-		final TableResourceManager res = used_instance.getCatalogue().
-				getTable(table_name).getResourceManager();
+		final TableDescriptor table = used_instance.getCatalogue().getTable(table_name);
 		
 		// Read the configuration parameters.
 		final int batchSize = context.getConfiguration().getInt(OUTPUT_BATCH_SIZE, 16);
 		
+		// The bulk loader formats the pages and writes them on its own I/O thread.
+		final TableBulkLoader loader = table.getResourceManager().createBulkLoader(table.getStatistics(), batchSize);
+		
 		return new RecordWriter<Writable, DataTuple>() {
 			
-			// Byte buffer to keep the content of a whole batch of buffers.
-			private byte[][] pageBuffers = new byte[batchSize][res.getPageSize().getNumberOfBytes()];
-			private int activePageInBuffer = -1;
-			private int[] pageNumbers = new int[batchSize];
-			
-			// List of currently active worker threads.
-			List<Thread> ioThreads = new LinkedList<>();
-			
-			private TablePage activePage = null;
-			
 			@Override
 			public void close(TaskAttemptContext context) throws IOException,
 					InterruptedException {
-				Thread io_thread = materializeActiveBuffers();
-				if (io_thread != null) {
-					io_thread.start();
-					ioThreads.add(io_thread);
-				}
-				// Wait for all io worker threads.
-				for (Thread thread : ioThreads) {
-					thread.join();
-				}
-			}
-			
-			private Thread materializeActiveBuffers() throws IOException {
-				if (activePageInBuffer == -1) return null;
-				// Make a copy of the buffers that will be materialized.
-				final int actual_batch_size = activePageInBuffer + 1;
-				final byte[][] buffers = new byte[actual_batch_size][];
-				for (int i = 0; i < actual_batch_size; ++i) {
-					buffers[i] = pageBuffers[i];
-				}
-				// Now extract the Cacheable data wrappers.
-				final CacheableData wrappers[] = new CacheableData[actual_batch_size];
-				for (int i=0; i<actual_batch_size; ++i) {
-					final int pageNr = pageNumbers[i];
-					wrappers[i] = new CacheableData() {
-						@Override
-						public void markExpired() {}
-						@Override
-						public boolean isExpired() {
-							return false;
-						}
-						@Override
-						public boolean hasBeenModified() throws PageExpiredException {
-							return false;
-						}
-						@Override
-						public int getPageNumber() throws PageExpiredException {
-							return pageNr;
-						}
-						@Override
-						public byte[] getBuffer() {
-							return null;
-						}
-					};
-				}
-				// Now return a thread that will materialize the provided bufferrs.
-				return new Thread(new Runnable() {
-					@Override
-					public void run() {
-						try {
-							res.writePagesToResource(buffers, wrappers);
-						} catch (IOException e) {
-							e.printStackTrace();
-						}
-					}
-				});
+				loader.close();
 			}
 
 			@Override
 			public void write(Writable key, DataTuple tuple)
 					throws IOException, InterruptedException {
 				try {
-					if (activePage == null || !activePage.insertTuple(tuple)) {
-						// Allocate a new page.
-						if (activePageInBuffer == (batchSize - 1)) {
-							// Materialize the buffer.
-							Thread io_thread = materializeActiveBuffers();
-							io_thread.start();
-							ioThreads.add(io_thread);
-							// Now allocate new buffers.
-							pageBuffers = new byte[batchSize][res.getPageSize().getNumberOfBytes()];
-							activePageInBuffer = 0;
-						} else {
-							activePageInBuffer++;
-						}
-						// Build a new page.
-						activePage = res.reserveNewPage(pageBuffers[activePageInBuffer]);
-						pageNumbers[activePageInBuffer] = activePage.getPageNumber();
-						// Try inserting into the new page.
-						if (!activePage.insertTuple(tuple)) {
-							throw new RuntimeException("Error inserting tuple into empty page. (Pagesize seems to small)");
-						}
-					}
+					loader.append(tuple);
 				} catch (PageFormatException e) {
 					throw new RuntimeException(e);
 				}
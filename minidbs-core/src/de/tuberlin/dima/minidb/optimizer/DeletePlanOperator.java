@@ -0,0 +1,190 @@
+package de.tuberlin.dima.minidb.optimizer;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.IndexDescriptor;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.HashIndex;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.qexec.OperatorFactory;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+import de.tuberlin.dima.minidb.semantics.BaseTableAccess;
+import de.tuberlin.dima.minidb.semantics.Column;
+import de.tuberlin.dima.minidb.semantics.ProducedColumn;
+import de.tuberlin.dima.minidb.semantics.Relation;
+
+
+/**
+ * Optimizer representation of a DELETE operator. The child produces the RIDs of the tuples
+ * to delete in its first column. The delete removes the tuples from the table and their
+ * entries from the B-Tree and hash indexes of the table, and produces a single tuple with the
+ * number of deleted tuples.
+ */
+public class DeletePlanOperator extends OptimizerPlanOperator
+{
+	/**
+	 * The child of this operator producing the RIDs of the tuples to delete.
+	 */
+	private final OptimizerPlanOperator childOperator;
+
+	/**
+	 * The table from which the tuples are deleted.
+	 */
+	private final BaseTableAccess table;
+
+	/**
+	 * The indexes of the table, from which the entries are deleted.
+	 */
+	private final IndexDescriptor[] indexes;
+
+	/**
+	 * The column holding the number of deleted tuples.
+	 */
+	private final ProducedColumn countColumn;
+
+
+	/**
+	 * Creates a new DELETE operator.
+	 *
+	 * @param childOperator The child of this operator producing the RIDs of the tuples to delete.
+	 * @param table The table from which the tuples are deleted.
+	 * @param indexes All indexes of the table.
+	 */
+	public DeletePlanOperator(OptimizerPlanOperator childOperator, BaseTableAccess table,
+			IndexDescriptor[] indexes)
+	{
+		this.childOperator = childOperator;
+		this.table = table;
+		this.indexes = indexes;
+		this.countColumn = new ProducedColumn(table, DataType.bigIntType(), 0, "DELETED", null);
+	}
+
+
+	/**
+	 * Gets the child of this plan operator.
+	 *
+	 * @return The child operator of the DELETE.
+	 */
+	public OptimizerPlanOperator getChild()
+	{
+		return this.childOperator;
+	}
+
+	/**
+	 * Gets the indexes from which the entries of the deleted tuples are removed.
+	 *
+	 * @return The indexes of the table.
+	 */
+	public IndexDescriptor[] getIndexes()
+	{
+		return this.indexes;
+	}
+
+	/**
+	 * Gets the column holding the number of deleted tuples, which is the only column that
+	 * the operator produces.
+	 *
+	 * @return The column with the number of deleted tuples.
+	 */
+	public ProducedColumn getCountColumn()
+	{
+		return this.countColumn;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator#getName()
+	 */
+	@Override
+	public String getName()
+	{
+		return "Delete";
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator#getChildren()
+	 */
+	@Override
+	public Iterator<OptimizerPlanOperator> getChildren()
+	{
+		return Collections.singleton(this.childOperator).iterator();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator#getOutputCardinality()
+	 */
+	@Override
+	public long getOutputCardinality()
+	{
+		return 1;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator#getInvolvedRelations()
+	 */
+	@Override
+	public Set<Relation> getInvolvedRelations()
+	{
+		return this.childOperator.getInvolvedRelations();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator#getReturnedColumns()
+	 */
+	@Override
+	public Column[] getReturnedColumns()
+	{
+		return new Column[] { this.countColumn };
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator#getColumnOrder()
+	 */
+	@Override
+	public OrderedColumn[] getColumnOrder()
+	{
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator#createPhysicalPlan(de.tuberlin.dima.minidb.io.manager.BufferPoolManager, de.tuberlin.dima.minidb.qexec.heap.QueryHeap)
+	 */
+	@Override
+	public PhysicalPlanOperator createPhysicalPlan(BufferPoolManager buffer, QueryHeap heap)
+	{
+		PhysicalPlanOperator childPlan = this.childOperator.createPhysicalPlan(buffer, heap);
+
+		List<BTreeIndex> btrees = new ArrayList<BTreeIndex>();
+		List<int[]> keyColumns = new ArrayList<int[]>();
+		List<HashIndex> hashIndexes = new ArrayList<HashIndex>();
+		List<Integer> hashColumns = new ArrayList<Integer>();
+
+		AbstractExtensionFactory factory = AbstractExtensionFactory.getExtensionFactory();
+		for (IndexDescriptor index : this.indexes) {
+			if (index.isHashIndex()) {
+				hashIndexes.add(factory.createHashIndex(index.getHashResourceManager(), buffer, index.getResourceId()));
+				hashColumns.add(index.getSchema().getColumnNumber());
+			}
+			else {
+				btrees.add(factory.createConcurrentBTreeIndex(index.getSchema(), buffer, index.getResourceId()));
+				keyColumns.add(index.getSchema().getColumnNumbers());
+			}
+		}
+
+		int[] hashColumnNumbers = new int[hashColumns.size()];
+		for (int i = 0; i < hashColumnNumbers.length; i++) {
+			hashColumnNumbers[i] = hashColumns.get(i);
+		}
+
+		return OperatorFactory.createDeleteOperator(buffer, this.table.getTable().getResourceId(),
+				btrees.toArray(new BTreeIndex[btrees.size()]), keyColumns.toArray(new int[keyColumns.size()][]),
+				hashIndexes.toArray(new HashIndex[hashIndexes.size()]), hashColumnNumbers, childPlan);
+	}
+}
@@ -6,6 +6,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
+import de.tuberlin.dima.minidb.Constants;
 import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
 import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
 import de.tuberlin.dima.minidb.qexec.OperatorFactory;
@@ -18,6 +19,15 @@ import de.tuberlin.dima.minidb.semantics.Relation;
 
 /**
  * The optimizer representation of a FETCH operator that accesses a table based on a RID.
+ * <p>
+ * In the classic case, the child produces only the RID (for example an index lookup). For
+ * late materialization, the child may produce further columns next to the RID of the
+ * accessed table, such as predicate or join columns read early by a RID producing table
+ * scan. Those columns are carried through and only the remaining ones are fetched.
+ * <p>
+ * A FETCH whose child produces only RIDs may sort the RIDs before it accesses the table. It
+ * then reads each page once and in ascending order, instead of one random access per RID,
+ * at the price of losing the order of the child.
  * 
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
@@ -48,36 +58,84 @@ public class FetchPlanOperator extends OptimizerPlanOperator
 	 */
 	private Set<Relation> involvedRelations;
 	
+	/**
+	 * The position of the accessed table's RID in the child's tuples.
+	 */
+	private int ridPosition;
+	
+	/**
+	 * Flag indicating whether the RIDs are sorted before the table is accessed.
+	 */
+	private boolean sortRIDs;
+	
 	
 	/**
 	 * Creates a new Fetch operator that retrieves the given columns from a table, 
 	 * based on the RIDs from the child.
 	 * 
 	 * @param child The child of this FETCH operator.
-	 * @param colsToFetch The columns that should be put out.
+	 * @param accessedTable The table from which the tuples are fetched.
+	 * @param colsToFetch The columns that should be put out. They are either columns
+	 *                    of the accessed table or columns returned by the child.
 	 */
 	public FetchPlanOperator(OptimizerPlanOperator child, BaseTableAccess accessedTable, Column[] colsToFetch)
+	{
+		this(child, accessedTable, colsToFetch, false);
+	}
+	
+	/**
+	 * Creates a new Fetch operator that retrieves the given columns from a table, 
+	 * based on the RIDs from the child, optionally sorting the RIDs first.
+	 * 
+	 * @param child The child of this FETCH operator.
+	 * @param accessedTable The table from which the tuples are fetched.
+	 * @param colsToFetch The columns that should be put out. They are either columns
+	 *                    of the accessed table or columns returned by the child.
+	 * @param sortRIDs Flag indicating whether to sort the RIDs before accessing the table.
+	 *                 Only possible if the child produces nothing but the RIDs.
+	 */
+	public FetchPlanOperator(OptimizerPlanOperator child, BaseTableAccess accessedTable, Column[] colsToFetch,
+			boolean sortRIDs)
 	{
 		this.childOperator = child;
+		this.sortRIDs = sortRIDs;
 		this.tableAccess = accessedTable;
 		this.accessedTable = accessedTable.getTable();
 		this.outputCols = colsToFetch;
 		
 		// do some sanity checks
 		Column[] childCols = child.getReturnedColumns();
-		if (childCols == null || childCols.length != 1 || !childCols[0].isRID()) {
+		this.ridPosition = -1;
+		if (childCols != null) {
+			for (int i = 0; i < childCols.length; i++) {
+				if (childCols[i].isRID() && (childCols.length == 1 || childCols[i].getRelation() == accessedTable)) {
+					if (this.ridPosition != -1) {
+						throw new IllegalArgumentException("Child produces more than one RID column for the table.");
+					}
+					this.ridPosition = i;
+				}
+			}
+		}
+		if (this.ridPosition == -1) {
 			throw new IllegalArgumentException("Child does not produce tuples with RID column.");
 		}
 			
 		for (Column col : colsToFetch) {
 			Relation rel = col.getRelation();
-			if (!(rel instanceof BaseTableAccess && rel == accessedTable)) {
+			if (!(rel instanceof BaseTableAccess && rel == accessedTable) && indexOf(childCols, col) == -1) {
 				throw new IllegalArgumentException("Produced columns involve columns from another table.");
 			}
 		}
 		
+		if (sortRIDs && childCols.length > 1) {
+			throw new IllegalArgumentException("Only a FETCH whose child produces nothing but RIDs can sort them.");
+		}
+		
 		this.involvedRelations = new HashSet<Relation>(2);
 		this.involvedRelations.add(accessedTable);
+		if (childCols.length > 1) {
+			this.involvedRelations.addAll(child.getInvolvedRelations());
+		}
 	}
 	
 	/**
@@ -110,6 +168,27 @@ public class FetchPlanOperator extends OptimizerPlanOperator
 		return this.accessedTable;
 	}
 	
+	/**
+	 * Checks if this FETCH carries columns from its child through, in addition to the
+	 * RID, meaning it is the deferred FETCH of a late materialized plan.
+	 * 
+	 * @return True, if the child produces other columns than the RID.
+	 */
+	public boolean isDeferredFetch()
+	{
+		return this.childOperator.getReturnedColumns().length > 1;
+	}
+	
+	/**
+	 * Checks if this FETCH sorts the RIDs from its child before it accesses the table.
+	 * 
+	 * @return True, if the RIDs are sorted first.
+	 */
+	public boolean isRIDSortedFetch()
+	{
+		return this.sortRIDs;
+	}
+	
 	
 	/* (non-Javadoc)
 	 * @see de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator#getName()
@@ -117,7 +196,7 @@ public class FetchPlanOperator extends OptimizerPlanOperator
 	@Override
 	public String getName()
 	{
-		return "Fetch";
+		return this.sortRIDs ? "RID Sorted Fetch" : "Fetch";
 	}
 
 	/* (non-Javadoc)
@@ -165,10 +244,26 @@ public class FetchPlanOperator extends OptimizerPlanOperator
 	{
 		PhysicalPlanOperator childPlan = this.childOperator.createPhysicalPlan(buffer, heap);
 		
+		if (isDeferredFetch()) {
+			Column[] childCols = this.childOperator.getReturnedColumns();
+			int[] childColumnMap = new int[this.outputCols.length];
+			int[] fetchedColumnMap = new int[this.outputCols.length];
+			for (int i = 0; i < this.outputCols.length; i++) {
+				childColumnMap[i] = indexOf(childCols, this.outputCols[i]);
+				fetchedColumnMap[i] = childColumnMap[i] == -1 ? this.outputCols[i].getColumnIndex() : -1;
+			}
+			return OperatorFactory.createDeferredFetchOperator(childPlan, buffer,
+					this.accessedTable.getResourceId(), this.ridPosition, childColumnMap, fetchedColumnMap);
+		}
+		
 		int[] colIndices = new int[this.outputCols.length];
 		for (int i = 0; i < this.outputCols.length; i++) {
 			colIndices[i] = this.outputCols[i].getColumnIndex();
 		}
+		if (this.sortRIDs) {
+			return OperatorFactory.createRIDSortedFetchOperator(childPlan, buffer,
+					this.accessedTable.getResourceId(), colIndices, Constants.DEFAULT_PREFETCHING_LENGTH);
+		}
 		return OperatorFactory.createFetchOperator(childPlan, buffer, 
 				this.accessedTable.getResourceId(), colIndices);
 	}
@@ -179,6 +274,11 @@ public class FetchPlanOperator extends OptimizerPlanOperator
 	@Override
 	public OrderedColumn[] getColumnOrder()
 	{
+		if (this.sortRIDs) {
+			// the tuples come in RID order, which is no order after the fetch
+			return null;
+		}
+		
 		OrderedColumn[] oc = this.childOperator.getColumnOrder();
 		
 		// this operator preserves the order from the child
@@ -194,14 +294,36 @@ public class FetchPlanOperator extends OptimizerPlanOperator
 	
 	/**
 	 * Checks if this FETCH operator is performing a sequential access on the table
-	 * because it receives the RIDs in a sorted way.
+	 * because it receives the RIDs in a sorted way. That is also the case if the child
+	 * is a RID producing table scan, which returns the RIDs in table order, and if
+	 * this FETCH sorts the RIDs itself.
 	 * 
 	 * @return True, if the FETCH accesses the table in a sequential way.
 	 */
 	public boolean isSequentialFetch()
 	{
+		if (this.sortRIDs || this.childOperator instanceof TableScanPlanOperator) {
+			return true;
+		}
 		OrderedColumn[] oc = this.childOperator.getColumnOrder();
 		return oc != null && oc.length == 1 && oc[0].isSingleColumn() && oc[0].getColumns()[0].isRID();
 	}
+	
+	/**
+	 * Finds the position of a column in an array of columns.
+	 * 
+	 * @param cols The columns to search.
+	 * @param col The column to find.
+	 * @return The position of the column, or -1, if it is not contained.
+	 */
+	private static int indexOf(Column[] cols, Column col)
+	{
+		for (int i = 0; i < cols.length; i++) {
+			if (cols[i].equals(col)) {
+				return i;
+			}
+		}
+		return -1;
+	}
 
 }
@@ -76,6 +76,24 @@ public class GroupByPlanOperator extends OptimizerPlanOperator
 	public GroupByPlanOperator(OptimizerPlanOperator child, ProducedColumn[] outCols,
 			int[] groupColIndices, int[] aggColIndices, int outCardinality)
 	throws OptimizerException
+	{
+		this(child, outCols, groupColIndices, aggColIndices, outCardinality, true);
+	}
+	
+	/**
+	 * Creates a group by operator that requires its input either sorted on all grouping columns,
+	 * in which case it preserves that order, or in no order at all, in which case it produces
+	 * its tuples in no particular order.
+	 * 
+	 * @param outCols
+	 * @param groupColIndices
+	 * @param aggColIndices
+	 * @param outCardinality
+	 * @param inputSorted True, if the input must be sorted on all grouping columns.
+	 */
+	protected GroupByPlanOperator(OptimizerPlanOperator child, ProducedColumn[] outCols,
+			int[] groupColIndices, int[] aggColIndices, int outCardinality, boolean inputSorted)
+	throws OptimizerException
 	{
 		this.child = child;
 		this.prodCols = outCols;
@@ -89,6 +107,10 @@ public class GroupByPlanOperator extends OptimizerPlanOperator
 			this.outColumns[i] = new Column(outCols[i].getRelation(), outCols[i].getOutputDataType(), i);
 		}
 		
+		if (!inputSorted) {
+			return;
+		}
+		
 		Column[] inputCols = child.getReturnedColumns();
 		OrderedColumn[] childOrder = child.getColumnOrder();
 		
@@ -233,18 +255,53 @@ public class GroupByPlanOperator extends OptimizerPlanOperator
 		// translate the child first
 		PhysicalPlanOperator childPlan = this.child.createPhysicalPlan(buffer, heap);
 		
-		// build the arrays with the aggregate functions and the aggregate data types
+		// build the arrays with the aggregate and grouping output positions
+		int[] groupOutPos = new int[this.prodCols.length];
+		int[] aggOutPos = new int[this.prodCols.length];
+		getOutputPositions(groupOutPos, aggOutPos);
+		
+		// now add this operator
+		return OperatorFactory.createGroupByOperator(childPlan, this.groupColIndices, this.aggColIndices,
+				getAggregationFunctions(), getAggregationTypes(), groupOutPos, aggOutPos);
+	}
+	
+	/**
+	 * Gets the aggregate functions of the aggregation columns.
+	 * 
+	 * @return The aggregate functions, in the order of the aggregation column indices.
+	 */
+	protected OutputColumn.AggregationType[] getAggregationFunctions()
+	{
 		OutputColumn.AggregationType[] aggFunct = new OutputColumn.AggregationType[this.aggColIndices.length];
+		for (int i = 0; i < this.aggColIndices.length; i++) {
+			aggFunct[i] = this.prodCols[this.aggColIndices[i]].getAggregationFunction();
+		}
+		return aggFunct;
+	}
+	
+	/**
+	 * Gets the data types of the aggregated values.
+	 * 
+	 * @return The data types, in the order of the aggregation column indices.
+	 */
+	protected DataType[] getAggregationTypes()
+	{
 		DataType[] aggType = new DataType[this.aggColIndices.length];
 		for (int i = 0; i < this.aggColIndices.length; i++) {
-			ProducedColumn pc = this.prodCols[this.aggColIndices[i]];
-			aggFunct[i] = pc.getAggregationFunction();
-			aggType[i] = pc.getOutputDataType();
+			aggType[i] = this.prodCols[this.aggColIndices[i]].getOutputDataType();
 		}
-		
-		// build the arrays with the aggregate and grouping output positions
-		int[] groupOutPos = new int[this.prodCols.length];
-		int[] aggOutPos = new int[this.prodCols.length];
+		return aggType;
+	}
+	
+	/**
+	 * Fills the maps describing at which positions of the output tuple the grouping columns
+	 * and the aggregated columns are put.
+	 * 
+	 * @param groupOutPos The map for the grouping columns, as long as the produced columns.
+	 * @param aggOutPos The map for the aggregated columns, as long as the produced columns.
+	 */
+	protected void getOutputPositions(int[] groupOutPos, int[] aggOutPos)
+	{
 		for (int i = 0, gi = 0, ai = 0; i < groupOutPos.length; i++) {
 			ProducedColumn pc = this.prodCols[i];
 			if (pc.getAggregationFunction() == OutputColumn.AggregationType.NONE) {
@@ -256,10 +313,6 @@ public class GroupByPlanOperator extends OptimizerPlanOperator
 				aggOutPos[i] = ai++;
 			}
 		}
-		
-		// now add this operator
-		return OperatorFactory.createGroupByOperator(childPlan, this.groupColIndices, this.aggColIndices,
-				aggFunct, aggType, groupOutPos, aggOutPos);
 	}
 
 }
@@ -0,0 +1,164 @@
+package de.tuberlin.dima.minidb.optimizer;
+
+
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.ColumnDictionary;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.qexec.OperatorFactory;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+import de.tuberlin.dima.minidb.semantics.BaseTableAccess;
+import de.tuberlin.dima.minidb.semantics.Column;
+import de.tuberlin.dima.minidb.semantics.ProducedColumn;
+
+
+/**
+ * The optimizer plan operator representing a hash based group by operation. Unlike the
+ * sort based group by, it requires no order from its input, and it produces its tuples
+ * in no particular order.
+ * <p>
+ * The group by operator is expected to receive tuples where the order of columns in the
+ * tuples is that of the output tuples.
+ * <p>
+ * With a degree of parallelism above one, the input is repartitioned by the grouping columns
+ * among as many instances of the hash group by, each running in its own thread, and their
+ * groups are gathered. Every group is formed by exactly one instance.
+ * <p>
+ * A serial grouping on a single dictionary encoded column of a base table aggregates into
+ * arrays indexed by the column's dictionary codes instead of a hash table.
+ */
+public class HashGroupByPlanOperator extends GroupByPlanOperator
+{
+	/**
+	 * The number of instances that group in parallel.
+	 */
+	private int degreeOfParallelism = 1;
+	
+	
+	/**
+	 * Creates a new hash group by plan operator.
+	 *
+	 * @param child The child producing the tuples to group.
+	 * @param outCols The columns produced by this operator.
+	 * @param groupColIndices The indices of the grouping columns in the input tuple.
+	 * @param aggColIndices The indices of the aggregation columns in the input tuple.
+	 * @param outCardinality The estimated number of groups.
+	 */
+	public HashGroupByPlanOperator(OptimizerPlanOperator child, ProducedColumn[] outCols,
+			int[] groupColIndices, int[] aggColIndices, int outCardinality)
+	throws OptimizerException
+	{
+		super(child, outCols, groupColIndices, aggColIndices, outCardinality, false);
+	}
+
+	/**
+	 * Gets the number of instances that group in parallel.
+	 *
+	 * @return The degree of parallelism.
+	 */
+	public int getDegreeOfParallelism()
+	{
+		return this.degreeOfParallelism;
+	}
+
+	/**
+	 * Sets the number of instances that group in parallel. Without grouping columns, there is
+	 * only a single group and the operator always runs as one instance.
+	 *
+	 * @param degreeOfParallelism The degree of parallelism to set.
+	 */
+	public void setDegreeOfParallelism(int degreeOfParallelism)
+	{
+		if (degreeOfParallelism < 1) {
+			throw new IllegalArgumentException("The degree of parallelism must be at least one.");
+		}
+		this.degreeOfParallelism = degreeOfParallelism;
+	}
+
+	/**
+	 * Gets the dictionary of the grouping column, if the operator groups on a single column
+	 * that is dictionary encoded in its base table.
+	 *
+	 * @return The dictionary of the grouping column, or null, if there is none.
+	 */
+	public ColumnDictionary getGroupDictionary()
+	{
+		if (getGroupColIndices().length != 1) {
+			return null;
+		}
+
+		Column groupCol = getChild().getReturnedColumns()[getGroupColIndices()[0]];
+		if (groupCol.isRID() || !(groupCol.getRelation() instanceof BaseTableAccess)) {
+			return null;
+		}
+		TableResourceManager table = ((BaseTableAccess) groupCol.getRelation()).getTable().getResourceManager();
+		return table == null ? null : table.getColumnDictionary(groupCol.getColumnIndex());
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.GroupByPlanOperator#getName()
+	 */
+	@Override
+	public String getName()
+	{
+		return "Hash Group By";
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.GroupByPlanOperator#getColumnOrder()
+	 */
+	@Override
+	public OrderedColumn[] getColumnOrder()
+	{
+		// partitions written to temp space are aggregated after the others, so no order is kept
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.GroupByPlanOperator#createPhysicalPlan(de.tuberlin.dima.minidb.io.manager.BufferPoolManager, de.tuberlin.dima.minidb.qexec.heap.QueryHeap)
+	 */
+	@Override
+	public PhysicalPlanOperator createPhysicalPlan(BufferPoolManager buffer, QueryHeap heap)
+	{
+		// translate the child first
+		PhysicalPlanOperator childPlan = getChild().createPhysicalPlan(buffer, heap);
+
+		Column[] inputCols = getChild().getReturnedColumns();
+		DataType[] inputTypes = new DataType[inputCols.length];
+		for (int i = 0; i < inputCols.length; i++) {
+			inputTypes[i] = inputCols[i].getDataType();
+		}
+
+		// build the arrays with the aggregate and grouping output positions
+		int[] groupOutPos = new int[getProducedColumns().length];
+		int[] aggOutPos = new int[getProducedColumns().length];
+		getOutputPositions(groupOutPos, aggOutPos);
+
+		long card = getOutputCardinality();
+		int intCard = card <= Integer.MAX_VALUE ? (int) card : Integer.MAX_VALUE;
+
+		ColumnDictionary dictionary = getGroupDictionary();
+		if (dictionary != null && this.degreeOfParallelism <= 1) {
+			return OperatorFactory.createCodeIndexedGroupByOperator(childPlan, dictionary, getGroupColIndices()[0],
+					getAggColIndices(), getAggregationFunctions(), getAggregationTypes(), groupOutPos, aggOutPos);
+		}
+
+		if (this.degreeOfParallelism > 1 && getGroupColIndices().length > 0) {
+			// one instance per partition of the groups, each expecting its share of them
+			PhysicalPlanOperator[] partitions = OperatorFactory.createHashRepartitionExchangeOperators(
+					new PhysicalPlanOperator[] { childPlan }, getGroupColIndices(), this.degreeOfParallelism);
+			PhysicalPlanOperator[] instances = new PhysicalPlanOperator[partitions.length];
+			for (int i = 0; i < instances.length; i++) {
+				instances[i] = OperatorFactory.createHashGroupByOperator(partitions[i], heap, inputTypes,
+						intCard / this.degreeOfParallelism + 1, getGroupColIndices(), getAggColIndices(),
+						getAggregationFunctions(), getAggregationTypes(), groupOutPos, aggOutPos);
+			}
+			return OperatorFactory.createGatherExchangeOperator(instances);
+		}
+
+		return OperatorFactory.createHashGroupByOperator(childPlan, heap, inputTypes, intCard,
+				getGroupColIndices(), getAggColIndices(), getAggregationFunctions(), getAggregationTypes(),
+				groupOutPos, aggOutPos);
+	}
+}
@@ -0,0 +1,279 @@
+package de.tuberlin.dima.minidb.optimizer;
+
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.qexec.OperatorFactory;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+import de.tuberlin.dima.minidb.semantics.Column;
+import de.tuberlin.dima.minidb.semantics.predicate.JoinPredicate;
+
+
+/**
+ * The optimizer representation of a hybrid HASH JOIN operator that can perform
+ * inner equi-joins. Unlike the merge join, it requires no order from its inputs, and
+ * it produces its tuples in no particular order. The hash table is built on the child
+ * with the smaller estimated output cardinality, the other child probes it.
+ * <p>
+ * With a degree of parallelism above one, the join runs as that many instances, each in its
+ * own thread, whose results are gathered. The probe side is repartitioned by the join columns
+ * among the instances. The build side is repartitioned the same way, unless it is too small to
+ * be worth splitting, in which case every instance gets all of it.
+ */
+public class HashJoinPlanOperator extends AbstractJoinPlanOperator
+{
+	/**
+	 * The indices of the join columns in the left input tuple.
+	 */
+	public final int[] leftJoinColumns;
+
+	/**
+	 * The indices of the join columns in the right input tuple.
+	 */
+	public final int[] rightJoinColumns;
+
+	/**
+	 * The map describing how the left input is copied to the output.
+	 */
+	public final int[] leftOutColMap;
+
+	/**
+	 * The map describing how the right input is copied to the output.
+	 */
+	public final int[] rightOutColMap;
+
+	/**
+	 * The columns produced by this operator.
+	 */
+	private Column[] outCols;
+
+	/**
+	 * The number of instances that join in parallel.
+	 */
+	private int degreeOfParallelism = 1;
+
+
+
+	/**
+	 * Creates a new Hash Join operator that performs an inner equi-join over the
+	 * given inputs, using the join columns as indicated in the arrays.
+	 *
+	 * @param leftChild The left child operator.
+	 * @param rightChild The right child operator.
+	 * @param joinPredicate The predicate that is applied in this join.
+	 * @param leftJoinCols The indices of the join columns in the left input tuple.
+	 * @param rightJoinCols The indices of the join columns in the right input tuple.
+	 * @param leftOutColMap The map describing how the left input is copied to the output.
+	 * @param rightOutColMap The map describing how the right input is copied to the output.
+	 * @param cardinality The output cardinality of the join.
+	 */
+	public HashJoinPlanOperator(OptimizerPlanOperator leftChild, OptimizerPlanOperator rightChild,
+			JoinPredicate joinPredicate, int[] leftJoinCols, int[] rightJoinCols,
+			int[] leftOutColMap, int[] rightOutColMap, long cardinality)
+	throws OptimizerException
+	{
+		super(leftChild, rightChild, joinPredicate);
+
+		this.leftJoinColumns = leftJoinCols;
+		this.rightJoinColumns = rightJoinCols;
+		this.leftOutColMap = leftOutColMap;
+		this.rightOutColMap = rightOutColMap;
+		this.cardinality = cardinality;
+
+		// produce the output columns
+		if (leftOutColMap.length != rightOutColMap.length) {
+			throw new OptimizerException("Output columns maps are invalid.");
+		}
+
+		Column[] leftInputCols = leftChild.getReturnedColumns();
+		Column[] rightInputCols = rightChild.getReturnedColumns();
+
+		this.outCols = new Column[leftOutColMap.length];
+		for (int i = 0; i < this.outCols.length; i++) {
+			int leftIdx = leftOutColMap[i];
+			int rightIdx = rightOutColMap[i];
+			if (leftIdx == -1) {
+				// must be from the right
+				if (rightIdx < 0 || rightIdx >= rightInputCols.length) {
+					throw new IllegalArgumentException();
+				}
+				this.outCols[i] = rightInputCols[rightIdx];
+			}
+			else if (leftIdx < 0 || leftIdx >= leftInputCols.length){
+				throw new IllegalArgumentException();
+			}
+			else {
+				this.outCols[i] = leftInputCols[leftIdx];
+			}
+		}
+
+		if (leftJoinCols.length != rightJoinCols.length) {
+			throw new IllegalArgumentException("Join column index arrays do not match.");
+		}
+	}
+
+	/**
+	 * Checks whether the hash table is built on the left child. That is the case if the
+	 * left child is estimated to produce no more tuples than the right child.
+	 *
+	 * @return True, if the left child is the build side, false if the right child is.
+	 */
+	public boolean isBuildSideLeft()
+	{
+		return this.leftChild.getOutputCardinality() <= this.rightChild.getOutputCardinality();
+	}
+
+	/**
+	 * Gets the child on which the hash table is built.
+	 *
+	 * @return The build side child.
+	 */
+	public OptimizerPlanOperator getBuildChild()
+	{
+		return isBuildSideLeft() ? this.leftChild : this.rightChild;
+	}
+
+	/**
+	 * Gets the number of instances that join in parallel.
+	 *
+	 * @return The degree of parallelism.
+	 */
+	public int getDegreeOfParallelism()
+	{
+		return this.degreeOfParallelism;
+	}
+
+	/**
+	 * Sets the number of instances that join in parallel.
+	 *
+	 * @param degreeOfParallelism The degree of parallelism to set.
+	 */
+	public void setDegreeOfParallelism(int degreeOfParallelism)
+	{
+		if (degreeOfParallelism < 1) {
+			throw new IllegalArgumentException("The degree of parallelism must be at least one.");
+		}
+		this.degreeOfParallelism = degreeOfParallelism;
+	}
+
+	/**
+	 * Gets the child that probes the hash table.
+	 *
+	 * @return The probe side child.
+	 */
+	public OptimizerPlanOperator getProbeChild()
+	{
+		return isBuildSideLeft() ? this.rightChild : this.leftChild;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.AbstractJoinPlanOperator#getName()
+	 */
+	@Override
+	public String getName()
+	{
+		return "Hash Join";
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.AbstractJoinPlanOperator#getOutputColumns()
+	 */
+	@Override
+	public Column[] getReturnedColumns()
+	{
+		return this.outCols;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.AbstractJoinPlanOperator#getColumnOrder()
+	 */
+	@Override
+	public OrderedColumn[] getColumnOrder()
+	{
+		// partitions written to temp space are joined after the others, so no order is kept
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.AbstractJoinPlanOperator#createPhysicalPlan(de.tuberlin.dima.minidb.io.BufferPoolManager, de.tuberlin.dima.minidb.qexec.heap.QueryHeap)
+	 */
+	@Override
+	public PhysicalPlanOperator createPhysicalPlan(BufferPoolManager buffer, QueryHeap heap)
+	{
+		// translate the children to a physical plan
+		PhysicalPlanOperator leftPlan = this.leftChild.createPhysicalPlan(buffer, heap);
+		PhysicalPlanOperator rightPlan = this.rightChild.createPhysicalPlan(buffer, heap);
+
+		DataType[] leftSchema = getTupleSchema(this.leftChild);
+		DataType[] rightSchema = getTupleSchema(this.rightChild);
+
+		long card = getBuildChild().getOutputCardinality();
+		int intCard = card <= Integer.MAX_VALUE ? (int) card : Integer.MAX_VALUE;
+
+		// create the hash join operator, building on the smaller side
+		if (isBuildSideLeft()) {
+			return createJoin(leftPlan, rightPlan, heap, leftSchema, rightSchema, this.leftJoinColumns,
+					this.rightJoinColumns, this.leftOutColMap, this.rightOutColMap, intCard);
+		}
+		else {
+			return createJoin(rightPlan, leftPlan, heap, rightSchema, leftSchema, this.rightJoinColumns,
+					this.leftJoinColumns, this.rightOutColMap, this.leftOutColMap, intCard);
+		}
+	}
+
+	/**
+	 * Creates the physical hash join, as a single operator, or as parallel instances between
+	 * exchanges if the degree of parallelism is above one.
+	 */
+	private PhysicalPlanOperator createJoin(PhysicalPlanOperator buildPlan, PhysicalPlanOperator probePlan,
+			QueryHeap heap, DataType[] buildSchema, DataType[] probeSchema, int[] buildJoinCols,
+			int[] probeJoinCols, int[] buildOutColMap, int[] probeOutColMap, int buildCard)
+	{
+		if (this.degreeOfParallelism <= 1) {
+			return OperatorFactory.createHashJoinOperator(buildPlan, probePlan, heap, buildSchema,
+					probeSchema, buildJoinCols, probeJoinCols, buildOutColMap, probeOutColMap, buildCard);
+		}
+
+		int dop = this.degreeOfParallelism;
+		PhysicalPlanOperator[] builds;
+		int instanceCard;
+		if (buildCard < Constants.MIN_TUPLES_PER_PARALLEL_INSTANCE) {
+			// a small build side goes completely to every instance
+			builds = OperatorFactory.createBroadcastExchangeOperators(
+					new PhysicalPlanOperator[] { buildPlan }, dop);
+			instanceCard = buildCard;
+		}
+		else {
+			builds = OperatorFactory.createHashRepartitionExchangeOperators(
+					new PhysicalPlanOperator[] { buildPlan }, buildJoinCols, dop);
+			instanceCard = buildCard / dop + 1;
+		}
+		PhysicalPlanOperator[] probes = OperatorFactory.createHashRepartitionExchangeOperators(
+				new PhysicalPlanOperator[] { probePlan }, probeJoinCols, dop);
+
+		PhysicalPlanOperator[] instances = new PhysicalPlanOperator[dop];
+		for (int i = 0; i < dop; i++) {
+			instances[i] = OperatorFactory.createHashJoinOperator(builds[i], probes[i], heap, buildSchema,
+					probeSchema, buildJoinCols, probeJoinCols, buildOutColMap, probeOutColMap, instanceCard);
+		}
+		return OperatorFactory.createGatherExchangeOperator(instances);
+	}
+
+	/**
+	 * Gets the types of the columns that the given operator produces.
+	 *
+	 * @param pop The operator.
+	 * @return The types of the columns in the operator's tuples.
+	 */
+	private static DataType[] getTupleSchema(OptimizerPlanOperator pop)
+	{
+		Column[] cols = pop.getReturnedColumns();
+		DataType[] schema = new DataType[cols.length];
+		for (int i = 0; i < cols.length; i++) {
+			schema[i] = cols[i].getDataType();
+		}
+		return schema;
+	}
+}
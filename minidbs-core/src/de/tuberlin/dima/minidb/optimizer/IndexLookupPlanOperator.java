@@ -8,12 +8,16 @@ import java.util.Set;
 
 import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
 import de.tuberlin.dima.minidb.catalogue.IndexDescriptor;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.core.CompositeField;
 import de.tuberlin.dima.minidb.core.DataField;
 import de.tuberlin.dima.minidb.core.DataType;
 import de.tuberlin.dima.minidb.core.InternalOperationFailure;
 import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.HashIndex;
 import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
 import de.tuberlin.dima.minidb.parser.Predicate;
+import de.tuberlin.dima.minidb.qexec.IndexProbeBatch;
 import de.tuberlin.dima.minidb.qexec.OperatorFactory;
 import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
 import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
@@ -24,11 +28,24 @@ import de.tuberlin.dima.minidb.semantics.Relation;
 import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicate;
 import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicateAtom;
 import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicateBetween;
+import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicateConjunct;
 
 
 /**
  * The optimizer plan representation of an index lookup, correlated or
  * uncorrelated.
+ * <p>
+ * On a composite index, the lookup may evaluate predicates on a prefix of the index key:
+ * equality predicates on the leading columns, optionally followed by a range on the next
+ * column. A lookup with a predicate on the first column only looks up that prefix. In either
+ * case, the RIDs are returned in the order of the complete composite key.
+ * <p>
+ * If the index covers all columns that a plan needs from the table, an uncorrelated lookup
+ * can be turned into an index-only lookup, which produces those columns from the index entries
+ * instead of the RIDs. No FETCH is needed above an index-only lookup.
+ * <p>
+ * On a hash index, the lookup evaluates only equality predicates, correlated or uncorrelated.
+ * It reads just the bucket of the key, but returns the RIDs in no particular order.
  * 
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
@@ -45,9 +62,9 @@ public class IndexLookupPlanOperator extends OptimizerPlanOperator
 	private final BaseTableAccess tableAccess;
 	
 	/**
-	 * The column accessed by the index.
+	 * The columns accessed by the index, in the order of the index key.
 	 */
-	private final Column indexedColumn;
+	private final Column[] indexedColumns;
 	
 	/**
 	 * The local predicate passed to the constructor.
@@ -84,6 +101,18 @@ public class IndexLookupPlanOperator extends OptimizerPlanOperator
 	 */
 	private final int correlatedColumnIndex;
 	
+	/**
+	 * The columns produced from the index entries by an index-only lookup, or null, if the
+	 * lookup produces RIDs.
+	 */
+	private final Column[] coveredColumns;
+	
+	/**
+	 * The batch through which a nested loop join publishes the keys for a batched correlated
+	 * lookup, or null, if the lookup probes the index once per correlated tuple.
+	 */
+	private IndexProbeBatch probeBatch;
+	
 	
 	
 	/**
@@ -126,10 +155,17 @@ public class IndexLookupPlanOperator extends OptimizerPlanOperator
 		
 		// no correlation
 		this.correlatedColumnIndex = -1;
+		this.coveredColumns = null;
 		
 		DataType indexedColumnType = index.getSchema().getIndexedColumnSchema().getDataType();
 		
-		this.indexedColumn = new Column(table, indexedColumnType, index.getSchema().getColumnNumber());
+		this.indexedColumns = createIndexedColumns(index, table);
+		
+		if (index.isHashIndex() && !(pred instanceof LocalPredicateAtom &&
+				((LocalPredicateAtom) pred).getParsedPredicate().getOp() == Predicate.Operator.EQUAL))
+		{
+			throw new IllegalArgumentException("Hash indexes can only answer equality predicate queries.");
+		}
 		
 		if (pred instanceof LocalPredicateAtom) {
 			// atom, we may have equality or range
@@ -204,6 +240,102 @@ public class IndexLookupPlanOperator extends OptimizerPlanOperator
 		}
 	}
 	
+	/**
+	 * Creates a new index scan operator that operates uncorrelated on a composite index and
+	 * evaluates the given predicates on a prefix of the index key. There is one predicate per
+	 * column of the prefix, in the order of the key. All but the last predicate must be equality
+	 * predicates; the last one may also be a range or a between predicate.
+	 * 
+	 * @param index The index descriptor for the composite index that is to scan.
+	 * @param table The table access for which the index scan stands.
+	 * @param keyPredicates The predicates on the leading columns of the index key.
+	 * @param outCard The output cardinality of the index scan.
+	 */
+	public IndexLookupPlanOperator(IndexDescriptor index, BaseTableAccess table,
+			LocalPredicate[] keyPredicates, long outCard)
+	{
+		this.theIndex = index;
+		this.tableAccess = table;
+		this.outCardinality = outCard;
+		this.correlatedColumnIndex = -1;
+		this.coveredColumns = null;
+		this.indexedColumns = createIndexedColumns(index, table);
+		
+		int num = keyPredicates.length;
+		if (!index.getSchema().isComposite() || num == 0 || num > this.indexedColumns.length) {
+			throw new IllegalArgumentException("The predicates must refer to a prefix of a composite index key.");
+		}
+		
+		DataField[] lower = new DataField[num];
+		DataField[] upper = new DataField[num];
+		boolean lowerIncluded = true;
+		boolean upperIncluded = true;
+		boolean range = false;
+		LocalPredicateConjunct conjunct = new LocalPredicateConjunct();
+		
+		for (int i = 0; i < num; i++) {
+			LocalPredicate p = keyPredicates[i];
+			DataType type = this.indexedColumns[i].getDataType();
+			conjunct.addPredicate(p);
+			
+			if (p instanceof LocalPredicateAtom) {
+				LocalPredicateAtom atom = (LocalPredicateAtom) p;
+				checkColumn(atom.getColumn(), i);
+				Predicate.Operator op = atom.getParsedPredicate().getOp();
+				
+				if (op == Predicate.Operator.EQUAL) {
+					lower[i] = atom.getLiteral();
+					upper[i] = atom.getLiteral();
+					continue;
+				}
+				else if (i < num - 1) {
+					throw new IllegalArgumentException("Only the last column of the key prefix may have a range predicate.");
+				}
+				
+				range = true;
+				switch (op)
+				{
+				case GREATER:
+				case GREATER_OR_EQUAL:
+					lower[i] = atom.getLiteral();
+					lowerIncluded = op == Predicate.Operator.GREATER_OR_EQUAL;
+					upper[i] = type.getMaxValue();
+					break;
+				case SMALLER:
+				case SMALLER_OR_EQUAL:
+					lower[i] = type.getMinValue();
+					upper[i] = atom.getLiteral();
+					upperIncluded = op == Predicate.Operator.SMALLER_OR_EQUAL;
+					break;
+				default:
+					throw new IllegalArgumentException("Index cannot answer inequality predicate queries.");
+				}
+			}
+			else if (p instanceof LocalPredicateBetween) {
+				LocalPredicateBetween bet = (LocalPredicateBetween) p;
+				checkColumn(bet.getColumn(), i);
+				if (i < num - 1) {
+					throw new IllegalArgumentException("Only the last column of the key prefix may have a range predicate.");
+				}
+				
+				range = true;
+				lower[i] = bet.getLowerBoundLiteral();
+				upper[i] = bet.getUpperBoundLiteral();
+				lowerIncluded = bet.getLowerBound().getOp() == Predicate.Operator.GREATER_OR_EQUAL;
+				upperIncluded = bet.getUpperBound().getOp() == Predicate.Operator.SMALLER_OR_EQUAL;
+			}
+			else {
+				throw new IllegalArgumentException("Index cannot answer predicate " + p + ".");
+			}
+		}
+		
+		this.pred = num == 1 ? keyPredicates[0] : conjunct;
+		this.key1 = new CompositeField(lower);
+		this.key1Included = lowerIncluded;
+		this.key2 = range ? new CompositeField(upper) : null;
+		this.key2Included = range && upperIncluded;
+	}
+	
 	/**
 	 * Creates an index lookup operator for correlated index accessed.
 	 * 
@@ -220,9 +352,9 @@ public class IndexLookupPlanOperator extends OptimizerPlanOperator
 		this.correlatedColumnIndex = correlatedColumnIndex;
 		this.outCardinality = cardinalityPerAccess;
 		this.pred = null;
+		this.coveredColumns = null;
 		
-		DataType indexedColumnType = index.getSchema().getIndexedColumnSchema().getDataType();
-		this.indexedColumn = new Column(table, indexedColumnType, index.getSchema().getColumnNumber());
+		this.indexedColumns = createIndexedColumns(index, table);
 		
 		this.key1 = null;
 		this.key2 = null;
@@ -230,6 +362,106 @@ public class IndexLookupPlanOperator extends OptimizerPlanOperator
 		this.key2Included = false;
 	}
 	
+	/**
+	 * Creates an index-only variant of the given uncorrelated lookup, which produces the given
+	 * columns from the entries of the index instead of the RIDs.
+	 * 
+	 * @param lookup The uncorrelated lookup.
+	 * @param outputColumns The columns to produce, which the index must cover.
+	 * @throws IllegalArgumentException Thrown, if the lookup is correlated or the index does
+	 *                                  not cover the columns.
+	 */
+	public IndexLookupPlanOperator(IndexLookupPlanOperator lookup, Column[] outputColumns)
+	{
+		if (lookup.isCorrelated()) {
+			throw new IllegalArgumentException("Correlated lookups cannot be index-only.");
+		}
+		if (!lookup.coversColumns(outputColumns)) {
+			throw new IllegalArgumentException("The index does not cover the columns.");
+		}
+		
+		this.theIndex = lookup.theIndex;
+		this.tableAccess = lookup.tableAccess;
+		this.indexedColumns = lookup.indexedColumns;
+		this.pred = lookup.pred;
+		this.key1 = lookup.key1;
+		this.key2 = lookup.key2;
+		this.key1Included = lookup.key1Included;
+		this.key2Included = lookup.key2Included;
+		this.outCardinality = lookup.outCardinality;
+		this.correlatedColumnIndex = -1;
+		this.coveredColumns = outputColumns.clone();
+	}
+	
+	/**
+	 * Creates the columns of the index key.
+	 * 
+	 * @param index The index.
+	 * @param table The table access for which the index scan stands.
+	 * @return The columns of the index key, in key order.
+	 */
+	private static Column[] createIndexedColumns(IndexDescriptor index, BaseTableAccess table)
+	{
+		IndexSchema schema = index.getSchema();
+		int[] columnNumbers = schema.getColumnNumbers();
+		Column[] columns = new Column[columnNumbers.length];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = new Column(table, schema.getIndexedColumnSchema(i).getDataType(), columnNumbers[i]);
+		}
+		return columns;
+	}
+	
+	/**
+	 * Checks that a predicate refers to the column at the given position of the index key.
+	 * 
+	 * @param column The column of the predicate.
+	 * @param position The position in the index key.
+	 */
+	private void checkColumn(Column column, int position)
+	{
+		if (column.getColumnIndex() != this.indexedColumns[position].getColumnIndex()) {
+			throw new IllegalArgumentException("Predicate on column " + column.getColumnIndex() +
+					" does not refer to the key column at position " + position + ".");
+		}
+	}
+	
+	/**
+	 * Checks whether all given columns can be produced from the entries of the index, i.e.
+	 * whether each column is the RID, an indexed column or an included column of the table.
+	 * Hash indexes never cover any columns.
+	 * 
+	 * @param columns The columns to check.
+	 * @return True, if the index covers all columns, false otherwise.
+	 */
+	public boolean coversColumns(Column[] columns)
+	{
+		if (this.theIndex.isHashIndex()) {
+			// hash indexes produce RIDs only
+			return false;
+		}
+		IndexSchema schema = this.theIndex.getSchema();
+		for (Column column : columns) {
+			if (column.getRelation() != this.tableAccess) {
+				return false;
+			}
+			int index = column.getColumnIndex();
+			if (index != Column.RID_COLUMN_INDEX && !schema.coversColumn(index)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks, if this lookup produces columns from the index entries rather than RIDs.
+	 * 
+	 * @return True, if this lookup is index-only.
+	 */
+	public boolean isIndexOnly()
+	{
+		return this.coveredColumns != null;
+	}
+	
 	/**
 	 * Gets the index descriptor from this IndexScanPlanOperator.
 	 *
@@ -279,6 +511,32 @@ public class IndexLookupPlanOperator extends OptimizerPlanOperator
 	{
 		return isCorrelated() ? this.correlatedColumnIndex : -1;
 	}
+	
+	/**
+	 * Checks, if this index access can resolve the keys of a batch of correlated tuples in one
+	 * sorted pass, which is the case for correlated lookups on B-Tree indexes.
+	 * 
+	 * @return True, if this index access can be probed in batches.
+	 */
+	public boolean supportsBatchedProbes()
+	{
+		return isCorrelated() && !this.theIndex.isHashIndex();
+	}
+	
+	/**
+	 * Sets the batch through which the keys of the correlated tuples are published, making the
+	 * physical operator created next a batched lookup. A value of null restores the lookup that
+	 * probes the index once per correlated tuple.
+	 * 
+	 * @param probeBatch The batch of keys, or null.
+	 */
+	public void setProbeBatch(IndexProbeBatch probeBatch)
+	{
+		if (probeBatch != null && !supportsBatchedProbes()) {
+			throw new IllegalStateException("Only correlated B-Tree index lookups can be probed in batches.");
+		}
+		this.probeBatch = probeBatch;
+	}
 
 	/* (non-Javadoc)
 	 * @see de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator#getName()
@@ -286,7 +544,10 @@ public class IndexLookupPlanOperator extends OptimizerPlanOperator
 	@Override
 	public String getName()
 	{
-		return "Index Scan";
+		if (this.theIndex.isHashIndex()) {
+			return "Hash Index Scan";
+		}
+		return isIndexOnly() ? "Index Only Scan" : "Index Scan";
 	}
 
 	/* (non-Javadoc)
@@ -324,6 +585,9 @@ public class IndexLookupPlanOperator extends OptimizerPlanOperator
 	@Override
 	public Column[] getReturnedColumns()
 	{
+		if (isIndexOnly()) {
+			return this.coveredColumns.clone();
+		}
 		return new Column[] { new Column(this.tableAccess, DataType.ridType(), Column.RID_COLUMN_INDEX) };
 	}
 
@@ -345,12 +609,33 @@ public class IndexLookupPlanOperator extends OptimizerPlanOperator
 	@Override
 	public PhysicalPlanOperator createPhysicalPlan(BufferPoolManager buffer, QueryHeap heap)
 	{
+		if (this.theIndex.isHashIndex()) {
+			HashIndex index = AbstractExtensionFactory.getExtensionFactory().createHashIndex(
+					this.theIndex.getHashResourceManager(), buffer, this.theIndex.getResourceId());
+			return isCorrelated() ?
+				OperatorFactory.createHashIndexCorrelatedLookupOperator(index, this.correlatedColumnIndex) :
+				OperatorFactory.createHashIndexLookupOperator(index, this.key1);
+		}
+		
 		// get the index that the operator works on
-		BTreeIndex index = AbstractExtensionFactory.getExtensionFactory().createBTreeIndex(this.theIndex.getSchema(),
+		BTreeIndex index = AbstractExtensionFactory.getExtensionFactory().createConcurrentBTreeIndex(this.theIndex.getSchema(),
 				buffer, this.theIndex.getResourceId());
 		
 		if (isCorrelated()) {
-			return OperatorFactory.createIndexCorrelatedLookupOperator(index, this.correlatedColumnIndex);
+			return this.probeBatch == null ?
+				OperatorFactory.createIndexCorrelatedLookupOperator(index, this.correlatedColumnIndex) :
+				OperatorFactory.createBatchedIndexCorrelatedLookupOperator(index, this.correlatedColumnIndex, this.probeBatch);
+		}
+		else if (isIndexOnly()) {
+			int[] columns = new int[this.coveredColumns.length];
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = this.coveredColumns[i].getColumnIndex();
+			}
+			// an equality lookup is the range from the key to the key
+			return this.key2 == null ?
+				OperatorFactory.createIndexOnlyScanOperator(index, this.key1, true, this.key1, true, columns) :
+				OperatorFactory.createIndexOnlyScanOperator(index, this.key1, this.key1Included,
+						this.key2, this.key2Included, columns);
 		}
 		else {
 			// not operating correlated. check which kind of predicate
@@ -370,7 +655,17 @@ public class IndexLookupPlanOperator extends OptimizerPlanOperator
 	@Override
 	public OrderedColumn[] getColumnOrder()
 	{
-		return new OrderedColumn[] { new OrderedColumn(this.indexedColumn, Order.ASCENDING) };
+		if (this.theIndex.isHashIndex()) {
+			// the buckets are not ordered
+			return null;
+		}
+		
+		// composite keys are ordered by all their columns
+		OrderedColumn[] order = new OrderedColumn[this.indexedColumns.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = new OrderedColumn(this.indexedColumns[i], Order.ASCENDING);
+		}
+		return order;
 	}
 
 }
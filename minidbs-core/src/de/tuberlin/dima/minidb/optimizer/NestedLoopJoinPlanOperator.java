@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.qexec.IndexProbeBatch;
 import de.tuberlin.dima.minidb.qexec.OperatorFactory;
 import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
 import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
@@ -191,12 +192,57 @@ public class NestedLoopJoinPlanOperator extends AbstractJoinPlanOperator
 	{
 		// translate the two children.
 		PhysicalPlanOperator outerChildPlan = this.leftChild.createPhysicalPlan(buffer, heap);
-		PhysicalPlanOperator innerChildPlan = this.rightChild.createPhysicalPlan(buffer, heap);
 		
 		// create an executable version of the join predicate
 		de.tuberlin.dima.minidb.qexec.predicate.JoinPredicate executablePredicate = this.joinPredicate == null ? null : this.joinPredicate.createExecutablepredicate();
 		
+		// an index lookup on the inner side gets the keys of a batch of outer tuples at once,
+		// so that it resolves them in one sorted pass instead of one descent per outer tuple
+		IndexLookupPlanOperator lookup = getBatchableLookup(this.rightChild);
+		if (lookup != null) {
+			IndexProbeBatch batch = new IndexProbeBatch();
+			PhysicalPlanOperator innerChildPlan;
+			lookup.setProbeBatch(batch);
+			try {
+				innerChildPlan = this.rightChild.createPhysicalPlan(buffer, heap);
+			}
+			finally {
+				lookup.setProbeBatch(null);
+			}
+			return OperatorFactory.createBatchedNestedLoopJoinOperator(outerChildPlan, innerChildPlan,
+					executablePredicate, this.outerOutColMap, this.innerOutColMap,
+					batch, lookup.getCorrelatedColumnIndex());
+		}
+		
+		PhysicalPlanOperator innerChildPlan = this.rightChild.createPhysicalPlan(buffer, heap);
 		return OperatorFactory.createNestedLoopJoinOperator(outerChildPlan, innerChildPlan,
 				executablePredicate, this.outerOutColMap, this.innerOutColMap);
 	}
+	
+	/**
+	 * Finds the correlated index lookup on the inner side that can be probed in batches. The
+	 * lookup may be below fetches and filters, which open their child with the same correlated
+	 * tuple, but not below any other operator.
+	 * 
+	 * @param inner The root of the inner side.
+	 * @return The lookup, or null, if the inner side has none that can be probed in batches.
+	 */
+	private static IndexLookupPlanOperator getBatchableLookup(OptimizerPlanOperator inner)
+	{
+		while (true) {
+			if (inner instanceof IndexLookupPlanOperator) {
+				IndexLookupPlanOperator lookup = (IndexLookupPlanOperator) inner;
+				return lookup.supportsBatchedProbes() ? lookup : null;
+			}
+			else if (inner instanceof FetchPlanOperator) {
+				inner = ((FetchPlanOperator) inner).getChild();
+			}
+			else if (inner instanceof FilterPlanOperator) {
+				inner = ((FilterPlanOperator) inner).getChild();
+			}
+			else {
+				return null;
+			}
+		}
+	}
 }
@@ -22,6 +22,7 @@ import de.tuberlin.dima.minidb.io.tables.TablePage;
 import de.tuberlin.dima.minidb.optimizer.cardinality.CardinalityEstimator;
 import de.tuberlin.dima.minidb.optimizer.cost.CostEstimator;
 import de.tuberlin.dima.minidb.optimizer.generator.PhysicalPlanGenerator;
+import de.tuberlin.dima.minidb.optimizer.generator.util.PhysicalPlanGeneratorUtils;
 import de.tuberlin.dima.minidb.optimizer.joins.JoinOrderOptimizer;
 import de.tuberlin.dima.minidb.parser.OrderColumn;
 import de.tuberlin.dima.minidb.parser.Predicate;
@@ -70,6 +71,11 @@ public class Optimizer
 	 */
 	private CostEstimator costEstimator;
 	
+	/**
+	 * The maximal number of threads in which an operator of the generated plans runs.
+	 */
+	private int degreeOfParallelism = 1;
+	
 	
 	/**
 	 * Creates a new optimizer that tries to find the best plan with respect to the given
@@ -94,6 +100,30 @@ public class Optimizer
 		this.cardEstimator = AbstractExtensionFactory.getExtensionFactory().createCardinalityEstimator();
 		this.costEstimator = AbstractExtensionFactory.getExtensionFactory().createCostEstimator(readCost, writeCost, randomReadOverhead, randomWriteOverhead);
 	}
+	
+	/**
+	 * Gets the maximal number of threads in which an operator of the generated plans runs.
+	 * 
+	 * @return The degree of parallelism.
+	 */
+	public int getDegreeOfParallelism()
+	{
+		return this.degreeOfParallelism;
+	}
+	
+	/**
+	 * Sets the maximal number of threads in which an operator of the generated plans runs.
+	 * With a value above one, exchanges are placed into the best plan after it was found.
+	 * 
+	 * @param degreeOfParallelism The degree of parallelism to set.
+	 */
+	public void setDegreeOfParallelism(int degreeOfParallelism)
+	{
+		if (degreeOfParallelism < 1) {
+			throw new IllegalArgumentException("The degree of parallelism must be at least one.");
+		}
+		this.degreeOfParallelism = degreeOfParallelism;
+	}
 
 	/**
 	 * Takes the analyzed select-query and finds the best query execution plan in this
@@ -225,7 +255,36 @@ public class Optimizer
 		PhysicalPlanGenerator planGenerator = AbstractExtensionFactory.getExtensionFactory().createPhysicalPlanGenerator(this.catalogue, this.cardEstimator, this.costEstimator);
 		
 		OptimizerPlanOperator bestPlan = planGenerator.generatePhysicalPlan(query, bestJoinOrder);
+		bestPlan = PhysicalPlanGeneratorUtils.applyLateMaterialization(bestPlan, this.costEstimator);
+		if (this.degreeOfParallelism > 1) {
+			PhysicalPlanGeneratorUtils.placeExchanges(bestPlan, this.degreeOfParallelism);
+		}
 		query.setQueryPlan(bestPlan);
 		return bestPlan;
 	}
+	
+	/**
+	 * Creates the plan for a delete query. The tuples to delete are the tuples of the single
+	 * table of the given query that qualify for its predicate. They are found by a table scan
+	 * that produces their RIDs, and the delete removes them together with their entries in all
+	 * indexes of the table.
+	 * 
+	 * @param query The analyzed query describing the table and the predicate of the delete.
+	 * @return The plan for the delete.
+	 * @throws OptimizerException Thrown, if the query accesses other than a single table.
+	 */
+	public DeletePlanOperator createDeleteQueryPlan(AnalyzedSelectQuery query) throws OptimizerException
+	{
+		Relation[] relations = query.getTableAccesses();
+		if (relations.length != 1 || !(relations[0] instanceof BaseTableAccess)) {
+			throw new OptimizerException("A delete query must refer to exactly one table.");
+		}
+		BaseTableAccess table = (BaseTableAccess) relations[0];
+		this.cardEstimator.estimateTableAccessCardinality(table);
+		
+		DeletePlanOperator delete = PhysicalPlanGeneratorUtils.createDeletePlan(table,
+				this.catalogue.getAllIndexesForTable(table.getTable().getTableName()));
+		query.setQueryPlan(delete);
+		return delete;
+	}
 }
@@ -42,6 +42,11 @@ public class SortPlanOperator extends OptimizerPlanOperator
 	 * True indicates ascending order, false indicates descending order.
 	 */
 	private boolean[] sortAscending;
+	
+	/**
+	 * The number of threads that sort.
+	 */
+	private int degreeOfParallelism = 1;
 
 	
 	/**
@@ -109,6 +114,30 @@ public class SortPlanOperator extends OptimizerPlanOperator
 	}
 	
 	
+	/**
+	 * Gets the number of threads that sort.
+	 *
+	 * @return The degree of parallelism.
+	 */
+	public int getDegreeOfParallelism()
+	{
+		return this.degreeOfParallelism;
+	}
+
+	/**
+	 * Sets the number of threads that sort. The sorted result and the memory taken from the
+	 * query heap are the same for any number of threads.
+	 *
+	 * @param degreeOfParallelism The degree of parallelism to set.
+	 */
+	public void setDegreeOfParallelism(int degreeOfParallelism)
+	{
+		if (degreeOfParallelism < 1) {
+			throw new IllegalArgumentException("The degree of parallelism must be at least one.");
+		}
+		this.degreeOfParallelism = degreeOfParallelism;
+	}
+	
 	/* (non-Javadoc)
 	 * @see de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator#getChildren()
 	 */
@@ -187,7 +216,12 @@ public class SortPlanOperator extends OptimizerPlanOperator
 		long card = this.childOperator.getOutputCardinality();
 		int intCard = card <= Integer.MAX_VALUE ? (int) card : Integer.MAX_VALUE;
 		
-		return OperatorFactory.createSortOperator(childPlan, heap, tupleSchema,
+		if (this.degreeOfParallelism > 1) {
+			return OperatorFactory.createParallelSortOperator(childPlan, heap, tupleSchema,
+					intCard, this.sortColumnIndices, this.sortAscending, this.degreeOfParallelism);
+		}
+		
+		return OperatorFactory.createNormalizedKeySortOperator(childPlan, heap, tupleSchema,
 				intCard, this.sortColumnIndices, this.sortAscending);
 	}
 
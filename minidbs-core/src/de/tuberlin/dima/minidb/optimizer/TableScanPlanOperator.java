@@ -40,6 +40,11 @@ public class TableScanPlanOperator extends BaseTableAccess
 	 */
 	private int prefetchingLength = Constants.DEFAULT_PREFETCHING_LENGTH;
 	
+	/**
+	 * The number of threads that scan the table.
+	 */
+	private int degreeOfParallelism = 1;
+	
 	
 	// ------------------------------------------------------------------------
 	
@@ -126,6 +131,31 @@ public class TableScanPlanOperator extends BaseTableAccess
 		this.prefetchingLength = prefetchingLength;
 	}
 	
+	/**
+	 * Gets the number of threads that scan the table.
+	 *
+	 * @return The degree of parallelism.
+	 */
+	public int getDegreeOfParallelism()
+	{
+		return this.degreeOfParallelism;
+	}
+
+	/**
+	 * Sets the number of threads that scan the table. With more than one thread, the
+	 * tuples are produced in no particular order. Since a table scan never guarantees
+	 * an order to its consumers (see {@link #getColumnOrder()}), that is always valid.
+	 *
+	 * @param degreeOfParallelism The degree of parallelism to set.
+	 */
+	public void setDegreeOfParallelism(int degreeOfParallelism)
+	{
+		if (degreeOfParallelism < 1) {
+			throw new IllegalArgumentException("The degree of parallelism must be at least one.");
+		}
+		this.degreeOfParallelism = degreeOfParallelism;
+	}
+	
 	/**
 	 * Assigns this operator the columns it should produce.
 	 * 
@@ -194,8 +224,24 @@ public class TableScanPlanOperator extends BaseTableAccess
 		
 		// build the array of columns to produce
 		int[] colIndices = new int[this.producedColumns.length];
+		boolean producesRID = false;
 		for (int i = 0; i < colIndices.length; i++) {
 			colIndices[i] = this.producedColumns[i].getColumnIndex();
+			producesRID |= this.producedColumns[i].isRID();
+		}
+		
+		// a scan that produces the RID feeds a deferred FETCH (late materialization). The RID
+		// scan also serves serial scans with predicates, because unlike the regular table scan,
+		// it skips the pages that the table's zone map rules out for the predicates
+		if (producesRID || (execPred.length > 0 && this.degreeOfParallelism <= 1)) {
+			return OperatorFactory.createRIDTableScanOperator(buffer, getTable().getResourceManager(),
+					getTable().getResourceId(), colIndices, execPred, this.prefetchingLength);
+		}
+		
+		if (this.degreeOfParallelism > 1) {
+			return OperatorFactory.createParallelTableScanOperator(buffer, getTable().getResourceManager(),
+					getTable().getResourceId(), colIndices, execPred, this.prefetchingLength,
+					this.degreeOfParallelism);
 		}
 		
 		return OperatorFactory.createTableScanOperator(buffer, getTable().getResourceManager(),
@@ -0,0 +1,83 @@
+package de.tuberlin.dima.minidb.optimizer;
+
+
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.qexec.OperatorFactory;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * The optimizer plan operator for a top-N sort, which produces only the first tuples
+ * of the sorted input. It keeps those tuples in memory and never writes to temp space.
+ */
+public class TopNSortPlanOperator extends SortPlanOperator
+{
+	/**
+	 * The number of tuples produced at most.
+	 */
+	private final int rowLimit;
+
+
+	/**
+	 * Creates a new top-N sort operator that sorts the tuples produced by the given child
+	 * and produces only the first of them.
+	 *
+	 * @param child The child whose produced tuples are to be sorted.
+	 * @param sortColumnIndices The indices of the columns after which to sort.
+	 * @param sortAscending The direction of sorting for each column. True indicates ascending,
+	 *                      false indicates descending.
+	 * @param rowLimit The number of tuples produced at most.
+	 */
+	public TopNSortPlanOperator(OptimizerPlanOperator child,
+			int[] sortColumnIndices, boolean[] sortAscending, int rowLimit)
+	{
+		super(child, sortColumnIndices, sortAscending);
+
+		if (rowLimit < 0) {
+			throw new IllegalArgumentException("The row limit must not be negative.");
+		}
+		this.rowLimit = rowLimit;
+	}
+
+	/**
+	 * Gets the number of tuples produced at most.
+	 *
+	 * @return The row limit.
+	 */
+	public int getRowLimit()
+	{
+		return this.rowLimit;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.SortPlanOperator#getName()
+	 */
+	@Override
+	public String getName()
+	{
+		return "Top-N Sort";
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.SortPlanOperator#getOutputCardinality()
+	 */
+	@Override
+	public long getOutputCardinality()
+	{
+		return Math.min(this.rowLimit, getChild().getOutputCardinality());
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.SortPlanOperator#createPhysicalPlan(de.tuberlin.dima.minidb.io.manager.BufferPoolManager, de.tuberlin.dima.minidb.qexec.heap.QueryHeap)
+	 */
+	@Override
+	public PhysicalPlanOperator createPhysicalPlan(BufferPoolManager buffer, QueryHeap heap)
+	{
+		// recursively create the child plan
+		PhysicalPlanOperator childPlan = getChild().createPhysicalPlan(buffer, heap);
+
+		return OperatorFactory.createTopNSortOperator(childPlan, getSortColumnIndices(),
+				getSortAscending(), this.rowLimit);
+	}
+}
@@ -62,6 +62,20 @@ public interface CostEstimator
 	public abstract long computeIndexLookupCosts(IndexDescriptor index, TableDescriptor baseTable, long cardinality);
 
 
+	/**
+	 * Computes the costs of an equality lookup on a hash index. The costs are assumed to be one
+	 * random read of the bucket's primary page, plus random reads of the overflow pages that the
+	 * RIDs for the key occupy beyond the first page. Unlike for a B-Tree, the costs do not grow
+	 * with the size of the index.
+	 * 
+	 * @param index The descriptor of the hash index.
+	 * @param baseTable The descriptor of the table that is indexed.
+	 * @param cardinality The result cardinality of the lookup.
+	 * @return The I/O costs (microseconds) for the hash index lookup.
+	 */
+	public abstract long computeHashIndexLookupCosts(IndexDescriptor index, TableDescriptor baseTable, long cardinality);
+
+
 	/**
 	 * Computes the estimated I/O costs for a sort operation. For simplicity and robustness,
 	 * the sort is assumed to be always external and two-phase multi-way. That is, all
@@ -160,6 +174,44 @@ public interface CostEstimator
 	public abstract long computeMergeJoinCost();
 
 
+	/**
+	 * Computes the costs of a hybrid hash join. The hash table on the build side is assumed
+	 * to get <code>Constants.ESTIMATED_OPERATOR_MEMORY_BYTES</code> of memory. If the build side
+	 * fits, the join is free, like the merge join. Otherwise, the fraction of the build side
+	 * that exceeds the memory is written to temp space and read again once, together with the
+	 * same fraction of the probe side. The I/O for those tuples is estimated like the write
+	 * and read phase of a sort.
+	 * 
+	 * Hint: use the QueryHeap.getTupleBytes() method to compute the number of bytes required
+	 * to store a single tuple on the query heap.
+	 * 
+	 * @param buildColumns The columns in the tuples of the build side.
+	 * @param buildCardinality The number of tuples on the build side.
+	 * @param probeColumns The columns in the tuples of the probe side.
+	 * @param probeCardinality The number of tuples on the probe side.
+	 * @return The I/O costs (microseconds) for the hash join operation.
+	 */
+	public abstract long computeHashJoinCost(Column[] buildColumns, long buildCardinality,
+			Column[] probeColumns, long probeCardinality);
+
+
+	/**
+	 * Computes the costs of a hash based group by. The hash table is assumed to get
+	 * <code>Constants.ESTIMATED_OPERATOR_MEMORY_BYTES</code> of memory. If all groups fit,
+	 * the group by is free, like the sort based group by. Otherwise, the tuples of the
+	 * groups that do not fit are written to temp space and read again once. Their number
+	 * is estimated as the input cardinality times the fraction of the groups that do not fit.
+	 * The I/O for those tuples is estimated like the write and read phase of a sort.
+	 * 
+	 * @param inputColumns The columns in the input tuples.
+	 * @param inputCardinality The number of input tuples.
+	 * @param numGroups The estimated number of groups.
+	 * @return The I/O costs (microseconds) for the hash group by operation.
+	 */
+	public abstract long computeHashAggregationCost(Column[] inputColumns, long inputCardinality,
+			long numGroups);
+
+
 	/**
 	 * Computes the costs of a nested loop join. The cost are directly derived from the 
 	 * operator semantics and assume that the inner child is executed once for each
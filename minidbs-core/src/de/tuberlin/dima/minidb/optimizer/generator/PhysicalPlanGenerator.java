@@ -47,7 +47,9 @@ public interface PhysicalPlanGenerator
 
 	/**
 	 * This rule itself takes care of the ORDER BY requirements and recursively 
-	 * calls the group by rule for the remainder.
+	 * calls the group by rule for the remainder. If the query has a row limit, the
+	 * order is established through a top-N sort, see
+	 * <code>PhysicalPlanGeneratorUtils.addSortIfNecessary()</code>.
 	 * 
 	 * This rule finds the best optimizer plans for that select query with respect
 	 * to the abstract join plan, the cost model and the plan space spanned by
@@ -72,7 +74,8 @@ public interface PhysicalPlanGenerator
 	 * operators for those.
 	 * 
 	 * For grouping, it checks if it can use an order such that this order can be reused
-	 * by the rule that invoked this one.
+	 * by the rule that invoked this one. It chooses between sort based and hash based grouping
+	 * by cost, see <code>PhysicalPlanGeneratorUtils.createGroupByPlans()</code>.
 	 * 
 	 * @param outCols The columns that should be produced and returned by the plans.
 	 * @param grouping Flag indicating if this plan applies grouping and aggregation at all.
@@ -7,12 +7,14 @@ import de.tuberlin.dima.minidb.catalogue.IndexDescriptor;
 import de.tuberlin.dima.minidb.optimizer.FetchPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.FilterPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.GroupByPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.HashJoinPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.IndexLookupPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.MergeJoinPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.NestedLoopJoinPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.OptimizerPlanVisitor;
 import de.tuberlin.dima.minidb.optimizer.SortPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.TopNSortPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.TableScanPlanOperator;
 import de.tuberlin.dima.minidb.semantics.BaseTableAccess;
 import de.tuberlin.dima.minidb.semantics.Column;
@@ -66,6 +68,10 @@ public class PhysicalPlanAssemblyDumper implements OptimizerPlanVisitor
 		{
 			dumpAssemblyCode((MergeJoinPlanOperator) operator);
 		}
+		else if (operator instanceof HashJoinPlanOperator)
+		{
+			dumpAssemblyCode((HashJoinPlanOperator) operator);
+		}
 		else if (operator instanceof NestedLoopJoinPlanOperator)
 		{
 			dumpAssemblyCode((NestedLoopJoinPlanOperator) operator);
@@ -106,7 +112,8 @@ public class PhysicalPlanAssemblyDumper implements OptimizerPlanVisitor
 		}
 		
 
-		System.out.println(String.format("FetchPlanOperator %1$s = new FetchPlanOperator(%2$s, %1$s_table_access, %1$s_columns);", subplanVar, childVar));
+		System.out.println(String.format("FetchPlanOperator %1$s = new FetchPlanOperator(%2$s, %1$s_table_access, %1$s_columns%3$s);",
+				subplanVar, childVar, operator.isRIDSortedFetch() ? ", true" : ""));
 		System.out.println("");
 		
 		this.subplanVars.put(operator, subplanVar);
@@ -172,7 +179,8 @@ public class PhysicalPlanAssemblyDumper implements OptimizerPlanVisitor
 		System.out.println("");
 		
 		
-		System.out.println(String.format("GroupByPlanOperator %1$s = new GroupByPlanOperator(%2$s, %1$s_prod_columns, %1$s_group_col_indices, %1$s_agg_col_indices, %3$d);", subplanVar, childVar, operator.getOutputCardinality()));
+		// the hash group by has the same constructor arguments
+		System.out.println(String.format("%4$s %1$s = new %4$s(%2$s, %1$s_prod_columns, %1$s_group_col_indices, %1$s_agg_col_indices, %3$d);", subplanVar, childVar, operator.getOutputCardinality(), operator.getClass().getSimpleName()));
 		System.out.println("");
 		
 		this.subplanVars.put(operator, subplanVar);
@@ -219,34 +227,57 @@ public class PhysicalPlanAssemblyDumper implements OptimizerPlanVisitor
 		String rightChildVar = this.subplanVars.get(operator.getRightChild());
 		
 		// dump the produced columns
-		System.out.println(String.format("int[] %s_lj_cols = new int[%d];", subplanVar, operator.leftJoinColumns.length));
-		for(int i = 0; i < operator.leftJoinColumns.length; i++)
+		dumpEquiJoinColumns(subplanVar, operator.leftJoinColumns, operator.rightJoinColumns, operator.leftOutColMap, operator.rightOutColMap);
+		
+		System.out.println(String.format("MergeJoinPlanOperator %s = new MergeJoinPlanOperator(%s, %s, null, %s_lj_cols, %s_rj_cols, %s_lc_map, %s_rc_map, %d);", subplanVar, leftChildVar, rightChildVar, subplanVar, subplanVar, subplanVar, subplanVar, operator.getOutputCardinality()));
+		System.out.println("");
+		
+		this.subplanVars.put(operator, subplanVar);
+	}
+	
+	private void dumpAssemblyCode(HashJoinPlanOperator operator)
+	{
+		System.out.println("// hash join subplan");
+		
+		// assign a variable for this subplan
+		String subplanVar = new Character(this.currCvar++).toString();
+		String leftChildVar = this.subplanVars.get(operator.getLeftChild());
+		String rightChildVar = this.subplanVars.get(operator.getRightChild());
+		
+		// dump the produced columns
+		dumpEquiJoinColumns(subplanVar, operator.leftJoinColumns, operator.rightJoinColumns, operator.leftOutColMap, operator.rightOutColMap);
+		
+		System.out.println(String.format("HashJoinPlanOperator %s = new HashJoinPlanOperator(%s, %s, null, %s_lj_cols, %s_rj_cols, %s_lc_map, %s_rc_map, %d);", subplanVar, leftChildVar, rightChildVar, subplanVar, subplanVar, subplanVar, subplanVar, operator.getOutputCardinality()));
+		System.out.println("");
+		
+		this.subplanVars.put(operator, subplanVar);
+	}
+	
+	private void dumpEquiJoinColumns(String subplanVar, int[] leftJoinColumns, int[] rightJoinColumns, int[] leftOutColMap, int[] rightOutColMap)
+	{
+		System.out.println(String.format("int[] %s_lj_cols = new int[%d];", subplanVar, leftJoinColumns.length));
+		for(int i = 0; i < leftJoinColumns.length; i++)
 		{
-			System.out.println(String.format("%s_lj_cols[%d] = %d;", subplanVar, i, operator.leftJoinColumns[i]));
+			System.out.println(String.format("%s_lj_cols[%d] = %d;", subplanVar, i, leftJoinColumns[i]));
 		}
 		
-		System.out.println(String.format("int[] %s_rj_cols = new int[%d];", subplanVar, operator.rightJoinColumns.length));
-		for(int i = 0; i < operator.rightJoinColumns.length; i++)
+		System.out.println(String.format("int[] %s_rj_cols = new int[%d];", subplanVar, rightJoinColumns.length));
+		for(int i = 0; i < rightJoinColumns.length; i++)
 		{
-			System.out.println(String.format("%s_rj_cols[%d] = %d;", subplanVar, i, operator.rightJoinColumns[i]));
+			System.out.println(String.format("%s_rj_cols[%d] = %d;", subplanVar, i, rightJoinColumns[i]));
 		}
 		
-		System.out.println(String.format("int[] %s_lc_map = new int[%d];", subplanVar, operator.leftOutColMap.length));
-		for(int i = 0; i < operator.leftOutColMap.length; i++)
+		System.out.println(String.format("int[] %s_lc_map = new int[%d];", subplanVar, leftOutColMap.length));
+		for(int i = 0; i < leftOutColMap.length; i++)
 		{
-			System.out.println(String.format("%s_lc_map[%d] = %d;", subplanVar, i, operator.leftOutColMap[i]));
+			System.out.println(String.format("%s_lc_map[%d] = %d;", subplanVar, i, leftOutColMap[i]));
 		}
 		
-		System.out.println(String.format("int[] %s_rc_map = new int[%d];", subplanVar, operator.rightOutColMap.length));
-		for(int i = 0; i < operator.rightOutColMap.length; i++)
+		System.out.println(String.format("int[] %s_rc_map = new int[%d];", subplanVar, rightOutColMap.length));
+		for(int i = 0; i < rightOutColMap.length; i++)
 		{
-			System.out.println(String.format("%s_rc_map[%d] = %d;", subplanVar, i, operator.rightOutColMap[i]));
+			System.out.println(String.format("%s_rc_map[%d] = %d;", subplanVar, i, rightOutColMap[i]));
 		}
-		
-		System.out.println(String.format("MergeJoinPlanOperator %s = new MergeJoinPlanOperator(%s, %s, null, %s_lj_cols, %s_rj_cols, %s_lc_map, %s_rc_map, %d);", subplanVar, leftChildVar, rightChildVar, subplanVar, subplanVar, subplanVar, subplanVar, operator.getOutputCardinality()));
-		System.out.println("");
-		
-		this.subplanVars.put(operator, subplanVar);
 	}
 
 	private void dumpAssemblyCode(NestedLoopJoinPlanOperator operator)
@@ -300,7 +331,14 @@ public class PhysicalPlanAssemblyDumper implements OptimizerPlanVisitor
 			System.out.println(String.format("%s_sort_asc[%d] = %b;", subplanVar, i, sortAscending[i]));
 		}
 		
-		System.out.println(String.format("SortPlanOperator %s = new SortPlanOperator(%s, %s_col_indices, %s_sort_asc);", subplanVar, childVar, subplanVar, subplanVar));
+		if (operator instanceof TopNSortPlanOperator)
+		{
+			System.out.println(String.format("TopNSortPlanOperator %s = new TopNSortPlanOperator(%s, %s_col_indices, %s_sort_asc, %d);", subplanVar, childVar, subplanVar, subplanVar, ((TopNSortPlanOperator) operator).getRowLimit()));
+		}
+		else
+		{
+			System.out.println(String.format("SortPlanOperator %s = new SortPlanOperator(%s, %s_col_indices, %s_sort_asc);", subplanVar, childVar, subplanVar, subplanVar));
+		}
 		System.out.println("");
 		
 		this.subplanVars.put(operator, subplanVar);
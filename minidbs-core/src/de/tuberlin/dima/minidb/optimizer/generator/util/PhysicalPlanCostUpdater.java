@@ -3,11 +3,14 @@ package de.tuberlin.dima.minidb.optimizer.generator.util;
 import de.tuberlin.dima.minidb.optimizer.FetchPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.FilterPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.GroupByPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.HashGroupByPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.HashJoinPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.IndexLookupPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.MergeJoinPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.NestedLoopJoinPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.SortPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.TopNSortPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.TableScanPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.cost.CostEstimator;
 import de.tuberlin.dima.minidb.semantics.AnalyzedSelectQuery;
@@ -52,6 +55,9 @@ public class PhysicalPlanCostUpdater
 		else if (pop instanceof IndexLookupPlanOperator) {
 			costIndexLookupOperator((IndexLookupPlanOperator) pop);
 		}
+		else if (pop instanceof TopNSortPlanOperator) {
+			costTopNSortOperator((TopNSortPlanOperator) pop);
+		}
 		else if (pop instanceof SortPlanOperator) {
 			costSortOperator((SortPlanOperator) pop);
 		}
@@ -67,6 +73,12 @@ public class PhysicalPlanCostUpdater
 		else if (pop instanceof NestedLoopJoinPlanOperator) {
 			costNestedLoopJoinOperator((NestedLoopJoinPlanOperator) pop);
 		}
+		else if (pop instanceof HashJoinPlanOperator) {
+			costHashJoinOperator((HashJoinPlanOperator) pop);
+		}
+		else if (pop instanceof HashGroupByPlanOperator) {
+			costHashGroupByOperator((HashGroupByPlanOperator) pop);
+		}
 		else if (pop instanceof GroupByPlanOperator) {
 			costGroupByOperator((GroupByPlanOperator) pop);
 		}
@@ -116,8 +128,11 @@ public class PhysicalPlanCostUpdater
 	private void costIndexLookupOperator(IndexLookupPlanOperator iscan)
 	{
 		long cardOfResult = iscan.getOutputCardinality();
-		long costs = this.costEstimator.computeIndexLookupCosts(iscan.getIndex(),
-				iscan.getTableAccess().getTable(), cardOfResult);
+		long costs = iscan.getIndex().isHashIndex() ?
+				this.costEstimator.computeHashIndexLookupCosts(iscan.getIndex(),
+						iscan.getTableAccess().getTable(), cardOfResult) :
+				this.costEstimator.computeIndexLookupCosts(iscan.getIndex(),
+						iscan.getTableAccess().getTable(), cardOfResult);
 		
 		// index scan is a leaf operator, so operator costs and cumulative costs are the same
 		iscan.setOperatorCosts(costs);
@@ -142,6 +157,22 @@ public class PhysicalPlanCostUpdater
 		sortPop.setCumulativeCosts(childCosts + sortCosts);
 	}
 	
+	/**
+	 * Computes the costs and cumulative costs for the given TOP-N SORT operator.
+	 * The operator is assumed to be free, as it keeps its tuples in memory and
+	 * never writes to temp space.
+	 * 
+	 * @param sortPop The top-N sort operator to compute the costs for.
+	 */
+	private void costTopNSortOperator(TopNSortPlanOperator sortPop)
+	{
+		// get the child's costs and compute them if necessary
+		long childCosts = getChildCosts(sortPop.getChild());
+		
+		sortPop.setOperatorCosts(0);
+		sortPop.setCumulativeCosts(childCosts);
+	}
+	
 	/**
 	 * Computes the costs and cumulative costs for the given FETCH operator.
 	 * 
@@ -196,6 +227,28 @@ public class PhysicalPlanCostUpdater
 		mergeJoinPop.setCumulativeCosts(joinCosts + leftChildCosts + rightChildCosts);
 	}
 	
+	/**
+	 * Computes the costs and cumulative costs for the given HASH JOIN operator.
+	 * 
+	 * @param hashJoinPop The hash join operator to compute the costs for.
+	 */
+	private void costHashJoinOperator(HashJoinPlanOperator hashJoinPop)
+	{
+		OptimizerPlanOperator buildChild = hashJoinPop.getBuildChild();
+		OptimizerPlanOperator probeChild = hashJoinPop.getProbeChild();
+		
+		// get the child's costs and compute them if necessary
+		long buildChildCosts = getChildCosts(buildChild);
+		long probeChildCosts = getChildCosts(probeChild);
+		
+		long joinCosts = this.costEstimator.computeHashJoinCost(
+				buildChild.getReturnedColumns(), buildChild.getOutputCardinality(),
+				probeChild.getReturnedColumns(), probeChild.getOutputCardinality());
+		
+		hashJoinPop.setOperatorCosts(joinCosts);
+		hashJoinPop.setCumulativeCosts(joinCosts + buildChildCosts + probeChildCosts);
+	}
+	
 	/**
 	 * Computes the costs and cumulative costs for the given NESTED-LOOP JOIN operator.
 	 * 
@@ -234,6 +287,25 @@ public class PhysicalPlanCostUpdater
 		groupOp.setCumulativeCosts(childCosts);
 	}
 	
+	/**
+	 * Computes the costs and cumulative costs for the given HASH GROUP BY operator.
+	 * 
+	 * @param groupOp The hash group by operator to compute the costs for.
+	 */
+	private void costHashGroupByOperator(HashGroupByPlanOperator groupOp)
+	{
+		OptimizerPlanOperator child = groupOp.getChild();
+		
+		// get the child's costs and compute them if necessary
+		long childCosts = getChildCosts(child);
+		
+		long groupCosts = this.costEstimator.computeHashAggregationCost(
+				child.getReturnedColumns(), child.getOutputCardinality(), groupOp.getOutputCardinality());
+		
+		groupOp.setOperatorCosts(groupCosts);
+		groupOp.setCumulativeCosts(groupCosts + childCosts);
+	}
+	
 	/**
 	 * Computes the costs and cumulative costs for the given sub-query.
 	 * The cost of the sub-query is the cost of its plan.
@@ -1,29 +1,43 @@
 package de.tuberlin.dima.minidb.optimizer.generator.util;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import de.tuberlin.dima.minidb.Constants;
 import de.tuberlin.dima.minidb.catalogue.Catalogue;
 import de.tuberlin.dima.minidb.catalogue.IndexDescriptor;
+import de.tuberlin.dima.minidb.core.DataType;
 import de.tuberlin.dima.minidb.optimizer.AbstractJoinPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.DeletePlanOperator;
 import de.tuberlin.dima.minidb.optimizer.FetchPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.FilterPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.GroupByPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.HashGroupByPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.HashJoinPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.IndexLookupPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.InterestingOrder;
+import de.tuberlin.dima.minidb.optimizer.NestedLoopJoinPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.OptimizerException;
 import de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.OrderedColumn;
 import de.tuberlin.dima.minidb.optimizer.RequestedOrder;
 import de.tuberlin.dima.minidb.optimizer.SortPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.TableScanPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.TopNSortPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.cardinality.CardinalityEstimator;
+import de.tuberlin.dima.minidb.optimizer.cost.CostEstimator;
 import de.tuberlin.dima.minidb.parser.Predicate;
 import de.tuberlin.dima.minidb.semantics.BaseTableAccess;
 import de.tuberlin.dima.minidb.semantics.Column;
+import de.tuberlin.dima.minidb.semantics.Order;
+import de.tuberlin.dima.minidb.semantics.ProducedColumn;
 import de.tuberlin.dima.minidb.semantics.Relation;
 import de.tuberlin.dima.minidb.semantics.predicate.JoinPredicate;
 import de.tuberlin.dima.minidb.semantics.predicate.JoinPredicateAtom;
@@ -31,6 +45,7 @@ import de.tuberlin.dima.minidb.semantics.predicate.JoinPredicateConjunct;
 import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicate;
 import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicateAtom;
 import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicateBetween;
+import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicateConjunct;
 
 public class PhysicalPlanGeneratorUtils
 {
@@ -58,6 +73,10 @@ public class PhysicalPlanGeneratorUtils
 	 * <tt>OptimizerLocalPredicateBetween</tt>. An atom predicate may not have and inequality
 	 * operator.
 	 * 
+	 * Hash indexes are only used for equality predicates. For those, they are preferred
+	 * over B-Tree indexes, because a lookup reads a single bucket instead of descending
+	 * the tree.
+	 * 
 	 * @param table The table access for which this function searches for a suitable index access.
 	 * @param cardinality The cardinality after the application of the given predicate.
 	 * @param pred The predicate to be represented by the index access.
@@ -69,18 +88,143 @@ public class PhysicalPlanGeneratorUtils
 			BaseTableAccess table, long cardinality,
 			LocalPredicate pred, int predCol, List<IndexDescriptor> indexes)
 	{
+		boolean equality = pred instanceof LocalPredicateAtom &&
+				((LocalPredicateAtom) pred).getParsedPredicate().getOp() == Predicate.Operator.EQUAL;
+		IndexDescriptor id = findIndex(indexes, predCol, equality);
+		if (id != null) {
+			// that is our index
+			if (pred instanceof LocalPredicateAtom) {
+				return new IndexLookupPlanOperator(id, table, (LocalPredicateAtom) pred, cardinality);
+			}
+			else if (pred instanceof LocalPredicateBetween) {
+				return new IndexLookupPlanOperator(id, table, (LocalPredicateBetween) pred, cardinality);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Finds an index on the given column. For equality lookups, a hash index is preferred,
+	 * otherwise only B-Tree indexes qualify.
+	 * 
+	 * @param indexes The list of available indexes.
+	 * @param column The index of the column that the lookup operates on.
+	 * @param equality True, if the lookup evaluates an equality predicate.
+	 * @return The index to use, or null, if there is no suitable index.
+	 */
+	private static IndexDescriptor findIndex(List<IndexDescriptor> indexes, int column, boolean equality)
+	{
+		IndexDescriptor treeIndex = null;
 		for (IndexDescriptor id : indexes) {
-			if (id.getSchema().getColumnNumber() == predCol) {
-				// that is our index
-				if (pred instanceof LocalPredicateAtom) {
-					return new IndexLookupPlanOperator(id, table, (LocalPredicateAtom) pred, cardinality);
+			if (id.getSchema().getColumnNumber() != column) {
+				continue;
+			}
+			if (id.isHashIndex()) {
+				if (equality) {
+					return id;
+				}
+			}
+			else if (treeIndex == null) {
+				treeIndex = id;
+			}
+		}
+		return treeIndex;
+	}
+	
+	/**
+	 * Tries to create an index scan on a composite index for a conjunction of local predicates.
+	 * The function matches the boolean factors of the conjunction against the key prefixes
+	 * of the available composite indexes: equality predicates on the leading key columns,
+	 * optionally followed by a range or between predicate on the next column. The index with
+	 * the longest matched prefix is chosen. If no composite index matches at least two of its
+	 * columns, the function returns null, and a lookup on a single predicate should be
+	 * considered instead.
+	 * 
+	 * The boolean factors that are not represented by the index scan are available through
+	 * the conjunction minus the scan's local predicate, and must still be applied by a filter.
+	 * 
+	 * @param table The table access for which this function searches for a suitable index access.
+	 * @param cardinality The cardinality after the application of the matched predicates.
+	 * @param pred The conjunction of predicates on the accessed table.
+	 * @param indexes The list of available indexes for the accessed table.
+	 * @return An index scan operator for a prefix of a composite index, or null.
+	 */
+	public static final IndexLookupPlanOperator createIndexLookup(
+			BaseTableAccess table, long cardinality,
+			LocalPredicateConjunct pred, List<IndexDescriptor> indexes)
+	{
+		LocalPredicate[] factors = pred.getPredicates();
+		IndexDescriptor bestIndex = null;
+		List<LocalPredicate> bestMatch = null;
+		
+		for (IndexDescriptor id : indexes) {
+			if (!id.getSchema().isComposite()) {
+				continue;
+			}
+			List<LocalPredicate> match = matchKeyPrefix(id.getSchema().getColumnNumbers(), factors);
+			if (match.size() > 1 && (bestMatch == null || match.size() > bestMatch.size())) {
+				bestIndex = id;
+				bestMatch = match;
+			}
+		}
+		
+		if (bestIndex == null) {
+			return null;
+		}
+		return new IndexLookupPlanOperator(bestIndex, table, 
+				bestMatch.toArray(new LocalPredicate[bestMatch.size()]), cardinality);
+	}
+	
+	/**
+	 * Matches boolean factors against the columns of an index key. For each key column, an
+	 * equality predicate is taken, if there is one. Otherwise, a range predicate is taken
+	 * and the match ends, because the order of the following columns is not usable any more.
+	 * 
+	 * @param keyColumns The columns of the index key.
+	 * @param factors The boolean factors.
+	 * @return The matched predicates, one per matched key column, in key order.
+	 */
+	private static final List<LocalPredicate> matchKeyPrefix(int[] keyColumns, LocalPredicate[] factors)
+	{
+		List<LocalPredicate> match = new ArrayList<LocalPredicate>(keyColumns.length);
+		
+		for (int column : keyColumns) {
+			LocalPredicate equality = null;
+			LocalPredicate range = null;
+			
+			for (LocalPredicate factor : factors) {
+				if (factor instanceof LocalPredicateAtom) {
+					LocalPredicateAtom atom = (LocalPredicateAtom) factor;
+					Predicate.Operator op = atom.getParsedPredicate().getOp();
+					if (atom.getColumn().getColumnIndex() != column ||
+							op == Predicate.Operator.NOT_EQUAL || op == Predicate.Operator.UNDETERMINED) {
+						continue;
+					}
+					if (op == Predicate.Operator.EQUAL) {
+						equality = equality == null ? atom : equality;
+					}
+					else if (range == null) {
+						range = atom;
+					}
 				}
-				else if (pred instanceof LocalPredicateBetween) {
-					return new IndexLookupPlanOperator(id, table, (LocalPredicateBetween) pred, cardinality);
+				else if (factor instanceof LocalPredicateBetween &&
+						((LocalPredicateBetween) factor).getColumn().getColumnIndex() == column && range == null)
+				{
+					range = factor;
 				}
 			}
+			
+			if (equality != null) {
+				match.add(equality);
+			}
+			else {
+				if (range != null) {
+					match.add(range);
+				}
+				break;
+			}
 		}
-		return null;
+		return match;
 	}
 	
 	/**
@@ -196,6 +340,19 @@ public class PhysicalPlanGeneratorUtils
 		}
 	}
 	
+	/**
+	 * Checks if the given join predicate allows to be evaluated through a Hash-Join.
+	 * Like the Merge-Join, the Hash-Join supports only equality predicates, but it does
+	 * not need its inputs sorted.
+	 * 
+	 * @param predicate The predicate to be checked. 
+	 * @return true, if the predicate can be evaluated through a Hash-Join, false if not.
+	 */
+	public static final boolean isHashJoinPossible(JoinPredicate predicate)
+	{
+		return isMergeJoinPossible(predicate);
+	}
+	
 	/**
 	 * Checks if the plan rooted at the given operator satisfies an order requirement. If it
 	 * does, it is returned as it is. If it does not, a <tt>SortPlanOperator</tt> is added
@@ -213,23 +370,133 @@ public class PhysicalPlanGeneratorUtils
 			int[] sortColumns, boolean[] direction)
 	{
 		// check if the operator has the required output properties
+		if (isOrderMet(pop, requestedOrder)) {
+			return pop;
+		}
+		
+		// we need an extra sort operator
+		return new SortPlanOperator(pop, sortColumns, direction);
+	}
+	
+	/**
+	 * Checks if the plan rooted at the given operator satisfies an order requirement, like
+	 * {@link #addSortIfNecessary(OptimizerPlanOperator, RequestedOrder[], int[], boolean[])}.
+	 * If a sort needs to be added and the query returns only a limited number of rows, a
+	 * <tt>TopNSortPlanOperator</tt> is added, which produces only those rows.
+	 * 
+	 * @param pop The plan to check and add the sort to.
+	 * @param requestedOrder The order that is expected.
+	 * @param sortColumns The indices of the columns to sort after, if a sort needs to be added.
+	 * @param direction The array of flags for the sort direction. True indicates ascending, false
+	 *                  indicates descending.
+	 * @param rowLimit The number of rows that the query returns at most, or -1, if unlimited.
+	 * @return A plan based on the given plan that satisfies the given order requirement. 
+	 */
+	public static final OptimizerPlanOperator addSortIfNecessary(
+			OptimizerPlanOperator pop, RequestedOrder[] requestedOrder,
+			int[] sortColumns, boolean[] direction, long rowLimit)
+	{
+		if (rowLimit < 0 || rowLimit > Integer.MAX_VALUE) {
+			return addSortIfNecessary(pop, requestedOrder, sortColumns, direction);
+		}
+		else if (isOrderMet(pop, requestedOrder)) {
+			return pop;
+		}
+		
+		// the rows beyond the limit are never needed, so they are not sorted
+		return new TopNSortPlanOperator(pop, sortColumns, direction, (int) rowLimit);
+	}
+	
+	/**
+	 * Checks if the plan rooted at the given operator produces its tuples in the requested order.
+	 * 
+	 * @param pop The plan to check.
+	 * @param requestedOrder The order that is expected.
+	 * @return True, if the order is met, false otherwise.
+	 */
+	private static final boolean isOrderMet(OptimizerPlanOperator pop, RequestedOrder[] requestedOrder)
+	{
 		OrderedColumn[] producedOrder = pop.getColumnOrder();
+		if (producedOrder == null || producedOrder.length < requestedOrder.length) {
+			return false;
+		}
+		for (int i = 0; i < requestedOrder.length; i++) {
+			if (!requestedOrder[i].isMetBy(producedOrder[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Creates the candidate plans for a group by over the given plan: one that sorts the input
+	 * on the grouping columns, unless it is sorted already, and groups the sorted stream, and one
+	 * that groups the unsorted input in a hash table. Both candidates are costed, such that
+	 * the cheaper one can be chosen through {@link #prunePlans(OptimizerPlanOperator[], InterestingOrder[])}.
+	 * The sort based candidate sorts first after the requested order, if given, such that its
+	 * order can be reused. The hash based candidate produces no order.
+	 * 
+	 * @param plan The plan producing the tuples to group.
+	 * @param outCols The columns produced by the group by.
+	 * @param groupColIndices The indices of the grouping columns in the input tuple.
+	 * @param aggColIndices The indices of the aggregation columns in the input tuple.
+	 * @param outCardinality The estimated number of groups.
+	 * @param order A requested order on a subset of the grouping columns. May be null.
+	 * @param orderColIndices The indices of the columns of the requested order in the input tuple.
+	 * @param costUpdater The cost updater to cost the candidates with.
+	 * @return The costed candidate plans.
+	 * @throws OptimizerException Thrown, if a group by operator could not be created.
+	 */
+	public static final OptimizerPlanOperator[] createGroupByPlans(OptimizerPlanOperator plan,
+			ProducedColumn[] outCols, int[] groupColIndices, int[] aggColIndices, int outCardinality,
+			RequestedOrder[] order, int[] orderColIndices, PhysicalPlanCostUpdater costUpdater)
+	throws OptimizerException
+	{
+		// without grouping columns, there is a single group and nothing to sort or hash
+		if (groupColIndices.length == 0) {
+			OptimizerPlanOperator groupBy = new GroupByPlanOperator(plan, outCols, groupColIndices, aggColIndices, outCardinality);
+			costUpdater.costGenericOperator(groupBy);
+			return new OptimizerPlanOperator[] { groupBy };
+		}
 		
-		if (producedOrder != null && producedOrder.length >= requestedOrder.length) {
-			boolean match = true;
-			for (int i = 0; i < requestedOrder.length; i++) {
-				if (!requestedOrder[i].isMetBy(producedOrder[i])) {
-					match = false;
-					break;
-				}
+		// the sort order starts with the requested order and continues with the other grouping columns
+		Column[] inputCols = plan.getReturnedColumns();
+		List<RequestedOrder> sortOrder = new ArrayList<RequestedOrder>();
+		List<Integer> sortCols = new ArrayList<Integer>();
+		if (order != null) {
+			for (int i = 0; i < order.length; i++) {
+				sortOrder.add(order[i]);
+				sortCols.add(orderColIndices[i]);
 			}
-			if (match) {
-				return pop;
+		}
+		for (int i = 0; i < groupColIndices.length; i++) {
+			if (!sortCols.contains(groupColIndices[i])) {
+				sortOrder.add(new RequestedOrder(inputCols[groupColIndices[i]], Order.ASCENDING));
+				sortCols.add(groupColIndices[i]);
 			}
 		}
 		
-		// we need an extra sort operator
-		return new SortPlanOperator(pop, sortColumns, direction);
+		int[] sortColumns = new int[sortCols.size()];
+		boolean[] direction = new boolean[sortCols.size()];
+		for (int i = 0; i < sortColumns.length; i++) {
+			sortColumns[i] = sortCols.get(i);
+			direction[i] = sortOrder.get(i).getOrder() != Order.DESCENDING;
+		}
+		
+		HashGroupByPlanOperator hashGroupBy = new HashGroupByPlanOperator(plan, outCols, groupColIndices, aggColIndices, outCardinality);
+		costUpdater.costGenericOperator(hashGroupBy);
+		
+		// a grouping on a dictionary encoded column aggregates into arrays indexed by code,
+		// which beats sorting unless the sort also produces a requested order
+		if ((order == null || order.length == 0) && hashGroupBy.getGroupDictionary() != null) {
+			return new OptimizerPlanOperator[] { hashGroupBy };
+		}
+		
+		OptimizerPlanOperator sorted = addSortIfNecessary(plan,
+				sortOrder.toArray(new RequestedOrder[sortOrder.size()]), sortColumns, direction);
+		OptimizerPlanOperator sortGroupBy = new GroupByPlanOperator(sorted, outCols, groupColIndices, aggColIndices, outCardinality);
+		costUpdater.costGenericOperator(sortGroupBy);
+		return new OptimizerPlanOperator[] { sortGroupBy, hashGroupBy };
 	}
 	
 	
@@ -405,6 +672,387 @@ public class PhysicalPlanGeneratorUtils
 		}
 	}
 
+	// --------------------------------------------------------------------------------------------
+	//                                   Late materialization
+	// --------------------------------------------------------------------------------------------
+	
+	/**
+	 * Creates a table scan for a late materialized access. The scan produces only the given
+	 * early columns (typically the predicate and join key columns), followed by the RID of
+	 * the tuple. The remaining columns are later added by {@link #addDeferredFetch}.
+	 * <p>
+	 * Whether the late materialized plan is preferable is decided by costing it next to the
+	 * early materialized one, see {@link #applyLateMaterialization}.
+	 * 
+	 * @param baseTable The table access to create the scan for.
+	 * @param earlyColumns The columns of the table that are needed before the FETCH.
+	 * @return The RID producing table scan.
+	 */
+	public static TableScanPlanOperator createRIDTableScan(BaseTableAccess baseTable, Column[] earlyColumns)
+	{
+		Column[] cols = new Column[earlyColumns.length + 1];
+		System.arraycopy(earlyColumns, 0, cols, 0, earlyColumns.length);
+		cols[earlyColumns.length] = new Column(baseTable, DataType.ridType(), Column.RID_COLUMN_INDEX);
+		return new TableScanPlanOperator(baseTable, cols);
+	}
+	
+	/**
+	 * Adds the deferred FETCH of a late materialized plan on top of the given plan. The plan
+	 * must produce the RID of the given table, as created by {@link #createRIDTableScan}. The
+	 * FETCH carries all other columns of the plan through and reads the missing columns of the
+	 * table.
+	 * 
+	 * @param plan The plan producing the RID of the table.
+	 * @param baseTable The table access whose tuples are materialized.
+	 * @param outputColumns The columns to produce.
+	 * @return The FETCH operator.
+	 */
+	public static FetchPlanOperator addDeferredFetch(OptimizerPlanOperator plan, BaseTableAccess baseTable,
+			Column[] outputColumns)
+	{
+		return new FetchPlanOperator(plan, baseTable, outputColumns);
+	}
+	
+	/**
+	 * Decides by cost whether the sort at the root of a plan materializes its tuples late. An
+	 * alternative is created where the table scans below the sort produce only the columns that
+	 * the sort, the filters and the hash joins need, together with the RID of their table. The
+	 * RIDs are carried through the filters and joins, and above the sort a deferred FETCH per
+	 * table reads the remaining columns of the sorted tuples. The narrower tuples make the sort
+	 * and the joins cheaper, while each FETCH accesses a random page per sorted tuple, so the
+	 * alternative pays off for wide tuples, for which the sort writes and reads many pages.
+	 * <p>
+	 * Only the root is considered, because that is where the generator places the sort for
+	 * the ORDER BY clause, and where no operator above relies on the early columns. Plans with
+	 * other operators below the sort, such as index lookups or merge and nested loop joins,
+	 * are kept as they are.
+	 * 
+	 * @param plan The costed plan.
+	 * @param costEstimator The cost estimator to cost the alternative with.
+	 * @return The late materialized plan, if it is cheaper, otherwise the given plan.
+	 */
+	public static OptimizerPlanOperator applyLateMaterialization(OptimizerPlanOperator plan,
+			CostEstimator costEstimator)
+	{
+		if (!(plan instanceof SortPlanOperator)) {
+			return plan;
+		}
+		SortPlanOperator sort = (SortPlanOperator) plan;
+		Column[] outputColumns = sort.getChild().getReturnedColumns();
+		
+		// the sort columns are needed early
+		int[] sortColumns = sort.getSortColumnIndices();
+		Set<Column> neededColumns = new HashSet<Column>();
+		for (int i = 0; i < sortColumns.length; i++) {
+			Column col = outputColumns[sortColumns[i]];
+			if (col.isRID()) {
+				return plan;
+			}
+			neededColumns.add(col);
+		}
+		
+		OptimizerPlanOperator narrowed;
+		try {
+			narrowed = narrowToColumns(sort.getChild(), neededColumns);
+		}
+		catch (OptimizerException oex) {
+			return plan;
+		}
+		if (narrowed == null || narrowed == sort.getChild()) {
+			// nothing is left to fetch late
+			return plan;
+		}
+		
+		List<Column> narrowedColumns = Arrays.asList(narrowed.getReturnedColumns());
+		int[] lateSortColumns = new int[sortColumns.length];
+		for (int i = 0; i < sortColumns.length; i++) {
+			lateSortColumns[i] = narrowedColumns.indexOf(outputColumns[sortColumns[i]]);
+		}
+		SortPlanOperator lateSort = sort instanceof TopNSortPlanOperator ?
+				new TopNSortPlanOperator(narrowed, lateSortColumns, sort.getSortAscending(),
+						((TopNSortPlanOperator) sort).getRowLimit()) :
+				new SortPlanOperator(narrowed, lateSortColumns, sort.getSortAscending());
+		
+		// one deferred FETCH per table, each carrying the RIDs of the tables fetched after it
+		List<Column> rids = new ArrayList<Column>();
+		for (Column col : narrowedColumns) {
+			if (col.isRID()) {
+				rids.add(col);
+			}
+		}
+		OptimizerPlanOperator late = lateSort;
+		for (int r = 0; r < rids.size(); r++) {
+			BaseTableAccess table = (BaseTableAccess) rids.get(r).getRelation();
+			Column[] fetchedColumns = outputColumns;
+			if (r < rids.size() - 1) {
+				List<Column> carried = Arrays.asList(late.getReturnedColumns());
+				List<Column> cols = new ArrayList<Column>();
+				for (Column col : outputColumns) {
+					if (col.getRelation() == table || carried.contains(col)) {
+						cols.add(col);
+					}
+				}
+				cols.addAll(rids.subList(r + 1, rids.size()));
+				fetchedColumns = cols.toArray(new Column[cols.size()]);
+			}
+			late = addDeferredFetch(late, table, fetchedColumns);
+		}
+		
+		PhysicalPlanCostUpdater costUpdater = new PhysicalPlanCostUpdater(costEstimator);
+		costUpdater.costGenericOperator(plan);
+		costUpdater.costGenericOperator(late);
+		return late.getCumulativeCosts() < plan.getCumulativeCosts() ? late : plan;
+	}
+	
+	/**
+	 * Rebuilds a plan such that its table scans produce only the needed columns and the columns
+	 * that the filters and hash joins of the plan evaluate. A scan that leaves out columns also
+	 * produces the RID of its table, which is carried up to the root of the plan, so that a
+	 * deferred FETCH can read the left out columns. Every column that the given plan produces
+	 * is thus either produced by the rebuilt plan as well, or can be fetched through a RID.
+	 * 
+	 * @param plan The plan to rebuild.
+	 * @param neededColumns The columns of the plan's output that must be produced.
+	 * @return The rebuilt plan, the given plan, if no column can be left out, or null, if the
+	 *         plan contains an operator that cannot be rebuilt.
+	 * @throws OptimizerException Thrown, if a join could not be rebuilt.
+	 */
+	private static OptimizerPlanOperator narrowToColumns(OptimizerPlanOperator plan, Set<Column> neededColumns)
+	throws OptimizerException
+	{
+		if (plan instanceof TableScanPlanOperator) {
+			TableScanPlanOperator scan = (TableScanPlanOperator) plan;
+			Column[] cols = scan.getReturnedColumns();
+			List<Column> earlyColumns = new ArrayList<Column>(cols.length);
+			for (Column col : cols) {
+				if (col.isRID()) {
+					return null;
+				}
+				if (neededColumns.contains(col)) {
+					earlyColumns.add(col);
+				}
+			}
+			if (earlyColumns.size() == cols.length) {
+				return scan;
+			}
+			TableScanPlanOperator ridScan = createRIDTableScan(scan.getTableAccess(),
+					earlyColumns.toArray(new Column[earlyColumns.size()]));
+			ridScan.setPrefetchingLength(scan.getPrefetchingLength());
+			return ridScan;
+		}
+		else if (plan instanceof FilterPlanOperator) {
+			// the predicate refers to the positions of the columns in the child's tuples
+			FilterPlanOperator filter = (FilterPlanOperator) plan;
+			Column[] childColumns = filter.getChild().getReturnedColumns();
+			List<Integer> positions = new ArrayList<Integer>();
+			if (!collectColumnPositions(filter.getSimplePredicate(), positions)) {
+				return null;
+			}
+			Set<Column> childNeeded = new HashSet<Column>(neededColumns);
+			for (int pos : positions) {
+				childNeeded.add(childColumns[pos]);
+			}
+			
+			OptimizerPlanOperator child = narrowToColumns(filter.getChild(), childNeeded);
+			if (child == null || child == filter.getChild()) {
+				return child == null ? null : filter;
+			}
+			List<Column> newColumns = Arrays.asList(child.getReturnedColumns());
+			Map<Integer, Integer> columnMap = new HashMap<Integer, Integer>();
+			for (int pos : positions) {
+				columnMap.put(pos, newColumns.indexOf(childColumns[pos]));
+			}
+			return new FilterPlanOperator(child,
+					filter.getSimplePredicate().createCopyAdjustedForProjectedTuple(columnMap),
+					filter.getOutputCardinality());
+		}
+		else if (plan instanceof HashJoinPlanOperator) {
+			HashJoinPlanOperator join = (HashJoinPlanOperator) plan;
+			Column[] leftColumns = join.getLeftChild().getReturnedColumns();
+			Column[] rightColumns = join.getRightChild().getReturnedColumns();
+			Column[] joinColumns = join.getReturnedColumns();
+			
+			Set<Column> leftNeeded = new HashSet<Column>();
+			Set<Column> rightNeeded = new HashSet<Column>();
+			for (int i = 0; i < joinColumns.length; i++) {
+				if (joinColumns[i].isRID()) {
+					return null;
+				}
+				if (!neededColumns.contains(joinColumns[i])) {
+					continue;
+				}
+				if (join.leftOutColMap[i] != -1) {
+					leftNeeded.add(joinColumns[i]);
+				}
+				else {
+					rightNeeded.add(joinColumns[i]);
+				}
+			}
+			for (int i = 0; i < join.leftJoinColumns.length; i++) {
+				leftNeeded.add(leftColumns[join.leftJoinColumns[i]]);
+				rightNeeded.add(rightColumns[join.rightJoinColumns[i]]);
+			}
+			
+			OptimizerPlanOperator left = narrowToColumns(join.getLeftChild(), leftNeeded);
+			OptimizerPlanOperator right = narrowToColumns(join.getRightChild(), rightNeeded);
+			if (left == null || right == null) {
+				return null;
+			}
+			List<Column> newLeft = Arrays.asList(left.getReturnedColumns());
+			List<Column> newRight = Arrays.asList(right.getReturnedColumns());
+			
+			// a column that is not needed is dropped, if its table's RID is carried instead
+			List<Column> outColumns = new ArrayList<Column>();
+			for (Column col : joinColumns) {
+				List<Column> side = newLeft.contains(col) ? newLeft : newRight;
+				if (side.contains(col) && (neededColumns.contains(col) || !containsRID(side, col.getRelation()))) {
+					outColumns.add(col);
+				}
+			}
+			for (Column col : newLeft) {
+				if (col.isRID()) {
+					outColumns.add(col);
+				}
+			}
+			for (Column col : newRight) {
+				if (col.isRID()) {
+					outColumns.add(col);
+				}
+			}
+			if (left == join.getLeftChild() && right == join.getRightChild() &&
+					outColumns.size() == joinColumns.length) {
+				return join;
+			}
+			
+			int[] leftOutColMap = new int[outColumns.size()];
+			int[] rightOutColMap = new int[outColumns.size()];
+			for (int i = 0; i < outColumns.size(); i++) {
+				leftOutColMap[i] = newLeft.indexOf(outColumns.get(i));
+				rightOutColMap[i] = leftOutColMap[i] == -1 ? newRight.indexOf(outColumns.get(i)) : -1;
+			}
+			int[] leftJoinColumns = new int[join.leftJoinColumns.length];
+			int[] rightJoinColumns = new int[join.rightJoinColumns.length];
+			for (int i = 0; i < leftJoinColumns.length; i++) {
+				leftJoinColumns[i] = newLeft.indexOf(leftColumns[join.leftJoinColumns[i]]);
+				rightJoinColumns[i] = newRight.indexOf(rightColumns[join.rightJoinColumns[i]]);
+			}
+			
+			HashJoinPlanOperator narrowed = new HashJoinPlanOperator(left, right, join.getJoinPredicate(),
+					leftJoinColumns, rightJoinColumns, leftOutColMap, rightOutColMap, join.getOutputCardinality());
+			narrowed.setDegreeOfParallelism(join.getDegreeOfParallelism());
+			return narrowed;
+		}
+		return null;
+	}
+	
+	/**
+	 * Collects the positions in the tuple of the columns that a local predicate evaluates.
+	 * 
+	 * @param pred The predicate.
+	 * @param positions The list to add the positions to.
+	 * @return True, if the positions are known for all parts of the predicate, false otherwise.
+	 */
+	private static boolean collectColumnPositions(LocalPredicate pred, List<Integer> positions)
+	{
+		if (pred instanceof LocalPredicateAtom) {
+			positions.add(((LocalPredicateAtom) pred).getColumn().getColumnIndex());
+			return true;
+		}
+		else if (pred instanceof LocalPredicateBetween) {
+			positions.add(((LocalPredicateBetween) pred).getColumn().getColumnIndex());
+			return true;
+		}
+		else if (pred instanceof LocalPredicateConjunct) {
+			for (LocalPredicate p : ((LocalPredicateConjunct) pred).getPredicates()) {
+				if (!collectColumnPositions(p, positions)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Checks whether the given columns contain the RID of a relation.
+	 */
+	private static boolean containsRID(List<Column> columns, Relation relation)
+	{
+		for (Column col : columns) {
+			if (col.isRID() && col.getRelation() == relation) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	// --------------------------------------------------------------------------------------------
+	//                                         Deletes
+	// --------------------------------------------------------------------------------------------
+	
+	/**
+	 * Creates the plan that deletes the tuples of a table that qualify for the predicate of the
+	 * table access. A table scan evaluates the predicate and produces the RIDs of the qualifying
+	 * tuples, and the delete removes the tuples and their entries from all indexes of the table,
+	 * B-Tree indexes over one or several columns as well as hash indexes.
+	 * 
+	 * @param table The table access with the predicate of the delete.
+	 * @param indexes All indexes of the table.
+	 * @return The delete plan.
+	 */
+	public static DeletePlanOperator createDeletePlan(BaseTableAccess table, List<IndexDescriptor> indexes)
+	{
+		TableScanPlanOperator ridScan = createRIDTableScan(table, new Column[0]);
+		return new DeletePlanOperator(ridScan, table, indexes.toArray(new IndexDescriptor[indexes.size()]));
+	}
+	
+	/**
+	 * Completes an uncorrelated index lookup to a plan producing the given columns. If the index
+	 * covers all columns, the lookup is turned into an index-only lookup that produces them from
+	 * the index entries, which costs only the index access. Otherwise, a FETCH is added that
+	 * reads the columns from the table with one random page access per RID.
+	 * 
+	 * @param lookup The uncorrelated index lookup producing RIDs.
+	 * @param outputColumns The columns to produce.
+	 * @return The index-only lookup, or the FETCH above the lookup.
+	 */
+	public static OptimizerPlanOperator addFetchIfNotCovered(IndexLookupPlanOperator lookup, Column[] outputColumns)
+	{
+		if (!lookup.isCorrelated() && lookup.coversColumns(outputColumns)) {
+			return new IndexLookupPlanOperator(lookup, outputColumns);
+		}
+		return new FetchPlanOperator(lookup, lookup.getTableAccess(), outputColumns);
+	}
+	
+	/**
+	 * Completes an uncorrelated index lookup to a plan producing the given columns, like
+	 * {@link #addFetchIfNotCovered(IndexLookupPlanOperator, Column[])}, but chooses between the
+	 * two kinds of FETCH by their costs: The plain FETCH accesses the table once per RID in the
+	 * order of the index keys, the RID sorted FETCH collects and sorts the RIDs first and reads
+	 * every page once and in page order. The latter destroys the key order of the lookup, so it
+	 * is only considered if that order is not needed.
+	 * 
+	 * @param lookup The uncorrelated index lookup producing RIDs.
+	 * @param outputColumns The columns to produce.
+	 * @param costEstimator The cost estimator used to cost the alternatives.
+	 * @param keepOrder Flag indicating whether the order of the index keys must be preserved.
+	 * @return The index-only lookup, or the cheaper FETCH above the lookup.
+	 */
+	public static OptimizerPlanOperator addFetchIfNotCovered(IndexLookupPlanOperator lookup, Column[] outputColumns,
+			CostEstimator costEstimator, boolean keepOrder)
+	{
+		OptimizerPlanOperator plain = addFetchIfNotCovered(lookup, outputColumns);
+		if (keepOrder || lookup.isCorrelated() || !(plain instanceof FetchPlanOperator)) {
+			return plain;
+		}
+		
+		FetchPlanOperator sorted = new FetchPlanOperator(lookup, lookup.getTableAccess(), outputColumns, true);
+		PhysicalPlanCostUpdater costUpdater = new PhysicalPlanCostUpdater(costEstimator);
+		costUpdater.costGenericOperator(plain);
+		costUpdater.costGenericOperator(sorted);
+		return sorted.getCumulativeCosts() < plain.getCumulativeCosts() ? sorted : plain;
+	}
+	
 	/**
 	 * Creates the inner side of an index-nested-loop join. This method returns a plan,
 	 * if the given plan candidate is a table access (not a join plan itself) and if
@@ -449,33 +1097,30 @@ public class PhysicalPlanGeneratorUtils
 			}
 			Column rightCol = atom.getRightHandColumn();
 			
-			for (int i = 0; i < indexes.size(); i++) {
-				IndexDescriptor ix = indexes.get(i);
-				if (ix.getSchema().getColumnNumber() == rightCol.getColumnIndex()) {
-					// this index is a match!
-					
-					// create a fake abstract join to call the cardinality estimator
-					// for the per access cardinality
-					Relation outer = atom.getLeftHandOriginatingTable();
-					
-					long outerOriginalOutCard = outer.getOutputCardinality();
-					long innerOriginalOutCard = baseTable.getOutputCardinality();
-					
-					outer.setOutputCardinality(1);
-					baseTable.setOutputCardinality(baseTable.getTable().getStatistics().getCardinality());
-					
-					AbstractJoinPlanOperator fakeJoin = 
-						new AbstractJoinPlanOperator(outer, baseTable, atom);
-					cardEstimator.estimateJoinCardinality(fakeJoin);
-					
-					outer.setOutputCardinality(outerOriginalOutCard);
-					baseTable.setOutputCardinality(innerOriginalOutCard);
-					
-					// create the access and any fetch we need
-					ixscan = new IndexLookupPlanOperator(ix, baseTable, 
-							outerJoinColumns[0], fakeJoin.getOutputCardinality());
-					break;
-				}
+			IndexDescriptor ix = findIndex(indexes, rightCol.getColumnIndex(), true);
+			if (ix != null) {
+				// this index is a match!
+				
+				// create a fake abstract join to call the cardinality estimator
+				// for the per access cardinality
+				Relation outer = atom.getLeftHandOriginatingTable();
+				
+				long outerOriginalOutCard = outer.getOutputCardinality();
+				long innerOriginalOutCard = baseTable.getOutputCardinality();
+				
+				outer.setOutputCardinality(1);
+				baseTable.setOutputCardinality(baseTable.getTable().getStatistics().getCardinality());
+				
+				AbstractJoinPlanOperator fakeJoin = 
+					new AbstractJoinPlanOperator(outer, baseTable, atom);
+				cardEstimator.estimateJoinCardinality(fakeJoin);
+				
+				outer.setOutputCardinality(outerOriginalOutCard);
+				baseTable.setOutputCardinality(innerOriginalOutCard);
+				
+				// create the access and any fetch we need
+				ixscan = new IndexLookupPlanOperator(ix, baseTable, 
+						outerJoinColumns[0], fakeJoin.getOutputCardinality());
 			}
 		}
 		
@@ -586,4 +1231,72 @@ public class PhysicalPlanGeneratorUtils
 			return fetch;
 		}
 	}
+	
+	// --------------------------------------------------------------------------------------------
+	//                                 Intra-query parallelism
+	// --------------------------------------------------------------------------------------------
+	
+	/**
+	 * Places exchanges into a plan, such that its operators run in up to the given number of
+	 * threads. Table scans and sorts become parallel themselves, while hash group bys and hash
+	 * joins are split into instances between repartitioning and gathering exchanges. Each
+	 * operator gets a degree of parallelism according to the number of tuples it processes,
+	 * so that every thread has at least {@link Constants#MIN_TUPLES_PER_PARALLEL_INSTANCE} tuples
+	 * to work on, and small inputs stay in a single thread.
+	 * <p>
+	 * The inner side of a nested loop join is opened anew for every outer tuple, so it is left
+	 * to a single thread, as starting threads per outer tuple would cost more than it saves.
+	 * The orders that the plan relies on are kept, since the parallel operators produce the same
+	 * orders as the sequential ones, and the others promise none.
+	 * 
+	 * @param plan The plan to parallelize.
+	 * @param degreeOfParallelism The maximal number of threads per operator.
+	 */
+	public static void placeExchanges(OptimizerPlanOperator plan, int degreeOfParallelism)
+	{
+		if (degreeOfParallelism < 1) {
+			throw new IllegalArgumentException("The degree of parallelism must be at least one.");
+		}
+		
+		if (plan instanceof TableScanPlanOperator) {
+			TableScanPlanOperator scan = (TableScanPlanOperator) plan;
+			scan.setDegreeOfParallelism(getParallelism(scan.getInputCardinality(), degreeOfParallelism));
+		}
+		else if (plan instanceof SortPlanOperator && !(plan instanceof TopNSortPlanOperator)) {
+			SortPlanOperator sort = (SortPlanOperator) plan;
+			sort.setDegreeOfParallelism(getParallelism(sort.getOutputCardinality(), degreeOfParallelism));
+		}
+		else if (plan instanceof HashGroupByPlanOperator) {
+			HashGroupByPlanOperator groupBy = (HashGroupByPlanOperator) plan;
+			groupBy.setDegreeOfParallelism(getParallelism(groupBy.getChild().getOutputCardinality(),
+					degreeOfParallelism));
+		}
+		else if (plan instanceof HashJoinPlanOperator) {
+			HashJoinPlanOperator join = (HashJoinPlanOperator) plan;
+			join.setDegreeOfParallelism(getParallelism(join.getBuildChild().getOutputCardinality() +
+					join.getProbeChild().getOutputCardinality(), degreeOfParallelism));
+		}
+		else if (plan instanceof NestedLoopJoinPlanOperator) {
+			placeExchanges(((NestedLoopJoinPlanOperator) plan).getOuterChild(), degreeOfParallelism);
+			return;
+		}
+		
+		Iterator<OptimizerPlanOperator> children = plan.getChildren();
+		while (children.hasNext()) {
+			placeExchanges(children.next(), degreeOfParallelism);
+		}
+	}
+	
+	/**
+	 * Computes the number of threads for an operator that processes the given number of tuples.
+	 * 
+	 * @param numTuples The estimated number of tuples.
+	 * @param degreeOfParallelism The maximal number of threads.
+	 * @return The number of threads, at least one.
+	 */
+	private static int getParallelism(long numTuples, int degreeOfParallelism)
+	{
+		long threads = numTuples / Constants.MIN_TUPLES_PER_PARALLEL_INSTANCE;
+		return (int) Math.max(1, Math.min(degreeOfParallelism, threads));
+	}
 }
@@ -0,0 +1,94 @@
+package de.tuberlin.dima.minidb.parser;
+
+
+import java.util.Collections;
+import java.util.Iterator;
+
+
+/**
+ * A parse tree node representing a LIMIT clause, which restricts the number of rows
+ * that a select query returns.
+ */
+public class LimitClause implements ParseTreeNode
+{
+	/**
+	 * The maximal number of rows returned by the query.
+	 */
+	protected long rowLimit;
+
+
+	/**
+	 * Creates a LIMIT clause for the given number of rows.
+	 *
+	 * @param rowLimit The maximal number of rows returned by the query.
+	 */
+	public LimitClause(long rowLimit)
+	{
+		this.rowLimit = rowLimit;
+	}
+
+	/**
+	 * Gets the maximal number of rows returned by the query.
+	 *
+	 * @return The row limit.
+	 */
+	public long getRowLimit()
+	{
+		return this.rowLimit;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.parser.ParseTreeNode#getNodeName()
+	 */
+	@Override
+	public String getNodeName()
+	{
+		return "LIMIT";
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.parser.ParseTreeNode#getNodeContents()
+	 */
+	@Override
+	public String getNodeContents()
+	{
+		return "LIMIT " + this.rowLimit;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.parser.ParseTreeNode#getChildren()
+	 */
+	@Override
+	public Iterator<? extends ParseTreeNode> getChildren()
+	{
+		return Collections.<ParseTreeNode>emptyList().iterator();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.parser.ParseTreeNode#getNumberOfChildren()
+	 */
+	@Override
+	public int getNumberOfChildren()
+	{
+		return 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.parser.ParseTreeNode#isIdenticalTo(de.tuberlin.dima.minidb.parser.ParseTreeNode)
+	 */
+	@Override
+	public boolean isIdenticalTo(ParseTreeNode node)
+	{
+		return (node != null) && (node instanceof LimitClause) &&
+		       ( ((LimitClause) node).rowLimit == this.rowLimit );
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return getNodeContents();
+	}
+}
@@ -0,0 +1,166 @@
+package de.tuberlin.dima.minidb.parser;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.tuberlin.dima.minidb.parser.ParseException.ErrorCode;
+import de.tuberlin.dima.minidb.parser.Token.TokenType;
+
+
+/**
+ * A parser for select queries that end with a LIMIT clause. The statement is tokenized once,
+ * and split at the last LIMIT token outside of any parenthesis. The statement before the
+ * LIMIT clause is parsed by another parser, the tokens of the LIMIT clause itself are parsed
+ * here and the clause is added to the parsed select query.
+ */
+public class LimitClauseParser implements SQLParser
+{
+	/**
+	 * The complete statement, including the LIMIT clause.
+	 */
+	private final String sqlStatement;
+
+	/**
+	 * The position in the statement where the LIMIT token starts.
+	 */
+	private final int limitPosition;
+
+	/**
+	 * The tokens after the LIMIT token, up to and including the end of the statement.
+	 */
+	private final List<Token> clauseTokens;
+
+	/**
+	 * The positions in the statement of the tokens after the LIMIT token.
+	 */
+	private final List<Integer> clausePositions;
+
+	/**
+	 * The parser for the statement before the LIMIT clause.
+	 */
+	private SQLParser statementParser;
+
+
+	/**
+	 * Creates a parser for a statement with a LIMIT clause.
+	 *
+	 * @param sqlStatement The complete statement.
+	 * @param limitPosition The position where the LIMIT token starts.
+	 * @param clauseTokens The tokens after the LIMIT token, ending with the end of the statement.
+	 * @param clausePositions The positions in the statement of the tokens after the LIMIT token.
+	 */
+	private LimitClauseParser(String sqlStatement, int limitPosition, List<Token> clauseTokens,
+			List<Integer> clausePositions)
+	{
+		this.sqlStatement = sqlStatement;
+		this.limitPosition = limitPosition;
+		this.clauseTokens = clauseTokens;
+		this.clausePositions = clausePositions;
+	}
+
+	/**
+	 * Tokenizes a statement and splits off its LIMIT clause. The LIMIT clause is the last
+	 * clause of a query, so the last LIMIT token outside of any parenthesis is taken.
+	 *
+	 * @param sqlStatement The statement to split.
+	 * @return A parser for the LIMIT clause of the statement, or null, if the statement has
+	 *         none or cannot be tokenized.
+	 */
+	public static LimitClauseParser splitLimitClause(String sqlStatement)
+	{
+		SQLTokenizer tokenizer = new SQLTokenizer(sqlStatement);
+		List<Token> tokens = new ArrayList<Token>();
+		List<Integer> positions = new ArrayList<Integer>();
+		int depth = 0;
+		int limitIndex = -1;
+
+		try {
+			Token token = null;
+			do {
+				token = tokenizer.nextToken();
+				tokens.add(token);
+				positions.add(tokenizer.getLastPosition());
+
+				if (token.getType() == TokenType.PARENTHESIS_OPEN) {
+					depth++;
+				}
+				else if (token.getType() == TokenType.PARENTHESIS_CLOSE) {
+					depth--;
+				}
+				else if (token.getType() == TokenType.LIMIT && depth == 0) {
+					limitIndex = tokens.size() - 1;
+				}
+			}
+			while (token.getType() != TokenType.END_OF_STATEMENT);
+		}
+		catch (ParseException pex) {
+			// the parser of the statement reports the error
+			return null;
+		}
+
+		if (limitIndex == -1) {
+			return null;
+		}
+		return new LimitClauseParser(sqlStatement, positions.get(limitIndex),
+				tokens.subList(limitIndex + 1, tokens.size()), positions.subList(limitIndex + 1, positions.size()));
+	}
+
+	/**
+	 * Gets the statement before the LIMIT clause.
+	 *
+	 * @return The statement without the LIMIT clause.
+	 */
+	public String getStatementWithoutLimit()
+	{
+		return this.sqlStatement.substring(0, this.limitPosition);
+	}
+
+	/**
+	 * Sets the parser for the statement before the LIMIT clause.
+	 *
+	 * @param statementParser The parser for the statement returned by
+	 *                        {@link #getStatementWithoutLimit()}.
+	 */
+	public void setStatementParser(SQLParser statementParser)
+	{
+		this.statementParser = statementParser;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.parser.SQLParser#parse()
+	 */
+	@Override
+	public ParsedQuery parse() throws ParseException
+	{
+		ParsedQuery query = this.statementParser.parse();
+		if (!(query instanceof SelectQuery)) {
+			throw new ParseException(this.sqlStatement, ErrorCode.INVALID_CLAUSE, this.limitPosition, "LIMIT");
+		}
+
+		// the clause is exactly the keyword and a non-negative integer
+		Token token = this.clauseTokens.get(0);
+		long rowLimit = -1;
+		if (token.getType() == TokenType.INTEGER_NUMBER) {
+			try {
+				rowLimit = Long.parseLong(token.getTokenString());
+			}
+			catch (NumberFormatException nfex) {
+				// reported below
+			}
+		}
+		if (rowLimit < 0) {
+			throw new ParseException(this.sqlStatement, ErrorCode.INVALID_NUMBER,
+					this.clausePositions.get(0), token.getTokenString());
+		}
+
+		token = this.clauseTokens.get(1);
+		if (token.getType() != TokenType.END_OF_STATEMENT) {
+			throw new ParseException(this.sqlStatement, ErrorCode.INVALID_TOKEN,
+					this.clausePositions.get(1), token.getTokenString());
+		}
+
+		((SelectQuery) query).setLimitClause(new LimitClause(rowLimit));
+		return query;
+	}
+}
@@ -44,6 +44,11 @@ public class SelectQuery extends ParsedQuery
 	 */
 	protected OrderByClause orderBy;
 	
+	/**
+	 * The limit clause in this query.
+	 */
+	protected LimitClause limit;
+	
 	
 	/**
 	 * A list with all children of this query.
@@ -62,7 +67,7 @@ public class SelectQuery extends ParsedQuery
 	 */
 	public SelectQuery()
 	{
-		this.allChildren = new ArrayList<ParseTreeNode>(6);
+		this.allChildren = new ArrayList<ParseTreeNode>(7);
 	}
 	
 	
@@ -217,6 +222,30 @@ public class SelectQuery extends ParsedQuery
 		return this.orderBy;
 	}
 	
+	/**
+	 * Sets the LIMIT clause.
+	 * 
+	 * @param limit The LIMIT clause.
+	 */
+	public void setLimitClause(LimitClause limit)
+	{
+		if (this.limit != null) {
+			this.allChildren.remove(this.limit);
+		}
+		
+		this.limit = limit;
+		this.allChildren.add(limit);
+	}
+	
+	/**
+	 * Gets the LIMIT clause, or null, if none is set.
+	 * 
+	 * @return The LIMIT clause.
+	 */
+	public LimitClause getLimitClause() {
+		return this.limit;
+	}
+	
 	/* 
 	 * --------------------------------------------------------------------
 	 *                           Generic Node
@@ -258,6 +287,9 @@ public class SelectQuery extends ParsedQuery
 		if (this.orderBy != null) {
 			bld.append(' ').append(this.orderBy.getNodeContents());
 		}
+		if (this.limit != null) {
+			bld.append(' ').append(this.limit.getNodeContents());
+		}
 		
 		return bld.toString();
 	}
@@ -326,6 +358,10 @@ public class SelectQuery extends ParsedQuery
 				     (this.orderBy == null && other.orderBy == null) ||
 					 (this.orderBy != null && other.orderBy != null &&
 					  this.orderBy.isIdenticalTo(other.orderBy))
+				   ) && (
+				     (this.limit == null && other.limit == null) ||
+					 (this.limit != null && other.limit != null &&
+					  this.limit.isIdenticalTo(other.limit))
 				   );
 		}
 		return false;
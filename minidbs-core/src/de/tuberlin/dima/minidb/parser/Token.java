@@ -20,7 +20,7 @@ public class Token
 		EMPTY("<empty>"),
 		
 		SELECT("SELECT"), FROM("FROM"), WHERE("WHERE"), GROUP("GROUP"),
-		HAVING("HAVING"), ORDER("ORDER"), BY("BY"),
+		HAVING("HAVING"), ORDER("ORDER"), BY("BY"), LIMIT("LIMIT"),
 		
 		INSERT("INSERT"), INTO("INTO"), UPDATE("UPDATE"), SET("SET"), DELETE("DELETE"), 
 		
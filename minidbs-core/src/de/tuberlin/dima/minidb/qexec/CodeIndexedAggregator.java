@@ -0,0 +1,199 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.io.tables.ColumnDictionary;
+import de.tuberlin.dima.minidb.parser.OutputColumn.AggregationType;
+
+
+/**
+ * Aggregation state for a grouping on a single dictionary encoded column. Because dictionary
+ * codes are dense and small, the aggregates are kept in arrays indexed by the code of the group,
+ * so neither sorting nor hashing of the input is needed. The groups can be produced in code
+ * order once the input is consumed. NULL grouping values form a group of their own, which
+ * comes after all codes.
+ * <p>
+ * The aggregates follow the hash based grouping: COUNT counts all rows of the group, SUM
+ * starts at zero, and NULL values in the aggregated columns are otherwise ignored.
+ */
+public class CodeIndexedAggregator
+{
+	/**
+	 * The index of the group of the NULL grouping value.
+	 */
+	public static final int NULL_GROUP = Constants.MAX_DICTIONARY_ENTRIES;
+
+	/**
+	 * The dictionary of the grouping column.
+	 */
+	private final ColumnDictionary dictionary;
+
+	/**
+	 * The aggregation functions for the aggregated columns.
+	 */
+	private final AggregationType[] aggTypes;
+
+	/**
+	 * The data types of the aggregated columns.
+	 */
+	private final DataType[] aggColumnTypes;
+
+	/**
+	 * The number of rows per group.
+	 */
+	private final int[] groupCounts;
+
+	/**
+	 * The number of non-NULL values per aggregated column and group.
+	 */
+	private final int[][] valueCounts;
+
+	/**
+	 * The running aggregates per aggregated column and group. COUNT columns leave them unused.
+	 */
+	private final DataField[][] aggregates;
+
+
+	/**
+	 * Creates new and empty aggregation state for grouping on a column with the given dictionary.
+	 *
+	 * @param dictionary The dictionary of the grouping column.
+	 * @param aggTypes The aggregation functions of the aggregated columns.
+	 * @param aggColumnTypes The data types of the aggregated columns.
+	 */
+	public CodeIndexedAggregator(ColumnDictionary dictionary, AggregationType[] aggTypes, DataType[] aggColumnTypes)
+	{
+		if (aggTypes.length != aggColumnTypes.length) {
+			throw new IllegalArgumentException("Number of aggregation types and column types does not match.");
+		}
+
+		this.dictionary = dictionary;
+		this.aggTypes = aggTypes;
+		this.aggColumnTypes = aggColumnTypes;
+
+		this.groupCounts = new int[NULL_GROUP + 1];
+		this.valueCounts = new int[aggTypes.length][NULL_GROUP + 1];
+		this.aggregates = new DataField[aggTypes.length][NULL_GROUP + 1];
+	}
+
+	/**
+	 * Adds a row to the group with the given code.
+	 *
+	 * @param code The dictionary code of the row's grouping value, or {@link #NULL_GROUP}.
+	 * @param aggValues The values of the aggregated columns of the row.
+	 */
+	public void aggregate(int code, DataField[] aggValues)
+	{
+		this.groupCounts[code]++;
+
+		for (int i = 0; i < this.aggTypes.length; i++) {
+			DataField value = aggValues[i];
+			if (value.isNULL()) {
+				continue;
+			}
+			this.valueCounts[i][code]++;
+
+			DataField current = this.aggregates[i][code];
+			switch (this.aggTypes[i]) {
+			case SUM:
+			case AVG:
+				if (current == null) {
+					current = (DataField) this.aggColumnTypes[i].createArithmeticZero();
+					this.aggregates[i][code] = current;
+				}
+				DataType.asArithmeticType(current).add(value);
+				break;
+			case MIN:
+				if (current == null || value.compareTo(current) < 0) {
+					this.aggregates[i][code] = value;
+				}
+				break;
+			case MAX:
+				if (current == null || value.compareTo(current) > 0) {
+					this.aggregates[i][code] = value;
+				}
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Adds a row to the group of the given grouping value.
+	 *
+	 * @param groupValue The grouping value of the row.
+	 * @param aggValues The values of the aggregated columns of the row.
+	 * @throws IllegalArgumentException Thrown, if the grouping value is not in the dictionary.
+	 */
+	public void aggregate(DataField groupValue, DataField[] aggValues)
+	{
+		if (groupValue.isNULL()) {
+			aggregate(NULL_GROUP, aggValues);
+			return;
+		}
+
+		int code = this.dictionary.getCode(groupValue);
+		if (code == ColumnDictionary.NO_CODE) {
+			throw new IllegalArgumentException("Grouping value is not contained in the dictionary: " + groupValue);
+		}
+		aggregate(code, aggValues);
+	}
+
+	/**
+	 * Checks whether any row was added to the group with the given code.
+	 *
+	 * @param code The code of the group, or {@link #NULL_GROUP}.
+	 * @return True, if the group is not empty, false otherwise.
+	 */
+	public boolean hasGroup(int code)
+	{
+		return this.groupCounts[code] > 0;
+	}
+
+	/**
+	 * Gets the grouping value for the group with the given code.
+	 *
+	 * @param code The code of the group, or {@link #NULL_GROUP}.
+	 * @return The grouping value.
+	 */
+	public DataField getGroupValue(int code)
+	{
+		return code == NULL_GROUP ? this.dictionary.getDataType().getNullValue() : this.dictionary.getValue(code);
+	}
+
+	/**
+	 * Gets the final aggregate of an aggregated column for the group with the given code.
+	 * The aggregate of a group without any non-NULL values is zero for COUNT and SUM, and
+	 * NULL otherwise.
+	 *
+	 * @param code The code of the group, or {@link #NULL_GROUP}.
+	 * @param aggIndex The index of the aggregated column.
+	 * @return The aggregate value.
+	 */
+	public DataField getAggregate(int code, int aggIndex)
+	{
+		int count = this.valueCounts[aggIndex][code];
+
+		switch (this.aggTypes[aggIndex]) {
+		case COUNT:
+			return new IntField(this.groupCounts[code]);
+		case SUM:
+			return count == 0 ? (DataField) this.aggColumnTypes[aggIndex].createArithmeticZero() :
+				this.aggregates[aggIndex][code];
+		case AVG:
+			if (count == 0) {
+				return this.aggColumnTypes[aggIndex].getNullValue();
+			}
+			DataField avg = this.aggregates[aggIndex][code].clone();
+			DataType.asArithmeticType(avg).divideBy(count);
+			return avg;
+		default:
+			DataField agg = this.aggregates[aggIndex][code];
+			return agg == null ? this.aggColumnTypes[aggIndex].getNullValue() : agg;
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+/**
+ * The signature of an exchange operator. An exchange runs one or more producer subplans in
+ * worker threads and passes their tuples in batches through bounded queues to one or more
+ * consumers. Each consumer is an exchange operator itself and behaves like any other operator
+ * to the operators above it, such that the subplans below and above an exchange remain
+ * unaware of the threads.
+ * <p>
+ * This interface is empty and serves only as a marker to identify the operator type.
+ */
+public interface ExchangeOperator extends PhysicalPlanOperator
+{
+
+}
@@ -0,0 +1,17 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+/**
+ * Operator representing an index access that answers a query from the index alone. The
+ * index returns its complete entries for the keys in a range, and the operator produces the
+ * indexed and included columns and the RID of the entries, without fetching any tuple from
+ * the table.
+ * 
+ * The interface is empty, it serves only as a marker. All methods
+ * for the operator are already specified in the interface 
+ * <tt>PhysicalPlanOperator</tt>.
+ */
+public interface IndexOnlyScanOperator extends PhysicalPlanOperator
+{
+
+}
@@ -0,0 +1,68 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import de.tuberlin.dima.minidb.core.DataField;
+
+
+/**
+ * The keys of a batch of outer tuples of an index nested loop join, shared between the join and
+ * the correlated index lookup on its inner side. The join publishes the keys of the outer tuples
+ * it buffered before it opens the inner side for the first of them. The lookup then resolves all
+ * keys of the batch at once and serves the following correlated opens from the result.
+ * <p>
+ * Every published batch gets a new version number, through which the lookup detects that the
+ * batch has changed.
+ */
+public class IndexProbeBatch
+{
+	/**
+	 * The keys of the current batch, in the order of the outer tuples.
+	 */
+	private DataField[] keys;
+
+	/**
+	 * The version of the current batch.
+	 */
+	private int version;
+
+
+	/**
+	 * Creates a new probe batch that holds no keys.
+	 */
+	public IndexProbeBatch()
+	{
+		this.keys = new DataField[0];
+	}
+
+
+	/**
+	 * Publishes the keys of a new batch, replacing those of the previous one.
+	 *
+	 * @param keys The keys of the batch, in the order of the outer tuples.
+	 */
+	public void setKeys(DataField[] keys)
+	{
+		this.keys = keys;
+		this.version++;
+	}
+
+	/**
+	 * Gets the keys of the current batch.
+	 *
+	 * @return The keys of the current batch.
+	 */
+	public DataField[] getKeys()
+	{
+		return this.keys;
+	}
+
+	/**
+	 * Gets the version of the current batch, which changes whenever new keys are published.
+	 *
+	 * @return The version of the current batch.
+	 */
+	public int getVersion()
+	{
+		return this.version;
+	}
+}
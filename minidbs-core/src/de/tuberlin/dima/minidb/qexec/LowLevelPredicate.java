@@ -182,6 +182,32 @@ public final class LowLevelPredicate implements LocalPredicate
 		}
 	}
 	
+	/**
+	 * Checks whether any value within the given range may pass the predicate. This is used to
+	 * decide from a summary of a set of values (such as a page) whether any of the values
+	 * can qualify. The check is conservative: it returns false only if no value in the range
+	 * can pass the predicate.
+	 * 
+	 * @param min The smallest value in the range. Must not be NULL.
+	 * @param max The largest value in the range. Must not be NULL.
+	 * 
+	 * @return False, if no value in the range passes the predicate, true otherwise.
+	 */
+	public boolean mayMatchRange(DataField min, DataField max)
+	{
+		int cMin = min.compareTo(this.literal);
+		int cMax = max.compareTo(this.literal);
+		
+		// determine the comparison results that values in the range can produce
+		boolean smaller = cMin < 0;
+		boolean equal = cMin <= 0 && cMax >= 0;
+		boolean greater = cMax > 0;
+		
+		return (smaller && (this.c1 == -1 || this.c2 == -1)) |
+		       (equal && (this.c1 == 0 || this.c2 == 0)) |
+		       (greater && (this.c1 == 1 || this.c2 == 1));
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
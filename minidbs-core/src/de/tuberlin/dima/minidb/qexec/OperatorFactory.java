@@ -5,7 +5,9 @@ import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
 import de.tuberlin.dima.minidb.core.DataField;
 import de.tuberlin.dima.minidb.core.DataType;
 import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.HashIndex;
 import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.ColumnDictionary;
 import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
 import de.tuberlin.dima.minidb.parser.OutputColumn;
 import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
@@ -80,6 +82,75 @@ public class OperatorFactory
 		return registry.createTableScanOperator(bufferPool, tableManager, resourceId, producedColumnIndexes, predicate, prefetchWindowLength);
 	}
 	
+	/**
+	 * Creates a new physical query plan operator performing a table scan that produces
+	 * RIDs for late materialization. The operator is instantiated through the extension factory.
+	 * 
+	 * The parameters are the same as for the regular table scan, except that an entry of
+	 * {@link de.tuberlin.dima.minidb.semantics.Column#RID_COLUMN_INDEX} in the array of
+	 * producedColumnIndexes denotes the position where the tuple's RID is produced.
+	 * The remaining columns are typically fetched later through a deferred FETCH, after
+	 * filters and joins reduced the number of tuples.
+	 * 
+	 * @param bufferPool The buffer pool used to get the pages that are scanned.
+	 * @param tableManager The table manager used to get the page numbers of the pages
+	 *                     relevant to the scan.
+	 * @param resourceId The resource id of the table resource.
+	 * @param producedColumnIndexes The indexes of the columns that occur in the produced
+	 *                              tuple in the order as they are produced.
+	 * @param predicate The predicate evaluated within this TableScan.
+	 * @param prefetchWindowLength The number of pages to prefetch in advance to the page
+	 *                             that the operator currently works on.
+	 * @return A new physical plan operator representing a TableScan that produces RIDs.
+	 */
+	public static TableScanOperator createRIDTableScanOperator(
+			BufferPoolManager bufferPool,
+			TableResourceManager tableManager,
+			int resourceId,
+			int[] producedColumnIndexes,
+			LowLevelPredicate[] predicate,
+			int prefetchWindowLength)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createRIDTableScanOperator(bufferPool, tableManager, resourceId, producedColumnIndexes, predicate, prefetchWindowLength);
+	}
+	
+	/**
+	 * Creates a new physical query plan operator performing a parallel table scan. The operator is
+	 * instantiated through the extension factory. Worker threads scan morsels of pages and pass the
+	 * qualifying tuples to the operator through a bounded queue, so the tuples are not produced
+	 * in table order.
+	 *
+	 * @param bufferPool The buffer pool used to get the pages that are scanned.
+	 * @param tableManager The table manager used to get the page numbers of the pages
+	 *                     relevant to the scan.
+	 * @param resourceId The resource id of the table resource.
+	 * @param producedColumnIndexes The indexes of the columns that occur in the produced
+	 *                              tuple in the order as they are produced.
+	 * @param predicate The predicate evaluated within this TableScan.
+	 * @param prefetchWindowLength The number of pages each worker prefetches in advance.
+	 * @param degreeOfParallelism The number of worker threads.
+	 * @return A new physical plan operator representing a parallel TableScan.
+	 */
+	public static TableScanOperator createParallelTableScanOperator(
+			BufferPoolManager bufferPool,
+			TableResourceManager tableManager,
+			int resourceId,
+			int[] producedColumnIndexes,
+			LowLevelPredicate[] predicate,
+			int prefetchWindowLength,
+			int degreeOfParallelism)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createParallelTableScanOperator(bufferPool, tableManager, resourceId, producedColumnIndexes, predicate, prefetchWindowLength, degreeOfParallelism);
+	}
+	
 	/**
 	 * Creates an index scan operator that returns the RIDs for the key
 	 * given as the equality literal. This index scan is used to evaluate a local equality
@@ -121,6 +192,111 @@ public class OperatorFactory
 		
 		return registry.getIndexScanOperatorForBetweenPredicate(index, lowerBound, lowerIncluded, upperBound, upperIncluded);
 	}
+	
+	/**
+	 * Creates an index-only scan operator that produces table columns from the entries of a covering
+	 * index in the given key range, without accessing the table.
+	 * 
+	 * @param index The index object used to access the index.
+	 * @param startKey The lower bound of the key range.
+	 * @param startKeyIncluded Flag indicating whether the lower bound itself is included in the range.
+	 * @param stopKey The upper bound of the key range.
+	 * @param stopKeyIncluded Flag indicating whether the upper bound itself is included in the range.
+	 * @param producedColumnIndexes The produced table columns, where <code>Column.RID_COLUMN_INDEX</code>
+	 *                              marks the RID.
+	 */
+	public static IndexOnlyScanOperator createIndexOnlyScanOperator(BTreeIndex index,
+			DataField startKey, boolean startKeyIncluded, DataField stopKey, boolean stopKeyIncluded,
+			int[] producedColumnIndexes)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createIndexOnlyScanOperator(index, startKey, startKeyIncluded, stopKey, stopKeyIncluded,
+				producedColumnIndexes);
+	}
+	
+	/**
+	 * Creates an index lookup operator that returns the RIDs for the key given as the equality
+	 * literal from a hash index.
+	 *
+	 * @param index The hash index used to look up the key.
+	 * @param equalityLiteral The key that the index returns the RIDs for.
+	 */
+	public static IndexLookupOperator createHashIndexLookupOperator(HashIndex index, DataField equalityLiteral)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createHashIndexLookupOperator(index, equalityLiteral);
+	}
+	
+	/**
+	 * Creates a hash index lookup operator that works in a correlated fashion. For each time it is
+	 * opened, it returns the RIDs for the key equal to the correlated tuple's column at the specified
+	 * position.
+	 *
+	 * @param index The hash index used to look up the keys.
+	 * @param correlatedColumnIndex The index of the column in the correlated tuple that we evaluate against.
+	 */
+	public static IndexCorrelatedLookupOperator createHashIndexCorrelatedLookupOperator(HashIndex index,
+			int correlatedColumnIndex)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createHashIndexCorrelatedLookupOperator(index, correlatedColumnIndex);
+	}
+	
+	/**
+	 * Creates an index lookup operator that works in a correlated fashion and resolves the keys of a
+	 * whole batch of correlated tuples at once. When it is opened for a tuple whose batch it has not
+	 * seen yet, it looks up all keys of the batch in one sorted pass over the index.
+	 *
+	 * @param index The index object used to access the index.
+	 * @param correlatedColumnIndex The index of the column in the correlated tuple that we evaluate against.
+	 * @param batch The batch through which the join publishes the keys of its outer tuples.
+	 */
+	public static IndexCorrelatedLookupOperator createBatchedIndexCorrelatedLookupOperator(BTreeIndex index,
+			int correlatedColumnIndex, IndexProbeBatch batch)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createBatchedIndexCorrelatedLookupOperator(index, correlatedColumnIndex, batch);
+	}
+	
+	/**
+	 * Creates a nested-loop-join operator whose inner side is a batched correlated index lookup.
+	 * The join reads batches of outer tuples ahead and publishes their keys to the lookup, before it
+	 * joins them one after the other as described for the regular nested-loop-join.
+	 *
+	 * @param outerChild The outer child for the nested-loop-join.
+	 * @param innerChild The inner child for the nested-loop-join, containing the batched lookup.
+	 * @param joinPredicate The join predicate to be evaluated on the tuples.
+	 * @param columnMapOuterTuple The map describing how the columns from the outer tuple are copied
+	 *                            to the output tuple.
+	 * @param columnMapInnerTuple The map describing how the columns from the inner tuple are copied
+	 *                            to the output tuple.
+	 * @param batch The batch that the lookup on the inner side takes its keys from.
+	 * @param outerKeyColumn The column of the outer tuples holding the key of the lookup.
+	 * @return A Nested-Loop-Join Operator.
+	 */
+	public static NestedLoopJoinOperator createBatchedNestedLoopJoinOperator(
+			PhysicalPlanOperator outerChild, PhysicalPlanOperator innerChild, JoinPredicate joinPredicate,
+			int[] columnMapOuterTuple, int[] columnMapInnerTuple, IndexProbeBatch batch, int outerKeyColumn)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createBatchedNestedLoopJoinOperator(outerChild, innerChild, joinPredicate,
+				columnMapOuterTuple, columnMapInnerTuple, batch, outerKeyColumn);
+	}
 
 	/**
 	 * Creates an index scan operator that works in a correlated fashion. For each time it is opened, 
@@ -176,6 +352,64 @@ public class OperatorFactory
 		return registry.createFetchOperator(child, bufferPool, tableResourceId, outputColumnMap);
 	}
 	
+	/**
+	 * Creates a new deferred FETCH operator that completes the tuples of a late materialized
+	 * plan. The child tuples contain the RID of the table tuple at the given position. The
+	 * produced tuple takes its fields partly from the child tuple and partly from the
+	 * fetched tuple, as described by the two column maps. For each output position, exactly
+	 * one of the maps holds a value other than <tt>-1</tt>:
+	 * <code>
+	 * for (int i = 0; i < childColumnMap.length; i++) {
+	 *     if (childColumnMap[i] != -1) {
+	 *         outputTuple.assignDataField(childTuple.getField(childColumnMap[i]), i);
+	 *     }
+	 *     else {
+	 *         outputTuple.assignDataField(fetchedTuple.getField(fetchedColumnMap[i]), i);
+	 *     }
+	 * }
+	 * </code>
+	 * 
+	 * @param child The child operator of this fetch operator.
+	 * @param bufferPool The buffer pool used to take the pages from.
+	 * @param tableResourceId The resource id of the table that the tuples are fetched from.
+	 * @param ridColumnIndex The position of the RID in the child tuple.
+	 * @param childColumnMap The map describing which output columns come from the child tuple.
+	 * @param fetchedColumnMap The map describing which output columns come from the fetched tuple.
+	 */
+	public static FetchOperator createDeferredFetchOperator(PhysicalPlanOperator child,
+			BufferPoolManager bufferPool, int tableResourceId, int ridColumnIndex,
+			int[] childColumnMap, int[] fetchedColumnMap)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createDeferredFetchOperator(child, bufferPool, tableResourceId, ridColumnIndex, childColumnMap, fetchedColumnMap);
+	}
+	
+	/**
+	 * Creates a new FETCH operator that sorts the RIDs from its child before it accesses the
+	 * table, such that every page is read once and in ascending order. The tuples are produced
+	 * in RID order.
+	 *
+	 * @param child The child operator of this fetch operator.
+	 * @param bufferPool The buffer pool used to take the pages from.
+	 * @param tableResourceId The resource id of the table that the tuples are fetched from.
+	 * @param outputColumnMap The map describing how the column of the tuple produced by the
+	 *                        FETCH operator are produced from the tuple fetched from the table.
+	 * @param prefetchWindowLength The number of distinct pages to prefetch in advance.
+	 */
+	public static FetchOperator createRIDSortedFetchOperator(PhysicalPlanOperator child,
+			BufferPoolManager bufferPool, int tableResourceId, int[] outputColumnMap,
+			int prefetchWindowLength)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createRIDSortedFetchOperator(child, bufferPool, tableResourceId, outputColumnMap, prefetchWindowLength);
+	}
+	
 	
 	/**
 	 * Creates a new filter operator that evaluates a local predicate on the incoming tuples.
@@ -314,6 +548,102 @@ public class OperatorFactory
 		return registry.createMergeJoinOperator(leftChild, rightChild, leftJoinColumns, rightJoinColumns, leftOutColumnMap, rightOutColumnMap);
 	}
 	
+	/**
+	 * Creates a new hybrid hash join operator that performs an inner equi-join. The operator builds
+	 * a hash table on the tuples of its build side and probes it with the tuples of its probe side.
+	 * If the build side exceeds the memory that the query heap grants, the operator partitions both
+	 * sides and writes the partitions that do not fit to temp space, to join them pairwise later.
+	 * The tuples are produced in no particular order.
+	 *
+	 * @param buildChild The child producing the tuples that the hash table is built on.
+	 * @param probeChild The child producing the tuples that probe the hash table.
+	 * @param queryHeap The heap which grants the memory for the hash table and manages the temp
+	 *                  space for the spilled partitions.
+	 * @param buildColumnTypes The types of the fields of the build side's tuples.
+	 * @param probeColumnTypes The types of the fields of the probe side's tuples.
+	 * @param buildJoinColumns The indices of the join columns in the build side's tuples.
+	 * @param probeJoinColumns The indices of the join columns in the probe side's tuples.
+	 * @param buildOutColumnMap The map describing which column of the build side's tuple goes
+	 *                          to which position in the output tuple, -1 for a column taken from
+	 *                          the probe side.
+	 * @param probeOutColumnMap The map describing which column of the probe side's tuple goes
+	 *                          to which position in the output tuple.
+	 * @param estimatedBuildCardinality The estimated number of tuples on the build side, used to
+	 *                                  determine the amount of memory to request.
+	 * @return An implementation of the HashJoinOperator.
+	 */
+	public static HashJoinOperator createHashJoinOperator(
+			PhysicalPlanOperator buildChild, PhysicalPlanOperator probeChild, QueryHeap queryHeap,
+			DataType[] buildColumnTypes, DataType[] probeColumnTypes,
+			int[] buildJoinColumns, int[] probeJoinColumns,
+			int[] buildOutColumnMap, int[] probeOutColumnMap, int estimatedBuildCardinality)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createHashJoinOperator(buildChild, probeChild, queryHeap, buildColumnTypes,
+				probeColumnTypes, buildJoinColumns, probeJoinColumns, buildOutColumnMap, probeOutColumnMap,
+				estimatedBuildCardinality);
+	}
+	
+	/**
+	 * Creates a new exchange operator that gathers the tuples of several producer subplans. The
+	 * operator is instantiated through the extension factory. Each producer runs in its own
+	 * thread, and the tuples are returned in no particular order.
+	 *
+	 * @param producers The subplans producing the tuples.
+	 * @return The exchange operator returning the tuples of all producers.
+	 */
+	public static ExchangeOperator createGatherExchangeOperator(PhysicalPlanOperator[] producers)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createGatherExchangeOperator(producers);
+	}
+	
+	/**
+	 * Creates a new exchange that partitions the tuples of several producer subplans by the hash
+	 * value of some of their columns. The operators are instantiated through the extension factory.
+	 * All tuples that agree in the hash columns are returned by the same consumer. The consumers
+	 * must run in different threads.
+	 *
+	 * @param producers The subplans producing the tuples.
+	 * @param hashColumns The columns whose values decide the partition of a tuple.
+	 * @param numConsumers The number of partitions.
+	 * @return The exchange operators of the consumers.
+	 */
+	public static ExchangeOperator[] createHashRepartitionExchangeOperators(
+			PhysicalPlanOperator[] producers, int[] hashColumns, int numConsumers)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createHashRepartitionExchangeOperators(producers, hashColumns, numConsumers);
+	}
+	
+	/**
+	 * Creates a new exchange that sends every tuple of several producer subplans to each of a
+	 * number of consumers. The operators are instantiated through the extension factory. The
+	 * consumers share the tuples and must run in different threads.
+	 *
+	 * @param producers The subplans producing the tuples.
+	 * @param numConsumers The number of consumers.
+	 * @return The exchange operators of the consumers.
+	 */
+	public static ExchangeOperator[] createBroadcastExchangeOperators(
+			PhysicalPlanOperator[] producers, int numConsumers)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createBroadcastExchangeOperators(producers, numConsumers);
+	}
+	
 	/**
 	 * Creates a new sort operator that performs an external merge-sort.
 	 * 
@@ -344,6 +674,85 @@ public class OperatorFactory
 				estimatedCardinality, sortColumns, columnsAscending);
 	}
 	
+	/**
+	 * Creates a new sort operator that performs an external merge-sort after normalized keys.
+	 * The sort and the merge compare primitive, order-preserving prefixes of the sort columns
+	 * and compare the fields only for tuples whose prefixes are equal.
+	 * 
+	 * @param child The child of the operator, producing the tuples to be sorted.
+	 * @param queryHeap The heap which manages the memory and manages reading and writing of the
+	 *                  temporary lists.
+	 * @param tupleSchema An array of the data types of the tuple's fields.
+	 * @param estimatedCardinality The estimated number of tuples to sort.
+	 * @param sortColumns The indices of the columns after which to sort.
+	 * @param columnsAscending An array indicating the sort direction of each sort column.
+	 * @return An implementation of the SortOperator.
+	 */
+	public static SortOperator createNormalizedKeySortOperator(PhysicalPlanOperator child,
+			QueryHeap queryHeap, DataType[] tupleSchema, int estimatedCardinality,
+			int[] sortColumns, boolean[] columnsAscending)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createNormalizedKeySortOperator(child, queryHeap, tupleSchema,
+				estimatedCardinality, sortColumns, columnsAscending);
+	}
+	
+	/**
+	 * Creates a new sort operator that performs an external merge-sort with several threads.
+	 * The threads sort partitions of the key range of every run concurrently and merge groups
+	 * of runs concurrently. The sort uses the same portion of the query heap as the sort with
+	 * a single thread.
+	 * 
+	 * @param child The child of the operator, producing the tuples to be sorted.
+	 * @param queryHeap The heap which manages the memory and manages reading and writing of the
+	 *                  temporary lists.
+	 * @param tupleSchema An array of the data types of the tuple's fields, describing the data type
+	 *                    and its length. Used to estimate the memory consumption of sets of tuples.
+	 * @param estimatedCardinality The estimated number of tuples to sort.
+	 * @param sortColumns The indices of the columns after which to sort.
+	 * @param columnsAscending An array indicating the sort direction of each sort column.
+	 * @param degreeOfParallelism The number of threads that sort and merge.
+	 * @return An implementation of the SortOperator.
+	 */
+	public static SortOperator createParallelSortOperator(PhysicalPlanOperator child,
+			QueryHeap queryHeap, DataType[] tupleSchema, int estimatedCardinality,
+			int[] sortColumns, boolean[] columnsAscending, int degreeOfParallelism)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createParallelSortOperator(child, queryHeap, tupleSchema,
+				estimatedCardinality, sortColumns, columnsAscending, degreeOfParallelism);
+	}
+	
+	/**
+	 * Creates a new top-N sort operator that produces only the first tuples of the sorted input.
+	 * The operator keeps the best <tt>rowLimit</tt> tuples seen so far in a bounded heap, so it
+	 * never writes to temp space, and it produces them in the requested order.
+	 *
+	 * @param child The child of the operator, producing the tuples to be sorted.
+	 * @param sortColumns The indices of the columns after which to sort. The primary sort column
+	 *                    is <tt>sortColumns[0]</tt>, the secondary sort column is
+	 *                    <tt>sortColumns[1]</tt>, and so on...
+	 * @param columnsAscending An array indicating the sort direction of a column, true for
+	 *                         ascending, false for descending order.
+	 * @param rowLimit The number of tuples to produce at most.
+	 * @return An implementation of the SortOperator.
+	 */
+	public static SortOperator createTopNSortOperator(PhysicalPlanOperator child,
+			int[] sortColumns, boolean[] columnsAscending, int rowLimit)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createTopNSortOperator(child, sortColumns, columnsAscending, rowLimit);
+	}
+	
 	/**
 	 * Create a group by operator that groups and aggregates a sorted stream of tuples.
 	 * 
@@ -404,4 +813,127 @@ public class OperatorFactory
 				aggregateFunctions, aggColumnTypes, 
 				groupColumnOutputPositions, aggregateColumnOutputPosition);
 	}
+	
+	/**
+	 * Creates a group by operator that groups and aggregates an unsorted stream of tuples in a hash
+	 * table. It has the same contract as the operator created by
+	 * {@link #createGroupByOperator(PhysicalPlanOperator, int[], int[], OutputColumn.AggregationType[], DataType[], int[], int[])},
+	 * except that the child need not produce its tuples in any order and that the groups are produced
+	 * in no particular order. If there are more groups than fit into the memory that the query heap
+	 * grants, the tuples of the groups that do not fit are partitioned and written to temp space, to
+	 * be aggregated after the groups in memory are produced.
+	 *
+	 * @param child The child of the operator, delivering the tuples to be grouped and aggregated.
+	 * @param queryHeap The heap which grants the memory for the hash table and manages the temp
+	 *                  space for the written partitions.
+	 * @param inputColumnTypes The types of the fields of the input tuples.
+	 * @param estimatedGroups The estimated number of groups, used to determine the amount of
+	 *                        memory to request.
+	 * @param groupColumnIndices The indices of the grouping columns in the input tuple.
+	 * @param aggColumnIndices The indices of the aggregate columns in the input tuple.
+	 * @param aggregateFunctions The functions that are used for aggregation.
+	 * @param aggColumnTypes The types of the aggregated functions.
+	 * @param groupColumnOutputPositions The map describing in which position in the produced tuple
+	 *                                   the grouping columns will be put.
+	 * @param aggregateColumnOutputPosition The map describing in which position in the produced
+	 *                                      tuple the aggregate columns will be put.
+	 * @return An implementation of the GroupByOperator.
+	 */
+	public static GroupByOperator createHashGroupByOperator(PhysicalPlanOperator child,
+			QueryHeap queryHeap, DataType[] inputColumnTypes, int estimatedGroups,
+			int[] groupColumnIndices, int[] aggColumnIndices,
+			OutputColumn.AggregationType[] aggregateFunctions,
+			DataType[] aggColumnTypes,
+			int[] groupColumnOutputPositions, int[] aggregateColumnOutputPosition)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createHashGroupByOperator(child, queryHeap, inputColumnTypes, estimatedGroups,
+				groupColumnIndices, aggColumnIndices, aggregateFunctions, aggColumnTypes,
+				groupColumnOutputPositions, aggregateColumnOutputPosition);
+	}
+
+	/**
+	 * Creates a group by operator for a grouping on a single dictionary encoded column. It has
+	 * the same contract as the operator created by
+	 * {@link #createHashGroupByOperator(PhysicalPlanOperator, QueryHeap, DataType[], int, int[], int[], OutputColumn.AggregationType[], DataType[], int[], int[])},
+	 * but aggregates into arrays indexed by the dictionary code of the grouping value, instead
+	 * of a hash table. The groups are produced in code order.
+	 *
+	 * @param child The child of the operator, delivering the tuples to be grouped and aggregated.
+	 * @param dictionary The dictionary of the grouping column.
+	 * @param groupColumnIndex The index of the grouping column in the input tuple.
+	 * @param aggColumnIndices The indices of the aggregate columns in the input tuple.
+	 * @param aggregateFunctions The functions that are used for aggregation.
+	 * @param aggColumnTypes The types of the aggregated functions.
+	 * @param groupColumnOutputPositions The map describing in which position in the produced tuple
+	 *                                   the grouping column will be put.
+	 * @param aggregateColumnOutputPosition The map describing in which position in the produced
+	 *                                      tuple the aggregate columns will be put.
+	 * @return An implementation of the GroupByOperator.
+	 */
+	public static GroupByOperator createCodeIndexedGroupByOperator(PhysicalPlanOperator child,
+			ColumnDictionary dictionary, int groupColumnIndex, int[] aggColumnIndices,
+			OutputColumn.AggregationType[] aggregateFunctions,
+			DataType[] aggColumnTypes,
+			int[] groupColumnOutputPositions, int[] aggregateColumnOutputPosition)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createCodeIndexedGroupByOperator(child, dictionary, groupColumnIndex, aggColumnIndices,
+				aggregateFunctions, aggColumnTypes, groupColumnOutputPositions, aggregateColumnOutputPosition);
+	}
+
+	/**
+	 * Creates a delete operator that removes the tuples whose RIDs the child produces in the
+	 * first field, and removes their entries from the given indexes of the table. The operator
+	 * produces a single tuple with the number of deleted tuples.
+	 *
+	 * @param bufferPool The buffer pool used to take the pages from.
+	 * @param resourceId The resource id of the table.
+	 * @param indexes The B-Tree indexes of the table.
+	 * @param columnNumbers For each index, the number of the table column that it indexes.
+	 * @param child The child producing the RIDs of the tuples to delete.
+	 * @return An implementation of the DeleteOperator.
+	 */
+	public static DeleteOperator createDeleteOperator(BufferPoolManager bufferPool, int resourceId,
+			BTreeIndex[] indexes, int[] columnNumbers, PhysicalPlanOperator child)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createDeleteOperator(bufferPool, resourceId, indexes, columnNumbers, child);
+	}
+
+	/**
+	 * Creates a delete operator that removes the tuples whose RIDs the child produces in the
+	 * first field, and removes their entries from the given B-Tree and hash indexes of the
+	 * table. B-Tree indexes may have keys over several columns. The operator produces a single
+	 * tuple with the number of deleted tuples.
+	 *
+	 * @param bufferPool The buffer pool used to take the pages from.
+	 * @param resourceId The resource id of the table.
+	 * @param indexes The B-Tree indexes of the table.
+	 * @param keyColumns For each B-Tree index, the numbers of the table columns of its key.
+	 * @param hashIndexes The hash indexes of the table.
+	 * @param hashColumns For each hash index, the number of the table column that it indexes.
+	 * @param child The child producing the RIDs of the tuples to delete.
+	 * @return An implementation of the DeleteOperator.
+	 */
+	public static DeleteOperator createDeleteOperator(BufferPoolManager bufferPool, int resourceId,
+			BTreeIndex[] indexes, int[][] keyColumns, HashIndex[] hashIndexes, int[] hashColumns,
+			PhysicalPlanOperator child)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createDeleteOperator(bufferPool, resourceId, indexes, keyColumns, hashIndexes,
+				hashColumns, child);
+	}
 }
@@ -0,0 +1,199 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+
+
+/**
+ * A bounded queue that passes batches of tuples from a number of producer threads to a
+ * consuming operator. Producers block when the queue is full, which throttles them to the speed
+ * of the consumer. The consumer sees the end of the stream once every producer has finished.
+ * <p>
+ * A producer that fails reports its exception to the queue, where it is rethrown to the consumer.
+ * The consumer may cancel the queue, in which case blocked producers are released and all
+ * further batches are discarded.
+ */
+public class TupleExchangeQueue
+{
+	/**
+	 * The marker that a producer puts into the queue when it is finished.
+	 */
+	private static final DataTuple[] END_OF_STREAM = new DataTuple[0];
+
+	/**
+	 * The time in milliseconds after which a blocked producer checks for cancellation.
+	 */
+	private static final long CANCEL_CHECK_INTERVAL = 100;
+
+	/**
+	 * The queue holding the batches.
+	 */
+	private final BlockingQueue<DataTuple[]> queue;
+
+	/**
+	 * The number of producers that have not yet finished, as seen by the consumer.
+	 */
+	private int openProducers;
+
+	/**
+	 * The first exception reported by a producer.
+	 */
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+	/**
+	 * Flag indicating that the consumer cancelled the exchange.
+	 */
+	private volatile boolean cancelled;
+
+
+	/**
+	 * Creates a new exchange queue.
+	 *
+	 * @param capacity The number of batches the queue holds before producers block.
+	 * @param numProducers The number of producers that feed the queue.
+	 */
+	public TupleExchangeQueue(int capacity, int numProducers)
+	{
+		// leave room for the end markers, so that finishing never blocks for long
+		this.queue = new ArrayBlockingQueue<DataTuple[]>(capacity + numProducers);
+		this.openProducers = numProducers;
+	}
+
+	// ------------------------------------------------------------------------
+	//                            Producer Side
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Adds a batch of tuples to the queue, blocking while the queue is full.
+	 *
+	 * @param batch The batch to add. Must not be empty.
+	 * @return True, if the batch was added, false if the exchange was cancelled and the
+	 *         producer should stop.
+	 * @throws InterruptedException Thrown, if the producer was interrupted while waiting.
+	 */
+	public boolean put(DataTuple[] batch) throws InterruptedException
+	{
+		while (!this.cancelled) {
+			if (this.queue.offer(batch, CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Signals that a producer has produced all of its batches. Each producer must call this
+	 * method exactly once, also when it failed or was cancelled. An interrupt does not keep
+	 * the marker from the consumer; it is restored once the marker is added, or once the
+	 * exchange is cancelled and no longer needs the marker.
+	 */
+	public void producerFinished()
+	{
+		boolean interrupted = false;
+		try {
+			while (!this.cancelled) {
+				try {
+					if (this.queue.offer(END_OF_STREAM, CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+						return;
+					}
+				}
+				catch (InterruptedException iex) {
+					// the consumer relies on the marker, so keep trying
+					interrupted = true;
+				}
+			}
+		}
+		finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Reports the failure of a producer. The exception is passed to the consumer with its
+	 * next call to {@link #take()}.
+	 *
+	 * @param t The exception that caused the failure.
+	 */
+	public void fail(Throwable t)
+	{
+		this.failure.compareAndSet(null, t);
+	}
+
+	/**
+	 * Checks whether the consumer cancelled the exchange.
+	 *
+	 * @return True, if the exchange is cancelled.
+	 */
+	public boolean isCancelled()
+	{
+		return this.cancelled;
+	}
+
+	// ------------------------------------------------------------------------
+	//                            Consumer Side
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Takes the next batch from the queue, blocking until one is available.
+	 *
+	 * @return The next batch, or null, if all producers have finished.
+	 * @throws QueryExecutionException Thrown, if a producer failed, or the consumer was
+	 *                                 interrupted while waiting.
+	 */
+	public DataTuple[] take() throws QueryExecutionException
+	{
+		while (this.openProducers > 0) {
+			DataTuple[] batch;
+			try {
+				batch = this.queue.take();
+			}
+			catch (InterruptedException iex) {
+				Thread.currentThread().interrupt();
+				throw new QueryExecutionException("Interrupted while waiting for tuples from parallel workers.", iex);
+			}
+
+			checkFailure();
+			if (batch == END_OF_STREAM) {
+				this.openProducers--;
+			}
+			else {
+				return batch;
+			}
+		}
+
+		checkFailure();
+		return null;
+	}
+
+	/**
+	 * Cancels the exchange. Blocked producers are released and queued batches are discarded.
+	 */
+	public void cancel()
+	{
+		this.cancelled = true;
+		this.queue.clear();
+	}
+
+	/**
+	 * Throws the exception reported by a failed producer, if any.
+	 *
+	 * @throws QueryExecutionException The exception of the failed producer.
+	 */
+	private void checkFailure() throws QueryExecutionException
+	{
+		Throwable t = this.failure.get();
+		if (t != null) {
+			if (t instanceof QueryExecutionException) {
+				throw (QueryExecutionException) t;
+			}
+			throw new QueryExecutionException("A parallel worker failed: " + t.getMessage(), t);
+		}
+	}
+}
@@ -4,32 +4,41 @@ package de.tuberlin.dima.minidb.qexec.heap;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import de.tuberlin.dima.minidb.Config;
 import de.tuberlin.dima.minidb.Constants;
-import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
-import de.tuberlin.dima.minidb.catalogue.TableSchema;
 import de.tuberlin.dima.minidb.core.DataTuple;
 import de.tuberlin.dima.minidb.core.DataType;
-import de.tuberlin.dima.minidb.core.InternalOperationFailure;
-import de.tuberlin.dima.minidb.io.cache.PageFormatException;
 import de.tuberlin.dima.minidb.io.cache.PageSize;
-import de.tuberlin.dima.minidb.io.tables.PageTupleAccessException;
-import de.tuberlin.dima.minidb.io.tables.TupleIterator;
-import de.tuberlin.dima.minidb.io.tables.TablePage;
-import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
 
 
 /**
  * STUB Implementation of the Query Heap.
+ * <p>
+ * The assignable part of the heap is handed out as grants, to sorts, hash joins and hash
+ * aggregations as arrays of tuples, and to other consumers, such as caches of results, as plain
+ * numbers of bytes. Each grant has a minimal size, which it keeps, and may grow and shrink while
+ * the query runs. A request for which no space is free waits in a queue that is ordered by
+ * priority and then by the requested size, such that small requests do not queue behind large
+ * ones. Released space is handed to the waiting requests right away. While requests wait, no
+ * grant grows and new grants get only their minimal size, such that large operators spill to
+ * temp space rather than stall other queries.
  * 
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
@@ -66,6 +75,26 @@ public class QueryHeap
 	 */
 	private static final int MIN_INTERNAL_SORT_TUPLES = 1000;
 	
+	/**
+	 * The number of threads that read the blocks of sorted lists ahead of their consumption.
+	 */
+	private static final int NUM_READ_AHEAD_THREADS = 2;
+	
+	/**
+	 * The priority of requests that may wait behind all others.
+	 */
+	public static final int PRIORITY_LOW = 0;
+	
+	/**
+	 * The priority of requests of regular queries.
+	 */
+	public static final int PRIORITY_NORMAL = 5;
+	
+	/**
+	 * The priority of requests that are served before all others.
+	 */
+	public static final int PRIORITY_HIGH = 10;
+	
 
 	// --------------------------------------------------------------------------------------------
 	//                                          Pool General
@@ -101,6 +130,11 @@ public class QueryHeap
 	 */
 	private File tempFileDirectory;
 	
+	/**
+	 * Flag indicating whether the spilled tuples are prefix compressed.
+	 */
+	private final boolean spillPrefixCompression;
+	
 	/**
 	 * The total number of block buffers provided by the heap.
 	 */
@@ -111,6 +145,11 @@ public class QueryHeap
 	 */
 	private int maxBuffersPerAssignment;
 	
+	/**
+	 * The threads reading the next blocks of the sorted lists in the background.
+	 */
+	private ExecutorService readAheadService;
+	
 	
 	// --------------------------------------------------------------------------------------------
 	//                         Assignable Main Memory Section (for temp-space I/O)
@@ -122,9 +161,14 @@ public class QueryHeap
 	private Object assignableHeapMonitor;
 	
 	/**
-	 * Queue of heap requests.
+	 * Queue of heap requests, the next to serve at its head.
+	 */
+	private PriorityQueue<HeapRequest> requestedHeapSizes;
+	
+	/**
+	 * The number of requests that have been queued, used to keep their order of arrival.
 	 */
-	private List<HeapRequest> requestedHeapSizes;
+	private long numQueuedRequests;
 	
 	/**
 	 * Exponent for the exponential function used to assign space depending on the
@@ -191,6 +235,16 @@ public class QueryHeap
 		}
 		this.maxBuffersPerAssignment = (int) (this.numTotalBlockBuffers * MAX_BUFFER_FRACTION_PER_ASSIGNMENT);
 		this.tempFileDirectory = new File(config.getTempspaceDirectory());
+		this.spillPrefixCompression = config.isSpillPrefixCompression();
+		this.readAheadService = Executors.newFixedThreadPool(NUM_READ_AHEAD_THREADS, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "Query Heap Read-Ahead Thread");
+				t.setDaemon(true);
+				return t;
+			}
+		});
 		
 		// ----------------- set up assignable part -------------------
 		this.totalAssignableSize = sizeInBytes - bytesForBlocks;
@@ -200,7 +254,7 @@ public class QueryHeap
 		
 		// set up the lists, maps and monitors
 		this.assignedSortSpace = new HashMap<Integer, AssignedSortHeapSpace>();
-		this.requestedHeapSizes = new ArrayList<HeapRequest>();
+		this.requestedHeapSizes = new PriorityQueue<HeapRequest>();
 		this.assignableHeapMonitor = new Object();
 	}
 	
@@ -220,8 +274,7 @@ public class QueryHeap
 			this.closed = true;
 			
 			// clear the ones waiting for assignments
-			for (int i = 0; i < this.requestedHeapSizes.size(); i++) {
-				HeapRequest req = this.requestedHeapSizes.get(i);
+			for (HeapRequest req : this.requestedHeapSizes) {
 				synchronized (req) {
 					req.markDone();
 					req.notifyAll();
@@ -239,6 +292,9 @@ public class QueryHeap
 			
 			this.assignedSortSpace = null;
 			
+			// the released iterators have no reads pending any more
+			this.readAheadService.shutdown();
+			
 			// clear the block buffers
 			synchronized (this.blockBuffers) {
 				this.blockBuffers.clear();
@@ -249,6 +305,7 @@ public class QueryHeap
 	
 	/**
 	 * Reserves a portion of the heap for sorting and assigns an ID to that to address it.
+	 * The request has normal priority.
 	 * 
 	 * @param tupleSchema The schema of the tuples, used to estimate the memory consumption.
 	 * @param estimatedCardinality The estimated number of tuples to sort.
@@ -259,15 +316,33 @@ public class QueryHeap
 	 */
 	public int reserveSortHeap(DataType[] columnTypes, int estimatedCardinality)
 	throws QueryExecutionOutOfHeapSpaceException, QueryHeapException
-	{		
-		// the id we will get assigned
-		Integer id = null;
-		AssignedSortHeapSpace space = null;
-		
+	{
+		return reserveSortHeap(columnTypes, estimatedCardinality, PRIORITY_NORMAL);
+	}
+	
+	/**
+	 * Reserves a portion of the heap for sorting and assigns an ID to that to address it.
+	 * If not even the minimal space is free, the call waits until it is granted. Waiting
+	 * requests are served in the order of their priority, and among equal priorities, in the
+	 * order of the space they estimate to need.
+	 * 
+	 * @param tupleSchema The schema of the tuples, used to estimate the memory consumption.
+	 * @param estimatedCardinality The estimated number of tuples to sort.
+	 * @param priority The priority of the request, such as {@link #PRIORITY_NORMAL}.
+	 * @return The ID under which the assigned portion of the heap can be addressed.
+	 * @throws QueryExecutionOutOfHeapSpaceException Thrown, if the heap is in total to small
+	 *                                               to provide enough space to sort tuples of
+	 *                                               the given schema.
+	 * @throws QueryHeapException Thrown, if the heap was closed, or if the thread was
+	 *                            interrupted while it waited.
+	 */
+	public int reserveSortHeap(DataType[] columnTypes, int estimatedCardinality, int priority)
+	throws QueryExecutionOutOfHeapSpaceException, QueryHeapException
+	{
 		// calculate space
 		int tupleWidth = getTupleBytes(columnTypes);
 		long minimalBytes = MIN_INTERNAL_SORT_TUPLES * tupleWidth;
-		long share = 0;
+		long cardinalityRequirement = 2L * estimatedCardinality * tupleWidth;
 		
 		// check if it is at all possible to get our minimal tuple count
 		if (minimalBytes > this.maxBytesPerAssignment) {
@@ -279,6 +354,60 @@ public class QueryHeap
 					+ " of the total heap space).");
 		}
 		
+		AssignedSortHeapSpace space = reserve(columnTypes, minimalBytes,
+				cardinalityRequirement < 0 ? Long.MAX_VALUE : cardinalityRequirement, priority);
+		
+		int numInternalTuples = (int) (space.getHeapSize() / tupleWidth);
+		space.setNumInternallySortedTuples(numInternalTuples);
+		space.setInternalSortArray(getPooledSortArray(numInternalTuples));
+		
+		return space.getHeapId();
+	}
+	
+	/**
+	 * Reserves a number of bytes of the heap for an operator that manages its memory itself,
+	 * such as a cache of results. The grant holds neither a sort array nor temp space, and is
+	 * released through <code>releaseMemory</code>. If not even the minimal number of bytes is
+	 * free, the call waits until it is granted.
+	 * 
+	 * @param minimalBytes The number of bytes without which the operator cannot run.
+	 * @param desiredBytes The number of bytes the operator estimates to need.
+	 * @param priority The priority of the request, such as {@link #PRIORITY_NORMAL}.
+	 * @return The ID under which the grant can be addressed.
+	 * @throws QueryExecutionOutOfHeapSpaceException Thrown, if the heap is in total to small
+	 *                                               to grant the minimal bytes.
+	 * @throws QueryHeapException Thrown, if the heap was closed, or if the thread was
+	 *                            interrupted while it waited.
+	 */
+	public int reserveMemory(long minimalBytes, long desiredBytes, int priority)
+	throws QueryExecutionOutOfHeapSpaceException, QueryHeapException
+	{
+		if (minimalBytes > this.maxBytesPerAssignment) {
+			throw new QueryExecutionOutOfHeapSpaceException(
+					"Query Heap is too small to assign the minimal bytes to the query."
+					+ " Required bytes: " + minimalBytes + ", Maximal bytes for one operator: " + 
+					this.maxBytesPerAssignment);
+		}
+		
+		return reserve(null, Math.max(minimalBytes, 0), Math.max(desiredBytes, minimalBytes), priority).getHeapId();
+	}
+	
+	/**
+	 * Reserves space for a new assignment, waiting until the minimal space is granted, if
+	 * other requests are waiting or too little space is free.
+	 * 
+	 * @param columnTypes The schema of the tuples of the assignment, or null.
+	 * @param minimalBytes The number of bytes that the assignment needs at least.
+	 * @param desiredBytes The number of bytes that the assignment estimates to need.
+	 * @param priority The priority of the request.
+	 * @return The new assignment, registered under its ID.
+	 * @throws QueryHeapException Thrown, if the heap was closed, or if the thread was
+	 *                            interrupted while it waited.
+	 */
+	private AssignedSortHeapSpace reserve(DataType[] columnTypes, long minimalBytes, long desiredBytes,
+			int priority)
+	throws QueryHeapException
+	{
 		// request object that we need to wait on if we can not immediately get the space
 		HeapRequest request = null;
 		
@@ -295,7 +424,7 @@ public class QueryHeap
 			// space to serve us
 			if (!this.requestedHeapSizes.isEmpty() || this.bytesFree < minimalBytes)
 			{
-				request = new HeapRequest(minimalBytes);
+				request = new HeapRequest(minimalBytes, desiredBytes, priority, this.numQueuedRequests++);
 				this.requestedHeapSizes.add(request);
 			}
 		}
@@ -303,17 +432,9 @@ public class QueryHeap
 		// END: Critical section on shared structures
 		// ---------------------------------------------------------------------
 		
-		// if we need to wait for space to become available, wait on the request object.
+		// if we need to wait for space to become available, wait until it is handed to us
 		if (request != null) {
-			synchronized (request) {
-				while (!request.isDone() && !this.closed)
-				{
-					try {
-						request.wait(1000);
-					}
-					catch (InterruptedException iex) {}
-				}
-			}
+			awaitGrant(request);
 		}
 		
 		// ---------------------------------------------------------------------
@@ -327,49 +448,117 @@ public class QueryHeap
 						"was waiting for heap space to become available.");
 			}
 			
-			// sanity check
-			if (this.bytesFree < minimalBytes) {
-				throw new InternalOperationFailure(
-						"Query Heap encountered strategy bug and could not assign heap space.",
-						false, null);
-			}
-			
-			// remove our queue entry, if necessary
-			if (request != null) {
-				this.requestedHeapSizes.remove(request);
-			}
-			
 			// compute our share
-			if (this.requestedHeapSizes.isEmpty()) {
+			long share = 0;
+			if (request == null) {
 				// no unserved request pending, assign as by the exponential function
-				share = (long) Math.pow(this.bytesFree, this.assignmentExponent);
-				long cardinalityRequirement = 2L * estimatedCardinality * tupleWidth;
-				share = cardinalityRequirement < 0 ? share : Math.min(share, cardinalityRequirement);
-				share = Math.max(share, minimalBytes);
+				share = Math.max(computeShare(desiredBytes), minimalBytes);
+				this.bytesFree -= share;
 			}
 			else {
+				// the minimal bytes were reserved when the request was served, and only
+				// if no other request waits, we take more
 				share = minimalBytes;
+				if (this.requestedHeapSizes.isEmpty()) {
+					long more = Math.max(computeShare(desiredBytes - share), 0);
+					this.bytesFree -= more;
+					share += more;
+				}
 			}
 			
-			// reserve space
-			this.bytesFree -= share;
+			// register the assignment
+			Integer id = null;
 			do {
 				id = new Integer(this.idGenerator.nextInt(Integer.MAX_VALUE) + 1);
 			}
 			while (this.assignedSortSpace.containsKey(id));
 			
-			space = new AssignedSortHeapSpace(columnTypes, id.intValue(), share);
+			AssignedSortHeapSpace space = new AssignedSortHeapSpace(columnTypes, id.intValue(), share, minimalBytes);
 			this.assignedSortSpace.put(id, space);
+			return space;
 		}
 		// ---------------------------------------------------------------------
 		// END: Critical section on shared structures
 		// ---------------------------------------------------------------------
+	}
+	
+	/**
+	 * Waits until the given request was served or the heap was closed. If the thread is
+	 * interrupted before, the request is withdrawn.
+	 * 
+	 * @param request The queued request.
+	 * @throws QueryHeapException Thrown, if the thread was interrupted and the request withdrawn.
+	 */
+	private void awaitGrant(HeapRequest request) throws QueryHeapException
+	{
+		boolean interrupted = false;
+		synchronized (request) {
+			while (!request.isDone() && !interrupted) {
+				try {
+					request.wait();
+				}
+				catch (InterruptedException iex) {
+					interrupted = true;
+				}
+			}
+		}
 		
-		int numInternalTuples = (int) (share / tupleWidth);
-		space.setNumInternallySortedTuples(numInternalTuples);
-		space.setInternalSortArray(getPooledSortArray(numInternalTuples));
-		
-		return id.intValue();
+		if (interrupted) {
+			// keep the interrupt for the caller
+			Thread.currentThread().interrupt();
+			synchronized (this.assignableHeapMonitor) {
+				// a request that is still queued was not served, otherwise we keep the space
+				if (this.requestedHeapSizes.remove(request)) {
+					// the requests behind us may fit now
+					grantWaitingRequests();
+					throw new QueryHeapException("The thread was interrupted while it waited " +
+							"for heap space to become available.");
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Computes the share of the free bytes that an assignment gets, which shrinks exponentially
+	 * with the number of free bytes.
+	 * 
+	 * WARNING: This method assumes the caller already holds the lock for the assignable space.
+	 * 
+	 * @param desiredBytes The number of bytes that the assignment estimates to need.
+	 * @return The share, at most the desired bytes.
+	 */
+	private long computeShare(long desiredBytes)
+	{
+		long share = (long) Math.pow(this.bytesFree, this.assignmentExponent);
+		return Math.min(share, desiredBytes);
+	}
+	
+	/**
+	 * Reserves a portion of the heap that holds no memory for tuples, but only a temp file to
+	 * which an operator spills runs of tuples, such as the partitions of a hash join that do
+	 * not fit into its sort heap. The portion is released through <code>releaseSortHeap</code>.
+	 * 
+	 * @param columnTypes The schema of the spilled tuples.
+	 * @return The ID under which the assigned portion of the heap can be addressed.
+	 * @throws QueryHeapException Thrown, if the heap has been closed.
+	 */
+	public int reserveSpillSpace(DataType[] columnTypes) throws QueryHeapException
+	{
+		synchronized (this.assignableHeapMonitor)
+		{
+			if (this.closed) {
+				throw new QueryHeapException("The query heap has been closed.");
+			}
+			
+			Integer id = null;
+			do {
+				id = new Integer(this.idGenerator.nextInt(Integer.MAX_VALUE) + 1);
+			}
+			while (this.assignedSortSpace.containsKey(id));
+			
+			this.assignedSortSpace.put(id, new AssignedSortHeapSpace(columnTypes, id.intValue(), 0, 0));
+			return id.intValue();
+		}
 	}
 	
 	
@@ -395,6 +584,155 @@ public class QueryHeap
 		return space != null;
 	}
 	
+	/**
+	 * Releases a grant of bytes that was reserved through <code>reserveMemory</code>.
+	 * 
+	 * @param grantId The ID of the grant.
+	 * @return True, if the grant was released, false if nothing was reserved under this ID. 
+	 */
+	public boolean releaseMemory(int grantId)
+	{
+		return releaseSortHeap(grantId);
+	}
+	
+	/**
+	 * Gets the number of bytes currently granted under the given ID.
+	 * 
+	 * @param grantId The ID of the grant.
+	 * @return The number of granted bytes.
+	 * @throws QueryHeapException Thrown if no heap space has been assigned under the given ID.
+	 */
+	public long getGrantedBytes(int grantId) throws QueryHeapException
+	{
+		AssignedSortHeapSpace space = getAssignedSpace(grantId);
+		synchronized (this.assignableHeapMonitor) {
+			return space.getHeapSize();
+		}
+	}
+	
+	/**
+	 * Tries to enlarge a grant by the given number of bytes. The call never waits: while other
+	 * requests wait for heap space, or if little space is free, the grant grows by less or not
+	 * at all, and the operator is expected to spill instead.
+	 * 
+	 * @param grantId The ID of the grant.
+	 * @param additionalBytes The number of bytes by which the grant should grow.
+	 * @return The number of bytes granted after the call.
+	 * @throws QueryHeapException Thrown if no heap space has been assigned under the given ID.
+	 */
+	public long growGrant(int grantId, long additionalBytes) throws QueryHeapException
+	{
+		AssignedSortHeapSpace space = getAssignedSpace(grantId);
+		synchronized (this.assignableHeapMonitor) {
+			growAssignment(space, additionalBytes);
+			return space.getHeapSize();
+		}
+	}
+	
+	/**
+	 * Gives bytes of a grant back to the heap, where they are handed to waiting requests right
+	 * away. The grant does not shrink below the minimal size it was reserved with.
+	 * 
+	 * @param grantId The ID of the grant.
+	 * @param bytes The number of bytes to give back.
+	 * @return The number of bytes granted after the call.
+	 * @throws QueryHeapException Thrown if no heap space has been assigned under the given ID.
+	 */
+	public long shrinkGrant(int grantId, long bytes) throws QueryHeapException
+	{
+		AssignedSortHeapSpace space = getAssignedSpace(grantId);
+		synchronized (this.assignableHeapMonitor) {
+			long size = space.getHeapSize();
+			long released = Math.max(Math.min(bytes, size - space.getMinimalBytes()), 0);
+			space.setHeapSize(size - released);
+			releaseAssignableHeapSpace(released);
+			return space.getHeapSize();
+		}
+	}
+	
+	/**
+	 * Tries to enlarge the array for internal sorting of the given portion of the heap by the
+	 * given number of tuples. The array is replaced by a larger one that starts with the tuples
+	 * of the old one, and must be fetched again through <code>getSortArray</code>. Like
+	 * <code>growGrant</code>, the call never waits and may grow the array by less or not at all.
+	 * 
+	 * @param heapId The ID of the reserved portion of the sort heap.
+	 * @param additionalTuples The number of tuples by which the array should grow.
+	 * @return The number of tuples that may be sorted internally after the call.
+	 * @throws QueryHeapException Thrown if no heap space has been assigned under the given ID or
+	 *                            if the sort array has previously been released.
+	 */
+	public int growSortHeap(int heapId, int additionalTuples) throws QueryHeapException
+	{
+		AssignedSortHeapSpace space = getAssignedSpace(heapId);
+		int tupleWidth = getTupleBytes(space.getTupleSchema());
+		int numTuples;
+		synchronized (this.assignableHeapMonitor) {
+			if (space.getInternalSortArray() == null) {
+				throw new QueryHeapException(
+						"Internal sort array has already been released for heap " + heapId);
+			}
+			growAssignment(space, ((long) additionalTuples) * tupleWidth);
+			numTuples = (int) Math.min(space.getHeapSize() / tupleWidth, Integer.MAX_VALUE - 8);
+		}
+		
+		if (numTuples > space.getNumInternallySortedTuples()) {
+			space.setInternalSortArray(Arrays.copyOf(space.getInternalSortArray(), numTuples));
+			space.setNumInternallySortedTuples(numTuples);
+		}
+		return space.getNumInternallySortedTuples();
+	}
+	
+	/**
+	 * Shrinks the array for internal sorting of the given portion of the heap to the given
+	 * number of tuples, but not below the minimal size for sorting, and gives the freed space
+	 * back to the heap. The array is replaced by a smaller one that starts with the tuples of
+	 * the old one, and must be fetched again through <code>getSortArray</code>.
+	 * 
+	 * @param heapId The ID of the reserved portion of the sort heap.
+	 * @param numTuples The number of tuples to keep space for.
+	 * @return The number of tuples that may be sorted internally after the call.
+	 * @throws QueryHeapException Thrown if no heap space has been assigned under the given ID or
+	 *                            if the sort array has previously been released.
+	 */
+	public int shrinkSortHeap(int heapId, int numTuples) throws QueryHeapException
+	{
+		AssignedSortHeapSpace space = getAssignedSpace(heapId);
+		int tupleWidth = getTupleBytes(space.getTupleSchema());
+		numTuples = Math.max(numTuples, (int) (space.getMinimalBytes() / tupleWidth));
+		if (numTuples >= space.getNumInternallySortedTuples()) {
+			return space.getNumInternallySortedTuples();
+		}
+		
+		DataTuple[] array = space.getInternalSortArray();
+		if (array == null) {
+			throw new QueryHeapException(
+					"Internal sort array has already been released for heap " + heapId);
+		}
+		space.setInternalSortArray(Arrays.copyOf(array, numTuples));
+		space.setNumInternallySortedTuples(numTuples);
+		
+		synchronized (this.assignableHeapMonitor) {
+			long released = space.getHeapSize() - ((long) numTuples) * tupleWidth;
+			space.setHeapSize(space.getHeapSize() - released);
+			releaseAssignableHeapSpace(released);
+		}
+		return numTuples;
+	}
+	
+	/**
+	 * Checks whether requests wait for heap space. Operators holding more than their minimal
+	 * space should then shrink their grants at the next opportunity, such as between two runs.
+	 * 
+	 * @return True, if requests wait for heap space.
+	 */
+	public boolean hasWaitingRequests()
+	{
+		synchronized (this.assignableHeapMonitor) {
+			return !this.requestedHeapSizes.isEmpty();
+		}
+	}
+	
 	/**
 	 * Gets the array for internal sorts for the assigned heap with the given ID.
 	 * 
@@ -491,7 +829,89 @@ public class QueryHeap
 	public void writeTupleSequencetoTemp(int heapId, DataTuple[] tuples, int numTuples)
 	throws QueryHeapException, IOException
 	{		
-		// get handle
+		AssignedSortHeapSpace space = getAssignedSpace(heapId);
+		space.addWrittenList(writeList(space, new TupleArrayIterator(tuples, numTuples)));
+	}
+	
+	/**
+	 * Writes all tuples of the given sequence to secondary storage, as one sequence that comes
+	 * after all sequences written before. This is used to write the sorted list merged from
+	 * other sorted lists, without holding it in memory.
+	 * 
+	 * @param heapId The ID of the reserved portion of the sort heap.
+	 * @param tuples The sequence of tuples to write.
+	 * @throws QueryHeapException Thrown if no heap space has been assigned under the given ID.
+	 * @throws IOException Thrown, if an I/O problem prevented the lists from being
+	 *                     written properly.
+	 */
+	public void writeTupleSequencetoTemp(int heapId, ExternalTupleSequenceIterator tuples)
+	throws QueryHeapException, IOException
+	{
+		AssignedSortHeapSpace space = getAssignedSpace(heapId);
+		space.addWrittenList(writeList(space, tuples));
+	}
+	
+	/**
+	 * Writes a run of tuples to the temp file of the given portion of the heap. Unlike the
+	 * lists written for a sort, the runs are kept apart from each other and can be read again
+	 * in any combination and any number of times through <code>getSpilledRuns</code>.
+	 * 
+	 * @param heapId The ID of the reserved portion of the heap.
+	 * @param tuples The list of tuples to write.
+	 * @param numTuples The number of tuples in the list to be written.
+	 * @return The number of the written run, counting from zero for each portion of the heap.
+	 * @throws QueryHeapException Thrown if no heap space has been assigned under the given ID.
+	 * @throws IOException Thrown, if an I/O problem prevented the run from being
+	 *                     written properly.
+	 */
+	public int spillTupleSequence(int heapId, DataTuple[] tuples, int numTuples)
+	throws QueryHeapException, IOException
+	{
+		AssignedSortHeapSpace space = getAssignedSpace(heapId);
+		return space.addSpilledRun(writeList(space, new TupleArrayIterator(tuples, numTuples)));
+	}
+	
+	/**
+	 * Gets an iterator that reads the given spilled runs one after the other. The iterator
+	 * holds one block buffer, which it returns once it reached the end of the last run, or
+	 * when the portion of the heap is released.
+	 * 
+	 * @param heapId The ID of the reserved portion of the heap.
+	 * @param runs The numbers of the runs to read, as returned by <code>spillTupleSequence</code>.
+	 * @return An iterator over the tuples of the runs.
+	 * @throws QueryHeapException Thrown if no heap space has been assigned under the given ID
+	 *                            or if one of the runs was not written for it.
+	 * @throws IOException Thrown, if the first block could not be read.
+	 */
+	public ExternalTupleSequenceIterator getSpilledRuns(int heapId, int[] runs)
+	throws QueryHeapException, IOException
+	{
+		AssignedSortHeapSpace space = getAssignedSpace(heapId);
+		
+		WrittenListDescriptor[] descriptors = new WrittenListDescriptor[runs.length];
+		for (int i = 0; i < runs.length; i++) {
+			descriptors[i] = space.getSpilledRun(runs[i]);
+			if (descriptors[i] == null) {
+				throw new QueryHeapException("No run " + runs[i] + " was spilled for heap " + heapId);
+			}
+		}
+		
+		SpilledRunIterator iter = new SpilledRunIterator(space.getSpillFile(), space.getTupleSchema(),
+				getBuffer(), descriptors);
+		space.addRunIterator(iter);
+		return iter;
+	}
+	
+	/**
+	 * Gets the assignment with the given ID.
+	 * 
+	 * @param heapId The ID of the reserved portion of the heap.
+	 * @return The assignment.
+	 * @throws QueryHeapException Thrown if the heap is closed or if no heap space has been
+	 *                            assigned under the given ID.
+	 */
+	private AssignedSortHeapSpace getAssignedSpace(int heapId) throws QueryHeapException
+	{
 		AssignedSortHeapSpace space = null;
 		synchronized (this.assignableHeapMonitor) {
 			if (this.closed) {
@@ -501,62 +921,68 @@ public class QueryHeap
 			space = this.assignedSortSpace.get(new Integer(heapId)); 
 		}
 		
-		// check
 		if (space == null) {
 			throw new QueryHeapException("No heap space assigned under the id " + heapId);
 		}
-		
+		return space;
+	}
+	
+	/**
+	 * Writes a list of tuples as consecutive blocks to the spill file of the given assignment,
+	 * creating the spill file with the first list. The tuples are packed into the blocks through
+	 * a {@link SpillBlockWriter}, compressing their common prefixes if
+	 * the configuration enables the spill prefix compression.
+	 * 
+	 * @param space The assignment to whose temp file the list is written.
+	 * @param tuples The sequence of tuples to write.
+	 * @return The descriptor of the blocks of the written list.
+	 * @throws QueryHeapException Thrown, if the list could not be written.
+	 * @throws IOException Thrown, if the temp file could not be created.
+	 */
+	private WrittenListDescriptor writeList(AssignedSortHeapSpace space, ExternalTupleSequenceIterator tuples)
+	throws QueryHeapException, IOException
+	{
 		// check if we spilled before
-		TableResourceManager tempFileHandle = space.getTempFileManager();
-		if (tempFileHandle == null)
+		SpillFile spillFile = space.getSpillFile();
+		if (spillFile == null)
 		{
-			// create the temp table schema
-			TableSchema schema = new TableSchema(BLOCK_PAGE_SIZE);
-			DataType[] cols = space.getTupleSchema();
-			for (int i = 0; i < cols.length; i++) {
-				ColumnSchema scheme = ColumnSchema.createColumnSchema("TempCol-" + i, cols[i]);
-				schema.addColumn(scheme);
-			}
-			
-			// create a new temp file
+			// create a new spill file
 			File tempFile = new File(this.tempFileDirectory, 
 					Constants.QUERY_HEAP_TEMP_FILE_PREFIX + space.getHeapId());
-			tempFileHandle = TableResourceManager.createTable(tempFile, schema);
-			space.setTempFile(tempFile, tempFileHandle);
+			spillFile = new SpillFile(tempFile, BLOCK_PAGE_SIZE.getNumberOfBytes());
+			space.setSpillFile(spillFile);
 		}
 		
-		// begin writing the list to the temporary file
+		// begin writing the list to the spill file
 		byte[] buffer = getBuffer();
 		
 		try {
-			int tuplesWritten = 0;
-			TablePage currentPage = tempFileHandle.reserveNewPage(buffer);
-			int beginningOfList = currentPage.getPageNumber();
+			SpillBlockWriter writer = new SpillBlockWriter(space.getTupleSchema(), this.spillPrefixCompression);
+			writer.reset(buffer);
+			int beginningOfList = spillFile.getNextBlockNumber();
 			
 			// write all tuples in blocks
-			while (tuplesWritten < numTuples)
+			while (tuples.hasNext())
 			{
-				try {
-					if (currentPage.insertTuple(tuples[tuplesWritten])) {
-						tuplesWritten++;
-					}
-					else {
-						// full, write and create a new one
-						tempFileHandle.writePageToResource(buffer, currentPage);
-						currentPage = tempFileHandle.reserveNewPage(buffer);
-					}
-				}
-				catch (PageFormatException e) {
-					throw new QueryHeapException("Sorted sublist could not be written to temp space.", e);
+				DataTuple tuple = tuples.next();
+				if (!writer.add(tuple)) {
+					// full, write and start a new one
+					writer.finish();
+					spillFile.appendBlock(buffer);
+					writer.reset(buffer);
+					writer.add(tuple);
 				}
 			}
 			
 			// write the last block
-			tempFileHandle.writePageToResource(buffer, currentPage);
+			writer.finish();
+			int lastBlock = spillFile.appendBlock(buffer);
 			
-			// store the blocks for that sublist
-			int listLength = currentPage.getPageNumber() - beginningOfList + 1;
-			space.addWrittenList(new WrittenListDescriptor(beginningOfList, listLength));
+			// describe the blocks of that sublist
+			return new WrittenListDescriptor(beginningOfList, lastBlock - beginningOfList + 1);
+		}
+		catch (QueryHeapException qhex) {
+			throw qhex;
 		}
 		catch (Exception e) {
 			throw new QueryHeapException("An error occurred writing the sorted sublist: " + e.getMessage());
@@ -568,7 +994,8 @@ public class QueryHeap
 	
 	/**
 	 * Gets an array of iterators that can be used to obtain the tuples from the sorted sublist.
-	 * The sublists are read into memory as needed.
+	 * The sublists are read into memory as needed. If the heap can give two block buffers to
+	 * every list, each iterator reads the next block of its list in the background.
 	 * 
 	 * @param heapId The ID of the reserved portion of the sort heap.
 	 * @return An array of iterators, one per sub-list that has been written.
@@ -600,9 +1027,8 @@ public class QueryHeap
 		}
 		
 		// check that external lists were created
-		TableResourceManager manager = space.getTempFileManager();
 		List<WrittenListDescriptor> externalLists = space.getWrittenLists();
-		if (manager == null || externalLists == null || externalLists.isEmpty()) {
+		if (space.getSpillFile() == null || externalLists == null || externalLists.isEmpty()) {
 			throw new QueryHeapException("No external sub-lists were produced for this reserved " +
 					"portion of the query heap.");
 		}
@@ -615,17 +1041,9 @@ public class QueryHeap
 					"A larger query-heap size is required.");
 		}
 		
-		// create the iterators
-		ExternalListIterator[] iters = new ExternalListIterator[externalLists.size()];
-		try {
-			for (int i = 0; i < iters.length; i++) {
-				WrittenListDescriptor descr = externalLists.get(i);
-				iters[i] = new ExternalListIterator(manager, getBuffer(), descr.getFirstBlock(), descr.numBlocks);
-			}
-		}
-		catch (Exception e) {
-			internalReleaseSortListIterators(iters);
-		}
+		// create the iterators, reading ahead if there are buffers enough
+		ExternalListIterator[] iters = createListIterators(space, externalLists, externalLists.size(),
+				2 * externalLists.size() <= this.maxBuffersPerAssignment);
 		
 		space.setExternalListIterators(iters);
 		space.clearWrittenLists();
@@ -633,18 +1051,111 @@ public class QueryHeap
 		return iters;
 	}
 	
-	
 	/**
-	 * Internal function to synchronize access to grab a buffer.
+	 * Gets iterators over the first of the sorted lists that have been written, in order to merge
+	 * them into a single list before the remaining lists are merged. The lists are not handed
+	 * out again. Each iterator reads the next block of its list in the background, and returns
+	 * its buffers once it reached the end of its list.
 	 * 
-	 * @return An acquired buffer.
+	 * @param heapId The ID of the reserved portion of the sort heap.
+	 * @param numLists The number of lists, at most the maximal merge fan-in.
+	 * @return An array of iterators, one per list.
+	 * @throws QueryHeapException Thrown if no heap space has been assigned under the given ID 
+	 *                            or if fewer lists were written or too many are requested.
+	 * @throws IOException Thrown, if the first block of a list could not be read.
+	 * @see #getMaximalMergeFanIn()
 	 */
-	private final byte[] getBuffer()
+	public ExternalTupleSequenceIterator[] getExternalSortedLists(int heapId, int numLists)
+	throws QueryHeapException, IOException
+	{
+		AssignedSortHeapSpace space = getAssignedSpace(heapId);
+		List<WrittenListDescriptor> externalLists = space.getWrittenLists();
+		if (externalLists == null || externalLists.size() < numLists) {
+			throw new QueryHeapException("Fewer than " + numLists + " external sub-lists were produced " +
+					"for this reserved portion of the query heap.");
+		}
+		if (numLists > getMaximalMergeFanIn()) {
+			throw new QueryHeapException("Cannot merge " + numLists + " sub-lists at once, at most " +
+					getMaximalMergeFanIn() + " can be merged.");
+		}
+		
+		ExternalListIterator[] iters = createListIterators(space, externalLists, numLists, true);
+		for (int i = 0; i < iters.length; i++) {
+			space.addMergeIterator(iters[i]);
+		}
+		externalLists.subList(0, numLists).clear();
+		return iters;
+	}
+	
+	/**
+	 * Gets the number of sorted lists that have been written and not yet been handed out through
+	 * <code>getExternalSortedLists</code>.
+	 * 
+	 * @param heapId The ID of the reserved portion of the sort heap.
+	 * @return The number of written lists.
+	 * @throws QueryHeapException Thrown if no heap space has been assigned under the given ID.
+	 */
+	public int getNumberOfExternalSortedLists(int heapId) throws QueryHeapException
+	{
+		List<WrittenListDescriptor> externalLists = getAssignedSpace(heapId).getWrittenLists();
+		return externalLists == null ? 0 : externalLists.size();
+	}
+	
+	/**
+	 * Gets the number of sorted lists that one operator can merge at once. Each list is read
+	 * through two block buffers, such that the next block is read while the tuples of the
+	 * current one are consumed, and one more buffer writes the merged list. A sort that wrote
+	 * more lists merges them in several steps, each writing a longer list.
+	 * 
+	 * @return The maximal number of lists to merge at once.
+	 */
+	public int getMaximalMergeFanIn()
+	{
+		return Math.max(2, (this.maxBuffersPerAssignment - 1) / 2);
+	}
+	
+	/**
+	 * Creates the iterators over the first of the given lists.
+	 * 
+	 * @param space The assignment that wrote the lists.
+	 * @param lists The descriptors of the lists.
+	 * @param numLists The number of lists to create iterators for.
+	 * @param readAhead Flag indicating that the iterators read their next block in the background.
+	 * @return The iterators.
+	 * @throws IOException Thrown, if the first block of a list could not be read.
+	 */
+	private ExternalListIterator[] createListIterators(AssignedSortHeapSpace space,
+			List<WrittenListDescriptor> lists, int numLists, boolean readAhead)
+	throws IOException
+	{
+		ExternalListIterator[] iters = new ExternalListIterator[numLists];
+		try {
+			for (int i = 0; i < iters.length; i++) {
+				WrittenListDescriptor descr = lists.get(i);
+				iters[i] = new ExternalListIterator(space.getSpillFile(), space.getTupleSchema(),
+						getBuffer(), readAhead ? getBuffer() : null,
+						descr.getFirstBlock(), descr.numBlocks);
+			}
+		}
+		catch (IOException ioex) {
+			internalReleaseSortListIterators(iters);
+			throw ioex;
+		}
+		return iters;
+	}
+	
+	
+	/**
+	 * Internal function to synchronize access to grab a buffer.
+	 * 
+	 * @return An acquired buffer.
+	 */
+	private final byte[] getBuffer()
 	{
 		synchronized (this.blockBuffers) {
 			while (this.blockBuffers.isEmpty() && !this.closed) {
 				try {
-					this.blockBuffers.wait(1000);
+					this.blockBuffers.wait();
 				}
 				catch (InterruptedException iex) {}
 			}
@@ -719,20 +1230,51 @@ public class QueryHeap
 	{
 		// add available bytes
 		this.bytesFree += bytestoRelease;
-		long bytes = this.bytesFree;
-		
-		// wake up as many requests as could now be served
-		for (int i = 0; i < this.requestedHeapSizes.size(); i++)
+		grantWaitingRequests();
+	}
+	
+	/**
+	 * Internal function to serve the waiting requests in the order of the queue, as long as the
+	 * free space suffices for the next one. The requested bytes are reserved for each served
+	 * request before its thread is woken up.
+	 * 
+	 * WARNING: This method assumes the caller already holds the lock for the assignable space.
+	 */
+	private final void grantWaitingRequests()
+	{
+		HeapRequest req = null;
+		while ((req = this.requestedHeapSizes.peek()) != null && req.getBytes() <= this.bytesFree)
 		{
-			HeapRequest req = this.requestedHeapSizes.get(i);
-			if (req.getBytes() < bytes) {
-				bytes -= req.getBytes();
-				synchronized (req) {
-					req.notifyAll();
-				}
+			this.requestedHeapSizes.poll();
+			this.bytesFree -= req.getBytes();
+			synchronized (req) {
+				req.markDone();
+				req.notifyAll();
 			}
 		}
 	}
+	
+	/**
+	 * Internal function to enlarge an assignment by at most the given number of bytes. While
+	 * requests wait, the assignment does not grow. Otherwise it grows by at most the share of the
+	 * free bytes that a new assignment would get, and to at most the maximal size of an assignment.
+	 * 
+	 * WARNING: This method assumes the caller already holds the lock for the assignable space.
+	 * 
+	 * @param space The assignment to enlarge.
+	 * @param additionalBytes The number of bytes by which the assignment should grow.
+	 */
+	private final void growAssignment(AssignedSortHeapSpace space, long additionalBytes)
+	{
+		if (!this.requestedHeapSizes.isEmpty() || this.closed) {
+			return;
+		}
+		long granted = Math.min(computeShare(additionalBytes), this.maxBytesPerAssignment - space.getHeapSize());
+		if (granted > 0) {
+			this.bytesFree -= granted;
+			space.setHeapSize(space.getHeapSize() + granted);
+		}
+	}
 
 
 
@@ -751,17 +1293,26 @@ public class QueryHeap
 				internalReleaseSortListIterators(iters);
 				space.setExternalListIterators(null);
 			}
+			internalReleaseSortListIterators(space.getMergeIterators().toArray(
+					new ExternalListIterator[space.getMergeIterators().size()]));
+			space.getMergeIterators().clear();
+			for (SpilledRunIterator runIter : space.getRunIterators()) {
+				byte[] buffer = runIter.abort();
+				if (buffer != null) {
+					returnBuffer(buffer);
+				}
+			}
 			space.clearWrittenLists();
-			// release the temp file
-			if (space.getTempFileManager() != null) {
+			space.clearSpilledRuns();
+			// release the spill file
+			if (space.getSpillFile() != null) {
 				try {
-					space.getTempFileManager().closeResource();
-					TableResourceManager.deleteTable(space.getTempFile());
+					space.getSpillFile().closeAndDelete();
 				}
 				catch (Exception ex) {
 					this.logger.log(Level.WARNING, "Temp file from query heap could not be released.", ex);
 				}
-				space.setTempFile(null, null);
+				space.setSpillFile(null);
 			}
 		}
 	}
@@ -776,8 +1327,7 @@ public class QueryHeap
 	{
 		for (int i = 0; i < iters.length; i++) {
 			if (iters[i] != null) {
-				byte[] buffer = iters[i].abort();
-				returnBuffer(buffer);
+				iters[i].abort();
 			}
 		}
 	}
@@ -813,15 +1363,31 @@ public class QueryHeap
 
 	
 	/**
-	 * Utility class describing a request for space on the sort heap.
+	 * Utility class describing a request for space on the sort heap. Requests are ordered
+	 * by descending priority, then by ascending estimated size, and then by their arrival.
 	 */
-	private static final class HeapRequest
+	private static final class HeapRequest implements Comparable<HeapRequest>
 	{
 		/**
 		 * The number of bytes requested.
 		 */
 		private long bytes;
 		
+		/**
+		 * The number of bytes that the requester estimates to need.
+		 */
+		private long estimatedBytes;
+		
+		/**
+		 * The priority of the request.
+		 */
+		private int priority;
+		
+		/**
+		 * The number of requests queued before this one.
+		 */
+		private long sequenceNumber;
+		
 		/**
 		 * Flag indicating that the request was fulfilled.
 		 */
@@ -831,10 +1397,31 @@ public class QueryHeap
 		 * Creates a new request for the given number of bytes.
 		 * 
 		 * @param bytes The number of bytes requested.
+		 * @param estimatedBytes The number of bytes that the requester estimates to need.
+		 * @param priority The priority of the request.
+		 * @param sequenceNumber The number of requests queued before this one.
 		 */
-		public HeapRequest(long bytes)
+		public HeapRequest(long bytes, long estimatedBytes, int priority, long sequenceNumber)
 		{
 			this.bytes = bytes;
+			this.estimatedBytes = estimatedBytes;
+			this.priority = priority;
+			this.sequenceNumber = sequenceNumber;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		@Override
+		public int compareTo(HeapRequest o)
+		{
+			if (this.priority != o.priority) {
+				return this.priority > o.priority ? -1 : 1;
+			}
+			if (this.estimatedBytes != o.estimatedBytes) {
+				return this.estimatedBytes < o.estimatedBytes ? -1 : 1;
+			}
+			return this.sequenceNumber < o.sequenceNumber ? -1 : (this.sequenceNumber == o.sequenceNumber ? 0 : 1);
 		}
 
 		/**
@@ -936,6 +1523,11 @@ public class QueryHeap
 		 */
 		private long heapSize;
 		
+		/**
+		 * The number of bytes below which the assignment does not shrink.
+		 */
+		private long minimalBytes;
+		
 		/**
 		 * The array used for internal sorting.
 		 */
@@ -947,14 +1539,9 @@ public class QueryHeap
 		private int numInternallySortedTuples;
 		
 		/**
-		 * Handle to the temp file created by this sort.
-		 */
-		private TableResourceManager tempFileManager;
-		
-		/**
-		 * The temp file created by this sort.
+		 * The spill file created by this sort.
 		 */
-		private File tempFile;
+		private SpillFile spillFile;
 		
 		/**
 		 * The lists written out for this sort.
@@ -967,17 +1554,34 @@ public class QueryHeap
 		 */
 		private ExternalListIterator[] externalListIterators;
 		
+		/**
+		 * The runs spilled to the temp file, addressed by their position.
+		 */
+		private List<WrittenListDescriptor> spilledRuns = new ArrayList<WrittenListDescriptor>();
+		
+		/**
+		 * The iterators handed out over spilled runs.
+		 */
+		private List<SpilledRunIterator> runIterators = new ArrayList<SpilledRunIterator>();
+		
+		/**
+		 * The iterators handed out over lists that are merged into a longer list.
+		 */
+		private List<ExternalListIterator> mergeIterators = new ArrayList<ExternalListIterator>();
+		
 		
 		/**
 		 * 
 		 * @param tupleSchema
 		 * @param heapId
 		 * @param heapSize
+		 * @param minimalBytes
 		 */
-		public AssignedSortHeapSpace(DataType[] columnTypes, int heapId, long heapSize)
+		public AssignedSortHeapSpace(DataType[] columnTypes, int heapId, long heapSize, long minimalBytes)
 		{
 			this.tupleSchema = columnTypes;
 			this.heapSize = heapSize;
+			this.minimalBytes = minimalBytes;
 			this.heapId = heapId;
 			this.internalSortArray = null;
 			this.numInternallySortedTuples = 0;
@@ -1025,6 +1629,16 @@ public class QueryHeap
 			this.heapSize = heapSize;
 		}
 
+		/**
+		 * Gets the minimalBytes from this QueryHeap.AssignedSortHeapSpace.
+		 *
+		 * @return The minimalBytes.
+		 */
+		public long getMinimalBytes()
+		{
+			return this.minimalBytes;
+		}
+
 		/**
 		 * Gets the internalSortArray from this QueryHeap.AssignedSortHeapSpace.
 		 *
@@ -1066,35 +1680,23 @@ public class QueryHeap
 		}
 
 		/**
-		 * Gets the tempFileManager from this QueryHeap.AssignedSortHeapSpace.
+		 * Gets the spillFile from this QueryHeap.AssignedSortHeapSpace.
 		 *
-		 * @return The tempFileManager.
+		 * @return The spillFile.
 		 */
-		public TableResourceManager getTempFileManager()
+		public SpillFile getSpillFile()
 		{
-			return this.tempFileManager;
+			return this.spillFile;
 		}
 
 		/**
-		 * Gets the tempFile from this QueryHeap.AssignedSortHeapSpace.
+		 * Sets the spillFile for this AssignedSortHeapSpace.
 		 *
-		 * @return The tempFile.
+		 * @param spillFile The spillFile to set.
 		 */
-		public File getTempFile()
+		public void setSpillFile(SpillFile spillFile)
 		{
-			return this.tempFile;
-		}
-
-		/**
-		 * Sets the tempFile and its manager for this AssignedSortHeapSpace.
-		 *
-		 * @param tempFile The tempFile to set.
-		 * @param tempFileManager The tempFileManager to set.
-		 */
-		public void setTempFile(File tempFile, TableResourceManager tempFileManager)
-		{
-			this.tempFile = tempFile;
-			this.tempFileManager = tempFileManager;
+			this.spillFile = spillFile;
 		}
 		
 		/**
@@ -1147,51 +1749,179 @@ public class QueryHeap
 		{
 			this.externalListIterators = externalListIterators;
 		}
+		
+		/**
+		 * Adds a spilled run.
+		 * 
+		 * @param descr The descriptor of the spilled run.
+		 * @return The number of the run.
+		 */
+		public int addSpilledRun(WrittenListDescriptor descr)
+		{
+			this.spilledRuns.add(descr);
+			return this.spilledRuns.size() - 1;
+		}
+		
+		/**
+		 * Gets the spilled run with the given number.
+		 * 
+		 * @param run The number of the run.
+		 * @return The descriptor of the run, or null, if no such run was spilled.
+		 */
+		public WrittenListDescriptor getSpilledRun(int run)
+		{
+			return run >= 0 && run < this.spilledRuns.size() ? this.spilledRuns.get(run) : null;
+		}
+		
+		/**
+		 * Clears the spilled runs and the iterators over them.
+		 */
+		public void clearSpilledRuns()
+		{
+			this.spilledRuns.clear();
+			this.runIterators.clear();
+		}
+		
+		/**
+		 * Adds an iterator over spilled runs.
+		 * 
+		 * @param iter The iterator to add.
+		 */
+		public void addRunIterator(SpilledRunIterator iter)
+		{
+			this.runIterators.add(iter);
+		}
+		
+		/**
+		 * Gets the iterators over spilled runs.
+		 * 
+		 * @return The iterators over spilled runs.
+		 */
+		public List<SpilledRunIterator> getRunIterators()
+		{
+			return this.runIterators;
+		}
+		
+		/**
+		 * Adds an iterator over a list that is merged into a longer list.
+		 * 
+		 * @param iter The iterator to add.
+		 */
+		public void addMergeIterator(ExternalListIterator iter)
+		{
+			this.mergeIterators.add(iter);
+		}
+		
+		/**
+		 * Gets the iterators over lists that are merged into longer lists.
+		 * 
+		 * @return The iterators over merged lists.
+		 */
+		public List<ExternalListIterator> getMergeIterators()
+		{
+			return this.mergeIterators;
+		}
 	}
 	
 	/**
 	 * Implementation of the <tt>ExternalTupleSequenceIterator</tt> that lazily loads blocks for tuples
-	 * from secondary storage.
+	 * from secondary storage. If it has a second buffer, it reads the next block into that one
+	 * in the background while the tuples of the current block are consumed. An iterator that
+	 * owns its buffers returns them to the heap once it reached the end of its list.
 	 */
 	private final class ExternalListIterator implements ExternalTupleSequenceIterator
 	{
-		private TableResourceManager tempFileManager;
+		private SpillFile spillFile;
 
-		private TupleIterator currentIterator;
+		private final SpillBlockReader reader;
+		
+		private SpillBlockReader currentBlock;
 		
 		private byte[] buffer;
 		
-		private int currentBlock;
+		private byte[] readAheadBuffer;
+		
+		private Future<byte[]> readAhead;
+		
+		private final boolean ownsBuffers;
+		
+		private int nextBlock;
 		
 		private int numBlocksLeft;
 		
 
-		public ExternalListIterator(TableResourceManager tempFileManager, byte[] buffer,
+		/**
+		 * Creates an iterator that reads through the given buffer, which remains with the caller.
+		 */
+		public ExternalListIterator(SpillFile spillFile, DataType[] schema, byte[] buffer,
 				int firstBlock, int numBlocks)
 		throws IOException
 		{
-			this.tempFileManager = tempFileManager;
+			this(spillFile, schema, buffer, null, firstBlock, numBlocks, false);
+		}
+		
+		/**
+		 * Creates an iterator that owns the given buffers and reads ahead, if a second buffer is given.
+		 */
+		public ExternalListIterator(SpillFile spillFile, DataType[] schema, byte[] buffer,
+				byte[] readAheadBuffer, int firstBlock, int numBlocks)
+		throws IOException
+		{
+			this(spillFile, schema, buffer, readAheadBuffer, firstBlock, numBlocks, true);
+		}
+		
+		private ExternalListIterator(SpillFile spillFile, DataType[] schema, byte[] buffer,
+				byte[] readAheadBuffer, int firstBlock, int numBlocks, boolean ownsBuffers)
+		throws IOException
+		{
+			this.spillFile = spillFile;
+			this.reader = new SpillBlockReader(schema);
 			this.buffer = buffer;
-			this.currentBlock = firstBlock;
+			this.readAheadBuffer = readAheadBuffer;
+			this.ownsBuffers = ownsBuffers;
+			this.nextBlock = firstBlock;
 			this.numBlocksLeft = numBlocks;
 			
-			this.currentIterator = getNextNoneEmptyPage();
+			this.currentBlock = getNextNoneEmptyBlock();
 		}
 		
 		
 		/**
-		 * Aborts this iterator and returns its buffer.
-		 * 
-		 * @return The buffer.
+		 * Aborts this iterator and returns its buffers to the heap, if it owns them, after
+		 * a read that is still in progress has finished.
 		 */
-		public byte[] abort()
+		public void abort()
 		{
-			this.tempFileManager = null;
-			this.currentIterator = null;
-
-			byte[] b = this.buffer;
+			this.spillFile = null;
+			this.currentBlock = null;
+			
+			if (this.readAhead != null) {
+				try {
+					this.readAhead.get();
+				}
+				catch (Exception ex) {
+					// the block is not needed any more
+				}
+				this.readAhead = null;
+			}
+			releaseBuffers();
+		}
+		
+		/**
+		 * Returns the buffers to the heap, if this iterator owns them.
+		 */
+		private void releaseBuffers()
+		{
+			if (this.ownsBuffers) {
+				if (this.buffer != null) {
+					returnBuffer(this.buffer);
+				}
+				if (this.readAheadBuffer != null) {
+					returnBuffer(this.readAheadBuffer);
+				}
+			}
 			this.buffer = null;
-			return b;
+			this.readAheadBuffer = null;
 		}
 
 		/* (non-Javadoc)
@@ -1200,10 +1930,10 @@ public class QueryHeap
 		@Override
 		public boolean hasNext() throws QueryHeapException
 		{
-			if (this.currentIterator != null) {
+			if (this.currentBlock != null) {
 				return true;
 			}
-			else if (this.tempFileManager == null) {
+			else if (this.spillFile == null) {
 				throw new QueryHeapException("The sort heap assignment supporting this iterator has been released.");
 			}
 			else {
@@ -1217,20 +1947,15 @@ public class QueryHeap
 		@Override
 		public DataTuple next() throws QueryHeapException, IOException
 		{
-			if (this.currentIterator != null) {
-				try {
-					DataTuple tuple = this.currentIterator.next();
-					
-					// check if we need to load the next page
-					if (!this.currentIterator.hasNext()) {
-						this.currentIterator = getNextNoneEmptyPage();
-					}
-					
-					return tuple;
-				}
-				catch (PageTupleAccessException ptae) {
-					throw new IOException("Page from external sub-list was corrupted during I/O.", ptae);
+			if (this.currentBlock != null) {
+				DataTuple tuple = this.currentBlock.next();
+				
+				// check if we need to load the next block
+				if (!this.currentBlock.hasNext()) {
+					this.currentBlock = getNextNoneEmptyBlock();
 				}
+				
+				return tuple;
 			}
 			else {
 				throw new NoSuchElementException();
@@ -1238,30 +1963,246 @@ public class QueryHeap
 		}
 		
 		/**
-		 * Gets the iterator over the next not empty page.
+		 * Gets the reader over the next not empty block. If the iterator reads ahead, the block
+		 * is taken from the read in progress and the read of the following block is started.
 		 * 
-		 * @return An iterator over the next not empty page.
-		 * @throws IOException Thrown, if the next page could not be read.
+		 * @return The reader over the next not empty block, or null, if the list has no further blocks.
+		 * @throws IOException Thrown, if the next block could not be read.
 		 */
-		private TupleIterator getNextNoneEmptyPage() throws IOException
+		private SpillBlockReader getNextNoneEmptyBlock() throws IOException
 		{
-			while (this.numBlocksLeft > 0) {
-				TablePage page = this.tempFileManager.readPageFromResource(this.buffer, this.currentBlock);
-				this.currentBlock++;
-				this.numBlocksLeft--;
-				try {
-					int numCols = this.tempFileManager.getSchema().getNumberOfColumns();
-					TupleIterator iter = page.getIterator(numCols, (0x1L << numCols) - 1);
-					if (iter.hasNext()) {
-						return iter;
-					}
+			while (this.readAhead != null || this.numBlocksLeft > 0) {
+				if (this.readAhead != null) {
+					awaitReadAhead();
+				}
+				else {
+					this.spillFile.readBlock(this.buffer, this.nextBlock);
+					this.nextBlock++;
+					this.numBlocksLeft--;
 				}
-				catch (PageTupleAccessException ptae) {
-					throw new IOException("Page from external sub-list was corrupted during I/O.", ptae);
+				startReadAhead();
+				
+				this.reader.reset(this.buffer);
+				if (this.reader.hasNext()) {
+					return this.reader;
 				}
 			}
 			
+			// the list is consumed, the buffers are not needed any more
+			releaseBuffers();
 			return null;
 		}
+		
+		/**
+		 * Starts reading the next block into the read-ahead buffer, if there is a read-ahead
+		 * buffer and the list has another block.
+		 */
+		private void startReadAhead()
+		{
+			if (this.readAheadBuffer == null || this.numBlocksLeft <= 0) {
+				return;
+			}
+			
+			final SpillFile file = this.spillFile;
+			final byte[] target = this.readAheadBuffer;
+			final int block = this.nextBlock;
+			this.nextBlock++;
+			this.numBlocksLeft--;
+			
+			this.readAhead = QueryHeap.this.readAheadService.submit(new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws IOException
+				{
+					file.readBlock(target, block);
+					return target;
+				}
+			});
+		}
+		
+		/**
+		 * Waits for the read in progress and swaps the buffers, such that the read block is in
+		 * the current buffer and the next block can be read into the other one.
+		 * 
+		 * @throws IOException Thrown, if the block could not be read.
+		 */
+		private void awaitReadAhead() throws IOException
+		{
+			Future<byte[]> read = this.readAhead;
+			this.readAhead = null;
+			
+			byte[] b = this.buffer;
+			this.buffer = this.readAheadBuffer;
+			this.readAheadBuffer = b;
+			
+			try {
+				read.get();
+			}
+			catch (ExecutionException eex) {
+				throw new IOException("Block of external sub-list could not be read.", eex.getCause());
+			}
+			catch (InterruptedException iex) {
+				throw new IOException("Interrupted while reading a block of an external sub-list.", iex);
+			}
+		}
+	}
+	
+	/**
+	 * Implementation of the <tt>ExternalTupleSequenceIterator</tt> over the first tuples of
+	 * an array, through which arrays of tuples are written.
+	 */
+	private static final class TupleArrayIterator implements ExternalTupleSequenceIterator
+	{
+		private final DataTuple[] tuples;
+		
+		private final int numTuples;
+		
+		private int position;
+		
+		
+		public TupleArrayIterator(DataTuple[] tuples, int numTuples)
+		{
+			this.tuples = tuples;
+			this.numTuples = numTuples;
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext()
+		{
+			return this.position < this.numTuples;
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator#next()
+		 */
+		@Override
+		public DataTuple next()
+		{
+			if (this.position >= this.numTuples) {
+				throw new NoSuchElementException();
+			}
+			return this.tuples[this.position++];
+		}
+	}
+	
+	/**
+	 * Implementation of the <tt>ExternalTupleSequenceIterator</tt> that reads a sequence of spilled
+	 * runs through a single block buffer, which it returns to the heap after the last run.
+	 */
+	private final class SpilledRunIterator implements ExternalTupleSequenceIterator
+	{
+		private SpillFile spillFile;
+		
+		private final DataType[] schema;
+		
+		private WrittenListDescriptor[] runs;
+		
+		private ExternalListIterator currentRun;
+		
+		private int nextRun;
+		
+		private byte[] buffer;
+		
+		private boolean released;
+		
+		
+		public SpilledRunIterator(SpillFile spillFile, DataType[] schema, byte[] buffer,
+				WrittenListDescriptor[] runs)
+		throws IOException
+		{
+			this.spillFile = spillFile;
+			this.schema = schema;
+			this.buffer = buffer;
+			this.runs = runs;
+			
+			advance();
+		}
+		
+		/**
+		 * Aborts this iterator and gives up its buffer.
+		 * 
+		 * @return The buffer, or null, if it was already returned to the heap.
+		 */
+		public byte[] abort()
+		{
+			this.released = true;
+			return takeBuffer();
+		}
+		
+		/**
+		 * Detaches the buffer from this iterator.
+		 * 
+		 * @return The buffer, or null, if it was detached before.
+		 */
+		private byte[] takeBuffer()
+		{
+			this.spillFile = null;
+			this.currentRun = null;
+
+			byte[] b = this.buffer;
+			this.buffer = null;
+			return b;
+		}
+
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext() throws QueryHeapException
+		{
+			if (this.currentRun != null) {
+				return true;
+			}
+			else if (this.released) {
+				throw new QueryHeapException("The heap assignment supporting this iterator has been released.");
+			}
+			else {
+				return false;
+			}
+		}
+
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator#next()
+		 */
+		@Override
+		public DataTuple next() throws QueryHeapException, IOException
+		{
+			if (this.currentRun == null) {
+				throw new NoSuchElementException();
+			}
+			
+			DataTuple tuple = this.currentRun.next();
+			if (!this.currentRun.hasNext()) {
+				advance();
+			}
+			return tuple;
+		}
+		
+		/**
+		 * Moves to the next run that has tuples, returning the buffer if there is none.
+		 * 
+		 * @throws IOException Thrown, if the first block of the next run could not be read.
+		 */
+		private void advance() throws IOException
+		{
+			this.currentRun = null;
+			while (this.nextRun < this.runs.length) {
+				WrittenListDescriptor descr = this.runs[this.nextRun++];
+				ExternalListIterator iter = new ExternalListIterator(this.spillFile, this.schema,
+						this.buffer, descr.getFirstBlock(), descr.numBlocks);
+				if (iter.currentBlock != null) {
+					this.currentRun = iter;
+					return;
+				}
+			}
+			
+			// all runs are read, give the buffer back
+			byte[] b = takeBuffer();
+			if (b != null) {
+				returnBuffer(b);
+			}
+		}
 	}
 }
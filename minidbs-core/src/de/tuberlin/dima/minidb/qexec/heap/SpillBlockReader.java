@@ -0,0 +1,239 @@
+package de.tuberlin.dima.minidb.qexec.heap;
+
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.SmallIntField;
+import de.tuberlin.dima.minidb.core.VarcharField;
+
+
+/**
+ * Decodes the tuples from the blocks of a {@link SpillFile}, as they were packed by a
+ * {@link SpillBlockWriter}. A tuple that shares no bytes with its predecessor is decoded
+ * directly from the block, all others are first assembled from the shared bytes and the
+ * stored ones.
+ */
+final class SpillBlockReader
+{
+	/**
+	 * The types of the fields of the tuples.
+	 */
+	private final DataType[] schema;
+
+	/**
+	 * The buffer in which tuples that share bytes with their predecessor are assembled.
+	 */
+	private final byte[] assembled;
+
+	/**
+	 * The block that is decoded.
+	 */
+	private byte[] block;
+
+	/**
+	 * The end of the used bytes of the block.
+	 */
+	private int limit;
+
+	/**
+	 * The position of the next tuple in the block.
+	 */
+	private int position;
+
+	/**
+	 * The number of tuples of the block that are not yet decoded.
+	 */
+	private int numTuplesLeft;
+
+	/**
+	 * The array holding the encoding of the previous tuple.
+	 */
+	private byte[] previous;
+
+	/**
+	 * The offset of the encoding of the previous tuple in its array.
+	 */
+	private int previousOffset;
+
+	/**
+	 * The position while a tuple is decoded.
+	 */
+	private int offset;
+
+
+	/**
+	 * Creates a reader for tuples of the given schema.
+	 *
+	 * @param schema The types of the fields of the tuples.
+	 */
+	SpillBlockReader(DataType[] schema)
+	{
+		this.schema = schema;
+		this.assembled = new byte[SpillBlockWriter.getMaximalTupleBytes(schema)];
+	}
+
+	/**
+	 * Starts decoding the given block.
+	 *
+	 * @param block The buffer holding the block.
+	 * @throws IOException Thrown, if the header of the block is corrupt.
+	 */
+	void reset(byte[] block) throws IOException
+	{
+		this.block = block;
+		this.limit = getInt(block, 0);
+		this.numTuplesLeft = getInt(block, 4);
+		this.position = SpillBlockWriter.HEADER_BYTES;
+
+		if (this.limit < SpillBlockWriter.HEADER_BYTES || this.limit > block.length || this.numTuplesLeft < 0) {
+			this.block = null;
+			this.numTuplesLeft = 0;
+			throw new IOException("Block from temp space was corrupted during I/O.");
+		}
+	}
+
+	/**
+	 * Checks whether the block has further tuples.
+	 *
+	 * @return True, if there are further tuples.
+	 */
+	boolean hasNext()
+	{
+		return this.numTuplesLeft > 0;
+	}
+
+	/**
+	 * Decodes the next tuple of the block.
+	 *
+	 * @return The next tuple.
+	 * @throws IOException Thrown, if the block is corrupt.
+	 */
+	DataTuple next() throws IOException
+	{
+		if (this.numTuplesLeft <= 0) {
+			throw new NoSuchElementException();
+		}
+
+		try {
+			this.offset = this.position;
+			int shared = (int) getVarLong(this.block);
+			int suffix = (int) getVarLong(this.block);
+			this.position = this.offset + suffix;
+			if (this.position > this.limit || suffix < 0 || shared < 0) {
+				throw new IOException("Block from temp space was corrupted during I/O.");
+			}
+
+			if (shared == 0) {
+				this.previous = this.block;
+				this.previousOffset = this.offset;
+			}
+			else {
+				if (this.previous != this.assembled || this.previousOffset != 0) {
+					System.arraycopy(this.previous, this.previousOffset, this.assembled, 0, shared);
+				}
+				System.arraycopy(this.block, this.offset, this.assembled, shared, suffix);
+				this.previous = this.assembled;
+				this.previousOffset = 0;
+			}
+
+			this.numTuplesLeft--;
+			return decode(this.previous, this.previousOffset);
+		}
+		catch (ArrayIndexOutOfBoundsException aioobex) {
+			throw new IOException("Block from temp space was corrupted during I/O.", aioobex);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Decodes a tuple from its encoding.
+	 *
+	 * @param source The array with the encoding.
+	 * @param start The offset of the encoding.
+	 * @return The decoded tuple.
+	 */
+	private DataTuple decode(byte[] source, int start)
+	{
+		DataTuple tuple = new DataTuple(this.schema.length);
+		this.offset = start + ((this.schema.length + 7) >>> 3);
+
+		for (int i = 0; i < this.schema.length; i++) {
+			DataType type = this.schema[i];
+			if ((source[start + (i >>> 3)] & (1 << (i & 7))) != 0) {
+				tuple.assignDataField(type.getNullValue(), i);
+				continue;
+			}
+
+			switch (type.getBasicType()) {
+			case SMALL_INT:
+				tuple.assignDataField(new SmallIntField((short) unZigZag(getVarLong(source))), i);
+				break;
+			case INT:
+				tuple.assignDataField(new IntField((int) unZigZag(getVarLong(source))), i);
+				break;
+			case BIG_INT:
+				tuple.assignDataField(new BigIntField(unZigZag(getVarLong(source))), i);
+				break;
+			case CHAR:
+				tuple.assignDataField(new CharField(getString(source)), i);
+				break;
+			case VAR_CHAR:
+				tuple.assignDataField(new VarcharField(getString(source)), i);
+				break;
+			default:
+				tuple.assignDataField(type.getFromBinary(source, this.offset), i);
+				this.offset += type.getNumberOfBytes();
+			}
+		}
+		return tuple;
+	}
+
+	private static long unZigZag(long value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private String getString(byte[] source)
+	{
+		int length = (int) getVarLong(source);
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			byte b = source[this.offset];
+			if (b >= 0) {
+				chars[i] = (char) b;
+				this.offset++;
+			}
+			else {
+				chars[i] = (char) getVarLong(source);
+			}
+		}
+		return new String(chars);
+	}
+
+	private long getVarLong(byte[] source)
+	{
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = source[this.offset++];
+			value |= ((long) (b & 0x7f)) << shift;
+			shift += 7;
+		}
+		while (b < 0);
+		return value;
+	}
+
+	private static int getInt(byte[] source, int offset)
+	{
+		return (source[offset] & 0xff) | ((source[offset + 1] & 0xff) << 8) |
+				((source[offset + 2] & 0xff) << 16) | ((source[offset + 3] & 0xff) << 24);
+	}
+}
@@ -0,0 +1,293 @@
+package de.tuberlin.dima.minidb.qexec.heap;
+
+
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.SmallIntField;
+import de.tuberlin.dima.minidb.core.VarcharField;
+
+
+/**
+ * Packs tuples into the blocks of a {@link SpillFile}. Unlike a table page, a block has no
+ * slots and no fixed-size columns: the tuples are stored back to back, each as compact as
+ * its values allow. A block starts with the number of used bytes and the number of tuples,
+ * each as a four byte integer, and is followed by the tuples.
+ * <p>
+ * A tuple is encoded as a bitmap of its NULL fields, followed by its fields that are not NULL.
+ * Integer fields are written zig-zag encoded in seven bit groups, such that small values take
+ * a single byte. Characters and variable characters are written as their length and their
+ * characters in the same encoding, without any padding. All other fields are written in their
+ * fixed-size binary form.
+ * <p>
+ * In the block, every tuple is preceded by the number of leading bytes that its encoding shares
+ * with the encoding of the previous tuple, and the number of bytes that follow, and only the
+ * following bytes are stored. Sorted runs, where neighboring tuples often share their leading
+ * columns, shrink considerably through this. Without prefix compression, the number of shared
+ * bytes is always zero. The first tuple of a block never shares bytes, so that every block is
+ * decoded on its own.
+ */
+final class SpillBlockWriter
+{
+	/**
+	 * The number of bytes of the block header.
+	 */
+	static final int HEADER_BYTES = 8;
+
+	/**
+	 * The types of the fields of the tuples.
+	 */
+	private final DataType[] schema;
+
+	/**
+	 * Flag indicating that tuples store only the bytes they do not share with their predecessor.
+	 */
+	private final boolean prefixCompression;
+
+	/**
+	 * The encoding of the current tuple.
+	 */
+	private byte[] encoded;
+
+	/**
+	 * The encoding of the previous tuple in the block.
+	 */
+	private byte[] previous;
+
+	/**
+	 * The length of the encoding of the previous tuple, or zero, if the block has none.
+	 */
+	private int previousLength;
+
+	/**
+	 * The block that is filled.
+	 */
+	private byte[] block;
+
+	/**
+	 * The position in the block where the next tuple is written.
+	 */
+	private int position;
+
+	/**
+	 * The number of tuples in the block.
+	 */
+	private int numTuples;
+
+
+	/**
+	 * Creates a writer for tuples of the given schema.
+	 *
+	 * @param schema The types of the fields of the tuples.
+	 * @param prefixCompression Flag indicating that tuples store only the bytes they do not
+	 *                          share with their predecessor.
+	 */
+	SpillBlockWriter(DataType[] schema, boolean prefixCompression)
+	{
+		this.schema = schema;
+		this.prefixCompression = prefixCompression;
+
+		int maxBytes = getMaximalTupleBytes(schema);
+		this.encoded = new byte[maxBytes];
+		this.previous = new byte[maxBytes];
+	}
+
+	/**
+	 * Starts filling the given block.
+	 *
+	 * @param block The buffer of the block.
+	 */
+	void reset(byte[] block)
+	{
+		this.block = block;
+		this.position = HEADER_BYTES;
+		this.numTuples = 0;
+		this.previousLength = 0;
+	}
+
+	/**
+	 * Adds a tuple to the block, if it fits.
+	 *
+	 * @param tuple The tuple to add.
+	 * @return True, if the tuple was added, false, if the block is full.
+	 * @throws QueryHeapException Thrown, if the tuple does not even fit into an empty block.
+	 */
+	boolean add(DataTuple tuple) throws QueryHeapException
+	{
+		int length = encode(tuple);
+
+		int shared = 0;
+		if (this.prefixCompression) {
+			int max = Math.min(length, this.previousLength);
+			while (shared < max && this.encoded[shared] == this.previous[shared]) {
+				shared++;
+			}
+		}
+
+		int suffix = length - shared;
+		int needed = getVarLongBytes(shared) + getVarLongBytes(suffix) + suffix;
+		if (this.position + needed > this.block.length) {
+			if (this.numTuples == 0) {
+				throw new QueryHeapException("A tuple of " + length + " bytes does not fit into a block of temp space.");
+			}
+			return false;
+		}
+
+		this.position = putVarLong(this.block, this.position, shared);
+		this.position = putVarLong(this.block, this.position, suffix);
+		System.arraycopy(this.encoded, shared, this.block, this.position, suffix);
+		this.position += suffix;
+		this.numTuples++;
+
+		byte[] b = this.previous;
+		this.previous = this.encoded;
+		this.encoded = b;
+		this.previousLength = length;
+		return true;
+	}
+
+	/**
+	 * Checks whether no tuple has been added to the block.
+	 *
+	 * @return True, if the block is empty.
+	 */
+	boolean isEmpty()
+	{
+		return this.numTuples == 0;
+	}
+
+	/**
+	 * Completes the block by writing its header. The block can be written afterwards.
+	 */
+	void finish()
+	{
+		putInt(this.block, 0, this.position);
+		putInt(this.block, 4, this.numTuples);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Encodes a tuple into the buffer for the current tuple.
+	 *
+	 * @param tuple The tuple.
+	 * @return The length of the encoding.
+	 */
+	private int encode(DataTuple tuple)
+	{
+		byte[] target = this.encoded;
+		int bitmapBytes = (this.schema.length + 7) >>> 3;
+		for (int i = 0; i < bitmapBytes; i++) {
+			target[i] = 0;
+		}
+
+		int offset = bitmapBytes;
+		for (int i = 0; i < this.schema.length; i++) {
+			DataField field = tuple.getField(i);
+			if (field.isNULL()) {
+				target[i >>> 3] |= 1 << (i & 7);
+				continue;
+			}
+
+			switch (this.schema[i].getBasicType()) {
+			case SMALL_INT:
+				offset = putVarLong(target, offset, zigZag(((SmallIntField) field).getValue()));
+				break;
+			case INT:
+				offset = putVarLong(target, offset, zigZag(((IntField) field).getValue()));
+				break;
+			case BIG_INT:
+				offset = putVarLong(target, offset, zigZag(((BigIntField) field).getValue()));
+				break;
+			case CHAR:
+				offset = putString(target, offset, ((CharField) field).getValue());
+				break;
+			case VAR_CHAR:
+				offset = putString(target, offset, ((VarcharField) field).getValue());
+				break;
+			default:
+				offset += field.encodeBinary(target, offset);
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * Computes the largest number of bytes that the encoding of a tuple of the given schema takes.
+	 *
+	 * @param schema The types of the fields.
+	 * @return The maximal length of the encoding of a tuple.
+	 */
+	static int getMaximalTupleBytes(DataType[] schema)
+	{
+		int bytes = (schema.length + 7) >>> 3;
+		for (int i = 0; i < schema.length; i++) {
+			switch (schema[i].getBasicType()) {
+			case SMALL_INT:
+			case INT:
+			case BIG_INT:
+				bytes += 10;
+				break;
+			case CHAR:
+			case VAR_CHAR:
+				bytes += 5 + 3 * schema[i].getLength();
+				break;
+			default:
+				bytes += schema[i].getNumberOfBytes();
+			}
+		}
+		return bytes;
+	}
+
+	private static long zigZag(long value)
+	{
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static int putString(byte[] target, int offset, String value)
+	{
+		int length = value.length();
+		offset = putVarLong(target, offset, length);
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				target[offset++] = (byte) c;
+			}
+			else {
+				offset = putVarLong(target, offset, c);
+			}
+		}
+		return offset;
+	}
+
+	private static int putVarLong(byte[] target, int offset, long value)
+	{
+		while ((value & ~0x7fL) != 0) {
+			target[offset++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		target[offset++] = (byte) value;
+		return offset;
+	}
+
+	private static int getVarLongBytes(int value)
+	{
+		int bytes = 1;
+		while ((value & ~0x7f) != 0) {
+			bytes++;
+			value >>>= 7;
+		}
+		return bytes;
+	}
+
+	private static void putInt(byte[] target, int offset, int value)
+	{
+		target[offset    ] = (byte) value;
+		target[offset + 1] = (byte) (value >>> 8);
+		target[offset + 2] = (byte) (value >>> 16);
+		target[offset + 3] = (byte) (value >>> 24);
+	}
+}
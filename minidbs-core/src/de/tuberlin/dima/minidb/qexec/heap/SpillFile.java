@@ -0,0 +1,126 @@
+package de.tuberlin.dima.minidb.qexec.heap;
+
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * A temp file holding the blocks that an assignment of the query heap spilled. The file
+ * is a plain sequence of blocks of the size of the heap's block buffers, without any header.
+ * Blocks are only ever appended, and each list of tuples is written as consecutive blocks,
+ * such that it is read back sequentially.
+ * <p>
+ * Reads address the file by position and may be issued from several threads at once, as
+ * the read-ahead threads of the heap do.
+ */
+final class SpillFile
+{
+	/**
+	 * The file on disk.
+	 */
+	private final File file;
+
+	/**
+	 * The handle through which the file was opened.
+	 */
+	private final RandomAccessFile handle;
+
+	/**
+	 * The channel through which the blocks are written and read.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The size of a block in bytes.
+	 */
+	private final int blockSize;
+
+	/**
+	 * The number of blocks written so far.
+	 */
+	private int numBlocks;
+
+
+	/**
+	 * Creates a new, empty spill file, replacing a file that exists under the same name.
+	 *
+	 * @param file The file to create.
+	 * @param blockSize The size of a block in bytes.
+	 * @throws IOException Thrown, if the file could not be created.
+	 */
+	SpillFile(File file, int blockSize) throws IOException
+	{
+		this.file = file;
+		this.blockSize = blockSize;
+		this.handle = new RandomAccessFile(file, "rw");
+		this.handle.setLength(0);
+		this.channel = this.handle.getChannel();
+	}
+
+	/**
+	 * Appends a block to the end of the file.
+	 *
+	 * @param block The buffer holding the block.
+	 * @return The number of the written block.
+	 * @throws IOException Thrown, if the block could not be written.
+	 */
+	synchronized int appendBlock(byte[] block) throws IOException
+	{
+		int blockNumber = this.numBlocks;
+		ByteBuffer buffer = ByteBuffer.wrap(block, 0, this.blockSize);
+		long position = ((long) blockNumber) * this.blockSize;
+		while (buffer.hasRemaining()) {
+			position += this.channel.write(buffer, position);
+		}
+		this.numBlocks++;
+		return blockNumber;
+	}
+
+	/**
+	 * Gets the number of the block that the next call to {@link #appendBlock(byte[])} writes.
+	 *
+	 * @return The number of the next block.
+	 */
+	synchronized int getNextBlockNumber()
+	{
+		return this.numBlocks;
+	}
+
+	/**
+	 * Reads a block into the given buffer.
+	 *
+	 * @param block The buffer to read the block into.
+	 * @param blockNumber The number of the block.
+	 * @throws IOException Thrown, if the block could not be read.
+	 */
+	void readBlock(byte[] block, int blockNumber) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.wrap(block, 0, this.blockSize);
+		long position = ((long) blockNumber) * this.blockSize;
+		while (buffer.hasRemaining()) {
+			int read = this.channel.read(buffer, position);
+			if (read < 0) {
+				throw new EOFException("Block " + blockNumber + " lies beyond the end of the spill file.");
+			}
+			position += read;
+		}
+	}
+
+	/**
+	 * Closes the file and deletes it.
+	 *
+	 * @throws IOException Thrown, if the file could not be closed or deleted.
+	 */
+	void closeAndDelete() throws IOException
+	{
+		this.handle.close();
+		if (!this.file.delete() && this.file.exists()) {
+			throw new IOException("Spill file " + this.file.getAbsolutePath() + " could not be deleted.");
+		}
+	}
+}
@@ -60,6 +60,11 @@ public final class AnalyzedSelectQuery extends Relation
 	 */
 	private boolean grouping;
 	
+	/**
+	 * The number of rows returned by this query at most, or -1, if unlimited.
+	 */
+	private long rowLimit = -1;
+	
 	// ------------------------------------------------------------------------
 	// ------------------------------------------------------------------------
 		
@@ -217,6 +222,26 @@ public final class AnalyzedSelectQuery extends Relation
 	{
 		return this.grouping;
 	}
+	
+	/**
+	 * Sets the number of rows returned by this query at most, as given by the LIMIT clause.
+	 * 
+	 * @param rowLimit The row limit, or -1, if unlimited.
+	 */
+	public void setRowLimit(long rowLimit)
+	{
+		this.rowLimit = rowLimit;
+	}
+	
+	/**
+	 * Gets the number of rows returned by this query at most.
+	 * 
+	 * @return The row limit, or -1, if unlimited.
+	 */
+	public long getRowLimit()
+	{
+		return this.rowLimit;
+	}
 
 	/* (non-Javadoc)
 	 * @see de.tuberlin.dima.minidb.semantics.Relation#getColumn(java.lang.String)
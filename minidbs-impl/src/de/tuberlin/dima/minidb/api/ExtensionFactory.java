@@ -3,6 +3,7 @@ package de.tuberlin.dima.minidb.api;
 import java.util.logging.Logger;
 
 import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.Constants;
 import de.tuberlin.dima.minidb.catalogue.Catalogue;
 import de.tuberlin.dima.minidb.catalogue.IndexSchema;
 import de.tuberlin.dima.minidb.catalogue.TableSchema;
@@ -12,8 +13,13 @@ import de.tuberlin.dima.minidb.io.cache.PageCache;
 import de.tuberlin.dima.minidb.io.cache.PageFormatException;
 import de.tuberlin.dima.minidb.io.cache.PageSize;
 import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.BTreeIndexImpl;
+import de.tuberlin.dima.minidb.io.index.HashIndexImpl;
+import de.tuberlin.dima.minidb.io.index.HashIndex;
+import de.tuberlin.dima.minidb.io.index.HashIndexResourceManager;
 import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
 import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.ColumnDictionary;
 import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
 import de.tuberlin.dima.minidb.optimizer.cardinality.CardinalityEstimator;
 import de.tuberlin.dima.minidb.optimizer.cost.CostEstimator;
@@ -21,21 +27,42 @@ import de.tuberlin.dima.minidb.optimizer.generator.PhysicalPlanGenerator;
 import de.tuberlin.dima.minidb.optimizer.joins.JoinOrderOptimizer;
 import de.tuberlin.dima.minidb.parser.OutputColumn.AggregationType;
 import de.tuberlin.dima.minidb.parser.SQLParser;
+import de.tuberlin.dima.minidb.qexec.BatchedIndexCorrelatedLookupOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.BatchedNestedLoopJoinOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.BroadcastExchange;
+import de.tuberlin.dima.minidb.qexec.CodeIndexedGroupByOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.DeferredFetchOperatorImpl;
 import de.tuberlin.dima.minidb.qexec.DeleteOperator;
+import de.tuberlin.dima.minidb.qexec.DeleteOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.ExchangeOperator;
 import de.tuberlin.dima.minidb.qexec.FetchOperator;
 import de.tuberlin.dima.minidb.qexec.FilterCorrelatedOperator;
 import de.tuberlin.dima.minidb.qexec.FilterOperator;
+import de.tuberlin.dima.minidb.qexec.GatherExchange;
 import de.tuberlin.dima.minidb.qexec.GroupByOperator;
+import de.tuberlin.dima.minidb.qexec.HashGroupByOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.HashIndexLookupOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.HashJoinOperator;
+import de.tuberlin.dima.minidb.qexec.HashJoinOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.HashRepartitionExchange;
 import de.tuberlin.dima.minidb.qexec.IndexCorrelatedLookupOperator;
 import de.tuberlin.dima.minidb.qexec.IndexLookupOperator;
+import de.tuberlin.dima.minidb.qexec.IndexOnlyScanOperator;
+import de.tuberlin.dima.minidb.qexec.IndexOnlyScanOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.IndexProbeBatch;
 import de.tuberlin.dima.minidb.qexec.IndexScanOperator;
 import de.tuberlin.dima.minidb.qexec.InsertOperator;
 import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
 import de.tuberlin.dima.minidb.qexec.MergeJoinOperator;
 import de.tuberlin.dima.minidb.qexec.NestedLoopJoinOperator;
+import de.tuberlin.dima.minidb.qexec.ParallelTableScanOperatorImpl;
 import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.qexec.RIDSortedFetchOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.RIDTableScanOperatorImpl;
 import de.tuberlin.dima.minidb.qexec.SortOperator;
+import de.tuberlin.dima.minidb.qexec.SortOperatorImpl;
 import de.tuberlin.dima.minidb.qexec.TableScanOperator;
+import de.tuberlin.dima.minidb.qexec.TopNSortOperatorImpl;
 import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
 import de.tuberlin.dima.minidb.qexec.predicate.JoinPredicate;
 import de.tuberlin.dima.minidb.qexec.predicate.LocalPredicate;
@@ -70,7 +97,17 @@ public class ExtensionFactory extends AbstractExtensionFactory {
 
 	@Override
 	public BTreeIndex createBTreeIndex(IndexSchema schema, BufferPoolManager bufferPool, int resourceId) {
-		throw new UnsupportedOperationException("Method not yet supported");
+		return new BTreeIndexImpl(schema, bufferPool, resourceId);
+	}
+
+	@Override
+	public BTreeIndex createConcurrentBTreeIndex(IndexSchema schema, BufferPoolManager bufferPool, int resourceId) {
+		return new BTreeIndexImpl(schema, bufferPool, resourceId);
+	}
+
+	@Override
+	public HashIndex createHashIndex(HashIndexResourceManager resourceManager, BufferPoolManager bufferPool, int resourceId) {
+		return new HashIndexImpl(resourceManager, bufferPool, resourceId);
 	}
 
 	@Override
@@ -79,6 +116,17 @@ public class ExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public TableScanOperator createRIDTableScanOperator(BufferPoolManager bufferPool, TableResourceManager tableManager, int resourceId,
+			int[] producedColumnIndexes, LowLevelPredicate[] predicate, int prefetchWindowLength) {
+		return new RIDTableScanOperatorImpl(bufferPool, tableManager, resourceId, producedColumnIndexes, predicate, prefetchWindowLength);
+	}
+
+	@Override
+	public TableScanOperator createParallelTableScanOperator(BufferPoolManager bufferPool, TableResourceManager tableManager, int resourceId, int[] producedColumnIndexes, LowLevelPredicate[] predicate, int prefetchWindowLength, int degreeOfParallelism) {
+		return new ParallelTableScanOperatorImpl(bufferPool, tableManager, resourceId, producedColumnIndexes, predicate, prefetchWindowLength, degreeOfParallelism);
+	}
+
 	@Override
 	public IndexScanOperator createIndexScanOperator(BTreeIndex index, DataField startKey, DataField stopKey, boolean startKeyIncluded, boolean stopKeyIncluded) {
 		throw new UnsupportedOperationException("Method not yet supported");
@@ -95,6 +143,17 @@ public class ExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public DeleteOperator createDeleteOperator(BufferPoolManager bufferPool, int resourceId, BTreeIndex[] indexes, int[] columnNumbers, PhysicalPlanOperator child) {
+		return new DeleteOperatorImpl(bufferPool, resourceId, indexes, columnNumbers, child);
+	}
+
+	@Override
+	public DeleteOperator createDeleteOperator(BufferPoolManager bufferPool, int resourceId, BTreeIndex[] indexes, int[][] keyColumns,
+			HashIndex[] hashIndexes, int[] hashColumns, PhysicalPlanOperator child) {
+		return new DeleteOperatorImpl(bufferPool, resourceId, indexes, keyColumns, hashIndexes, hashColumns, child);
+	}
+
 	@Override
 	public NestedLoopJoinOperator createNestedLoopJoinOperator(PhysicalPlanOperator outerChild, PhysicalPlanOperator innerChild, JoinPredicate joinPredicate,
 			int[] columnMapOuterTuple, int[] columnMapInnerTuple) {
@@ -112,6 +171,34 @@ public class ExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public IndexOnlyScanOperator createIndexOnlyScanOperator(BTreeIndex index, DataField startKey, boolean startKeyIncluded,
+			DataField stopKey, boolean stopKeyIncluded, int[] producedColumnIndexes) {
+		return new IndexOnlyScanOperatorImpl(index, startKey, startKeyIncluded, stopKey, stopKeyIncluded, producedColumnIndexes);
+	}
+
+	@Override
+	public IndexLookupOperator createHashIndexLookupOperator(HashIndex index, DataField equalityLiteral) {
+		return new HashIndexLookupOperatorImpl(index, equalityLiteral);
+	}
+
+	@Override
+	public IndexCorrelatedLookupOperator createHashIndexCorrelatedLookupOperator(HashIndex index, int correlatedColumnIndex) {
+		return new HashIndexLookupOperatorImpl(index, correlatedColumnIndex);
+	}
+
+	@Override
+	public IndexCorrelatedLookupOperator createBatchedIndexCorrelatedLookupOperator(BTreeIndex index, int correlatedColumnIndex, IndexProbeBatch batch) {
+		return new BatchedIndexCorrelatedLookupOperatorImpl(index, correlatedColumnIndex, batch);
+	}
+
+	@Override
+	public NestedLoopJoinOperator createBatchedNestedLoopJoinOperator(PhysicalPlanOperator outerChild, PhysicalPlanOperator innerChild, JoinPredicate joinPredicate,
+			int[] columnMapOuterTuple, int[] columnMapInnerTuple, IndexProbeBatch batch, int outerKeyColumn) {
+		return new BatchedNestedLoopJoinOperatorImpl(outerChild, innerChild, joinPredicate, columnMapOuterTuple,
+				columnMapInnerTuple, batch, outerKeyColumn, Constants.INDEX_PROBE_BATCH_SIZE);
+	}
+
 	@Override
 	public IndexCorrelatedLookupOperator getIndexCorrelatedScanOperator(BTreeIndex index, int correlatedColumnIndex) {
 		throw new UnsupportedOperationException("Method not yet supported");
@@ -122,6 +209,17 @@ public class ExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public FetchOperator createDeferredFetchOperator(PhysicalPlanOperator child, BufferPoolManager bufferPool, int tableResourceId, int ridColumnIndex,
+			int[] childColumnMap, int[] fetchedColumnMap) {
+		return new DeferredFetchOperatorImpl(child, bufferPool, tableResourceId, ridColumnIndex, childColumnMap, fetchedColumnMap);
+	}
+
+	@Override
+	public FetchOperator createRIDSortedFetchOperator(PhysicalPlanOperator child, BufferPoolManager bufferPool, int tableResourceId, int[] outputColumnMap, int prefetchWindowLength) {
+		return new RIDSortedFetchOperatorImpl(child, bufferPool, tableResourceId, outputColumnMap, prefetchWindowLength);
+	}
+
 	@Override
 	public FilterOperator createFilterOperator(PhysicalPlanOperator child, LocalPredicate predicate) {
 		throw new UnsupportedOperationException("Method not yet supported");
@@ -135,7 +233,26 @@ public class ExtensionFactory extends AbstractExtensionFactory {
 	@Override
 	public SortOperator createSortOperator(PhysicalPlanOperator child, QueryHeap queryHeap, DataType[] columnTypes, int estimatedCardinality,
 			int[] sortColumns, boolean[] columnsAscending) {
-		throw new UnsupportedOperationException("Method not yet supported");
+		return new SortOperatorImpl(child, queryHeap, columnTypes, estimatedCardinality, sortColumns, columnsAscending);
+	}
+
+	@Override
+	public SortOperator createNormalizedKeySortOperator(PhysicalPlanOperator child, QueryHeap queryHeap, DataType[] columnTypes,
+			int estimatedCardinality, int[] sortColumns, boolean[] columnsAscending) {
+		return new SortOperatorImpl(child, queryHeap, columnTypes, estimatedCardinality, sortColumns, columnsAscending);
+	}
+
+	@Override
+	public SortOperator createParallelSortOperator(PhysicalPlanOperator child, QueryHeap queryHeap, DataType[] columnTypes,
+			int estimatedCardinality, int[] sortColumns, boolean[] columnsAscending, int degreeOfParallelism) {
+		return new SortOperatorImpl(child, queryHeap, columnTypes, estimatedCardinality, sortColumns, columnsAscending,
+				degreeOfParallelism);
+	}
+
+	@Override
+	public SortOperator createTopNSortOperator(PhysicalPlanOperator child, int[] sortColumns, boolean[] columnsAscending,
+			int rowLimit) {
+		return new TopNSortOperatorImpl(child, sortColumns, columnsAscending, rowLimit);
 	}
 
 	@Override
@@ -144,12 +261,52 @@ public class ExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public GroupByOperator createHashGroupByOperator(PhysicalPlanOperator child, QueryHeap queryHeap, DataType[] inputColumnTypes,
+			int estimatedGroups, int[] groupColumnIndices, int[] aggColumnIndices, AggregationType[] aggregateFunctions,
+			DataType[] aggColumnTypes, int[] groupColumnOutputPositions, int[] aggregateColumnOutputPosition) {
+		return new HashGroupByOperatorImpl(child, queryHeap, inputColumnTypes, estimatedGroups, groupColumnIndices,
+				aggColumnIndices, aggregateFunctions, aggColumnTypes, groupColumnOutputPositions, aggregateColumnOutputPosition);
+	}
+
+	@Override
+	public GroupByOperator createCodeIndexedGroupByOperator(PhysicalPlanOperator child, ColumnDictionary dictionary,
+			int groupColumnIndex, int[] aggColumnIndices, AggregationType[] aggregateFunctions, DataType[] aggColumnTypes,
+			int[] groupColumnOutputPositions, int[] aggregateColumnOutputPosition) {
+		return new CodeIndexedGroupByOperatorImpl(child, dictionary, groupColumnIndex, aggColumnIndices,
+				aggregateFunctions, aggColumnTypes, groupColumnOutputPositions, aggregateColumnOutputPosition);
+	}
+
 	@Override
 	public MergeJoinOperator createMergeJoinOperator(PhysicalPlanOperator leftChild, PhysicalPlanOperator rightChild, int[] leftJoinColumns,
 			int[] rightJoinColumns, int[] columnMapLeftTuple, int[] columnMapRightTuple) {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public HashJoinOperator createHashJoinOperator(PhysicalPlanOperator buildChild, PhysicalPlanOperator probeChild, QueryHeap queryHeap,
+			DataType[] buildColumnTypes, DataType[] probeColumnTypes, int[] buildJoinColumns, int[] probeJoinColumns,
+			int[] buildOutColumnMap, int[] probeOutColumnMap, int estimatedBuildCardinality) {
+		return new HashJoinOperatorImpl(buildChild, probeChild, queryHeap, buildColumnTypes, probeColumnTypes,
+				buildJoinColumns, probeJoinColumns, buildOutColumnMap, probeOutColumnMap, estimatedBuildCardinality);
+	}
+
+	@Override
+	public ExchangeOperator createGatherExchangeOperator(PhysicalPlanOperator[] producers) {
+		return new GatherExchange(producers).getConsumer();
+	}
+
+	@Override
+	public ExchangeOperator[] createHashRepartitionExchangeOperators(PhysicalPlanOperator[] producers, int[] hashColumns,
+			int numConsumers) {
+		return new HashRepartitionExchange(producers, hashColumns, numConsumers).getConsumers();
+	}
+
+	@Override
+	public ExchangeOperator[] createBroadcastExchangeOperators(PhysicalPlanOperator[] producers, int numConsumers) {
+		return new BroadcastExchange(producers, numConsumers).getConsumers();
+	}
+
 	@Override
 	public JoinOrderOptimizer createJoinOrderOptimizer(CardinalityEstimator estimator) {
 		throw new UnsupportedOperationException("Method not yet supported");
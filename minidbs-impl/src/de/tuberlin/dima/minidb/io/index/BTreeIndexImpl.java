@@ -0,0 +1,1015 @@
+package de.tuberlin.dima.minidb.io.index;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.core.CompositeField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DuplicateException;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.index.BTreeInnerNodePage.KeyPageNumberPosition;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+
+
+/**
+ * A B-Tree index that may be used by several threads at the same time. Each page of the tree
+ * is protected by a read/write latch, and an additional latch protects the page number of the
+ * root. All latches of an index are shared by all instances created for the same index schema.
+ * <p>
+ * The threads move through the tree with latch coupling: the latch of a child is acquired before
+ * the latch of its parent is released, and latches are always acquired top-down and, on the leaf
+ * level, from left to right, so that no deadlocks can occur.
+ * <ul>
+ *   <li>Lookups descend with read latches and hold at most one leaf latch at a time. The RIDs
+ *       (or keys) of a leaf are extracted while its latch is held, and the iterator continues
+ *       with the next leaf only when they are consumed.</li>
+ *   <li>Inserts first descend with read latches and only take the write latch of the leaf. If
+ *       the leaf has no space left, they descend again with write latches, releasing the latches
+ *       of all ancestors whenever a node has space for another entry and hence cannot split.
+ *       Only the nodes that are actually split are held until the split completes.</li>
+ *   <li>Deletes remove the entry from the leaf under its write latch only. A leaf that falls
+ *       below {@link Constants#INDEX_LEAF_MERGE_THRESHOLD} of its capacity is then merged with
+ *       its right sibling, or takes entries from it, while the parent is latched for writing.
+ *       Entries only ever move to the left sibling, so an iterator never returns an entry
+ *       twice. A merged-away leaf is unlinked from its parent but keeps its link to the next
+ *       leaf, so that iterators that are about to visit it skip over it. Inner nodes are never
+ *       merged.</li>
+ * </ul>
+ * Lookups and updates on different parts of the tree therefore do not block each other.
+ */
+public class BTreeIndexImpl implements BTreeIndex
+{
+	/**
+	 * The latches of all indexes, by schema.
+	 */
+	private static final Map<IndexSchema, TreeLatches> LATCHES = new WeakHashMap<IndexSchema, TreeLatches>();
+
+	/**
+	 * The schema of the index.
+	 */
+	private final IndexSchema schema;
+
+	/**
+	 * The buffer pool from which the pages are taken.
+	 */
+	private final BufferPoolManager bufferPool;
+
+	/**
+	 * The resource id of the index in the buffer pool.
+	 */
+	private final int resourceId;
+
+	/**
+	 * The latches of the tree.
+	 */
+	private final TreeLatches latches;
+
+
+	/**
+	 * Creates a new index on top of the given index resource.
+	 *
+	 * @param schema The schema of the index.
+	 * @param bufferPool The buffer pool from which the pages are taken.
+	 * @param resourceId The resource id of the index in the buffer pool.
+	 */
+	public BTreeIndexImpl(IndexSchema schema, BufferPoolManager bufferPool, int resourceId)
+	{
+		this.schema = schema;
+		this.bufferPool = bufferPool;
+		this.resourceId = resourceId;
+		this.latches = getLatches(schema);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.index.BTreeIndex#getIndexSchema()
+	 */
+	@Override
+	public IndexSchema getIndexSchema()
+	{
+		return this.schema;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.index.BTreeIndex#lookupRids(de.tuberlin.dima.minidb.core.DataField)
+	 */
+	@Override
+	public IndexResultIterator<RID> lookupRids(DataField key)
+	throws PageFormatException, IndexFormatCorruptException, IOException
+	{
+		return new RIDIterator(getBound(key, false, true), getBound(key, true, true), true, true);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.index.BTreeIndex#lookupRids(de.tuberlin.dima.minidb.core.DataField[])
+	 */
+	@Override
+	public List<List<RID>> lookupRids(DataField[] sortedKeys)
+	throws PageFormatException, IndexFormatCorruptException, IOException
+	{
+		List<List<RID>> result = new ArrayList<List<RID>>(sortedKeys.length);
+		BTreeLeafPage leaf = null;
+		int leafNumber = -1;
+
+		try {
+			for (int k = 0; k < sortedKeys.length; k++) {
+				// the entries of a repeated key may start on a leaf that the scan has already left
+				if (k > 0 && sortedKeys[k].compareTo(sortedKeys[k - 1]) == 0) {
+					result.add(new ArrayList<RID>(result.get(k - 1)));
+					continue;
+				}
+
+				DataField startKey = getBound(sortedKeys[k], false, true);
+				DataField stopKey = getBound(sortedKeys[k], true, true);
+				List<RID> rids = new ArrayList<RID>();
+				result.add(rids);
+
+				// a key beyond the current leaf is looked for on the next leaf before descending anew
+				if (leaf != null && !reachesKey(leaf, startKey)) {
+					int next = leaf.getNextLeafPageNumber();
+					release(leafNumber, false);
+					leaf = null;
+					if (next != -1) {
+						leaf = latchLeaf(next);
+						leafNumber = next;
+						if (!reachesKey(leaf, startKey)) {
+							release(leafNumber, false);
+							leaf = null;
+						}
+					}
+				}
+				if (leaf == null) {
+					leaf = findLeaf(startKey, false);
+					leafNumber = leaf.getPageNumber();
+				}
+
+				// collect the entries of the key, which may continue on the next leaves
+				int pos = leaf.getPositionForKey(startKey);
+				while (true) {
+					int num = leaf.getNumberOfEntries();
+					while (pos < num && leaf.getKey(pos).compareTo(stopKey) <= 0) {
+						rids.add(leaf.getRidAtPosition(pos++));
+					}
+
+					int next = leaf.getNextLeafPageNumber();
+					if (pos < num || next == -1) {
+						break;
+					}
+					release(leafNumber, false);
+					leaf = null;
+					leaf = latchLeaf(next);
+					leafNumber = next;
+					pos = 0;
+				}
+			}
+		}
+		finally {
+			if (leaf != null) {
+				release(leafNumber, false);
+			}
+		}
+		return result;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.index.BTreeIndex#lookupRids(de.tuberlin.dima.minidb.core.DataField, de.tuberlin.dima.minidb.core.DataField, boolean, boolean)
+	 */
+	@Override
+	public IndexResultIterator<RID> lookupRids(DataField startKey, DataField stopKey, boolean startKeyIncluded, boolean stopKeyIncluded)
+	throws PageFormatException, IndexFormatCorruptException, IOException
+	{
+		return new RIDIterator(getBound(startKey, false, startKeyIncluded), getBound(stopKey, true, stopKeyIncluded),
+			startKeyIncluded, stopKeyIncluded);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.index.BTreeIndex#lookupKeys(de.tuberlin.dima.minidb.core.DataField, de.tuberlin.dima.minidb.core.DataField, boolean, boolean)
+	 */
+	@Override
+	public IndexResultIterator<DataField> lookupKeys(DataField startKey, DataField stopKey, boolean startKeyIncluded, boolean stopKeyIncluded)
+	throws PageFormatException, IndexFormatCorruptException, IOException
+	{
+		return new KeyIterator(getBound(startKey, false, startKeyIncluded), getBound(stopKey, true, stopKeyIncluded),
+			startKeyIncluded, stopKeyIncluded);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.index.BTreeIndex#lookupEntries(de.tuberlin.dima.minidb.core.DataField, de.tuberlin.dima.minidb.core.DataField, boolean, boolean)
+	 */
+	@Override
+	public IndexResultIterator<DataTuple> lookupEntries(DataField startKey, DataField stopKey, boolean startKeyIncluded, boolean stopKeyIncluded)
+	throws PageFormatException, IndexFormatCorruptException, IOException
+	{
+		return new EntryIterator(getBound(startKey, false, startKeyIncluded), getBound(stopKey, true, stopKeyIncluded),
+			startKeyIncluded, stopKeyIncluded);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.index.BTreeIndex#insertEntry(de.tuberlin.dima.minidb.core.DataField, de.tuberlin.dima.minidb.core.RID)
+	 */
+	@Override
+	public void insertEntry(DataField key, RID rid)
+	throws PageFormatException, IndexFormatCorruptException, DuplicateException, IOException
+	{
+		insertEntry(key, rid, null);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.index.BTreeIndex#insertEntry(de.tuberlin.dima.minidb.core.DataField, de.tuberlin.dima.minidb.core.RID, de.tuberlin.dima.minidb.core.DataField[])
+	 */
+	@Override
+	public void insertEntry(DataField key, RID rid, DataField[] includedFields)
+	throws PageFormatException, IndexFormatCorruptException, DuplicateException, IOException
+	{
+		// most inserts find space in the leaf and need no exclusive latches on the inner nodes
+		BTreeLeafPage leaf = findLeaf(key, true);
+		int leafNumber = leaf.getPageNumber();
+		try {
+			if (leaf.insertKeyRIDPair(key, rid, includedFields)) {
+				return;
+			}
+		}
+		finally {
+			release(leafNumber, true);
+		}
+
+		insertWithSplit(key, rid, includedFields);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.index.BTreeIndex#deleteEntry(de.tuberlin.dima.minidb.core.DataField, de.tuberlin.dima.minidb.core.RID)
+	 */
+	@Override
+	public boolean deleteEntry(DataField key, RID rid)
+	throws PageFormatException, IndexFormatCorruptException, IOException
+	{
+		BTreeLeafPage leaf = findLeaf(key, true);
+		int leafNumber = leaf.getPageNumber();
+		boolean deleted;
+		boolean underfull;
+		try {
+			// the entries of the key may continue on the next leaves
+			while (!(deleted = leaf.deleteKeyRIDPair(key, rid))) {
+				DataField last = leaf.getLastKey();
+				int next = leaf.getNextLeafPageNumber();
+				if (next == -1 || (last != null && last.compareTo(key) > 0)) {
+					break;
+				}
+
+				BTreeIndexPage page = latchAndPin(next, true);
+				release(leafNumber, true);
+				leafNumber = next;
+				if (!(page instanceof BTreeLeafPage)) {
+					throw new IndexFormatCorruptException("The next leaf page " + next + " is not a leaf.");
+				}
+				leaf = (BTreeLeafPage) page;
+			}
+			underfull = deleted && leaf.getNumberOfEntries() <
+				this.schema.getMaximalLeafEntries() * Constants.INDEX_LEAF_MERGE_THRESHOLD;
+		}
+		finally {
+			release(leafNumber, true);
+		}
+
+		if (underfull) {
+			rebalanceLeaf(key, leafNumber);
+		}
+		return deleted;
+	}
+
+	// ------------------------------------------------------------------------
+	//                             Traversal
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Turns a bound of a lookup into a key that can be compared against the keys of the index.
+	 * For composite indexes, a bound may be a prefix. A prefix is smaller than all keys that
+	 * start with it, which makes it the bound for inclusive start keys and exclusive stop keys
+	 * as it is. For the other bounds, it is completed with the highest values of the remaining
+	 * columns, which is not smaller than any key that starts with the prefix.
+	 *
+	 * @param key The bound of the lookup.
+	 * @param stop True, if the bound is a stop key, false if it is a start key.
+	 * @param included True, if the bound is inclusive.
+	 * @return The bound to compare against the keys of the index.
+	 */
+	private DataField getBound(DataField key, boolean stop, boolean included)
+	{
+		if (!this.schema.isComposite()) {
+			return key;
+		}
+
+		CompositeField prefix = key instanceof CompositeField ? (CompositeField) key : new CompositeField(key);
+		int numFields = this.schema.getNumberOfKeyColumns();
+		if (prefix.getNumberOfFields() >= numFields || stop != included) {
+			return prefix;
+		}
+
+		DataField[] fields = new DataField[numFields];
+		for (int i = 0; i < numFields; i++) {
+			fields[i] = i < prefix.getNumberOfFields() ? prefix.getField(i) :
+				this.schema.getIndexedColumnSchema(i).getDataType().getMaxValue();
+		}
+		return new CompositeField(fields);
+	}
+
+	/**
+	 * Descends from the root to the leaf that the given key belongs to, coupling read latches.
+	 * The returned leaf is pinned and latched and must be released by the caller.
+	 *
+	 * @param key The key to find the leaf for.
+	 * @param exclusive True, if the leaf is latched for writing, false if for reading.
+	 * @return The pinned and latched leaf.
+	 */
+	private BTreeLeafPage findLeaf(DataField key, boolean exclusive) throws IOException
+	{
+		Lock rootLatch = this.latches.root.readLock();
+		rootLatch.lock();
+		boolean holdsRoot = true;
+		int held = -1;
+
+		try {
+			int pageNumber = this.schema.getRootPageNumber();
+			while (true) {
+				BTreeIndexPage page = latchAndPin(pageNumber, false);
+				if (exclusive && page instanceof BTreeLeafPage) {
+					// the latch held on the parent keeps the leaf from being split in between
+					release(pageNumber, false);
+					page = latchAndPin(pageNumber, true);
+				}
+
+				// the child is latched, so the parent can be released
+				if (holdsRoot) {
+					rootLatch.unlock();
+					holdsRoot = false;
+				}
+				else {
+					release(held, false);
+				}
+				held = pageNumber;
+
+				if (page instanceof BTreeLeafPage) {
+					held = -1;
+					return (BTreeLeafPage) page;
+				}
+				pageNumber = ((BTreeInnerNodePage) page).getChildPageForKey(key);
+			}
+		}
+		finally {
+			if (holdsRoot) {
+				rootLatch.unlock();
+			}
+			else if (held != -1) {
+				release(held, false);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the given leaf holds keys up to at least the given key, such that the key's
+	 * entries, if any, start on this leaf.
+	 *
+	 * @param leaf The leaf to check.
+	 * @param key The key to check for.
+	 * @return True, if the last key of the leaf is not smaller than the given key.
+	 */
+	private static boolean reachesKey(BTreeLeafPage leaf, DataField key)
+	{
+		DataField last = leaf.getLastKey();
+		return last != null && last.compareTo(key) >= 0;
+	}
+
+	/**
+	 * Latches and pins the leaf with the given page number for reading, as reached through the
+	 * link of its left neighbor. The leaf must be released by the caller.
+	 *
+	 * @param pageNumber The page number of the leaf.
+	 * @return The pinned and latched leaf.
+	 */
+	private BTreeLeafPage latchLeaf(int pageNumber) throws IOException
+	{
+		BTreeIndexPage page = latchAndPin(pageNumber, false);
+		if (!(page instanceof BTreeLeafPage)) {
+			release(pageNumber, false);
+			throw new IndexFormatCorruptException("The next leaf page " + pageNumber + " is not a leaf.");
+		}
+		return (BTreeLeafPage) page;
+	}
+
+	/**
+	 * Inserts an entry whose leaf has no space left. Descends from the root with write latches
+	 * and holds those of all nodes that may split, then splits the leaf and as many of its
+	 * ancestors as necessary.
+	 *
+	 * @param key The key of the entry.
+	 * @param rid The RID of the entry.
+	 * @param included The included fields of the entry, or null.
+	 */
+	private void insertWithSplit(DataField key, RID rid, DataField[] included) throws IOException, PageFormatException
+	{
+		Lock rootLatch = this.latches.root.writeLock();
+		rootLatch.lock();
+		boolean holdsRoot = true;
+		ArrayList<PathEntry> path = new ArrayList<PathEntry>();
+		BTreeLeafPage leaf = null;
+		int leafNumber = -1;
+
+		try {
+			int pageNumber = this.schema.getRootPageNumber();
+			while (leaf == null) {
+				BTreeIndexPage page = latchAndPin(pageNumber, true);
+				boolean safe;
+				if (page instanceof BTreeLeafPage) {
+					leaf = (BTreeLeafPage) page;
+					leafNumber = pageNumber;
+					safe = leaf.getNumberOfEntries() < this.schema.getMaximalLeafEntries();
+				}
+				else {
+					BTreeInnerNodePage node = (BTreeInnerNodePage) page;
+					path.add(new PathEntry(node, pageNumber));
+					safe = node.getNumberOfKeys() < this.schema.getFanOut();
+				}
+
+				// a node with space left absorbs any split below it
+				if (safe) {
+					int keep = leaf == null ? 1 : 0;
+					while (path.size() > keep) {
+						release(path.remove(0).pageNumber, true);
+					}
+					if (holdsRoot) {
+						rootLatch.unlock();
+						holdsRoot = false;
+					}
+				}
+
+				if (leaf == null) {
+					PathEntry entry = path.get(path.size() - 1);
+					KeyPageNumberPosition child = entry.node.getChildWithKeyAndPosition(key);
+					entry.position = child.getPosition();
+					pageNumber = child.getPageNumber();
+				}
+			}
+
+			// another insert may have made space in the meantime
+			if (!leaf.insertKeyRIDPair(key, rid, included)) {
+				splitLeaf(leaf, leafNumber, path, key, rid, included);
+			}
+		}
+		finally {
+			if (leaf != null) {
+				release(leafNumber, true);
+			}
+			for (PathEntry entry : path) {
+				release(entry.pageNumber, true);
+			}
+			if (holdsRoot) {
+				rootLatch.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Splits a full leaf, inserts the entry into the half that it belongs to and posts the
+	 * separator to the parent.
+	 */
+	private void splitLeaf(BTreeLeafPage leaf, int leafNumber, ArrayList<PathEntry> path, DataField key, RID rid,
+			DataField[] included)
+	throws IOException, PageFormatException
+	{
+		// check before splitting, because the key may be on a full leaf
+		if (this.schema.isUnique() && leaf.getRIDForKey(key) != null) {
+			throw new DuplicateException("Key " + key + " is already contained.");
+		}
+
+		BTreeLeafPage newLeaf = (BTreeLeafPage) createPage(BTreeIndexPageType.LEAF_PAGE);
+		int newNumber = newLeaf.getPageNumber();
+		try {
+			newLeaf.prependEntriesFromOtherPage(leaf, leaf.getNumberOfEntries() / 2);
+			newLeaf.setNextLeafPageNumber(leaf.getNextLeafPageNumber());
+			newLeaf.setLastKeyContinuingOnNextPage(leaf.isLastKeyContinuingOnNextPage());
+
+			DataField separator = leaf.getLastKey();
+			leaf.setNextLeafPageNumber(newNumber);
+			leaf.setLastKeyContinuingOnNextPage(separator.compareTo(newLeaf.getFirstKey()) == 0);
+
+			if (key.compareTo(separator) <= 0) {
+				leaf.insertKeyRIDPair(key, rid, included);
+			}
+			else {
+				newLeaf.insertKeyRIDPair(key, rid, included);
+			}
+
+			insertIntoParent(path, path.size() - 1, separator, leafNumber, newNumber);
+		}
+		finally {
+			this.bufferPool.unpinPage(this.resourceId, newNumber);
+		}
+	}
+
+	/**
+	 * Inserts the separator between a split node and its new right sibling into the parent,
+	 * splitting the parent if it is full. If the split node was the root, a new root is created.
+	 *
+	 * @param path The latched inner nodes on the path to the split node.
+	 * @param level The position of the parent in the path, -1 if the split node was the root.
+	 * @param separator The highest key in the split node.
+	 * @param leftNumber The page number of the split node.
+	 * @param rightNumber The page number of the new sibling.
+	 */
+	private void insertIntoParent(ArrayList<PathEntry> path, int level, DataField separator, int leftNumber, int rightNumber)
+	throws IOException, PageFormatException
+	{
+		if (level < 0) {
+			// the root latch is still held, because the old root had no space left
+			BTreeInnerNodePage root = (BTreeInnerNodePage) createPage(BTreeIndexPageType.INNER_NODE_PAGE);
+			int rootNumber = root.getPageNumber();
+			try {
+				root.initRootState(separator, leftNumber, rightNumber);
+			}
+			finally {
+				this.bufferPool.unpinPage(this.resourceId, rootNumber);
+			}
+			this.schema.setRootPageNumber(rootNumber);
+			return;
+		}
+
+		PathEntry parent = path.get(level);
+		BTreeInnerNodePage node = parent.node;
+		if (node.insertKeyPageNumberPairAtPosition(separator, rightNumber, parent.position)) {
+			return;
+		}
+
+		BTreeInnerNodePage newNode = (BTreeInnerNodePage) createPage(BTreeIndexPageType.INNER_NODE_PAGE);
+		int newNumber = newNode.getPageNumber();
+		try {
+			int numKeys = node.getNumberOfKeys();
+			int numMoved = (numKeys >> 1) + 1;
+			DataField up = node.moveLastToNewPage(newNode, numMoved);
+
+			// the pointer to the split child is now either on the old or on the new node
+			int numKept = numKeys - numMoved;
+			if (parent.position <= numKept) {
+				node.insertKeyPageNumberPairAtPosition(separator, rightNumber, parent.position);
+			}
+			else {
+				newNode.insertKeyPageNumberPairAtPosition(separator, rightNumber, parent.position - numKept - 1);
+			}
+
+			insertIntoParent(path, level - 1, up, parent.pageNumber, newNumber);
+		}
+		finally {
+			this.bufferPool.unpinPage(this.resourceId, newNumber);
+		}
+	}
+
+	/**
+	 * Merges an underfull leaf with a sibling or moves entries from the sibling into it. Descends
+	 * to the parent of the leaf with write latches, releasing each node when its child is latched,
+	 * since a rebalancing changes only the parent and never propagates further up. If the leaf is
+	 * no longer a child of the parent that the key leads to, nothing happens.
+	 *
+	 * @param key A key on the path to the leaf.
+	 * @param leafNumber The page number of the underfull leaf.
+	 */
+	private void rebalanceLeaf(DataField key, int leafNumber) throws IOException, PageFormatException
+	{
+		int held;
+		BTreeIndexPage page;
+
+		// the root page is never removed, so its latch suffices once it is held
+		Lock rootLatch = this.latches.root.readLock();
+		rootLatch.lock();
+		try {
+			held = this.schema.getRootPageNumber();
+			page = latchAndPin(held, true);
+		}
+		finally {
+			rootLatch.unlock();
+		}
+
+		try {
+			while (page instanceof BTreeInnerNodePage) {
+				BTreeInnerNodePage node = (BTreeInnerNodePage) page;
+				KeyPageNumberPosition child = node.getChildWithKeyAndPosition(key);
+				BTreeIndexPage childPage = latchAndPin(child.getPageNumber(), true);
+				if (childPage instanceof BTreeLeafPage) {
+					release(child.getPageNumber(), true);
+					rebalanceChildren(node, child.getPosition(), leafNumber);
+					return;
+				}
+
+				release(held, true);
+				held = child.getPageNumber();
+				page = childPage;
+			}
+		}
+		finally {
+			release(held, true);
+		}
+	}
+
+	/**
+	 * Rebalances an underfull leaf with its right sibling, or with its left sibling, if it is
+	 * the last child of its parent. Both leaves are latched from left to right.
+	 *
+	 * @param parent The write-latched parent of the leaves.
+	 * @param position The pointer position at which the search for the leaf starts.
+	 * @param leafNumber The page number of the underfull leaf.
+	 */
+	private void rebalanceChildren(BTreeInnerNodePage parent, int position, int leafNumber)
+	throws IOException, PageFormatException
+	{
+		int numKeys = parent.getNumberOfKeys();
+		while (position <= numKeys && parent.getPointer(position) != leafNumber) {
+			position++;
+		}
+		if (position > numKeys) {
+			return;
+		}
+
+		int keyPosition = position < numKeys ? position : position - 1;
+		int leftNumber = parent.getPointer(keyPosition);
+		int rightNumber = parent.getPointer(keyPosition + 1);
+
+		BTreeLeafPage left = (BTreeLeafPage) latchAndPin(leftNumber, true);
+		try {
+			BTreeLeafPage right = (BTreeLeafPage) latchAndPin(rightNumber, true);
+			try {
+				int numLeft = left.getNumberOfEntries();
+				int numRight = right.getNumberOfEntries();
+
+				if (numLeft + numRight <= this.schema.getMaximalLeafEntries() && numKeys > 1) {
+					// merge, the right leaf stays linked for iterators that are about to visit it
+					if (numRight > 0) {
+						left.appendEntriesFromOtherPage(right, numRight);
+						left.setLastKeyContinuingOnNextPage(right.isLastKeyContinuingOnNextPage());
+					}
+					left.setNextLeafPageNumber(right.getNextLeafPageNumber());
+					parent.deleteKeyAndPointer(keyPosition);
+				}
+				else if (numLeft < this.schema.getMaximalLeafEntries() * Constants.INDEX_LEAF_MERGE_THRESHOLD &&
+						numRight > numLeft + 1) {
+					left.appendEntriesFromOtherPage(right, (numLeft + numRight) / 2 - numLeft);
+					DataField separator = left.getLastKey();
+					parent.setKey(separator, keyPosition);
+					left.setLastKeyContinuingOnNextPage(separator.compareTo(right.getFirstKey()) == 0);
+				}
+			}
+			finally {
+				release(rightNumber, true);
+			}
+		}
+		finally {
+			release(leftNumber, true);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                          Latches and Pages
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Latches a page and pins it in the buffer pool.
+	 *
+	 * @param pageNumber The number of the page.
+	 * @param exclusive True, to latch for writing, false to latch for reading.
+	 * @return The page.
+	 */
+	private BTreeIndexPage latchAndPin(int pageNumber, boolean exclusive) throws IOException
+	{
+		ReentrantReadWriteLock latch = this.latches.getPageLatch(pageNumber);
+		Lock lock = exclusive ? latch.writeLock() : latch.readLock();
+		lock.lock();
+
+		boolean success = false;
+		try {
+			CacheableData page = this.bufferPool.getPageAndPin(this.resourceId, pageNumber);
+			if (!(page instanceof BTreeIndexPage)) {
+				this.bufferPool.unpinPage(this.resourceId, pageNumber);
+				throw new IndexFormatCorruptException("Page " + pageNumber + " is not a B-Tree page.");
+			}
+			success = true;
+			return (BTreeIndexPage) page;
+		}
+		catch (BufferPoolException bpex) {
+			throw new IOException("Index page " + pageNumber + " could not be obtained.", bpex);
+		}
+		finally {
+			if (!success) {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Unpins a page and releases its latch.
+	 *
+	 * @param pageNumber The number of the page.
+	 * @param exclusive True, if the page is latched for writing, false if for reading.
+	 */
+	private void release(int pageNumber, boolean exclusive)
+	{
+		this.bufferPool.unpinPage(this.resourceId, pageNumber);
+		ReentrantReadWriteLock latch = this.latches.getPageLatch(pageNumber);
+		if (exclusive) {
+			latch.writeLock().unlock();
+		}
+		else {
+			latch.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Creates a new pinned page. The page is not yet reachable by other threads, hence it needs no latch.
+	 *
+	 * @param type The type of the page.
+	 * @return The new page.
+	 */
+	private BTreeIndexPage createPage(BTreeIndexPageType type) throws IOException
+	{
+		try {
+			return (BTreeIndexPage) this.bufferPool.createNewPageAndPin(this.resourceId, type);
+		}
+		catch (BufferPoolException bpex) {
+			throw new IOException("A new index page could not be created.", bpex);
+		}
+	}
+
+	/**
+	 * Gets the latches for the index with the given schema.
+	 *
+	 * @param schema The schema of the index.
+	 * @return The latches of the index.
+	 */
+	private static TreeLatches getLatches(IndexSchema schema)
+	{
+		synchronized (LATCHES) {
+			TreeLatches latches = LATCHES.get(schema);
+			if (latches == null) {
+				latches = new TreeLatches();
+				LATCHES.put(schema, latches);
+			}
+			return latches;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                           Helper Classes
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The latches of one tree.
+	 */
+	private static final class TreeLatches
+	{
+		/**
+		 * The latch protecting the page number of the root.
+		 */
+		final ReentrantReadWriteLock root = new ReentrantReadWriteLock();
+
+		/**
+		 * The latches of the pages, created on first use.
+		 */
+		private final ConcurrentHashMap<Integer, ReentrantReadWriteLock> pages =
+			new ConcurrentHashMap<Integer, ReentrantReadWriteLock>();
+
+		ReentrantReadWriteLock getPageLatch(int pageNumber)
+		{
+			ReentrantReadWriteLock latch = this.pages.get(pageNumber);
+			if (latch == null) {
+				latch = new ReentrantReadWriteLock();
+				ReentrantReadWriteLock previous = this.pages.putIfAbsent(pageNumber, latch);
+				if (previous != null) {
+					latch = previous;
+				}
+			}
+			return latch;
+		}
+	}
+
+	/**
+	 * An inner node on the path of an insert, together with the position of the followed pointer.
+	 */
+	private static final class PathEntry
+	{
+		final BTreeInnerNodePage node;
+
+		final int pageNumber;
+
+		int position;
+
+		PathEntry(BTreeInnerNodePage node, int pageNumber)
+		{
+			this.node = node;
+			this.pageNumber = pageNumber;
+		}
+	}
+
+	/**
+	 * Iterator over the entries in a key range. The entries are extracted one leaf at a time, while
+	 * the leaf's latch is held, so that no latch is held between calls to the iterator. Since leaf
+	 * pages are never freed, the next leaf remains valid after the latch is released.
+	 */
+	private abstract class LeafIterator<E> implements IndexResultIterator<E>
+	{
+		private final DataField startKey;
+
+		private final DataField stopKey;
+
+		private final boolean startKeyIncluded;
+
+		private final boolean stopKeyIncluded;
+
+		private final ArrayList<E> entries = new ArrayList<E>();
+
+		private int position;
+
+		private int nextLeaf = -1;
+
+		private boolean started;
+
+		private boolean exhausted;
+
+		LeafIterator(DataField startKey, DataField stopKey, boolean startKeyIncluded, boolean stopKeyIncluded)
+		{
+			this.startKey = startKey;
+			this.stopKey = stopKey;
+			this.startKeyIncluded = startKeyIncluded;
+			this.stopKeyIncluded = stopKeyIncluded;
+		}
+
+		/**
+		 * Gets the element that is returned for the entry at the given position.
+		 */
+		abstract E extract(BTreeLeafPage leaf, int position, DataField key);
+
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.io.index.IndexResultIterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext() throws IOException, IndexFormatCorruptException, PageFormatException
+		{
+			while (this.position >= this.entries.size()) {
+				if (this.exhausted) {
+					return false;
+				}
+				this.entries.clear();
+				this.position = 0;
+
+				BTreeLeafPage leaf;
+				int start;
+				if (this.started) {
+					BTreeIndexPage page = latchAndPin(this.nextLeaf, false);
+					if (!(page instanceof BTreeLeafPage)) {
+						release(this.nextLeaf, false);
+						throw new IndexFormatCorruptException("The next leaf page " + this.nextLeaf + " is not a leaf.");
+					}
+					leaf = (BTreeLeafPage) page;
+					start = 0;
+				}
+				else {
+					leaf = findLeaf(this.startKey, false);
+					start = leaf.getPositionForKey(this.startKey);
+					this.started = true;
+				}
+
+				int leafNumber = leaf.getPageNumber();
+				try {
+					readLeaf(leaf, start);
+				}
+				finally {
+					release(leafNumber, false);
+				}
+			}
+			return true;
+		}
+
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.io.index.IndexResultIterator#next()
+		 */
+		@Override
+		public E next() throws IOException, IndexFormatCorruptException, PageFormatException
+		{
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return this.entries.get(this.position++);
+		}
+
+		/**
+		 * Extracts the entries within the range from the leaf and remembers the next leaf.
+		 */
+		private void readLeaf(BTreeLeafPage leaf, int start) throws IOException
+		{
+			int num = leaf.getNumberOfEntries();
+			for (int i = start; i < num; i++) {
+				DataField key = leaf.getKey(i);
+				if (!this.startKeyIncluded && key.compareTo(this.startKey) == 0) {
+					continue;
+				}
+				int cmp = key.compareTo(this.stopKey);
+				if (cmp > 0 || (cmp == 0 && !this.stopKeyIncluded)) {
+					this.exhausted = true;
+					return;
+				}
+				this.entries.add(extract(leaf, i, key));
+			}
+
+			this.nextLeaf = leaf.getNextLeafPageNumber();
+			if (this.nextLeaf == -1) {
+				this.exhausted = true;
+			}
+			else {
+				try {
+					BTreeIndexImpl.this.bufferPool.prefetchPage(BTreeIndexImpl.this.resourceId, this.nextLeaf);
+				}
+				catch (BufferPoolException bpex) {
+					throw new IOException("Index page " + this.nextLeaf + " could not be prefetched.", bpex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Iterator over the RIDs in a key range.
+	 */
+	private final class RIDIterator extends LeafIterator<RID>
+	{
+		RIDIterator(DataField startKey, DataField stopKey, boolean startKeyIncluded, boolean stopKeyIncluded)
+		{
+			super(startKey, stopKey, startKeyIncluded, stopKeyIncluded);
+		}
+
+		@Override
+		RID extract(BTreeLeafPage leaf, int position, DataField key)
+		{
+			return leaf.getRidAtPosition(position);
+		}
+	}
+
+	/**
+	 * Iterator over the keys in a key range.
+	 */
+	private final class KeyIterator extends LeafIterator<DataField>
+	{
+		KeyIterator(DataField startKey, DataField stopKey, boolean startKeyIncluded, boolean stopKeyIncluded)
+		{
+			super(startKey, stopKey, startKeyIncluded, stopKeyIncluded);
+		}
+
+		@Override
+		DataField extract(BTreeLeafPage leaf, int position, DataField key)
+		{
+			return key;
+		}
+	}
+
+	/**
+	 * Iterator over the complete entries in a key range, as tuples of the key fields, the
+	 * included fields and the RID.
+	 */
+	private final class EntryIterator extends LeafIterator<DataTuple>
+	{
+		EntryIterator(DataField startKey, DataField stopKey, boolean startKeyIncluded, boolean stopKeyIncluded)
+		{
+			super(startKey, stopKey, startKeyIncluded, stopKeyIncluded);
+		}
+
+		@Override
+		DataTuple extract(BTreeLeafPage leaf, int position, DataField key)
+		{
+			DataField[] included = leaf.getIncludedFields(position);
+			int numKeyFields = BTreeIndexImpl.this.schema.getNumberOfKeyColumns();
+			DataTuple entry = new DataTuple(numKeyFields + included.length + 1);
+
+			if (key instanceof CompositeField) {
+				CompositeField composite = (CompositeField) key;
+				for (int i = 0; i < numKeyFields; i++) {
+					entry.assignDataField(composite.getField(i), i);
+				}
+			}
+			else {
+				entry.assignDataField(key, 0);
+			}
+			for (int i = 0; i < included.length; i++) {
+				entry.assignDataField(included[i], numKeyFields + i);
+			}
+			entry.assignDataField(leaf.getRidAtPosition(position), numKeyFields + included.length);
+			return entry;
+		}
+	}
+}
@@ -0,0 +1,399 @@
+package de.tuberlin.dima.minidb.io.index;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DuplicateException;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+
+
+/**
+ * A linear hash index over the buckets of a {@link HashIndexResourceManager}. A key is hashed
+ * to its bucket, whose primary page the resource manager computes directly. The entries of a
+ * bucket fill its primary page first and then a chain of overflow pages.
+ * <p>
+ * Whenever the entries exceed {@link Constants#HASH_INDEX_MAX_LOAD_FACTOR} of the capacity of
+ * the primary pages, the next bucket in line is split. Because the buckets are split in a
+ * fixed order rather than when they overflow, a bucket may temporarily have overflow pages, but
+ * the load factor keeps the average chain short. Overflow pages that run empty, through deletes
+ * or splits, are put on a free list and reused before the file grows.
+ * <p>
+ * Lookups hold the read lock of the resource manager, inserts and deletes hold its write lock.
+ * The lock is shared by all instances created for the same resource.
+ */
+public class HashIndexImpl implements HashIndex
+{
+	/**
+	 * The resource manager holding the state of the buckets.
+	 */
+	private final HashIndexResourceManager resourceManager;
+
+	/**
+	 * The schema of the index.
+	 */
+	private final IndexSchema schema;
+
+	/**
+	 * The buffer pool from which the pages are taken.
+	 */
+	private final BufferPoolManager bufferPool;
+
+	/**
+	 * The resource id of the index in the buffer pool.
+	 */
+	private final int resourceId;
+
+	/**
+	 * The maximal number of entries on a page.
+	 */
+	private final int maxEntries;
+
+
+	/**
+	 * Creates a new index on top of the given hash index resource.
+	 *
+	 * @param resourceManager The resource manager of the index.
+	 * @param bufferPool The buffer pool from which the pages are taken.
+	 * @param resourceId The resource id under which the resource manager is registered.
+	 */
+	public HashIndexImpl(HashIndexResourceManager resourceManager, BufferPoolManager bufferPool, int resourceId)
+	{
+		this.resourceManager = resourceManager;
+		this.schema = resourceManager.getSchema();
+		this.bufferPool = bufferPool;
+		this.resourceId = resourceId;
+		this.maxEntries = HashIndexPage.getMaximalEntries(this.schema);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.index.HashIndex#getIndexSchema()
+	 */
+	@Override
+	public IndexSchema getIndexSchema()
+	{
+		return this.schema;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.index.HashIndex#lookupRids(de.tuberlin.dima.minidb.core.DataField)
+	 */
+	@Override
+	public IndexResultIterator<RID> lookupRids(DataField key)
+	throws PageFormatException, IndexFormatCorruptException, IOException
+	{
+		ArrayList<RID> rids = new ArrayList<RID>();
+		if (key.isNULL()) {
+			// NULL equals no key
+			return new RIDIterator(rids);
+		}
+
+		byte[] encodedKey = HashIndexPage.encodeKey(key, this.schema);
+		Lock lock = this.resourceManager.getStructureLock().readLock();
+		lock.lock();
+		try {
+			int pageNumber = this.resourceManager.getBucketPageNumber(HashIndexPage.hash(encodedKey));
+			while (pageNumber != -1) {
+				HashIndexPage page = pin(pageNumber);
+				try {
+					int num = page.getNumberOfEntries();
+					for (int i = 0; i < num; i++) {
+						if (page.hasKey(i, encodedKey)) {
+							rids.add(page.getRID(i));
+						}
+					}
+					pageNumber = page.getNextPageNumber();
+				}
+				finally {
+					this.bufferPool.unpinPage(this.resourceId, page.getPageNumber());
+				}
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+		return new RIDIterator(rids);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.index.HashIndex#insertEntry(de.tuberlin.dima.minidb.core.DataField, de.tuberlin.dima.minidb.core.RID)
+	 */
+	@Override
+	public void insertEntry(DataField key, RID rid)
+	throws PageFormatException, IndexFormatCorruptException, DuplicateException, IOException
+	{
+		byte[] encodedKey = HashIndexPage.encodeKey(key, this.schema);
+		Lock lock = this.resourceManager.getStructureLock().writeLock();
+		lock.lock();
+		try {
+			ArrayList<HashIndexPage> chain = new ArrayList<HashIndexPage>();
+			try {
+				pinChain(this.resourceManager.getBucketPageNumber(HashIndexPage.hash(encodedKey)), chain);
+
+				HashIndexPage target = null;
+				for (HashIndexPage page : chain) {
+					if (this.schema.isUnique()) {
+						int num = page.getNumberOfEntries();
+						for (int i = 0; i < num; i++) {
+							if (page.hasKey(i, encodedKey)) {
+								throw new DuplicateException("Key " + key + " is already contained in the unique index.");
+							}
+						}
+					}
+					if (target == null && !page.isFull()) {
+						target = page;
+					}
+				}
+
+				if (target == null) {
+					HashIndexPage last = chain.get(chain.size() - 1);
+					target = allocateOverflowPage(chain);
+					last.setNextPageNumber(target.getPageNumber());
+				}
+				target.addEntry(encodedKey, rid);
+			}
+			finally {
+				unpinAll(chain);
+			}
+
+			this.resourceManager.addToNumberOfEntries(1);
+			long capacity = (long) this.resourceManager.getNumberOfBuckets() * this.maxEntries;
+			if (this.resourceManager.getNumberOfEntries() > Constants.HASH_INDEX_MAX_LOAD_FACTOR * capacity) {
+				splitNextBucket();
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.index.HashIndex#deleteEntry(de.tuberlin.dima.minidb.core.DataField, de.tuberlin.dima.minidb.core.RID)
+	 */
+	@Override
+	public boolean deleteEntry(DataField key, RID rid)
+	throws PageFormatException, IndexFormatCorruptException, IOException
+	{
+		byte[] encodedKey = HashIndexPage.encodeKey(key, this.schema);
+		Lock lock = this.resourceManager.getStructureLock().writeLock();
+		lock.lock();
+		try {
+			ArrayList<HashIndexPage> chain = new ArrayList<HashIndexPage>();
+			try {
+				pinChain(this.resourceManager.getBucketPageNumber(HashIndexPage.hash(encodedKey)), chain);
+
+				for (int p = 0; p < chain.size(); p++) {
+					HashIndexPage page = chain.get(p);
+					int num = page.getNumberOfEntries();
+					for (int i = 0; i < num; i++) {
+						if (page.hasKey(i, encodedKey) && page.getRID(i).equals(rid)) {
+							page.removeEntry(i);
+							this.resourceManager.addToNumberOfEntries(-1);
+
+							// release an empty overflow page, the primary page always stays
+							if (p > 0 && page.getNumberOfEntries() == 0) {
+								chain.get(p - 1).setNextPageNumber(page.getNextPageNumber());
+								freeOverflowPage(page);
+							}
+							return true;
+						}
+					}
+				}
+				return false;
+			}
+			finally {
+				unpinAll(chain);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                              Internals
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Adds a bucket and moves the entries that hash to it from the split bucket. The pages of
+	 * the split bucket are refilled in chain order with the entries that stay, and its pages
+	 * that are no longer needed are released. The caller holds the write lock.
+	 */
+	private void splitNextBucket() throws IOException, PageFormatException
+	{
+		int[] bucketPages = this.resourceManager.addBucket();
+
+		ArrayList<HashIndexPage> oldChain = new ArrayList<HashIndexPage>();
+		ArrayList<HashIndexPage> newChain = new ArrayList<HashIndexPage>();
+		try {
+			pinChain(bucketPages[0], oldChain);
+			pinChain(bucketPages[1], newChain);
+
+			// take copies of the old pages, then empty them
+			HashIndexPage[] sources = new HashIndexPage[oldChain.size()];
+			for (int i = 0; i < sources.length; i++) {
+				HashIndexPage page = oldChain.get(i);
+				sources[i] = new HashIndexPage(this.schema, page.getBuffer().clone());
+				page.clear();
+			}
+
+			int oldTarget = 0;
+			for (HashIndexPage source : sources) {
+				int num = source.getNumberOfEntries();
+				for (int i = 0; i < num; i++) {
+					if (this.resourceManager.isInHighestBucket(source.getHash(i))) {
+						HashIndexPage target = newChain.get(newChain.size() - 1);
+						if (target.isFull()) {
+							HashIndexPage overflow = allocateOverflowPage(newChain);
+							target.setNextPageNumber(overflow.getPageNumber());
+							target = overflow;
+						}
+						target.copyEntry(source, i);
+					}
+					else {
+						// the entries that stay never need more pages than they had before
+						if (oldChain.get(oldTarget).isFull()) {
+							oldChain.get(oldTarget).setNextPageNumber(oldChain.get(oldTarget + 1).getPageNumber());
+							oldTarget++;
+						}
+						oldChain.get(oldTarget).copyEntry(source, i);
+					}
+				}
+			}
+
+			for (int i = oldTarget + 1; i < oldChain.size(); i++) {
+				freeOverflowPage(oldChain.get(i));
+			}
+		}
+		finally {
+			unpinAll(oldChain);
+			unpinAll(newChain);
+		}
+	}
+
+	/**
+	 * Pins all pages of the chain starting at the given page, appending them to the list.
+	 */
+	private void pinChain(int pageNumber, ArrayList<HashIndexPage> chain) throws IOException
+	{
+		while (pageNumber != -1) {
+			HashIndexPage page = pin(pageNumber);
+			chain.add(page);
+			pageNumber = page.getNextPageNumber();
+			if (chain.size() > this.resourceManager.getNumberOfEntries() + 1) {
+				throw new IndexFormatCorruptException("The chain of overflow pages contains a cycle.");
+			}
+		}
+	}
+
+	/**
+	 * Pins the page with the given number.
+	 */
+	private HashIndexPage pin(int pageNumber) throws IOException
+	{
+		try {
+			CacheableData page = this.bufferPool.getPageAndPin(this.resourceId, pageNumber);
+			if (!(page instanceof HashIndexPage)) {
+				this.bufferPool.unpinPage(this.resourceId, pageNumber);
+				throw new IndexFormatCorruptException("Page " + pageNumber + " is not a hash index page.");
+			}
+			return (HashIndexPage) page;
+		}
+		catch (BufferPoolException bpex) {
+			throw new IOException("Index page " + pageNumber + " could not be obtained.", bpex);
+		}
+	}
+
+	/**
+	 * Unpins all pages in the list.
+	 */
+	private void unpinAll(ArrayList<HashIndexPage> pages)
+	{
+		for (HashIndexPage page : pages) {
+			this.bufferPool.unpinPage(this.resourceId, page.getPageNumber());
+		}
+	}
+
+	/**
+	 * Gets an empty overflow page, preferably from the free list, and adds it pinned to the
+	 * given list. The page is not yet linked into any chain.
+	 */
+	private HashIndexPage allocateOverflowPage(ArrayList<HashIndexPage> pinned) throws IOException
+	{
+		HashIndexPage page;
+		int free = this.resourceManager.getFreePageHead();
+		if (free != -1) {
+			page = pin(free);
+			this.resourceManager.updateFreePageHead(page.getNextPageNumber());
+			page.clear();
+		}
+		else {
+			try {
+				page = (HashIndexPage) this.bufferPool.createNewPageAndPin(this.resourceId);
+			}
+			catch (BufferPoolException bpex) {
+				throw new IOException("A new index page could not be created.", bpex);
+			}
+		}
+		pinned.add(page);
+		return page;
+	}
+
+	/**
+	 * Puts an overflow page on the free list. The page must already be unlinked from its chain.
+	 */
+	private void freeOverflowPage(HashIndexPage page) throws IOException
+	{
+		page.clear();
+		page.setNextPageNumber(this.resourceManager.getFreePageHead());
+		this.resourceManager.updateFreePageHead(page.getPageNumber());
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Iterator over the RIDs collected from a bucket.
+	 */
+	private static final class RIDIterator implements IndexResultIterator<RID>
+	{
+		private final ArrayList<RID> rids;
+
+		private int position;
+
+		RIDIterator(ArrayList<RID> rids)
+		{
+			this.rids = rids;
+		}
+
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.io.index.IndexResultIterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext()
+		{
+			return this.position < this.rids.size();
+		}
+
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.io.index.IndexResultIterator#next()
+		 */
+		@Override
+		public RID next()
+		{
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return this.rids.get(this.position++);
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexFormatCorruptException;
+
+
+/**
+ * A correlated equality lookup on a B-Tree index, as for the inner side of an index nested loop
+ * join, that resolves the keys of a whole batch of outer tuples at once. When it is opened for a
+ * tuple of a batch it has not seen yet, the lookup sorts the distinct keys of the batch and gets
+ * their RIDs in one pass over the leaves. The opens for the tuples of the batch are then served
+ * from the result, producing tuples that contain only the RID.
+ * <p>
+ * A key that is not part of the current batch is looked up on its own.
+ */
+public class BatchedIndexCorrelatedLookupOperatorImpl implements IndexCorrelatedLookupOperator
+{
+	/**
+	 * The index that is probed.
+	 */
+	private final BTreeIndex index;
+
+	/**
+	 * The column of the correlated tuple holding the key.
+	 */
+	private final int correlatedColumnIndex;
+
+	/**
+	 * The batch of keys published by the join.
+	 */
+	private final IndexProbeBatch batch;
+
+	/**
+	 * The RIDs of the keys of the resolved batch.
+	 */
+	private final Map<DataField, List<RID>> resolved;
+
+	/**
+	 * The version of the batch that was resolved last.
+	 */
+	private int resolvedVersion;
+
+	/**
+	 * The iterator over the RIDs of the current key, or null, if the operator is not open.
+	 */
+	private Iterator<RID> rids;
+
+
+	/**
+	 * Creates a new batched lookup for the key in a column of the correlated tuple.
+	 *
+	 * @param index The index to probe.
+	 * @param correlatedColumnIndex The column of the correlated tuple that holds the key.
+	 * @param batch The batch through which the join publishes the keys of its outer tuples.
+	 */
+	public BatchedIndexCorrelatedLookupOperatorImpl(BTreeIndex index, int correlatedColumnIndex, IndexProbeBatch batch)
+	{
+		this.index = index;
+		this.correlatedColumnIndex = correlatedColumnIndex;
+		this.batch = batch;
+		this.resolved = new HashMap<DataField, List<RID>>();
+		this.resolvedVersion = batch.getVersion();
+	}
+
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#open(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		if (correlatedTuple == null) {
+			throw new QueryExecutionException("Correlated index lookup opened without a correlated tuple.");
+		}
+		DataField key = correlatedTuple.getField(this.correlatedColumnIndex);
+
+		// NULL keys never compare equal
+		if (key.isNULL()) {
+			this.rids = Collections.<RID>emptyList().iterator();
+			return;
+		}
+
+		try {
+			if (this.batch.getVersion() != this.resolvedVersion) {
+				resolveBatch();
+			}
+
+			List<RID> keyRids = this.resolved.get(key);
+			if (keyRids == null) {
+				keyRids = this.index.lookupRids(new DataField[] { key }).get(0);
+			}
+			this.rids = keyRids.iterator();
+		}
+		catch (PageFormatException pfex) {
+			throw new QueryExecutionException("Index page was corrupted.", pfex);
+		}
+		catch (IndexFormatCorruptException ifcex) {
+			throw new QueryExecutionException("Index was corrupted.", ifcex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("Index could not be accessed.", ioex);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#next()
+	 */
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (this.rids == null || !this.rids.hasNext()) {
+			return null;
+		}
+		DataTuple result = new DataTuple(1);
+		result.assignDataField(this.rids.next(), 0);
+		return result;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#close()
+	 */
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		this.rids = null;
+	}
+
+	/**
+	 * Sorts the distinct keys of the current batch and gets their RIDs in one pass.
+	 */
+	private void resolveBatch() throws PageFormatException, IOException
+	{
+		this.resolved.clear();
+		this.resolvedVersion = this.batch.getVersion();
+
+		DataField[] keys = this.batch.getKeys();
+		DataField[] sorted = new DataField[keys.length];
+		int num = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null && !keys[i].isNULL()) {
+				sorted[num++] = keys[i];
+			}
+		}
+		Arrays.sort(sorted, 0, num);
+
+		int distinct = 0;
+		for (int i = 0; i < num; i++) {
+			if (distinct == 0 || sorted[i].compareTo(sorted[distinct - 1]) != 0) {
+				sorted[distinct++] = sorted[i];
+			}
+		}
+
+		List<List<RID>> rids = this.index.lookupRids(Arrays.copyOf(sorted, distinct));
+		for (int i = 0; i < distinct; i++) {
+			this.resolved.put(sorted[i], rids.get(i));
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.qexec.predicate.JoinPredicate;
+
+
+/**
+ * A nested loop join whose inner side is a correlated index lookup that probes the index in
+ * batches. The join reads a batch of outer tuples ahead and publishes their keys, so that the
+ * lookup can resolve them in one sorted pass over the index instead of descending from the root
+ * for each outer tuple. The outer tuples are still joined one after the other in the order of the
+ * outer child, opening the inner side correlated to each of them.
+ */
+public class BatchedNestedLoopJoinOperatorImpl implements NestedLoopJoinOperator
+{
+	/**
+	 * The operator rooting the outer sub-plan.
+	 */
+	private final PhysicalPlanOperator outerChild;
+
+	/**
+	 * The operator rooting the inner sub-plan.
+	 */
+	private final PhysicalPlanOperator innerChild;
+
+	/**
+	 * The join predicate, or null, if the correlation alone determines the matches.
+	 */
+	private final JoinPredicate joinPredicate;
+
+	/**
+	 * For each output column, the column of the outer tuple, or -1.
+	 */
+	private final int[] outerColumnMap;
+
+	/**
+	 * For each output column, the column of the inner tuple, or -1.
+	 */
+	private final int[] innerColumnMap;
+
+	/**
+	 * The batch through which the keys of the outer tuples are published to the lookup.
+	 */
+	private final IndexProbeBatch batch;
+
+	/**
+	 * The column of the outer tuples holding the key of the lookup.
+	 */
+	private final int outerKeyColumn;
+
+	/**
+	 * The outer tuples of the current batch.
+	 */
+	private final DataTuple[] outerTuples;
+
+	/**
+	 * The number of outer tuples in the current batch.
+	 */
+	private int numOuterTuples;
+
+	/**
+	 * The position of the current outer tuple in the batch.
+	 */
+	private int outerPosition;
+
+	/**
+	 * Flag indicating that the outer child is exhausted.
+	 */
+	private boolean outerExhausted;
+
+	/**
+	 * Flag indicating that the inner side is open for the current outer tuple.
+	 */
+	private boolean innerOpen;
+
+
+	/**
+	 * Creates a new batched nested loop join.
+	 *
+	 * @param outerChild The outer child, whose tuples are pulled in the outer loop.
+	 * @param innerChild The inner child, whose tuples are pulled in the inner loop.
+	 * @param joinPredicate The join predicate, or null.
+	 * @param outerColumnMap The map describing how the columns of the outer tuple are copied
+	 *                       to the output tuple.
+	 * @param innerColumnMap The map describing how the columns of the inner tuple are copied
+	 *                       to the output tuple.
+	 * @param batch The batch that the lookup on the inner side takes its keys from.
+	 * @param outerKeyColumn The column of the outer tuples holding the key of the lookup.
+	 * @param batchSize The number of outer tuples in a batch.
+	 */
+	public BatchedNestedLoopJoinOperatorImpl(PhysicalPlanOperator outerChild, PhysicalPlanOperator innerChild,
+			JoinPredicate joinPredicate, int[] outerColumnMap, int[] innerColumnMap,
+			IndexProbeBatch batch, int outerKeyColumn, int batchSize)
+	{
+		if (outerColumnMap.length != innerColumnMap.length) {
+			throw new IllegalArgumentException("Outer column map and inner column map differ in length.");
+		}
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("The batch size must be at least one.");
+		}
+
+		this.outerChild = outerChild;
+		this.innerChild = innerChild;
+		this.joinPredicate = joinPredicate;
+		this.outerColumnMap = outerColumnMap;
+		this.innerColumnMap = innerColumnMap;
+		this.batch = batch;
+		this.outerKeyColumn = outerKeyColumn;
+		this.outerTuples = new DataTuple[batchSize];
+	}
+
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.NestedLoopJoinOperator#getOuterChild()
+	 */
+	@Override
+	public PhysicalPlanOperator getOuterChild()
+	{
+		return this.outerChild;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.NestedLoopJoinOperator#getInnerChild()
+	 */
+	@Override
+	public PhysicalPlanOperator getInnerChild()
+	{
+		return this.innerChild;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.NestedLoopJoinOperator#getJoinPredicate()
+	 */
+	@Override
+	public JoinPredicate getJoinPredicate()
+	{
+		return this.joinPredicate;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#open(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		this.numOuterTuples = 0;
+		this.outerPosition = 0;
+		this.outerExhausted = false;
+		this.innerOpen = false;
+		this.outerChild.open(correlatedTuple);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#next()
+	 */
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		while (true) {
+			if (this.innerOpen) {
+				DataTuple outer = this.outerTuples[this.outerPosition];
+				DataTuple inner;
+				while ((inner = this.innerChild.next()) != null) {
+					if (this.joinPredicate == null || this.joinPredicate.evaluate(outer, inner)) {
+						return join(outer, inner);
+					}
+				}
+				this.innerChild.close();
+				this.innerOpen = false;
+				this.outerPosition++;
+			}
+
+			if (this.outerPosition >= this.numOuterTuples && !readBatch()) {
+				return null;
+			}
+			this.innerChild.open(this.outerTuples[this.outerPosition]);
+			this.innerOpen = true;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#close()
+	 */
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		if (this.innerOpen) {
+			this.innerChild.close();
+			this.innerOpen = false;
+		}
+		for (int i = 0; i < this.numOuterTuples; i++) {
+			this.outerTuples[i] = null;
+		}
+		this.numOuterTuples = 0;
+		this.outerChild.close();
+	}
+
+	/**
+	 * Reads the next batch of outer tuples and publishes their keys.
+	 *
+	 * @return True, if the batch holds at least one tuple, false if the outer child is exhausted.
+	 */
+	private boolean readBatch() throws QueryExecutionException
+	{
+		this.numOuterTuples = 0;
+		this.outerPosition = 0;
+
+		DataTuple tuple;
+		while (!this.outerExhausted && this.numOuterTuples < this.outerTuples.length) {
+			if ((tuple = this.outerChild.next()) == null) {
+				this.outerExhausted = true;
+			}
+			else {
+				this.outerTuples[this.numOuterTuples++] = tuple;
+			}
+		}
+		if (this.numOuterTuples == 0) {
+			return false;
+		}
+
+		DataField[] keys = new DataField[this.numOuterTuples];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = this.outerTuples[i].getField(this.outerKeyColumn);
+		}
+		this.batch.setKeys(keys);
+		return true;
+	}
+
+	/**
+	 * Creates the output tuple from an outer and an inner tuple.
+	 */
+	private DataTuple join(DataTuple outer, DataTuple inner)
+	{
+		DataTuple result = new DataTuple(this.outerColumnMap.length);
+		for (int i = 0; i < this.outerColumnMap.length; i++) {
+			int index = this.outerColumnMap[i];
+			if (index != -1) {
+				result.assignDataField(outer.getField(index), i);
+			}
+			else {
+				result.assignDataField(inner.getField(this.innerColumnMap[i]), i);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,34 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+
+
+/**
+ * An exchange that sends every tuple of its producers to all of its consumers. It is used for
+ * the small input of a join, whose other input is partitioned, such that every instance of the
+ * join sees the complete small input. The consumers share the tuples and the batches holding
+ * them, so the tuples are not copied.
+ */
+public class BroadcastExchange extends Exchange
+{
+	/**
+	 * Creates a new broadcasting exchange.
+	 *
+	 * @param producers The subplans producing the tuples, each run by its own thread.
+	 * @param numConsumers The number of consumers.
+	 */
+	public BroadcastExchange(PhysicalPlanOperator[] producers, int numConsumers)
+	{
+		super(producers, numConsumers, "Broadcast Exchange Producer");
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.Exchange#route(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	protected int route(DataTuple tuple)
+	{
+		return ALL_CONSUMERS;
+	}
+}
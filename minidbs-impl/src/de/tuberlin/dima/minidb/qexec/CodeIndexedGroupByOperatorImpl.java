@@ -0,0 +1,184 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.tables.ColumnDictionary;
+import de.tuberlin.dima.minidb.parser.OutputColumn;
+
+
+/**
+ * A group by operator for a grouping on a single dictionary encoded column. It aggregates an
+ * unsorted stream of tuples into arrays indexed by the dictionary code of the grouping value,
+ * see {@link CodeIndexedAggregator}, and needs neither memory from the query heap nor temp space.
+ * The groups are produced in code order, followed by the group of NULL values.
+ */
+public class CodeIndexedGroupByOperatorImpl implements GroupByOperator
+{
+	/**
+	 * The operator producing the tuples to group.
+	 */
+	private final PhysicalPlanOperator child;
+
+	/**
+	 * The dictionary of the grouping column.
+	 */
+	private final ColumnDictionary dictionary;
+
+	/**
+	 * The index of the grouping column in the input tuple.
+	 */
+	private final int groupColumnIndex;
+
+	/**
+	 * The indices of the aggregate columns in the input tuple.
+	 */
+	private final int[] aggColumnIndices;
+
+	/**
+	 * The functions that are used for aggregation.
+	 */
+	private final OutputColumn.AggregationType[] aggregateFunctions;
+
+	/**
+	 * The types of the aggregated columns.
+	 */
+	private final DataType[] aggColumnTypes;
+
+	/**
+	 * The positions of the grouping column in the output tuple.
+	 */
+	private final int[] groupColumnOutputPositions;
+
+	/**
+	 * The positions of the aggregate columns in the output tuple.
+	 */
+	private final int[] aggregateColumnOutputPosition;
+
+	/**
+	 * The aggregates of the groups, or null, if the operator is not open.
+	 */
+	private CodeIndexedAggregator aggregator;
+
+	/**
+	 * The code of the next group to check for production.
+	 */
+	private int nextCode;
+
+
+	/**
+	 * Creates a new group by operator that aggregates into arrays indexed by dictionary code.
+	 *
+	 * @param child The child producing the tuples to group.
+	 * @param dictionary The dictionary of the grouping column.
+	 * @param groupColumnIndex The index of the grouping column in the input tuple.
+	 * @param aggColumnIndices The indices of the aggregate columns in the input tuple.
+	 * @param aggregateFunctions The functions that are used for aggregation.
+	 * @param aggColumnTypes The types of the aggregated columns.
+	 * @param groupColumnOutputPositions The positions of the grouping column in the output tuple.
+	 * @param aggregateColumnOutputPosition The positions of the aggregate columns in the output tuple.
+	 */
+	public CodeIndexedGroupByOperatorImpl(PhysicalPlanOperator child, ColumnDictionary dictionary,
+			int groupColumnIndex, int[] aggColumnIndices, OutputColumn.AggregationType[] aggregateFunctions,
+			DataType[] aggColumnTypes, int[] groupColumnOutputPositions, int[] aggregateColumnOutputPosition)
+	{
+		if (aggColumnIndices.length != aggregateFunctions.length) {
+			throw new IllegalArgumentException("Aggregate column array and function array must be of same length.");
+		}
+		if (groupColumnOutputPositions.length != aggregateColumnOutputPosition.length) {
+			throw new IllegalArgumentException("Output position arrays must all be of same length.");
+		}
+		for (int i = 0; i < aggregateFunctions.length; i++) {
+			if (aggregateFunctions[i] == OutputColumn.AggregationType.NONE) {
+				throw new IllegalArgumentException("The function " + aggregateFunctions[i].name() + " is not supported for aggregation.");
+			}
+		}
+
+		this.child = child;
+		this.dictionary = dictionary;
+		this.groupColumnIndex = groupColumnIndex;
+		this.aggColumnIndices = aggColumnIndices;
+		this.aggregateFunctions = aggregateFunctions;
+		this.aggColumnTypes = aggColumnTypes;
+		this.groupColumnOutputPositions = groupColumnOutputPositions;
+		this.aggregateColumnOutputPosition = aggregateColumnOutputPosition;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#open(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		this.aggregator = new CodeIndexedAggregator(this.dictionary, this.aggregateFunctions, this.aggColumnTypes);
+		this.nextCode = 0;
+
+		DataField[] aggValues = new DataField[this.aggColumnIndices.length];
+		this.child.open(correlatedTuple);
+		try {
+			DataTuple tuple = null;
+			while ((tuple = this.child.next()) != null) {
+				for (int a = 0; a < aggValues.length; a++) {
+					aggValues[a] = tuple.getField(this.aggColumnIndices[a]);
+				}
+				this.aggregator.aggregate(tuple.getField(this.groupColumnIndex), aggValues);
+			}
+		}
+		catch (IllegalArgumentException iaex) {
+			throw new QueryExecutionException("A grouping value has no code in the column's dictionary.", iaex);
+		}
+		finally {
+			this.child.close();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#next()
+	 */
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (this.aggregator == null) {
+			return null;
+		}
+
+		while (this.nextCode <= CodeIndexedAggregator.NULL_GROUP) {
+			int code = this.nextCode++;
+			if (this.aggregator.hasGroup(code)) {
+				return createOutputTuple(code);
+			}
+		}
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#close()
+	 */
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		this.aggregator = null;
+	}
+
+	/**
+	 * Creates the output tuple of a group from its grouping value and final aggregates.
+	 */
+	private DataTuple createOutputTuple(int code)
+	{
+		DataTuple result = new DataTuple(this.groupColumnOutputPositions.length);
+		for (int i = 0; i < this.groupColumnOutputPositions.length; i++) {
+			if (this.groupColumnOutputPositions[i] != -1) {
+				result.assignDataField(this.aggregator.getGroupValue(code), i);
+			}
+		}
+		for (int i = 0; i < this.aggregateColumnOutputPosition.length; i++) {
+			int index = this.aggregateColumnOutputPosition[i];
+			if (index != -1) {
+				result.assignDataField(this.aggregator.getAggregate(code, index), i);
+			}
+		}
+		return result;
+	}
+}
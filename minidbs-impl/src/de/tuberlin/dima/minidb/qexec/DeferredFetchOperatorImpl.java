@@ -0,0 +1,216 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.io.IOException;
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.PageTupleAccessException;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+
+
+/**
+ * The deferred FETCH of a late materialized plan. The child produces tuples containing the RID
+ * of a table tuple plus some columns that were needed earlier in the plan (for example predicate
+ * or join columns). This operator keeps those columns and adds the remaining columns of the table
+ * tuple, which are only read now that filters and joins have reduced the number of tuples.
+ * <p>
+ * Consecutive RIDs on the same page are served from the same pinned page.
+ */
+public class DeferredFetchOperatorImpl implements FetchOperator
+{
+	/**
+	 * The child producing the RIDs and the carried columns.
+	 */
+	private final PhysicalPlanOperator child;
+
+	/**
+	 * The buffer pool from which the pages are taken.
+	 */
+	private final BufferPoolManager bufferPool;
+
+	/**
+	 * The resource id of the table from which the tuples are fetched.
+	 */
+	private final int tableResourceId;
+
+	/**
+	 * The position of the RID in the child's tuples.
+	 */
+	private final int ridColumnIndex;
+
+	/**
+	 * For each output position, the position of the column in the child's tuple, or -1.
+	 */
+	private final int[] childColumnMap;
+
+	/**
+	 * For each output position, the position in the fetched tuple, or -1.
+	 */
+	private final int[] fetchedColumnMap;
+
+	/**
+	 * The bitmap of the table columns to fetch.
+	 */
+	private final long columnBitmap;
+
+	/**
+	 * The number of table columns to fetch.
+	 */
+	private final int numFetchedCols;
+
+	/**
+	 * The page that is currently pinned, or -1, if none.
+	 */
+	private int pinnedPageNumber;
+
+	/**
+	 * The currently pinned page.
+	 */
+	private TablePage pinnedPage;
+
+
+	/**
+	 * Creates a new deferred fetch operator.
+	 *
+	 * @param child The child producing the RIDs and the carried columns.
+	 * @param bufferPool The buffer pool used to take the pages from.
+	 * @param tableResourceId The resource id of the table that the tuples are fetched from.
+	 * @param ridColumnIndex The position of the RID in the child's tuples.
+	 * @param childColumnMap For each output position the position in the child's tuple, or -1,
+	 *                       if the output column is fetched from the table.
+	 * @param fetchedColumnMap For each output position the table column to fetch, or -1, if
+	 *                         the output column is taken from the child.
+	 */
+	public DeferredFetchOperatorImpl(PhysicalPlanOperator child, BufferPoolManager bufferPool,
+			int tableResourceId, int ridColumnIndex, int[] childColumnMap, int[] fetchedColumnMap)
+	{
+		if (childColumnMap.length != fetchedColumnMap.length) {
+			throw new IllegalArgumentException("Child column map and fetched column map differ in length.");
+		}
+
+		this.child = child;
+		this.bufferPool = bufferPool;
+		this.tableResourceId = tableResourceId;
+		this.ridColumnIndex = ridColumnIndex;
+		this.childColumnMap = childColumnMap;
+		this.pinnedPageNumber = -1;
+
+		// the page returns the requested columns compacted in column order, so
+		// translate the table column indexes to positions within the fetched tuple
+		long bitmap = 0;
+		for (int i = 0; i < fetchedColumnMap.length; i++) {
+			if (fetchedColumnMap[i] >= 0) {
+				bitmap |= (0x1L << fetchedColumnMap[i]);
+			}
+		}
+
+		this.fetchedColumnMap = new int[fetchedColumnMap.length];
+		for (int i = 0; i < fetchedColumnMap.length; i++) {
+			int col = fetchedColumnMap[i];
+			this.fetchedColumnMap[i] = col < 0 ? -1 : Long.bitCount(bitmap & ((0x1L << col) - 1));
+		}
+
+		this.columnBitmap = bitmap;
+		this.numFetchedCols = Long.bitCount(bitmap);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#open(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		this.pinnedPageNumber = -1;
+		this.pinnedPage = null;
+		this.child.open(correlatedTuple);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#next()
+	 */
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		DataTuple childTuple;
+		while ((childTuple = this.child.next()) != null) {
+			RID rid = (RID) childTuple.getField(this.ridColumnIndex);
+			DataTuple fetched = null;
+
+			if (this.numFetchedCols > 0) {
+				try {
+					TablePage page = getPage(rid.getPageIndex());
+					fetched = page.getDataTuple(rid.getTupleIndex(), this.columnBitmap, this.numFetchedCols);
+				}
+				catch (PageTupleAccessException ptaex) {
+					throw new QueryExecutionException("Could not fetch tuple " + rid + ".", ptaex);
+				}
+				catch (BufferPoolException bpex) {
+					throw new QueryExecutionException("Could not access the page of tuple " + rid + ".", bpex);
+				}
+				catch (IOException ioex) {
+					throw new QueryExecutionException("Could not access the page of tuple " + rid + ".", ioex);
+				}
+
+				if (fetched == null) {
+					// tuple was deleted since the RID was produced
+					continue;
+				}
+			}
+
+			DataTuple result = new DataTuple(this.childColumnMap.length);
+			for (int i = 0; i < this.childColumnMap.length; i++) {
+				if (this.childColumnMap[i] >= 0) {
+					result.assignDataField(childTuple.getField(this.childColumnMap[i]), i);
+				}
+				else {
+					result.assignDataField(fetched.getField(this.fetchedColumnMap[i]), i);
+				}
+			}
+			return result;
+		}
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#close()
+	 */
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		if (this.pinnedPageNumber != -1) {
+			this.bufferPool.unpinPage(this.tableResourceId, this.pinnedPageNumber);
+			this.pinnedPageNumber = -1;
+			this.pinnedPage = null;
+		}
+		this.child.close();
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the page with the given number, keeping it pinned until a different page is requested.
+	 *
+	 * @param pageNumber The number of the page.
+	 * @return The page.
+	 * @throws BufferPoolException Thrown, if the buffer pool could not provide the page.
+	 * @throws IOException Thrown, if the page could not be loaded.
+	 */
+	private TablePage getPage(int pageNumber) throws BufferPoolException, IOException
+	{
+		if (pageNumber != this.pinnedPageNumber) {
+			if (this.pinnedPageNumber == -1) {
+				this.pinnedPage = (TablePage) this.bufferPool.getPageAndPin(this.tableResourceId, pageNumber);
+			}
+			else {
+				this.pinnedPage = (TablePage) this.bufferPool.unpinAndGetPageAndPin(
+						this.tableResourceId, this.pinnedPageNumber, pageNumber);
+			}
+			this.pinnedPageNumber = pageNumber;
+		}
+		return this.pinnedPage;
+	}
+}
@@ -0,0 +1,279 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.io.IOException;
+
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.CompositeField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.HashIndex;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.PageTupleAccessException;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+
+
+/**
+ * A delete that removes the tuples from the table and their entries from all indexes of the
+ * table, B-Tree indexes over one or several columns as well as hash indexes. The child produces
+ * tuples whose first field is the RID of the tuple to delete. Before a tuple is deleted, its
+ * indexed columns are read from the page, since they are the keys of the index entries to
+ * remove. Tuples that were deleted before are skipped.
+ * <p>
+ * Like the other data modifying operators, the operator performs the complete delete in the
+ * first call to <code>next()</code> and returns a single tuple with the number of deleted tuples.
+ */
+public class DeleteOperatorImpl implements DeleteOperator
+{
+	/**
+	 * The child producing the RIDs of the tuples to delete.
+	 */
+	private final PhysicalPlanOperator child;
+
+	/**
+	 * The buffer pool from which the pages are taken.
+	 */
+	private final BufferPoolManager bufferPool;
+
+	/**
+	 * The resource id of the table.
+	 */
+	private final int resourceId;
+
+	/**
+	 * The B-Tree indexes of the table.
+	 */
+	private final BTreeIndex[] indexes;
+
+	/**
+	 * For each B-Tree index, the positions of its key columns in the tuples read from the pages.
+	 */
+	private final int[][] keyPositions;
+
+	/**
+	 * The hash indexes of the table.
+	 */
+	private final HashIndex[] hashIndexes;
+
+	/**
+	 * For each hash index, the position of its key in the tuples read from the pages.
+	 */
+	private final int[] hashKeyPositions;
+
+	/**
+	 * The bitmap of the indexed columns.
+	 */
+	private final long columnBitmap;
+
+	/**
+	 * The number of indexed columns.
+	 */
+	private final int numCols;
+
+	/**
+	 * Flag indicating that the delete was performed.
+	 */
+	private boolean done;
+
+
+	/**
+	 * Creates a new delete operator.
+	 *
+	 * @param bufferPool The buffer pool used to take the pages from.
+	 * @param resourceId The resource id of the table.
+	 * @param indexes The indexes of the table. May be null, if the table has no indexes.
+	 * @param columnNumbers For each index, the table column that it refers to.
+	 * @param child The child producing the RIDs of the tuples to delete.
+	 */
+	public DeleteOperatorImpl(BufferPoolManager bufferPool, int resourceId, BTreeIndex[] indexes,
+			int[] columnNumbers, PhysicalPlanOperator child)
+	{
+		this(bufferPool, resourceId, indexes, toKeyColumns(columnNumbers), null, null, child);
+	}
+
+	/**
+	 * Creates a new delete operator that maintains B-Tree indexes, whose keys may span several
+	 * columns, and hash indexes.
+	 *
+	 * @param bufferPool The buffer pool used to take the pages from.
+	 * @param resourceId The resource id of the table.
+	 * @param indexes The B-Tree indexes of the table. May be null, if the table has none.
+	 * @param keyColumns For each B-Tree index, the table columns of its key, in key order.
+	 * @param hashIndexes The hash indexes of the table. May be null, if the table has none.
+	 * @param hashColumns For each hash index, the table column that it refers to.
+	 * @param child The child producing the RIDs of the tuples to delete.
+	 */
+	public DeleteOperatorImpl(BufferPoolManager bufferPool, int resourceId, BTreeIndex[] indexes,
+			int[][] keyColumns, HashIndex[] hashIndexes, int[] hashColumns, PhysicalPlanOperator child)
+	{
+		this.bufferPool = bufferPool;
+		this.resourceId = resourceId;
+		this.indexes = indexes == null ? new BTreeIndex[0] : indexes;
+		this.hashIndexes = hashIndexes == null ? new HashIndex[0] : hashIndexes;
+		this.child = child;
+
+		if (keyColumns == null ? this.indexes.length != 0 : keyColumns.length != this.indexes.length) {
+			throw new IllegalArgumentException("Each index needs its key columns.");
+		}
+		if (hashColumns == null ? this.hashIndexes.length != 0 : hashColumns.length != this.hashIndexes.length) {
+			throw new IllegalArgumentException("Each hash index needs exactly one column number.");
+		}
+
+		// the page returns the requested columns compacted in column order
+		long bitmap = 0;
+		for (int i = 0; i < this.indexes.length; i++) {
+			for (int c = 0; c < keyColumns[i].length; c++) {
+				bitmap |= (0x1L << keyColumns[i][c]);
+			}
+		}
+		for (int i = 0; i < this.hashIndexes.length; i++) {
+			bitmap |= (0x1L << hashColumns[i]);
+		}
+
+		this.keyPositions = new int[this.indexes.length][];
+		for (int i = 0; i < this.indexes.length; i++) {
+			this.keyPositions[i] = new int[keyColumns[i].length];
+			for (int c = 0; c < keyColumns[i].length; c++) {
+				this.keyPositions[i][c] = Long.bitCount(bitmap & ((0x1L << keyColumns[i][c]) - 1));
+			}
+		}
+		this.hashKeyPositions = new int[this.hashIndexes.length];
+		for (int i = 0; i < this.hashIndexes.length; i++) {
+			this.hashKeyPositions[i] = Long.bitCount(bitmap & ((0x1L << hashColumns[i]) - 1));
+		}
+		this.columnBitmap = bitmap;
+		this.numCols = Long.bitCount(bitmap);
+	}
+
+	/**
+	 * Turns the column numbers of single column indexes into their key columns.
+	 */
+	private static int[][] toKeyColumns(int[] columnNumbers)
+	{
+		if (columnNumbers == null) {
+			return null;
+		}
+		int[][] keyColumns = new int[columnNumbers.length][];
+		for (int i = 0; i < columnNumbers.length; i++) {
+			keyColumns[i] = new int[] { columnNumbers[i] };
+		}
+		return keyColumns;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#open(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		this.child.open(correlatedTuple);
+		this.done = false;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#next()
+	 */
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (this.done) {
+			return null;
+		}
+
+		long count = 0;
+		DataTuple tuple;
+		while ((tuple = this.child.next()) != null) {
+			RID rid = (RID) tuple.getField(0);
+			if (delete(rid)) {
+				count++;
+			}
+		}
+
+		this.done = true;
+		return new DataTuple(new DataField[] { new BigIntField(count) });
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#close()
+	 */
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		this.child.close();
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Deletes a tuple from the table and its entries from the indexes.
+	 *
+	 * @param rid The RID of the tuple.
+	 * @return True, if the tuple was deleted, false if it had been deleted before.
+	 * @throws QueryExecutionException Thrown, if the table or an index could not be accessed.
+	 */
+	private boolean delete(RID rid) throws QueryExecutionException
+	{
+		DataTuple keys = null;
+		try {
+			TablePage page = (TablePage) this.bufferPool.getPageAndPin(this.resourceId, rid.getPageIndex());
+			try {
+				if (this.numCols > 0) {
+					keys = page.getDataTuple(rid.getTupleIndex(), this.columnBitmap, this.numCols);
+					if (keys == null) {
+						return false;
+					}
+				}
+				page.deleteTuple(rid.getTupleIndex());
+			}
+			finally {
+				this.bufferPool.unpinPage(this.resourceId, rid.getPageIndex());
+			}
+		}
+		catch (BufferPoolException bpex) {
+			throw new QueryExecutionException("A page could not be retrieved by the buffer pool manager.", bpex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("A page could not be retrieved by the buffer pool manager.", ioex);
+		}
+		catch (PageTupleAccessException ptaex) {
+			throw new QueryExecutionException("Tuple " + rid + " could not be deleted.", ptaex);
+		}
+
+		try {
+			for (int i = 0; i < this.indexes.length; i++) {
+				this.indexes[i].deleteEntry(getKey(keys, this.keyPositions[i]), rid);
+			}
+			for (int i = 0; i < this.hashIndexes.length; i++) {
+				this.hashIndexes[i].deleteEntry(keys.getField(this.hashKeyPositions[i]), rid);
+			}
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("The index entry of tuple " + rid + " could not be deleted.", ioex);
+		}
+		catch (PageFormatException pfex) {
+			throw new QueryExecutionException("The index entry of tuple " + rid + " could not be deleted.", pfex);
+		}
+		return true;
+	}
+
+	/**
+	 * Builds the key of a B-Tree index from the indexed columns of a tuple. Keys over several
+	 * columns are composite keys.
+	 */
+	private static DataField getKey(DataTuple keys, int[] positions)
+	{
+		if (positions.length == 1) {
+			return keys.getField(positions[0]);
+		}
+		DataField[] fields = new DataField[positions.length];
+		for (int i = 0; i < positions.length; i++) {
+			fields[i] = keys.getField(positions[i]);
+		}
+		return new CompositeField(fields);
+	}
+}
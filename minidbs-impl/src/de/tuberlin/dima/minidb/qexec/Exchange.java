@@ -0,0 +1,428 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.core.DataTuple;
+
+
+/**
+ * The common part of the exchange operators. An exchange connects a number of producer
+ * subplans with a number of consumers. Each producer subplan is opened, drained and closed by
+ * its own worker thread, which routes every tuple to one consumer or to all of them. The tuples
+ * for each consumer are collected into batches of {@link Constants#EXCHANGE_BATCH_TUPLES}
+ * tuples and passed through the consumer's bounded {@link TupleExchangeQueue}, so that the
+ * producers are throttled to the speed of the consumers. Subclasses decide only on the routing.
+ * <p>
+ * The consumers are the operators returned by {@link #getConsumers()}. The producers start
+ * when the first consumer is opened, with the correlated tuple of that consumer, and stop when
+ * every consumer is closed again, after which the next open starts them anew. A consumer that
+ * is closed early discards the tuples routed to it, and once all consumers have been closed,
+ * the producers stop without draining their subplans.
+ * <p>
+ * While a producer blocks on the full queue of one consumer, the other consumers do not get
+ * tuples from it either. Exchanges with more than one consumer must therefore have their
+ * consumers run in different threads, for example as the producers of another exchange, and
+ * not be read one after the other by a single thread.
+ */
+public abstract class Exchange
+{
+	/**
+	 * The routing target that sends a tuple to all consumers.
+	 */
+	protected static final int ALL_CONSUMERS = -1;
+
+	/**
+	 * The subplans producing the tuples.
+	 */
+	private final PhysicalPlanOperator[] producers;
+
+	/**
+	 * The operators through which the consumers read their tuples.
+	 */
+	private final Consumer[] consumers;
+
+	/**
+	 * The name given to the threads of the producers.
+	 */
+	private final String threadName;
+
+	/**
+	 * The queues of the consumers, while the producers are running.
+	 */
+	private TupleExchangeQueue[] queues;
+
+	/**
+	 * The threads running the producers.
+	 */
+	private ExecutorService workers;
+
+	/**
+	 * Flags indicating which consumers were opened since the producers were started.
+	 */
+	private boolean[] opened;
+
+	/**
+	 * The number of consumers that were closed since the producers were started.
+	 */
+	private int numClosed;
+
+
+	/**
+	 * Creates a new exchange.
+	 *
+	 * @param producers The subplans producing the tuples, each run by its own thread.
+	 * @param numConsumers The number of consumers.
+	 * @param threadName The name given to the threads of the producers.
+	 */
+	protected Exchange(PhysicalPlanOperator[] producers, int numConsumers, String threadName)
+	{
+		if (producers == null || producers.length < 1) {
+			throw new IllegalArgumentException("An exchange needs at least one producer.");
+		}
+		if (numConsumers < 1) {
+			throw new IllegalArgumentException("An exchange needs at least one consumer.");
+		}
+
+		this.producers = producers.clone();
+		this.threadName = threadName;
+		this.consumers = new Consumer[numConsumers];
+		for (int i = 0; i < numConsumers; i++) {
+			this.consumers[i] = new Consumer(i);
+		}
+	}
+
+	/**
+	 * Gets the operators through which the consumers read their tuples. The operator at
+	 * position <code>i</code> returns the tuples routed to consumer <code>i</code>.
+	 *
+	 * @return The operators of the consumers.
+	 */
+	public ExchangeOperator[] getConsumers()
+	{
+		ExchangeOperator[] ops = new ExchangeOperator[this.consumers.length];
+		System.arraycopy(this.consumers, 0, ops, 0, ops.length);
+		return ops;
+	}
+
+	/**
+	 * Gets the number of consumers.
+	 *
+	 * @return The number of consumers.
+	 */
+	protected int getNumConsumers()
+	{
+		return this.consumers.length;
+	}
+
+	/**
+	 * Decides to which consumer a tuple is routed. The method is called concurrently by the
+	 * threads of all producers and must therefore not change any state.
+	 *
+	 * @param tuple The tuple.
+	 * @return The index of the consumer, or {@link #ALL_CONSUMERS}, if the tuple goes to all of
+	 *         them. Tuples sent to all consumers are shared among them and must not be modified.
+	 */
+	protected abstract int route(DataTuple tuple);
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Attaches a consumer, starting the producers if it is the first one.
+	 *
+	 * @param consumer The index of the consumer.
+	 * @param correlatedTuple The correlated tuple with which the producer subplans are opened.
+	 * @return The queue from which the consumer takes its tuples.
+	 * @throws QueryExecutionException Thrown, if the consumer is opened a second time while
+	 *                                 other consumers still read from the running producers.
+	 */
+	private synchronized TupleExchangeQueue attach(int consumer, DataTuple correlatedTuple)
+	throws QueryExecutionException
+	{
+		if (this.queues == null) {
+			start(correlatedTuple);
+		}
+		else if (this.opened[consumer]) {
+			throw new QueryExecutionException("A consumer of the exchange was opened again before " +
+					"all other consumers were closed.");
+		}
+		this.opened[consumer] = true;
+		return this.queues[consumer];
+	}
+
+	/**
+	 * Detaches a consumer. Its queue is cancelled, and if it was the last consumer, the
+	 * producers are stopped and their threads are waited for.
+	 *
+	 * @param consumer The index of the consumer.
+	 */
+	private synchronized void detach(int consumer)
+	{
+		this.queues[consumer].cancel();
+		if (++this.numClosed < this.consumers.length) {
+			return;
+		}
+
+		for (int i = 0; i < this.queues.length; i++) {
+			this.queues[i].cancel();
+		}
+		try {
+			// the producers close their subplans when they stop, wait for that
+			this.workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+		}
+		this.workers = null;
+		this.queues = null;
+		this.opened = null;
+	}
+
+	/**
+	 * Creates the queues and starts a thread for each producer.
+	 *
+	 * @param correlatedTuple The correlated tuple with which the producer subplans are opened.
+	 */
+	private void start(DataTuple correlatedTuple)
+	{
+		this.queues = new TupleExchangeQueue[this.consumers.length];
+		for (int i = 0; i < this.queues.length; i++) {
+			this.queues[i] = new TupleExchangeQueue(Constants.EXCHANGE_QUEUE_CAPACITY, this.producers.length);
+		}
+		this.opened = new boolean[this.consumers.length];
+		this.numClosed = 0;
+
+		final String name = this.threadName;
+		this.workers = Executors.newFixedThreadPool(this.producers.length, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, name);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		for (int i = 0; i < this.producers.length; i++) {
+			this.workers.execute(new Producer(this.producers[i], correlatedTuple, this.queues));
+		}
+		this.workers.shutdown();
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * A worker that drains one producer subplan and routes its tuples to the consumers.
+	 */
+	private final class Producer implements Runnable
+	{
+		/**
+		 * The subplan producing the tuples.
+		 */
+		private final PhysicalPlanOperator child;
+
+		/**
+		 * The correlated tuple with which the subplan is opened.
+		 */
+		private final DataTuple correlatedTuple;
+
+		/**
+		 * The queues of the consumers.
+		 */
+		private final TupleExchangeQueue[] out;
+
+		/**
+		 * The batches being filled, one per consumer, followed by the one for all consumers.
+		 */
+		private final DataTuple[][] batches;
+
+		/**
+		 * The number of tuples in each batch.
+		 */
+		private final int[] fill;
+
+		/**
+		 * Flags indicating which consumers have cancelled their queue.
+		 */
+		private final boolean[] cancelled;
+
+		/**
+		 * The number of consumers that have not cancelled their queue.
+		 */
+		private int numActive;
+
+		Producer(PhysicalPlanOperator child, DataTuple correlatedTuple, TupleExchangeQueue[] out)
+		{
+			this.child = child;
+			this.correlatedTuple = correlatedTuple;
+			this.out = out;
+			this.batches = new DataTuple[out.length + 1][];
+			this.fill = new int[out.length + 1];
+			this.cancelled = new boolean[out.length];
+			this.numActive = out.length;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run()
+		{
+			try {
+				this.child.open(this.correlatedTuple);
+				try {
+					DataTuple tuple;
+					while (this.numActive > 0 && (tuple = this.child.next()) != null) {
+						int target = route(tuple);
+						add(target == ALL_CONSUMERS ? this.out.length : target, tuple);
+					}
+					for (int i = 0; i < this.batches.length && this.numActive > 0; i++) {
+						if (this.fill[i] > 0) {
+							DataTuple[] last = new DataTuple[this.fill[i]];
+							System.arraycopy(this.batches[i], 0, last, 0, last.length);
+							send(i, last);
+						}
+					}
+				}
+				finally {
+					this.child.close();
+				}
+			}
+			catch (Throwable t) {
+				for (int i = 0; i < this.out.length; i++) {
+					this.out[i].fail(t);
+				}
+			}
+			finally {
+				for (int i = 0; i < this.out.length; i++) {
+					this.out[i].producerFinished();
+				}
+			}
+		}
+
+		/**
+		 * Adds a tuple to a batch, and passes the batch on once it is full.
+		 *
+		 * @param batch The index of the batch, which is the consumer, or the number of consumers
+		 *              for the batch going to all of them.
+		 * @param tuple The tuple.
+		 * @throws InterruptedException Thrown, if the thread was interrupted while waiting.
+		 */
+		private void add(int batch, DataTuple tuple) throws InterruptedException
+		{
+			if (batch < this.cancelled.length && this.cancelled[batch]) {
+				return;
+			}
+			if (this.batches[batch] == null) {
+				this.batches[batch] = new DataTuple[Constants.EXCHANGE_BATCH_TUPLES];
+			}
+			this.batches[batch][this.fill[batch]++] = tuple;
+			if (this.fill[batch] == Constants.EXCHANGE_BATCH_TUPLES) {
+				send(batch, this.batches[batch]);
+				this.batches[batch] = null;
+				this.fill[batch] = 0;
+			}
+		}
+
+		/**
+		 * Passes a batch to its consumer, or to all consumers, and notes the consumers that have
+		 * cancelled their queue. The batch for all consumers is shared among them.
+		 *
+		 * @param batch The index of the batch.
+		 * @param tuples The tuples of the batch.
+		 * @throws InterruptedException Thrown, if the thread was interrupted while waiting.
+		 */
+		private void send(int batch, DataTuple[] tuples) throws InterruptedException
+		{
+			int first = batch < this.out.length ? batch : 0;
+			int last = batch < this.out.length ? batch : this.out.length - 1;
+			for (int i = first; i <= last; i++) {
+				if (!this.cancelled[i] && !this.out[i].put(tuples)) {
+					this.cancelled[i] = true;
+					this.numActive--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The operator through which a consumer reads the tuples routed to it.
+	 */
+	private final class Consumer implements ExchangeOperator
+	{
+		/**
+		 * The index of the consumer.
+		 */
+		private final int index;
+
+		/**
+		 * The queue from which the tuples are taken, while the consumer is open.
+		 */
+		private TupleExchangeQueue in;
+
+		/**
+		 * The batch that tuples are currently returned from.
+		 */
+		private DataTuple[] currentBatch;
+
+		/**
+		 * The position of the next tuple in the current batch.
+		 */
+		private int currentPos;
+
+		Consumer(int index)
+		{
+			this.index = index;
+		}
+
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#open(de.tuberlin.dima.minidb.core.DataTuple)
+		 */
+		@Override
+		public void open(DataTuple correlatedTuple) throws QueryExecutionException
+		{
+			if (this.in != null) {
+				close();
+			}
+			this.currentBatch = null;
+			this.currentPos = 0;
+			this.in = attach(this.index, correlatedTuple);
+		}
+
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#next()
+		 */
+		@Override
+		public DataTuple next() throws QueryExecutionException
+		{
+			if (this.in == null) {
+				return null;
+			}
+
+			while (this.currentBatch == null || this.currentPos >= this.currentBatch.length) {
+				this.currentBatch = this.in.take();
+				this.currentPos = 0;
+				if (this.currentBatch == null) {
+					return null;
+				}
+			}
+			return this.currentBatch[this.currentPos++];
+		}
+
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#close()
+		 */
+		@Override
+		public void close() throws QueryExecutionException
+		{
+			if (this.in != null) {
+				this.in = null;
+				detach(this.index);
+			}
+			this.currentBatch = null;
+		}
+	}
+}
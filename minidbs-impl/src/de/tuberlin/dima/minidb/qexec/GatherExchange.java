@@ -0,0 +1,42 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+
+
+/**
+ * An exchange that gathers the tuples of all producers into a single consumer. It runs the
+ * producer subplans in parallel, while the operators above it run in one thread. The tuples of
+ * the producers are interleaved in no particular order.
+ */
+public class GatherExchange extends Exchange
+{
+	/**
+	 * Creates a new gathering exchange.
+	 *
+	 * @param producers The subplans producing the tuples, each run by its own thread.
+	 */
+	public GatherExchange(PhysicalPlanOperator[] producers)
+	{
+		super(producers, 1, "Gather Exchange Producer");
+	}
+
+	/**
+	 * Gets the operator through which the gathered tuples are read.
+	 *
+	 * @return The operator of the consumer.
+	 */
+	public ExchangeOperator getConsumer()
+	{
+		return getConsumers()[0];
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.Exchange#route(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	protected int route(DataTuple tuple)
+	{
+		return 0;
+	}
+}
@@ -0,0 +1,698 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.parser.OutputColumn;
+import de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeapException;
+
+
+/**
+ * A group by operator that groups and aggregates an unsorted stream of tuples in a hash table
+ * with open addressing. It has the same contract as the sort based group by operator, except
+ * that the groups are produced in no particular order.
+ * <p>
+ * The number of groups held in memory is bounded by the memory that the query heap grants.
+ * When the table gets full, the operator asks the query heap for more. Once it has none to
+ * spare and the table is full, tuples of groups that are in the table are still aggregated, while
+ * tuples of new groups are distributed over partitions by their hash and written to temp space.
+ * The groups in the table and those in the written partitions are therefore disjoint. After the
+ * groups in the table are produced, each written partition is aggregated the same way, using a
+ * different part of the hash code, so that a partition that again exceeds the memory is split
+ * further.
+ */
+public class HashGroupByOperatorImpl implements GroupByOperator
+{
+	/**
+	 * Once the table is full, one in this many slots of the memory buffers the tuples
+	 * of new groups before they are written.
+	 */
+	private static final int OVERFLOW_BUFFER_SHARE = 8;
+
+	/**
+	 * The operator producing the tuples to group.
+	 */
+	private final PhysicalPlanOperator child;
+
+	/**
+	 * The heap granting the memory and the temp space.
+	 */
+	private final QueryHeap queryHeap;
+
+	/**
+	 * The types of the fields of the input tuples.
+	 */
+	private final DataType[] inputColumnTypes;
+
+	/**
+	 * The estimated number of groups.
+	 */
+	private final int estimatedGroups;
+
+	/**
+	 * The indices of the grouping columns in the input tuple.
+	 */
+	private final int[] groupColumnIndices;
+
+	/**
+	 * The indices of the aggregate columns in the input tuple.
+	 */
+	private final int[] aggColumnIndices;
+
+	/**
+	 * The functions that are used for aggregation.
+	 */
+	private final OutputColumn.AggregationType[] aggregateFunctions;
+
+	/**
+	 * The types of the aggregated columns.
+	 */
+	private final DataType[] aggColumnTypes;
+
+	/**
+	 * The positions of the grouping columns in the output tuple.
+	 */
+	private final int[] groupColumnOutputPositions;
+
+	/**
+	 * The positions of the aggregate columns in the output tuple.
+	 */
+	private final int[] aggregateColumnOutputPosition;
+
+	/**
+	 * The number of partitions for the tuples of groups that do not fit, a power of two.
+	 */
+	private final int numPartitions;
+
+	/**
+	 * The number of hash code bits that select a partition.
+	 */
+	private final int partitionBits;
+
+	/**
+	 * The IDs of the memory grant and the temp space, or -1, if not reserved.
+	 */
+	private int heapId = -1, spillId = -1;
+
+	/**
+	 * The granted array, holding the grouping fields of each group.
+	 */
+	private DataTuple[] groups;
+
+	/**
+	 * The aggregated values of each group, or, for COUNT, null.
+	 */
+	private DataField[][] aggregates;
+
+	/**
+	 * For each group and aggregate column, the number of aggregated values.
+	 */
+	private int[] counts;
+
+	/**
+	 * The hash codes of the groups.
+	 */
+	private int[] groupHashes;
+
+	/**
+	 * The open addressing table holding one plus the number of a group, or zero for a free slot.
+	 */
+	private int[] slots;
+
+	/**
+	 * The number of groups in the table.
+	 */
+	private int numGroups;
+
+	/**
+	 * The number of groups that the table may hold at most.
+	 */
+	private int maxGroups;
+
+	/**
+	 * For each partition, the buffered tuples of new groups.
+	 */
+	private List<List<DataTuple>> overflowBuffers;
+
+	/**
+	 * For each partition, the runs written in the current pass.
+	 */
+	private List<List<Integer>> overflowRuns;
+
+	/**
+	 * The number of buffered tuples of new groups.
+	 */
+	private int numBuffered;
+
+	/**
+	 * Flag indicating that tuples of new groups were buffered in the current pass, after
+	 * which the table must not grow any more.
+	 */
+	private boolean overflowing;
+
+	/**
+	 * The written partitions still to aggregate, each with the pass that aggregates it.
+	 */
+	private LinkedList<PendingPartition> pending;
+
+	/**
+	 * The number of the current pass, starting at zero for the tuples of the child.
+	 */
+	private int pass;
+
+	/**
+	 * The number of the next group to produce.
+	 */
+	private int nextGroup;
+
+
+	/**
+	 * Creates a new hash based group by operator.
+	 *
+	 * @param child The child producing the tuples to group.
+	 * @param queryHeap The heap granting the memory and the temp space.
+	 * @param inputColumnTypes The types of the fields of the input tuples.
+	 * @param estimatedGroups The estimated number of groups.
+	 * @param groupColumnIndices The indices of the grouping columns in the input tuple.
+	 * @param aggColumnIndices The indices of the aggregate columns in the input tuple.
+	 * @param aggregateFunctions The functions that are used for aggregation.
+	 * @param aggColumnTypes The types of the aggregated columns.
+	 * @param groupColumnOutputPositions The positions of the grouping columns in the output tuple.
+	 * @param aggregateColumnOutputPosition The positions of the aggregate columns in the output tuple.
+	 */
+	public HashGroupByOperatorImpl(PhysicalPlanOperator child, QueryHeap queryHeap,
+			DataType[] inputColumnTypes, int estimatedGroups, int[] groupColumnIndices,
+			int[] aggColumnIndices, OutputColumn.AggregationType[] aggregateFunctions,
+			DataType[] aggColumnTypes, int[] groupColumnOutputPositions, int[] aggregateColumnOutputPosition)
+	{
+		if (aggColumnIndices.length != aggregateFunctions.length) {
+			throw new IllegalArgumentException("Aggregate column array and function array must be of same length.");
+		}
+		if (groupColumnOutputPositions.length != aggregateColumnOutputPosition.length) {
+			throw new IllegalArgumentException("Output position arrays must all be of same length.");
+		}
+		for (int i = 0; i < aggregateFunctions.length; i++) {
+			if (aggregateFunctions[i] == OutputColumn.AggregationType.NONE) {
+				throw new IllegalArgumentException("The function " + aggregateFunctions[i].name() + " is not supported for aggregation.");
+			}
+		}
+
+		this.child = child;
+		this.queryHeap = queryHeap;
+		this.inputColumnTypes = inputColumnTypes;
+		this.estimatedGroups = estimatedGroups;
+		this.groupColumnIndices = groupColumnIndices;
+		this.aggColumnIndices = aggColumnIndices;
+		this.aggregateFunctions = aggregateFunctions;
+		this.aggColumnTypes = aggColumnTypes;
+		this.groupColumnOutputPositions = groupColumnOutputPositions;
+		this.aggregateColumnOutputPosition = aggregateColumnOutputPosition;
+
+		this.numPartitions = Integer.highestOneBit(Math.max(Constants.HASH_AGGREGATION_PARTITIONS, 2));
+		this.partitionBits = Integer.numberOfTrailingZeros(this.numPartitions);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#open(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		try {
+			this.heapId = this.queryHeap.reserveSortHeap(this.inputColumnTypes, this.estimatedGroups);
+			this.groups = this.queryHeap.getSortArray(this.heapId);
+			int capacity = this.queryHeap.getMaximalTuplesForInternalSort(this.heapId);
+			this.maxGroups = Math.max(capacity - capacity / OVERFLOW_BUFFER_SHARE, 1);
+
+			this.aggregates = new DataField[this.maxGroups][];
+			this.counts = new int[this.maxGroups * this.aggColumnIndices.length];
+			this.groupHashes = new int[this.maxGroups];
+			this.slots = new int[tableSize(Math.min(Math.max(this.estimatedGroups, 1), this.maxGroups))];
+
+			this.overflowBuffers = new ArrayList<List<DataTuple>>(this.numPartitions);
+			this.overflowRuns = new ArrayList<List<Integer>>(this.numPartitions);
+			for (int p = 0; p < this.numPartitions; p++) {
+				this.overflowBuffers.add(new ArrayList<DataTuple>());
+				this.overflowRuns.add(new ArrayList<Integer>());
+			}
+			this.pending = new LinkedList<PendingPartition>();
+			this.pass = 0;
+			this.overflowing = false;
+
+			// the first pass aggregates the tuples of the child
+			this.child.open(correlatedTuple);
+			try {
+				DataTuple tuple = null;
+				while ((tuple = this.child.next()) != null) {
+					aggregate(tuple);
+				}
+			}
+			finally {
+				this.child.close();
+			}
+			finishPass();
+
+			// without grouping columns, there is exactly one group, even for no input
+			if (this.numGroups == 0 && this.groupColumnIndices.length == 0) {
+				addGroup(new DataTuple(0), 0);
+			}
+		}
+		catch (QueryHeapException qhex) {
+			throw new QueryExecutionException("The query heap could not provide the group by's memory or temp space.", qhex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("Tuples of the group by could not be written to temp space.", ioex);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#next()
+	 */
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (this.groups == null) {
+			return null;
+		}
+
+		try {
+			// aggregate the written partitions once the groups in the table are produced
+			while (this.nextGroup >= this.numGroups) {
+				if (this.pending.isEmpty()) {
+					return null;
+				}
+
+				PendingPartition partition = this.pending.removeFirst();
+				this.pass = partition.pass;
+				clearTable();
+
+				ExternalTupleSequenceIterator tuples = this.queryHeap.getSpilledRuns(this.spillId, partition.runs);
+				while (tuples.hasNext()) {
+					aggregate(tuples.next());
+				}
+				finishPass();
+			}
+
+			return createOutputTuple(this.nextGroup++);
+		}
+		catch (QueryHeapException qhex) {
+			throw new QueryExecutionException("The query heap could not provide the group by's temp space.", qhex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("Tuples of the group by could not be read from or written to temp space.", ioex);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#close()
+	 */
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		this.groups = null;
+		this.aggregates = null;
+		this.overflowBuffers = null;
+		this.pending = null;
+		this.numGroups = 0;
+		this.nextGroup = 0;
+
+		// releasing the heap deletes the temp file
+		if (this.heapId != -1) {
+			this.queryHeap.releaseSortHeap(this.heapId);
+			this.heapId = -1;
+		}
+		if (this.spillId != -1) {
+			this.queryHeap.releaseSortHeap(this.spillId);
+			this.spillId = -1;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Aggregates a tuple into its group. If the group is not in the table and the table is full,
+	 * the tuple is buffered for its partition instead.
+	 */
+	private void aggregate(DataTuple tuple) throws QueryHeapException, IOException
+	{
+		int hash = hash(tuple);
+		int mask = this.slots.length - 1;
+		int slot = hash & mask;
+
+		// find the group or the free slot where it belongs
+		while (this.slots[slot] != 0) {
+			int group = this.slots[slot] - 1;
+			if (this.groupHashes[group] == hash && groupEquals(this.groups[group], tuple)) {
+				aggregateInto(group, tuple);
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (this.numGroups == this.maxGroups && !this.overflowing) {
+			growTable();
+		}
+		if (this.numGroups < this.maxGroups) {
+			DataTuple groupFields = new DataTuple(this.groupColumnIndices.length);
+			for (int i = 0; i < this.groupColumnIndices.length; i++) {
+				groupFields.assignDataField(tuple.getField(this.groupColumnIndices[i]), i);
+			}
+			int group = addGroup(groupFields, hash);
+			aggregateInto(group, tuple);
+		}
+		else {
+			this.overflowing = true;
+			this.overflowBuffers.get(partitionOf(hash)).add(tuple);
+			if (++this.numBuffered >= this.groups.length - this.maxGroups) {
+				spillLargestBuffer();
+			}
+		}
+	}
+
+	/**
+	 * Tries to enlarge the memory of the full table to twice its size. The table may only grow
+	 * as long as no tuple of the pass was buffered for a partition, since a group that is
+	 * entered afterwards would also be aggregated from its buffered tuples.
+	 */
+	private void growTable() throws QueryHeapException
+	{
+		int capacity = this.queryHeap.growSortHeap(this.heapId, this.groups.length);
+		if (capacity > this.groups.length) {
+			this.groups = this.queryHeap.getSortArray(this.heapId);
+			this.maxGroups = Math.max(capacity - capacity / OVERFLOW_BUFFER_SHARE, 1);
+			this.aggregates = Arrays.copyOf(this.aggregates, this.maxGroups);
+			this.counts = Arrays.copyOf(this.counts, this.maxGroups * this.aggColumnIndices.length);
+			this.groupHashes = Arrays.copyOf(this.groupHashes, this.maxGroups);
+		}
+	}
+
+	/**
+	 * Adds a group with initial aggregates to the table, growing the slots if they get too full.
+	 *
+	 * @return The number of the new group.
+	 */
+	private int addGroup(DataTuple groupFields, int hash)
+	{
+		int group = this.numGroups++;
+		this.groups[group] = groupFields;
+		this.groupHashes[group] = hash;
+
+		DataField[] values = new DataField[this.aggColumnIndices.length];
+		for (int a = 0; a < values.length; a++) {
+			OutputColumn.AggregationType function = this.aggregateFunctions[a];
+			if (function == OutputColumn.AggregationType.SUM || function == OutputColumn.AggregationType.AVG) {
+				values[a] = (DataField) DataType.asArithmeticType(this.aggColumnTypes[a].getNullValue()).createZero();
+			}
+			this.counts[group * values.length + a] = 0;
+		}
+		this.aggregates[group] = values;
+
+		if (this.numGroups * 2 > this.slots.length) {
+			this.slots = new int[tableSize(this.numGroups)];
+			for (int g = 0; g < this.numGroups; g++) {
+				insertSlot(g);
+			}
+		}
+		else {
+			insertSlot(group);
+		}
+		return group;
+	}
+
+	/**
+	 * Enters a group into the first free slot from its hash code on.
+	 */
+	private void insertSlot(int group)
+	{
+		int mask = this.slots.length - 1;
+		int slot = this.groupHashes[group] & mask;
+		while (this.slots[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		this.slots[slot] = group + 1;
+	}
+
+	/**
+	 * Aggregates the fields of a tuple into the aggregates of a group. NULL values are
+	 * counted, but otherwise ignored.
+	 */
+	private void aggregateInto(int group, DataTuple tuple)
+	{
+		DataField[] values = this.aggregates[group];
+		for (int a = 0; a < values.length; a++) {
+			DataField field = tuple.getField(this.aggColumnIndices[a]);
+			int countPos = group * values.length + a;
+
+			switch (this.aggregateFunctions[a]) {
+			case COUNT:
+				this.counts[countPos]++;
+				break;
+			case SUM:
+			case AVG:
+				if (!field.isNULL()) {
+					DataType.asArithmeticType(values[a]).add(field);
+					this.counts[countPos]++;
+				}
+				break;
+			case MIN:
+				if (!field.isNULL() && (values[a] == null || field.compareTo(values[a]) < 0)) {
+					values[a] = field;
+				}
+				break;
+			case MAX:
+				if (!field.isNULL() && (values[a] == null || field.compareTo(values[a]) > 0)) {
+					values[a] = field;
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("The function " + this.aggregateFunctions[a].name() + " is not supported for aggregation.");
+			}
+		}
+	}
+
+	/**
+	 * Creates the output tuple of a group from its grouping fields and final aggregates.
+	 */
+	private DataTuple createOutputTuple(int group)
+	{
+		DataField[] values = this.aggregates[group];
+		DataField[] finals = new DataField[values.length];
+		for (int a = 0; a < values.length; a++) {
+			int count = this.counts[group * values.length + a];
+			switch (this.aggregateFunctions[a]) {
+			case COUNT:
+				finals[a] = new IntField(count);
+				break;
+			case AVG:
+				if (count == 0) {
+					finals[a] = this.aggColumnTypes[a].getNullValue();
+				}
+				else {
+					DataType.asArithmeticType(values[a]).divideBy(count);
+					finals[a] = values[a];
+				}
+				break;
+			default:
+				finals[a] = values[a] == null ? this.aggColumnTypes[a].getNullValue() : values[a];
+			}
+		}
+
+		DataTuple result = new DataTuple(this.groupColumnOutputPositions.length);
+		for (int i = 0; i < this.groupColumnOutputPositions.length; i++) {
+			int index = this.groupColumnOutputPositions[i];
+			if (index != -1) {
+				result.assignDataField(this.groups[group].getField(index), i);
+			}
+		}
+		for (int i = 0; i < this.aggregateColumnOutputPosition.length; i++) {
+			int index = this.aggregateColumnOutputPosition[i];
+			if (index != -1) {
+				result.assignDataField(finals[index], i);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Ends a pass: writes the remaining buffered tuples and queues the partitions written
+	 * in the pass, to be aggregated after the groups in the table are produced.
+	 */
+	private void finishPass() throws QueryHeapException, IOException
+	{
+		spillOverflow();
+		this.overflowing = false;
+		for (int p = this.numPartitions - 1; p >= 0; p--) {
+			List<Integer> runs = this.overflowRuns.get(p);
+			if (!runs.isEmpty()) {
+				this.pending.addFirst(new PendingPartition(this.pass + 1, toArray(runs)));
+				runs.clear();
+			}
+		}
+		this.nextGroup = 0;
+	}
+
+	/**
+	 * Writes the largest buffer of tuples of new groups to temp space, such that the runs
+	 * stay as long as possible.
+	 */
+	private void spillLargestBuffer() throws QueryHeapException, IOException
+	{
+		int largest = 0;
+		for (int p = 1; p < this.numPartitions; p++) {
+			if (this.overflowBuffers.get(p).size() > this.overflowBuffers.get(largest).size()) {
+				largest = p;
+			}
+		}
+		this.numBuffered -= spillBuffer(largest);
+	}
+
+	/**
+	 * Writes all buffered tuples of new groups to temp space, one run per partition.
+	 */
+	private void spillOverflow() throws QueryHeapException, IOException
+	{
+		for (int p = 0; p < this.numPartitions; p++) {
+			spillBuffer(p);
+		}
+		this.numBuffered = 0;
+	}
+
+	/**
+	 * Writes the buffered tuples of new groups of one partition to temp space as a run.
+	 *
+	 * @return The number of written tuples.
+	 */
+	private int spillBuffer(int partition) throws QueryHeapException, IOException
+	{
+		List<DataTuple> buffered = this.overflowBuffers.get(partition);
+		int num = buffered.size();
+		if (num > 0) {
+			if (this.spillId == -1) {
+				this.spillId = this.queryHeap.reserveSpillSpace(this.inputColumnTypes);
+			}
+			int run = this.queryHeap.spillTupleSequence(this.spillId, buffered.toArray(new DataTuple[num]), num);
+			this.overflowRuns.get(partition).add(run);
+			buffered.clear();
+		}
+		return num;
+	}
+
+	/**
+	 * Removes all groups from the table.
+	 */
+	private void clearTable()
+	{
+		Arrays.fill(this.groups, 0, this.numGroups, null);
+		Arrays.fill(this.aggregates, 0, this.numGroups, null);
+		Arrays.fill(this.slots, 0);
+		this.numGroups = 0;
+		this.nextGroup = 0;
+	}
+
+	/**
+	 * Gets the partition of a hash code in the current pass. Each pass takes the next bits
+	 * from the top of the hash code, while the slots take the bits from the bottom.
+	 */
+	private int partitionOf(int hash)
+	{
+		int shift = 32 - this.partitionBits * (this.pass + 1);
+		if (shift < this.partitionBits) {
+			// the bits are used up, continue with a scrambled hash code
+			hash = mix(hash + this.pass);
+			shift = 32 - this.partitionBits;
+		}
+		return (hash >>> shift) & (this.numPartitions - 1);
+	}
+
+	/**
+	 * Computes the hash code of the grouping fields of a tuple.
+	 */
+	private int hash(DataTuple tuple)
+	{
+		int hash = 0;
+		for (int i = 0; i < this.groupColumnIndices.length; i++) {
+			hash = 31 * hash + tuple.getField(this.groupColumnIndices[i]).hashCode();
+		}
+		return mix(hash);
+	}
+
+	/**
+	 * Spreads the bits of a hash code, as partitions and slots take them from opposite ends.
+	 */
+	private static int mix(int hash)
+	{
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+
+	/**
+	 * Checks if a tuple belongs to a group.
+	 */
+	private boolean groupEquals(DataTuple groupFields, DataTuple tuple)
+	{
+		for (int i = 0; i < this.groupColumnIndices.length; i++) {
+			if (!groupFields.getField(i).equals(tuple.getField(this.groupColumnIndices[i]))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the number of slots for the given number of groups, keeping the table at most half full.
+	 */
+	private static int tableSize(int groups)
+	{
+		return Integer.highestOneBit(Math.max(groups, 1)) << 2;
+	}
+
+	/**
+	 * Converts a list of run numbers into an array.
+	 */
+	private static int[] toArray(List<Integer> runs)
+	{
+		int[] array = new int[runs.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = runs.get(i).intValue();
+		}
+		return array;
+	}
+
+	/**
+	 * A written partition that waits to be aggregated.
+	 */
+	private static final class PendingPartition
+	{
+		/**
+		 * The pass that aggregates the partition.
+		 */
+		private final int pass;
+
+		/**
+		 * The runs holding the tuples of the partition.
+		 */
+		private final int[] runs;
+
+		PendingPartition(int pass, int[] runs)
+		{
+			this.pass = pass;
+			this.runs = runs;
+		}
+	}
+}
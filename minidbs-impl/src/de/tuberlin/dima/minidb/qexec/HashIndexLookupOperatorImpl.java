@@ -0,0 +1,135 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.io.IOException;
+
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.index.HashIndex;
+import de.tuberlin.dima.minidb.io.index.IndexFormatCorruptException;
+import de.tuberlin.dima.minidb.io.index.IndexResultIterator;
+
+
+/**
+ * An equality lookup on a hash index, producing tuples that contain only the RID. The key is
+ * either a fixed literal or, in the correlated case, taken anew from the correlated tuple each
+ * time the operator is opened, as for the inner side of an index nested loop join.
+ */
+public class HashIndexLookupOperatorImpl implements IndexLookupOperator, IndexCorrelatedLookupOperator
+{
+	/**
+	 * The index that is probed.
+	 */
+	private final HashIndex index;
+
+	/**
+	 * The key to look up, or null, if the lookup is correlated.
+	 */
+	private final DataField equalityLiteral;
+
+	/**
+	 * The column of the correlated tuple holding the key, or -1, if the lookup is not correlated.
+	 */
+	private final int correlatedColumnIndex;
+
+	/**
+	 * The iterator over the RIDs, or null, if the operator is not open.
+	 */
+	private IndexResultIterator<RID> rids;
+
+
+	/**
+	 * Creates a new lookup for the given key.
+	 *
+	 * @param index The index to probe.
+	 * @param equalityLiteral The key to look up.
+	 */
+	public HashIndexLookupOperatorImpl(HashIndex index, DataField equalityLiteral)
+	{
+		this.index = index;
+		this.equalityLiteral = equalityLiteral;
+		this.correlatedColumnIndex = -1;
+	}
+
+	/**
+	 * Creates a new lookup for the key in a column of the correlated tuple.
+	 *
+	 * @param index The index to probe.
+	 * @param correlatedColumnIndex The column of the correlated tuple that holds the key.
+	 */
+	public HashIndexLookupOperatorImpl(HashIndex index, int correlatedColumnIndex)
+	{
+		this.index = index;
+		this.equalityLiteral = null;
+		this.correlatedColumnIndex = correlatedColumnIndex;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#open(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		DataField key = this.equalityLiteral;
+		if (this.correlatedColumnIndex != -1) {
+			if (correlatedTuple == null) {
+				throw new QueryExecutionException("Correlated hash index lookup opened without a correlated tuple.");
+			}
+			key = correlatedTuple.getField(this.correlatedColumnIndex);
+		}
+
+		try {
+			this.rids = this.index.lookupRids(key);
+		}
+		catch (PageFormatException pfex) {
+			throw new QueryExecutionException("Index page was corrupted.", pfex);
+		}
+		catch (IndexFormatCorruptException ifcex) {
+			throw new QueryExecutionException("Index was corrupted.", ifcex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("Index could not be accessed.", ioex);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#next()
+	 */
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (this.rids == null) {
+			return null;
+		}
+
+		try {
+			if (!this.rids.hasNext()) {
+				return null;
+			}
+			DataTuple result = new DataTuple(1);
+			result.assignDataField(this.rids.next(), 0);
+			return result;
+		}
+		catch (PageFormatException pfex) {
+			throw new QueryExecutionException("Index page was corrupted.", pfex);
+		}
+		catch (IndexFormatCorruptException ifcex) {
+			throw new QueryExecutionException("Index was corrupted.", ifcex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("Index could not be accessed.", ioex);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#close()
+	 */
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		this.rids = null;
+	}
+}
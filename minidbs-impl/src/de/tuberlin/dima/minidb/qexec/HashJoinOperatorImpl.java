@@ -0,0 +1,664 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeapException;
+
+
+/**
+ * A hybrid hash join that performs an inner equi-join. When opened, the join reads its build
+ * side into the memory granted by the query heap and distributes the tuples over a fixed number
+ * of partitions by the hash of their keys. Whenever the memory is full, the operator asks the query
+ * heap for more. Only if the heap has none to spare, the largest partition that is still in memory
+ * is written to temp space, and so are all further tuples of it. The partitions
+ * that stay in memory form the hash table, which the probe side probes directly, while the probe
+ * tuples of the written partitions are written to temp space as well. Once the probe side is
+ * exhausted, the written partitions are joined one after the other. A written partition whose build
+ * side alone exceeds the memory is joined in chunks, reading its probe side once per chunk.
+ * <p>
+ * Tuples with a NULL in one of their join columns never find a match and are dropped early.
+ */
+public class HashJoinOperatorImpl implements HashJoinOperator
+{
+	/**
+	 * After the build side is read, and if partitions were written, the partitions in memory are
+	 * reduced to leave one in this many slots of the memory to buffer the probe tuples of the
+	 * written partitions.
+	 */
+	private static final int PROBE_BUFFER_SHARE = 4;
+
+	/**
+	 * The operator producing the tuples of the build side.
+	 */
+	private final PhysicalPlanOperator buildChild;
+
+	/**
+	 * The operator producing the tuples of the probe side.
+	 */
+	private final PhysicalPlanOperator probeChild;
+
+	/**
+	 * The heap granting the memory and the temp space.
+	 */
+	private final QueryHeap queryHeap;
+
+	/**
+	 * The types of the fields of the build side's tuples.
+	 */
+	private final DataType[] buildColumnTypes;
+
+	/**
+	 * The types of the fields of the probe side's tuples.
+	 */
+	private final DataType[] probeColumnTypes;
+
+	/**
+	 * The join columns in the build side's tuples.
+	 */
+	private final int[] buildJoinColumns;
+
+	/**
+	 * The join columns in the probe side's tuples.
+	 */
+	private final int[] probeJoinColumns;
+
+	/**
+	 * For each output column, the column of the build side's tuple, or -1.
+	 */
+	private final int[] buildOutColumnMap;
+
+	/**
+	 * For each output column, the column of the probe side's tuple, if it is not taken from the build side.
+	 */
+	private final int[] probeOutColumnMap;
+
+	/**
+	 * The estimated number of tuples on the build side.
+	 */
+	private final int estimatedBuildCardinality;
+
+	/**
+	 * The number of partitions, a power of two.
+	 */
+	private final int numPartitions;
+
+	/**
+	 * The shift that moves the partition bits of a hash code to the lowest bits.
+	 */
+	private final int partitionShift;
+
+	/**
+	 * The IDs of the memory grant and of the temp space for the two sides, or -1, if not reserved.
+	 */
+	private int heapId = -1, buildSpillId = -1, probeSpillId = -1;
+
+	/**
+	 * The granted array holding the tuples of the hash table.
+	 */
+	private DataTuple[] table;
+
+	/**
+	 * The number of tuples that fit into the granted memory.
+	 */
+	private int capacity;
+
+	/**
+	 * The number of tuples in the hash table.
+	 */
+	private int numTableTuples;
+
+	/**
+	 * For each bucket the position of its first tuple in the table, or -1.
+	 */
+	private int[] buckets;
+
+	/**
+	 * For each tuple in the table the position of the next tuple in its bucket, or -1.
+	 */
+	private int[] chain;
+
+	/**
+	 * The hash codes of the tuples in the table.
+	 */
+	private int[] hashes;
+
+	/**
+	 * For each partition, the tuples buffered in memory.
+	 */
+	private List<List<DataTuple>> buildPartitions, probePartitions;
+
+	/**
+	 * For each partition, the runs written to temp space.
+	 */
+	private List<List<Integer>> buildRuns, probeRuns;
+
+	/**
+	 * Flags marking the partitions that were written to temp space.
+	 */
+	private boolean[] spilled;
+
+	/**
+	 * The number of tuples buffered in the partitions.
+	 */
+	private int numBuffered;
+
+	/**
+	 * The number of probe tuples that may be buffered before they are written.
+	 */
+	private int probeBufferLimit;
+
+	/**
+	 * Flag indicating that the probe tuples come from the probe child, rather than from temp space.
+	 */
+	private boolean probingInput;
+
+	/**
+	 * The written partition that is joined, or -1.
+	 */
+	private int currentPartition;
+
+	/**
+	 * The build tuples of the current partition that did not fit into memory yet.
+	 */
+	private ExternalTupleSequenceIterator buildRunIterator;
+
+	/**
+	 * The probe tuples of the current partition.
+	 */
+	private ExternalTupleSequenceIterator probeRunIterator;
+
+	/**
+	 * The current probe tuple, or null.
+	 */
+	private DataTuple probeTuple;
+
+	/**
+	 * The hash code of the current probe tuple.
+	 */
+	private int probeHash;
+
+	/**
+	 * The position in the table of the next candidate for the current probe tuple, or -1.
+	 */
+	private int chainPosition;
+
+
+	/**
+	 * Creates a new hybrid hash join.
+	 *
+	 * @param buildChild The child producing the tuples that the hash table is built on.
+	 * @param probeChild The child producing the tuples that probe the hash table.
+	 * @param queryHeap The heap granting the memory and the temp space.
+	 * @param buildColumnTypes The types of the fields of the build side's tuples.
+	 * @param probeColumnTypes The types of the fields of the probe side's tuples.
+	 * @param buildJoinColumns The join columns in the build side's tuples.
+	 * @param probeJoinColumns The join columns in the probe side's tuples.
+	 * @param buildOutColumnMap For each output column, the column of the build side's tuple, or -1.
+	 * @param probeOutColumnMap For each output column, the column of the probe side's tuple.
+	 * @param estimatedBuildCardinality The estimated number of tuples on the build side.
+	 */
+	public HashJoinOperatorImpl(PhysicalPlanOperator buildChild, PhysicalPlanOperator probeChild,
+			QueryHeap queryHeap, DataType[] buildColumnTypes, DataType[] probeColumnTypes,
+			int[] buildJoinColumns, int[] probeJoinColumns, int[] buildOutColumnMap,
+			int[] probeOutColumnMap, int estimatedBuildCardinality)
+	{
+		if (buildJoinColumns.length != probeJoinColumns.length) {
+			throw new IllegalArgumentException("Join column index arrays do not match.");
+		}
+		if (buildOutColumnMap.length != probeOutColumnMap.length) {
+			throw new IllegalArgumentException("Output columns maps are invalid.");
+		}
+
+		this.buildChild = buildChild;
+		this.probeChild = probeChild;
+		this.queryHeap = queryHeap;
+		this.buildColumnTypes = buildColumnTypes;
+		this.probeColumnTypes = probeColumnTypes;
+		this.buildJoinColumns = buildJoinColumns;
+		this.probeJoinColumns = probeJoinColumns;
+		this.buildOutColumnMap = buildOutColumnMap;
+		this.probeOutColumnMap = probeOutColumnMap;
+		this.estimatedBuildCardinality = estimatedBuildCardinality;
+
+		this.numPartitions = Integer.highestOneBit(Math.max(Constants.HASH_JOIN_PARTITIONS, 1));
+		this.partitionShift = 32 - Integer.numberOfTrailingZeros(this.numPartitions);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#open(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		try {
+			this.heapId = this.queryHeap.reserveSortHeap(this.buildColumnTypes, this.estimatedBuildCardinality);
+			this.table = this.queryHeap.getSortArray(this.heapId);
+			this.capacity = this.queryHeap.getMaximalTuplesForInternalSort(this.heapId);
+
+			this.buildPartitions = createPartitionLists();
+			this.probePartitions = createPartitionLists();
+			this.buildRuns = new ArrayList<List<Integer>>(this.numPartitions);
+			this.probeRuns = new ArrayList<List<Integer>>(this.numPartitions);
+			for (int p = 0; p < this.numPartitions; p++) {
+				this.buildRuns.add(new ArrayList<Integer>());
+				this.probeRuns.add(new ArrayList<Integer>());
+			}
+			this.spilled = new boolean[this.numPartitions];
+			this.numBuffered = 0;
+
+			// distribute the build side over the partitions, writing partitions when the memory is full
+			this.buildChild.open(correlatedTuple);
+			DataTuple tuple = null;
+			while ((tuple = this.buildChild.next()) != null) {
+				if (hasNullKey(tuple, this.buildJoinColumns)) {
+					continue;
+				}
+				this.buildPartitions.get(partitionOf(hash(tuple, this.buildJoinColumns))).add(tuple);
+				if (++this.numBuffered >= this.capacity && !growCapacity()) {
+					spillPartition(largestResidentPartition());
+				}
+			}
+			this.buildChild.close();
+
+			if (this.buildSpillId != -1) {
+				// leave memory for the probe tuples of the written partitions
+				int limit = this.capacity - this.capacity / PROBE_BUFFER_SHARE;
+				int victim = largestResidentPartition();
+				while (this.numBuffered > limit && victim != -1) {
+					spillPartition(victim);
+					victim = largestResidentPartition();
+				}
+				spillPartition(-1);
+			}
+
+			// the partitions left in memory make up the hash table, in the array as grown
+			this.table = this.queryHeap.getSortArray(this.heapId);
+			this.numTableTuples = 0;
+			for (int p = 0; p < this.numPartitions; p++) {
+				for (DataTuple t : this.buildPartitions.get(p)) {
+					this.table[this.numTableTuples++] = t;
+				}
+				this.buildPartitions.get(p).clear();
+			}
+			this.numBuffered = 0;
+			buildHashTable();
+
+			this.probeBufferLimit = Math.max(this.capacity - this.numTableTuples, 1);
+			this.probingInput = true;
+			this.currentPartition = -1;
+			this.probeTuple = null;
+			this.probeChild.open(correlatedTuple);
+		}
+		catch (QueryHeapException qhex) {
+			throw new QueryExecutionException("The query heap could not provide the hash join's memory or temp space.", qhex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("Partitions of the hash join could not be written to temp space.", ioex);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#next()
+	 */
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		try {
+			while (true) {
+				// walk the bucket of the current probe tuple
+				while (this.probeTuple != null && this.chainPosition != -1) {
+					int pos = this.chainPosition;
+					this.chainPosition = this.chain[pos];
+					if (this.hashes[pos] == this.probeHash && keysEqual(this.table[pos], this.probeTuple)) {
+						return join(this.table[pos], this.probeTuple);
+					}
+				}
+
+				this.probeTuple = nextProbeTuple();
+				if (this.probeTuple == null) {
+					return null;
+				}
+				this.chainPosition = this.buckets[this.probeHash & (this.buckets.length - 1)];
+			}
+		}
+		catch (QueryHeapException qhex) {
+			throw new QueryExecutionException("The query heap could not provide the hash join's temp space.", qhex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("Partitions of the hash join could not be read from or written to temp space.", ioex);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#close()
+	 */
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		if (this.probingInput) {
+			this.probingInput = false;
+			this.probeChild.close();
+		}
+
+		this.probeTuple = null;
+		this.buildRunIterator = null;
+		this.probeRunIterator = null;
+		this.table = null;
+		this.buildPartitions = null;
+		this.probePartitions = null;
+
+		// releasing the heap returns the buffers of open iterators and deletes the temp files
+		if (this.heapId != -1) {
+			this.queryHeap.releaseSortHeap(this.heapId);
+			this.heapId = -1;
+		}
+		if (this.buildSpillId != -1) {
+			this.queryHeap.releaseSortHeap(this.buildSpillId);
+			this.buildSpillId = -1;
+		}
+		if (this.probeSpillId != -1) {
+			this.queryHeap.releaseSortHeap(this.probeSpillId);
+			this.probeSpillId = -1;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the next probe tuple that falls into a partition in the hash table and sets its hash
+	 * code. Probe tuples of written partitions are buffered and written, and once the probe child
+	 * is exhausted, the written partitions are loaded into the hash table one after the other.
+	 *
+	 * @return The next probe tuple, or null, if all probe tuples were processed.
+	 */
+	private DataTuple nextProbeTuple() throws QueryExecutionException, QueryHeapException, IOException
+	{
+		while (true) {
+			if (this.probingInput) {
+				DataTuple tuple = this.probeChild.next();
+				if (tuple == null) {
+					this.probingInput = false;
+					this.probeChild.close();
+					spillProbeTuples();
+					continue;
+				}
+				if (hasNullKey(tuple, this.probeJoinColumns)) {
+					continue;
+				}
+
+				int hash = hash(tuple, this.probeJoinColumns);
+				int partition = partitionOf(hash);
+				if (this.spilled[partition]) {
+					this.probePartitions.get(partition).add(tuple);
+					if (++this.numBuffered >= this.probeBufferLimit) {
+						spillProbeTuples();
+					}
+					continue;
+				}
+				this.probeHash = hash;
+				return tuple;
+			}
+			else if (this.probeRunIterator != null && this.probeRunIterator.hasNext()) {
+				DataTuple tuple = this.probeRunIterator.next();
+				this.probeHash = hash(tuple, this.probeJoinColumns);
+				return tuple;
+			}
+			else if (!loadNextChunk()) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Loads the next chunk of build tuples of a written partition into the hash table and
+	 * starts reading the partition's probe tuples. The chunk continues with the current
+	 * partition, if its build tuples did not fit into memory at once.
+	 *
+	 * @return True, if a chunk was loaded, false if all written partitions are joined.
+	 */
+	private boolean loadNextChunk() throws QueryHeapException, IOException
+	{
+		while (this.buildRunIterator == null || !this.buildRunIterator.hasNext()) {
+			this.currentPartition++;
+			if (this.currentPartition >= this.numPartitions) {
+				this.buildRunIterator = null;
+				this.probeRunIterator = null;
+				return false;
+			}
+
+			List<Integer> builds = this.buildRuns.get(this.currentPartition);
+			if (this.spilled[this.currentPartition] && !builds.isEmpty() &&
+					!this.probeRuns.get(this.currentPartition).isEmpty())
+			{
+				this.buildRunIterator = this.queryHeap.getSpilledRuns(this.buildSpillId, toArray(builds));
+			}
+		}
+
+		this.numTableTuples = 0;
+		while (this.numTableTuples < this.capacity && this.buildRunIterator.hasNext()) {
+			this.table[this.numTableTuples++] = this.buildRunIterator.next();
+		}
+		buildHashTable();
+
+		this.probeRunIterator = this.queryHeap.getSpilledRuns(this.probeSpillId,
+				toArray(this.probeRuns.get(this.currentPartition)));
+		return true;
+	}
+
+	/**
+	 * Builds the buckets over the tuples in the table.
+	 */
+	private void buildHashTable()
+	{
+		int numBuckets = Integer.highestOneBit(Math.max(this.numTableTuples, 1)) << 1;
+		if (this.buckets == null || this.buckets.length != numBuckets) {
+			this.buckets = new int[numBuckets];
+		}
+		if (this.chain == null) {
+			this.chain = new int[this.capacity];
+			this.hashes = new int[this.capacity];
+		}
+
+		Arrays.fill(this.buckets, -1);
+		int mask = numBuckets - 1;
+		for (int i = 0; i < this.numTableTuples; i++) {
+			int hash = hash(this.table[i], this.buildJoinColumns);
+			this.hashes[i] = hash;
+			this.chain[i] = this.buckets[hash & mask];
+			this.buckets[hash & mask] = i;
+		}
+	}
+
+	/**
+	 * Tries to enlarge the memory for the build tuples to twice its size.
+	 *
+	 * @return True, if the memory grew, false, if the query heap had none to spare.
+	 */
+	private boolean growCapacity() throws QueryHeapException
+	{
+		int grown = this.queryHeap.growSortHeap(this.heapId, this.capacity);
+		if (grown > this.capacity) {
+			this.capacity = grown;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Marks the given partition as written and writes the buffered build tuples of all
+	 * written partitions to temp space.
+	 *
+	 * @param partition The partition to write from now on, or -1, to only write the buffers.
+	 */
+	private void spillPartition(int partition) throws QueryHeapException, IOException
+	{
+		if (partition != -1) {
+			this.spilled[partition] = true;
+		}
+		if (this.buildSpillId == -1) {
+			this.buildSpillId = this.queryHeap.reserveSpillSpace(this.buildColumnTypes);
+		}
+
+		for (int p = 0; p < this.numPartitions; p++) {
+			List<DataTuple> buffered = this.buildPartitions.get(p);
+			if (this.spilled[p] && !buffered.isEmpty()) {
+				this.buildRuns.get(p).add(spill(this.buildSpillId, buffered));
+				this.numBuffered -= buffered.size();
+				buffered.clear();
+			}
+		}
+	}
+
+	/**
+	 * Writes the buffered probe tuples of the written partitions to temp space.
+	 */
+	private void spillProbeTuples() throws QueryHeapException, IOException
+	{
+		if (this.probeSpillId == -1) {
+			this.probeSpillId = this.queryHeap.reserveSpillSpace(this.probeColumnTypes);
+		}
+
+		for (int p = 0; p < this.numPartitions; p++) {
+			List<DataTuple> buffered = this.probePartitions.get(p);
+			if (!buffered.isEmpty()) {
+				this.probeRuns.get(p).add(spill(this.probeSpillId, buffered));
+				buffered.clear();
+			}
+		}
+		this.numBuffered = 0;
+	}
+
+	/**
+	 * Writes the given tuples as a run to temp space.
+	 *
+	 * @return The number of the run.
+	 */
+	private int spill(int spillId, List<DataTuple> tuples) throws QueryHeapException, IOException
+	{
+		return this.queryHeap.spillTupleSequence(spillId, tuples.toArray(new DataTuple[tuples.size()]), tuples.size());
+	}
+
+	/**
+	 * Gets the partition with the most buffered build tuples among those that are not written.
+	 *
+	 * @return The partition, or -1, if no such partition buffers a tuple.
+	 */
+	private int largestResidentPartition()
+	{
+		int largest = -1;
+		int largestSize = 0;
+		for (int p = 0; p < this.numPartitions; p++) {
+			int size = this.buildPartitions.get(p).size();
+			if (!this.spilled[p] && size > largestSize) {
+				largest = p;
+				largestSize = size;
+			}
+		}
+		return largest;
+	}
+
+	/**
+	 * Creates an empty list of tuples for each partition.
+	 */
+	private List<List<DataTuple>> createPartitionLists()
+	{
+		List<List<DataTuple>> lists = new ArrayList<List<DataTuple>>(this.numPartitions);
+		for (int p = 0; p < this.numPartitions; p++) {
+			lists.add(new ArrayList<DataTuple>());
+		}
+		return lists;
+	}
+
+	/**
+	 * Gets the partition of a hash code from its highest bits, which the buckets do not use.
+	 */
+	private int partitionOf(int hash)
+	{
+		return (hash >>> this.partitionShift) & (this.numPartitions - 1);
+	}
+
+	/**
+	 * Computes the hash code of the key of a tuple.
+	 */
+	private static int hash(DataTuple tuple, int[] columns)
+	{
+		int hash = 0;
+		for (int i = 0; i < columns.length; i++) {
+			hash = 31 * hash + tuple.getField(columns[i]).hashCode();
+		}
+
+		// spread the bits, as partitions and buckets take them from opposite ends
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+
+	/**
+	 * Checks if one of the join columns of a tuple is NULL.
+	 */
+	private static boolean hasNullKey(DataTuple tuple, int[] columns)
+	{
+		for (int i = 0; i < columns.length; i++) {
+			if (tuple.getField(columns[i]).isNULL()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if a build tuple and a probe tuple have equal keys.
+	 */
+	private boolean keysEqual(DataTuple buildTuple, DataTuple probeTuple)
+	{
+		for (int i = 0; i < this.buildJoinColumns.length; i++) {
+			if (!buildTuple.getField(this.buildJoinColumns[i]).equals(probeTuple.getField(this.probeJoinColumns[i]))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates the output tuple of a match.
+	 */
+	private DataTuple join(DataTuple buildTuple, DataTuple probeTuple)
+	{
+		DataTuple result = new DataTuple(this.buildOutColumnMap.length);
+		for (int i = 0; i < this.buildOutColumnMap.length; i++) {
+			int buildColumn = this.buildOutColumnMap[i];
+			if (buildColumn != -1) {
+				result.assignDataField(buildTuple.getField(buildColumn), i);
+			}
+			else {
+				result.assignDataField(probeTuple.getField(this.probeOutColumnMap[i]), i);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Converts a list of run numbers into an array.
+	 */
+	private static int[] toArray(List<Integer> runs)
+	{
+		int[] array = new int[runs.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = runs.get(i).intValue();
+		}
+		return array;
+	}
+}
@@ -0,0 +1,52 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+
+
+/**
+ * An exchange that partitions the tuples of its producers among its consumers by the hash
+ * value of some of their columns. All tuples that agree in these columns go to the same
+ * consumer, such that operators that group or join on the columns can run as independent
+ * instances, one per consumer.
+ */
+public class HashRepartitionExchange extends Exchange
+{
+	/**
+	 * The columns whose values decide the consumer.
+	 */
+	private final int[] hashColumns;
+
+
+	/**
+	 * Creates a new repartitioning exchange.
+	 *
+	 * @param producers The subplans producing the tuples, each run by its own thread.
+	 * @param hashColumns The columns whose values decide the consumer of a tuple.
+	 * @param numConsumers The number of consumers, which is the number of partitions.
+	 */
+	public HashRepartitionExchange(PhysicalPlanOperator[] producers, int[] hashColumns, int numConsumers)
+	{
+		super(producers, numConsumers, "Repartition Exchange Producer");
+		this.hashColumns = hashColumns.clone();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.Exchange#route(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	protected int route(DataTuple tuple)
+	{
+		int hash = 0;
+		for (int i = 0; i < this.hashColumns.length; i++) {
+			hash = 31 * hash + tuple.getField(this.hashColumns[i]).hashCode();
+		}
+
+		// the hash tables of the consumers spread their tuples by the same field hash codes, so
+		// scramble them differently and take the high bits, lest all tuples of one consumer
+		// crowd into a fraction of its buckets
+		hash ^= hash >>> 16;
+		hash *= 0x9e3779b9;
+		return (int) (((hash & 0xffffffffL) * getNumConsumers()) >>> 32);
+	}
+}
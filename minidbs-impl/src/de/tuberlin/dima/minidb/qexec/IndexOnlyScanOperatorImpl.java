@@ -0,0 +1,183 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.io.IOException;
+
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexFormatCorruptException;
+import de.tuberlin.dima.minidb.io.index.IndexResultIterator;
+import de.tuberlin.dima.minidb.semantics.Column;
+
+
+/**
+ * An index scan that produces table columns from the entries of a covering index. The columns
+ * are taken from the keys and the included columns of the entries in a key range, so that no
+ * page of the table is read.
+ */
+public class IndexOnlyScanOperatorImpl implements IndexOnlyScanOperator
+{
+	/**
+	 * The index that is scanned.
+	 */
+	private final BTreeIndex index;
+
+	/**
+	 * The lower bound of the key range.
+	 */
+	private final DataField startKey;
+
+	/**
+	 * The upper bound of the key range.
+	 */
+	private final DataField stopKey;
+
+	/**
+	 * Flag indicating whether the lower bound is included.
+	 */
+	private final boolean startKeyIncluded;
+
+	/**
+	 * Flag indicating whether the upper bound is included.
+	 */
+	private final boolean stopKeyIncluded;
+
+	/**
+	 * The positions in the index entries of the produced columns.
+	 */
+	private final int[] entryPositions;
+
+	/**
+	 * The iterator over the entries, or null, if the operator is not open.
+	 */
+	private IndexResultIterator<DataTuple> entries;
+
+
+	/**
+	 * Creates a new index-only scan over the given key range.
+	 *
+	 * @param index The index to scan.
+	 * @param startKey The lower bound of the key range.
+	 * @param startKeyIncluded Flag indicating whether the lower bound is included.
+	 * @param stopKey The upper bound of the key range.
+	 * @param stopKeyIncluded Flag indicating whether the upper bound is included.
+	 * @param producedColumnIndexes The table columns that are produced, where
+	 *                              <code>Column.RID_COLUMN_INDEX</code> marks the RID.
+	 * @throws IllegalArgumentException Thrown, if a column is neither indexed nor included.
+	 */
+	public IndexOnlyScanOperatorImpl(BTreeIndex index, DataField startKey, boolean startKeyIncluded,
+			DataField stopKey, boolean stopKeyIncluded, int[] producedColumnIndexes)
+	{
+		this.index = index;
+		this.startKey = startKey;
+		this.stopKey = stopKey;
+		this.startKeyIncluded = startKeyIncluded;
+		this.stopKeyIncluded = stopKeyIncluded;
+		this.entryPositions = getEntryPositions(index.getIndexSchema(), producedColumnIndexes);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#open(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		try {
+			this.entries = this.index.lookupEntries(this.startKey, this.stopKey,
+					this.startKeyIncluded, this.stopKeyIncluded);
+		}
+		catch (PageFormatException pfex) {
+			throw new QueryExecutionException("Index page was corrupted.", pfex);
+		}
+		catch (IndexFormatCorruptException ifcex) {
+			throw new QueryExecutionException("Index was corrupted.", ifcex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("Index could not be accessed.", ioex);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#next()
+	 */
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (this.entries == null) {
+			return null;
+		}
+
+		try {
+			if (!this.entries.hasNext()) {
+				return null;
+			}
+			DataTuple entry = this.entries.next();
+			DataTuple result = new DataTuple(this.entryPositions.length);
+			for (int i = 0; i < this.entryPositions.length; i++) {
+				result.assignDataField(entry.getField(this.entryPositions[i]), i);
+			}
+			return result;
+		}
+		catch (PageFormatException pfex) {
+			throw new QueryExecutionException("Index page was corrupted.", pfex);
+		}
+		catch (IndexFormatCorruptException ifcex) {
+			throw new QueryExecutionException("Index was corrupted.", ifcex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("Index could not be accessed.", ioex);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#close()
+	 */
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		this.entries = null;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Maps the produced table columns to their positions in the index entries, which hold the
+	 * key fields, the included fields and the RID.
+	 *
+	 * @param schema The schema of the index.
+	 * @param columns The produced table columns.
+	 * @return The positions of the columns in the entries.
+	 */
+	private static int[] getEntryPositions(IndexSchema schema, int[] columns)
+	{
+		int[] keyColumns = schema.getColumnNumbers();
+		int[] includedColumns = schema.getIncludedColumnNumbers();
+		int[] positions = new int[columns.length];
+
+		outer:
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i] == Column.RID_COLUMN_INDEX) {
+				positions[i] = keyColumns.length + includedColumns.length;
+				continue;
+			}
+			for (int k = 0; k < keyColumns.length; k++) {
+				if (keyColumns[k] == columns[i]) {
+					positions[i] = k;
+					continue outer;
+				}
+			}
+			for (int k = 0; k < includedColumns.length; k++) {
+				if (includedColumns[k] == columns[i]) {
+					positions[i] = keyColumns.length + k;
+					continue outer;
+				}
+			}
+			throw new IllegalArgumentException("Column " + columns[i] + " is not covered by the index.");
+		}
+		return positions;
+	}
+}
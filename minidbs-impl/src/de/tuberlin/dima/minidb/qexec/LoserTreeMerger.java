@@ -0,0 +1,175 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeapException;
+
+
+/**
+ * Merges sorted sequences of tuples through a tournament tree of losers. Every inner node of
+ * the tree holds the input that lost the match played at that node, and the root holds the
+ * overall winner, which is the input with the smallest current tuple. After the winner's tuple
+ * is taken, only the matches on the path from its leaf to the root are played again, so every
+ * tuple costs one comparison per level of the tree.
+ * <p>
+ * The tuples are compared through a {@link NormalizedKeySorter}, with the normalized key of
+ * each current tuple computed once. Among equal tuples, the one from the earlier input wins.
+ */
+public class LoserTreeMerger implements ExternalTupleSequenceIterator
+{
+	/**
+	 * The merged sequences.
+	 */
+	private final ExternalTupleSequenceIterator[] inputs;
+
+	/**
+	 * The sorter comparing the tuples.
+	 */
+	private final NormalizedKeySorter sorter;
+
+	/**
+	 * The current tuple of each input, or null, if the input is exhausted.
+	 */
+	private final DataTuple[] heads;
+
+	/**
+	 * The normalized keys of the current tuples.
+	 */
+	private final long[] keys;
+
+	/**
+	 * The tree, where position zero holds the winner and positions 1 to n-1 hold the losers
+	 * of the inner nodes. The leaves, at positions n to 2n-1, are the inputs themselves.
+	 */
+	private final int[] tree;
+
+
+	/**
+	 * Creates a merger over the given sorted sequences and reads their first tuples.
+	 *
+	 * @param inputs The sorted sequences to merge.
+	 * @param sorter The sorter establishing the order of the sequences.
+	 * @throws QueryHeapException Thrown, if the query heap does not support an input any more.
+	 * @throws IOException Thrown, if the first tuple of an input could not be read.
+	 */
+	public LoserTreeMerger(ExternalTupleSequenceIterator[] inputs, NormalizedKeySorter sorter)
+	throws QueryHeapException, IOException
+	{
+		this.inputs = inputs;
+		this.sorter = sorter;
+		this.heads = new DataTuple[inputs.length];
+		this.keys = new long[inputs.length];
+		this.tree = new int[Math.max(inputs.length, 1)];
+
+		for (int i = 0; i < inputs.length; i++) {
+			advance(i);
+		}
+		if (inputs.length > 1) {
+			this.tree[0] = play(1);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator#hasNext()
+	 */
+	@Override
+	public boolean hasNext()
+	{
+		return this.inputs.length > 0 && this.heads[this.tree[0]] != null;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator#next()
+	 */
+	@Override
+	public DataTuple next() throws QueryHeapException, IOException
+	{
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		int winner = this.tree[0];
+		DataTuple tuple = this.heads[winner];
+		advance(winner);
+
+		// replay the matches on the path from the winner's leaf to the root
+		int n = this.inputs.length;
+		for (int node = (winner + n) >>> 1; node > 0; node >>>= 1) {
+			if (beats(this.tree[node], winner)) {
+				int loser = winner;
+				winner = this.tree[node];
+				this.tree[node] = loser;
+			}
+		}
+		this.tree[0] = winner;
+
+		return tuple;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Plays the matches of the subtree below the given node, recording the losers.
+	 *
+	 * @param node The position of the node.
+	 * @return The winner of the subtree.
+	 */
+	private int play(int node)
+	{
+		int n = this.inputs.length;
+		if (node >= n) {
+			return node - n;
+		}
+
+		int left = play(2 * node);
+		int right = play(2 * node + 1);
+		if (beats(right, left)) {
+			this.tree[node] = left;
+			return right;
+		}
+		else {
+			this.tree[node] = right;
+			return left;
+		}
+	}
+
+	/**
+	 * Checks whether the current tuple of one input comes before the current tuple of another.
+	 * An exhausted input loses against every other, and ties go to the earlier input.
+	 *
+	 * @param a The one input.
+	 * @param b The other input.
+	 * @return True, if input <code>a</code> wins against input <code>b</code>.
+	 */
+	private boolean beats(int a, int b)
+	{
+		if (this.heads[a] == null) {
+			return false;
+		}
+		if (this.heads[b] == null) {
+			return true;
+		}
+		int c = this.sorter.compare(this.keys[a], this.heads[a], this.keys[b], this.heads[b]);
+		return c < 0 || (c == 0 && a < b);
+	}
+
+	/**
+	 * Moves an input to its next tuple.
+	 *
+	 * @param input The input.
+	 */
+	private void advance(int input) throws QueryHeapException, IOException
+	{
+		if (this.inputs[input].hasNext()) {
+			this.heads[input] = this.inputs[input].next();
+			this.keys[input] = this.sorter.getNormalizedKey(this.heads[input]);
+		}
+		else {
+			this.heads[input] = null;
+		}
+	}
+}
@@ -0,0 +1,394 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DateField;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.FloatField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.SmallIntField;
+import de.tuberlin.dima.minidb.core.VarcharField;
+
+
+/**
+ * Sorts arrays of tuples after a normalized key. The normalized key of a tuple is a 64 bit
+ * prefix of its sort columns, encoded such that comparing the keys of two tuples as numbers
+ * gives the order of the tuples, with the sort direction of each column already applied.
+ * The keys are kept in an array next to the tuples, and the array is sorted after the keys
+ * only. The tuples whose keys are equal are sorted after their columns afterwards.
+ * <p>
+ * The key holds the sort columns in their order, as long as they fit into the 64 bits.
+ * Integer, floating point and date columns are encoded completely, character columns with
+ * their first characters only. If all sort columns are encoded completely, tuples with equal
+ * keys are equal in all sort columns and are never compared themselves.
+ */
+public class NormalizedKeySorter implements Comparator<DataTuple>
+{
+	/**
+	 * The length of the ranges that are sorted through insertion sort.
+	 */
+	private static final int INSERTION_SORT_THRESHOLD = 12;
+
+	/**
+	 * The number of characters of a character column that are encoded into the key.
+	 */
+	private static final int ENCODED_CHARACTERS = 8;
+
+	/**
+	 * The indices of the columns after which to sort.
+	 */
+	private final int[] sortColumns;
+
+	/**
+	 * The sort direction of each sort column, true for ascending.
+	 */
+	private final boolean[] columnsAscending;
+
+	/**
+	 * The number of leading sort columns that contribute to the key.
+	 */
+	private final int numKeyColumns;
+
+	/**
+	 * The number of bits each contributing column takes in the key. The last column may be
+	 * cut off at the end of the key.
+	 */
+	private final int[] keyBits;
+
+	/**
+	 * Flag indicating that equal keys imply equal sort columns.
+	 */
+	private final boolean fullyNormalized;
+
+	/**
+	 * The keys of the last sorted tuples, reused among the sorts.
+	 */
+	private long[] keys;
+
+
+	/**
+	 * Creates a sorter for tuples of the given schema.
+	 *
+	 * @param columnTypes The types of the columns of the sorted tuples.
+	 * @param sortColumns The indices of the columns after which to sort.
+	 * @param columnsAscending The sort direction of each sort column, true for ascending.
+	 */
+	public NormalizedKeySorter(DataType[] columnTypes, int[] sortColumns, boolean[] columnsAscending)
+	{
+		if (sortColumns.length != columnsAscending.length) {
+			throw new IllegalArgumentException("Sort parameter arrays do not match in length.");
+		}
+
+		this.sortColumns = sortColumns;
+		this.columnsAscending = columnsAscending;
+		this.keyBits = new int[sortColumns.length];
+
+		// take columns into the key until it is full or a column cannot be encoded completely
+		int usedBits = 0;
+		int numColumns = 0;
+		boolean complete = true;
+		while (numColumns < sortColumns.length && usedBits < 64 && complete) {
+			int bits = getEncodedBits(columnTypes[sortColumns[numColumns]]);
+			if (bits == 0) {
+				break;
+			}
+			complete = bits > 0 && usedBits + bits <= 64;
+			this.keyBits[numColumns++] = Math.abs(bits);
+			usedBits += Math.abs(bits);
+		}
+
+		this.numKeyColumns = numColumns;
+		this.fullyNormalized = complete && numColumns == sortColumns.length;
+		this.keys = new long[0];
+	}
+
+	/**
+	 * Sorts the first tuples of the given array.
+	 *
+	 * @param tuples The array with the tuples to sort.
+	 * @param numTuples The number of tuples to sort, starting at the beginning of the array.
+	 */
+	public void sort(DataTuple[] tuples, int numTuples)
+	{
+		if (this.keys.length < numTuples) {
+			this.keys = new long[numTuples];
+		}
+		long[] k = this.keys;
+		for (int i = 0; i < numTuples; i++) {
+			k[i] = getNormalizedKey(tuples[i]);
+		}
+		sort(tuples, k, 0, numTuples);
+	}
+
+	/**
+	 * Sorts a range of the given array, whose normalized keys are already computed. The keys
+	 * are moved along with the tuples. Unlike {@link #sort(DataTuple[], int)}, this method
+	 * keeps no state in the sorter, so several threads may sort disjoint ranges at once.
+	 *
+	 * @param tuples The array with the tuples to sort.
+	 * @param keys The normalized keys of the tuples, at the positions of the tuples.
+	 * @param start The first position of the range.
+	 * @param end The position after the last position of the range.
+	 */
+	public void sort(DataTuple[] tuples, long[] keys, int start, int end)
+	{
+		quickSort(keys, tuples, start, end - 1);
+
+		// tuples with equal keys may still differ in their columns
+		if (!this.fullyNormalized) {
+			int first = start;
+			for (int i = start + 1; i <= end; i++) {
+				if (i == end || keys[i] != keys[first]) {
+					if (i - first > 1) {
+						Arrays.sort(tuples, first, i, this);
+					}
+					first = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the normalized key of a tuple. The keys of two tuples compare like the tuples,
+	 * unless they are equal, in which case the tuples must be compared through
+	 * {@link #compare(long, DataTuple, long, DataTuple)}.
+	 *
+	 * @param tuple The tuple.
+	 * @return The normalized key of the tuple.
+	 */
+	public long getNormalizedKey(DataTuple tuple)
+	{
+		long key = 0;
+		int shift = 0;
+		for (int i = 0; i < this.numKeyColumns; i++) {
+			int bits = this.keyBits[i];
+			long value = encode(tuple.getField(this.sortColumns[i]));
+			if (!this.columnsAscending[i]) {
+				value = ~value & (-1L << (64 - bits));
+			}
+			key |= value >>> shift;
+			shift += bits;
+		}
+		// flip the sign bit, such that the signed comparison orders the keys as unsigned numbers
+		return key ^ Long.MIN_VALUE;
+	}
+
+	/**
+	 * Compares two tuples, together with their normalized keys.
+	 *
+	 * @param key1 The normalized key of the first tuple.
+	 * @param tuple1 The first tuple.
+	 * @param key2 The normalized key of the second tuple.
+	 * @param tuple2 The second tuple.
+	 * @return A negative number, zero, or a positive number, if the first tuple comes before,
+	 *         is equal to, or comes after the second tuple in the sort order.
+	 */
+	public int compare(long key1, DataTuple tuple1, long key2, DataTuple tuple2)
+	{
+		if (key1 != key2) {
+			return key1 < key2 ? -1 : 1;
+		}
+		return this.fullyNormalized ? 0 : compare(tuple1, tuple2);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public int compare(DataTuple t1, DataTuple t2)
+	{
+		for (int i = 0; i < this.sortColumns.length; i++) {
+			int c = t1.getField(this.sortColumns[i]).compareTo(t2.getField(this.sortColumns[i]));
+			if (c != 0) {
+				return this.columnsAscending[i] ? c : -c;
+			}
+		}
+		return 0;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Sorts the tuples in the given range after their keys only, moving the keys along.
+	 * The range is partitioned three ways, such that tuples with the pivot key are left out
+	 * of the further partitioning.
+	 *
+	 * @param k The keys of the tuples.
+	 * @param tuples The tuples.
+	 * @param lo The first position of the range.
+	 * @param hi The last position of the range, inclusive.
+	 */
+	private static void quickSort(long[] k, DataTuple[] tuples, int lo, int hi)
+	{
+		while (hi - lo >= INSERTION_SORT_THRESHOLD) {
+			// the median of the first, middle and last key becomes the pivot
+			long a = k[lo];
+			long b = k[(lo + hi) >>> 1];
+			long c = k[hi];
+			long pivot = a < b ? (b < c ? b : (a < c ? c : a)) : (a < c ? a : (b < c ? c : b));
+
+			int lt = lo;
+			int gt = hi;
+			int i = lo;
+			while (i <= gt) {
+				if (k[i] < pivot) {
+					swap(k, tuples, lt++, i++);
+				}
+				else if (k[i] > pivot) {
+					swap(k, tuples, i, gt--);
+				}
+				else {
+					i++;
+				}
+			}
+
+			// recurse into the smaller part, continue with the larger one
+			if (lt - lo < hi - gt) {
+				quickSort(k, tuples, lo, lt - 1);
+				lo = gt + 1;
+			}
+			else {
+				quickSort(k, tuples, gt + 1, hi);
+				hi = lt - 1;
+			}
+		}
+
+		for (int i = lo + 1; i <= hi; i++) {
+			long key = k[i];
+			DataTuple tuple = tuples[i];
+			int j = i - 1;
+			while (j >= lo && k[j] > key) {
+				k[j + 1] = k[j];
+				tuples[j + 1] = tuples[j];
+				j--;
+			}
+			k[j + 1] = key;
+			tuples[j + 1] = tuple;
+		}
+	}
+
+	/**
+	 * Swaps two tuples together with their keys.
+	 */
+	private static void swap(long[] k, DataTuple[] tuples, int i, int j)
+	{
+		long key = k[i];
+		k[i] = k[j];
+		k[j] = key;
+
+		DataTuple tuple = tuples[i];
+		tuples[i] = tuples[j];
+		tuples[j] = tuple;
+	}
+
+	/**
+	 * Gets the number of bits a column of the given type takes in the key.
+	 *
+	 * @param type The type of the column.
+	 * @return The number of bits, negative if the encoding of the column is only a prefix
+	 *         of its values, or zero, if the type cannot be encoded.
+	 */
+	private static int getEncodedBits(DataType type)
+	{
+		switch (type.getBasicType()) {
+		case SMALL_INT:
+			return 16;
+		case INT:
+		case FLOAT:
+		case DATE:
+			return 32;
+		case BIG_INT:
+		case DOUBLE:
+			return 64;
+		case CHAR:
+		case VAR_CHAR:
+			return -8 * ENCODED_CHARACTERS;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Encodes a field as an unsigned number that is aligned to the highest bit. Unsigned
+	 * comparison of the encoded fields gives the order of the fields, NULL coming first.
+	 *
+	 * @param field The field to encode.
+	 * @return The encoded field.
+	 */
+	private static long encode(DataField field)
+	{
+		switch (field.getBasicType()) {
+		case SMALL_INT:
+			// NULL is the smallest value, so the numbers order it first by themselves
+			return ((long) (((SmallIntField) field).getValue() ^ Short.MIN_VALUE) & 0xffffL) << 48;
+		case INT:
+			return ((long) (((IntField) field).getValue() ^ Integer.MIN_VALUE) & 0xffffffffL) << 32;
+		case BIG_INT:
+			return ((BigIntField) field).getValue() ^ Long.MIN_VALUE;
+		case FLOAT: {
+			if (field.isNULL()) {
+				return 0;
+			}
+			// adding zero turns negative zero into positive zero, which compares equal to it
+			int raw = Float.floatToIntBits(((FloatField) field).getValue() + 0.0f);
+			raw = raw < 0 ? ~raw : raw ^ Integer.MIN_VALUE;
+			return ((long) raw & 0xffffffffL) << 32;
+		}
+		case DOUBLE: {
+			if (field.isNULL()) {
+				return 0;
+			}
+			long raw = Double.doubleToLongBits(((DoubleField) field).getValue() + 0.0);
+			return raw < 0 ? ~raw : raw ^ Long.MIN_VALUE;
+		}
+		case DATE: {
+			if (field.isNULL()) {
+				return 0;
+			}
+			// the date compares like the number (year << 16 | month << 8 | day)
+			DateField date = (DateField) field;
+			int raw = ((short) date.getYear() << 16) | (date.getMonth() << 8) | date.getDay();
+			return ((long) (raw ^ Integer.MIN_VALUE) & 0xffffffffL) << 32;
+		}
+		case CHAR:
+			return encodeCharacters(((CharField) field).getValue());
+		case VAR_CHAR:
+			return encodeCharacters(((VarcharField) field).getValue());
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Encodes the first characters of a string with one byte each, padded with zeros. A
+	 * character that does not fit into a byte is encoded as the largest byte and ends the
+	 * encoding, such that strings differing only after it have equal encodings. NULL is
+	 * encoded as zero, as is the empty string.
+	 *
+	 * @param value The string, or null, for NULL.
+	 * @return The encoded characters.
+	 */
+	private static long encodeCharacters(String value)
+	{
+		long encoded = 0;
+		if (value != null) {
+			int len = Math.min(value.length(), ENCODED_CHARACTERS);
+			for (int i = 0; i < len; i++) {
+				char c = value.charAt(i);
+				if (c >= 0xff) {
+					encoded |= 0xffL << (56 - 8 * i);
+					break;
+				}
+				encoded |= ((long) c) << (56 - 8 * i);
+			}
+		}
+		return encoded;
+	}
+}
@@ -0,0 +1,187 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeapException;
+
+
+/**
+ * Merges groups of sorted runs concurrently, as the lower levels of a merge whose top level
+ * runs in the consuming thread. Each group is merged by a task of a fork-join pool through a
+ * {@link LoserTreeMerger}, which passes the merged tuples in batches through a bounded
+ * {@link TupleExchangeQueue}. The merged sequence of each group is sorted itself, and the
+ * consumer merges these sequences. Reading and decoding the runs, and most of the comparisons,
+ * happen in the tasks.
+ * <p>
+ * Each queue holds only a few small batches, such that the tuples in flight stay few compared
+ * to the tuples of the runs held in memory anyway.
+ */
+public class ParallelGroupMerger
+{
+	/**
+	 * The number of tuples that a task passes to the consumer at once.
+	 */
+	private static final int BATCH_TUPLES = 256;
+
+	/**
+	 * The number of batches a queue holds before its task blocks.
+	 */
+	private static final int QUEUE_BATCHES = 4;
+
+	/**
+	 * The queues through which the tasks pass the merged tuples.
+	 */
+	private final TupleExchangeQueue[] queues;
+
+	/**
+	 * The tasks merging the groups.
+	 */
+	private final ForkJoinTask<?>[] tasks;
+
+
+	/**
+	 * Starts merging the given groups of runs in the pool.
+	 *
+	 * @param groups The groups of sorted runs, each merged by its own task.
+	 * @param sorter The sorter establishing the order of the runs.
+	 * @param pool The pool running the tasks.
+	 */
+	public ParallelGroupMerger(ExternalTupleSequenceIterator[][] groups, NormalizedKeySorter sorter, ForkJoinPool pool)
+	{
+		this.queues = new TupleExchangeQueue[groups.length];
+		this.tasks = new ForkJoinTask<?>[groups.length];
+		for (int i = 0; i < groups.length; i++) {
+			this.queues[i] = new TupleExchangeQueue(QUEUE_BATCHES, 1);
+			this.tasks[i] = pool.submit(new GroupMerge(groups[i], sorter, this.queues[i]));
+		}
+	}
+
+	/**
+	 * Gets the merged sequences of the groups, in the order of the groups.
+	 *
+	 * @return The merged sequences.
+	 */
+	public ExternalTupleSequenceIterator[] getMergedGroups()
+	{
+		ExternalTupleSequenceIterator[] merged = new ExternalTupleSequenceIterator[this.queues.length];
+		for (int i = 0; i < merged.length; i++) {
+			merged[i] = new ExchangeIterator(this.queues[i]);
+		}
+		return merged;
+	}
+
+	/**
+	 * Cancels the merges and waits until every task has stopped, after which the runs are no
+	 * longer read and may be released.
+	 */
+	public void cancel()
+	{
+		for (int i = 0; i < this.queues.length; i++) {
+			this.queues[i].cancel();
+		}
+		for (int i = 0; i < this.tasks.length; i++) {
+			this.tasks[i].quietlyJoin();
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The task merging one group of runs into its queue.
+	 */
+	private static final class GroupMerge implements Runnable
+	{
+		private final ExternalTupleSequenceIterator[] runs;
+
+		private final NormalizedKeySorter sorter;
+
+		private final TupleExchangeQueue out;
+
+		GroupMerge(ExternalTupleSequenceIterator[] runs, NormalizedKeySorter sorter, TupleExchangeQueue out)
+		{
+			this.runs = runs;
+			this.sorter = sorter;
+			this.out = out;
+		}
+
+		@Override
+		public void run()
+		{
+			try {
+				LoserTreeMerger merge = new LoserTreeMerger(this.runs, this.sorter);
+				DataTuple[] batch = new DataTuple[BATCH_TUPLES];
+				int num = 0;
+				while (merge.hasNext() && !this.out.isCancelled()) {
+					batch[num++] = merge.next();
+					if (num == BATCH_TUPLES) {
+						if (!this.out.put(batch)) {
+							return;
+						}
+						batch = new DataTuple[BATCH_TUPLES];
+						num = 0;
+					}
+				}
+				if (num > 0 && !this.out.isCancelled()) {
+					DataTuple[] last = new DataTuple[num];
+					System.arraycopy(batch, 0, last, 0, num);
+					this.out.put(last);
+				}
+			}
+			catch (Throwable t) {
+				this.out.fail(t);
+			}
+			finally {
+				this.out.producerFinished();
+			}
+		}
+	}
+
+	/**
+	 * Iterates over the tuples that a task passes through its queue.
+	 */
+	private static final class ExchangeIterator implements ExternalTupleSequenceIterator
+	{
+		private final TupleExchangeQueue in;
+
+		private DataTuple[] batch;
+
+		private int position;
+
+		private boolean exhausted;
+
+		ExchangeIterator(TupleExchangeQueue in)
+		{
+			this.in = in;
+		}
+
+		@Override
+		public boolean hasNext() throws QueryHeapException
+		{
+			while (!this.exhausted && (this.batch == null || this.position >= this.batch.length)) {
+				try {
+					this.batch = this.in.take();
+				}
+				catch (QueryExecutionException qeex) {
+					throw new QueryHeapException("A group of sorted runs could not be merged.", qeex);
+				}
+				this.position = 0;
+				this.exhausted = this.batch == null;
+			}
+			return !this.exhausted;
+		}
+
+		@Override
+		public DataTuple next() throws QueryHeapException
+		{
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return this.batch[this.position++];
+		}
+	}
+}
@@ -0,0 +1,294 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+
+
+/**
+ * Sorts arrays of tuples with several threads of a fork-join pool. The normalized keys of the
+ * tuples are computed concurrently over chunks of the array. Then the key range is split into
+ * as many partitions as there are threads, through splitters taken from a sample of the keys.
+ * The array is rearranged in place such that each partition occupies a consecutive range, and
+ * the ranges are sorted concurrently, after which the whole array is sorted.
+ * <p>
+ * All tuples with the same normalized key fall into the same partition, so tuples that are
+ * only told apart by their columns are still sorted by one thread. Apart from the keys, no
+ * memory is needed beyond the array itself.
+ */
+public class ParallelKeyRangeSorter
+{
+	/**
+	 * The number of sampled keys per partition, from which the splitters are taken.
+	 */
+	private static final int SAMPLES_PER_PARTITION = 64;
+
+	/**
+	 * The smallest number of tuples per partition for which sorting in parallel pays off.
+	 */
+	private static final int MIN_PARTITION_TUPLES = 8192;
+
+	/**
+	 * The sorter establishing the order.
+	 */
+	private final NormalizedKeySorter sorter;
+
+	/**
+	 * The pool running the tasks.
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * The number of partitions of the key range.
+	 */
+	private final int numPartitions;
+
+	/**
+	 * The random number generator used to sample the keys.
+	 */
+	private final Random random = new Random(0x5ca1ab1eL);
+
+	/**
+	 * The keys of the last sorted tuples, reused among the sorts.
+	 */
+	private long[] keys;
+
+
+	/**
+	 * Creates a parallel sorter that sorts through the given pool.
+	 *
+	 * @param sorter The sorter establishing the order.
+	 * @param pool The pool running the tasks.
+	 * @param numPartitions The number of partitions of the key range, usually the parallelism
+	 *                      of the pool.
+	 */
+	public ParallelKeyRangeSorter(NormalizedKeySorter sorter, ForkJoinPool pool, int numPartitions)
+	{
+		this.sorter = sorter;
+		this.pool = pool;
+		this.numPartitions = numPartitions;
+		this.keys = new long[0];
+	}
+
+	/**
+	 * Sorts the first tuples of the given array. Arrays too small to be split are sorted by
+	 * the calling thread.
+	 *
+	 * @param tuples The array with the tuples to sort.
+	 * @param numTuples The number of tuples to sort, starting at the beginning of the array.
+	 */
+	public void sort(DataTuple[] tuples, int numTuples)
+	{
+		int partitions = Math.min(this.numPartitions, numTuples / MIN_PARTITION_TUPLES);
+		if (partitions < 2) {
+			this.sorter.sort(tuples, numTuples);
+			return;
+		}
+
+		if (this.keys.length < numTuples) {
+			this.keys = new long[numTuples];
+		}
+		final long[] k = this.keys;
+
+		// compute the keys of equally sized chunks concurrently
+		List<RecursiveAction> tasks = new ArrayList<RecursiveAction>(partitions);
+		for (int i = 0; i < partitions; i++) {
+			tasks.add(new KeyComputation(tuples, k, (int) ((long) numTuples * i / partitions),
+					(int) ((long) numTuples * (i + 1) / partitions)));
+		}
+		runAll(tasks);
+
+		// split the key range and sort its partitions concurrently
+		long[] splitters = chooseSplitters(k, numTuples, partitions);
+		int[] bounds = partition(tuples, k, numTuples, splitters);
+		tasks.clear();
+		for (int i = 0; i < bounds.length - 1; i++) {
+			if (bounds[i + 1] - bounds[i] > 1) {
+				tasks.add(new RangeSort(tuples, k, bounds[i], bounds[i + 1]));
+			}
+		}
+		runAll(tasks);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Runs the given tasks in the pool and waits for all of them.
+	 *
+	 * @param tasks The tasks.
+	 */
+	private void runAll(final List<RecursiveAction> tasks)
+	{
+		this.pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute()
+			{
+				invokeAll(tasks);
+			}
+		});
+	}
+
+	/**
+	 * Chooses the keys that separate the partitions, from a sample of the keys. Splitters that
+	 * occur more than once are taken once only, so heavily repeated keys lead to fewer partitions.
+	 *
+	 * @param k The keys.
+	 * @param numTuples The number of keys.
+	 * @param partitions The desired number of partitions.
+	 * @return The splitters in ascending order. A key belongs to the partition given by the
+	 *         number of splitters that are smaller than or equal to it.
+	 */
+	private long[] chooseSplitters(long[] k, int numTuples, int partitions)
+	{
+		long[] sample = new long[partitions * SAMPLES_PER_PARTITION];
+		for (int i = 0; i < sample.length; i++) {
+			sample[i] = k[this.random.nextInt(numTuples)];
+		}
+		Arrays.sort(sample);
+
+		long[] splitters = new long[partitions - 1];
+		int num = 0;
+		for (int i = 1; i < partitions; i++) {
+			long splitter = sample[i * SAMPLES_PER_PARTITION];
+			if (num == 0 || splitters[num - 1] != splitter) {
+				splitters[num++] = splitter;
+			}
+		}
+		return Arrays.copyOf(splitters, num);
+	}
+
+	/**
+	 * Rearranges the tuples in place such that the tuples of each partition occupy a consecutive
+	 * range, in the order of the partitions. The tuples are counted per partition first, and then
+	 * every tuple is swapped into the range of its partition.
+	 *
+	 * @param tuples The tuples.
+	 * @param k The keys of the tuples.
+	 * @param numTuples The number of tuples.
+	 * @param splitters The splitters separating the partitions.
+	 * @return The bounds of the ranges, where partition <code>i</code> spans from position
+	 *         <code>bounds[i]</code> to the position before <code>bounds[i + 1]</code>.
+	 */
+	private static int[] partition(DataTuple[] tuples, long[] k, int numTuples, long[] splitters)
+	{
+		int numParts = splitters.length + 1;
+		int[] bounds = new int[numParts + 1];
+		for (int i = 0; i < numTuples; i++) {
+			bounds[getPartition(k[i], splitters) + 1]++;
+		}
+		for (int i = 1; i <= numParts; i++) {
+			bounds[i] += bounds[i - 1];
+		}
+
+		int[] next = Arrays.copyOf(bounds, numParts);
+		for (int p = 0; p < numParts; p++) {
+			while (next[p] < bounds[p + 1]) {
+				int i = next[p];
+				int target = getPartition(k[i], splitters);
+				if (target == p) {
+					next[p]++;
+				}
+				else {
+					// swap the tuple into the next free place of its partition
+					int j = next[target]++;
+					long key = k[i];
+					k[i] = k[j];
+					k[j] = key;
+					DataTuple tuple = tuples[i];
+					tuples[i] = tuples[j];
+					tuples[j] = tuple;
+				}
+			}
+		}
+		return bounds;
+	}
+
+	/**
+	 * Gets the partition of a key, which is the number of splitters smaller than or equal to it.
+	 */
+	private static int getPartition(long key, long[] splitters)
+	{
+		int lo = 0;
+		int hi = splitters.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (splitters[mid] <= key) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Computes the normalized keys of a range of tuples.
+	 */
+	private final class KeyComputation extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final DataTuple[] tuples;
+
+		private final long[] keys;
+
+		private final int start;
+
+		private final int end;
+
+		KeyComputation(DataTuple[] tuples, long[] keys, int start, int end)
+		{
+			this.tuples = tuples;
+			this.keys = keys;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute()
+		{
+			for (int i = this.start; i < this.end; i++) {
+				this.keys[i] = ParallelKeyRangeSorter.this.sorter.getNormalizedKey(this.tuples[i]);
+			}
+		}
+	}
+
+	/**
+	 * Sorts the range of one partition.
+	 */
+	private final class RangeSort extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final DataTuple[] tuples;
+
+		private final long[] keys;
+
+		private final int start;
+
+		private final int end;
+
+		RangeSort(DataTuple[] tuples, long[] keys, int start, int end)
+		{
+			this.tuples = tuples;
+			this.keys = keys;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute()
+		{
+			ParallelKeyRangeSorter.this.sorter.sort(this.tuples, this.keys, this.start, this.end);
+		}
+	}
+}
@@ -0,0 +1,338 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TableZoneMap;
+import de.tuberlin.dima.minidb.io.tables.TupleIterator;
+
+
+/**
+ * A table scan that uses several threads. The pages of the table are divided into morsels of
+ * {@link Constants#PARALLEL_SCAN_MORSEL_PAGES} consecutive pages. Each worker repeatedly claims
+ * the next morsel from a shared counter, evaluates the predicates on its pages and passes the
+ * qualifying tuples, one batch per page, through a bounded {@link TupleExchangeQueue} to the
+ * consuming thread. Because workers claim morsels dynamically, a slow worker does not hold up
+ * the others.
+ * <p>
+ * The tuples are produced in no particular order.
+ */
+public class ParallelTableScanOperatorImpl implements TableScanOperator
+{
+	/**
+	 * The buffer pool from which the pages are taken.
+	 */
+	private final BufferPoolManager bufferPool;
+
+	/**
+	 * The manager of the scanned table.
+	 */
+	private final TableResourceManager tableManager;
+
+	/**
+	 * The resource id of the scanned table.
+	 */
+	private final int resourceId;
+
+	/**
+	 * The conjunctively connected predicates.
+	 */
+	private final LowLevelPredicate[] predicates;
+
+	/**
+	 * The number of pages to prefetch ahead of a worker's current page.
+	 */
+	private final int prefetchWindowLength;
+
+	/**
+	 * The number of worker threads.
+	 */
+	private final int degreeOfParallelism;
+
+	/**
+	 * The bitmap of the table columns read from the pages.
+	 */
+	private final long columnBitmap;
+
+	/**
+	 * The number of table columns read from the pages.
+	 */
+	private final int numCols;
+
+	/**
+	 * For each produced column, its position in the tuples read from the pages.
+	 */
+	private final int[] outputMap;
+
+	/**
+	 * The queue through which the workers pass their tuples.
+	 */
+	private TupleExchangeQueue exchange;
+
+	/**
+	 * The threads running the workers.
+	 */
+	private ExecutorService workers;
+
+	/**
+	 * The batch that tuples are currently returned from.
+	 */
+	private DataTuple[] currentBatch;
+
+	/**
+	 * The position of the next tuple in the current batch.
+	 */
+	private int currentPos;
+
+
+	/**
+	 * Creates a new parallel table scan.
+	 *
+	 * @param bufferPool The buffer pool used to get the pages that are scanned.
+	 * @param tableManager The table manager used to get the page numbers of the pages.
+	 * @param resourceId The resource id of the table resource.
+	 * @param producedColumnIndexes The table columns in the order in which they are produced.
+	 * @param predicate The conjunctively connected predicates. May be null.
+	 * @param prefetchWindowLength The number of pages each worker prefetches in advance.
+	 * @param degreeOfParallelism The number of worker threads.
+	 */
+	public ParallelTableScanOperatorImpl(BufferPoolManager bufferPool, TableResourceManager tableManager,
+			int resourceId, int[] producedColumnIndexes, LowLevelPredicate[] predicate,
+			int prefetchWindowLength, int degreeOfParallelism)
+	{
+		if (degreeOfParallelism < 1) {
+			throw new IllegalArgumentException("The degree of parallelism must be at least one.");
+		}
+
+		this.bufferPool = bufferPool;
+		this.tableManager = tableManager;
+		this.resourceId = resourceId;
+		this.predicates = predicate == null ? new LowLevelPredicate[0] : predicate;
+		this.prefetchWindowLength = prefetchWindowLength;
+		this.degreeOfParallelism = degreeOfParallelism;
+
+		// the pages return the requested columns compacted in column order
+		long bitmap = 0;
+		for (int i = 0; i < producedColumnIndexes.length; i++) {
+			bitmap |= (0x1L << producedColumnIndexes[i]);
+		}
+		this.outputMap = new int[producedColumnIndexes.length];
+		for (int i = 0; i < producedColumnIndexes.length; i++) {
+			this.outputMap[i] = Long.bitCount(bitmap & ((0x1L << producedColumnIndexes[i]) - 1));
+		}
+		this.columnBitmap = bitmap;
+		this.numCols = Long.bitCount(bitmap);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#open(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		this.currentBatch = null;
+		this.currentPos = 0;
+
+		int firstPage = this.tableManager.getFirstDataPageNumber();
+		int lastPage = this.tableManager.getLastDataPageNumber();
+		int numMorsels = lastPage < firstPage ? 0 :
+			(lastPage - firstPage) / Constants.PARALLEL_SCAN_MORSEL_PAGES + 1;
+		int numWorkers = Math.max(1, Math.min(this.degreeOfParallelism, numMorsels));
+
+		this.exchange = new TupleExchangeQueue(Constants.EXCHANGE_QUEUE_CAPACITY, numWorkers);
+		this.workers = Executors.newFixedThreadPool(numWorkers, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "Parallel Table Scan Worker");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		AtomicInteger nextMorsel = new AtomicInteger(firstPage);
+		TableZoneMap zoneMap = this.tableManager.getZoneMap();
+		for (int i = 0; i < numWorkers; i++) {
+			this.workers.execute(new ScanWorker(nextMorsel, lastPage, zoneMap));
+		}
+		this.workers.shutdown();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#next()
+	 */
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (this.exchange == null) {
+			return null;
+		}
+
+		while (this.currentBatch == null || this.currentPos >= this.currentBatch.length) {
+			this.currentBatch = this.exchange.take();
+			this.currentPos = 0;
+			if (this.currentBatch == null) {
+				return null;
+			}
+		}
+		return this.currentBatch[this.currentPos++];
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#close()
+	 */
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		if (this.exchange != null) {
+			this.exchange.cancel();
+			this.exchange = null;
+		}
+		if (this.workers != null) {
+			try {
+				// workers unpin their pages when they stop, wait for that
+				this.workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException iex) {
+				Thread.currentThread().interrupt();
+			}
+			this.workers = null;
+		}
+		this.currentBatch = null;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * A worker that claims morsels of pages and scans them.
+	 */
+	private final class ScanWorker implements Runnable
+	{
+		/**
+		 * The shared counter holding the first page of the next unclaimed morsel.
+		 */
+		private final AtomicInteger nextMorsel;
+
+		/**
+		 * The last page of the table.
+		 */
+		private final int lastPage;
+
+		/**
+		 * The zone map used to skip pages.
+		 */
+		private final TableZoneMap zoneMap;
+
+		/**
+		 * The exchange to which the worker passes its tuples.
+		 */
+		private final TupleExchangeQueue out;
+
+		ScanWorker(AtomicInteger nextMorsel, int lastPage, TableZoneMap zoneMap)
+		{
+			this.nextMorsel = nextMorsel;
+			this.lastPage = lastPage;
+			this.zoneMap = zoneMap;
+			this.out = ParallelTableScanOperatorImpl.this.exchange;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run()
+		{
+			try {
+				while (!this.out.isCancelled()) {
+					int start = this.nextMorsel.getAndAdd(Constants.PARALLEL_SCAN_MORSEL_PAGES);
+					if (start > this.lastPage) {
+						break;
+					}
+					int end = Math.min(start + Constants.PARALLEL_SCAN_MORSEL_PAGES - 1, this.lastPage);
+					if (!scanMorsel(start, end)) {
+						break;
+					}
+				}
+			}
+			catch (Throwable t) {
+				this.out.fail(t);
+			}
+			finally {
+				this.out.producerFinished();
+			}
+		}
+
+		/**
+		 * Scans the pages of a morsel.
+		 *
+		 * @param start The first page of the morsel.
+		 * @param end The last page of the morsel.
+		 * @return False, if the exchange was cancelled, true otherwise.
+		 * @throws Exception Thrown, if a page could not be accessed.
+		 */
+		private boolean scanMorsel(int start, int end) throws Exception
+		{
+			BufferPoolManager pool = ParallelTableScanOperatorImpl.this.bufferPool;
+			int resId = ParallelTableScanOperatorImpl.this.resourceId;
+			LowLevelPredicate[] preds = ParallelTableScanOperatorImpl.this.predicates;
+			int window = ParallelTableScanOperatorImpl.this.prefetchWindowLength;
+
+			if (window > 0) {
+				pool.prefetchPages(resId, start, Math.min(start + window - 1, end));
+			}
+
+			for (int pageNo = start; pageNo <= end; pageNo++) {
+				if (window > 0 && pageNo + window <= end) {
+					pool.prefetchPage(resId, pageNo + window);
+				}
+				if (!this.zoneMap.mayContainMatches(pageNo, preds)) {
+					continue;
+				}
+
+				ArrayList<DataTuple> tuples = new ArrayList<DataTuple>();
+				TablePage page = (TablePage) pool.getPageAndPin(resId, pageNo);
+				try {
+					TupleIterator iter = page.getIterator(preds, ParallelTableScanOperatorImpl.this.numCols,
+							ParallelTableScanOperatorImpl.this.columnBitmap);
+					while (iter.hasNext()) {
+						tuples.add(project(iter.next()));
+					}
+				}
+				finally {
+					pool.unpinPage(resId, pageNo);
+				}
+
+				if (!tuples.isEmpty() && !this.out.put(tuples.toArray(new DataTuple[tuples.size()]))) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Creates the produced tuple from a tuple read from a page.
+	 *
+	 * @param tuple The tuple with the compacted table columns.
+	 * @return The produced tuple.
+	 */
+	private DataTuple project(DataTuple tuple)
+	{
+		DataTuple result = new DataTuple(this.outputMap.length);
+		for (int i = 0; i < this.outputMap.length; i++) {
+			result.assignDataField(tuple.getField(this.outputMap[i]), i);
+		}
+		return result;
+	}
+}
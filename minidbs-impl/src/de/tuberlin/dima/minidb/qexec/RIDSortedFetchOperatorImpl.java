@@ -0,0 +1,301 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.PageTupleAccessException;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+
+
+/**
+ * A FETCH that reads the table in page order rather than in the order of its RIDs. When opened,
+ * the operator drains all RIDs from its child (typically an index range lookup) and sorts them.
+ * Because the page index occupies the more significant bits of a RID, the sorted RIDs are grouped
+ * by page, with the pages in ascending order. The operator then touches every page exactly once
+ * and prefetches the next pages that hold RIDs ahead of the page it is reading.
+ * <p>
+ * The tuples are produced in RID order, so any order the child had is lost.
+ */
+public class RIDSortedFetchOperatorImpl implements FetchOperator
+{
+	/**
+	 * The initial capacity of the RID array.
+	 */
+	private static final int INITIAL_CAPACITY = 256;
+
+	/**
+	 * The child producing the RIDs.
+	 */
+	private final PhysicalPlanOperator child;
+
+	/**
+	 * The buffer pool from which the pages are taken.
+	 */
+	private final BufferPoolManager bufferPool;
+
+	/**
+	 * The resource id of the table from which the tuples are fetched.
+	 */
+	private final int tableResourceId;
+
+	/**
+	 * For each output position, the position in the fetched tuple.
+	 */
+	private final int[] outputColumnMap;
+
+	/**
+	 * The bitmap of the table columns to fetch.
+	 */
+	private final long columnBitmap;
+
+	/**
+	 * The number of table columns to fetch.
+	 */
+	private final int numFetchedCols;
+
+	/**
+	 * The number of distinct pages to prefetch in advance.
+	 */
+	private final int prefetchWindowLength;
+
+	/**
+	 * The sorted RIDs, as their 64 bit identifiers.
+	 */
+	private long[] rids;
+
+	/**
+	 * The number of valid RIDs in the array.
+	 */
+	private int numRids;
+
+	/**
+	 * The position of the next RID to fetch.
+	 */
+	private int position;
+
+	/**
+	 * The position of the first RID whose page has not been prefetched.
+	 */
+	private int prefetchPosition;
+
+	/**
+	 * The page that is currently pinned, or -1, if none.
+	 */
+	private int pinnedPageNumber;
+
+	/**
+	 * The currently pinned page.
+	 */
+	private TablePage pinnedPage;
+
+
+	/**
+	 * Creates a new RID sorted fetch operator.
+	 *
+	 * @param child The child producing tuples that contain only the RID.
+	 * @param bufferPool The buffer pool used to take the pages from.
+	 * @param tableResourceId The resource id of the table that the tuples are fetched from.
+	 * @param outputColumnMap For each output position the table column to fetch.
+	 * @param prefetchWindowLength The number of distinct pages to prefetch in advance.
+	 */
+	public RIDSortedFetchOperatorImpl(PhysicalPlanOperator child, BufferPoolManager bufferPool,
+			int tableResourceId, int[] outputColumnMap, int prefetchWindowLength)
+	{
+		this.child = child;
+		this.bufferPool = bufferPool;
+		this.tableResourceId = tableResourceId;
+		this.prefetchWindowLength = prefetchWindowLength;
+		this.pinnedPageNumber = -1;
+
+		// the page returns the requested columns compacted in column order, so
+		// translate the table column indexes to positions within the fetched tuple
+		long bitmap = 0;
+		for (int i = 0; i < outputColumnMap.length; i++) {
+			bitmap |= (0x1L << outputColumnMap[i]);
+		}
+
+		this.outputColumnMap = new int[outputColumnMap.length];
+		for (int i = 0; i < outputColumnMap.length; i++) {
+			this.outputColumnMap[i] = Long.bitCount(bitmap & ((0x1L << outputColumnMap[i]) - 1));
+		}
+
+		this.columnBitmap = bitmap;
+		this.numFetchedCols = Long.bitCount(bitmap);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#open(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		this.pinnedPageNumber = -1;
+		this.pinnedPage = null;
+		this.position = 0;
+		this.prefetchPosition = 0;
+
+		// collect all RIDs before the first page is touched
+		this.child.open(correlatedTuple);
+		if (this.rids == null) {
+			this.rids = new long[INITIAL_CAPACITY];
+		}
+		this.numRids = 0;
+
+		DataTuple childTuple;
+		while ((childTuple = this.child.next()) != null) {
+			if (this.numRids == this.rids.length) {
+				this.rids = Arrays.copyOf(this.rids, this.rids.length * 2);
+			}
+			this.rids[this.numRids++] = ((RID) childTuple.getField(0)).getID();
+		}
+		Arrays.sort(this.rids, 0, this.numRids);
+
+		try {
+			prefetch(this.prefetchWindowLength);
+		}
+		catch (BufferPoolException bpex) {
+			throw new QueryExecutionException("Could not prefetch the pages of the table.", bpex);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#next()
+	 */
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		while (this.position < this.numRids) {
+			long rid = this.rids[this.position++];
+			int pageNumber = (int) (rid >>> 32);
+			DataTuple fetched;
+
+			try {
+				TablePage page = getPage(pageNumber);
+				fetched = page.getDataTuple((int) rid, this.columnBitmap, this.numFetchedCols);
+			}
+			catch (PageTupleAccessException ptaex) {
+				throw new QueryExecutionException("Could not fetch tuple " + new RID(rid) + ".", ptaex);
+			}
+			catch (BufferPoolException bpex) {
+				throw new QueryExecutionException("Could not access the page of tuple " + new RID(rid) + ".", bpex);
+			}
+			catch (IOException ioex) {
+				throw new QueryExecutionException("Could not access the page of tuple " + new RID(rid) + ".", ioex);
+			}
+
+			if (fetched == null) {
+				// tuple was deleted since the RID was produced
+				continue;
+			}
+
+			DataTuple result = new DataTuple(this.outputColumnMap.length);
+			for (int i = 0; i < this.outputColumnMap.length; i++) {
+				result.assignDataField(fetched.getField(this.outputColumnMap[i]), i);
+			}
+			return result;
+		}
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#close()
+	 */
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		if (this.pinnedPageNumber != -1) {
+			this.bufferPool.unpinPage(this.tableResourceId, this.pinnedPageNumber);
+			this.pinnedPageNumber = -1;
+			this.pinnedPage = null;
+		}
+		this.numRids = 0;
+		this.child.close();
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the page with the given number, keeping it pinned until the next page is requested.
+	 * Each time the operator moves to a new page, one more page is prefetched, so that the
+	 * window of prefetched pages keeps its length.
+	 *
+	 * @param pageNumber The number of the page.
+	 * @return The page.
+	 * @throws BufferPoolException Thrown, if the buffer pool could not provide the page.
+	 * @throws IOException Thrown, if the page could not be loaded.
+	 */
+	private TablePage getPage(int pageNumber) throws BufferPoolException, IOException
+	{
+		if (pageNumber != this.pinnedPageNumber) {
+			if (this.pinnedPageNumber == -1) {
+				this.pinnedPage = (TablePage) this.bufferPool.getPageAndPin(this.tableResourceId, pageNumber);
+			}
+			else {
+				this.pinnedPage = (TablePage) this.bufferPool.unpinAndGetPageAndPin(
+						this.tableResourceId, this.pinnedPageNumber, pageNumber);
+				prefetch(1);
+			}
+			this.pinnedPageNumber = pageNumber;
+		}
+		return this.pinnedPage;
+	}
+
+	/**
+	 * Prefetches the next pages that hold RIDs and have not been prefetched yet. Runs of
+	 * consecutive page numbers are requested together.
+	 *
+	 * @param numPages The maximal number of distinct pages to prefetch.
+	 * @throws BufferPoolException Thrown, if the buffer pool refused the prefetch requests.
+	 */
+	private void prefetch(int numPages) throws BufferPoolException
+	{
+		int runStart = -1;
+		int runEnd = -1;
+
+		while (numPages > 0 && this.prefetchPosition < this.numRids) {
+			int page = (int) (this.rids[this.prefetchPosition] >>> 32);
+
+			// skip the other RIDs on the same page
+			do {
+				this.prefetchPosition++;
+			}
+			while (this.prefetchPosition < this.numRids && (int) (this.rids[this.prefetchPosition] >>> 32) == page);
+			numPages--;
+
+			if (runStart != -1 && page == runEnd + 1) {
+				runEnd = page;
+			}
+			else {
+				prefetchRun(runStart, runEnd);
+				runStart = runEnd = page;
+			}
+		}
+		prefetchRun(runStart, runEnd);
+	}
+
+	/**
+	 * Issues the prefetch request for a run of consecutive pages.
+	 *
+	 * @param first The first page of the run, or -1, if the run is empty.
+	 * @param last The last page of the run.
+	 * @throws BufferPoolException Thrown, if the buffer pool refused the prefetch request.
+	 */
+	private void prefetchRun(int first, int last) throws BufferPoolException
+	{
+		if (first == -1) {
+			return;
+		}
+		if (first == last) {
+			this.bufferPool.prefetchPage(this.tableResourceId, first);
+		}
+		else {
+			this.bufferPool.prefetchPages(this.tableResourceId, first, last);
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.io.IOException;
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.PageTupleAccessException;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TableZoneMap;
+import de.tuberlin.dima.minidb.semantics.Column;
+
+
+/**
+ * A table scan for late materialization. It reads the tuples of a table together with their
+ * RIDs and produces the RID plus a (typically small) set of columns, such as the ones needed
+ * by predicates or join keys further up. The remaining columns are fetched by a deferred
+ * FETCH once filters and joins have reduced the number of tuples.
+ * <p>
+ * The records are accessed by their position on the page, which is the tuple index of the RID,
+ * and only the produced columns are read from them. The predicates are evaluated by the page.
+ * <p>
+ * Pages that the table's zone map rules out for the predicates are not fetched at all. For
+ * that reason, the plans also use this scan for serial scans with predicates that produce no
+ * RID, in place of the regular table scan, which reads every page.
+ */
+public class RIDTableScanOperatorImpl implements TableScanOperator
+{
+	/**
+	 * The buffer pool from which the pages are taken.
+	 */
+	private final BufferPoolManager bufferPool;
+
+	/**
+	 * The manager of the scanned table.
+	 */
+	private final TableResourceManager tableManager;
+
+	/**
+	 * The resource id of the scanned table.
+	 */
+	private final int resourceId;
+
+	/**
+	 * The conjunctively connected predicates.
+	 */
+	private final LowLevelPredicate[] predicates;
+
+	/**
+	 * The number of pages to prefetch ahead of the current page.
+	 */
+	private final int prefetchWindowLength;
+
+	/**
+	 * The bitmap of the table columns read from the records.
+	 */
+	private final long columnBitmap;
+
+	/**
+	 * The number of table columns read from the records.
+	 */
+	private final int numCols;
+
+	/**
+	 * For each produced column, its position in the tuples read from the records, or
+	 * <code>Column.RID_COLUMN_INDEX</code> for the RID.
+	 */
+	private final int[] outputMap;
+
+	/**
+	 * The page that is currently pinned, or -1, if none.
+	 */
+	private int currentPageNumber;
+
+	/**
+	 * The last page of the scan.
+	 */
+	private int lastPageNumber;
+
+	/**
+	 * The current page.
+	 */
+	private TablePage currentPage;
+
+	/**
+	 * The position of the next record to read from the current page.
+	 */
+	private int currentPosition;
+
+	/**
+	 * The number of records on the current page.
+	 */
+	private int numRecords;
+
+	/**
+	 * The zone map used to skip pages.
+	 */
+	private TableZoneMap zoneMap;
+
+
+	/**
+	 * Creates a new RID producing table scan.
+	 *
+	 * @param bufferPool The buffer pool used to get the pages that are scanned.
+	 * @param tableManager The table manager used to get the page numbers of the pages.
+	 * @param resourceId The resource id of the table resource.
+	 * @param producedColumnIndexes The produced columns, where <code>Column.RID_COLUMN_INDEX</code>
+	 *                              marks the RID.
+	 * @param predicate The conjunctively connected predicates. May be null.
+	 * @param prefetchWindowLength The number of pages to prefetch in advance.
+	 */
+	public RIDTableScanOperatorImpl(BufferPoolManager bufferPool, TableResourceManager tableManager, int resourceId,
+			int[] producedColumnIndexes, LowLevelPredicate[] predicate, int prefetchWindowLength)
+	{
+		this.bufferPool = bufferPool;
+		this.tableManager = tableManager;
+		this.resourceId = resourceId;
+		this.predicates = predicate == null ? new LowLevelPredicate[0] : predicate;
+		this.prefetchWindowLength = prefetchWindowLength;
+		this.currentPageNumber = -1;
+
+		// the pages return the requested columns compacted in column order
+		long bitmap = 0;
+		for (int i = 0; i < producedColumnIndexes.length; i++) {
+			if (producedColumnIndexes[i] != Column.RID_COLUMN_INDEX) {
+				bitmap |= (0x1L << producedColumnIndexes[i]);
+			}
+		}
+		this.outputMap = new int[producedColumnIndexes.length];
+		for (int i = 0; i < producedColumnIndexes.length; i++) {
+			int col = producedColumnIndexes[i];
+			this.outputMap[i] = col == Column.RID_COLUMN_INDEX ? col : Long.bitCount(bitmap & ((0x1L << col) - 1));
+		}
+		this.columnBitmap = bitmap;
+		this.numCols = Long.bitCount(bitmap);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#open(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		this.zoneMap = this.tableManager.getZoneMap();
+		this.lastPageNumber = this.tableManager.getLastDataPageNumber();
+		this.currentPageNumber = -1;
+		this.currentPage = null;
+
+		int first = this.zoneMap.getNextCandidatePage(this.tableManager.getFirstDataPageNumber(),
+				this.lastPageNumber, this.predicates);
+		if (first > this.lastPageNumber) {
+			return;
+		}
+
+		try {
+			if (this.prefetchWindowLength > 0) {
+				this.bufferPool.prefetchPages(this.resourceId, first,
+						Math.min(first + this.prefetchWindowLength - 1, this.lastPageNumber));
+			}
+			pinPage(first);
+		}
+		catch (BufferPoolException bpex) {
+			throw new QueryExecutionException("Could not access the first page of the table.", bpex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("Could not access the first page of the table.", ioex);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#next()
+	 */
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (this.currentPageNumber == -1) {
+			return null;
+		}
+
+		try {
+			while (true) {
+				while (this.currentPosition < this.numRecords) {
+					int position = this.currentPosition++;
+
+					// null for deleted records and records that do not pass the predicates
+					DataTuple tuple = this.predicates.length == 0 ?
+							this.currentPage.getDataTuple(position, this.columnBitmap, this.numCols) :
+							this.currentPage.getDataTuple(this.predicates, position, this.columnBitmap, this.numCols);
+					if (tuple != null) {
+						return project(tuple, new RID(this.currentPageNumber, position));
+					}
+				}
+
+				// current page is exhausted, find the next one that may hold matches
+				int nextPage = this.zoneMap.getNextCandidatePage(this.currentPageNumber + 1,
+						this.lastPageNumber, this.predicates);
+				this.bufferPool.unpinPage(this.resourceId, this.currentPageNumber);
+				this.currentPageNumber = -1;
+				this.currentPage = null;
+
+				if (nextPage > this.lastPageNumber) {
+					return null;
+				}
+
+				int prefetch = nextPage + this.prefetchWindowLength - 1;
+				if (this.prefetchWindowLength > 0 && prefetch <= this.lastPageNumber) {
+					this.bufferPool.prefetchPage(this.resourceId, prefetch);
+				}
+				pinPage(nextPage);
+			}
+		}
+		catch (PageTupleAccessException ptaex) {
+			throw new QueryExecutionException("Could not read the tuples of page " + this.currentPageNumber + ".", ptaex);
+		}
+		catch (BufferPoolException bpex) {
+			throw new QueryExecutionException("Could not access the next page of the table.", bpex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("Could not access the next page of the table.", ioex);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#close()
+	 */
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		if (this.currentPageNumber != -1) {
+			this.bufferPool.unpinPage(this.resourceId, this.currentPageNumber);
+			this.currentPageNumber = -1;
+		}
+		this.currentPage = null;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Pins the given page and starts reading its records from the first one.
+	 *
+	 * @param pageNumber The number of the page.
+	 * @throws BufferPoolException Thrown, if the buffer pool could not provide the page.
+	 * @throws IOException Thrown, if the page could not be loaded.
+	 */
+	private void pinPage(int pageNumber) throws BufferPoolException, IOException
+	{
+		this.currentPage = (TablePage) this.bufferPool.getPageAndPin(this.resourceId, pageNumber);
+		this.currentPageNumber = pageNumber;
+		this.currentPosition = 0;
+		this.numRecords = this.currentPage.getNumRecordsOnPage();
+	}
+
+	/**
+	 * Creates the produced tuple from a tuple read from a record and its RID.
+	 *
+	 * @param tuple The tuple with the compacted table columns.
+	 * @param rid The RID of the tuple.
+	 * @return The produced tuple.
+	 */
+	private DataTuple project(DataTuple tuple, RID rid)
+	{
+		DataTuple result = new DataTuple(this.outputMap.length);
+		for (int i = 0; i < this.outputMap.length; i++) {
+			int pos = this.outputMap[i];
+			result.assignDataField(pos == Column.RID_COLUMN_INDEX ? rid : tuple.getField(pos), i);
+		}
+		return result;
+	}
+}
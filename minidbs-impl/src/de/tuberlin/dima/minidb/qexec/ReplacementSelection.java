@@ -0,0 +1,243 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.util.NoSuchElementException;
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator;
+
+
+/**
+ * Forms sorted runs through replacement selection. The tuples in memory are kept in a heap,
+ * ordered first by the run they belong to and then by the sort order. The smallest tuple is
+ * written and replaced by the next tuple of the input, which belongs to the current run if it
+ * does not come before the written tuple, and to the next run otherwise. On random input, the
+ * runs become about twice as long as the memory holds tuples, and a sorted input becomes a
+ * single run.
+ * <p>
+ * The runs are handed out as sequences that are written while they are consumed. Once the
+ * input is exhausted, the tuples remaining in memory are sorted and form the last run.
+ */
+public class ReplacementSelection
+{
+	/**
+	 * The input producing the tuples to sort.
+	 */
+	private final PhysicalPlanOperator input;
+
+	/**
+	 * The sorter establishing the order.
+	 */
+	private final NormalizedKeySorter sorter;
+
+	/**
+	 * The tuples in memory, arranged as a heap.
+	 */
+	private final DataTuple[] tuples;
+
+	/**
+	 * The normalized keys of the tuples in memory.
+	 */
+	private final long[] keys;
+
+	/**
+	 * The run that each tuple in memory belongs to.
+	 */
+	private final int[] runs;
+
+	/**
+	 * The number of tuples in the heap.
+	 */
+	private int size;
+
+	/**
+	 * The run that is currently written.
+	 */
+	private int currentRun;
+
+	/**
+	 * Flag indicating that the input is exhausted.
+	 */
+	private boolean inputExhausted;
+
+	/**
+	 * The error that the input raised, if any.
+	 */
+	private QueryExecutionException inputError;
+
+
+	/**
+	 * Creates a run generator over the tuples in the given array, which is then used as the heap.
+	 *
+	 * @param input The input producing the further tuples to sort.
+	 * @param sorter The sorter establishing the order.
+	 * @param tuples The array with the first tuples of the input.
+	 * @param numTuples The number of tuples in the array, which is the capacity of the heap.
+	 */
+	public ReplacementSelection(PhysicalPlanOperator input, NormalizedKeySorter sorter,
+			DataTuple[] tuples, int numTuples)
+	{
+		this.input = input;
+		this.sorter = sorter;
+		this.tuples = tuples;
+		this.keys = new long[numTuples];
+		this.runs = new int[numTuples];
+		this.size = numTuples;
+
+		for (int i = 0; i < numTuples; i++) {
+			this.keys[i] = sorter.getNormalizedKey(tuples[i]);
+		}
+		for (int i = numTuples / 2 - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+	}
+
+	/**
+	 * Checks whether the input may produce further tuples, in which case the next run is
+	 * to be written.
+	 *
+	 * @return True, if the input is not yet exhausted.
+	 * @throws QueryExecutionException Thrown, if the input raised an error.
+	 */
+	public boolean hasMoreInput() throws QueryExecutionException
+	{
+		if (this.inputError != null) {
+			throw this.inputError;
+		}
+		return !this.inputExhausted;
+	}
+
+	/**
+	 * Gets the sequence of the tuples of the next run. The run ends when the smallest tuple in
+	 * memory belongs to the following run, or when the input is exhausted.
+	 *
+	 * @return The tuples of the next run.
+	 */
+	public ExternalTupleSequenceIterator nextRun()
+	{
+		if (this.size > 0) {
+			this.currentRun = this.runs[0];
+		}
+
+		return new ExternalTupleSequenceIterator() {
+			@Override
+			public boolean hasNext()
+			{
+				return !ReplacementSelection.this.inputExhausted && ReplacementSelection.this.size > 0 &&
+						ReplacementSelection.this.runs[0] == ReplacementSelection.this.currentRun;
+			}
+
+			@Override
+			public DataTuple next()
+			{
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return replaceSmallest();
+			}
+		};
+	}
+
+	/**
+	 * Sorts the tuples remaining in memory after the input is exhausted. They stay at the
+	 * beginning of the array.
+	 *
+	 * @return The number of remaining tuples.
+	 */
+	public int sortRemaining()
+	{
+		this.sorter.sort(this.tuples, this.size);
+		return this.size;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Takes the smallest tuple from the heap and replaces it with the next tuple of the input.
+	 *
+	 * @return The smallest tuple.
+	 */
+	private DataTuple replaceSmallest()
+	{
+		DataTuple smallest = this.tuples[0];
+		long smallestKey = this.keys[0];
+
+		DataTuple next = null;
+		try {
+			next = this.input.next();
+		}
+		catch (QueryExecutionException qeex) {
+			this.inputError = qeex;
+		}
+
+		if (next != null) {
+			long key = this.sorter.getNormalizedKey(next);
+			boolean fitsRun = this.sorter.compare(key, next, smallestKey, smallest) >= 0;
+			this.tuples[0] = next;
+			this.keys[0] = key;
+			this.runs[0] = fitsRun ? this.currentRun : this.currentRun + 1;
+		}
+		else {
+			this.inputExhausted = true;
+			this.size--;
+			move(this.size, 0);
+			this.tuples[this.size] = null;
+		}
+		siftDown(0);
+		return smallest;
+	}
+
+	/**
+	 * Moves the tuple at the given position down the heap to its place.
+	 *
+	 * @param pos The position of the tuple.
+	 */
+	private void siftDown(int pos)
+	{
+		int half = this.size / 2;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			if (child + 1 < this.size && comesBefore(child + 1, child)) {
+				child++;
+			}
+			if (!comesBefore(child, pos)) {
+				return;
+			}
+			swap(pos, child);
+			pos = child;
+		}
+	}
+
+	/**
+	 * Checks whether the tuple at one position of the heap comes before the tuple at another.
+	 */
+	private boolean comesBefore(int a, int b)
+	{
+		if (this.runs[a] != this.runs[b]) {
+			return this.runs[a] < this.runs[b];
+		}
+		return this.sorter.compare(this.keys[a], this.tuples[a], this.keys[b], this.tuples[b]) < 0;
+	}
+
+	private void swap(int a, int b)
+	{
+		DataTuple tuple = this.tuples[a];
+		this.tuples[a] = this.tuples[b];
+		this.tuples[b] = tuple;
+
+		long key = this.keys[a];
+		this.keys[a] = this.keys[b];
+		this.keys[b] = key;
+
+		int run = this.runs[a];
+		this.runs[a] = this.runs[b];
+		this.runs[b] = run;
+	}
+
+	private void move(int from, int to)
+	{
+		this.tuples[to] = this.tuples[from];
+		this.keys[to] = this.keys[from];
+		this.runs[to] = this.runs[from];
+	}
+}
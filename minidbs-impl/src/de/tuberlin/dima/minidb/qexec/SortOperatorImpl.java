@@ -0,0 +1,416 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeapException;
+
+
+/**
+ * An external merge sort. The operator fills the sort array of its portion of the query heap
+ * with the tuples of the child. If the child produces no more tuples than fit into the sort
+ * array, they are sorted in memory and nothing is written at all. Otherwise, the operator forms
+ * sorted runs and writes them to temp space, either by sorting the full array and writing it,
+ * or through {@link ReplacementSelection}, which forms longer runs, as set by
+ * {@link Constants#SORT_REPLACEMENT_SELECTION}. The last run stays in memory and is merged
+ * with the written runs.
+ * <p>
+ * The runs are sorted through a {@link NormalizedKeySorter}, which compares the tuples after
+ * a binary prefix of their sort columns. They are merged through a {@link LoserTreeMerger}.
+ * If more runs were written than the query heap can read at once, the first runs are merged
+ * into longer runs beforehand, such that exactly as many runs remain as are read at once.
+ * <p>
+ * With a degree of parallelism above one, the operator uses a fork-join pool of that many
+ * threads. Every run is sorted through a {@link ParallelKeyRangeSorter}, which splits the key
+ * range into partitions that are sorted concurrently, so runs are formed by sorting the full
+ * array rather than through replacement selection. The final merge of many runs is split into
+ * groups of runs that a {@link ParallelGroupMerger} merges concurrently. The operator uses
+ * the same portion of the query heap in either case.
+ */
+public class SortOperatorImpl implements SortOperator
+{
+	/**
+	 * The operator producing the tuples to sort.
+	 */
+	private final PhysicalPlanOperator child;
+
+	/**
+	 * The heap providing the sort array and the temp space.
+	 */
+	private final QueryHeap queryHeap;
+
+	/**
+	 * The types of the columns of the sorted tuples.
+	 */
+	private final DataType[] columnTypes;
+
+	/**
+	 * The estimated number of tuples to sort.
+	 */
+	private final int estimatedCardinality;
+
+	/**
+	 * The sorter for the runs, which also compares the tuples during the merge.
+	 */
+	private final NormalizedKeySorter sorter;
+
+	/**
+	 * The number of threads that sort and merge.
+	 */
+	private final int degreeOfParallelism;
+
+	/**
+	 * The pool of threads, or null, if the operator is not open or sorts in a single thread.
+	 */
+	private ForkJoinPool pool;
+
+	/**
+	 * The parallel sorter for the runs, or null, if the operator sorts in a single thread.
+	 */
+	private ParallelKeyRangeSorter rangeSorter;
+
+	/**
+	 * The concurrent merges of groups of runs, or null, if the runs are merged by one thread.
+	 */
+	private ParallelGroupMerger groupMerge;
+
+	/**
+	 * The ID of the reserved portion of the query heap, or -1, if none is reserved.
+	 */
+	private int heapId = -1;
+
+	/**
+	 * The sort array, holding the last run, or null, if the operator is not open.
+	 */
+	private DataTuple[] sortArray;
+
+	/**
+	 * The number of tuples in the last run.
+	 */
+	private int numTuples;
+
+	/**
+	 * The position of the next tuple to produce from the last run, if no run was written.
+	 */
+	private int position;
+
+	/**
+	 * The merge of the runs, or null, if no run was written.
+	 */
+	private LoserTreeMerger merge;
+
+
+	/**
+	 * Creates a new sort operator.
+	 *
+	 * @param child The child producing the tuples to sort.
+	 * @param queryHeap The heap providing the sort array and the temp space.
+	 * @param columnTypes The types of the columns of the sorted tuples.
+	 * @param estimatedCardinality The estimated number of tuples to sort.
+	 * @param sortColumns The indices of the columns after which to sort.
+	 * @param columnsAscending The sort direction of each sort column, true for ascending.
+	 */
+	public SortOperatorImpl(PhysicalPlanOperator child, QueryHeap queryHeap, DataType[] columnTypes,
+			int estimatedCardinality, int[] sortColumns, boolean[] columnsAscending)
+	{
+		this(child, queryHeap, columnTypes, estimatedCardinality, sortColumns, columnsAscending, 1);
+	}
+
+	/**
+	 * Creates a new sort operator that sorts and merges with the given number of threads.
+	 *
+	 * @param child The child producing the tuples to sort.
+	 * @param queryHeap The heap providing the sort array and the temp space.
+	 * @param columnTypes The types of the columns of the sorted tuples.
+	 * @param estimatedCardinality The estimated number of tuples to sort.
+	 * @param sortColumns The indices of the columns after which to sort.
+	 * @param columnsAscending The sort direction of each sort column, true for ascending.
+	 * @param degreeOfParallelism The number of threads that sort and merge.
+	 */
+	public SortOperatorImpl(PhysicalPlanOperator child, QueryHeap queryHeap, DataType[] columnTypes,
+			int estimatedCardinality, int[] sortColumns, boolean[] columnsAscending, int degreeOfParallelism)
+	{
+		if (degreeOfParallelism < 1) {
+			throw new IllegalArgumentException("The degree of parallelism must be at least one.");
+		}
+
+		this.child = child;
+		this.queryHeap = queryHeap;
+		this.columnTypes = columnTypes;
+		this.estimatedCardinality = estimatedCardinality;
+		this.sorter = new NormalizedKeySorter(columnTypes, sortColumns, columnsAscending);
+		this.degreeOfParallelism = degreeOfParallelism;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#open(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		try {
+			this.heapId = this.queryHeap.reserveSortHeap(this.columnTypes, this.estimatedCardinality);
+			this.sortArray = this.queryHeap.getSortArray(this.heapId);
+			int capacity = this.queryHeap.getMaximalTuplesForInternalSort(this.heapId);
+			if (this.degreeOfParallelism > 1) {
+				this.pool = new ForkJoinPool(this.degreeOfParallelism);
+				this.rangeSorter = new ParallelKeyRangeSorter(this.sorter, this.pool, this.degreeOfParallelism);
+			}
+
+			// form the runs, writing all but the last one
+			int num = 0;
+			this.child.open(correlatedTuple);
+			try {
+				DataTuple tuple = null;
+				while (num < capacity && (tuple = this.child.next()) != null) {
+					this.sortArray[num++] = tuple;
+				}
+				if (num == capacity) {
+					num = Constants.SORT_REPLACEMENT_SELECTION && this.rangeSorter == null ?
+							formRunsByReplacementSelection(capacity) : formRunsBySorting(capacity);
+				}
+				else {
+					sortRun(num);
+				}
+			}
+			finally {
+				this.child.close();
+			}
+			this.numTuples = num;
+			this.position = 0;
+
+			if (this.queryHeap.getNumberOfExternalSortedLists(this.heapId) > 0) {
+				mergeWrittenRuns();
+
+				ExternalTupleSequenceIterator[] lists = this.queryHeap.getExternalSortedLists(this.heapId);
+				if (this.pool != null) {
+					lists = mergeGroupsConcurrently(lists);
+				}
+				ExternalTupleSequenceIterator[] runs = new ExternalTupleSequenceIterator[lists.length + 1];
+				System.arraycopy(lists, 0, runs, 0, lists.length);
+				runs[lists.length] = new SortArrayIterator(this.sortArray, num);
+				this.merge = new LoserTreeMerger(runs, this.sorter);
+			}
+		}
+		catch (QueryHeapException qhex) {
+			throw new QueryExecutionException("The query heap could not provide the sort's memory or temp space.", qhex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("Sorted runs could not be written to or read from temp space.", ioex);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#next()
+	 */
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (this.sortArray == null) {
+			return null;
+		}
+		if (this.merge == null) {
+			return this.position < this.numTuples ? this.sortArray[this.position++] : null;
+		}
+
+		try {
+			return this.merge.hasNext() ? this.merge.next() : null;
+		}
+		catch (QueryHeapException qhex) {
+			throw new QueryExecutionException("The query heap could not provide the sorted runs.", qhex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("Sorted runs could not be read from temp space.", ioex);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#close()
+	 */
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		this.sortArray = null;
+		this.merge = null;
+		this.numTuples = 0;
+
+		// the merging threads must stop reading the runs before the heap is released
+		if (this.groupMerge != null) {
+			this.groupMerge.cancel();
+			this.groupMerge = null;
+		}
+		if (this.pool != null) {
+			this.pool.shutdown();
+			this.pool = null;
+			this.rangeSorter = null;
+		}
+
+		// releasing the heap deletes the temp file
+		if (this.heapId != -1) {
+			this.queryHeap.releaseSortHeap(this.heapId);
+			this.heapId = -1;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Forms runs as long as the sort array, sorting the full array and writing it, until the child
+	 * is exhausted. Between two runs, the sort array adapts to the load on the query heap.
+	 *
+	 * @param capacity The number of tuples in the full sort array.
+	 * @return The number of tuples of the last run, which is sorted and stays in the array.
+	 */
+	private int formRunsBySorting(int capacity) throws QueryExecutionException, QueryHeapException, IOException
+	{
+		int num = capacity;
+		DataTuple tuple = null;
+		while ((tuple = this.child.next()) != null) {
+			if (num == capacity) {
+				sortRun(num);
+				this.queryHeap.writeTupleSequencetoTemp(this.heapId, this.sortArray, num);
+				capacity = adaptSortArray(capacity);
+				num = 0;
+			}
+			this.sortArray[num++] = tuple;
+		}
+		sortRun(num);
+		return num;
+	}
+
+	/**
+	 * Adapts the sort array to the load on the query heap, while it holds no tuples. While other
+	 * requests wait for heap space, the array shrinks to its minimal size, otherwise it tries to
+	 * grow to twice its size, such that the following runs get longer.
+	 *
+	 * @param capacity The current number of tuples in the full sort array.
+	 * @return The number of tuples in the full sort array after the adaption.
+	 */
+	private int adaptSortArray(int capacity) throws QueryHeapException
+	{
+		int adapted = this.queryHeap.hasWaitingRequests() ?
+				this.queryHeap.shrinkSortHeap(this.heapId, 0) :
+				this.queryHeap.growSortHeap(this.heapId, capacity);
+		if (adapted != capacity) {
+			this.sortArray = this.queryHeap.getSortArray(this.heapId);
+		}
+		return adapted;
+	}
+
+	/**
+	 * Sorts the first tuples of the sort array, with several threads if the operator has them.
+	 *
+	 * @param num The number of tuples to sort.
+	 */
+	private void sortRun(int num)
+	{
+		if (this.rangeSorter != null) {
+			this.rangeSorter.sort(this.sortArray, num);
+		}
+		else {
+			this.sorter.sort(this.sortArray, num);
+		}
+	}
+
+	/**
+	 * Forms runs through replacement selection over the full sort array, until the child is
+	 * exhausted.
+	 *
+	 * @param capacity The number of tuples in the full sort array.
+	 * @return The number of tuples of the last run, which is sorted and stays in the array.
+	 */
+	private int formRunsByReplacementSelection(int capacity) throws QueryExecutionException, QueryHeapException, IOException
+	{
+		ReplacementSelection selection = new ReplacementSelection(this.child, this.sorter, this.sortArray, capacity);
+		while (selection.hasMoreInput()) {
+			this.queryHeap.writeTupleSequencetoTemp(this.heapId, selection.nextRun());
+		}
+		return selection.sortRemaining();
+	}
+
+	/**
+	 * Merges the first written runs into longer runs, until no more runs remain than the query
+	 * heap can merge at once. The first merge takes only as many runs as needed, such that every
+	 * later merge, including the final one, reads the maximal number of runs.
+	 */
+	private void mergeWrittenRuns() throws QueryHeapException, IOException
+	{
+		int fanIn = this.queryHeap.getMaximalMergeFanIn();
+		int numRuns = this.queryHeap.getNumberOfExternalSortedLists(this.heapId);
+		if (numRuns <= fanIn) {
+			return;
+		}
+
+		int numMerged = (numRuns - fanIn - 1) % (fanIn - 1) + 2;
+		while (numRuns > fanIn) {
+			ExternalTupleSequenceIterator[] runs = this.queryHeap.getExternalSortedLists(this.heapId, numMerged);
+			this.queryHeap.writeTupleSequencetoTemp(this.heapId, new LoserTreeMerger(runs, this.sorter));
+			numRuns -= numMerged - 1;
+			numMerged = fanIn;
+		}
+	}
+
+	/**
+	 * Splits the runs of the final merge into groups that the threads of the pool merge
+	 * concurrently. Every group takes at least two runs, and there are at most as many groups
+	 * as threads. With too few runs to form two groups, the runs are returned as they are.
+	 *
+	 * @param runs The runs of the final merge.
+	 * @return The sequences to merge in the final merge.
+	 */
+	private ExternalTupleSequenceIterator[] mergeGroupsConcurrently(ExternalTupleSequenceIterator[] runs)
+	{
+		int numGroups = Math.min(this.degreeOfParallelism, runs.length / 2);
+		if (numGroups < 2) {
+			return runs;
+		}
+
+		ExternalTupleSequenceIterator[][] groups = new ExternalTupleSequenceIterator[numGroups][];
+		for (int i = 0; i < numGroups; i++) {
+			int start = runs.length * i / numGroups;
+			int end = runs.length * (i + 1) / numGroups;
+			groups[i] = new ExternalTupleSequenceIterator[end - start];
+			System.arraycopy(runs, start, groups[i], 0, end - start);
+		}
+
+		this.groupMerge = new ParallelGroupMerger(groups, this.sorter, this.pool);
+		return this.groupMerge.getMergedGroups();
+	}
+
+	/**
+	 * Iterates over the run that is kept in the sort array.
+	 */
+	private static final class SortArrayIterator implements ExternalTupleSequenceIterator
+	{
+		private final DataTuple[] tuples;
+
+		private final int numTuples;
+
+		private int position;
+
+		SortArrayIterator(DataTuple[] tuples, int numTuples)
+		{
+			this.tuples = tuples;
+			this.numTuples = numTuples;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return this.position < this.numTuples;
+		}
+
+		@Override
+		public DataTuple next()
+		{
+			return this.tuples[this.position++];
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+
+
+/**
+ * A sort operator that produces only the first tuples of its sorted input. It keeps the
+ * best tuples seen so far in a heap that holds at most as many tuples as are produced,
+ * with the worst of them on top, such that every further tuple is either dropped right
+ * away or replaces the top. The operator therefore never needs to write to temp space.
+ * <p>
+ * Among tuples that are equal in all sort columns, the ones that come first from the
+ * child are kept.
+ */
+public class TopNSortOperatorImpl implements SortOperator
+{
+	/**
+	 * The largest initial capacity of the heap, so that a large limit does not allocate
+	 * memory for tuples that the child never produces.
+	 */
+	private static final int MAX_INITIAL_CAPACITY = 1024;
+
+	/**
+	 * The operator producing the tuples to sort.
+	 */
+	private final PhysicalPlanOperator child;
+
+	/**
+	 * The comparator establishing the requested order.
+	 */
+	private final Comparator<DataTuple> comparator;
+
+	/**
+	 * The number of tuples to produce at most.
+	 */
+	private final int rowLimit;
+
+	/**
+	 * The produced tuples in their order, or null, if the operator is not open.
+	 */
+	private DataTuple[] result;
+
+	/**
+	 * The position of the next tuple to produce.
+	 */
+	private int position;
+
+
+	/**
+	 * Creates a new top-N sort operator.
+	 *
+	 * @param child The child producing the tuples to sort.
+	 * @param sortColumns The indices of the columns after which to sort.
+	 * @param columnsAscending The sort direction of each sort column, true for ascending.
+	 * @param rowLimit The number of tuples to produce at most.
+	 */
+	public TopNSortOperatorImpl(PhysicalPlanOperator child, int[] sortColumns,
+			boolean[] columnsAscending, int rowLimit)
+	{
+		if (sortColumns.length != columnsAscending.length) {
+			throw new IllegalArgumentException("Sort parameter arrays do not match in length.");
+		}
+		if (rowLimit < 0) {
+			throw new IllegalArgumentException("The row limit must not be negative.");
+		}
+
+		this.child = child;
+		this.comparator = new TupleComparator(sortColumns, columnsAscending);
+		this.rowLimit = rowLimit;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#open(de.tuberlin.dima.minidb.core.DataTuple)
+	 */
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		this.position = 0;
+		if (this.rowLimit == 0) {
+			this.result = new DataTuple[0];
+			return;
+		}
+
+		// the heap has the worst of the kept tuples on top
+		PriorityQueue<DataTuple> heap = new PriorityQueue<DataTuple>(
+				Math.min(this.rowLimit, MAX_INITIAL_CAPACITY), Collections.reverseOrder(this.comparator));
+
+		this.child.open(correlatedTuple);
+		try {
+			DataTuple tuple = null;
+			while ((tuple = this.child.next()) != null) {
+				if (heap.size() < this.rowLimit) {
+					heap.add(tuple);
+				}
+				else if (this.comparator.compare(tuple, heap.peek()) < 0) {
+					// only strictly better tuples replace the top, so earlier tuples win ties
+					heap.poll();
+					heap.add(tuple);
+				}
+			}
+		}
+		finally {
+			this.child.close();
+		}
+
+		// the heap yields the worst tuple first, so fill the result from the back
+		this.result = new DataTuple[heap.size()];
+		for (int i = this.result.length - 1; i >= 0; i--) {
+			this.result[i] = heap.poll();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#next()
+	 */
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (this.result == null || this.position >= this.result.length) {
+			return null;
+		}
+
+		DataTuple tuple = this.result[this.position];
+		this.result[this.position++] = null;
+		return tuple;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#close()
+	 */
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		this.result = null;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Compares tuples after the sort columns, in the given direction for each column.
+	 */
+	private static final class TupleComparator implements Comparator<DataTuple>
+	{
+		private final int[] sortColumns;
+
+		private final boolean[] columnsAscending;
+
+		TupleComparator(int[] sortColumns, boolean[] columnsAscending)
+		{
+			this.sortColumns = sortColumns;
+			this.columnsAscending = columnsAscending;
+		}
+
+		@Override
+		public int compare(DataTuple t1, DataTuple t2)
+		{
+			for (int i = 0; i < this.sortColumns.length; i++) {
+				int c = t1.getField(this.sortColumns[i]).compareTo(t2.getField(this.sortColumns[i]));
+				if (c != 0) {
+					return this.columnsAscending[i] ? c : -c;
+				}
+			}
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,310 @@
+package de.tuberlin.dima.minidb.test.io.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DuplicateException;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeBulkLoader;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.index.IndexResultIterator;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * Tests the bottom-up construction of B-Tree indexes: lookups on indexes built from unsorted
+ * input, with the sort in memory and spilled to temp space, and the rejection of duplicate
+ * keys in unique indexes.
+ */
+public class TestBTreeBulkLoader
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 5523019874563L;
+
+	/**
+	 * Resource id of the index under test.
+	 */
+	private static final int INDEX_RESOURCE_ID = 6;
+
+	/**
+	 * Number of distinct keys in the index.
+	 */
+	private static final int NUM_KEYS = 20000;
+
+	/**
+	 * File where the index data is stored.
+	 */
+	private final File indexFile = new File(System.getProperty("java.io.tmpdir") + File.separatorChar + "minidbstestbulkindex.mdix");
+
+	/**
+	 * Location of the configuration file for the database instance.
+	 */
+	protected String configFileName = this.getClass().getResource("/config.xml").getPath();
+
+	/**
+	 * The configuration of the database instance.
+	 */
+	private Config config;
+
+	/**
+	 * The schema of the indexed table.
+	 */
+	private TableSchema table;
+
+	/**
+	 * The resource manager of the index under test.
+	 */
+	private IndexResourceManager resManager;
+
+	/**
+	 * The buffer pool holding the pages of the index.
+	 */
+	private BufferPoolManager bufferPool;
+
+	/**
+	 * The heap used to sort the entries.
+	 */
+	private QueryHeap heap;
+
+
+	/**
+	 * Creates the table schema, the buffer pool and the query heap.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		this.config = Config.loadConfig(new File(this.configFileName));
+
+		this.table = new TableSchema(PageSize.SIZE_4096);
+		this.table.addColumn(ColumnSchema.createColumnSchema("Key", DataType.intType(), true));
+
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(this.config, Logger.getLogger("BPM - Logger"));
+		this.bufferPool.startIOThreads();
+		this.heap = new QueryHeap(Logger.getLogger("Heap - Logger"), this.config);
+	}
+
+	/**
+	 * Closes and deletes the index.
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.heap.closeQueryHeap();
+		if (this.resManager != null) {
+			this.resManager.closeResource();
+		}
+		try {
+			IndexResourceManager.deleteIndex(this.indexFile);
+		}
+		catch (IOException ioex) {
+			/* do nothing */
+		}
+	}
+
+	@Test
+	public void testBuildInMemory() throws Exception
+	{
+		buildAndCheck(NUM_KEYS, 1);
+	}
+
+	@Test
+	public void testBuildSpilled() throws Exception
+	{
+		// a small estimate gives the minimal sort memory, so the entries are spilled in runs
+		buildAndCheck(1, 1);
+	}
+
+	@Test
+	public void testBuildWithDuplicateKeys() throws Exception
+	{
+		buildAndCheck(1, 3);
+	}
+
+	@Test
+	public void testUniqueIndexRejectsDuplicates() throws Exception
+	{
+		IndexSchema schema = createIndex(true);
+		int oldRoot = schema.getRootPageNumber();
+
+		BTreeBulkLoader loader = new BTreeBulkLoader(this.resManager, this.bufferPool, INDEX_RESOURCE_ID, this.heap, 1);
+		List<Integer> keys = shuffledKeys(1);
+		keys.add(NUM_KEYS / 2);
+		for (int i = 0; i < keys.size(); i++) {
+			loader.add(new IntField(keys.get(i)), rid(i));
+		}
+
+		try {
+			loader.build();
+			fail("Duplicate key in unique index was not detected.");
+		}
+		catch (DuplicateException dex) {
+			// expected
+		}
+
+		// the index is still the empty index from before the load
+		assertEquals(oldRoot, schema.getRootPageNumber());
+		assertEquals(oldRoot, schema.getFirstLeafNumber());
+		BTreeIndex index = AbstractExtensionFactory.getExtensionFactory().createConcurrentBTreeIndex(schema, this.bufferPool, INDEX_RESOURCE_ID);
+		assertFalse(index.lookupRids(new IntField(NUM_KEYS / 2)).hasNext());
+		assertFalse(index.lookupKeys(new IntField(0), new IntField(NUM_KEYS), true, true).hasNext());
+	}
+
+	@Test
+	public void testUniqueIndexWithoutDuplicates() throws Exception
+	{
+		IndexSchema schema = createIndex(true);
+
+		BTreeBulkLoader loader = new BTreeBulkLoader(this.resManager, this.bufferPool, INDEX_RESOURCE_ID, this.heap, 1);
+		List<Integer> keys = shuffledKeys(1);
+		for (int i = 0; i < keys.size(); i++) {
+			loader.add(new IntField(keys.get(i)), rid(keys.get(i)));
+		}
+		loader.build();
+
+		BTreeIndex index = AbstractExtensionFactory.getExtensionFactory().createConcurrentBTreeIndex(schema, this.bufferPool, INDEX_RESOURCE_ID);
+		for (int key = 0; key < NUM_KEYS; key++) {
+			IndexResultIterator<RID> iter = index.lookupRids(new IntField(key));
+			assertTrue(iter.hasNext());
+			assertEquals(rid(key), iter.next());
+			assertFalse(iter.hasNext());
+		}
+	}
+
+	/**
+	 * Builds a non-unique index from the keys in random order, each key occurring the given
+	 * number of times, and checks point lookups, range lookups and the key order.
+	 */
+	private void buildAndCheck(int estimatedEntries, int copies) throws Exception
+	{
+		IndexSchema schema = createIndex(false);
+		int oldRoot = schema.getRootPageNumber();
+
+		BTreeBulkLoader loader = new BTreeBulkLoader(this.resManager, this.bufferPool, INDEX_RESOURCE_ID, this.heap, estimatedEntries);
+		List<Integer> keys = shuffledKeys(copies);
+		for (int i = 0; i < keys.size(); i++) {
+			loader.add(new IntField(keys.get(i)), rid(i));
+		}
+		loader.build();
+
+		// the first leaf reuses the page of the old, empty root
+		assertEquals(oldRoot, schema.getFirstLeafNumber());
+		assertTrue(NUM_KEYS * copies == 1 || schema.getRootPageNumber() != oldRoot);
+
+		BTreeIndex index = AbstractExtensionFactory.getExtensionFactory().createConcurrentBTreeIndex(schema, this.bufferPool, INDEX_RESOURCE_ID);
+
+		// every key finds exactly the RIDs it was added with
+		List<List<RID>> expected = new ArrayList<List<RID>>(NUM_KEYS);
+		for (int key = 0; key < NUM_KEYS; key++) {
+			expected.add(new ArrayList<RID>(copies));
+		}
+		for (int i = 0; i < keys.size(); i++) {
+			expected.get(keys.get(i)).add(rid(i));
+		}
+		Random random = new Random(SEED);
+		for (int n = 0; n < 2000; n++) {
+			int key = random.nextInt(NUM_KEYS);
+			List<RID> found = new ArrayList<RID>();
+			IndexResultIterator<RID> iter = index.lookupRids(new IntField(key));
+			while (iter.hasNext()) {
+				found.add(iter.next());
+			}
+			List<RID> exp = expected.get(key);
+			assertEquals("Wrong number of RIDs for key " + key, exp.size(), found.size());
+			assertEquals("Wrong RIDs for key " + key, new HashSet<RID>(exp), new HashSet<RID>(found));
+		}
+		assertFalse(index.lookupRids(new IntField(NUM_KEYS)).hasNext());
+		assertFalse(index.lookupRids(new IntField(-1)).hasNext());
+
+		// ranges
+		assertEquals(100 * copies, count(index.lookupRids(new IntField(500), new IntField(600), true, false)));
+		assertEquals(101 * copies, count(index.lookupRids(new IntField(500), new IntField(600), true, true)));
+		assertEquals(NUM_KEYS * copies, count(index.lookupRids(new IntField(-10), new IntField(NUM_KEYS + 10), true, true)));
+
+		// all keys in ascending order
+		IndexResultIterator<DataField> iter = index.lookupKeys(new IntField(0), new IntField(NUM_KEYS - 1), true, true);
+		for (int key = 0; key < NUM_KEYS; key++) {
+			for (int c = 0; c < copies; c++) {
+				assertTrue(iter.hasNext());
+				assertEquals(new IntField(key), iter.next());
+			}
+		}
+		assertFalse(iter.hasNext());
+	}
+
+	/**
+	 * Creates the empty index and registers it at the buffer pool.
+	 */
+	private IndexSchema createIndex(boolean unique) throws Exception
+	{
+		try {
+			IndexResourceManager.deleteIndex(this.indexFile);
+		}
+		catch (IOException ioex) {
+			/* do nothing */
+		}
+		IndexSchema schema = new IndexSchema(this.table, 0, PageSize.SIZE_4096, unique, 1, 1);
+		this.resManager = IndexResourceManager.createIndex(this.indexFile, schema);
+		this.bufferPool.registerResource(INDEX_RESOURCE_ID, this.resManager);
+		return schema;
+	}
+
+	/**
+	 * Gets all keys, each the given number of times, in random order.
+	 */
+	private List<Integer> shuffledKeys(int copies)
+	{
+		List<Integer> keys = new ArrayList<Integer>(NUM_KEYS * copies);
+		for (int key = 0; key < NUM_KEYS; key++) {
+			for (int c = 0; c < copies; c++) {
+				keys.add(key);
+			}
+		}
+		Collections.shuffle(keys, new Random(SEED));
+		return keys;
+	}
+
+	private static RID rid(int i)
+	{
+		return new RID(i / 100, i % 100);
+	}
+
+	private static int count(IndexResultIterator<?> iter) throws Exception
+	{
+		int num = 0;
+		while (iter.hasNext()) {
+			iter.next();
+			num++;
+		}
+		return num;
+	}
+}
@@ -0,0 +1,374 @@
+package de.tuberlin.dima.minidb.test.io.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.api.ExtensionFactory;
+import de.tuberlin.dima.minidb.api.ReferenceExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DuplicateException;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.index.IndexResultIterator;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+
+
+/**
+ * Regression test for the extension's B-Tree index, which the layered factory hands out in
+ * place of the reference index. The same entries are inserted into an index of each kind,
+ * and point lookups, range lookups and key scans must return the same results from both.
+ */
+public class TestBTreeIndexAgainstReference
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 8812340975123L;
+
+	/**
+	 * Characters that take more than one byte in the compact key format, or are next to those.
+	 */
+	private static final char[] WIDE_CHARS = { '\u00e4', '\u00fd', '\u00fe', '\u00ff', '\u03a9', '\u65e5', '\uffee' };
+
+	/**
+	 * Resource id of the extension's index.
+	 */
+	private static final int INDEX_RESOURCE_ID = 6;
+
+	/**
+	 * Resource id of the reference index.
+	 */
+	private static final int REFERENCE_RESOURCE_ID = 7;
+
+	/**
+	 * Number of entries inserted into each index.
+	 */
+	private static final int NUM_ENTRIES = 20000;
+
+	/**
+	 * Number of random lookups and ranges checked.
+	 */
+	private static final int NUM_PROBES = 300;
+
+	/**
+	 * File where the extension's index is stored.
+	 */
+	private final File indexFile = new File(System.getProperty("java.io.tmpdir") + File.separatorChar + "minidbstestindexext.mdix");
+
+	/**
+	 * File where the reference index is stored.
+	 */
+	private final File referenceFile = new File(System.getProperty("java.io.tmpdir") + File.separatorChar + "minidbstestindexref.mdix");
+
+	/**
+	 * Location of the configuration file for the database instance.
+	 */
+	protected String configFileName = this.getClass().getResource("/config.xml").getPath();
+
+	/**
+	 * The schema of the indexed table.
+	 */
+	private TableSchema table;
+
+	/**
+	 * The buffer pool holding the pages of both indexes.
+	 */
+	private BufferPoolManager bufferPool;
+
+	/**
+	 * The resource managers of both indexes.
+	 */
+	private List<IndexResourceManager> resManagers = new ArrayList<IndexResourceManager>();
+
+	/**
+	 * The random number generator for keys and probes.
+	 */
+	private Random random;
+
+
+	/**
+	 * Creates the table schema and the buffer pool.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		Config config = Config.loadConfig(new File(this.configFileName));
+
+		this.table = new TableSchema(PageSize.SIZE_4096);
+		this.table.addColumn(ColumnSchema.createColumnSchema("Num", DataType.intType(), true));
+		this.table.addColumn(ColumnSchema.createColumnSchema("Name", DataType.charType(10), true));
+
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(config, Logger.getLogger("BPM - Logger"));
+		this.bufferPool.startIOThreads();
+		this.random = new Random(SEED);
+	}
+
+	/**
+	 * Closes and deletes both indexes.
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		for (IndexResourceManager manager : this.resManagers) {
+			manager.closeResource();
+		}
+		for (File file : new File[] { this.indexFile, this.referenceFile }) {
+			try {
+				IndexResourceManager.deleteIndex(file);
+			}
+			catch (IOException ioex) {
+				/* do nothing */
+			}
+		}
+	}
+
+	@Test
+	public void testIntKeys() throws Exception
+	{
+		BTreeIndex[] indexes = createIndexes(0, false);
+		List<DataField> keys = new ArrayList<DataField>();
+		for (int i = 0; i < NUM_ENTRIES; i++) {
+			// a small key range, such that keys have many duplicates spanning several leaves
+			DataField key = new IntField(this.random.nextInt(NUM_ENTRIES / 8) - 100);
+			insert(indexes, key, new RID(i / 64, i % 64));
+			keys.add(key);
+		}
+		compare(indexes, keys);
+	}
+
+	@Test
+	public void testCharKeys() throws Exception
+	{
+		BTreeIndex[] indexes = createIndexes(1, false);
+		List<DataField> keys = new ArrayList<DataField>();
+		for (int i = 0; i < NUM_ENTRIES; i++) {
+			DataField key = randomName();
+			insert(indexes, key, new RID(i / 64, i % 64));
+			keys.add(key);
+		}
+		compare(indexes, keys);
+	}
+
+	@Test
+	public void testCompactCharKeys() throws Exception
+	{
+		// the extension's index stores the keys in the compact format, the reference's not
+		BTreeIndex[] indexes = createIndexes(1, false, true);
+		List<DataField> keys = new ArrayList<DataField>();
+		for (int i = 0; i < NUM_ENTRIES; i++) {
+			DataField key = randomWideName();
+			insert(indexes, key, new RID(i / 64, i % 64));
+			keys.add(key);
+		}
+
+		// a key whose escaped characters do not fit is rejected and leaves the index unchanged
+		try {
+			indexes[0].insertEntry(new CharField("\u65e5\u672c\u8a9e\u6587"), new RID(NUM_ENTRIES, 0));
+			fail("Key with too many wide characters was accepted.");
+		}
+		catch (IllegalArgumentException iaex) {
+			// expected
+		}
+		compare(indexes, keys);
+	}
+
+	@Test
+	public void testUniqueIndex() throws Exception
+	{
+		BTreeIndex[] indexes = createIndexes(0, true);
+		List<DataField> keys = new ArrayList<DataField>();
+		for (int i = 0; i < NUM_ENTRIES; i++) {
+			DataField key = new IntField(i * 7 % NUM_ENTRIES);
+			insert(indexes, key, new RID(i, 0));
+			keys.add(key);
+		}
+
+		for (int n = 0; n < 50; n++) {
+			DataField key = keys.get(this.random.nextInt(keys.size()));
+			for (BTreeIndex index : indexes) {
+				try {
+					index.insertEntry(key, new RID(NUM_ENTRIES + n, 1));
+					fail("Duplicate key " + key + " was accepted by " + index.getClass().getName());
+				}
+				catch (DuplicateException dex) {
+					// expected
+				}
+			}
+		}
+		compare(indexes, keys);
+	}
+
+	/**
+	 * Creates an empty index of the extension and of the reference on the given column.
+	 */
+	private BTreeIndex[] createIndexes(int column, boolean unique) throws Exception
+	{
+		return createIndexes(column, unique, false);
+	}
+
+	/**
+	 * Creates an empty index of the extension and of the reference on the given column, where
+	 * the extension's index stores its keys in the compact format, if requested.
+	 */
+	private BTreeIndex[] createIndexes(int column, boolean unique, boolean compact) throws Exception
+	{
+		AbstractExtensionFactory[] factories = { new ExtensionFactory(), new ReferenceExtensionFactory() };
+		File[] files = { this.indexFile, this.referenceFile };
+		int[] resourceIds = { INDEX_RESOURCE_ID, REFERENCE_RESOURCE_ID };
+
+		BTreeIndex[] indexes = new BTreeIndex[2];
+		for (int i = 0; i < 2; i++) {
+			try {
+				IndexResourceManager.deleteIndex(files[i]);
+			}
+			catch (IOException ioex) {
+				/* do nothing */
+			}
+			IndexSchema schema = new IndexSchema(this.table, column, PageSize.SIZE_4096, unique, compact && i == 0, 1, 1);
+			IndexResourceManager manager = IndexResourceManager.createIndex(files[i], schema);
+			this.resManagers.add(manager);
+			this.bufferPool.registerResource(resourceIds[i], manager);
+			indexes[i] = factories[i].createBTreeIndex(schema, this.bufferPool, resourceIds[i]);
+		}
+		return indexes;
+	}
+
+	private static void insert(BTreeIndex[] indexes, DataField key, RID rid) throws Exception
+	{
+		for (BTreeIndex index : indexes) {
+			index.insertEntry(key, rid);
+		}
+	}
+
+	/**
+	 * Compares point lookups, range lookups with all combinations of inclusive and exclusive
+	 * bounds, and key scans of both indexes.
+	 */
+	private void compare(BTreeIndex[] indexes, List<DataField> keys) throws Exception
+	{
+		BTreeIndex index = indexes[0], reference = indexes[1];
+
+		for (int n = 0; n < NUM_PROBES; n++) {
+			DataField key = keys.get(this.random.nextInt(keys.size()));
+			assertSameRids("Lookup of " + key, reference.lookupRids(key), index.lookupRids(key));
+		}
+
+		// keys that are not contained: before all others, in between, and after all others
+		DataField[] absent = index.getIndexSchema().getIndexedColumnSchema().getDataType().equals(DataType.intType()) ?
+				new DataField[] { new IntField(Integer.MIN_VALUE), new IntField(-101), new IntField(Integer.MAX_VALUE) } :
+				new DataField[] { new CharField("!"), new CharField("Mq"), new CharField("~") };
+		for (DataField key : absent) {
+			assertSameRids("Lookup of " + key, reference.lookupRids(key), index.lookupRids(key));
+		}
+
+		for (int n = 0; n < NUM_PROBES; n++) {
+			DataField low = keys.get(this.random.nextInt(keys.size()));
+			DataField high = keys.get(this.random.nextInt(keys.size()));
+			if (low.compareTo(high) > 0) {
+				DataField tmp = low;
+				low = high;
+				high = tmp;
+			}
+			boolean lowIncluded = (n & 0x1) != 0, highIncluded = (n & 0x2) != 0;
+			String range = (lowIncluded ? "[" : "(") + low + ", " + high + (highIncluded ? "]" : ")");
+
+			assertSameRids("Range " + range,
+					reference.lookupRids(low, high, lowIncluded, highIncluded),
+					index.lookupRids(low, high, lowIncluded, highIncluded));
+			assertEquals("Keys in range " + range,
+					drain(reference.lookupKeys(low, high, lowIncluded, highIncluded)),
+					drain(index.lookupKeys(low, high, lowIncluded, highIncluded)));
+		}
+
+		assertEquals("Keys of the whole index",
+				drain(reference.lookupKeys(absent[0], absent[2], true, true)),
+				drain(index.lookupKeys(absent[0], absent[2], true, true)));
+	}
+
+	/**
+	 * Checks that both iterators return the same RIDs, the same number of times.
+	 */
+	private static void assertSameRids(String message, IndexResultIterator<RID> expected, IndexResultIterator<RID> actual)
+	throws Exception
+	{
+		List<RID> exp = drain(expected), act = drain(actual);
+		assertEquals(message + ": wrong number of RIDs", exp.size(), act.size());
+		assertEquals(message + ": wrong RIDs", count(exp), count(act));
+	}
+
+	private static <T> List<T> drain(IndexResultIterator<T> iter) throws Exception
+	{
+		List<T> result = new ArrayList<T>();
+		while (iter.hasNext()) {
+			result.add(iter.next());
+		}
+		return result;
+	}
+
+	private static Map<RID, Integer> count(List<RID> rids)
+	{
+		Map<RID, Integer> counts = new HashMap<RID, Integer>();
+		for (RID rid : rids) {
+			Integer c = counts.get(rid);
+			counts.put(rid, c == null ? 1 : c + 1);
+		}
+		return counts;
+	}
+
+	/**
+	 * Creates a name of up to ten characters from a small alphabet, such that many names
+	 * share long prefixes and some occur several times.
+	 */
+	private CharField randomName()
+	{
+		int length = 1 + this.random.nextInt(10);
+		StringBuilder bld = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			bld.append((char) ('a' + this.random.nextInt(i < 6 ? 3 : 26)));
+		}
+		return new CharField(bld.toString());
+	}
+
+	/**
+	 * Creates a name like {@link #randomName()}, of up to six characters, where some characters
+	 * behind the first are above <code>0xff</code> or at the top of the single byte range. The
+	 * name is padded with spaces to the column width, as it is read from a table.
+	 */
+	private CharField randomWideName()
+	{
+		String name = randomName().getValue();
+		StringBuilder bld = new StringBuilder(name.substring(0, Math.min(name.length(), 5)));
+		if (this.random.nextBoolean()) {
+			bld.insert(1, WIDE_CHARS[this.random.nextInt(WIDE_CHARS.length)]);
+		}
+		while (bld.length() < 10) {
+			bld.append(' ');
+		}
+		return new CharField(bld.toString());
+	}
+}
@@ -0,0 +1,278 @@
+package de.tuberlin.dima.minidb.test.io.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.index.IndexResultIterator;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.qexec.IndexProbeBatch;
+import de.tuberlin.dima.minidb.qexec.OperatorFactory;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+
+
+/**
+ * Tests for probing a B-Tree index with sorted batches of keys: The single pass over the leaves
+ * finds the same RIDs as separate lookups, also for keys whose entries span several leaves, and
+ * the batched nested loop join produces the matches of its outer tuples in their original order.
+ */
+public class TestBatchedIndexProbes
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 9812734650129L;
+
+	/**
+	 * Resource id of the index under test.
+	 */
+	private static final int INDEX_RESOURCE_ID = 9;
+
+	/**
+	 * The keys in the index are the even numbers below this bound.
+	 */
+	private static final int KEY_RANGE = 20000;
+
+	/**
+	 * A key with so many entries that they span several leaves.
+	 */
+	private static final int FREQUENT_KEY = 7000;
+
+	/**
+	 * The number of entries of the frequent key.
+	 */
+	private static final int FREQUENT_KEY_ENTRIES = 2000;
+
+	/**
+	 * File where the index data is stored.
+	 */
+	private final File indexFile = new File(System.getProperty("java.io.tmpdir") + File.separatorChar + "minidbstestbatchedprobes.mdix");
+
+	/**
+	 * Location of the configuration file for the database instance.
+	 */
+	protected String configFileName = this.getClass().getResource("/config.xml").getPath();
+
+	/**
+	 * The resource manager of the index under test.
+	 */
+	private IndexResourceManager resManager;
+
+	/**
+	 * The buffer pool holding the pages of the index.
+	 */
+	private BufferPoolManager bufferPool;
+
+	/**
+	 * The index under test.
+	 */
+	private BTreeIndex index;
+
+
+	/**
+	 * Creates an index on an INT column and fills it.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		Config config = Config.loadConfig(new File(this.configFileName));
+
+		TableSchema table = new TableSchema(PageSize.SIZE_4096);
+		table.addColumn(ColumnSchema.createColumnSchema("Key", DataType.intType(), true));
+		IndexSchema schema = new IndexSchema(table, 0, PageSize.SIZE_4096);
+
+		this.resManager = IndexResourceManager.createIndex(this.indexFile, schema);
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(config, Logger.getLogger("BPM - Logger"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(INDEX_RESOURCE_ID, this.resManager);
+		this.index = AbstractExtensionFactory.getExtensionFactory().createConcurrentBTreeIndex(schema, this.bufferPool, INDEX_RESOURCE_ID);
+
+		// a key has between one and three entries, except for the frequent key
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int k = 0; k < KEY_RANGE; k += 2) {
+			int num = k == FREQUENT_KEY ? FREQUENT_KEY_ENTRIES : (k / 2) % 3 + 1;
+			for (int i = 0; i < num; i++) {
+				keys.add(k);
+			}
+		}
+		Collections.shuffle(keys, new Random(SEED));
+		for (int i = 0; i < keys.size(); i++) {
+			this.index.insertEntry(new IntField(keys.get(i)), new RID(i));
+		}
+	}
+
+	/**
+	 * Closes and deletes the index.
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.resManager.closeResource();
+		try {
+			IndexResourceManager.deleteIndex(this.indexFile);
+		}
+		catch (IOException ioex) {
+			/* do nothing */
+		}
+	}
+
+	/**
+	 * Checks that batches of sorted keys, dense or sparse, find the same RIDs as single lookups.
+	 */
+	@Test
+	public void testBatchLookup() throws Exception
+	{
+		Random rnd = new Random(SEED);
+		int[] gaps = { 1, 3, 50, 2000 };
+
+		for (int gap : gaps) {
+			List<DataField> keys = new ArrayList<DataField>();
+			for (int k = -5; k < KEY_RANGE + 10; k += 1 + rnd.nextInt(gap)) {
+				keys.add(new IntField(k));
+			}
+			keys.add(new IntField(FREQUENT_KEY));
+			Collections.sort(keys);
+
+			DataField[] batch = keys.toArray(new DataField[keys.size()]);
+			List<List<RID>> result = this.index.lookupRids(batch);
+			assertEquals(batch.length, result.size());
+			for (int i = 0; i < batch.length; i++) {
+				assertEquals("RIDs of key " + batch[i], singleLookup(batch[i]), new HashSet<RID>(result.get(i)));
+			}
+		}
+	}
+
+	/**
+	 * Checks that a key following a key with many entries is found after the scan over the
+	 * entries moved to a later leaf.
+	 */
+	@Test
+	public void testKeysAroundSpanningKey() throws Exception
+	{
+		DataField[] batch = { new IntField(FREQUENT_KEY - 2), new IntField(FREQUENT_KEY),
+				new IntField(FREQUENT_KEY), new IntField(FREQUENT_KEY + 1), new IntField(FREQUENT_KEY + 2) };
+		List<List<RID>> result = this.index.lookupRids(batch);
+
+		assertEquals(FREQUENT_KEY_ENTRIES, result.get(1).size());
+		assertEquals(FREQUENT_KEY_ENTRIES, result.get(2).size());
+		assertTrue(result.get(3).isEmpty());
+		for (int i = 0; i < batch.length; i++) {
+			assertEquals(singleLookup(batch[i]), new HashSet<RID>(result.get(i)));
+		}
+	}
+
+	/**
+	 * Joins outer tuples in random key order over several batches and checks that each outer
+	 * tuple is followed by exactly its matches.
+	 */
+	@Test
+	public void testBatchedJoin() throws Exception
+	{
+		Random rnd = new Random(SEED);
+		List<DataTuple> outer = new ArrayList<DataTuple>();
+		for (int i = 0; i < 1000; i++) {
+			DataTuple tuple = new DataTuple(2);
+			tuple.assignDataField(new IntField(i), 0);
+			tuple.assignDataField(new IntField(i == 500 ? FREQUENT_KEY : rnd.nextInt(KEY_RANGE)), 1);
+			outer.add(tuple);
+		}
+
+		IndexProbeBatch batch = new IndexProbeBatch();
+		PhysicalPlanOperator inner = OperatorFactory.createBatchedIndexCorrelatedLookupOperator(this.index, 1, batch);
+		PhysicalPlanOperator join = OperatorFactory.createBatchedNestedLoopJoinOperator(new ListOperator(outer), inner,
+				null, new int[] { 0, 1, -1 }, new int[] { -1, -1, 0 }, batch, 1);
+
+		join.open(null);
+		int position = 0;
+		for (DataTuple tuple : outer) {
+			Set<RID> expected = singleLookup(tuple.getField(1));
+			Set<RID> found = new HashSet<RID>();
+			for (int i = 0; i < expected.size(); i++) {
+				DataTuple result = join.next();
+				assertEquals("Outer order at position " + position, tuple.getField(0), result.getField(0));
+				found.add((RID) result.getField(2));
+				position++;
+			}
+			assertEquals(expected, found);
+		}
+		assertNull(join.next());
+		join.close();
+		assertTrue(batch.getVersion() > 1);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the RIDs of a key through a single lookup.
+	 */
+	private Set<RID> singleLookup(DataField key) throws Exception
+	{
+		Set<RID> rids = new HashSet<RID>();
+		IndexResultIterator<RID> iter = this.index.lookupRids(key);
+		while (iter.hasNext()) {
+			rids.add(iter.next());
+		}
+		return rids;
+	}
+
+	/**
+	 * An operator that produces the tuples of a list.
+	 */
+	private static final class ListOperator implements PhysicalPlanOperator
+	{
+		private final List<DataTuple> tuples;
+
+		private int position;
+
+		ListOperator(List<DataTuple> tuples)
+		{
+			this.tuples = tuples;
+		}
+
+		@Override
+		public void open(DataTuple correlatedTuple)
+		{
+			this.position = 0;
+		}
+
+		@Override
+		public DataTuple next()
+		{
+			return this.position < this.tuples.size() ? this.tuples.get(this.position++) : null;
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+}
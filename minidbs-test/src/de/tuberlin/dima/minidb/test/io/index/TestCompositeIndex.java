@@ -0,0 +1,335 @@
+package de.tuberlin.dima.minidb.test.io.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexDescriptor;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.CompositeField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.index.IndexResultIterator;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.optimizer.IndexLookupPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.OrderedColumn;
+import de.tuberlin.dima.minidb.optimizer.generator.util.PhysicalPlanGeneratorUtils;
+import de.tuberlin.dima.minidb.parser.Predicate;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.semantics.BaseTableAccess;
+import de.tuberlin.dima.minidb.semantics.Column;
+import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicate;
+import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicateAtom;
+import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicateConjunct;
+
+
+/**
+ * Tests for composite indexes over several columns: lookups of key prefixes and ranges on
+ * the column after the prefix, persistence of the indexed columns, and the matching of
+ * conjunctive predicates against key prefixes in the optimizer.
+ */
+public class TestCompositeIndex
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 9823475612387L;
+
+	/**
+	 * Resource id of the index under test.
+	 */
+	private static final int INDEX_RESOURCE_ID = 6;
+
+	/**
+	 * Number of distinct values in the first key column.
+	 */
+	private static final int NUM_FIRST = 200;
+
+	/**
+	 * Number of distinct values in the second key column.
+	 */
+	private static final int NUM_SECOND = 50;
+
+	/**
+	 * File where the index data is stored.
+	 */
+	private final File indexFile = new File(System.getProperty("java.io.tmpdir") + File.separatorChar + "minidbstestcompositeindex.mdix");
+
+	/**
+	 * Location of the configuration file for the database instance.
+	 */
+	protected String configFileName = this.getClass().getResource("/config.xml").getPath();
+
+	/**
+	 * The schema of the indexed table.
+	 */
+	private TableSchema table;
+
+	/**
+	 * The schema of the index under test.
+	 */
+	private IndexSchema schema;
+
+	/**
+	 * The resource manager of the index under test.
+	 */
+	private IndexResourceManager resManager;
+
+	/**
+	 * The buffer pool holding the pages of the index.
+	 */
+	private BufferPoolManager bufferPool;
+
+
+	/**
+	 * Creates an empty composite index over an INT and a CHAR column.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		Config config = Config.loadConfig(new File(this.configFileName));
+
+		this.table = new TableSchema(PageSize.SIZE_4096);
+		this.table.addColumn(ColumnSchema.createColumnSchema("Payload", DataType.intType(), true));
+		this.table.addColumn(ColumnSchema.createColumnSchema("Second", DataType.charType(4), true));
+		this.table.addColumn(ColumnSchema.createColumnSchema("First", DataType.intType(), true));
+		this.schema = new IndexSchema(this.table, new int[] { 2, 1 }, PageSize.SIZE_4096, false);
+
+		this.resManager = IndexResourceManager.createIndex(this.indexFile, this.schema);
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(config, Logger.getLogger("BPM - Logger"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(INDEX_RESOURCE_ID, this.resManager);
+	}
+
+	/**
+	 * Closes and deletes the index.
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.resManager.closeResource();
+		try {
+			IndexResourceManager.deleteIndex(this.indexFile);
+		}
+		catch (IOException ioex) {
+			/* do nothing */
+		}
+	}
+
+	/**
+	 * Looks up complete keys, prefixes, and prefixes with a range on the second column.
+	 */
+	@Test
+	public void testPrefixAndRangeLookups() throws Exception
+	{
+		BTreeIndex index = fillIndex();
+
+		// complete key
+		IndexResultIterator<RID> iter = index.lookupRids(key(17, 23));
+		assertTrue(iter.hasNext());
+		assertEquals(rid(17, 23), iter.next());
+		assertTrue(!iter.hasNext());
+
+		// prefix, as composite key and as plain field
+		assertEquals(NUM_SECOND, count(index.lookupRids(new CompositeField(new IntField(17)))));
+		assertEquals(NUM_SECOND, count(index.lookupRids(new IntField(17))));
+		assertEquals(0, count(index.lookupRids(new IntField(NUM_FIRST))));
+
+		// prefix with a range on the second column
+		assertEquals(10, count(index.lookupRids(key(17, 10), key(17, 20), true, false)));
+		assertEquals(10, count(index.lookupRids(key(17, 10), key(17, 20), false, true)));
+		assertEquals(11, count(index.lookupRids(key(17, 10), key(17, 20), true, true)));
+
+		// ranges of prefixes
+		CompositeField low = new CompositeField(new IntField(5));
+		CompositeField high = new CompositeField(new IntField(8));
+		assertEquals(4 * NUM_SECOND, count(index.lookupRids(low, high, true, true)));
+		assertEquals(3 * NUM_SECOND, count(index.lookupRids(low, high, true, false)));
+		assertEquals(3 * NUM_SECOND, count(index.lookupRids(low, high, false, true)));
+		assertEquals(2 * NUM_SECOND, count(index.lookupRids(low, high, false, false)));
+
+		// a range starting within one prefix and ending within another
+		assertEquals(NUM_SECOND - 40 + NUM_SECOND + 5, count(index.lookupRids(key(5, 40), key(7, 5), true, false)));
+	}
+
+	/**
+	 * Checks that the keys are returned in lexicographic order.
+	 */
+	@Test
+	public void testLexicographicOrder() throws Exception
+	{
+		BTreeIndex index = fillIndex();
+
+		IndexResultIterator<DataField> iter = index.lookupKeys(new IntField(0), new IntField(NUM_FIRST - 1), true, true);
+		int num = 0;
+		for (int first = 0; first < NUM_FIRST; first++) {
+			for (int second = 0; second < NUM_SECOND; second++) {
+				assertTrue(iter.hasNext());
+				assertEquals(key(first, second), iter.next());
+				num++;
+			}
+		}
+		assertTrue(!iter.hasNext());
+		assertEquals(NUM_FIRST * NUM_SECOND, num);
+	}
+
+	/**
+	 * Checks that the indexed columns are restored when the index is opened.
+	 */
+	@Test
+	public void testHeaderPersistence() throws Exception
+	{
+		File file = new File(System.getProperty("java.io.tmpdir") + File.separatorChar + "minidbstestcompositeheader.mdix");
+		IndexResourceManager.createIndex(file, new IndexSchema(this.table, new int[] { 2, 0, 1 }, PageSize.SIZE_4096, true)).closeResource();
+		try {
+			IndexResourceManager opened = IndexResourceManager.openIndex(file, this.table);
+			IndexSchema schema = opened.getSchema();
+			opened.closeResource();
+
+			assertTrue(schema.isComposite());
+			assertTrue(schema.isUnique());
+			assertArrayEquals(new int[] { 2, 0, 1 }, schema.getColumnNumbers());
+			assertEquals(4 + 8 + 4, schema.getKeyWidth());
+		}
+		finally {
+			IndexResourceManager.deleteIndex(file);
+		}
+	}
+
+	/**
+	 * Matches conjunctive predicates against the key prefix of the index.
+	 */
+	@Test
+	public void testPredicateMatching() throws Exception
+	{
+		TableDescriptor tableDesc = new TableDescriptor("T", "t.mdtb");
+		IndexDescriptor indexDesc = new IndexDescriptor("T_COMPOSITE", "T", this.indexFile.getPath());
+		indexDesc.setResourceProperties(this.resManager, tableDesc, INDEX_RESOURCE_ID);
+		List<IndexDescriptor> indexes = Collections.singletonList(indexDesc);
+		BaseTableAccess access = new BaseTableAccess(tableDesc);
+
+		Column first = new Column(access, DataType.intType(), 2);
+		Column second = new Column(access, DataType.charType(4), 1);
+		Column payload = new Column(access, DataType.intType(), 0);
+
+		// equality on the first column, range on the second, and a factor the index cannot use
+		LocalPredicateConjunct conjunct = new LocalPredicateConjunct();
+		conjunct.addPredicate(atom(payload, Predicate.Operator.EQUAL, new IntField(3)));
+		conjunct.addPredicate(atom(second, Predicate.Operator.GREATER, new CharField("0010")));
+		conjunct.addPredicate(atom(first, Predicate.Operator.EQUAL, new IntField(17)));
+
+		IndexLookupPlanOperator lookup = PhysicalPlanGeneratorUtils.createIndexLookup(access, 10, conjunct, indexes);
+		assertNotNull(lookup);
+		LocalPredicate[] matched = ((LocalPredicateConjunct) lookup.getLocalPredicate()).getPredicates();
+		assertEquals(2, matched.length);
+		assertEquals(first, ((LocalPredicateAtom) matched[0]).getColumn());
+		assertEquals(second, ((LocalPredicateAtom) matched[1]).getColumn());
+
+		OrderedColumn[] order = lookup.getColumnOrder();
+		assertEquals(2, order.length);
+		assertEquals(first, order[0].getColumns()[0]);
+		assertEquals(second, order[1].getColumns()[0]);
+
+		// a range on the first column only is no prefix match
+		conjunct = new LocalPredicateConjunct();
+		conjunct.addPredicate(atom(first, Predicate.Operator.SMALLER, new IntField(17)));
+		conjunct.addPredicate(atom(second, Predicate.Operator.EQUAL, new CharField("0010")));
+		assertNull(PhysicalPlanGeneratorUtils.createIndexLookup(access, 10, conjunct, indexes));
+
+		// the physical lookup returns the matching entries
+		fillIndex();
+		LocalPredicate[] keyPreds = new LocalPredicate[] {
+			atom(first, Predicate.Operator.EQUAL, new IntField(17)),
+			atom(second, Predicate.Operator.SMALLER_OR_EQUAL, new CharField("0009"))
+		};
+		lookup = new IndexLookupPlanOperator(indexDesc, access, keyPreds, 10);
+		assertEquals(10, countTuples(lookup.createPhysicalPlan(this.bufferPool, null)));
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Inserts all combinations of the key columns in random order.
+	 */
+	private BTreeIndex fillIndex() throws Exception
+	{
+		List<DataField[]> pairs = new ArrayList<DataField[]>();
+		for (int first = 0; first < NUM_FIRST; first++) {
+			for (int second = 0; second < NUM_SECOND; second++) {
+				pairs.add(new DataField[] { key(first, second), rid(first, second) });
+			}
+		}
+		Collections.shuffle(pairs, new Random(SEED));
+
+		BTreeIndex index = AbstractExtensionFactory.getExtensionFactory().createConcurrentBTreeIndex(this.schema, this.bufferPool, INDEX_RESOURCE_ID);
+		for (DataField[] pair : pairs) {
+			index.insertEntry(pair[0], (RID) pair[1]);
+		}
+		return index;
+	}
+
+	private static CompositeField key(int first, int second)
+	{
+		return new CompositeField(new IntField(first), new CharField(String.format("%04d", second)));
+	}
+
+	private static RID rid(int first, int second)
+	{
+		return new RID(first * 1000 + second);
+	}
+
+	private static LocalPredicateAtom atom(Column column, Predicate.Operator op, DataField literal)
+	{
+		Predicate parsed = new Predicate();
+		parsed.setOperator(op);
+		return new LocalPredicateAtom(parsed, column, literal);
+	}
+
+	private static int count(IndexResultIterator<RID> iter) throws Exception
+	{
+		int num = 0;
+		while (iter.hasNext()) {
+			iter.next();
+			num++;
+		}
+		return num;
+	}
+
+	private static int countTuples(PhysicalPlanOperator op) throws Exception
+	{
+		op.open(null);
+		int num = 0;
+		while (op.next() != null) {
+			num++;
+		}
+		op.close();
+		return num;
+	}
+}
@@ -0,0 +1,293 @@
+package de.tuberlin.dima.minidb.test.io.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexDescriptor;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.index.IndexResultIterator;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.optimizer.FetchPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.IndexLookupPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.generator.util.PhysicalPlanGeneratorUtils;
+import de.tuberlin.dima.minidb.parser.Predicate;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.semantics.BaseTableAccess;
+import de.tuberlin.dima.minidb.semantics.Column;
+import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicateAtom;
+
+
+/**
+ * Tests for covering indexes that carry included columns in their leaf entries: the entries
+ * survive splits and deletes, the included columns are persisted, and the optimizer answers
+ * queries on covered columns from the index alone.
+ */
+public class TestCoveringIndex
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 4587234598123L;
+
+	/**
+	 * Resource id of the index under test.
+	 */
+	private static final int INDEX_RESOURCE_ID = 7;
+
+	/**
+	 * Number of entries in the index.
+	 */
+	private static final int NUM_ENTRIES = 5000;
+
+	/**
+	 * File where the index data is stored.
+	 */
+	private final File indexFile = new File(System.getProperty("java.io.tmpdir") + File.separatorChar + "minidbstestcoveringindex.mdix");
+
+	/**
+	 * Location of the configuration file for the database instance.
+	 */
+	protected String configFileName = this.getClass().getResource("/config.xml").getPath();
+
+	/**
+	 * The schema of the indexed table.
+	 */
+	private TableSchema table;
+
+	/**
+	 * The schema of the index under test.
+	 */
+	private IndexSchema schema;
+
+	/**
+	 * The resource manager of the index under test.
+	 */
+	private IndexResourceManager resManager;
+
+	/**
+	 * The buffer pool holding the pages of the index.
+	 */
+	private BufferPoolManager bufferPool;
+
+
+	/**
+	 * Creates an empty index over an INT column that includes an INT and a CHAR column.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		Config config = Config.loadConfig(new File(this.configFileName));
+
+		this.table = new TableSchema(PageSize.SIZE_4096);
+		this.table.addColumn(ColumnSchema.createColumnSchema("Key", DataType.intType(), true));
+		this.table.addColumn(ColumnSchema.createColumnSchema("Payload", DataType.intType(), true));
+		this.table.addColumn(ColumnSchema.createColumnSchema("Name", DataType.charType(8), true));
+		this.table.addColumn(ColumnSchema.createColumnSchema("Other", DataType.intType(), true));
+		this.schema = new IndexSchema(this.table, new int[] { 0 }, new int[] { 1, 2 }, PageSize.SIZE_4096, false);
+
+		this.resManager = IndexResourceManager.createIndex(this.indexFile, this.schema);
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(config, Logger.getLogger("BPM - Logger"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(INDEX_RESOURCE_ID, this.resManager);
+	}
+
+	/**
+	 * Closes and deletes the index.
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.resManager.closeResource();
+		try {
+			IndexResourceManager.deleteIndex(this.indexFile);
+		}
+		catch (IOException ioex) {
+			/* do nothing */
+		}
+	}
+
+	/**
+	 * Checks that the included columns stay with their entries through leaf splits and
+	 * through the rebalancing after deletes.
+	 */
+	@Test
+	public void testEntriesKeepIncludedColumns() throws Exception
+	{
+		BTreeIndex index = fillIndex();
+		assertTrue(NUM_ENTRIES > 4 * this.schema.getMaximalLeafEntries());
+		checkEntries(index.lookupEntries(new IntField(0), new IntField(NUM_ENTRIES), true, false), 0, 1);
+
+		// delete every other entry, which merges leaves
+		for (int i = 1; i < NUM_ENTRIES; i += 2) {
+			assertTrue(index.deleteEntry(new IntField(i), new RID(i)));
+		}
+		checkEntries(index.lookupEntries(new IntField(0), new IntField(NUM_ENTRIES), true, false), 0, 2);
+
+		// entries without included values carry NULLs
+		index.insertEntry(new IntField(NUM_ENTRIES + 1), new RID(NUM_ENTRIES + 1));
+		IndexResultIterator<DataTuple> iter = index.lookupEntries(new IntField(NUM_ENTRIES + 1), new IntField(NUM_ENTRIES + 1), true, true);
+		assertTrue(iter.hasNext());
+		DataTuple entry = iter.next();
+		assertTrue(entry.getField(1).isNULL());
+		assertTrue(entry.getField(2).isNULL());
+		assertEquals(new RID(NUM_ENTRIES + 1), entry.getField(3));
+	}
+
+	/**
+	 * Checks that the included columns are restored when the index is opened and that they
+	 * reduce the number of entries per leaf.
+	 */
+	@Test
+	public void testHeaderPersistence() throws Exception
+	{
+		File file = new File(System.getProperty("java.io.tmpdir") + File.separatorChar + "minidbstestcoveringheader.mdix");
+		IndexSchema written = new IndexSchema(this.table, new int[] { 3, 0 }, new int[] { 2 }, PageSize.SIZE_4096, false);
+		IndexResourceManager.createIndex(file, written).closeResource();
+		try {
+			IndexResourceManager opened = IndexResourceManager.openIndex(file, this.table);
+			IndexSchema schema = opened.getSchema();
+			opened.closeResource();
+
+			assertArrayEquals(new int[] { 3, 0 }, schema.getColumnNumbers());
+			assertArrayEquals(new int[] { 2 }, schema.getIncludedColumnNumbers());
+			assertEquals(16, schema.getIncludedWidth());
+			assertEquals(written.getMaximalLeafEntries(), schema.getMaximalLeafEntries());
+			assertTrue(schema.getMaximalLeafEntries() <
+					new IndexSchema(this.table, new int[] { 3, 0 }, PageSize.SIZE_4096, false).getMaximalLeafEntries());
+		}
+		finally {
+			IndexResourceManager.deleteIndex(file);
+		}
+	}
+
+	/**
+	 * Checks that a lookup is turned into an index-only lookup exactly when the index covers
+	 * the needed columns, and that the index-only lookup produces the columns.
+	 */
+	@Test
+	public void testIndexOnlyLookup() throws Exception
+	{
+		TableDescriptor tableDesc = new TableDescriptor("T", "t.mdtb");
+		IndexDescriptor indexDesc = new IndexDescriptor("T_COVERING", "T", this.indexFile.getPath());
+		indexDesc.setResourceProperties(this.resManager, tableDesc, INDEX_RESOURCE_ID);
+		BaseTableAccess access = new BaseTableAccess(tableDesc);
+
+		Column key = new Column(access, DataType.intType(), 0);
+		Column payload = new Column(access, DataType.intType(), 1);
+		Column name = new Column(access, DataType.charType(8), 2);
+		Column other = new Column(access, DataType.intType(), 3);
+
+		Predicate parsed = new Predicate();
+		parsed.setOperator(Predicate.Operator.SMALLER);
+		IndexLookupPlanOperator lookup = new IndexLookupPlanOperator(indexDesc, access,
+				new LocalPredicateAtom(parsed, key, new IntField(100)), 100);
+
+		// a column that is not covered needs a fetch
+		OptimizerPlanOperator plan = PhysicalPlanGeneratorUtils.addFetchIfNotCovered(lookup, new Column[] { key, other });
+		assertTrue(plan instanceof FetchPlanOperator);
+
+		// covered columns come from the index
+		Column[] needed = new Column[] { name, key, payload };
+		plan = PhysicalPlanGeneratorUtils.addFetchIfNotCovered(lookup, needed);
+		assertTrue(plan instanceof IndexLookupPlanOperator);
+		IndexLookupPlanOperator indexOnly = (IndexLookupPlanOperator) plan;
+		assertTrue(indexOnly.isIndexOnly());
+		assertArrayEquals(needed, indexOnly.getReturnedColumns());
+
+		fillIndex();
+		PhysicalPlanOperator op = indexOnly.createPhysicalPlan(this.bufferPool, null);
+		op.open(null);
+		int num = 0;
+		DataTuple tuple;
+		while ((tuple = op.next()) != null) {
+			assertEquals(3, tuple.getNumberOfFields());
+			assertEquals(name(num), tuple.getField(0));
+			assertEquals(new IntField(num), tuple.getField(1));
+			assertEquals(payload(num), tuple.getField(2));
+			num++;
+		}
+		op.close();
+		assertEquals(100, num);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Inserts all entries with their included columns in random order.
+	 */
+	private BTreeIndex fillIndex() throws Exception
+	{
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int i = 0; i < NUM_ENTRIES; i++) {
+			keys.add(i);
+		}
+		Collections.shuffle(keys, new Random(SEED));
+
+		BTreeIndex index = AbstractExtensionFactory.getExtensionFactory().createConcurrentBTreeIndex(this.schema, this.bufferPool, INDEX_RESOURCE_ID);
+		for (int i : keys) {
+			index.insertEntry(new IntField(i), new RID(i), new DataField[] { payload(i), name(i) });
+		}
+		return index;
+	}
+
+	/**
+	 * Checks that the iterator returns the entries for the keys from <code>first</code> up to
+	 * the last key with the given step, each with its included columns and RID.
+	 */
+	private static void checkEntries(IndexResultIterator<DataTuple> iter, int first, int step) throws Exception
+	{
+		int expected = first;
+		while (iter.hasNext()) {
+			DataTuple entry = iter.next();
+			assertNotNull(entry);
+			assertEquals(4, entry.getNumberOfFields());
+			assertEquals(new IntField(expected), entry.getField(0));
+			assertEquals(payload(expected), entry.getField(1));
+			assertEquals(name(expected), entry.getField(2));
+			assertEquals(new RID(expected), entry.getField(3));
+			expected += step;
+		}
+		assertEquals(NUM_ENTRIES, expected);
+	}
+
+	private static IntField payload(int key)
+	{
+		return new IntField(key * 7);
+	}
+
+	private static CharField name(int key)
+	{
+		return new CharField(String.format("N%07d", key));
+	}
+}
@@ -0,0 +1,319 @@
+package de.tuberlin.dima.minidb.test.io.index;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.BasicType;
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DateField;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeInnerNodePage;
+import de.tuberlin.dima.minidb.io.index.BTreeLeafPage;
+import de.tuberlin.dima.minidb.io.index.IndexPageFactory;
+
+
+/**
+ * Randomized test for the key search on B-Tree pages, which compares the probe keys with the
+ * encoded keys on the page without decoding them. Pages are filled with random sorted keys,
+ * including NULL values, duplicates and the extreme values of each type, and every lookup must
+ * give the same position, child page and RIDs as a search over the keys with
+ * <code>DataField.compareTo</code>.
+ */
+public class TestEncodedKeyComparison
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 2201763540981L;
+
+	/**
+	 * Size of the pages in the test.
+	 */
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	/**
+	 * Number of pages filled for each key type.
+	 */
+	private static final int NUM_PAGES = 20;
+
+	/**
+	 * Number of lookups on each page.
+	 */
+	private static final int NUM_PROBES = 500;
+
+	/**
+	 * Length of the CHAR keys.
+	 */
+	private static final int CHAR_LENGTH = 12;
+
+	/**
+	 * Characters for the CHAR keys: some below the space, letters, characters that the compact
+	 * format stores in one byte up to its limit, and characters that it escapes.
+	 */
+	private static final String CHARS = "\u0001\u001f !azAZ~\u007f\u00e9\u00fc\u00fd\u00fe\u00ff\u0100\u4e2d\uffee";
+
+	/**
+	 * Random number generator used to create the keys.
+	 */
+	private final Random random = new Random(SEED);
+
+
+	@Test
+	public void testIntKeys() throws Exception
+	{
+		checkKeys(DataType.intType(), false, new KeyGenerator() {
+			@Override
+			public DataField next(Random random)
+			{
+				switch (random.nextInt(8)) {
+				case 0: return new IntField(Integer.MAX_VALUE);
+				case 1: return new IntField(Integer.MIN_VALUE + 1);
+				case 2: return new IntField(random.nextInt(20) - 10);
+				default: return new IntField(random.nextInt());
+				}
+			}
+		});
+	}
+
+	@Test
+	public void testBigIntKeys() throws Exception
+	{
+		checkKeys(DataType.bigIntType(), false, new KeyGenerator() {
+			@Override
+			public DataField next(Random random)
+			{
+				switch (random.nextInt(8)) {
+				case 0: return new BigIntField(Long.MAX_VALUE);
+				case 1: return new BigIntField(Long.MIN_VALUE + 1);
+				// values that differ only in the upper or only in the lower half
+				case 2: return new BigIntField(((long) (random.nextInt(4) - 2)) << 32);
+				case 3: return new BigIntField(random.nextInt() & 0xffffffffL);
+				default: return new BigIntField(random.nextLong() >> random.nextInt(64));
+				}
+			}
+		});
+	}
+
+	@Test
+	public void testDoubleKeys() throws Exception
+	{
+		checkKeys(DataType.doubleType(), false, new KeyGenerator() {
+			@Override
+			public DataField next(Random random)
+			{
+				switch (random.nextInt(10)) {
+				case 0: return new DoubleField(Double.MAX_VALUE);
+				case 1: return new DoubleField(-Double.MAX_VALUE);
+				case 2: return new DoubleField(Double.MIN_VALUE);
+				case 3: return new DoubleField(random.nextBoolean() ? 0.0 : -0.0);
+				case 4: return new DoubleField(random.nextBoolean() ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY);
+				default: return new DoubleField((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(40) - 20));
+				}
+			}
+		});
+	}
+
+	@Test
+	public void testDateKeys() throws Exception
+	{
+		checkKeys(DataType.dateType(), false, new KeyGenerator() {
+			@Override
+			public DataField next(Random random) throws Exception
+			{
+				// few distinct years and months, so that keys often differ only in the day
+				return new DateField(1 + random.nextInt(31), random.nextInt(12), 1990 + random.nextInt(4));
+			}
+		});
+	}
+
+	@Test
+	public void testCharKeys() throws Exception
+	{
+		checkKeys(DataType.charType(CHAR_LENGTH), false, new KeyGenerator() {
+			@Override
+			public DataField next(Random random)
+			{
+				return randomChars(random, CHAR_LENGTH);
+			}
+		});
+	}
+
+	@Test
+	public void testCompactCharKeys() throws Exception
+	{
+		checkKeys(DataType.charType(CHAR_LENGTH), true, new KeyGenerator() {
+			@Override
+			public DataField next(Random random)
+			{
+				// at most two escaped characters, which the trailing spaces make room for
+				return randomChars(random, CHAR_LENGTH - 4);
+			}
+		});
+	}
+
+	/**
+	 * Fills leaf and inner node pages with sorted random keys of the given type and checks the
+	 * lookups of random keys, contained ones and others, against the sorted keys.
+	 */
+	private void checkKeys(DataType type, boolean compact, KeyGenerator generator) throws Exception
+	{
+		TableSchema table = new TableSchema(PAGE_SIZE);
+		table.addColumn(ColumnSchema.createColumnSchema("Key", type));
+		IndexSchema schema = new IndexSchema(table, 0, PAGE_SIZE, false, compact, 1, 1);
+
+		for (int p = 0; p < NUM_PAGES; p++) {
+			// about a third of distinct keys, to get runs of duplicates
+			DataField[] distinct = new DataField[Math.max(schema.getMaximalLeafEntries(), schema.getFanOut()) / 3];
+			for (int i = 0; i < distinct.length; i++) {
+				distinct[i] = this.random.nextInt(20) == 0 ? type.getNullValue() : generator.next(this.random);
+			}
+
+			DataField[] leafKeys = pick(distinct, schema.getMaximalLeafEntries());
+			BTreeLeafPage leaf = (BTreeLeafPage) IndexPageFactory.initIndexPage(schema, new byte[PAGE_SIZE.getNumberOfBytes()], 1, true);
+			for (int i = 0; i < leafKeys.length; i++) {
+				leaf.insertKeyRIDPair(leafKeys[i], new RID(i));
+			}
+
+			DataField[] innerKeys = pick(distinct, schema.getFanOut());
+			BTreeInnerNodePage inner = (BTreeInnerNodePage) IndexPageFactory.initIndexPage(schema, new byte[PAGE_SIZE.getNumberOfBytes()], 1, false);
+			inner.initRootState(innerKeys[0], 1, 2);
+			for (int i = 1; i < innerKeys.length; i++) {
+				inner.insertKeyPageNumberPairAtPosition(innerKeys[i], i + 2, i);
+			}
+
+			// the keys must decode to the inserted values, in the inserted order
+			for (int i = 0; i < leafKeys.length; i++) {
+				assertEquals("Leaf key at " + i, leafKeys[i], leaf.getKey(i));
+			}
+			for (int i = 0; i < innerKeys.length; i++) {
+				assertEquals("Inner node key at " + i, innerKeys[i], inner.getKey(i));
+			}
+
+			for (int i = 0; i < NUM_PROBES; i++) {
+				DataField probe;
+				switch (this.random.nextInt(3)) {
+				case 0: probe = distinct[this.random.nextInt(distinct.length)]; break;
+				case 1: probe = type.getNullValue(); break;
+				default: probe = generator.next(this.random);
+				}
+
+				checkLeafLookup(leaf, leafKeys, probe);
+				checkInnerLookup(inner, innerKeys, probe);
+			}
+
+			if (type.getBasicType() == BasicType.CHAR) {
+				// probes shorter and longer than the column, which compare by their length
+				for (int i = 0; i < NUM_PROBES; i++) {
+					String value = ((CharField) distinct[this.random.nextInt(distinct.length)]).getValue();
+					if (value == null) {
+						continue;
+					}
+					CharField probe = this.random.nextBoolean() ?
+							new CharField(value.substring(0, this.random.nextInt(value.length()))) :
+							new CharField(value + CHARS.charAt(this.random.nextInt(CHARS.length())));
+					checkLeafLookup(leaf, leafKeys, probe);
+					checkInnerLookup(inner, innerKeys, probe);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks the position and the RIDs that the leaf page finds for a key.
+	 */
+	private static void checkLeafLookup(BTreeLeafPage leaf, DataField[] keys, DataField probe) throws Exception
+	{
+		int expectedPos = keys.length;
+		Set<RID> expectedRIDs = new HashSet<RID>();
+		for (int i = keys.length - 1; i >= 0; i--) {
+			int cmp = keys[i].compareTo(probe);
+			if (cmp >= 0) {
+				expectedPos = i;
+			}
+			if (cmp == 0) {
+				expectedRIDs.add(new RID(i));
+			}
+		}
+
+		assertEquals("Position of key " + probe, expectedPos, leaf.getPositionForKey(probe));
+
+		List<RID> rids = new ArrayList<RID>();
+		leaf.getAllsRIDsForKey(probe, rids);
+		assertEquals("RIDs of key " + probe, expectedRIDs, new HashSet<RID>(rids));
+		assertEquals("Number of RIDs of key " + probe, expectedRIDs.size(), rids.size());
+	}
+
+	/**
+	 * Checks the child page that the inner node page finds for a key. The pointer after the
+	 * key at position <code>i</code> leads to page <code>i + 2</code>.
+	 */
+	private static void checkInnerLookup(BTreeInnerNodePage inner, DataField[] keys, DataField probe) throws Exception
+	{
+		int expectedPos = keys.length;
+		for (int i = keys.length - 1; i >= 0; i--) {
+			if (keys[i].compareTo(probe) >= 0) {
+				expectedPos = i;
+			}
+		}
+		assertEquals("Child page for key " + probe, expectedPos + 1, inner.getChildPageForKey(probe));
+	}
+
+	/**
+	 * Picks the given number of random keys and sorts them.
+	 */
+	private DataField[] pick(DataField[] keys, int num)
+	{
+		DataField[] picked = new DataField[num];
+		for (int i = 0; i < num; i++) {
+			picked[i] = keys[this.random.nextInt(keys.length)];
+		}
+		Arrays.sort(picked);
+		return picked;
+	}
+
+	/**
+	 * Creates a CHAR key of up to the given number of random characters, padded with spaces to
+	 * the column length, as the values are read from the table. The compact format allows for
+	 * two escaped characters in a key that leaves four characters to the padding.
+	 */
+	private static CharField randomChars(Random random, int maxChars)
+	{
+		char[] chars = new char[CHAR_LENGTH];
+		Arrays.fill(chars, ' ');
+		int len = 1 + random.nextInt(maxChars);
+		int escaped = 0;
+		for (int i = 0; i < len; i++) {
+			char c = CHARS.charAt(random.nextInt(CHARS.length()));
+			if (c > 0xfd && ++escaped > 2) {
+				c = 'a';
+			}
+			chars[i] = c;
+		}
+		return new CharField(new String(chars));
+	}
+
+	/**
+	 * Creates random keys of one type.
+	 */
+	private static interface KeyGenerator
+	{
+		DataField next(Random random) throws Exception;
+	}
+}
@@ -0,0 +1,357 @@
+package de.tuberlin.dima.minidb.test.io.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexDescriptor;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DuplicateException;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.HashIndex;
+import de.tuberlin.dima.minidb.io.index.HashIndexResourceManager;
+import de.tuberlin.dima.minidb.io.index.IndexResultIterator;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.optimizer.IndexLookupPlanOperator;
+import de.tuberlin.dima.minidb.parser.Predicate;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.semantics.BaseTableAccess;
+import de.tuberlin.dima.minidb.semantics.Column;
+import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicateAtom;
+
+
+/**
+ * Tests for the linear hash index: lookups stay correct while buckets split, keys with many
+ * entries spill into overflow pages, deletes release those pages again, and the state of the
+ * buckets survives reopening the index.
+ */
+public class TestHashIndex
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 2398471209833L;
+
+	/**
+	 * Resource id of the index under test.
+	 */
+	private static final int INDEX_RESOURCE_ID = 8;
+
+	/**
+	 * Number of distinct keys in the index.
+	 */
+	private static final int NUM_KEYS = 20000;
+
+	/**
+	 * File where the index data is stored.
+	 */
+	private final File indexFile = new File(System.getProperty("java.io.tmpdir") + File.separatorChar + "minidbstesthashindex.mdix");
+
+	/**
+	 * Location of the configuration file for the database instance.
+	 */
+	protected String configFileName = this.getClass().getResource("/config.xml").getPath();
+
+	/**
+	 * The configuration for the buffer pool.
+	 */
+	private Config config;
+
+	/**
+	 * The schema of the indexed table.
+	 */
+	private TableSchema table;
+
+	/**
+	 * The resource manager of the index under test.
+	 */
+	private HashIndexResourceManager resManager;
+
+	/**
+	 * The buffer pool holding the pages of the index.
+	 */
+	private BufferPoolManager bufferPool;
+
+
+	/**
+	 * Creates an empty hash index over an INT column.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		this.config = Config.loadConfig(new File(this.configFileName));
+
+		this.table = new TableSchema(PageSize.SIZE_4096);
+		this.table.addColumn(ColumnSchema.createColumnSchema("Key", DataType.intType(), true));
+		this.table.addColumn(ColumnSchema.createColumnSchema("Name", DataType.charType(8), true));
+
+		this.resManager = HashIndexResourceManager.createIndex(this.indexFile,
+				new IndexSchema(this.table, 0, PageSize.SIZE_4096, false, 1, 1));
+		startBufferPool();
+	}
+
+	/**
+	 * Closes and deletes the index.
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.resManager.closeResource();
+		try {
+			HashIndexResourceManager.deleteIndex(this.indexFile);
+		}
+		catch (IOException ioex) {
+			/* do nothing */
+		}
+	}
+
+	/**
+	 * Checks that all keys are found while the buckets split, and that absent keys are not.
+	 */
+	@Test
+	public void testInsertAndLookup() throws Exception
+	{
+		HashIndex index = fillIndex();
+		assertTrue(this.resManager.getNumberOfBuckets() > 1);
+		assertEquals(NUM_KEYS, this.resManager.getNumberOfEntries());
+
+		for (int i = 0; i < NUM_KEYS; i++) {
+			checkRids(index, i, rid(i));
+		}
+		checkRids(index, NUM_KEYS);
+		checkRids(index, -1);
+	}
+
+	/**
+	 * Checks that many entries for the same key are found across overflow pages, and that the
+	 * overflow pages are reused after the entries are deleted.
+	 */
+	@Test
+	public void testDuplicatesAndDeletes() throws Exception
+	{
+		HashIndex index = AbstractExtensionFactory.getExtensionFactory().createHashIndex(this.resManager, this.bufferPool, INDEX_RESOURCE_ID);
+		int numDuplicates = 3000;
+		RID[] rids = new RID[numDuplicates];
+		for (int i = 0; i < numDuplicates; i++) {
+			rids[i] = new RID(7, i);
+			index.insertEntry(new IntField(42), rids[i]);
+			index.insertEntry(new IntField(i + 100000), rid(i));
+		}
+		checkRids(index, 42, rids);
+
+		// remove every other entry of the key, then a missing one
+		for (int i = 0; i < numDuplicates; i += 2) {
+			assertTrue(index.deleteEntry(new IntField(42), rids[i]));
+		}
+		assertFalse(index.deleteEntry(new IntField(42), rids[0]));
+		assertFalse(index.deleteEntry(new IntField(43), rids[1]));
+
+		RID[] remaining = new RID[numDuplicates / 2];
+		for (int i = 0; i < remaining.length; i++) {
+			remaining[i] = rids[2 * i + 1];
+		}
+		checkRids(index, 42, remaining);
+
+		// the emptied overflow pages take the new entries before the file grows
+		long length = this.indexFile.length();
+		for (int i = 0; i < numDuplicates / 2; i++) {
+			index.insertEntry(new IntField(42), new RID(9, i));
+		}
+		assertEquals(length, this.indexFile.length());
+		for (int i = 0; i < numDuplicates; i++) {
+			checkRids(index, i + 100000, rid(i));
+		}
+	}
+
+	/**
+	 * Checks that a unique index rejects a second entry for a key.
+	 */
+	@Test
+	public void testUnique() throws Exception
+	{
+		File file = new File(System.getProperty("java.io.tmpdir") + File.separatorChar + "minidbstesthashunique.mdix");
+		HashIndexResourceManager unique = HashIndexResourceManager.createIndex(file,
+				new IndexSchema(this.table, 1, PageSize.SIZE_4096, true, 1, 1));
+		try {
+			this.bufferPool.registerResource(INDEX_RESOURCE_ID + 1, unique);
+			HashIndex index = AbstractExtensionFactory.getExtensionFactory().createHashIndex(unique, this.bufferPool, INDEX_RESOURCE_ID + 1);
+			index.insertEntry(new CharField("first"), new RID(1));
+			index.insertEntry(new CharField("firs"), new RID(2));
+			try {
+				index.insertEntry(new CharField("first"), new RID(3));
+				fail("A duplicate key was accepted by a unique index.");
+			}
+			catch (DuplicateException dex) {
+				// expected
+			}
+			checkRids(index, new CharField("first"), new RID(1));
+			checkRids(index, new CharField("firs"), new RID(2));
+		}
+		finally {
+			this.bufferPool.closeBufferPool();
+			unique.closeResource();
+			HashIndexResourceManager.deleteIndex(file);
+			startBufferPool();
+		}
+	}
+
+	/**
+	 * Checks that the buckets and the entries are restored when the index is reopened.
+	 */
+	@Test
+	public void testReopen() throws Exception
+	{
+		fillIndex();
+		int buckets = this.resManager.getNumberOfBuckets();
+
+		this.bufferPool.closeBufferPool();
+		this.resManager.closeResource();
+		assertTrue(HashIndexResourceManager.isHashIndex(this.indexFile));
+
+		this.resManager = HashIndexResourceManager.openIndex(this.indexFile, this.table);
+		assertEquals(buckets, this.resManager.getNumberOfBuckets());
+		assertEquals(NUM_KEYS, this.resManager.getNumberOfEntries());
+		assertFalse(this.resManager.getSchema().isUnique());
+		startBufferPool();
+
+		HashIndex index = AbstractExtensionFactory.getExtensionFactory().createHashIndex(this.resManager, this.bufferPool, INDEX_RESOURCE_ID);
+		for (int i = 0; i < NUM_KEYS; i++) {
+			checkRids(index, i, rid(i));
+		}
+	}
+
+	/**
+	 * Checks that an equality lookup on a hash index is planned and executed, correlated and
+	 * uncorrelated, and that range lookups are refused.
+	 */
+	@Test
+	public void testLookupOperator() throws Exception
+	{
+		fillIndex();
+		TableDescriptor tableDesc = new TableDescriptor("T", "t.mdtb");
+		IndexDescriptor indexDesc = new IndexDescriptor("T_HASH", "T", this.indexFile.getPath());
+		indexDesc.setResourceProperties(this.resManager, tableDesc, INDEX_RESOURCE_ID);
+		assertTrue(indexDesc.isHashIndex());
+		BaseTableAccess access = new BaseTableAccess(tableDesc);
+		Column key = new Column(access, DataType.intType(), 0);
+
+		Predicate parsed = new Predicate();
+		parsed.setOperator(Predicate.Operator.EQUAL);
+		IndexLookupPlanOperator lookup = new IndexLookupPlanOperator(indexDesc, access,
+				new LocalPredicateAtom(parsed, key, new IntField(1234)), 1);
+		assertNull(lookup.getColumnOrder());
+		assertFalse(lookup.coversColumns(new Column[] { key }));
+
+		PhysicalPlanOperator op = lookup.createPhysicalPlan(this.bufferPool, null);
+		op.open(null);
+		assertEquals(rid(1234), op.next().getField(0));
+		assertNull(op.next());
+		op.close();
+
+		op = new IndexLookupPlanOperator(indexDesc, access, 1, 1).createPhysicalPlan(this.bufferPool, null);
+		for (int i = 0; i < 100; i++) {
+			DataTuple outer = new DataTuple(2);
+			outer.assignDataField(new CharField("x"), 0);
+			outer.assignDataField(new IntField(i * 13), 1);
+			op.open(outer);
+			assertEquals(rid(i * 13), op.next().getField(0));
+			assertNull(op.next());
+			op.close();
+		}
+
+		parsed = new Predicate();
+		parsed.setOperator(Predicate.Operator.SMALLER);
+		try {
+			new IndexLookupPlanOperator(indexDesc, access, new LocalPredicateAtom(parsed, key, new IntField(10)), 10);
+			fail("A hash index was used for a range predicate.");
+		}
+		catch (IllegalArgumentException iaex) {
+			// expected
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * (Re-)creates the buffer pool and registers the index.
+	 */
+	private void startBufferPool() throws Exception
+	{
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(this.config, Logger.getLogger("BPM - Logger"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(INDEX_RESOURCE_ID, this.resManager);
+	}
+
+	/**
+	 * Inserts all keys in random order.
+	 */
+	private HashIndex fillIndex() throws Exception
+	{
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int i = 0; i < NUM_KEYS; i++) {
+			keys.add(i);
+		}
+		Collections.shuffle(keys, new Random(SEED));
+
+		HashIndex index = AbstractExtensionFactory.getExtensionFactory().createHashIndex(this.resManager, this.bufferPool, INDEX_RESOURCE_ID);
+		for (int i : keys) {
+			index.insertEntry(new IntField(i), rid(i));
+		}
+		return index;
+	}
+
+	private static RID rid(int key)
+	{
+		return new RID(key / 100, key % 100);
+	}
+
+	private static void checkRids(HashIndex index, int key, RID... expected) throws Exception
+	{
+		checkRids(index, new IntField(key), expected);
+	}
+
+	/**
+	 * Checks that the lookup for the key returns exactly the expected RIDs, in any order.
+	 */
+	private static void checkRids(HashIndex index, DataField key, RID... expected) throws Exception
+	{
+		Set<RID> found = new HashSet<RID>();
+		IndexResultIterator<RID> iter = index.lookupRids(key);
+		while (iter.hasNext()) {
+			assertTrue("RID returned twice for key " + key, found.add(iter.next()));
+		}
+		assertEquals("Wrong RIDs for key " + key, expected.length, found.size());
+		for (RID rid : expected) {
+			assertTrue("RID " + rid + " missing for key " + key, found.contains(rid));
+		}
+	}
+}
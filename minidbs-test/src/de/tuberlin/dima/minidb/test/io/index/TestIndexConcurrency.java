@@ -0,0 +1,446 @@
+package de.tuberlin.dima.minidb.test.io.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.index.IndexResultIterator;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+
+
+/**
+ * Stress and throughput test for B-Tree indexes that are accessed by several threads at
+ * the same time.
+ */
+public class TestIndexConcurrency
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 2387465129834L;
+
+	/**
+	 * Resource id of the index under test.
+	 */
+	private static final int INDEX_RESOURCE_ID = 5;
+
+	/**
+	 * Number of threads accessing the index.
+	 */
+	private static final int NUM_THREADS = 8;
+
+	/**
+	 * Number of entries inserted per thread.
+	 */
+	private static final int NUM_ENTRIES_PER_THREAD = 25000;
+
+	/**
+	 * Number of RIDs per key, to have keys spanning several leaves.
+	 */
+	private static final int NUM_DUPLICATES = 3;
+
+	/**
+	 * File where the index data is stored.
+	 */
+	private final File indexFile = new File(System.getProperty("java.io.tmpdir") + File.separatorChar + "minidbstestconcurrentindex.mdix");
+
+	/**
+	 * Location of the configuration file for the database instance.
+	 */
+	protected String configFileName = this.getClass().getResource("/config.xml").getPath();
+
+	/**
+	 * The schema of the index under test.
+	 */
+	private IndexSchema schema;
+
+	/**
+	 * The resource manager of the index under test.
+	 */
+	private IndexResourceManager resManager;
+
+	/**
+	 * The buffer pool holding the pages of the index.
+	 */
+	private BufferPoolManager bufferPool;
+
+
+	/**
+	 * Creates an empty index on an INT column.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		Config config = Config.loadConfig(new File(this.configFileName));
+
+		TableSchema table = new TableSchema(PageSize.SIZE_4096);
+		table.addColumn(ColumnSchema.createColumnSchema("Key", DataType.intType(), true));
+		this.schema = new IndexSchema(table, 0, PageSize.SIZE_4096);
+
+		this.resManager = IndexResourceManager.createIndex(this.indexFile, this.schema);
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(config, Logger.getLogger("BPM - Logger"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(INDEX_RESOURCE_ID, this.resManager);
+	}
+
+	/**
+	 * Closes and deletes the index.
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.resManager.closeResource();
+		try {
+			IndexResourceManager.deleteIndex(this.indexFile);
+		}
+		catch (IOException ioex) {
+			/* do nothing */
+		}
+	}
+
+	/**
+	 * Inserts entries from several threads and checks that all of them are found afterwards.
+	 */
+	@Test
+	public void testConcurrentInserts() throws Exception
+	{
+		int[][] keys = createKeys(NUM_THREADS);
+		runThreads(inserters(keys));
+		checkIndex(keys);
+	}
+
+	/**
+	 * Inserts entries from several threads while other threads look up entries inserted before.
+	 * The lookups must find these entries at all times.
+	 */
+	@Test
+	public void testLookupsDuringInserts() throws Exception
+	{
+		int[][] keys = createKeys(2 * NUM_THREADS);
+		int[][] preloaded = new int[NUM_THREADS][];
+		int[][] inserted = new int[NUM_THREADS][];
+		System.arraycopy(keys, 0, preloaded, 0, NUM_THREADS);
+		System.arraycopy(keys, NUM_THREADS, inserted, 0, NUM_THREADS);
+
+		runThreads(inserters(preloaded));
+
+		// the readers stop once all inserters are done
+		final AtomicInteger runningInserters = new AtomicInteger(NUM_THREADS);
+		final int[][] present = preloaded;
+		Worker[] inserters = inserters(inserted);
+		Worker[] workers = new Worker[2 * NUM_THREADS];
+		for (int t = 0; t < NUM_THREADS; t++) {
+			final Worker inserter = inserters[t];
+			workers[t] = new Worker() {
+				@Override
+				void work(BTreeIndex index) throws Exception {
+					try {
+						inserter.work(index);
+					}
+					finally {
+						runningInserters.decrementAndGet();
+					}
+				}
+			};
+
+			final int thread = t;
+			workers[NUM_THREADS + t] = new Worker() {
+				@Override
+				void work(BTreeIndex index) throws Exception {
+					Random rnd = new Random(SEED + thread);
+					while (runningInserters.get() > 0) {
+						int key = present[rnd.nextInt(NUM_THREADS)][rnd.nextInt(NUM_ENTRIES_PER_THREAD)];
+						assertEquals("Lookup of key " + key + " returned the wrong number of RIDs.",
+							NUM_DUPLICATES, count(index.lookupRids(new IntField(key))));
+					}
+				}
+			};
+		}
+
+		runThreads(workers);
+		checkIndex(keys);
+	}
+
+	/**
+	 * Deletes the entries of seven out of eight keys from several threads, while other threads
+	 * look up the remaining keys. The deletes leave most leaves underfull, so that they are merged.
+	 */
+	@Test
+	public void testConcurrentDeletes() throws Exception
+	{
+		final int[][] keys = createKeys(NUM_THREADS);
+		runThreads(inserters(keys));
+
+		final AtomicInteger runningDeleters = new AtomicInteger(NUM_THREADS);
+		Worker[] workers = new Worker[2 * NUM_THREADS];
+		for (int t = 0; t < NUM_THREADS; t++) {
+			final int[] mine = keys[t];
+			workers[t] = new Worker() {
+				@Override
+				void work(BTreeIndex index) throws Exception {
+					try {
+						for (int key : mine) {
+							if (key % 8 != 0) {
+								for (int d = 0; d < NUM_DUPLICATES; d++) {
+									assertTrue("Entry of key " + key + " was not deleted.",
+										index.deleteEntry(new IntField(key), new RID(key, d)));
+								}
+							}
+						}
+					}
+					finally {
+						runningDeleters.decrementAndGet();
+					}
+				}
+			};
+
+			final int thread = t;
+			workers[NUM_THREADS + t] = new Worker() {
+				@Override
+				void work(BTreeIndex index) throws Exception {
+					Random rnd = new Random(SEED + thread);
+					while (runningDeleters.get() > 0) {
+						int key = keys[rnd.nextInt(NUM_THREADS)][rnd.nextInt(NUM_ENTRIES_PER_THREAD)] & ~7;
+						assertEquals("Lookup of key " + key + " returned the wrong number of RIDs.",
+							NUM_DUPLICATES, count(index.lookupRids(new IntField(key))));
+					}
+				}
+			};
+		}
+		runThreads(workers);
+
+		BTreeIndex index = createIndex();
+		int numKeys = NUM_THREADS * NUM_ENTRIES_PER_THREAD;
+		for (int key = 0; key < numKeys; key++) {
+			int expected = key % 8 == 0 ? NUM_DUPLICATES : 0;
+			assertEquals("Wrong number of RIDs for key " + key + ".", expected, count(index.lookupRids(new IntField(key))));
+		}
+		assertTrue("Deleted entry was found again.", !index.deleteEntry(new IntField(1), new RID(1, 0)));
+
+		IndexResultIterator<DataField> iter = index.lookupKeys(new IntField(0), new IntField(numKeys), true, false);
+		int num = 0;
+		while (iter.hasNext()) {
+			assertEquals("Range scan returned a deleted key.", 0, ((IntField) iter.next()).getValue() % 8);
+			num++;
+		}
+		assertEquals("Range scan returned the wrong number of keys.", numKeys / 8 * NUM_DUPLICATES, num);
+	}
+
+	/**
+	 * Measures the throughput of inserts and lookups with an increasing number of threads.
+	 */
+	@Test
+	public void testThroughput() throws Exception
+	{
+		int[][] keys = createKeys(NUM_THREADS);
+
+		System.out.println("Threads\tInserts/s\tLookups/s");
+		int done = 0;
+		for (int threads = 1; threads <= NUM_THREADS; threads <<= 1) {
+			int[][] batch = new int[threads][];
+			System.arraycopy(keys, done, batch, 0, threads);
+			long insertTime = runThreads(inserters(batch));
+
+			final int[][] present = new int[done + threads][];
+			System.arraycopy(keys, 0, present, 0, present.length);
+			Worker[] readers = new Worker[threads];
+			for (int t = 0; t < threads; t++) {
+				final int thread = t;
+				readers[t] = new Worker() {
+					@Override
+					void work(BTreeIndex index) throws Exception {
+						Random rnd = new Random(SEED + thread);
+						for (int i = 0; i < NUM_ENTRIES_PER_THREAD; i++) {
+							int key = present[rnd.nextInt(present.length)][rnd.nextInt(NUM_ENTRIES_PER_THREAD)];
+							count(index.lookupRids(new IntField(key)));
+						}
+					}
+				};
+			}
+			long lookupTime = runThreads(readers);
+
+			long numOps = (long) threads * NUM_ENTRIES_PER_THREAD;
+			System.out.println(threads + "\t" + (numOps * NUM_DUPLICATES * 1000 / Math.max(1, insertTime)) +
+				"\t\t" + (numOps * 1000 / Math.max(1, lookupTime)));
+			done += threads;
+			if (done + (threads << 1) > NUM_THREADS) {
+				break;
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * A task that a thread runs against the index.
+	 */
+	private static abstract class Worker
+	{
+		abstract void work(BTreeIndex index) throws Exception;
+	}
+
+	/**
+	 * Creates disjoint random key sets, one per thread.
+	 */
+	private int[][] createKeys(int numSets)
+	{
+		List<Integer> all = new ArrayList<Integer>(numSets * NUM_ENTRIES_PER_THREAD);
+		for (int i = 0; i < numSets * NUM_ENTRIES_PER_THREAD; i++) {
+			all.add(i);
+		}
+		Collections.shuffle(all, new Random(SEED));
+
+		int[][] keys = new int[numSets][NUM_ENTRIES_PER_THREAD];
+		for (int i = 0; i < all.size(); i++) {
+			keys[i / NUM_ENTRIES_PER_THREAD][i % NUM_ENTRIES_PER_THREAD] = all.get(i);
+		}
+		return keys;
+	}
+
+	/**
+	 * Creates workers that insert the given keys, each with its duplicates.
+	 */
+	private Worker[] inserters(final int[][] keys)
+	{
+		Worker[] workers = new Worker[keys.length];
+		for (int t = 0; t < keys.length; t++) {
+			final int[] mine = keys[t];
+			workers[t] = new Worker() {
+				@Override
+				void work(BTreeIndex index) throws Exception {
+					for (int d = 0; d < NUM_DUPLICATES; d++) {
+						for (int key : mine) {
+							index.insertEntry(new IntField(key), new RID(key, d));
+						}
+					}
+				}
+			};
+		}
+		return workers;
+	}
+
+	/**
+	 * Runs each worker in its own thread, on its own index instance, and rethrows the first failure.
+	 *
+	 * @return The time in milliseconds until all workers finished.
+	 */
+	private long runThreads(final Worker[] workers) throws Exception
+	{
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[workers.length];
+		for (int t = 0; t < workers.length; t++) {
+			final Worker worker = workers[t];
+			final BTreeIndex index = createIndex();
+			threads[t] = new Thread("Index Worker " + t) {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						worker.work(index);
+					}
+					catch (Throwable th) {
+						failure.compareAndSet(null, th);
+					}
+				}
+			};
+			threads[t].start();
+		}
+
+		long begin = System.currentTimeMillis();
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long time = System.currentTimeMillis() - begin;
+
+		Throwable th = failure.get();
+		if (th instanceof Error) {
+			throw (Error) th;
+		}
+		else if (th != null) {
+			throw new Exception("A worker failed.", th);
+		}
+		return time;
+	}
+
+	/**
+	 * Checks that the index contains exactly the given keys, each with all of its RIDs.
+	 */
+	private void checkIndex(int[][] keys) throws Exception
+	{
+		BTreeIndex index = createIndex();
+		int numKeys = 0;
+		for (int[] set : keys) {
+			for (int key : set) {
+				Set<RID> rids = new HashSet<RID>();
+				IndexResultIterator<RID> iter = index.lookupRids(new IntField(key));
+				while (iter.hasNext()) {
+					rids.add(iter.next());
+				}
+				assertEquals("Wrong RIDs for key " + key + ".", NUM_DUPLICATES, rids.size());
+				for (int d = 0; d < NUM_DUPLICATES; d++) {
+					assertTrue("RID missing for key " + key + ".", rids.contains(new RID(key, d)));
+				}
+			}
+			numKeys += set.length;
+		}
+
+		// the keys are in order in the leaves
+		IndexResultIterator<DataField> iter = index.lookupKeys(new IntField(0), new IntField(numKeys), true, false);
+		int num = 0;
+		DataField last = null;
+		while (iter.hasNext()) {
+			DataField key = iter.next();
+			assertTrue("Keys are not sorted.", last == null || last.compareTo(key) <= 0);
+			last = key;
+			num++;
+		}
+		assertEquals("Range scan returned the wrong number of keys.", numKeys * NUM_DUPLICATES, num);
+	}
+
+	private BTreeIndex createIndex()
+	{
+		return AbstractExtensionFactory.getExtensionFactory().createConcurrentBTreeIndex(this.schema, this.bufferPool, INDEX_RESOURCE_ID);
+	}
+
+	private static int count(IndexResultIterator<RID> iter) throws Exception
+	{
+		int num = 0;
+		while (iter.hasNext()) {
+			iter.next();
+			num++;
+		}
+		return num;
+	}
+}
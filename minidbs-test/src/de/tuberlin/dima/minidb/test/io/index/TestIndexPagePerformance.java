@@ -0,0 +1,240 @@
+package de.tuberlin.dima.minidb.test.io.index;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.MethodRule;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeInnerNodePage;
+import de.tuberlin.dima.minidb.io.index.BTreeLeafPage;
+import de.tuberlin.dima.minidb.io.index.IndexPageFactory;
+
+
+/**
+ * Benchmark for the key search in the B-Tree leaf and inner node pages.
+ */
+public class TestIndexPagePerformance
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 763498127634L;
+
+	/**
+	 * Size of the pages in the benchmark.
+	 */
+	private final static PageSize pz = PageSize.getDefaultPageSize();
+
+	/**
+	 * Number of key lookups per benchmark round.
+	 */
+	private final static int numLookups = 2000000;
+
+	/**
+	 * Length of the CHAR keys.
+	 */
+	private final static int charLength = 32;
+
+	/**
+	 * Mark test as benchmark.
+	 */
+	@Rule
+	public MethodRule benchmarkRun = new BenchmarkRule();
+
+	/**
+	 * The random number generator used to create keys.
+	 */
+	private Random random = new Random(SEED);
+
+	/**
+	 * Full pages with INT keys and the keys to look up.
+	 */
+	private BTreeLeafPage intLeaf;
+	private BTreeInnerNodePage intInner;
+	private DataField[] intProbes;
+
+	/**
+	 * Full pages with CHAR keys and the keys to look up.
+	 */
+	private BTreeLeafPage charLeaf;
+	private BTreeInnerNodePage charInner;
+	private DataField[] charProbes;
+
+	/**
+	 * Full pages with CHAR keys in the compact key format.
+	 */
+	private BTreeLeafPage compactLeaf;
+	private BTreeInnerNodePage compactInner;
+
+
+	/**
+	 * Writes a few infos about the benchmark to the console.
+	 */
+	@BeforeClass
+	public static void benchmarkInfos()
+	{
+		System.out.println("");
+		System.out.println("Page size in B: " + pz.getNumberOfBytes());
+		System.out.println("Number of lookups: " + numLookups);
+		System.out.println("");
+	}
+
+	/**
+	 * Fills a leaf and an inner node page for each key type.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		TableSchema table = new TableSchema(pz);
+		table.addColumn(ColumnSchema.createColumnSchema("IntKey", DataType.intType()));
+		table.addColumn(ColumnSchema.createColumnSchema("CharKey", DataType.charType(charLength)));
+
+		IndexSchema intSchema = new IndexSchema(table, 0, pz);
+		DataField[] intKeys = new DataField[Math.max(intSchema.getMaximalLeafEntries(), intSchema.getFanOut())];
+		for (int i = 0; i < intKeys.length; i++) {
+			intKeys[i] = new IntField(this.random.nextInt());
+		}
+		Arrays.sort(intKeys);
+
+		this.intLeaf = fillLeaf(intSchema, intKeys);
+		this.intInner = fillInner(intSchema, intKeys);
+		this.intProbes = pickProbes(intKeys);
+
+		IndexSchema charSchema = new IndexSchema(table, 1, pz);
+		// enough keys to fill the pages in the compact format as well
+		DataField[] charKeys = new DataField[2 * Math.max(charSchema.getMaximalLeafEntries(), charSchema.getFanOut())];
+		char[] chars = new char[charLength];
+		for (int i = 0; i < charKeys.length; i++) {
+			// keys with a long common prefix, as in many real CHAR columns
+			Arrays.fill(chars, 'a');
+			for (int k = charLength - 4; k < charLength; k++) {
+				chars[k] = (char) ('a' + this.random.nextInt(26));
+			}
+			charKeys[i] = new CharField(new String(chars));
+		}
+		Arrays.sort(charKeys);
+
+		this.charLeaf = fillLeaf(charSchema, charKeys);
+		this.charInner = fillInner(charSchema, charKeys);
+		this.charProbes = pickProbes(charKeys);
+
+		IndexSchema compactSchema = new IndexSchema(table, 1, pz, false, true, 1, 1);
+		this.compactLeaf = fillLeaf(compactSchema, charKeys);
+		this.compactInner = fillInner(compactSchema, charKeys);
+	}
+
+	@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 5)
+	@Test
+	public void testIntLeafSearch() throws Exception {
+		searchLeaf(this.intLeaf, this.intProbes);
+	}
+
+	@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 5)
+	@Test
+	public void testIntInnerNodeSearch() throws Exception {
+		searchInner(this.intInner, this.intProbes);
+	}
+
+	@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 5)
+	@Test
+	public void testCharLeafSearch() throws Exception {
+		searchLeaf(this.charLeaf, this.charProbes);
+	}
+
+	@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 5)
+	@Test
+	public void testCharInnerNodeSearch() throws Exception {
+		searchInner(this.charInner, this.charProbes);
+	}
+
+	@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 5)
+	@Test
+	public void testCompactCharLeafSearch() throws Exception {
+		searchLeaf(this.compactLeaf, this.charProbes);
+	}
+
+	@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 5)
+	@Test
+	public void testCompactCharInnerNodeSearch() throws Exception {
+		searchInner(this.compactInner, this.charProbes);
+	}
+
+	/**
+	 * Looks up the probe keys on a leaf page.
+	 */
+	private void searchLeaf(BTreeLeafPage page, DataField[] probes) throws Exception
+	{
+		long sum = 0;
+		for (int i = 0; i < numLookups; i++) {
+			sum += page.getPositionForKey(probes[i % probes.length]);
+		}
+		assertTrue("Lookups did not find the keys.", sum > 0);
+	}
+
+	/**
+	 * Looks up the child pages for the probe keys on an inner node page.
+	 */
+	private void searchInner(BTreeInnerNodePage page, DataField[] probes) throws Exception
+	{
+		long sum = 0;
+		for (int i = 0; i < numLookups; i++) {
+			sum += page.getChildPageForKey(probes[i % probes.length]);
+		}
+		assertTrue("Lookups did not find the children.", sum > 0);
+	}
+
+	/**
+	 * Creates a leaf page holding the first sorted keys until the page is full.
+	 */
+	private BTreeLeafPage fillLeaf(IndexSchema schema, DataField[] sortedKeys) throws Exception
+	{
+		BTreeLeafPage leaf = (BTreeLeafPage) IndexPageFactory.initIndexPage(schema, new byte[pz.getNumberOfBytes()], 1, true);
+		for (int i = 0; i < schema.getMaximalLeafEntries(); i++) {
+			leaf.insertKeyRIDPair(sortedKeys[i], new RID(i));
+		}
+		return leaf;
+	}
+
+	/**
+	 * Creates an inner node page holding the first sorted keys until the page is full.
+	 */
+	private BTreeInnerNodePage fillInner(IndexSchema schema, DataField[] sortedKeys) throws Exception
+	{
+		BTreeInnerNodePage node = (BTreeInnerNodePage) IndexPageFactory.initIndexPage(schema, new byte[pz.getNumberOfBytes()], 1, false);
+		node.initRootState(sortedKeys[0], 1, 2);
+		for (int i = 1; i < schema.getFanOut(); i++) {
+			node.insertKeyPageNumberPairAtPosition(sortedKeys[i], i + 2, i);
+		}
+		return node;
+	}
+
+	/**
+	 * Picks contained keys in random order as probes.
+	 */
+	private DataField[] pickProbes(DataField[] keys)
+	{
+		DataField[] probes = new DataField[1024];
+		for (int i = 0; i < probes.length; i++) {
+			probes[i] = keys[this.random.nextInt(keys.length / 2)];
+		}
+		return probes;
+	}
+}
@@ -0,0 +1,466 @@
+package de.tuberlin.dima.minidb.test.io.tables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.tables.ColumnDictionary;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TupleRIDIterator;
+import de.tuberlin.dima.minidb.optimizer.HashGroupByPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.TableScanPlanOperator;
+import de.tuberlin.dima.minidb.parser.OutputColumn;
+import de.tuberlin.dima.minidb.parser.Predicate.Operator;
+import de.tuberlin.dima.minidb.qexec.CodeIndexedGroupByOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.GroupByOperator;
+import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
+import de.tuberlin.dima.minidb.qexec.OperatorFactory;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.qexec.TableScanOperator;
+import de.tuberlin.dima.minidb.semantics.BaseTableAccess;
+import de.tuberlin.dima.minidb.semantics.Column;
+import de.tuberlin.dima.minidb.semantics.ProducedColumn;
+import de.tuberlin.dima.minidb.test.qexec.MockPlanOperator;
+import de.tuberlin.dima.minidb.test.qexec.TableFixture;
+
+
+/**
+ * Tests tables with dictionary encoded columns: tuples read back through the pages and scans
+ * must carry the original values, predicates on encoded columns must select the same tuples
+ * as on the values, and the dictionaries must survive reopening the table.
+ */
+public class TestDictionaryEncoding
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 4409127365510L;
+
+	/**
+	 * The number of tuples in the table.
+	 */
+	private static final int NUM_TUPLES = 20000;
+
+	/**
+	 * The values of the STATUS column.
+	 */
+	private static final String[] STATUSES = { "OPEN", "CLOSED", "PENDING", "FAILED", "RETRY" };
+
+	/**
+	 * The number of distinct values of the CITY column.
+	 */
+	private static final int NUM_CITIES = 40;
+
+	/**
+	 * The tuples in the table.
+	 */
+	private List<DataTuple> tuples;
+
+	/**
+	 * The table with the encoded columns.
+	 */
+	private TableFixture table;
+
+
+	/**
+	 * Creates and fills the table.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		Random random = new Random(SEED);
+		this.tuples = new ArrayList<DataTuple>(NUM_TUPLES);
+		for (int i = 0; i < NUM_TUPLES; i++) {
+			DataTuple tuple = new DataTuple(4);
+			tuple.assignDataField(new IntField(i), 0);
+			tuple.assignDataField(random.nextInt(10) == 0 ? DataType.charType(8).getNullValue() :
+					status(STATUSES[random.nextInt(STATUSES.length)]), 1);
+			tuple.assignDataField(city(random.nextInt(NUM_CITIES)), 2);
+			tuple.assignDataField(new IntField(random.nextInt(1000)), 3);
+			this.tuples.add(tuple);
+		}
+
+		this.table = new TableFixture("minidbsdictionary", createSchema(true));
+		this.table.insert(this.tuples);
+	}
+
+	/**
+	 * Deletes the table.
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		this.table.dispose();
+	}
+
+	@Test
+	public void testReadBackFromCacheAndFile() throws Exception
+	{
+		TableFixture.assertSameTuples(this.tuples, scan(new int[] { 0, 1, 2, 3 }, null));
+		this.table.reopen();
+		TableFixture.assertSameTuples(this.tuples, scan(new int[] { 0, 1, 2, 3 }, null));
+
+		assertEquals(STATUSES.length, this.table.getTableManager().getColumnDictionary(1).size());
+		assertEquals(NUM_CITIES, this.table.getTableManager().getColumnDictionary(2).size());
+	}
+
+	@Test
+	public void testInsertAfterReopenReusesCodes() throws Exception
+	{
+		this.table.reopen();
+
+		List<DataTuple> more = new ArrayList<DataTuple>();
+		for (int i = 0; i < 500; i++) {
+			DataTuple tuple = new DataTuple(4);
+			tuple.assignDataField(new IntField(NUM_TUPLES + i), 0);
+			tuple.assignDataField(status(i % 2 == 0 ? STATUSES[i % STATUSES.length] : "NEW"), 1);
+			tuple.assignDataField(city(i % NUM_CITIES), 2);
+			tuple.assignDataField(new IntField(i), 3);
+			more.add(tuple);
+		}
+		this.table.insert(more);
+		this.tuples.addAll(more);
+
+		assertEquals(STATUSES.length + 1, this.table.getTableManager().getColumnDictionary(1).size());
+		assertEquals(NUM_CITIES, this.table.getTableManager().getColumnDictionary(2).size());
+
+		this.table.reopen();
+		TableFixture.assertSameTuples(this.tuples, scan(new int[] { 0, 1, 2, 3 }, null));
+	}
+
+	@Test
+	public void testDictionaryIsWrittenBeforePages() throws Exception
+	{
+		// write the last page as an eviction would, and copy the files as a crash leaves them
+		TableResourceManager manager = this.table.getTableManager();
+		int pageNumber = manager.getLastDataPageNumber();
+		TablePage page = (TablePage) this.table.getBufferPool().getPageAndPin(TableFixture.TABLE_RESOURCE_ID, pageNumber);
+		try {
+			manager.writePageToResource(page.getBuffer(), page);
+		}
+		finally {
+			this.table.getBufferPool().unpinPage(TableFixture.TABLE_RESOURCE_ID, pageNumber);
+		}
+
+		File tableFile = this.table.getTableFile();
+		File crashedFile = new File(tableFile.getParentFile(), "minidbsdictionarycrash.mdtbl");
+		if (crashedFile.exists()) {
+			TableResourceManager.deleteTable(crashedFile);
+		}
+		Files.copy(tableFile.toPath(), crashedFile.toPath());
+		File dictionaryFile = new File(tableFile.getPath() + Constants.TABLE_DICTIONARY_FILE_SUFFIX);
+		if (dictionaryFile.exists()) {
+			Files.copy(dictionaryFile.toPath(), new File(crashedFile.getPath() + Constants.TABLE_DICTIONARY_FILE_SUFFIX).toPath());
+		}
+
+		TableResourceManager crashed = TableResourceManager.openTable(crashedFile);
+		try {
+			TablePage read = crashed.readPageFromResource(new byte[PageSize.SIZE_4096.getNumberOfBytes()], pageNumber);
+			List<DataTuple> expected = new ArrayList<DataTuple>();
+			List<DataTuple> actual = new ArrayList<DataTuple>();
+			for (int i = 0; i < read.getNumRecordsOnPage(); i++) {
+				DataTuple tuple = read.getDataTuple(i, 0xf, 4);
+				if (tuple != null) {
+					actual.add(tuple);
+					expected.add(this.tuples.get(((IntField) tuple.getField(0)).getValue()));
+				}
+			}
+			assertTrue(actual.size() > 0);
+			TableFixture.assertSameTuples(expected, actual);
+		}
+		finally {
+			crashed.closeResource();
+			TableResourceManager.deleteTable(crashedFile);
+		}
+	}
+
+	@Test
+	public void testGroupByAggregatesIntoCodes() throws Exception
+	{
+		// group the STATUS values, which include NULLs, and the CITY values
+		for (int groupColumn = 1; groupColumn <= 2; groupColumn++) {
+			int[] aggColumns = { 3, 3, 0, 2 };
+			OutputColumn.AggregationType[] functions = { OutputColumn.AggregationType.COUNT,
+					OutputColumn.AggregationType.SUM, OutputColumn.AggregationType.MIN, OutputColumn.AggregationType.MAX };
+			DataType[] types = { DataType.intType(), DataType.intType(), DataType.intType(), DataType.charType(12) };
+			int[] groupOutput = { 0, -1, -1, -1, -1 };
+			int[] aggOutput = { -1, 0, 1, 2, 3 };
+
+			GroupByOperator groupBy = OperatorFactory.createCodeIndexedGroupByOperator(
+					new MockPlanOperator(scan(new int[] { 0, 1, 2, 3 }, null)),
+					this.table.getTableManager().getColumnDictionary(groupColumn), groupColumn,
+					aggColumns, functions, types, groupOutput, aggOutput);
+
+			List<DataTuple> sorted = new ArrayList<DataTuple>(this.tuples);
+			final int column = groupColumn;
+			Collections.sort(sorted, new Comparator<DataTuple>() {
+				@Override
+				public int compare(DataTuple t1, DataTuple t2)
+				{
+					return t1.getField(column).compareTo(t2.getField(column));
+				}
+			});
+			GroupByOperator reference = OperatorFactory.createGroupByOperator(new MockPlanOperator(sorted),
+					new int[] { groupColumn }, aggColumns, functions, types, groupOutput, aggOutput);
+
+			TableFixture.assertSameTuples(TableFixture.collect(reference), TableFixture.collect(groupBy));
+		}
+	}
+
+	@Test
+	public void testGroupByPlanUsesCodes() throws Exception
+	{
+		TableDescriptor descriptor = new TableDescriptor("DICTIONARY", "minidbsdictionary.mdtbl");
+		descriptor.setResourceProperties(this.table.getTableManager(), TableFixture.TABLE_RESOURCE_ID);
+		BaseTableAccess access = new BaseTableAccess(descriptor);
+		access.setOutputCardinality(NUM_TUPLES);
+
+		Column status = new Column(access, DataType.charType(8), 1);
+		Column val = new Column(access, DataType.intType(), 3);
+		TableScanPlanOperator scan = new TableScanPlanOperator(access, new Column[] { status, val });
+		ProducedColumn[] outCols = {
+				new ProducedColumn(access, DataType.charType(8), 1, "STATUS", null),
+				new ProducedColumn(access, DataType.intType(), 3, "TOTAL", null, OutputColumn.AggregationType.SUM) };
+		HashGroupByPlanOperator plan = new HashGroupByPlanOperator(scan, outCols, new int[] { 0 }, new int[] { 1 }, STATUSES.length + 1);
+
+		assertTrue(plan.getGroupDictionary() == this.table.getTableManager().getColumnDictionary(1));
+		PhysicalPlanOperator groupBy = plan.createPhysicalPlan(this.table.getBufferPool(), null);
+		assertTrue(groupBy instanceof CodeIndexedGroupByOperatorImpl);
+
+		// one group per status and one for NULL, each with the sum of its values
+		Map<DataField, Integer> sums = new HashMap<DataField, Integer>();
+		for (DataTuple tuple : this.tuples) {
+			Integer sum = sums.get(tuple.getField(1));
+			sums.put(tuple.getField(1), (sum == null ? 0 : sum) + ((IntField) tuple.getField(3)).getValue());
+		}
+		List<DataTuple> expected = new ArrayList<DataTuple>();
+		for (Map.Entry<DataField, Integer> entry : sums.entrySet()) {
+			DataTuple tuple = new DataTuple(2);
+			tuple.assignDataField(entry.getKey(), 0);
+			tuple.assignDataField(new IntField(entry.getValue()), 1);
+			expected.add(tuple);
+		}
+		TableFixture.assertSameTuples(expected, TableFixture.collect(groupBy));
+	}
+
+	@Test
+	public void testPredicatesOnCodes() throws Exception
+	{
+		this.table.reopen();
+
+		// a single qualifying code
+		checkPredicates(new int[] { 0, 3 }, new LowLevelPredicate(Operator.EQUAL, status("PENDING"), 1));
+		// no qualifying code
+		checkPredicates(new int[] { 0, 1 }, new LowLevelPredicate(Operator.EQUAL, status("UNKNOWN"), 1));
+		// several qualifying codes, with and without the predicate column in the result
+		checkPredicates(new int[] { 0, 1 }, new LowLevelPredicate(Operator.NOT_EQUAL, status("OPEN"), 1));
+		checkPredicates(new int[] { 3, 0 }, new LowLevelPredicate(Operator.SMALLER, city(2), 2));
+		checkPredicates(new int[] { 2 }, new LowLevelPredicate(Operator.GREATER_OR_EQUAL, city(35), 2));
+		// mixed with predicates on plain columns
+		checkPredicates(new int[] { 1, 2 },
+				new LowLevelPredicate(Operator.SMALLER, new IntField(100), 3),
+				new LowLevelPredicate(Operator.GREATER, status("CLOSED"), 1),
+				new LowLevelPredicate(Operator.SMALLER_OR_EQUAL, city(5), 2));
+	}
+
+	@Test
+	public void testCodeMaskIsKeptUntilDictionaryGrows() throws Exception
+	{
+		ColumnDictionary dictionary = this.table.getTableManager().getColumnDictionary(1);
+		LowLevelPredicate open = new LowLevelPredicate(Operator.EQUAL, status("OPEN"), 1);
+		LowLevelPredicate added = new LowLevelPredicate(Operator.EQUAL, status("NEW"), 1);
+
+		// the scan over all pages reuses the mask
+		ColumnDictionary.CodeMask mask = dictionary.getMatchingCodes(open);
+		assertEquals(1, mask.getNumMatches());
+		checkPredicates(new int[] { 0, 1 }, open);
+		assertSame(mask, dictionary.getMatchingCodes(open));
+		assertEquals(0, dictionary.getMatchingCodes(added).getNumMatches());
+
+		// a new value extends the masks
+		DataTuple tuple = new DataTuple(4);
+		tuple.assignDataField(new IntField(NUM_TUPLES), 0);
+		tuple.assignDataField(status("NEW"), 1);
+		tuple.assignDataField(city(0), 2);
+		tuple.assignDataField(new IntField(0), 3);
+		this.table.insert(Collections.singletonList(tuple));
+		this.tuples.add(tuple);
+
+		ColumnDictionary.CodeMask grown = dictionary.getMatchingCodes(open);
+		assertNotSame(mask, grown);
+		assertEquals(mask.size() + 1, grown.size());
+		assertEquals(1, grown.getNumMatches());
+		assertEquals(dictionary.getCode(status("NEW")), dictionary.getMatchingCodes(added).getLastMatch());
+		checkPredicates(new int[] { 0, 1 }, added);
+	}
+
+	@Test
+	public void testRIDIteratorDecodes() throws Exception
+	{
+		this.table.reopen();
+		TableResourceManager manager = this.table.getTableManager();
+
+		List<DataTuple> read = new ArrayList<DataTuple>();
+		for (int p = manager.getFirstDataPageNumber(); p <= manager.getLastDataPageNumber(); p++) {
+			TablePage page = (TablePage) this.table.getBufferPool().getPageAndPin(TableFixture.TABLE_RESOURCE_ID, p);
+			TupleRIDIterator iter = page.getIteratorWithRID();
+			while (iter.hasNext()) {
+				read.add(iter.next().getFirst());
+			}
+			this.table.getBufferPool().unpinPage(TableFixture.TABLE_RESOURCE_ID, p);
+		}
+		TableFixture.assertSameTuples(this.tuples, read);
+	}
+
+	@Test
+	public void testEncodedPagesAreSmaller() throws Exception
+	{
+		TableFixture plain = new TableFixture("minidbsnodictionary", createSchema(false));
+		try {
+			plain.insert(this.tuples);
+			int plainPages = plain.getTableManager().getLastDataPageNumber() - plain.getTableManager().getFirstDataPageNumber() + 1;
+			int encodedPages = this.table.getTableManager().getLastDataPageNumber() - this.table.getTableManager().getFirstDataPageNumber() + 1;
+			assertTrue("Encoded table uses " + encodedPages + " pages, plain table " + plainPages, encodedPages < plainPages);
+		}
+		finally {
+			plain.dispose();
+		}
+	}
+
+	@Test
+	public void testFullDictionaryRejectsNewValues() throws Exception
+	{
+		TablePage page = (TablePage) this.table.getBufferPool().createNewPageAndPin(TableFixture.TABLE_RESOURCE_ID);
+		try {
+			for (int i = 0; ; i++) {
+				DataTuple tuple = new DataTuple(4);
+				tuple.assignDataField(new IntField(i), 0);
+				tuple.assignDataField(DataType.charType(8).getNullValue(), 1);
+				tuple.assignDataField(new CharField("X" + i), 2);
+				tuple.assignDataField(new IntField(i), 3);
+
+				if (!page.insertTuple(tuple)) {
+					this.table.getBufferPool().unpinPage(TableFixture.TABLE_RESOURCE_ID, page.getPageNumber());
+					page = (TablePage) this.table.getBufferPool().createNewPageAndPin(TableFixture.TABLE_RESOURCE_ID);
+					assertTrue(page.insertTuple(tuple));
+				}
+				if (i > 1000) {
+					fail("Dictionary accepted more values than allowed.");
+				}
+			}
+		}
+		catch (PageFormatException pfex) {
+			// expected
+		}
+		finally {
+			this.table.getBufferPool().unpinPage(TableFixture.TABLE_RESOURCE_ID, page.getPageNumber());
+		}
+	}
+
+	/**
+	 * Creates the schema of the test table, with STATUS and CITY dictionary encoded or not.
+	 */
+	private static TableSchema createSchema(boolean encoded)
+	{
+		TableSchema schema = new TableSchema(PageSize.SIZE_4096);
+		schema.addColumn(ColumnSchema.createColumnSchema("ID", DataType.intType(), false, true));
+		schema.addColumn(ColumnSchema.createColumnSchema("STATUS", DataType.charType(8), true, false, encoded));
+		schema.addColumn(ColumnSchema.createColumnSchema("CITY", DataType.charType(12), false, false, encoded));
+		schema.addColumn(ColumnSchema.createColumnSchema("VAL", DataType.intType(), false, false));
+		return schema;
+	}
+
+	/**
+	 * Scans the table with the given predicates and checks that the result is the same as
+	 * evaluating the predicates on the original tuples.
+	 */
+	private void checkPredicates(int[] columns, LowLevelPredicate... preds) throws Exception
+	{
+		List<DataTuple> expected = new ArrayList<DataTuple>();
+		for (DataTuple tuple : this.tuples) {
+			boolean qualifies = true;
+			for (LowLevelPredicate pred : preds) {
+				qualifies &= pred.evaluate(tuple);
+			}
+			if (qualifies) {
+				DataTuple projected = new DataTuple(columns.length);
+				for (int i = 0; i < columns.length; i++) {
+					projected.assignDataField(tuple.getField(columns[i]), i);
+				}
+				expected.add(projected);
+			}
+		}
+
+		TableFixture.assertSameTuples(expected, scan(columns, preds));
+
+		TableScanOperator parallel = AbstractExtensionFactory.getExtensionFactory().createParallelTableScanOperator(
+				this.table.getBufferPool(), this.table.getTableManager(), TableFixture.TABLE_RESOURCE_ID, columns, preds, 4, 3);
+		TableFixture.assertSameTuples(expected, TableFixture.collect(parallel));
+	}
+
+	/**
+	 * Creates a STATUS value, padded to the column length as it is read from a page.
+	 */
+	private static CharField status(String status)
+	{
+		return pad(status, 8);
+	}
+
+	/**
+	 * Creates a CITY value, padded to the column length as it is read from a page.
+	 */
+	private static CharField city(int num)
+	{
+		return pad("CITY-" + num, 12);
+	}
+
+	private static CharField pad(String value, int length)
+	{
+		StringBuilder bld = new StringBuilder(value);
+		while (bld.length() < length) {
+			bld.append(' ');
+		}
+		return new CharField(bld.toString());
+	}
+
+	/**
+	 * Scans the table with the serial table scan.
+	 */
+	private List<DataTuple> scan(int[] columns, LowLevelPredicate[] preds) throws Exception
+	{
+		TableScanOperator scan = AbstractExtensionFactory.getExtensionFactory().createTableScanOperator(
+				this.table.getBufferPool(), this.table.getTableManager(), TableFixture.TABLE_RESOURCE_ID, columns, preds, 8);
+		return TableFixture.collect(scan);
+	}
+}
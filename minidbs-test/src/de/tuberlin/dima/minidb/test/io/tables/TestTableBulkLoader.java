@@ -0,0 +1,277 @@
+package de.tuberlin.dima.minidb.test.io.tables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.catalogue.TableStatistics;
+import de.tuberlin.dima.minidb.catalogue.beans.TableStatisticsBean;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.VarcharField;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.tables.TableBulkLoader;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.qexec.TableScanOperator;
+import de.tuberlin.dima.minidb.test.qexec.TableFixture;
+
+
+/**
+ * Tests the bulk loader by loading tuples into a table that is registered at a buffer pool,
+ * and reading them back through table scans.
+ */
+public class TestTableBulkLoader
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 2318764509871L;
+
+	/**
+	 * The number of tuples loaded in each test.
+	 */
+	private static final int NUM_TUPLES = 30000;
+
+	/**
+	 * The small batch size used, such that the load consists of many batches.
+	 */
+	private static final int BATCH_SIZE = 4;
+
+	/**
+	 * The schema of the loaded table.
+	 */
+	private TableSchema schema;
+
+	/**
+	 * The loaded table.
+	 */
+	private TableFixture table;
+
+
+	/**
+	 * Creates the empty table.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		this.schema = new TableSchema(PageSize.SIZE_4096);
+		this.schema.addColumn(ColumnSchema.createColumnSchema("ID", DataType.intType(), false, true));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("TEXT", DataType.varcharType(40), true, false));
+		this.table = new TableFixture("minidbsbulkload", this.schema);
+	}
+
+	/**
+	 * Deletes the table.
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		this.table.dispose();
+	}
+
+	@Test
+	public void testLoadAndReadBack() throws Exception
+	{
+		List<DataTuple> tuples = generateTuples(0, NUM_TUPLES);
+		TableStatistics stats = new TableStatistics(this.schema, new TableStatisticsBean());
+
+		TableBulkLoader loader = this.table.getTableManager().createBulkLoader(stats, BATCH_SIZE);
+		for (DataTuple tuple : tuples) {
+			loader.append(tuple);
+		}
+		loader.close();
+
+		assertEquals(NUM_TUPLES, loader.getNumberOfTuplesWritten());
+		assertEquals(NUM_TUPLES, stats.getCardinality());
+		assertEquals(loader.getNumberOfPagesWritten(), stats.getNumberOfPages());
+		TableResourceManager manager = this.table.getTableManager();
+		assertEquals(stats.getNumberOfPages(), manager.getLastDataPageNumber() - manager.getFirstDataPageNumber() + 1);
+
+		// read through the buffer pool that was registered during the load, and after reopening
+		TableFixture.assertSameTuples(tuples, scan());
+		this.table.reopen();
+		TableFixture.assertSameTuples(tuples, scan());
+	}
+
+	@Test
+	public void testLoadInterleavedWithBufferedInserts() throws Exception
+	{
+		List<DataTuple> loaded = generateTuples(0, NUM_TUPLES);
+		List<DataTuple> all = new ArrayList<DataTuple>(loaded);
+
+		TableBulkLoader loader = this.table.getTableManager().createBulkLoader(null, BATCH_SIZE);
+		for (int i = 0; i < loaded.size(); i++) {
+			loader.append(loaded.get(i));
+
+			// pages created through the buffer pool in the middle of the load
+			if (i % 5000 == 2500) {
+				List<DataTuple> inserted = generateTuples(NUM_TUPLES + i, 200);
+				this.table.insert(inserted);
+				all.addAll(inserted);
+			}
+
+			// every published page must be readable, also while batches are in flight
+			if (i % 1000 == 0) {
+				checkPublishedPagesReadable();
+			}
+		}
+		loader.close();
+
+		checkPublishedPagesReadable();
+		TableFixture.assertSameTuples(all, scan());
+		this.table.reopen();
+		TableFixture.assertSameTuples(all, scan());
+	}
+
+	@Test
+	public void testAppendToExistingTable() throws Exception
+	{
+		List<DataTuple> existing = generateTuples(0, 1000);
+		this.table.insert(existing);
+		this.table.reopen();
+
+		List<DataTuple> loaded = generateTuples(1000, NUM_TUPLES);
+		TableBulkLoader loader = this.table.getTableManager().createBulkLoader(null, BATCH_SIZE);
+		for (DataTuple tuple : loaded) {
+			loader.append(tuple);
+		}
+		loader.close();
+
+		List<DataTuple> all = new ArrayList<DataTuple>(existing);
+		all.addAll(loaded);
+		TableFixture.assertSameTuples(all, scan());
+	}
+
+	@Test
+	public void testDroppedLoaderHandsBackPages() throws Exception
+	{
+		TableResourceManager manager = this.table.getTableManager();
+		appendAndDrop(generateTuples(0, 200));
+		assertEquals(manager.getFirstDataPageNumber() - 1, manager.getLastDataPageNumber());
+
+		// the next loader reuses the pages of the dropped one
+		List<DataTuple> loaded = generateTuples(1000, NUM_TUPLES);
+		TableBulkLoader loader = createLoaderAfterDrop();
+		for (DataTuple tuple : loaded) {
+			loader.append(tuple);
+		}
+		loader.close();
+
+		assertEquals(loader.getNumberOfPagesWritten(), manager.getLastDataPageNumber() - manager.getFirstDataPageNumber() + 1);
+		TableFixture.assertSameTuples(loaded, scan());
+	}
+
+	@Test
+	public void testDroppedLoaderLeavesNoHoles() throws Exception
+	{
+		TableResourceManager manager = this.table.getTableManager();
+		appendAndDrop(generateTuples(0, 200));
+
+		// a page reserved through the buffer pool after the pages of the dropped loader
+		List<DataTuple> all = generateTuples(1000, 10);
+		this.table.insert(all);
+
+		List<DataTuple> loaded = generateTuples(2000, NUM_TUPLES);
+		TableBulkLoader loader = createLoaderAfterDrop();
+		for (DataTuple tuple : loaded) {
+			loader.append(tuple);
+		}
+		loader.close();
+		all.addAll(loaded);
+
+		// the pages of the dropped loader are empty, and do not hold back the later pages
+		int pages = manager.getLastDataPageNumber() - manager.getFirstDataPageNumber() + 1;
+		assertTrue(pages > loader.getNumberOfPagesWritten() + 1);
+		TableFixture.assertSameTuples(all, scan());
+		this.table.reopen();
+		TableFixture.assertSameTuples(all, scan());
+	}
+
+	/**
+	 * Appends the tuples with a loader that is dropped without being closed. The tuples fit
+	 * into a single batch, so that none of them is written.
+	 */
+	private void appendAndDrop(List<DataTuple> tuples) throws Exception
+	{
+		TableBulkLoader loader = this.table.getTableManager().createBulkLoader(null, BATCH_SIZE);
+		for (DataTuple tuple : tuples) {
+			loader.append(tuple);
+		}
+		assertEquals(0, loader.getNumberOfPagesWritten());
+	}
+
+	/**
+	 * Creates a loader once the garbage collector released the dropped one.
+	 */
+	private TableBulkLoader createLoaderAfterDrop() throws Exception
+	{
+		for (int attempt = 0; attempt < 100; attempt++) {
+			System.gc();
+			try {
+				return this.table.getTableManager().createBulkLoader(null, BATCH_SIZE);
+			}
+			catch (IllegalStateException isex) {
+				Thread.sleep(20);
+			}
+		}
+		fail("The dropped loader was not released.");
+		return null;
+	}
+
+	/**
+	 * Generates tuples with consecutive ids, starting at the given id.
+	 */
+	private List<DataTuple> generateTuples(int firstId, int num)
+	{
+		Random random = new Random(SEED + firstId);
+		List<DataTuple> tuples = new ArrayList<DataTuple>(num);
+		for (int i = 0; i < num; i++) {
+			DataTuple tuple = new DataTuple(2);
+			tuple.assignDataField(new IntField(firstId + i), 0);
+			tuple.assignDataField(random.nextInt(8) == 0 ? DataType.varcharType(40).getNullValue() :
+					new VarcharField(Long.toString(random.nextLong() >>> random.nextInt(64), 36)), 1);
+			tuples.add(tuple);
+		}
+		return tuples;
+	}
+
+	/**
+	 * Scans all columns of the table.
+	 */
+	private List<DataTuple> scan() throws Exception
+	{
+		TableScanOperator scan = AbstractExtensionFactory.getExtensionFactory().createTableScanOperator(
+				this.table.getBufferPool(), this.table.getTableManager(), TableFixture.TABLE_RESOURCE_ID, new int[] { 0, 1 }, null, 8);
+		return TableFixture.collect(scan);
+	}
+
+	/**
+	 * Fetches every page up to the last published page number through the buffer pool.
+	 */
+	private void checkPublishedPagesReadable() throws Exception
+	{
+		TableResourceManager manager = this.table.getTableManager();
+		int last = manager.getLastDataPageNumber();
+		for (int p = manager.getFirstDataPageNumber(); p <= last; p++) {
+			TablePage page = (TablePage) this.table.getBufferPool().getPageAndPin(TableFixture.TABLE_RESOURCE_ID, p);
+			assertEquals(p, page.getPageNumber());
+			assertTrue(page.getNumRecordsOnPage() > 0);
+			this.table.getBufferPool().unpinPage(TableFixture.TABLE_RESOURCE_ID, p);
+		}
+	}
+}
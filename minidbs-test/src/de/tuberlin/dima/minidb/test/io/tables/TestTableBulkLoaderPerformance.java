@@ -0,0 +1,152 @@
+package de.tuberlin.dima.minidb.test.io.tables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.MethodRule;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.VarcharField;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.tables.TableBulkLoader;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.test.qexec.TableFixture;
+
+
+/**
+ * Benchmark of loading a table. The same tuples are inserted page by page through the buffer
+ * pool and appended by the bulk loader, such that the times show the speedup of the bulk load.
+ * Both variants fill the pages the same way, so the speedup comes from the writes and grows
+ * with the cost of the I/O on the machine.
+ */
+public class TestTableBulkLoaderPerformance
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 6612098734512987L;
+
+	/**
+	 * Number of tuples loaded in each run of the benchmark.
+	 */
+	private static final int NUM_TUPLES = 500000;
+
+	/**
+	 * Mark test as benchmark.
+	 */
+	@Rule
+	public MethodRule benchmarkRun = new BenchmarkRule();
+
+	/**
+	 * The tuples to load, shared by all runs.
+	 */
+	private static List<DataTuple> tuples;
+
+	/**
+	 * The schema of the loaded table.
+	 */
+	private static TableSchema schema;
+
+	/**
+	 * The table that is loaded.
+	 */
+	private TableFixture table;
+
+
+	/**
+	 * Generates the tuples and writes a few infos about the benchmark to the console.
+	 */
+	@BeforeClass
+	public static void generateTuples()
+	{
+		schema = new TableSchema(PageSize.SIZE_8192);
+		schema.addColumn(ColumnSchema.createColumnSchema("ID", DataType.intType(), false, true));
+		schema.addColumn(ColumnSchema.createColumnSchema("TEXT", DataType.varcharType(40), true, false));
+
+		Random random = new Random(SEED);
+		tuples = new ArrayList<DataTuple>(NUM_TUPLES);
+		for (int i = 0; i < NUM_TUPLES; i++) {
+			DataTuple tuple = new DataTuple(2);
+			tuple.assignDataField(new IntField(i), 0);
+			tuple.assignDataField(new VarcharField(Long.toString(random.nextLong() >>> random.nextInt(64), 36)), 1);
+			tuples.add(tuple);
+		}
+
+		System.out.println("");
+		System.out.println("Number of loaded tuples: " + NUM_TUPLES);
+		System.out.println("Pages per bulk load batch: " + Constants.BULK_LOAD_BATCH_PAGES);
+		System.out.println("");
+	}
+
+	/**
+	 * Creates the empty table.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		this.table = new TableFixture("minidbsbulkloadperf", schema);
+	}
+
+	/**
+	 * Deletes the table.
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		this.table.dispose();
+	}
+
+	@Test
+	@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 3)
+	public void testBufferedInsert() throws Exception
+	{
+		this.table.insert(tuples);
+
+		// the pages are on disk once the buffer pool is closed
+		this.table.reopen();
+		checkPages();
+	}
+
+	@Test
+	@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 3)
+	public void testBulkLoad() throws Exception
+	{
+		TableBulkLoader loader = this.table.getTableManager().createBulkLoader(null);
+		for (DataTuple tuple : tuples) {
+			loader.append(tuple);
+		}
+		loader.close();
+
+		assertEquals(NUM_TUPLES, loader.getNumberOfTuplesWritten());
+		this.table.reopen();
+		checkPages();
+	}
+
+	/**
+	 * Checks that the table holds pages for all tuples.
+	 */
+	private void checkPages()
+	{
+		TableResourceManager manager = this.table.getTableManager();
+		assertTrue(manager.getLastDataPageNumber() > manager.getFirstDataPageNumber());
+	}
+}
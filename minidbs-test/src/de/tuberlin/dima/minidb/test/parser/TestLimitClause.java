@@ -0,0 +1,73 @@
+package de.tuberlin.dima.minidb.test.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.parser.ParseException;
+import de.tuberlin.dima.minidb.parser.ParseException.ErrorCode;
+import de.tuberlin.dima.minidb.parser.SelectQuery;
+
+
+/**
+ * Tests the LIMIT clause of select queries: the clause is split off at the last LIMIT token
+ * outside of any parenthesis, and a row limit that is not a non-negative long is reported as
+ * a parse error.
+ */
+public class TestLimitClause
+{
+	/**
+	 * The query that the LIMIT clauses are appended to.
+	 */
+	private static final String QUERY = "SELECT n.N_NAME AS name FROM NATION n WHERE n.N_COMMENT = \"LIMIT 3\" ORDER BY name";
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+	}
+
+	@Test
+	public void testWithoutLimit() throws Exception
+	{
+		assertNull(parse(QUERY).getLimitClause());
+	}
+
+	@Test
+	public void testLimit() throws Exception
+	{
+		assertEquals(5, parse(QUERY + " LIMIT 5").getLimitClause().getRowLimit());
+		assertEquals(0, parse(QUERY + "\nlimit\t0 ").getLimitClause().getRowLimit());
+	}
+
+	@Test
+	public void testInvalidLimits() throws Exception
+	{
+		assertParseError(QUERY + " LIMIT", ErrorCode.INVALID_NUMBER);
+		assertParseError(QUERY + " LIMIT -1", ErrorCode.INVALID_NUMBER);
+		assertParseError(QUERY + " LIMIT 2.5", ErrorCode.INVALID_NUMBER);
+		assertParseError(QUERY + " LIMIT 99999999999999999999", ErrorCode.INVALID_NUMBER);
+		assertParseError(QUERY + " LIMIT 5 5", ErrorCode.INVALID_TOKEN);
+	}
+
+	private static SelectQuery parse(String sql) throws ParseException
+	{
+		return (SelectQuery) AbstractExtensionFactory.getExtensionFactory().getParser(sql).parse();
+	}
+
+	private static void assertParseError(String sql, ErrorCode code)
+	{
+		try {
+			parse(sql);
+			fail("No parse error for: " + sql);
+		}
+		catch (ParseException pex) {
+			assertEquals(sql, code, pex.getErrorcode());
+		}
+	}
+}
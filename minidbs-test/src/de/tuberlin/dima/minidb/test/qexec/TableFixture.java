@@ -0,0 +1,292 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+
+/**
+ * A table in the temp space of the test data, together with a buffer pool in which it is
+ * registered. The fixture fills the table through the buffer pool, writes it to disk and
+ * reopens it, such that tests run their operators against a table that is read from its file.
+ */
+public class TableFixture
+{
+	/**
+	 * The resource id under which the table is registered.
+	 */
+	public static final int TABLE_RESOURCE_ID = 4;
+
+	/**
+	 * The file of the table.
+	 */
+	private final File tableFile;
+
+	/**
+	 * The configuration of the buffer pool.
+	 */
+	private final Config config;
+
+	/**
+	 * The buffer pool in which the table is registered.
+	 */
+	private BufferPoolManager bufferPool;
+
+	/**
+	 * The manager of the table.
+	 */
+	private TableResourceManager tableManager;
+
+
+	/**
+	 * Creates a new table with the given schema, replacing any existing table of the same name.
+	 *
+	 * @param name The name of the table file in the temp space.
+	 * @param schema The schema of the table.
+	 * @throws Exception Thrown, if the table or the buffer pool could not be created.
+	 */
+	public TableFixture(String name, TableSchema schema) throws Exception
+	{
+		String configPath = getClass().getResource("/config.xml").getPath();
+		this.config = Config.loadConfig(new File(configPath));
+		this.tableFile = new File(configPath.replace("/config.xml", "/tempspace/" + name + ".mdtbl"));
+
+		try {
+			TableResourceManager.deleteTable(this.tableFile);
+		}
+		catch (IOException ioex) {}
+
+		this.tableManager = TableResourceManager.createTable(this.tableFile, schema);
+		startBufferPool();
+	}
+
+	/**
+	 * Gets the buffer pool in which the table is registered.
+	 *
+	 * @return The buffer pool.
+	 */
+	public BufferPoolManager getBufferPool()
+	{
+		return this.bufferPool;
+	}
+
+	/**
+	 * Gets the manager of the table.
+	 *
+	 * @return The table manager.
+	 */
+	public TableResourceManager getTableManager()
+	{
+		return this.tableManager;
+	}
+
+	/**
+	 * Gets the file of the table.
+	 *
+	 * @return The table file.
+	 */
+	public File getTableFile()
+	{
+		return this.tableFile;
+	}
+
+	/**
+	 * Inserts the given tuples into new pages at the end of the table.
+	 *
+	 * @param tuples The tuples to insert.
+	 * @throws Exception Thrown, if the pages could not be created.
+	 */
+	public void insert(List<DataTuple> tuples) throws Exception
+	{
+		TablePage page = (TablePage) this.bufferPool.createNewPageAndPin(TABLE_RESOURCE_ID);
+		for (DataTuple tuple : tuples) {
+			if (!page.insertTuple(tuple)) {
+				this.bufferPool.unpinPage(TABLE_RESOURCE_ID, page.getPageNumber());
+				page = (TablePage) this.bufferPool.createNewPageAndPin(TABLE_RESOURCE_ID);
+				if (!page.insertTuple(tuple)) {
+					throw new IllegalStateException("Tuple does not fit into a blank page.");
+				}
+			}
+		}
+		this.bufferPool.unpinPage(TABLE_RESOURCE_ID, page.getPageNumber());
+	}
+
+	/**
+	 * Writes all pages of the table to disk and reopens the table in a fresh buffer pool.
+	 *
+	 * @throws Exception Thrown, if the table could not be closed or reopened.
+	 */
+	public void reopen() throws Exception
+	{
+		close();
+		open();
+	}
+
+	/**
+	 * Writes all pages of the table to disk and closes the buffer pool and the table.
+	 *
+	 * @throws Exception Thrown, if the table could not be closed.
+	 */
+	public void close() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.tableManager.closeResource();
+	}
+
+	/**
+	 * Opens the closed table in a fresh buffer pool.
+	 *
+	 * @throws Exception Thrown, if the table could not be opened.
+	 */
+	public void open() throws Exception
+	{
+		this.tableManager = TableResourceManager.openTable(this.tableFile);
+		startBufferPool();
+	}
+
+	/**
+	 * Closes the buffer pool and deletes the table.
+	 */
+	public void dispose()
+	{
+		if (this.bufferPool != null) {
+			this.bufferPool.closeBufferPool();
+			this.bufferPool = null;
+		}
+		try {
+			this.tableManager.closeResource();
+		}
+		catch (IOException ioex) {}
+		try {
+			TableResourceManager.deleteTable(this.tableFile);
+		}
+		catch (IOException ioex) {}
+	}
+
+	/**
+	 * Opens the given operator and collects all tuples it produces.
+	 *
+	 * @param op The operator to run.
+	 * @return The produced tuples, in the order in which they were produced.
+	 * @throws Exception Thrown, if the operator failed.
+	 */
+	public static List<DataTuple> collect(PhysicalPlanOperator op) throws Exception
+	{
+		List<DataTuple> result = new ArrayList<DataTuple>();
+		op.open(null);
+		DataTuple tuple;
+		while ((tuple = op.next()) != null) {
+			result.add(tuple);
+		}
+		op.close();
+		return result;
+	}
+
+	/**
+	 * Checks that both lists contain the same tuples the same number of times, regardless
+	 * of their order.
+	 *
+	 * @param expected The expected tuples.
+	 * @param actual The actual tuples.
+	 */
+	public static void assertSameTuples(List<DataTuple> expected, List<DataTuple> actual)
+	{
+		assertEquals("Wrong number of tuples.", expected.size(), actual.size());
+		Map<DataTuple, Integer> counts = new HashMap<DataTuple, Integer>();
+		for (DataTuple tuple : expected) {
+			Integer count = counts.get(tuple);
+			counts.put(tuple, count == null ? 1 : count + 1);
+		}
+		for (DataTuple tuple : actual) {
+			Integer count = counts.get(tuple);
+			if (count == null) {
+				throw new AssertionError("Unexpected tuple " + tuple);
+			}
+			counts.put(tuple, count == 1 ? null : count - 1);
+		}
+	}
+
+	/**
+	 * Loads the test configuration with one entry replaced, such as a query heap small enough
+	 * to make the operators spill.
+	 *
+	 * @param key The key of the entry.
+	 * @param value The value of the entry.
+	 * @return The configuration.
+	 * @throws Exception Thrown, if the configuration could not be written or loaded.
+	 */
+	public static Config loadConfig(String key, String value) throws Exception
+	{
+		File configFile = new File(TableFixture.class.getResource("/config.xml").getPath());
+		Properties props = new Properties();
+		InputStream in = new FileInputStream(configFile);
+		try {
+			props.loadFromXML(in);
+		}
+		finally {
+			in.close();
+		}
+		props.setProperty(key, value);
+
+		File file = new File(configFile.getParentFile(), "tempspace/testconfig.xml");
+		OutputStream out = new FileOutputStream(file);
+		try {
+			props.storeToXML(out, null);
+		}
+		finally {
+			out.close();
+		}
+		try {
+			return Config.loadConfig(file);
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Counts the temp files that the query heaps of the given configuration currently hold.
+	 *
+	 * @param config The configuration of the query heaps.
+	 * @return The number of temp files.
+	 */
+	public static int countSpillFiles(Config config)
+	{
+		int num = 0;
+		File[] files = new File(config.getTempspaceDirectory()).listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			num += files[i].getName().startsWith(Constants.QUERY_HEAP_TEMP_FILE_PREFIX) ? 1 : 0;
+		}
+		return num;
+	}
+
+	/**
+	 * Creates a buffer pool and registers the table in it.
+	 */
+	private void startBufferPool() throws Exception
+	{
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(this.config, Logger.getLogger("BPM - Logger"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(TABLE_RESOURCE_ID, this.tableManager);
+	}
+}
@@ -0,0 +1,460 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.qexec.ExchangeOperator;
+import de.tuberlin.dima.minidb.qexec.OperatorFactory;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.qexec.QueryExecutionException;
+import de.tuberlin.dima.minidb.qexec.TupleExchangeQueue;
+
+
+/**
+ * Tests the exchange operators. The gather, repartition and broadcast exchanges must hand on
+ * exactly the tuples of their producers. Closing the consumers before the producers are drained
+ * must stop the producer threads and close their subplans, and a failing producer must surface
+ * its exception to the consumer and leave no thread running once the consumer is closed.
+ */
+public class TestExchange
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 6614092277431L;
+
+	/**
+	 * The number of producer subplans.
+	 */
+	private static final int NUM_PRODUCERS = 4;
+
+	/**
+	 * The time in milliseconds to wait for a consumer thread to finish.
+	 */
+	private static final long TIMEOUT = 30000;
+
+	/**
+	 * The number of tuples after which a consumer of endless producers gives up, which is far
+	 * more than the queues hold.
+	 */
+	private static final int MAX_TUPLES = 1000000;
+
+	/**
+	 * Random number generator used to create the tuples.
+	 */
+	private final Random random = new Random(SEED);
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+	}
+
+	@Test
+	public void testGather() throws Exception
+	{
+		List<DataTuple> expected = new ArrayList<DataTuple>();
+		PhysicalPlanOperator[] producers = new PhysicalPlanOperator[NUM_PRODUCERS];
+		for (int i = 0; i < NUM_PRODUCERS; i++) {
+			// also producers with no tuples and with less than one batch
+			List<DataTuple> tuples = createTuples(i, i == 0 ? 0 : i == 1 ? 17 : 20000);
+			expected.addAll(tuples);
+			producers[i] = new MockPlanOperator(tuples);
+		}
+
+		ExchangeOperator gather = OperatorFactory.createGatherExchangeOperator(producers);
+		TableFixture.assertSameTuples(expected, TableFixture.collect(gather));
+
+		// the next open starts the producers anew
+		TableFixture.assertSameTuples(expected, TableFixture.collect(gather));
+	}
+
+	@Test
+	public void testRepartition() throws Exception
+	{
+		List<DataTuple> expected = new ArrayList<DataTuple>();
+		PhysicalPlanOperator[] producers = new PhysicalPlanOperator[NUM_PRODUCERS];
+		for (int i = 0; i < NUM_PRODUCERS; i++) {
+			List<DataTuple> tuples = createTuples(i, 15000);
+			expected.addAll(tuples);
+			producers[i] = new MockPlanOperator(tuples);
+		}
+
+		List<List<DataTuple>> partitions = collectInParallel(
+				OperatorFactory.createHashRepartitionExchangeOperators(producers, new int[] { 0, 1 }, 5));
+
+		// every key goes to exactly one consumer, and all consumers get some
+		List<DataTuple> all = new ArrayList<DataTuple>();
+		Set<List<DataField>> seen = new HashSet<List<DataField>>();
+		for (List<DataTuple> partition : partitions) {
+			assertFalse(partition.isEmpty());
+			Set<List<DataField>> keys = new HashSet<List<DataField>>();
+			for (DataTuple tuple : partition) {
+				List<DataField> key = new ArrayList<DataField>();
+				key.add(tuple.getField(0));
+				key.add(tuple.getField(1));
+				keys.add(key);
+			}
+			for (List<DataField> key : keys) {
+				assertTrue("Key " + key + " went to several consumers.", seen.add(key));
+			}
+			all.addAll(partition);
+		}
+		TableFixture.assertSameTuples(expected, all);
+	}
+
+	@Test
+	public void testBroadcast() throws Exception
+	{
+		List<DataTuple> expected = new ArrayList<DataTuple>();
+		PhysicalPlanOperator[] producers = new PhysicalPlanOperator[NUM_PRODUCERS];
+		for (int i = 0; i < NUM_PRODUCERS; i++) {
+			List<DataTuple> tuples = createTuples(i, 5000);
+			expected.addAll(tuples);
+			producers[i] = new MockPlanOperator(tuples);
+		}
+
+		for (List<DataTuple> received : collectInParallel(OperatorFactory.createBroadcastExchangeOperators(producers, 3))) {
+			TableFixture.assertSameTuples(expected, received);
+		}
+	}
+
+	@Test
+	public void testCloseCancelsProducers() throws Exception
+	{
+		EndlessOperator[] producers = createEndlessProducers(-1, 0, null);
+		ExchangeOperator gather = OperatorFactory.createGatherExchangeOperator(producers);
+
+		gather.open(null);
+		for (int i = 0; i < 1000; i++) {
+			assertNotNull(gather.next());
+		}
+
+		// the producers block on the full queue, and the close must release and wait for them
+		gather.close();
+		checkStopped(producers, 1);
+
+		// the operator can be opened again, which starts the producers anew
+		gather.open(null);
+		assertNotNull(gather.next());
+		gather.close();
+		checkStopped(producers, 2);
+	}
+
+	@Test
+	public void testClosedConsumerDoesNotBlockOthers() throws Exception
+	{
+		List<DataTuple> expected = new ArrayList<DataTuple>();
+		PhysicalPlanOperator[] producers = new PhysicalPlanOperator[NUM_PRODUCERS];
+		for (int i = 0; i < NUM_PRODUCERS; i++) {
+			List<DataTuple> tuples = createTuples(i, 40000);
+			expected.addAll(tuples);
+			producers[i] = new MockPlanOperator(tuples);
+		}
+		ExchangeOperator[] consumers = OperatorFactory.createBroadcastExchangeOperators(producers, 2);
+
+		// the first consumer gives up early, and its full queue must not stall the producers
+		consumers[0].open(null);
+		consumers[1].open(null);
+		assertNotNull(consumers[0].next());
+		consumers[0].close();
+
+		List<DataTuple> received = new ArrayList<DataTuple>();
+		DataTuple tuple;
+		while ((tuple = consumers[1].next()) != null) {
+			received.add(tuple);
+		}
+		consumers[1].close();
+		TableFixture.assertSameTuples(expected, received);
+	}
+
+	@Test
+	public void testProducerFailure() throws Exception
+	{
+		QueryExecutionException error = new QueryExecutionException("Producer failure for testing.");
+		EndlessOperator[] producers = createEndlessProducers(2, 3000, error);
+		ExchangeOperator gather = OperatorFactory.createGatherExchangeOperator(producers);
+
+		gather.open(null);
+		assertSame(error, drainUntilFailure(gather));
+
+		// the other producers run until the consumer closes
+		gather.close();
+		checkStopped(producers, 1);
+	}
+
+	@Test
+	public void testProducerRuntimeFailure() throws Exception
+	{
+		RuntimeException error = new IllegalStateException("Producer failure for testing.");
+		EndlessOperator[] producers = createEndlessProducers(0, 0, error);
+		ExchangeOperator[] consumers = OperatorFactory.createHashRepartitionExchangeOperators(producers,
+				new int[] { 0 }, 2);
+
+		// each consumer learns of the failure
+		Collector[] collectors = new Collector[consumers.length];
+		for (int i = 0; i < consumers.length; i++) {
+			collectors[i] = new Collector(consumers[i]);
+			collectors[i].start();
+		}
+		for (Collector collector : collectors) {
+			collector.join(TIMEOUT);
+			assertFalse("The failure of the producer was not reported.", collector.isAlive());
+			assertTrue(collector.error instanceof QueryExecutionException);
+			assertSame(error, collector.error.getCause());
+		}
+		consumers[0].close();
+		consumers[1].close();
+		checkStopped(producers, 1);
+	}
+
+	@Test
+	public void testInterruptedProducerFinishes() throws Exception
+	{
+		final TupleExchangeQueue queue = new TupleExchangeQueue(1, 1);
+		final DataTuple[] batch = createTuples(0, 10).toArray(new DataTuple[10]);
+		assertTrue(queue.put(batch));
+		assertTrue(queue.put(batch));
+
+		// the producer blocks on the full queue and is interrupted while it waits
+		final boolean[] interrupted = new boolean[1];
+		Thread producer = new Thread() {
+			@Override
+			public void run()
+			{
+				queue.producerFinished();
+				interrupted[0] = Thread.currentThread().isInterrupted();
+			}
+		};
+		producer.start();
+		Thread.sleep(200);
+		producer.interrupt();
+		Thread.sleep(200);
+		assertTrue("The producer gave up on the end marker.", producer.isAlive());
+
+		// the marker reaches the consumer, and the producer keeps its interrupt
+		assertSame(batch, queue.take());
+		assertSame(batch, queue.take());
+		assertNull(queue.take());
+		producer.join(TIMEOUT);
+		assertFalse(producer.isAlive());
+		assertTrue("The interrupt of the producer was swallowed.", interrupted[0]);
+	}
+
+	/**
+	 * Reads from the consumer until it reports the failure of a producer.
+	 *
+	 * @return The exception thrown by the consumer.
+	 */
+	private static QueryExecutionException drainUntilFailure(ExchangeOperator consumer)
+	{
+		try {
+			for (int i = 0; i < MAX_TUPLES; i++) {
+				assertNotNull(consumer.next());
+			}
+			fail("The failure of the producer was not reported.");
+			return null;
+		}
+		catch (QueryExecutionException qex) {
+			return qex;
+		}
+	}
+
+	/**
+	 * Checks that every producer was opened and closed the given number of times and makes no
+	 * progress any more.
+	 */
+	private static void checkStopped(EndlessOperator[] producers, int runs) throws Exception
+	{
+		long[] produced = new long[producers.length];
+		for (int i = 0; i < producers.length; i++) {
+			assertEquals("Opens of producer " + i, runs, producers[i].numOpened);
+			assertEquals("Closes of producer " + i, runs, producers[i].numClosed);
+			produced[i] = producers[i].numProduced;
+		}
+		Thread.sleep(100);
+		for (int i = 0; i < producers.length; i++) {
+			assertEquals("Producer " + i + " still runs.", produced[i], producers[i].numProduced);
+		}
+	}
+
+	/**
+	 * Reads each consumer in its own thread, as the exchanges with several consumers require.
+	 *
+	 * @return The tuples that each consumer received.
+	 */
+	private static List<List<DataTuple>> collectInParallel(ExchangeOperator[] consumers) throws Exception
+	{
+		Collector[] collectors = new Collector[consumers.length];
+		for (int i = 0; i < consumers.length; i++) {
+			collectors[i] = new Collector(consumers[i]);
+			collectors[i].start();
+		}
+
+		List<List<DataTuple>> results = new ArrayList<List<DataTuple>>();
+		for (Collector collector : collectors) {
+			collector.join(TIMEOUT);
+			assertFalse("The consumer did not finish.", collector.isAlive());
+			assertNull(collector.error);
+			results.add(collector.tuples);
+		}
+		return results;
+	}
+
+	/**
+	 * Creates the endless producers, of which the given one fails with the given exception
+	 * after the given number of tuples.
+	 */
+	private static EndlessOperator[] createEndlessProducers(int failing, long failAfter, Exception error)
+	{
+		EndlessOperator[] producers = new EndlessOperator[NUM_PRODUCERS];
+		for (int i = 0; i < NUM_PRODUCERS; i++) {
+			producers[i] = new EndlessOperator(i, i == failing ? failAfter : -1, error);
+		}
+		return producers;
+	}
+
+	/**
+	 * Creates tuples of few distinct keys, which identify the producer and their position.
+	 */
+	private List<DataTuple> createTuples(int producer, int num)
+	{
+		List<DataTuple> tuples = new ArrayList<DataTuple>(num);
+		for (int i = 0; i < num; i++) {
+			DataTuple tuple = new DataTuple(4);
+			tuple.assignDataField(new IntField(this.random.nextInt(500)), 0);
+			tuple.assignDataField(new CharField("k" + this.random.nextInt(4)), 1);
+			tuple.assignDataField(new IntField(producer), 2);
+			tuple.assignDataField(new IntField(i), 3);
+			tuples.add(tuple);
+		}
+		return tuples;
+	}
+
+	/**
+	 * A thread that reads all tuples of a consumer, but not more than {@link #MAX_TUPLES}.
+	 */
+	private static final class Collector extends Thread
+	{
+		private final ExchangeOperator consumer;
+
+		private final List<DataTuple> tuples = new ArrayList<DataTuple>();
+
+		private volatile Exception error;
+
+		private Collector(ExchangeOperator consumer)
+		{
+			super("Exchange Consumer Thread");
+			this.consumer = consumer;
+			setDaemon(true);
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Thread#run()
+		 */
+		@Override
+		public void run()
+		{
+			try {
+				this.consumer.open(null);
+				DataTuple tuple;
+				while ((tuple = this.consumer.next()) != null) {
+					if (this.tuples.size() == MAX_TUPLES) {
+						throw new IllegalStateException("The consumer does not end.");
+					}
+					this.tuples.add(tuple);
+				}
+				this.consumer.close();
+			}
+			catch (Exception ex) {
+				this.error = ex;
+			}
+		}
+	}
+
+	/**
+	 * A producer that returns tuples until it is closed, or that fails after a number of tuples.
+	 * It counts how often it was opened and closed, and how many tuples it produced.
+	 */
+	private static final class EndlessOperator implements PhysicalPlanOperator
+	{
+		private final int producer;
+
+		private final long failAfter;
+
+		private final Exception error;
+
+		private volatile int numOpened;
+
+		private volatile int numClosed;
+
+		private volatile long numProduced;
+
+		private EndlessOperator(int producer, long failAfter, Exception error)
+		{
+			this.producer = producer;
+			this.failAfter = failAfter;
+			this.error = error;
+		}
+
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#open(de.tuberlin.dima.minidb.core.DataTuple)
+		 */
+		@Override
+		public void open(DataTuple correlatedTuple) throws QueryExecutionException
+		{
+			this.numOpened++;
+		}
+
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#next()
+		 */
+		@Override
+		public DataTuple next() throws QueryExecutionException
+		{
+			if (this.numProduced == this.failAfter) {
+				if (this.error instanceof QueryExecutionException) {
+					throw (QueryExecutionException) this.error;
+				}
+				throw (RuntimeException) this.error;
+			}
+
+			DataTuple tuple = new DataTuple(4);
+			tuple.assignDataField(new IntField((int) (this.numProduced % 500)), 0);
+			tuple.assignDataField(new CharField("k"), 1);
+			tuple.assignDataField(new IntField(this.producer), 2);
+			tuple.assignDataField(new IntField((int) this.numProduced), 3);
+			this.numProduced++;
+			return tuple;
+		}
+
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator#close()
+		 */
+		@Override
+		public void close() throws QueryExecutionException
+		{
+			this.numClosed++;
+		}
+	}
+}
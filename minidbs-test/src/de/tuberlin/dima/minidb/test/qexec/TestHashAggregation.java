@@ -0,0 +1,198 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.parser.OutputColumn;
+import de.tuberlin.dima.minidb.qexec.GroupByOperator;
+import de.tuberlin.dima.minidb.qexec.OperatorFactory;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * Tests the hash group by against the sort based group by over the sorted input. With the
+ * default heap, all groups fit into memory. With the smallest possible heap, the tuples of the
+ * groups that do not fit overflow into partitions in temp space, which again hold more groups
+ * than fit and must be split further.
+ */
+public class TestHashAggregation
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 7120394857312L;
+
+	/**
+	 * The smallest query heap size that the heap accepts.
+	 */
+	private static final int SMALL_HEAP_BYTES = 1024 * 1024;
+
+	/**
+	 * The schema of the input: two grouping columns, a number that may be NULL and a double.
+	 */
+	private static final DataType[] TYPES = {
+			DataType.intType(), DataType.charType(6), DataType.intType(), DataType.doubleType() };
+
+	/**
+	 * The aggregates: COUNT, SUM and MAX of the number, AVG and MIN of the double.
+	 */
+	private static final int[] AGG_COLUMNS = { 2, 2, 3, 3, 2 };
+	private static final OutputColumn.AggregationType[] AGG_FUNCTIONS = {
+			OutputColumn.AggregationType.COUNT, OutputColumn.AggregationType.SUM,
+			OutputColumn.AggregationType.AVG, OutputColumn.AggregationType.MIN,
+			OutputColumn.AggregationType.MAX };
+	private static final DataType[] AGG_TYPES = {
+			DataType.intType(), DataType.intType(), DataType.doubleType(), DataType.doubleType(),
+			DataType.intType() };
+
+	/**
+	 * The configuration of the heap.
+	 */
+	private Config config;
+
+	/**
+	 * The heap for the group by.
+	 */
+	private QueryHeap queryHeap;
+
+	/**
+	 * Random number generator used to create the tuples.
+	 */
+	private final Random random = new Random(SEED);
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.queryHeap.closeQueryHeap();
+	}
+
+	@Test
+	public void testInMemoryGroups() throws Exception
+	{
+		startHeap(Config.loadConfig(new File(this.getClass().getResource("/config.xml").getPath())));
+		checkAggregation(createTuples(20000, 3000), new int[] { 0, 1 }, false);
+	}
+
+	@Test
+	public void testGroupsOverflowIntoPartitions() throws Exception
+	{
+		startHeap(TableFixture.loadConfig("QUERY_HEAP_SIZE", String.valueOf(SMALL_HEAP_BYTES)));
+
+		// the partitions of the first pass hold more groups than fit into the memory
+		checkAggregation(createTuples(250000, 150000), new int[] { 0 }, true);
+	}
+
+	@Test
+	public void testNoGroupingColumns() throws Exception
+	{
+		startHeap(TableFixture.loadConfig("QUERY_HEAP_SIZE", String.valueOf(SMALL_HEAP_BYTES)));
+		checkAggregation(createTuples(5000, 100), new int[0], false);
+
+		// without grouping columns, even no input has one group
+		checkAggregation(new ArrayList<DataTuple>(), new int[0], false);
+	}
+
+	/**
+	 * Runs the hash group by with a far too low estimate of the groups and compares the groups
+	 * with those of the sort based group by.
+	 *
+	 * @param spills Flag indicating that the group by must write temp files.
+	 */
+	private void checkAggregation(List<DataTuple> tuples, final int[] groupColumns, boolean spills) throws Exception
+	{
+		// the grouping columns come first in the output, followed by the aggregates
+		int[] groupOutput = new int[groupColumns.length + AGG_COLUMNS.length];
+		int[] aggOutput = new int[groupOutput.length];
+		for (int i = 0; i < groupOutput.length; i++) {
+			groupOutput[i] = i < groupColumns.length ? i : -1;
+			aggOutput[i] = i < groupColumns.length ? -1 : i - groupColumns.length;
+		}
+
+		GroupByOperator groupBy = OperatorFactory.createHashGroupByOperator(new MockPlanOperator(tuples),
+				this.queryHeap, TYPES, 10, groupColumns, AGG_COLUMNS, AGG_FUNCTIONS, AGG_TYPES,
+				groupOutput, aggOutput);
+
+		int filesBefore = TableFixture.countSpillFiles(this.config);
+		List<DataTuple> result = new ArrayList<DataTuple>();
+		groupBy.open(null);
+		DataTuple tuple;
+		while ((tuple = groupBy.next()) != null) {
+			result.add(tuple);
+		}
+		assertEquals("Whether the group by wrote temp files", spills, TableFixture.countSpillFiles(this.config) > filesBefore);
+		groupBy.close();
+		assertEquals("The temp files were not deleted.", filesBefore, TableFixture.countSpillFiles(this.config));
+
+		// the sort based group by needs the tuples sorted by the grouping columns
+		List<DataTuple> sorted = new ArrayList<DataTuple>(tuples);
+		Collections.sort(sorted, new Comparator<DataTuple>() {
+			@Override
+			public int compare(DataTuple t1, DataTuple t2)
+			{
+				for (int i = 0; i < groupColumns.length; i++) {
+					int cmp = t1.getField(groupColumns[i]).compareTo(t2.getField(groupColumns[i]));
+					if (cmp != 0) {
+						return cmp;
+					}
+				}
+				return 0;
+			}
+		});
+		GroupByOperator reference = OperatorFactory.createGroupByOperator(new MockPlanOperator(sorted),
+				groupColumns, AGG_COLUMNS, AGG_FUNCTIONS, AGG_TYPES, groupOutput, aggOutput);
+
+		TableFixture.assertSameTuples(TableFixture.collect(reference), result);
+	}
+
+	/**
+	 * Creates tuples of random groups. The numbers are NULL now and then, and the doubles are
+	 * multiples of a quarter, so that their sums do not depend on the order of the additions.
+	 */
+	private List<DataTuple> createTuples(int num, int numGroups)
+	{
+		List<DataTuple> tuples = new ArrayList<DataTuple>(num);
+		for (int i = 0; i < num; i++) {
+			int group = this.random.nextInt(numGroups);
+
+			DataTuple tuple = new DataTuple(4);
+			tuple.assignDataField(new IntField(group), 0);
+			tuple.assignDataField(new CharField("g" + (group % 3)), 1);
+			tuple.assignDataField(this.random.nextInt(10) == 0 ? DataType.intType().getNullValue() :
+					new IntField(this.random.nextInt(2000) - 1000), 2);
+			tuple.assignDataField(new DoubleField((this.random.nextInt(4000) - 2000) / 4.0), 3);
+			tuples.add(tuple);
+		}
+		return tuples;
+	}
+
+	private void startHeap(Config config) throws Exception
+	{
+		this.config = config;
+		this.queryHeap = new QueryHeap(Logger.getLogger("Group By - Logger"), config);
+	}
+}
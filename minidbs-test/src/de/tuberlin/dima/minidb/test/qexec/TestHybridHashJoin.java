@@ -0,0 +1,208 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.qexec.HashJoinOperator;
+import de.tuberlin.dima.minidb.qexec.OperatorFactory;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * Tests the hybrid hash join against the result of a join computed in the test. With the
+ * default heap, the join runs in memory. With the smallest possible heap, the build side does
+ * not fit, so the join must write partitions to temp space, and a partition with a single key
+ * that alone exceeds the memory must be joined in chunks.
+ */
+public class TestHybridHashJoin
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 4409127739102L;
+
+	/**
+	 * The smallest query heap size that the heap accepts.
+	 */
+	private static final int SMALL_HEAP_BYTES = 1024 * 1024;
+
+	/**
+	 * The key shared by the tuples of the partition that does not fit into the memory.
+	 */
+	private static final int HOT_KEY = -7;
+
+	/**
+	 * The schema of the tuples of both sides: the key, a number and a name.
+	 */
+	private static final DataType[] TYPES = { DataType.intType(), DataType.intType(), DataType.charType(10) };
+
+	/**
+	 * The output is the build side's key and number and the probe side's number and name.
+	 */
+	private static final int[] BUILD_OUT_MAP = { 0, 1, -1, -1 };
+	private static final int[] PROBE_OUT_MAP = { -1, -1, 1, 2 };
+
+	/**
+	 * The configuration of the heap.
+	 */
+	private Config config;
+
+	/**
+	 * The heap for the join.
+	 */
+	private QueryHeap queryHeap;
+
+	/**
+	 * Random number generator used to create the tuples.
+	 */
+	private final Random random = new Random(SEED);
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.queryHeap.closeQueryHeap();
+	}
+
+	@Test
+	public void testInMemoryJoin() throws Exception
+	{
+		startHeap(Config.loadConfig(new File(this.getClass().getResource("/config.xml").getPath())));
+		checkJoin(createTuples(5000, 2000, 0), createTuples(5000, 2500, 0), false);
+	}
+
+	@Test
+	public void testSpilledPartitions() throws Exception
+	{
+		startHeap(TableFixture.loadConfig("QUERY_HEAP_SIZE", String.valueOf(SMALL_HEAP_BYTES)));
+		checkJoin(createTuples(20000, 8000, 0), createTuples(15000, 10000, 0), true);
+	}
+
+	@Test
+	public void testChunkedPartition() throws Exception
+	{
+		startHeap(TableFixture.loadConfig("QUERY_HEAP_SIZE", String.valueOf(SMALL_HEAP_BYTES)));
+
+		// the build tuples of the hot key are many times the memory of the join
+		checkJoin(createTuples(10000, 8000, 12000), createTuples(10000, 10000, 3), true);
+	}
+
+	/**
+	 * Runs the join with a far too low estimate of the build side, which the join must correct
+	 * by growing its memory, and compares the result with the expected one.
+	 *
+	 * @param spills Flag indicating that the join must write temp files.
+	 */
+	private void checkJoin(List<DataTuple> build, List<DataTuple> probe, boolean spills) throws Exception
+	{
+		HashJoinOperator join = OperatorFactory.createHashJoinOperator(
+				new MockPlanOperator(build), new MockPlanOperator(probe), this.queryHeap, TYPES, TYPES,
+				new int[] { 0 }, new int[] { 0 }, BUILD_OUT_MAP, PROBE_OUT_MAP, 100);
+
+		int filesBefore = TableFixture.countSpillFiles(this.config);
+		List<DataTuple> result = new ArrayList<DataTuple>();
+		join.open(null);
+		DataTuple tuple;
+		while ((tuple = join.next()) != null) {
+			result.add(tuple);
+		}
+		assertEquals("Whether the join wrote temp files", spills, TableFixture.countSpillFiles(this.config) > filesBefore);
+		join.close();
+		assertEquals("The temp files were not deleted.", filesBefore, TableFixture.countSpillFiles(this.config));
+		assertFalse(this.queryHeap.hasWaitingRequests());
+
+		TableFixture.assertSameTuples(expectedJoin(build, probe), result);
+	}
+
+	/**
+	 * Joins the tuples by a map from the keys to the build tuples.
+	 */
+	private static List<DataTuple> expectedJoin(List<DataTuple> build, List<DataTuple> probe)
+	{
+		Map<DataField, List<DataTuple>> byKey = new HashMap<DataField, List<DataTuple>>();
+		for (DataTuple tuple : build) {
+			if (tuple.getField(0).isNULL()) {
+				continue;
+			}
+			List<DataTuple> tuples = byKey.get(tuple.getField(0));
+			if (tuples == null) {
+				tuples = new ArrayList<DataTuple>();
+				byKey.put(tuple.getField(0), tuples);
+			}
+			tuples.add(tuple);
+		}
+
+		List<DataTuple> result = new ArrayList<DataTuple>();
+		for (DataTuple probeTuple : probe) {
+			List<DataTuple> matches = probeTuple.getField(0).isNULL() ? null : byKey.get(probeTuple.getField(0));
+			for (int i = 0; matches != null && i < matches.size(); i++) {
+				DataTuple joined = new DataTuple(4);
+				joined.assignDataField(matches.get(i).getField(0), 0);
+				joined.assignDataField(matches.get(i).getField(1), 1);
+				joined.assignDataField(probeTuple.getField(1), 2);
+				joined.assignDataField(probeTuple.getField(2), 3);
+				result.add(joined);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates tuples with random keys from a range of distinct keys, with some NULL keys that
+	 * must not join, followed by tuples with the hot key.
+	 */
+	private List<DataTuple> createTuples(int num, int numKeys, int numHot)
+	{
+		List<DataTuple> tuples = new ArrayList<DataTuple>(num + numHot);
+		for (int i = 0; i < num + numHot; i++) {
+			DataField key;
+			if (i >= num) {
+				key = new IntField(HOT_KEY);
+			}
+			else if (this.random.nextInt(50) == 0) {
+				key = DataType.intType().getNullValue();
+			}
+			else {
+				key = new IntField(this.random.nextInt(numKeys));
+			}
+
+			DataTuple tuple = new DataTuple(3);
+			tuple.assignDataField(key, 0);
+			tuple.assignDataField(new IntField(i), 1);
+			tuple.assignDataField(new CharField("t" + this.random.nextInt(100000)), 2);
+			tuples.add(tuple);
+		}
+		return tuples;
+	}
+
+	private void startHeap(Config config) throws Exception
+	{
+		this.config = config;
+		this.queryHeap = new QueryHeap(Logger.getLogger("Join - Logger"), config);
+	}
+}
@@ -0,0 +1,405 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexDescriptor;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.CompositeField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.HashIndex;
+import de.tuberlin.dima.minidb.io.index.HashIndexResourceManager;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.index.IndexResultIterator;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TupleRIDIterator;
+import de.tuberlin.dima.minidb.optimizer.DeletePlanOperator;
+import de.tuberlin.dima.minidb.optimizer.generator.util.PhysicalPlanGeneratorUtils;
+import de.tuberlin.dima.minidb.parser.Predicate;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+import de.tuberlin.dima.minidb.semantics.BaseTableAccess;
+import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicateAtom;
+import de.tuberlin.dima.minidb.util.Pair;
+
+
+/**
+ * Tests the plans for deletes, which find the tuples to delete with a RID producing table
+ * scan and remove them together with their entries in the indexes of the table. The table has
+ * B-Tree indexes on single columns, a composite B-Tree index and a hash index. After the
+ * delete, the index lookups must return the RIDs of the remaining tuples only.
+ */
+public class TestIndexMaintainingDelete
+{
+	/**
+	 * The number of tuples in the table.
+	 */
+	private static final int NUM_TUPLES = 6000;
+
+	/**
+	 * The number of distinct values of the GRP column.
+	 */
+	private static final int NUM_GROUPS = 300;
+
+	/**
+	 * The resource ids of the indexes on the ID and the GRP column.
+	 */
+	private static final int[] INDEX_RESOURCE_IDS = { 5, 6 };
+
+	/**
+	 * The resource id of the composite index on (GRP, ID).
+	 */
+	private static final int COMPOSITE_INDEX_RESOURCE_ID = 7;
+
+	/**
+	 * The resource id of the hash index on the GRP column.
+	 */
+	private static final int HASH_INDEX_RESOURCE_ID = 8;
+
+	/**
+	 * The table from which the tuples are deleted.
+	 */
+	private TableFixture table;
+
+	/**
+	 * The access to the table in the plans.
+	 */
+	private BaseTableAccess access;
+
+	/**
+	 * The descriptors of all indexes of the table.
+	 */
+	private List<IndexDescriptor> indexes;
+
+	/**
+	 * The files and resource managers of the indexes.
+	 */
+	private File[] indexFiles;
+	private IndexResourceManager[] indexManagers;
+	private File compositeIndexFile;
+	private IndexResourceManager compositeIndexManager;
+	private File hashIndexFile;
+	private HashIndexResourceManager hashIndexManager;
+
+	/**
+	 * The heap for the plans.
+	 */
+	private QueryHeap queryHeap;
+
+	/**
+	 * The tuples in the table, by their RID.
+	 */
+	private Map<RID, DataTuple> tuples;
+
+
+	/**
+	 * Creates and fills the table, an index on the unique ID and the non-unique GRP column, a
+	 * composite index on (GRP, ID), and a hash index on GRP.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		Config config = Config.loadConfig(new File(this.getClass().getResource("/config.xml").getPath()));
+		this.queryHeap = new QueryHeap(Logger.getLogger("Delete - Logger"), config);
+
+		TableSchema schema = new TableSchema(PageSize.SIZE_4096);
+		schema.addColumn(ColumnSchema.createColumnSchema("ID", DataType.intType(), false, true));
+		schema.addColumn(ColumnSchema.createColumnSchema("GRP", DataType.intType(), false, false));
+		schema.addColumn(ColumnSchema.createColumnSchema("NAME", DataType.charType(24), true, false));
+
+		List<DataTuple> rows = new ArrayList<DataTuple>(NUM_TUPLES);
+		for (int i = 0; i < NUM_TUPLES; i++) {
+			DataTuple tuple = new DataTuple(3);
+			tuple.assignDataField(new IntField(i), 0);
+			tuple.assignDataField(new IntField((i * 7) % NUM_GROUPS), 1);
+			tuple.assignDataField(new CharField("name-" + i), 2);
+			rows.add(tuple);
+		}
+		this.table = new TableFixture("minidbsindexdelete", schema);
+		this.table.insert(rows);
+
+		TableDescriptor descriptor = new TableDescriptor("DELTAB", "minidbsindexdelete.mdtbl");
+		descriptor.setResourceProperties(this.table.getTableManager(), TableFixture.TABLE_RESOURCE_ID);
+		this.access = new BaseTableAccess(descriptor);
+		this.access.setOutputCardinality(NUM_TUPLES);
+
+		// the RIDs that the tuples got in the table
+		this.tuples = new HashMap<RID, DataTuple>(NUM_TUPLES * 2);
+		TableResourceManager manager = this.table.getTableManager();
+		for (int p = manager.getFirstDataPageNumber(); p <= manager.getLastDataPageNumber(); p++) {
+			TablePage page = (TablePage) this.table.getBufferPool().getPageAndPin(TableFixture.TABLE_RESOURCE_ID, p);
+			TupleRIDIterator iter = page.getIteratorWithRID();
+			while (iter.hasNext()) {
+				Pair<DataTuple, RID> next = iter.next();
+				this.tuples.put(next.getSecond(), next.getFirst());
+			}
+			this.table.getBufferPool().unpinPage(TableFixture.TABLE_RESOURCE_ID, p);
+		}
+		assertEquals(NUM_TUPLES, this.tuples.size());
+
+		String tempDir = this.getClass().getResource("/config.xml").getPath().replace("/config.xml", "/tempspace/");
+		this.indexes = new ArrayList<IndexDescriptor>();
+		this.indexFiles = new File[2];
+		this.indexManagers = new IndexResourceManager[2];
+		for (int column = 0; column < 2; column++) {
+			this.indexFiles[column] = new File(tempDir + "minidbsindexdelete" + column + ".mdix");
+			try {
+				IndexResourceManager.deleteIndex(this.indexFiles[column]);
+			}
+			catch (IOException ioex) {
+				/* do nothing */
+			}
+			IndexSchema indexSchema = new IndexSchema(schema, column, PageSize.SIZE_4096, column == 0, false, 1, 1);
+			this.indexManagers[column] = IndexResourceManager.createIndex(this.indexFiles[column], indexSchema);
+			this.table.getBufferPool().registerResource(INDEX_RESOURCE_IDS[column], this.indexManagers[column]);
+
+			IndexDescriptor index = new IndexDescriptor("DELIDX" + column, "DELTAB", this.indexFiles[column].getName());
+			index.setResourceProperties(this.indexManagers[column], descriptor, INDEX_RESOURCE_IDS[column]);
+			this.indexes.add(index);
+
+			BTreeIndex btree = createIndex(column);
+			for (Map.Entry<RID, DataTuple> entry : this.tuples.entrySet()) {
+				btree.insertEntry(entry.getValue().getField(column), entry.getKey());
+			}
+		}
+
+		this.compositeIndexFile = new File(tempDir + "minidbsindexdeletecomposite.mdix");
+		try {
+			IndexResourceManager.deleteIndex(this.compositeIndexFile);
+		}
+		catch (IOException ioex) {
+			/* do nothing */
+		}
+		IndexSchema compositeSchema = new IndexSchema(schema, new int[] { 1, 0 }, PageSize.SIZE_4096, true);
+		this.compositeIndexManager = IndexResourceManager.createIndex(this.compositeIndexFile, compositeSchema);
+		this.table.getBufferPool().registerResource(COMPOSITE_INDEX_RESOURCE_ID, this.compositeIndexManager);
+		IndexDescriptor composite = new IndexDescriptor("DELIDXCOMP", "DELTAB", this.compositeIndexFile.getName());
+		composite.setResourceProperties(this.compositeIndexManager, descriptor, COMPOSITE_INDEX_RESOURCE_ID);
+		this.indexes.add(composite);
+
+		BTreeIndex compositeIndex = createCompositeIndex();
+		for (Map.Entry<RID, DataTuple> entry : this.tuples.entrySet()) {
+			compositeIndex.insertEntry(compositeKey(entry.getValue()), entry.getKey());
+		}
+
+		this.hashIndexFile = new File(tempDir + "minidbsindexdeletehash.mdix");
+		try {
+			HashIndexResourceManager.deleteIndex(this.hashIndexFile);
+		}
+		catch (IOException ioex) {
+			/* do nothing */
+		}
+		this.hashIndexManager = HashIndexResourceManager.createIndex(this.hashIndexFile,
+				new IndexSchema(schema, 1, PageSize.SIZE_4096, false, 1, 1));
+		this.table.getBufferPool().registerResource(HASH_INDEX_RESOURCE_ID, this.hashIndexManager);
+		IndexDescriptor hash = new IndexDescriptor("DELIDXHASH", "DELTAB", this.hashIndexFile.getName());
+		hash.setResourceProperties(this.hashIndexManager, descriptor, HASH_INDEX_RESOURCE_ID);
+		this.indexes.add(hash);
+
+		HashIndex hashIndex = createHashIndex();
+		for (Map.Entry<RID, DataTuple> entry : this.tuples.entrySet()) {
+			hashIndex.insertEntry(entry.getValue().getField(1), entry.getKey());
+		}
+	}
+
+	/**
+	 * Deletes the table and the indexes.
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		this.queryHeap.closeQueryHeap();
+		this.table.dispose();
+		for (int i = 0; i < 2; i++) {
+			this.indexManagers[i].closeResource();
+			try {
+				IndexResourceManager.deleteIndex(this.indexFiles[i]);
+			}
+			catch (IOException ioex) {
+				/* do nothing */
+			}
+		}
+		this.compositeIndexManager.closeResource();
+		try {
+			IndexResourceManager.deleteIndex(this.compositeIndexFile);
+		}
+		catch (IOException ioex) {
+			/* do nothing */
+		}
+		this.hashIndexManager.closeResource();
+		try {
+			HashIndexResourceManager.deleteIndex(this.hashIndexFile);
+		}
+		catch (IOException ioex) {
+			/* do nothing */
+		}
+	}
+
+	@Test
+	public void testDeleteWithPredicate() throws Exception
+	{
+		// the tuples of the first 40 groups
+		Predicate parsed = new Predicate();
+		parsed.setOperator(Predicate.Operator.SMALLER);
+		this.access.setPredicate(new LocalPredicateAtom(parsed, this.access.getColumn("GRP"), new IntField(40)));
+
+		int expected = 0;
+		for (DataTuple tuple : this.tuples.values()) {
+			expected += ((IntField) tuple.getField(1)).getValue() < 40 ? 1 : 0;
+		}
+
+		assertEquals(expected, delete());
+		checkIndexes();
+
+		// deleting the same tuples again finds none
+		assertEquals(0, delete());
+		checkIndexes();
+	}
+
+	@Test
+	public void testDeleteAll() throws Exception
+	{
+		assertEquals(NUM_TUPLES, delete());
+		assertTrue(this.tuples.isEmpty());
+		checkIndexes();
+	}
+
+	/**
+	 * Plans and runs the delete for the predicate of the table access, and removes the
+	 * deleted tuples from the expected ones.
+	 *
+	 * @return The number of deleted tuples that the delete reports.
+	 */
+	private long delete() throws Exception
+	{
+		DeletePlanOperator plan = PhysicalPlanGeneratorUtils.createDeletePlan(this.access, this.indexes);
+		assertEquals(this.indexes, Arrays.asList(plan.getIndexes()));
+
+		List<DataTuple> result = TableFixture.collect(plan.createPhysicalPlan(this.table.getBufferPool(), this.queryHeap));
+		assertEquals(1, result.size());
+
+		Set<RID> deleted = new HashSet<RID>();
+		for (Map.Entry<RID, DataTuple> entry : this.tuples.entrySet()) {
+			if (this.access.getPredicate() == null ||
+					this.access.getPredicate().createExecutablePredicate().evaluate(entry.getValue())) {
+				deleted.add(entry.getKey());
+			}
+		}
+		this.tuples.keySet().removeAll(deleted);
+
+		return ((BigIntField) result.get(0).getField(0)).getValue();
+	}
+
+	/**
+	 * Checks that the lookups of all IDs and groups return exactly the RIDs of the remaining
+	 * tuples with that value, in the single column, composite, and hash indexes.
+	 */
+	private void checkIndexes() throws Exception
+	{
+		Map<Integer, Set<RID>> byId = new HashMap<Integer, Set<RID>>();
+		Map<Integer, Set<RID>> byGroup = new HashMap<Integer, Set<RID>>();
+		for (Map.Entry<RID, DataTuple> entry : this.tuples.entrySet()) {
+			add(byId, ((IntField) entry.getValue().getField(0)).getValue(), entry.getKey());
+			add(byGroup, ((IntField) entry.getValue().getField(1)).getValue(), entry.getKey());
+		}
+
+		BTreeIndex idIndex = createIndex(0);
+		for (int id = 0; id < NUM_TUPLES; id++) {
+			Set<RID> expected = byId.containsKey(id) ? byId.get(id) : new HashSet<RID>();
+			assertEquals("RIDs for ID " + id, expected, lookup(idIndex, id));
+		}
+		BTreeIndex groupIndex = createIndex(1);
+		for (int group = 0; group < NUM_GROUPS; group++) {
+			Set<RID> expected = byGroup.containsKey(group) ? byGroup.get(group) : new HashSet<RID>();
+			assertEquals("RIDs for group " + group, expected, lookup(groupIndex, group));
+		}
+
+		BTreeIndex compositeIndex = createCompositeIndex();
+		for (int id = 0; id < NUM_TUPLES; id++) {
+			Set<RID> expected = byId.containsKey(id) ? byId.get(id) : new HashSet<RID>();
+			int group = (id * 7) % NUM_GROUPS;
+			CompositeField key = new CompositeField(new IntField(group), new IntField(id));
+			assertEquals("RIDs for (" + group + ", " + id + ")", expected, collect(compositeIndex.lookupRids(key)));
+		}
+		HashIndex hashIndex = createHashIndex();
+		for (int group = 0; group < NUM_GROUPS; group++) {
+			Set<RID> expected = byGroup.containsKey(group) ? byGroup.get(group) : new HashSet<RID>();
+			assertEquals("Hashed RIDs for group " + group, expected, collect(hashIndex.lookupRids(new IntField(group))));
+		}
+	}
+
+	private BTreeIndex createIndex(int column)
+	{
+		return AbstractExtensionFactory.getExtensionFactory().createConcurrentBTreeIndex(
+				this.indexManagers[column].getSchema(), this.table.getBufferPool(), INDEX_RESOURCE_IDS[column]);
+	}
+
+	private BTreeIndex createCompositeIndex()
+	{
+		return AbstractExtensionFactory.getExtensionFactory().createConcurrentBTreeIndex(
+				this.compositeIndexManager.getSchema(), this.table.getBufferPool(), COMPOSITE_INDEX_RESOURCE_ID);
+	}
+
+	private HashIndex createHashIndex()
+	{
+		return AbstractExtensionFactory.getExtensionFactory().createHashIndex(
+				this.hashIndexManager, this.table.getBufferPool(), HASH_INDEX_RESOURCE_ID);
+	}
+
+	private static CompositeField compositeKey(DataTuple tuple)
+	{
+		return new CompositeField(tuple.getField(1), tuple.getField(0));
+	}
+
+	private static Set<RID> lookup(BTreeIndex index, int key) throws Exception
+	{
+		return collect(index.lookupRids(new IntField(key)));
+	}
+
+	private static Set<RID> collect(IndexResultIterator<RID> iter) throws Exception
+	{
+		Set<RID> rids = new HashSet<RID>();
+		while (iter.hasNext()) {
+			assertTrue("Duplicate RID", rids.add(iter.next()));
+		}
+		return rids;
+	}
+
+	private static void add(Map<Integer, Set<RID>> map, int key, RID rid)
+	{
+		Set<RID> rids = map.get(key);
+		if (rids == null) {
+			rids = new HashSet<RID>();
+			map.put(key, rids);
+		}
+		rids.add(rid);
+	}
+}
@@ -0,0 +1,401 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexDescriptor;
+import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.optimizer.FetchPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.FilterPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.HashJoinPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.SortPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.TableScanPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.TopNSortPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.cost.CostEstimator;
+import de.tuberlin.dima.minidb.optimizer.generator.util.PhysicalPlanGeneratorUtils;
+import de.tuberlin.dima.minidb.parser.Predicate;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+import de.tuberlin.dima.minidb.semantics.BaseTableAccess;
+import de.tuberlin.dima.minidb.semantics.Column;
+import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicate;
+import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicateAtom;
+
+
+/**
+ * Tests late materialization: the optimizer picks the plan with the RID producing scan and
+ * the deferred FETCH by cost, and that plan returns the same tuples in the same order as the
+ * plain table scan and sort, also when records have been deleted from the pages, and when the
+ * RIDs are carried through a hash join and a filter.
+ */
+public class TestLateMaterialization
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 7719023465120L;
+
+	/**
+	 * The number of tuples initially in the table.
+	 */
+	private static final int NUM_TUPLES = 3000;
+
+	/**
+	 * The types of the columns of the table.
+	 */
+	private static final DataType[] COLUMN_TYPES = { DataType.intType(), DataType.charType(120),
+			DataType.intType(), DataType.charType(200) };
+
+	/**
+	 * The tuples in the table.
+	 */
+	private List<DataTuple> tuples;
+
+	/**
+	 * The table.
+	 */
+	private TableFixture table;
+
+	/**
+	 * The access to the table that the plans are built for.
+	 */
+	private BaseTableAccess access;
+
+	/**
+	 * A second access to the table, for joins of the table with itself.
+	 */
+	private BaseTableAccess joinedAccess;
+
+	/**
+	 * The query heap from which the sorts reserve their memory.
+	 */
+	private QueryHeap queryHeap;
+
+
+	/**
+	 * Creates and fills the table and the access to it.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		Config config = Config.loadConfig(new File(this.getClass().getResource("/config.xml").getPath()));
+		this.queryHeap = new QueryHeap(Logger.getLogger("Sort - Logger"), config);
+
+		TableSchema schema = new TableSchema(PageSize.SIZE_4096);
+		schema.addColumn(ColumnSchema.createColumnSchema("ID", DataType.intType(), false, true));
+		schema.addColumn(ColumnSchema.createColumnSchema("NAME", COLUMN_TYPES[1], true, false));
+		schema.addColumn(ColumnSchema.createColumnSchema("VAL", DataType.intType(), true, false));
+		schema.addColumn(ColumnSchema.createColumnSchema("PAD", COLUMN_TYPES[3], false, false));
+
+		Random random = new Random(SEED);
+		this.tuples = new ArrayList<DataTuple>(NUM_TUPLES);
+		for (int i = 0; i < NUM_TUPLES; i++) {
+			DataTuple tuple = new DataTuple(COLUMN_TYPES.length);
+			tuple.assignDataField(new IntField(i), 0);
+			tuple.assignDataField(random.nextInt(20) == 0 ? COLUMN_TYPES[1].getNullValue() :
+					pad("name-" + random.nextInt(500), 120), 1);
+			tuple.assignDataField(random.nextInt(20) == 0 ? DataType.intType().getNullValue() :
+					new IntField(random.nextInt(100)), 2);
+			tuple.assignDataField(pad("pad-" + i, 200), 3);
+			this.tuples.add(tuple);
+		}
+
+		this.table = new TableFixture("minidbslatematerialization", schema);
+		this.table.insert(this.tuples);
+
+		TableDescriptor descriptor = new TableDescriptor("LATE", "minidbslatematerialization.mdtbl");
+		descriptor.setResourceProperties(this.table.getTableManager(), TableFixture.TABLE_RESOURCE_ID);
+		this.access = new BaseTableAccess(descriptor);
+		this.access.setOutputCardinality(NUM_TUPLES);
+		this.joinedAccess = new BaseTableAccess(descriptor);
+		this.joinedAccess.setOutputCardinality(NUM_TUPLES);
+	}
+
+	/**
+	 * Releases the query heap and deletes the table.
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		this.queryHeap.closeQueryHeap();
+		this.table.dispose();
+	}
+
+	@Test
+	public void testChoiceByCost() throws Exception
+	{
+		// the sort costs one unit per byte and tuple, so late materialization saves about
+		// 310 units per tuple and pays off if a fetch costs less than that
+		OptimizerPlanOperator cheapFetch = PhysicalPlanGeneratorUtils.applyLateMaterialization(
+				createSortPlan(), new WidthCostEstimator(100));
+		assertTrue("Late materialization was not chosen.", cheapFetch instanceof FetchPlanOperator);
+		assertTrue(((FetchPlanOperator) cheapFetch).isDeferredFetch());
+
+		SortPlanOperator sort = createSortPlan();
+		assertSame("Late materialization was chosen despite expensive fetches.", sort,
+				PhysicalPlanGeneratorUtils.applyLateMaterialization(sort, new WidthCostEstimator(1000)));
+
+		// the top-N sort keeps its tuples in memory, so the narrower tuples save nothing
+		SortPlanOperator topN = new TopNSortPlanOperator(createScan(), new int[] { 2 }, new boolean[] { true }, 10);
+		assertSame(topN, PhysicalPlanGeneratorUtils.applyLateMaterialization(topN, new WidthCostEstimator(1)));
+
+		// a sort on all columns leaves nothing to fetch late
+		SortPlanOperator all = new SortPlanOperator(createScan(), new int[] { 0, 1, 2, 3 },
+				new boolean[] { true, true, true, true });
+		assertSame(all, PhysicalPlanGeneratorUtils.applyLateMaterialization(all, new WidthCostEstimator(0)));
+	}
+
+	@Test
+	public void testSameResultAsScan() throws Exception
+	{
+		TableFixture.assertSameTuples(this.tuples, TableFixture.collect(
+				createScan().createPhysicalPlan(this.table.getBufferPool(), this.queryHeap)));
+		compareWithScan();
+	}
+
+	@Test
+	public void testSameResultWithDeletedRecords() throws Exception
+	{
+		// delete every seventh record of each page, such that record positions and
+		// tuple positions differ
+		TableResourceManager manager = this.table.getTableManager();
+		List<DataTuple> remaining = new ArrayList<DataTuple>();
+		for (int p = manager.getFirstDataPageNumber(); p <= manager.getLastDataPageNumber(); p++) {
+			TablePage page = (TablePage) this.table.getBufferPool().getPageAndPin(TableFixture.TABLE_RESOURCE_ID, p);
+			for (int pos = 0; pos < page.getNumRecordsOnPage(); pos++) {
+				if (pos % 7 == 3) {
+					page.deleteTuple(pos);
+				}
+				else {
+					remaining.add(page.getDataTuple(pos, -1L, COLUMN_TYPES.length));
+				}
+			}
+			this.table.getBufferPool().unpinPage(TableFixture.TABLE_RESOURCE_ID, p);
+		}
+		TableFixture.assertSameTuples(remaining, TableFixture.collect(
+				createScan().createPhysicalPlan(this.table.getBufferPool(), this.queryHeap)));
+
+		compareWithScan();
+	}
+
+	@Test
+	public void testThroughJoinAndFilter() throws Exception
+	{
+		// joins VAL with the ID of the second access, and keeps the tuples with ID below 2000
+		HashJoinPlanOperator join = new HashJoinPlanOperator(createScan(), createScan(this.joinedAccess),
+				null, new int[] { 2 }, new int[] { 0 }, new int[] { 0, 1, 2, 3, -1, -1, -1, -1 },
+				new int[] { -1, -1, -1, -1, 0, 1, 2, 3 }, NUM_TUPLES);
+		Predicate parsed = new Predicate();
+		parsed.setOperator(Predicate.Operator.SMALLER);
+		LocalPredicateAtom pred = new LocalPredicateAtom(parsed, column(0), new IntField(2000));
+		FilterPlanOperator filter = new FilterPlanOperator(join, pred, NUM_TUPLES * 2 / 3);
+
+		// sorts on the joined NAME and the ID
+		int[] sortColumns = { 5, 0 };
+		boolean[] ascending = { true, false };
+		SortPlanOperator sort = new SortPlanOperator(filter, sortColumns, ascending);
+		OptimizerPlanOperator late = PhysicalPlanGeneratorUtils.applyLateMaterialization(sort, new WidthCostEstimator(0));
+
+		// one deferred fetch per table, above the sort of the narrow tuples
+		assertTrue(late instanceof FetchPlanOperator);
+		FetchPlanOperator fetch = (FetchPlanOperator) late;
+		assertTrue(fetch.isDeferredFetch());
+		assertTrue(fetch.getChild() instanceof FetchPlanOperator);
+		OptimizerPlanOperator lateSort = ((FetchPlanOperator) fetch.getChild()).getChild();
+		assertTrue(lateSort instanceof SortPlanOperator);
+		// the sort gets the ID and the joined NAME, and the RIDs of both accesses
+		assertEquals(4, lateSort.getReturnedColumns().length);
+		assertTrue(((SortPlanOperator) lateSort).getChild() instanceof FilterPlanOperator);
+
+		compare(new SortPlanOperator(filter, sortColumns, ascending), late, sortColumns);
+
+		// with expensive fetches, the plan is kept
+		assertSame(sort, PhysicalPlanGeneratorUtils.applyLateMaterialization(sort, new WidthCostEstimator(1000)));
+	}
+
+	/**
+	 * Runs the early and the late materialized plan for a full sort and for a top-N sort,
+	 * and checks that they produce the same tuples with the same sequence of sort keys.
+	 */
+	private void compareWithScan() throws Exception
+	{
+		SortPlanOperator sort = createSortPlan();
+		OptimizerPlanOperator late = PhysicalPlanGeneratorUtils.applyLateMaterialization(
+				createSortPlan(), new WidthCostEstimator(0));
+		assertTrue(late instanceof FetchPlanOperator);
+		compare(sort, late, sort.getSortColumnIndices());
+
+		// the top-N sort is never chosen by cost, so its late materialized plan is built directly
+		int[] topNColumns = { 2, 0 };
+		boolean[] topNAscending = { true, false };
+		TableScanPlanOperator ridScan = PhysicalPlanGeneratorUtils.createRIDTableScan(this.access,
+				new Column[] { column(2), column(0) });
+		OptimizerPlanOperator lateTopN = PhysicalPlanGeneratorUtils.addDeferredFetch(
+				new TopNSortPlanOperator(ridScan, new int[] { 0, 1 }, topNAscending, 25), this.access,
+				createScan().getReturnedColumns());
+		compare(new TopNSortPlanOperator(createScan(), topNColumns, topNAscending, 25), lateTopN, topNColumns);
+	}
+
+	private void compare(OptimizerPlanOperator early, OptimizerPlanOperator late, int[] sortColumns) throws Exception
+	{
+		List<DataTuple> expected = TableFixture.collect(early.createPhysicalPlan(this.table.getBufferPool(), this.queryHeap));
+		List<DataTuple> actual = TableFixture.collect(late.createPhysicalPlan(this.table.getBufferPool(), this.queryHeap));
+
+		assertEquals("Sort keys differ.", keys(expected, sortColumns), keys(actual, sortColumns));
+		TableFixture.assertSameTuples(expected, actual);
+	}
+
+	/**
+	 * Creates a sort on VAL descending and ID ascending above a scan of all columns.
+	 */
+	private SortPlanOperator createSortPlan()
+	{
+		return new SortPlanOperator(createScan(), new int[] { 2, 0 }, new boolean[] { false, true });
+	}
+
+	private TableScanPlanOperator createScan()
+	{
+		return createScan(this.access);
+	}
+
+	private TableScanPlanOperator createScan(BaseTableAccess tableAccess)
+	{
+		Column[] columns = new Column[COLUMN_TYPES.length];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = new Column(tableAccess, COLUMN_TYPES[i], i);
+		}
+		return new TableScanPlanOperator(tableAccess, columns);
+	}
+
+	private Column column(int index)
+	{
+		return new Column(this.access, COLUMN_TYPES[index], index);
+	}
+
+	private static List<List<DataField>> keys(List<DataTuple> tuples, int[] sortColumns)
+	{
+		List<List<DataField>> keys = new ArrayList<List<DataField>>(tuples.size());
+		for (DataTuple tuple : tuples) {
+			List<DataField> key = new ArrayList<DataField>(sortColumns.length);
+			for (int col : sortColumns) {
+				key.add(tuple.getField(col));
+			}
+			keys.add(key);
+		}
+		return keys;
+	}
+
+	private static CharField pad(String value, int length)
+	{
+		StringBuilder bld = new StringBuilder(value);
+		while (bld.length() < length) {
+			bld.append(' ');
+		}
+		return new CharField(bld.toString());
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * A cost model in which sorting costs one unit per byte of each tuple and each fetch
+	 * costs a fixed amount. All other operators are free.
+	 */
+	private static final class WidthCostEstimator implements CostEstimator
+	{
+		private final long costPerFetch;
+
+		private WidthCostEstimator(long costPerFetch)
+		{
+			this.costPerFetch = costPerFetch;
+		}
+
+		@Override
+		public long computeSortCosts(Column[] columnsInTuple, long numTuples)
+		{
+			long width = 0;
+			for (Column col : columnsInTuple) {
+				width += col.getDataType().getNumberOfBytes();
+			}
+			return width * numTuples;
+		}
+
+		@Override
+		public long computeFetchCosts(TableDescriptor fetchedTable, long cardinality, boolean sequential)
+		{
+			return this.costPerFetch * cardinality;
+		}
+
+		@Override
+		public long computeTableScanCosts(TableDescriptor table)
+		{
+			return 1;
+		}
+
+		@Override
+		public long computeIndexLookupCosts(IndexDescriptor index, TableDescriptor baseTable, long cardinality)
+		{
+			return 0;
+		}
+
+		@Override
+		public long computeHashIndexLookupCosts(IndexDescriptor index, TableDescriptor baseTable, long cardinality)
+		{
+			return 0;
+		}
+
+		@Override
+		public long computeFilterCost(LocalPredicate pred, long cardinality)
+		{
+			return 0;
+		}
+
+		@Override
+		public long computeMergeJoinCost()
+		{
+			return 0;
+		}
+
+		@Override
+		public long computeHashJoinCost(Column[] buildColumns, long buildCardinality, Column[] probeColumns,
+				long probeCardinality)
+		{
+			return 0;
+		}
+
+		@Override
+		public long computeHashAggregationCost(Column[] inputColumns, long inputCardinality, long numGroups)
+		{
+			return 0;
+		}
+
+		@Override
+		public long computeNestedLoopJoinCost(long outerCardinality, OptimizerPlanOperator innerOp)
+		{
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.qexec.LoserTreeMerger;
+import de.tuberlin.dima.minidb.qexec.NormalizedKeySorter;
+import de.tuberlin.dima.minidb.qexec.OperatorFactory;
+import de.tuberlin.dima.minidb.qexec.SortOperator;
+import de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * Tests the merge of sorted runs through the tree of losers. Runs of very different lengths,
+ * including empty ones, are merged in numbers that do not fill the tree, and the merge must
+ * return the tuples of a stable sort of the concatenated runs. The sort operator is tested
+ * with a heap so small that the runs are merged in several cascades.
+ */
+public class TestLoserTreeMerge
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 5530912847713L;
+
+	/**
+	 * The smallest query heap size that the heap accepts.
+	 */
+	private static final int SMALL_HEAP_BYTES = 1024 * 1024;
+
+	/**
+	 * The schema of the tuples: two sort columns, and the number of the run and the position
+	 * in the run, which identify the tuple.
+	 */
+	private static final DataType[] TYPES = {
+			DataType.intType(), DataType.charType(8), DataType.intType(), DataType.intType() };
+
+	/**
+	 * The tuples are sorted descending by the number and ascending by the name.
+	 */
+	private static final int[] SORT_COLUMNS = { 0, 1 };
+	private static final boolean[] ASCENDING = { false, true };
+
+	/**
+	 * Random number generator used to create the tuples.
+	 */
+	private final Random random = new Random(SEED);
+
+
+	@Test
+	public void testUnevenRuns() throws Exception
+	{
+		// numbers of runs that fill the tree completely and that leave it unbalanced
+		for (int numRuns : new int[] { 1, 2, 3, 5, 7, 8, 16, 17, 33 }) {
+			List<List<DataTuple>> runs = new ArrayList<List<DataTuple>>();
+			for (int r = 0; r < numRuns; r++) {
+				int length;
+				switch (this.random.nextInt(4)) {
+				case 0: length = 0; break;
+				case 1: length = 1; break;
+				case 2: length = this.random.nextInt(20); break;
+				default: length = this.random.nextInt(3000);
+				}
+				runs.add(createRun(r, length));
+			}
+			checkMerge(runs);
+		}
+	}
+
+	@Test
+	public void testOneLongRun() throws Exception
+	{
+		// one run holds nearly all tuples, at the first, a middle and the last input
+		for (int longRun : new int[] { 0, 4, 9 }) {
+			List<List<DataTuple>> runs = new ArrayList<List<DataTuple>>();
+			for (int r = 0; r < 10; r++) {
+				runs.add(createRun(r, r == longRun ? 20000 : this.random.nextInt(3)));
+			}
+			checkMerge(runs);
+		}
+	}
+
+	@Test
+	public void testEmptyInputs() throws Exception
+	{
+		NormalizedKeySorter sorter = new NormalizedKeySorter(TYPES, SORT_COLUMNS, ASCENDING);
+		assertFalse(new LoserTreeMerger(new ExternalTupleSequenceIterator[0], sorter).hasNext());
+
+		List<List<DataTuple>> runs = new ArrayList<List<DataTuple>>();
+		for (int r = 0; r < 6; r++) {
+			runs.add(new ArrayList<DataTuple>());
+		}
+		checkMerge(runs);
+	}
+
+	@Test
+	public void testCascadedMerges() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		Config config = TableFixture.loadConfig("QUERY_HEAP_SIZE", String.valueOf(SMALL_HEAP_BYTES));
+		QueryHeap queryHeap = new QueryHeap(Logger.getLogger("Merge - Logger"), config);
+		try {
+			// random tuples with a long sorted stretch, which gives runs of uneven lengths
+			List<DataTuple> tuples = new ArrayList<DataTuple>();
+			tuples.addAll(createRun(0, 80000));
+			List<DataTuple> sorted = createRun(1, 40000);
+			Collections.sort(sorted, new NormalizedKeySorter(TYPES, SORT_COLUMNS, ASCENDING));
+			tuples.addAll(sorted);
+			tuples.addAll(createRun(2, 80000));
+
+			SortOperator sort = OperatorFactory.createNormalizedKeySortOperator(new MockPlanOperator(tuples), queryHeap,
+					TYPES, 100, SORT_COLUMNS, ASCENDING);
+			List<DataTuple> result = TableFixture.collect(sort);
+
+			TableFixture.assertSameTuples(tuples, result);
+			NormalizedKeySorter sorter = new NormalizedKeySorter(TYPES, SORT_COLUMNS, ASCENDING);
+			for (int i = 1; i < result.size(); i++) {
+				assertTrue("Tuples out of order at " + i, sorter.compare(result.get(i - 1), result.get(i)) <= 0);
+			}
+			assertEquals("The temp files were not deleted.", 0, TableFixture.countSpillFiles(config));
+		}
+		finally {
+			queryHeap.closeQueryHeap();
+		}
+	}
+
+	/**
+	 * Merges the sorted runs and checks that the result is the stable sort of the concatenated
+	 * runs, in which equal tuples of an earlier run come first.
+	 */
+	private static void checkMerge(List<List<DataTuple>> runs) throws Exception
+	{
+		NormalizedKeySorter sorter = new NormalizedKeySorter(TYPES, SORT_COLUMNS, ASCENDING);
+
+		List<DataTuple> expected = new ArrayList<DataTuple>();
+		ExternalTupleSequenceIterator[] inputs = new ExternalTupleSequenceIterator[runs.size()];
+		for (int r = 0; r < runs.size(); r++) {
+			Collections.sort(runs.get(r), sorter);
+			expected.addAll(runs.get(r));
+			inputs[r] = new ListIterator(runs.get(r));
+		}
+		Collections.sort(expected, sorter);
+
+		List<DataTuple> merged = new ArrayList<DataTuple>();
+		LoserTreeMerger merger = new LoserTreeMerger(inputs, sorter);
+		while (merger.hasNext()) {
+			merged.add(merger.next());
+		}
+		assertEquals("Merge of " + runs.size() + " runs", expected, merged);
+	}
+
+	/**
+	 * Creates a run of tuples with few distinct keys, so that equal keys meet in the merge.
+	 */
+	private List<DataTuple> createRun(int run, int length)
+	{
+		List<DataTuple> tuples = new ArrayList<DataTuple>(length);
+		for (int i = 0; i < length; i++) {
+			DataTuple tuple = new DataTuple(4);
+			tuple.assignDataField(this.random.nextInt(30) == 0 ? DataType.intType().getNullValue() :
+					new IntField(this.random.nextInt(200) - 100), 0);
+			tuple.assignDataField(new CharField("n" + this.random.nextInt(5)), 1);
+			tuple.assignDataField(new IntField(run), 2);
+			tuple.assignDataField(new IntField(i), 3);
+			tuples.add(tuple);
+		}
+		return tuples;
+	}
+
+	/**
+	 * A sorted run held in a list.
+	 */
+	private static final class ListIterator implements ExternalTupleSequenceIterator
+	{
+		private final List<DataTuple> tuples;
+
+		private int position;
+
+		private ListIterator(List<DataTuple> tuples)
+		{
+			this.tuples = tuples;
+		}
+
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext()
+		{
+			return this.position < this.tuples.size();
+		}
+
+		/* (non-Javadoc)
+		 * @see de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator#next()
+		 */
+		@Override
+		public DataTuple next()
+		{
+			return this.tuples.get(this.position++);
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.api.ExtensionFactory;
+import de.tuberlin.dima.minidb.api.ReferenceExtensionFactory;
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DateField;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.qexec.SortOperator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * Regression test for the extension's sort operator, which sorts after normalized keys and
+ * which the layered factory hands out in place of the reference sort. The same input is
+ * sorted by both operators, and the sequence of sort keys must be the same, for mixed sort
+ * directions, NULL values, character columns that tie beyond the normalized key, and for
+ * input that is sorted in memory as well as input that is spilled into runs.
+ */
+public class TestNormalizedKeySort
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 3409871265098L;
+
+	/**
+	 * Number of tuples sorted in each test.
+	 */
+	private static final int NUM_TUPLES = 20000;
+
+	/**
+	 * The types of the columns of the tuples.
+	 */
+	private static final DataType[] COLUMN_TYPES = { DataType.intType(), DataType.charType(16), DataType.bigIntType(),
+			DataType.doubleType(), DataType.dateType() };
+
+	/**
+	 * The query heap from which the sorts reserve their memory.
+	 */
+	private QueryHeap queryHeap;
+
+	/**
+	 * The tuples to sort.
+	 */
+	private List<DataTuple> tuples;
+
+
+	/**
+	 * Creates the query heap and the input tuples.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		Config config = Config.loadConfig(new File(this.getClass().getResource("/config.xml").getPath()));
+		this.queryHeap = new QueryHeap(Logger.getLogger("Sort - Logger"), config);
+
+		Random random = new Random(SEED);
+		this.tuples = new ArrayList<DataTuple>(NUM_TUPLES);
+		for (int i = 0; i < NUM_TUPLES; i++) {
+			DataTuple tuple = new DataTuple(COLUMN_TYPES.length);
+			tuple.assignDataField(random.nextInt(20) == 0 ? DataType.intType().getNullValue() :
+					new IntField(random.nextInt(50) - 25), 0);
+			// all names share the first ten characters, which is more than the key holds
+			tuple.assignDataField(random.nextInt(20) == 0 ? DataType.charType(16).getNullValue() :
+					new CharField("shared-pre" + Integer.toString(random.nextInt(400), 36)), 1);
+			tuple.assignDataField(random.nextInt(20) == 0 ? DataType.bigIntType().getNullValue() :
+					new BigIntField(random.nextLong() >> random.nextInt(64)), 2);
+			tuple.assignDataField(random.nextInt(20) == 0 ? DataType.doubleType().getNullValue() :
+					new DoubleField((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 6)), 3);
+			tuple.assignDataField(random.nextInt(20) == 0 ? DataType.dateType().getNullValue() :
+					new DateField(1 + random.nextInt(28), random.nextInt(12), 1900 + random.nextInt(200)), 4);
+			this.tuples.add(tuple);
+		}
+	}
+
+	/**
+	 * Releases the query heap.
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		this.queryHeap.closeQueryHeap();
+	}
+
+	@Test
+	public void testMixedDirections() throws Exception
+	{
+		compareWithReference(new int[] { 0, 2, 3 }, new boolean[] { false, true, false });
+	}
+
+	@Test
+	public void testNumericAndDateColumns() throws Exception
+	{
+		compareWithReference(new int[] { 4, 3 }, new boolean[] { true, true });
+		compareWithReference(new int[] { 3, 4, 2 }, new boolean[] { false, false, true });
+	}
+
+	@Test
+	public void testCharactersTieBeyondKey() throws Exception
+	{
+		compareWithReference(new int[] { 1 }, new boolean[] { true });
+		compareWithReference(new int[] { 1, 0 }, new boolean[] { false, true });
+		compareWithReference(new int[] { 0, 1, 2 }, new boolean[] { true, false, false });
+	}
+
+	/**
+	 * Sorts the input with the extension's and the reference sort, once with an estimate that
+	 * lets the sort work in memory and once with an estimate that forces the input into runs,
+	 * and checks that all produce the same sequence of sort keys and the same tuples.
+	 */
+	private void compareWithReference(int[] sortColumns, boolean[] ascending) throws Exception
+	{
+		SortOperator reference = new ReferenceExtensionFactory().createSortOperator(
+				new MockPlanOperator(this.tuples), this.queryHeap, COLUMN_TYPES, NUM_TUPLES, sortColumns, ascending);
+		List<DataTuple> expected = TableFixture.collect(reference);
+		TableFixture.assertSameTuples(this.tuples, expected);
+		List<List<DataField>> expectedKeys = keys(expected, sortColumns);
+
+		for (int estimate : new int[] { NUM_TUPLES, 1 }) {
+			SortOperator sort = new ExtensionFactory().createNormalizedKeySortOperator(
+					new MockPlanOperator(this.tuples), this.queryHeap, COLUMN_TYPES, estimate, sortColumns, ascending);
+			List<DataTuple> actual = TableFixture.collect(sort);
+
+			TableFixture.assertSameTuples(this.tuples, actual);
+			assertEquals("Sort keys differ for estimate " + estimate, expectedKeys, keys(actual, sortColumns));
+		}
+	}
+
+	private static List<List<DataField>> keys(List<DataTuple> tuples, int[] sortColumns)
+	{
+		List<List<DataField>> keys = new ArrayList<List<DataField>>(tuples.size());
+		for (DataTuple tuple : tuples) {
+			List<DataField> key = new ArrayList<DataField>(sortColumns.length);
+			for (int col : sortColumns) {
+				key.add(tuple.getField(col));
+			}
+			keys.add(key);
+		}
+		return keys;
+	}
+}
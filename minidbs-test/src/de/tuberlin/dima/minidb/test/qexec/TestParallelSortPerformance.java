@@ -0,0 +1,182 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.MethodRule;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.VarcharField;
+import de.tuberlin.dima.minidb.qexec.SortOperator;
+import de.tuberlin.dima.minidb.qexec.SortOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * Benchmark of the sort operator with different degrees of parallelism. The same tuples are
+ * sorted by one thread and by 4, 8 and 16 threads, such that the times show the speedup that
+ * the parallel sort reaches on the machine.
+ */
+public class TestParallelSortPerformance
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 9028374659812734L;
+
+	/**
+	 * Number of tuples sorted in each run of the benchmark.
+	 */
+	private static final int NUM_TUPLES = 500000;
+
+	/**
+	 * The types of the columns of the tuples.
+	 */
+	private static final DataType[] COLUMN_TYPES = { DataType.intType(), DataType.varcharType(16), DataType.bigIntType() };
+
+	/**
+	 * The columns after which the tuples are sorted.
+	 */
+	private static final int[] SORT_COLUMNS = { 0, 1 };
+
+	/**
+	 * The sort directions of the sort columns.
+	 */
+	private static final boolean[] ASCENDING = { true, false };
+
+	/**
+	 * Mark test as benchmark.
+	 */
+	@Rule
+	public MethodRule benchmarkRun = new BenchmarkRule();
+
+	/**
+	 * The tuples to sort, shared by all runs.
+	 */
+	private static List<DataTuple> tuples;
+
+	/**
+	 * The query heap from which the sorts reserve their memory.
+	 */
+	private QueryHeap queryHeap;
+
+
+	/**
+	 * Generates the tuples and writes a few infos about the benchmark to the console.
+	 */
+	@BeforeClass
+	public static void generateTuples()
+	{
+		Random random = new Random(SEED);
+		tuples = new ArrayList<DataTuple>(NUM_TUPLES);
+		for (int i = 0; i < NUM_TUPLES; i++) {
+			DataTuple tuple = new DataTuple(COLUMN_TYPES.length);
+			tuple.assignDataField(new IntField(random.nextInt(NUM_TUPLES / 10)), 0);
+			tuple.assignDataField(new VarcharField(Long.toString(random.nextLong() & 0xffffffffffL, 36)), 1);
+			tuple.assignDataField(new BigIntField(random.nextLong()), 2);
+			tuples.add(tuple);
+		}
+
+		System.out.println("");
+		System.out.println("Number of sorted tuples: " + NUM_TUPLES);
+		System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+		System.out.println("");
+	}
+
+	/**
+	 * Creates the query heap.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		Config config = Config.loadConfig(new File(this.getClass().getResource("/config.xml").getPath()));
+		this.queryHeap = new QueryHeap(Logger.getLogger("Sort - Logger"), config);
+	}
+
+	@Test
+	@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 3)
+	public void testSequentialSort() throws Exception
+	{
+		sortAndCheck(1);
+	}
+
+	@Test
+	@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 3)
+	public void testParallelSort4() throws Exception
+	{
+		sortAndCheck(4);
+	}
+
+	@Test
+	@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 3)
+	public void testParallelSort8() throws Exception
+	{
+		sortAndCheck(8);
+	}
+
+	@Test
+	@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 3)
+	public void testParallelSort16() throws Exception
+	{
+		sortAndCheck(16);
+	}
+
+	/**
+	 * Sorts the tuples with the given degree of parallelism and checks the order of the result.
+	 *
+	 * @param degreeOfParallelism The number of threads that sort.
+	 */
+	private void sortAndCheck(int degreeOfParallelism) throws Exception
+	{
+		SortOperator sort = new SortOperatorImpl(new MockPlanOperator(tuples), this.queryHeap,
+				COLUMN_TYPES, NUM_TUPLES, SORT_COLUMNS, ASCENDING, degreeOfParallelism);
+
+		sort.open(null);
+		DataTuple previous = null;
+		DataTuple current;
+		int count = 0;
+		while ((current = sort.next()) != null) {
+			if (previous != null) {
+				assertTrue("Tuples out of order at position " + count, compare(previous, current) <= 0);
+			}
+			previous = current;
+			count++;
+		}
+		sort.close();
+
+		assertEquals("Wrong number of sorted tuples", NUM_TUPLES, count);
+	}
+
+	/**
+	 * Compares two tuples after the sort columns, in the sort directions.
+	 */
+	private static int compare(DataTuple first, DataTuple second)
+	{
+		for (int i = 0; i < SORT_COLUMNS.length; i++) {
+			int c = first.getField(SORT_COLUMNS[i]).compareTo(second.getField(SORT_COLUMNS[i]));
+			if (c != 0) {
+				return ASCENDING[i] ? c : -c;
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,141 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.VarcharField;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.parser.Predicate.Operator;
+import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
+import de.tuberlin.dima.minidb.qexec.TableScanOperator;
+
+
+/**
+ * Tests the parallel table scan by comparing its result with the result of the serial
+ * table scan over the same table, for different degrees of parallelism and predicates.
+ */
+public class TestParallelTableScan
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 7712093456181L;
+
+	/**
+	 * The number of tuples in the table.
+	 */
+	private static final int NUM_TUPLES = 20000;
+
+	/**
+	 * The degrees of parallelism to test.
+	 */
+	private static final int[] DEGREES = { 1, 2, 4, 7 };
+
+	/**
+	 * The table that is scanned.
+	 */
+	private TableFixture table;
+
+
+	/**
+	 * Creates and fills the table.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		TableSchema schema = new TableSchema(PageSize.SIZE_4096);
+		schema.addColumn(ColumnSchema.createColumnSchema("ID", DataType.intType(), false, true));
+		schema.addColumn(ColumnSchema.createColumnSchema("VAL", DataType.bigIntType(), true, false));
+		schema.addColumn(ColumnSchema.createColumnSchema("CODE", DataType.charType(6), true, false));
+		schema.addColumn(ColumnSchema.createColumnSchema("TEXT", DataType.varcharType(24), true, false));
+
+		Random random = new Random(SEED);
+		List<DataTuple> tuples = new ArrayList<DataTuple>(NUM_TUPLES);
+		for (int i = 0; i < NUM_TUPLES; i++) {
+			DataTuple tuple = new DataTuple(4);
+			tuple.assignDataField(new IntField(i), 0);
+			tuple.assignDataField(random.nextInt(10) == 0 ? DataType.bigIntType().getNullValue() : new BigIntField(random.nextInt(1000)), 1);
+			tuple.assignDataField(new CharField("C" + random.nextInt(100)), 2);
+			tuple.assignDataField(new VarcharField(Long.toString(random.nextLong(), 36)), 3);
+			tuples.add(tuple);
+		}
+
+		this.table = new TableFixture("minidbsparallelscan", schema);
+		this.table.insert(tuples);
+		this.table.reopen();
+	}
+
+	/**
+	 * Deletes the table.
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		this.table.dispose();
+	}
+
+	@Test
+	public void testFullScan() throws Exception
+	{
+		assertEquals(NUM_TUPLES, compareWithSerialScan(new int[] { 0, 1, 2, 3 }, null));
+	}
+
+	@Test
+	public void testProjectedAndReorderedColumns() throws Exception
+	{
+		compareWithSerialScan(new int[] { 3, 0, 0 }, null);
+	}
+
+	@Test
+	public void testSelectivePredicates() throws Exception
+	{
+		LowLevelPredicate[] preds = {
+				new LowLevelPredicate(Operator.GREATER_OR_EQUAL, new IntField(5000), 0),
+				new LowLevelPredicate(Operator.SMALLER, new BigIntField(100), 1) };
+		compareWithSerialScan(new int[] { 0, 1, 2 }, preds);
+	}
+
+	@Test
+	public void testPredicateWithoutMatches() throws Exception
+	{
+		LowLevelPredicate[] preds = { new LowLevelPredicate(Operator.EQUAL, new CharField("X"), 2) };
+		assertEquals(0, compareWithSerialScan(new int[] { 0 }, preds));
+	}
+
+	/**
+	 * Scans the table serially and in parallel with all tested degrees, and checks that
+	 * the parallel scans produce the same tuples as the serial one.
+	 *
+	 * @return The number of tuples produced by the scans.
+	 */
+	private int compareWithSerialScan(int[] columns, LowLevelPredicate[] preds) throws Exception
+	{
+		TableScanOperator serial = AbstractExtensionFactory.getExtensionFactory().createTableScanOperator(
+				this.table.getBufferPool(), this.table.getTableManager(), TableFixture.TABLE_RESOURCE_ID, columns, preds, 16);
+		List<DataTuple> expected = TableFixture.collect(serial);
+
+		for (int degree : DEGREES) {
+			TableScanOperator parallel = AbstractExtensionFactory.getExtensionFactory().createParallelTableScanOperator(
+					this.table.getBufferPool(), this.table.getTableManager(), TableFixture.TABLE_RESOURCE_ID, columns, preds, 4, degree);
+			TableFixture.assertSameTuples(expected, TableFixture.collect(parallel));
+		}
+		return expected.size();
+	}
+}
@@ -0,0 +1,289 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeapException;
+
+
+/**
+ * Tests how the query heap brokers its memory between operators: requests that do not fit wait
+ * until other grants are released or shrunk, are served in the order of their priority, and
+ * withdraw when their thread is interrupted. Grants shrink down to the minimal size they were
+ * reserved with, and the freed bytes go to the waiting requests.
+ */
+public class TestQueryHeapGrants
+{
+	/**
+	 * The bytes that the waiting requests ask for.
+	 */
+	private static final long REQUEST_BYTES = 1024 * 1024;
+
+	/**
+	 * The time in milliseconds to wait for a thread to block or to finish.
+	 */
+	private static final long TIMEOUT = 10000;
+
+	/**
+	 * The heap under test.
+	 */
+	private QueryHeap heap;
+
+	/**
+	 * The grants that occupy the heap.
+	 */
+	private List<Integer> fillGrants;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		Config config = Config.loadConfig(new File(this.getClass().getResource("/config.xml").getPath()));
+		this.heap = new QueryHeap(Logger.getLogger("Heap - Logger"), config);
+		this.fillGrants = new ArrayList<Integer>();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		// wakes up all threads that still wait
+		this.heap.closeQueryHeap();
+	}
+
+	@Test
+	public void testWaiterGrantedOnRelease() throws Exception
+	{
+		fillHeap();
+
+		Waiter waiter = new Waiter(REQUEST_BYTES, QueryHeap.PRIORITY_NORMAL);
+		waiter.start();
+		waiter.awaitBlocked();
+		assertTrue(this.heap.hasWaitingRequests());
+
+		// a grant that does not give back enough bytes leaves the request waiting
+		long granted = this.heap.getGrantedBytes(this.fillGrants.get(this.fillGrants.size() - 1));
+		assertTrue(granted < REQUEST_BYTES);
+		this.heap.releaseMemory(this.fillGrants.remove(this.fillGrants.size() - 1));
+		waiter.assertStillBlocked();
+
+		this.heap.releaseMemory(this.fillGrants.remove(0));
+		waiter.awaitGrant();
+		assertFalse(this.heap.hasWaitingRequests());
+		assertEquals(REQUEST_BYTES, this.heap.getGrantedBytes(waiter.grantId));
+	}
+
+	@Test
+	public void testPriorityOrder() throws Exception
+	{
+		fillHeap();
+
+		// queued in the reverse order of their priority
+		Waiter low = new Waiter(REQUEST_BYTES, QueryHeap.PRIORITY_LOW);
+		Waiter normal = new Waiter(REQUEST_BYTES, QueryHeap.PRIORITY_NORMAL);
+		Waiter high = new Waiter(REQUEST_BYTES, QueryHeap.PRIORITY_HIGH);
+		for (Waiter waiter : new Waiter[] { low, normal, high }) {
+			waiter.start();
+			waiter.awaitBlocked();
+		}
+
+		// every shrink frees the bytes for exactly one request
+		int first = this.fillGrants.get(0);
+		this.heap.shrinkGrant(first, REQUEST_BYTES);
+		high.awaitGrant();
+		low.assertStillBlocked();
+		normal.assertStillBlocked();
+
+		this.heap.shrinkGrant(first, REQUEST_BYTES);
+		normal.awaitGrant();
+		low.assertStillBlocked();
+
+		this.heap.shrinkGrant(first, REQUEST_BYTES);
+		low.awaitGrant();
+		assertFalse(this.heap.hasWaitingRequests());
+	}
+
+	@Test
+	public void testInterruptedWaiterWithdraws() throws Exception
+	{
+		fillHeap();
+		this.heap.shrinkGrant(this.fillGrants.get(0), REQUEST_BYTES);
+
+		// the large request blocks the small one behind it, which would fit
+		Waiter large = new Waiter(4 * REQUEST_BYTES, QueryHeap.PRIORITY_HIGH);
+		large.start();
+		large.awaitBlocked();
+		Waiter small = new Waiter(REQUEST_BYTES, QueryHeap.PRIORITY_NORMAL);
+		small.start();
+		small.awaitBlocked();
+		small.assertStillBlocked();
+
+		large.interrupt();
+		large.join(TIMEOUT);
+		assertFalse(large.isAlive());
+		assertTrue(large.error instanceof QueryHeapException);
+		assertTrue("The interrupt was not kept for the caller.", large.interruptedAfterwards);
+
+		// the withdrawn request made room for the one behind it
+		small.awaitGrant();
+		assertFalse(this.heap.hasWaitingRequests());
+	}
+
+	@Test
+	public void testShrinkGrantToMinimalBytes() throws Exception
+	{
+		int grantId = this.heap.reserveMemory(REQUEST_BYTES, 8 * REQUEST_BYTES, QueryHeap.PRIORITY_NORMAL);
+		assertTrue(this.heap.getGrantedBytes(grantId) > REQUEST_BYTES);
+
+		assertEquals(REQUEST_BYTES, this.heap.shrinkGrant(grantId, Long.MAX_VALUE));
+		assertEquals(REQUEST_BYTES, this.heap.shrinkGrant(grantId, 1));
+		assertEquals(REQUEST_BYTES, this.heap.getGrantedBytes(grantId));
+
+		// the grant grows again while nobody waits, but not while a request waits
+		assertTrue(this.heap.growGrant(grantId, REQUEST_BYTES) > REQUEST_BYTES);
+		this.heap.shrinkGrant(grantId, Long.MAX_VALUE);
+		fillHeap();
+		Waiter waiter = new Waiter(REQUEST_BYTES, QueryHeap.PRIORITY_NORMAL);
+		waiter.start();
+		waiter.awaitBlocked();
+		assertEquals(REQUEST_BYTES, this.heap.growGrant(grantId, REQUEST_BYTES));
+
+		// releasing the grant of exactly the minimal bytes serves the request
+		this.heap.releaseMemory(grantId);
+		waiter.awaitGrant();
+	}
+
+	@Test
+	public void testShrinkSortHeapToMinimalTuples() throws Exception
+	{
+		DataType[] schema = new DataType[] { DataType.intType(), DataType.charType(20) };
+		int heapId = this.heap.reserveSortHeap(schema, 1000000);
+		int initial = this.heap.getMaximalTuplesForInternalSort(heapId);
+
+		fillHeap();
+		Waiter waiter = new Waiter(REQUEST_BYTES, QueryHeap.PRIORITY_NORMAL);
+		waiter.start();
+		waiter.awaitBlocked();
+
+		// the sort heap keeps its minimal tuples and hands the rest to the waiting request
+		int minimal = this.heap.shrinkSortHeap(heapId, 0);
+		assertTrue(minimal > 0 && minimal < initial);
+		assertTrue(((long) (initial - minimal)) * QueryHeap.getTupleBytes(schema) >= REQUEST_BYTES);
+		waiter.awaitGrant();
+
+		assertEquals(minimal, this.heap.getMaximalTuplesForInternalSort(heapId));
+		assertEquals(minimal, this.heap.getSortArray(heapId).length);
+		assertEquals(minimal, this.heap.shrinkSortHeap(heapId, 0));
+		this.heap.releaseSortHeap(heapId);
+	}
+
+	/**
+	 * Reserves grants until the free bytes of the heap are far below the bytes of a waiting
+	 * request. The first grant is the largest and larger than several requests.
+	 */
+	private void fillHeap() throws Exception
+	{
+		long granted;
+		do {
+			int grantId = this.heap.reserveMemory(0, Long.MAX_VALUE, QueryHeap.PRIORITY_NORMAL);
+			granted = this.heap.getGrantedBytes(grantId);
+			this.fillGrants.add(grantId);
+		}
+		while (granted > REQUEST_BYTES / 16);
+
+		assertTrue(this.heap.getGrantedBytes(this.fillGrants.get(0)) > 4 * REQUEST_BYTES);
+	}
+
+	/**
+	 * A thread that requests memory from the heap and records the result.
+	 */
+	private final class Waiter extends Thread
+	{
+		private final long bytes;
+
+		private final int priority;
+
+		private volatile int grantId;
+
+		private volatile Exception error;
+
+		private volatile boolean interruptedAfterwards;
+
+		private volatile boolean done;
+
+		private Waiter(long bytes, int priority)
+		{
+			super("Heap Request Thread");
+			this.bytes = bytes;
+			this.priority = priority;
+			setDaemon(true);
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Thread#run()
+		 */
+		@Override
+		public void run()
+		{
+			try {
+				this.grantId = TestQueryHeapGrants.this.heap.reserveMemory(this.bytes, this.bytes, this.priority);
+			}
+			catch (Exception ex) {
+				this.error = ex;
+				this.interruptedAfterwards = Thread.currentThread().isInterrupted();
+			}
+			this.done = true;
+		}
+
+		/**
+		 * Waits until the thread waits for its request to be served.
+		 */
+		private void awaitBlocked() throws Exception
+		{
+			long end = System.currentTimeMillis() + TIMEOUT;
+			while (getState() != Thread.State.WAITING) {
+				if (this.done) {
+					fail("The request was served, though the heap had too little space.");
+				}
+				if (System.currentTimeMillis() > end) {
+					fail("The request thread did not start waiting.");
+				}
+				Thread.sleep(5);
+			}
+		}
+
+		/**
+		 * Checks that the request is still not served after a while.
+		 */
+		private void assertStillBlocked() throws Exception
+		{
+			Thread.sleep(100);
+			assertFalse("The request was served out of order.", this.done);
+		}
+
+		/**
+		 * Waits until the request was served and checks that it got its bytes.
+		 */
+		private void awaitGrant() throws Exception
+		{
+			join(TIMEOUT);
+			assertTrue("The request was not served.", this.done);
+			assertNull(this.error);
+			assertTrue(TestQueryHeapGrants.this.heap.getGrantedBytes(this.grantId) >= this.bytes);
+		}
+	}
+}
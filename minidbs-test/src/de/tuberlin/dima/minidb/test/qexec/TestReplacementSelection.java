@@ -0,0 +1,210 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.qexec.NormalizedKeySorter;
+import de.tuberlin.dima.minidb.qexec.ReplacementSelection;
+import de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator;
+
+
+/**
+ * Tests the run formation through replacement selection. Input in the sort order must become
+ * a single run, input in the reverse order must become runs exactly as long as the memory, and
+ * random input runs about twice as long as the memory. All runs must be sorted and together
+ * hold the tuples of the input.
+ */
+public class TestReplacementSelection
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 1289745560213L;
+
+	/**
+	 * The number of tuples in each test.
+	 */
+	private static final int NUM_TUPLES = 10000;
+
+	/**
+	 * The numbers of tuples that the memory holds.
+	 */
+	private static final int[] CAPACITIES = { 1, 2, 7, 100, 1000 };
+
+	/**
+	 * The schema of the tuples: the sort key and the position in the input.
+	 */
+	private static final DataType[] TYPES = { DataType.intType(), DataType.intType() };
+
+	/**
+	 * Random number generator used to create the tuples.
+	 */
+	private final Random random = new Random(SEED);
+
+
+	@Test
+	public void testSortedInput() throws Exception
+	{
+		for (boolean ascending : new boolean[] { true, false }) {
+			NormalizedKeySorter sorter = createSorter(ascending);
+			List<DataTuple> input = createTuples(NUM_TUPLES, NUM_TUPLES / 3);
+			Collections.sort(input, sorter);
+
+			for (int capacity : CAPACITIES) {
+				List<List<DataTuple>> runs = formRuns(input, capacity, sorter);
+
+				// one written run, and the rest of the input remains in memory
+				assertEquals("Runs for capacity " + capacity, 2, runs.size());
+				assertEquals(NUM_TUPLES - capacity + 1, runs.get(0).size());
+				assertEquals(capacity - 1, runs.get(1).size());
+				checkSorted(runs.get(0), sorter);
+				checkSorted(runs.get(1), sorter);
+				TableFixture.assertSameTuples(input, concat(runs));
+			}
+		}
+	}
+
+	@Test
+	public void testReverseSortedInput() throws Exception
+	{
+		for (boolean ascending : new boolean[] { true, false }) {
+			NormalizedKeySorter sorter = createSorter(ascending);
+
+			// distinct keys, as equal keys would still continue a run
+			List<DataTuple> input = createTuples(NUM_TUPLES, 0);
+			Collections.sort(input, sorter);
+			Collections.reverse(input);
+
+			for (int capacity : CAPACITIES) {
+				List<List<DataTuple>> runs = formRuns(input, capacity, sorter);
+
+				// every tuple read belongs to the next run, so every run holds the memory's tuples
+				for (int r = 0; r < runs.size() - 2; r++) {
+					assertEquals("Length of run " + r + " for capacity " + capacity, capacity, runs.get(r).size());
+				}
+				assertEquals(NUM_TUPLES / capacity, runs.size() - 1);
+				assertEquals(capacity - 1, runs.get(runs.size() - 1).size());
+				for (List<DataTuple> run : runs) {
+					checkSorted(run, sorter);
+				}
+				TableFixture.assertSameTuples(input, concat(runs));
+			}
+		}
+	}
+
+	@Test
+	public void testRandomInput() throws Exception
+	{
+		NormalizedKeySorter sorter = createSorter(true);
+		List<DataTuple> input = createTuples(20 * NUM_TUPLES, 1000000);
+
+		for (int capacity : new int[] { 100, 1000 }) {
+			List<List<DataTuple>> runs = formRuns(input, capacity, sorter);
+			for (List<DataTuple> run : runs) {
+				checkSorted(run, sorter);
+			}
+			TableFixture.assertSameTuples(input, concat(runs));
+
+			// the written runs, but the last, are about twice as long as the memory
+			double average = (input.size() - runs.get(runs.size() - 1).size() - runs.get(runs.size() - 2).size()) /
+					(double) (runs.size() - 2);
+			assertTrue("Average run length " + average + " for capacity " + capacity,
+					average > 1.8 * capacity && average < 2.2 * capacity);
+		}
+	}
+
+	@Test
+	public void testInputFillingMemory() throws Exception
+	{
+		NormalizedKeySorter sorter = createSorter(true);
+		List<DataTuple> input = createTuples(50, 10);
+
+		// the array holds the whole input, so the first read ends the input and the written run
+		List<List<DataTuple>> runs = formRuns(input, 50, sorter);
+		assertEquals(2, runs.size());
+		assertEquals(1, runs.get(0).size());
+		checkSorted(runs.get(1), sorter);
+		TableFixture.assertSameTuples(input, concat(runs));
+	}
+
+	/**
+	 * Forms the runs over the input with a memory of the given number of tuples.
+	 *
+	 * @return The written runs, followed by the run that remains in memory.
+	 */
+	private static List<List<DataTuple>> formRuns(List<DataTuple> input, int capacity,
+			NormalizedKeySorter sorter) throws Exception
+	{
+		DataTuple[] array = input.subList(0, capacity).toArray(new DataTuple[capacity]);
+		MockPlanOperator rest = new MockPlanOperator(input.subList(capacity, input.size()));
+		rest.open(null);
+
+		List<List<DataTuple>> runs = new ArrayList<List<DataTuple>>();
+		ReplacementSelection selection = new ReplacementSelection(rest, sorter, array, capacity);
+		while (selection.hasMoreInput()) {
+			List<DataTuple> run = new ArrayList<DataTuple>();
+			ExternalTupleSequenceIterator iter = selection.nextRun();
+			while (iter.hasNext()) {
+				run.add(iter.next());
+			}
+			runs.add(run);
+		}
+		assertFalse(selection.hasMoreInput());
+
+		int remaining = selection.sortRemaining();
+		List<DataTuple> last = new ArrayList<DataTuple>(remaining);
+		for (int i = 0; i < remaining; i++) {
+			last.add(array[i]);
+		}
+		runs.add(last);
+		return runs;
+	}
+
+	private static void checkSorted(List<DataTuple> run, NormalizedKeySorter sorter)
+	{
+		for (int i = 1; i < run.size(); i++) {
+			assertTrue("Run out of order at " + i, sorter.compare(run.get(i - 1), run.get(i)) <= 0);
+		}
+	}
+
+	private static List<DataTuple> concat(List<List<DataTuple>> runs)
+	{
+		List<DataTuple> tuples = new ArrayList<DataTuple>();
+		for (List<DataTuple> run : runs) {
+			tuples.addAll(run);
+		}
+		return tuples;
+	}
+
+	private static NormalizedKeySorter createSorter(boolean ascending)
+	{
+		return new NormalizedKeySorter(TYPES, new int[] { 0 }, new boolean[] { ascending });
+	}
+
+	/**
+	 * Creates tuples with random keys below the given bound, or with distinct keys, if the
+	 * bound is zero.
+	 */
+	private List<DataTuple> createTuples(int num, int bound)
+	{
+		List<DataTuple> tuples = new ArrayList<DataTuple>(num);
+		for (int i = 0; i < num; i++) {
+			DataTuple tuple = new DataTuple(2);
+			tuple.assignDataField(new IntField(bound == 0 ? 3 * i - num : this.random.nextInt(bound)), 0);
+			tuple.assignDataField(new IntField(i), 1);
+			tuples.add(tuple);
+		}
+		return tuples;
+	}
+}
@@ -0,0 +1,271 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.InvalidPropertiesFormatException;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DateField;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.SmallIntField;
+import de.tuberlin.dima.minidb.core.VarcharField;
+import de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * Tests the encoding of the tuples that the query heap spills to its temp files. Runs of
+ * tuples with NULL values, extreme numbers and characters of all encoded lengths are spilled
+ * and read back, once with prefix compression and once without it, and must come back
+ * unchanged and in their order.
+ */
+public class TestSpilledTupleEncoding
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 8812004521937L;
+
+	/**
+	 * Characters for the strings: ASCII characters and characters whose encoding takes two
+	 * and three bytes.
+	 */
+	private static final String CHARS = "\u0000 09AZaz~\u007f\u0080\u00e9\u00ff\u0100\u3fff\u4000\u4e2d\uffff";
+
+	/**
+	 * The heap that spills with prefix compression.
+	 */
+	private QueryHeap compressingHeap;
+
+	/**
+	 * The heap that spills without prefix compression.
+	 */
+	private QueryHeap plainHeap;
+
+	/**
+	 * Random number generator used to create the tuples.
+	 */
+	private final Random random = new Random(SEED);
+
+
+	/**
+	 * Creates a heap with the default prefix compression and one with the compression
+	 * disabled in its configuration.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		File configFile = new File(this.getClass().getResource("/config.xml").getPath());
+		this.compressingHeap = new QueryHeap(Logger.getLogger("Spill - Logger"), Config.loadConfig(configFile));
+		this.plainHeap = new QueryHeap(Logger.getLogger("Spill - Logger"), TableFixture.loadConfig("SPILL_PREFIX_COMPRESSION", "false"));
+	}
+
+	/**
+	 * Closes the heaps.
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		this.compressingHeap.closeQueryHeap();
+		this.plainHeap.closeQueryHeap();
+	}
+
+	@Test
+	public void testNullsAndNegativeNumbers() throws Exception
+	{
+		// more than eight columns, so that the NULL bitmap takes two bytes
+		DataType[] schema = new DataType[] {
+				DataType.smallIntType(), DataType.intType(), DataType.bigIntType(),
+				DataType.intType(), DataType.doubleType(), DataType.dateType(),
+				DataType.charType(8), DataType.varcharType(12), DataType.bigIntType(),
+				DataType.smallIntType(), DataType.intType() };
+
+		List<DataTuple> tuples = new ArrayList<DataTuple>();
+		tuples.add(createTuple(schema, 0.0));
+		tuples.add(createTuple(schema, 1.0));
+		for (int i = 0; i < 2000; i++) {
+			tuples.add(createTuple(schema, this.random.nextInt(3) * 0.25));
+		}
+		checkRoundTrip(schema, tuples);
+	}
+
+	@Test
+	public void testNonAsciiStrings() throws Exception
+	{
+		DataType[] schema = new DataType[] { DataType.charType(20), DataType.varcharType(50), DataType.intType() };
+
+		List<DataTuple> tuples = new ArrayList<DataTuple>();
+		for (int i = 0; i < 3000; i++) {
+			DataTuple tuple = new DataTuple(3);
+			tuple.assignDataField(new CharField(randomString(this.random.nextInt(21))), 0);
+			tuple.assignDataField(new VarcharField(randomString(this.random.nextInt(51))), 1);
+			tuple.assignDataField(new IntField(-i), 2);
+			tuples.add(tuple);
+		}
+		checkRoundTrip(schema, tuples);
+	}
+
+	@Test
+	public void testBlockBoundaries() throws Exception
+	{
+		// the widest tuple of three byte characters just fits into an empty block
+		int blockBytes = QueryHeap.getPageSize().getNumberOfBytes();
+		int maxChars = (blockBytes - 64) / 3;
+		DataType[] schema = new DataType[] { DataType.intType(), DataType.varcharType(maxChars) };
+
+		List<DataTuple> tuples = new ArrayList<DataTuple>();
+		char[] chars = new char[maxChars];
+		for (int i = 0; i < 400; i++) {
+			int len;
+			switch (i % 4) {
+			case 0: len = maxChars; break;
+			case 1: len = 0; break;
+			default: len = this.random.nextInt(maxChars + 1);
+			}
+			for (int c = 0; c < len; c++) {
+				// long shared prefixes between neighbors, with some tuples of widest characters
+				chars[c] = i % 8 == 0 ? '\uffff' : c < len / 2 ? 'a' : CHARS.charAt(this.random.nextInt(CHARS.length()));
+			}
+
+			DataTuple tuple = new DataTuple(2);
+			tuple.assignDataField(new IntField(i), 0);
+			tuple.assignDataField(new VarcharField(new String(chars, 0, len)), 1);
+			tuples.add(tuple);
+		}
+		checkRoundTrip(schema, tuples);
+	}
+
+	@Test
+	public void testInvalidCompressionSetting() throws Exception
+	{
+		try {
+			TableFixture.loadConfig("SPILL_PREFIX_COMPRESSION", "maybe");
+			fail("A config with an invalid spill compression setting was loaded.");
+		}
+		catch (InvalidPropertiesFormatException ipfex) {
+			// expected
+		}
+	}
+
+	/**
+	 * Spills the tuples in three runs through both heaps and checks that the runs, read
+	 * separately and together in a different order, return the tuples unchanged.
+	 */
+	private void checkRoundTrip(DataType[] schema, List<DataTuple> tuples) throws Exception
+	{
+		int third = tuples.size() / 3;
+		List<List<DataTuple>> runs = new ArrayList<List<DataTuple>>();
+		runs.add(tuples.subList(0, third));
+		runs.add(tuples.subList(third, 2 * third));
+		runs.add(tuples.subList(2 * third, tuples.size()));
+
+		for (QueryHeap heap : new QueryHeap[] { this.compressingHeap, this.plainHeap }) {
+			int heapId = heap.reserveSpillSpace(schema);
+			try {
+				int[] runIds = new int[runs.size()];
+				for (int i = 0; i < runs.size(); i++) {
+					DataTuple[] run = runs.get(i).toArray(new DataTuple[runs.get(i).size() + 1]);
+					runIds[i] = heap.spillTupleSequence(heapId, run, runs.get(i).size());
+				}
+
+				for (int i = 0; i < runs.size(); i++) {
+					assertEquals("Run " + i, runs.get(i), read(heap.getSpilledRuns(heapId, new int[] { runIds[i] })));
+				}
+
+				List<DataTuple> expected = new ArrayList<DataTuple>();
+				expected.addAll(runs.get(2));
+				expected.addAll(runs.get(0));
+				expected.addAll(runs.get(1));
+				assertEquals(expected, read(heap.getSpilledRuns(heapId, new int[] { runIds[2], runIds[0], runIds[1] })));
+			}
+			finally {
+				heap.releaseSortHeap(heapId);
+			}
+		}
+	}
+
+	/**
+	 * Creates a tuple with random values, among them the extreme and negative values of the
+	 * number types, where every field is NULL with the given probability.
+	 */
+	private DataTuple createTuple(DataType[] schema, double nullProbability) throws Exception
+	{
+		DataTuple tuple = new DataTuple(schema.length);
+		for (int i = 0; i < schema.length; i++) {
+			DataField field;
+			if (this.random.nextDouble() < nullProbability) {
+				field = schema[i].getNullValue();
+			}
+			else {
+				int choice = this.random.nextInt(5);
+				switch (schema[i].getBasicType()) {
+				case SMALL_INT:
+					field = new SmallIntField(choice == 0 ? Short.MIN_VALUE : choice == 1 ? Short.MAX_VALUE :
+							(short) (this.random.nextInt(200) - 100));
+					break;
+				case INT:
+					field = new IntField(choice == 0 ? Integer.MIN_VALUE + 1 : choice == 1 ? Integer.MAX_VALUE :
+							choice == 2 ? -1 : this.random.nextInt());
+					break;
+				case BIG_INT:
+					field = new BigIntField(choice == 0 ? Long.MIN_VALUE + 1 : choice == 1 ? Long.MAX_VALUE :
+							choice == 2 ? -this.random.nextInt(1000) : this.random.nextLong());
+					break;
+				case DOUBLE:
+					field = new DoubleField(choice == 0 ? -Double.MAX_VALUE : (this.random.nextDouble() - 0.5) * 1e6);
+					break;
+				case DATE:
+					field = new DateField(1 + this.random.nextInt(28), this.random.nextInt(12), 1900 + this.random.nextInt(200));
+					break;
+				case CHAR:
+					field = new CharField(randomString(this.random.nextInt(schema[i].getLength() + 1)));
+					break;
+				default:
+					field = new VarcharField(randomString(this.random.nextInt(schema[i].getLength() + 1)));
+				}
+			}
+			tuple.assignDataField(field, i);
+		}
+		return tuple;
+	}
+
+	/**
+	 * Creates a string of the given number of random characters.
+	 */
+	private String randomString(int len)
+	{
+		char[] chars = new char[len];
+		for (int i = 0; i < len; i++) {
+			chars[i] = CHARS.charAt(this.random.nextInt(CHARS.length()));
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Reads all tuples from the iterator.
+	 */
+	private static List<DataTuple> read(ExternalTupleSequenceIterator iter) throws Exception
+	{
+		List<DataTuple> tuples = new ArrayList<DataTuple>();
+		while (iter.hasNext()) {
+			tuples.add(iter.next());
+		}
+		return tuples;
+	}
+}
@@ -0,0 +1,324 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.ResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.optimizer.TableScanPlanOperator;
+import de.tuberlin.dima.minidb.parser.Predicate;
+import de.tuberlin.dima.minidb.parser.Predicate.Operator;
+import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
+import de.tuberlin.dima.minidb.qexec.TableScanOperator;
+import de.tuberlin.dima.minidb.semantics.BaseTableAccess;
+import de.tuberlin.dima.minidb.semantics.Column;
+import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicateAtom;
+
+
+/**
+ * Tests that scans which skip pages through the zone map still find tuples that were inserted
+ * into a page in the buffer pool, outside of the range the page was summarized with when it
+ * was last written, and that the serial scans of the plans do not fetch the skipped pages.
+ */
+public class TestZoneMapScans
+{
+	/**
+	 * The number of tuples initially in the table.
+	 */
+	private static final int NUM_TUPLES = 5000;
+
+	/**
+	 * The id of the tuple inserted outside of all page ranges.
+	 */
+	private static final int OUTLIER_ID = 1000000;
+
+	/**
+	 * The predicate selecting only the outlier.
+	 */
+	private static final LowLevelPredicate[] OUTLIER_PREDICATE = {
+			new LowLevelPredicate(Operator.GREATER, new IntField(OUTLIER_ID - 1), 0) };
+
+	/**
+	 * The scanned table.
+	 */
+	private TableFixture table;
+
+
+	/**
+	 * Creates and fills the table, and reopens it such that all pages are summarized. The
+	 * first page holds only a few tuples, so that there is room to insert into it.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		TableSchema schema = new TableSchema(PageSize.SIZE_4096);
+		schema.addColumn(ColumnSchema.createColumnSchema("ID", DataType.intType(), false, true));
+		schema.addColumn(ColumnSchema.createColumnSchema("VAL", DataType.intType(), true, false));
+
+		List<DataTuple> tuples = new ArrayList<DataTuple>(NUM_TUPLES);
+		for (int i = 0; i < NUM_TUPLES; i++) {
+			tuples.add(tuple(i));
+		}
+
+		this.table = new TableFixture("minidbszonemapscan", schema);
+		this.table.insert(tuples.subList(0, 10));
+		this.table.insert(tuples.subList(10, NUM_TUPLES));
+		this.table.reopen();
+	}
+
+	/**
+	 * Deletes the table.
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		this.table.dispose();
+	}
+
+	@Test
+	public void testInsertIntoCachedPageWidensSummary() throws Exception
+	{
+		int page = this.table.getTableManager().getFirstDataPageNumber();
+		assertFalse(this.table.getTableManager().getZoneMap().mayContainMatches(page, OUTLIER_PREDICATE));
+
+		insertIntoPage(page, tuple(OUTLIER_ID));
+
+		assertTrue(this.table.getTableManager().getZoneMap().mayContainMatches(page, OUTLIER_PREDICATE));
+		checkScansFindOutlier();
+	}
+
+	@Test
+	public void testInsertIntoLastPage() throws Exception
+	{
+		insertIntoPage(this.table.getTableManager().getLastDataPageNumber(), tuple(OUTLIER_ID));
+		checkScansFindOutlier();
+	}
+
+	@Test
+	public void testWidenedSummarySurvivesReopen() throws Exception
+	{
+		insertIntoPage(this.table.getTableManager().getFirstDataPageNumber(), tuple(OUTLIER_ID));
+		checkScansFindOutlier();
+
+		this.table.reopen();
+		checkScansFindOutlier();
+	}
+
+	@Test
+	public void testZoneMapIsOnlyKeptWhileClosed() throws Exception
+	{
+		File zoneMapFile = new File(this.table.getTableFile().getPath() + Constants.TABLE_ZONE_MAP_FILE_SUFFIX);
+		assertFalse(zoneMapFile.exists());
+
+		this.table.reopen();
+		assertFalse(zoneMapFile.exists());
+
+		this.table.close();
+		assertTrue(zoneMapFile.exists());
+		this.table.open();
+	}
+
+	@Test
+	public void testZoneMapOfOtherPageCountIsDiscarded() throws Exception
+	{
+		// keep the zone map of the table as it is now
+		File zoneMapFile = new File(this.table.getTableFile().getPath() + Constants.TABLE_ZONE_MAP_FILE_SUFFIX);
+		this.table.close();
+		byte[] staleZoneMap = Files.readAllBytes(zoneMapFile.toPath());
+		this.table.open();
+
+		// change the first page and add another one, then put the old zone map back
+		insertIntoPage(this.table.getTableManager().getFirstDataPageNumber(), tuple(OUTLIER_ID));
+		this.table.insert(Collections.singletonList(tuple(NUM_TUPLES)));
+		this.table.close();
+		Files.write(zoneMapFile.toPath(), staleZoneMap);
+
+		this.table.open();
+		checkScansFindOutlier();
+	}
+
+	@Test
+	public void testSerialPlanScanSkipsPages() throws Exception
+	{
+		// no page holds the outlier, so the scan must not fetch any
+		CountingBufferPool pool = new CountingBufferPool(this.table.getBufferPool());
+		assertTrue(TableFixture.collect(createOutlierScanPlan().createPhysicalPlan(pool, null)).isEmpty());
+		assertEquals(0, pool.numPinned);
+
+		// only the page that received the outlier is fetched
+		insertIntoPage(this.table.getTableManager().getFirstDataPageNumber(), tuple(OUTLIER_ID));
+		pool = new CountingBufferPool(this.table.getBufferPool());
+		TableFixture.assertSameTuples(Collections.singletonList(tuple(OUTLIER_ID)),
+				TableFixture.collect(createOutlierScanPlan().createPhysicalPlan(pool, null)));
+		assertEquals(1, pool.numPinned);
+	}
+
+	/**
+	 * Creates the plan of a serial scan of both columns with the predicate selecting the outlier.
+	 */
+	private TableScanPlanOperator createOutlierScanPlan()
+	{
+		TableDescriptor descriptor = new TableDescriptor("ZONEMAP", "minidbszonemapscan.mdtbl");
+		descriptor.setResourceProperties(this.table.getTableManager(), TableFixture.TABLE_RESOURCE_ID);
+		BaseTableAccess access = new BaseTableAccess(descriptor);
+		access.setOutputCardinality(1);
+
+		Predicate parsed = new Predicate();
+		parsed.setOperator(Operator.GREATER);
+		Column id = new Column(access, DataType.intType(), 0);
+		access.setPredicate(new LocalPredicateAtom(parsed, id, new IntField(OUTLIER_ID - 1)));
+
+		return new TableScanPlanOperator(access, new Column[] { id, new Column(access, DataType.intType(), 1) });
+	}
+
+	/**
+	 * Fetches the page through the buffer pool and inserts the tuple into it.
+	 */
+	private void insertIntoPage(int pageNumber, DataTuple tuple) throws Exception
+	{
+		TablePage page = (TablePage) this.table.getBufferPool().getPageAndPin(TableFixture.TABLE_RESOURCE_ID, pageNumber);
+		try {
+			if (!page.insertTuple(tuple)) {
+				throw new IllegalStateException("Test tuple does not fit into page " + pageNumber + ".");
+			}
+		}
+		finally {
+			this.table.getBufferPool().unpinPage(TableFixture.TABLE_RESOURCE_ID, pageNumber);
+		}
+	}
+
+	/**
+	 * Checks that the serial, the parallel and the RID producing scan all return the outlier.
+	 */
+	private void checkScansFindOutlier() throws Exception
+	{
+		List<DataTuple> expected = Collections.singletonList(tuple(OUTLIER_ID));
+		int[] columns = { 0, 1 };
+
+		TableScanOperator serial = AbstractExtensionFactory.getExtensionFactory().createTableScanOperator(
+				this.table.getBufferPool(), this.table.getTableManager(), TableFixture.TABLE_RESOURCE_ID, columns, OUTLIER_PREDICATE, 4);
+		TableFixture.assertSameTuples(expected, TableFixture.collect(serial));
+
+		for (int degree = 1; degree <= 4; degree *= 2) {
+			TableScanOperator parallel = AbstractExtensionFactory.getExtensionFactory().createParallelTableScanOperator(
+					this.table.getBufferPool(), this.table.getTableManager(), TableFixture.TABLE_RESOURCE_ID, columns, OUTLIER_PREDICATE, 4, degree);
+			TableFixture.assertSameTuples(expected, TableFixture.collect(parallel));
+		}
+
+		TableScanOperator ridScan = AbstractExtensionFactory.getExtensionFactory().createRIDTableScanOperator(
+				this.table.getBufferPool(), this.table.getTableManager(), TableFixture.TABLE_RESOURCE_ID, columns, OUTLIER_PREDICATE, 4);
+		TableFixture.assertSameTuples(expected, TableFixture.collect(ridScan));
+	}
+
+	private static DataTuple tuple(int id)
+	{
+		DataTuple tuple = new DataTuple(2);
+		tuple.assignDataField(new IntField(id), 0);
+		tuple.assignDataField(new IntField(id % 7), 1);
+		return tuple;
+	}
+
+	/**
+	 * A buffer pool that counts the pages pinned through it.
+	 */
+	private static final class CountingBufferPool implements BufferPoolManager
+	{
+		private final BufferPoolManager pool;
+
+		private int numPinned;
+
+		private CountingBufferPool(BufferPoolManager pool)
+		{
+			this.pool = pool;
+		}
+
+		@Override
+		public void startIOThreads() throws BufferPoolException
+		{
+			this.pool.startIOThreads();
+		}
+
+		@Override
+		public void closeBufferPool()
+		{
+			this.pool.closeBufferPool();
+		}
+
+		@Override
+		public void registerResource(int id, ResourceManager manager) throws BufferPoolException
+		{
+			this.pool.registerResource(id, manager);
+		}
+
+		@Override
+		public CacheableData getPageAndPin(int resourceId, int pageNumber) throws BufferPoolException, IOException
+		{
+			this.numPinned++;
+			return this.pool.getPageAndPin(resourceId, pageNumber);
+		}
+
+		@Override
+		public CacheableData unpinAndGetPageAndPin(int resourceId, int unpinPageNumber, int getPageNumber)
+		throws BufferPoolException, IOException
+		{
+			this.numPinned++;
+			return this.pool.unpinAndGetPageAndPin(resourceId, unpinPageNumber, getPageNumber);
+		}
+
+		@Override
+		public void unpinPage(int resourceId, int pageNumber)
+		{
+			this.pool.unpinPage(resourceId, pageNumber);
+		}
+
+		@Override
+		public void prefetchPage(int resourceId, int pageNumber) throws BufferPoolException
+		{
+			this.pool.prefetchPage(resourceId, pageNumber);
+		}
+
+		@Override
+		public void prefetchPages(int resourceId, int startPageNumber, int endPageNumber) throws BufferPoolException
+		{
+			this.pool.prefetchPages(resourceId, startPageNumber, endPageNumber);
+		}
+
+		@Override
+		public CacheableData createNewPageAndPin(int resourceId) throws BufferPoolException, IOException
+		{
+			return this.pool.createNewPageAndPin(resourceId);
+		}
+
+		@Override
+		public CacheableData createNewPageAndPin(int resourceId, Enum<?> type) throws BufferPoolException, IOException
+		{
+			return this.pool.createNewPageAndPin(resourceId, type);
+		}
+	}
+}